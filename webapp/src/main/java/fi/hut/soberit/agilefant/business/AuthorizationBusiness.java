@@ -1,5 +1,9 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.util.Collection;
+import java.util.List;
+
+import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.User;
 
 public interface AuthorizationBusiness {
@@ -7,4 +11,25 @@ public interface AuthorizationBusiness {
 	public boolean isBacklogAccessible(int backlogId, User user);
 	
 	public boolean isUserAccessible(int otherUserId, User user);
+
+	/**
+	 * Get the backlogs accessible to the user.
+	 * <p>
+	 * The order of the given backlogs is preserved.
+	 */
+	public <T extends Backlog> List<T> filterAccessible(Collection<T> backlogs, User user);
+
+	/**
+	 * Discard the cached access rights.
+	 * <p>
+	 * Should be called when team memberships, the teams' products and
+	 * iterations or the backlog hierarchy change.
+	 */
+	public void accessRightsChanged();
+
+	/**
+	 * Get a number that changes whenever the cached access rights are
+	 * discarded.
+	 */
+	public long getAccessRightsVersion();
 }
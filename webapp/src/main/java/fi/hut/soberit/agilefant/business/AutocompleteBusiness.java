@@ -0,0 +1,77 @@
+package fi.hut.soberit.agilefant.business;
+
+import java.util.List;
+
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
+
+/**
+ * Business interface for the data of the autocomplete choosers.
+ * <p>
+ * The users and teams are kept in an in-memory catalog, which is loaded on
+ * first use and reloaded after they change, and the backlogs are read from
+ * the backlog tree of {@link MenuBusiness}. The data is filtered by the
+ * access rights of the logged user.
+ * <p>
+ * All the methods take an optional prefix. When given, only the items whose
+ * matched string or one of its words starts with the prefix are returned.
+ */
+public interface AutocompleteBusiness {
+
+    /**
+     * Get the users in AutoCompleteData containers.
+     */
+    public List<AutocompleteDataNode> constructUserAutocompleteData(String prefix);
+
+    /**
+     * Get the teams in AutoCompleteData containers.
+     * @param listUserIds Add user ids as idList.
+     */
+    public List<AutocompleteDataNode> constructTeamAutocompleteData(boolean listUserIds, String prefix);
+
+    /**
+     * Get the products and projects in AutoCompleteData containers.
+     *
+     * Use <code>backlogId</code> to filter out other products' child backlogs.
+     *
+     * @param backlogId Filter backlogs by parent product of the backlog with id <code>backlogId</code>
+     */
+    public List<AutocompleteDataNode> constructBacklogAutocompleteData(Integer backlogId, String prefix);
+
+    /**
+     * Get the products, projects and current iterations in AutoCompleteData
+     * containers.
+     *
+     * @param backlogId Filter the products and projects by parent product of the backlog with id <code>backlogId</code>
+     */
+    public List<AutocompleteDataNode> constructBacklogAndIterationAutocompleteData(Integer backlogId, String prefix);
+
+    /**
+     * Get the products in <code>AutoCompleteData</code> containers.
+     */
+    public List<AutocompleteDataNode> constructProductAutocompleteData(String prefix);
+
+    /**
+     * Get the projects in <code>AutoCompleteData</code> containers.
+     */
+    public List<AutocompleteDataNode> constructProjectAutocompleteData(String prefix);
+
+    /**
+     * Get the iterations that have not ended before today in
+     * <code>AutoCompleteData</code> containers.
+     */
+    public List<AutocompleteDataNode> constructCurrentIterationAutocompleteData(String prefix);
+
+    /**
+     * Get the entity tag of the chooser data of the user. The tag changes
+     * when the users, teams, backlogs or access rights change, or the day
+     * changes.
+     */
+    public String getAutocompleteDataETag(User user);
+
+    /**
+     * Reload the catalog on next use after the current transaction commits.
+     */
+    public void autocompleteDataChanged();
+
+}
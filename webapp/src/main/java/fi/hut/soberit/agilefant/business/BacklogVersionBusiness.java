@@ -0,0 +1,27 @@
+package fi.hut.soberit.agilefant.business;
+
+/**
+ * Keeps track of in-memory change versions of backlogs.
+ * <p>
+ * The version of a backlog is bumped whenever data derived from it (history
+ * entries, spent effort, the stories and tasks of an iteration) changes. Cached, computed data can be keyed by the
+ * version so that it is recomputed only after a change.
+ * <p>
+ * The versions are local to the running instance.
+ */
+public interface BacklogVersionBusiness {
+
+    /**
+     * Get the current change version of the given backlog.
+     */
+    public long getVersion(int backlogId);
+
+    /**
+     * Mark the given backlog as changed.
+     * <p>
+     * If called inside a transaction, the version is bumped again when the
+     * transaction completes.
+     */
+    public void backlogChanged(int backlogId);
+
+}
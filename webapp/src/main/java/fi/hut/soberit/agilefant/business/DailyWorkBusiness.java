@@ -98,11 +98,26 @@ public interface DailyWorkBusiness {
 
     /**
      * Retrieves all assigned and current work for the given user, in proper format
+     * <p>
+     * The ids and order of the work are cached per user for the day, until
+     * the assigned work of the user changes.
      * @param user
      * @return
      */
     public AssignedWorkTO getAssignedWorkFor(User user);
 
+    /**
+     * Discards the cached assigned work of the given users and of the users
+     * responsible for the given stories, their tasks or the given tasks.
+     */
+    public void assignedWorkChanged(Collection<Integer> storyIds,
+            Collection<Integer> taskIds, Collection<Integer> userIds);
+
+    /**
+     * Discards the cached assigned work of all users.
+     */
+    public void allAssignedWorkChanged();
+
     
     public void setTransferObjectBusiness(TransferObjectBusiness transferObjectBusiness);
     public void setTaskDAO(TaskDAO dao);
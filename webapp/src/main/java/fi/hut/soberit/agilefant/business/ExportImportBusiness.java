@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.LinkedHashSet;
 
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.google.common.base.Function;
 
 import fi.hut.soberit.agilefant.model.AgilefantWidget;
 import fi.hut.soberit.agilefant.model.Assignment;
@@ -36,18 +37,62 @@ import fi.hut.soberit.agilefant.model.WidgetCollection;
 public interface ExportImportBusiness {
 
 	/**
-	 * Exports organization's data
+	 * Exports organization's data to the given handler one object at a time,
+	 * so that the whole organization is never held in memory. The objects are
+	 * passed grouped by the properties of OrganizationDumpTO and in the same
+	 * order.
 	 * 
-	 * @return
+	 * @param handler
 	 */
-	public OrganizationDumpTO exportOrganization();
+	public void exportOrganization(OrganizationDumpHandler handler);
 
 	/**
 	 * Imports data to an organization. Should only be done to a fresh organization, but will run and add incremental changes as well
+	 * <p>
+	 * The objects are saved as the reader passes them, in batches, without
+	 * holding the whole organization in memory. Auditing and change
+	 * notifications are suspended during the import.
 	 * 
-	 * @param organizationTO
+	 * @param reader
 	 */
-	public void importOrganization(OrganizationDumpTO organizationTO);
+	public void importOrganization(OrganizationDumpReader reader);
+
+	/**
+	 * Receives the objects of a streamed organization export
+	 */
+	public interface OrganizationDumpHandler {
+
+		/**
+		 * Called before the objects of the given OrganizationDumpTO property
+		 */
+		public void startProperty(String name);
+
+		public void handleObject(Object object);
+
+		/**
+		 * Called after the objects of the current property
+		 */
+		public void endProperty();
+	}
+
+	/**
+	 * Reads the objects of a streamed organization import
+	 */
+	public interface OrganizationDumpReader {
+
+		/**
+		 * Reads the objects and passes them to the handler, grouped by the
+		 * properties of OrganizationDumpTO
+		 */
+		public void read(OrganizationDumpHandler handler);
+
+		/**
+		 * Replaces the objects read so far, in the references of the objects
+		 * read after this, with the objects the function returns. Used for
+		 * letting go of the objects that are already saved.
+		 */
+		public void replaceReadObjects(Function<Object, Object> replacement);
+	}
 
 	/**
 	 * Transfer object for stuff that is exported from an organization
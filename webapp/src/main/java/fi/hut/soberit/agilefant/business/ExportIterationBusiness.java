@@ -1,7 +1,17 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.io.IOException;
+import java.io.OutputStream;
+
 import org.apache.poi.ss.usermodel.Workbook;
 
 public interface ExportIterationBusiness {
     public Workbook exportIteration(int iterationId);
+
+    /**
+     * Writes the iteration export as .xlsx to the given stream, keeping only
+     * a window of the rows of each sheet in memory.
+     */
+    public void writeIterationXlsx(int iterationId, OutputStream out)
+            throws IOException;
 }
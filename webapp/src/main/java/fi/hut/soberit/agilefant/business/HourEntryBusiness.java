@@ -74,6 +74,14 @@ public interface HourEntryBusiness extends GenericBusiness<HourEntry> {
             DateTime start, DateTime end);
     
     List<DailySpentEffort> getDailySpentEffortByIteration(Iteration iteration);
+
+    /**
+     * Gets the daily spent effort of the iteration, its stories and its tasks
+     * with a single entry per day between the given dates. The effort is read
+     * from the daily sums instead of the hour entries.
+     */
+    List<DailySpentEffort> getDailySpentEffortForIteration(Iteration iteration,
+            DateTime start, DateTime end);
     
     List<HourEntry> getHourEntriesForIteration(Iteration iteration);
     
@@ -15,4 +15,12 @@ public interface IterationBurndownBusiness {
     public byte[] getSmallIterationBurndown (Iteration iteration, Integer timeZoneOffset);
     
     public byte[] getCustomIterationBurndown(Iteration iteration, Integer width, Integer height, Integer timeZoneOffset);
+
+    /**
+     * Gets a tag identifying the current state of the iteration's burndown.
+     * <p>
+     * The tag changes whenever the rendered burndown would change and can be
+     * used as an HTTP entity tag.
+     */
+    public String getIterationBurndownETag(Iteration iteration, Integer timeZoneOffset);
 }
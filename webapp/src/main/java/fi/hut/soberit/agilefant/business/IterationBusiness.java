@@ -2,6 +2,7 @@ package fi.hut.soberit.agilefant.business;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.LocalDate;
@@ -21,6 +22,18 @@ public interface IterationBusiness extends GenericBusiness<Iteration> {
 
     public IterationMetrics getIterationMetrics(Iteration iteration);
 
+    /**
+     * Calculates the metrics of the given iterations with a fixed number of
+     * grouped queries.
+     * <p>
+     * The metrics are cached for a short while, until the change version of
+     * the iteration is bumped.
+     *
+     * @return the metrics by iteration id
+     */
+    public Map<Integer, IterationMetrics> getIterationMetrics(
+            Collection<? extends Iteration> iterations);
+
     ExactEstimate calculateDailyVelocity(LocalDate startDate, LocalDate end, IterationHistoryEntry yesterdayEntry);
 
     public IterationTO storeStandAlone(int iterationId, Iteration iterationData, Set<Integer> assigneeIds, Set<Integer> teams);
@@ -7,12 +7,54 @@ import org.joda.time.LocalDate;
 import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
+import fi.hut.soberit.agilefant.util.Triple;
 
 public interface IterationHistoryEntryBusiness extends
         GenericBusiness<IterationHistoryEntry> {
 
     void updateIterationHistory(int iterationId);
 
+    /**
+     * Applies a change in the iteration's effort left and original estimate
+     * sums to today's history entry without recalculating the sums.
+     * <p>
+     * Falls back to {@link #updateIterationHistory(int)} if incremental
+     * history updates are disabled or the iteration has no history yet.
+     */
+    void applyIterationHistoryDelta(int iterationId, long effortLeftDelta,
+            long originalEstimateDelta);
+
+    /**
+     * Gets the iteration the task is counted in and the task's share of the
+     * effort left and original estimate sums.
+     * 
+     * @see fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO#calculateTaskHistoryContribution(int)
+     */
+    Triple<Integer, ExactEstimate, ExactEstimate> calculateTaskHistoryContribution(
+            int taskId);
+
+    /**
+     * Checks the latest history entries of the incrementally updated
+     * iterations against fully calculated sums and repairs any drift.
+     * <p>
+     * Each iteration is reconciled in its own transaction. An iteration that
+     * fails is reconciled again on the next run.
+     * <p>
+     * Run periodically in the background by
+     * {@link #scheduledReconcileIterationHistories()}.
+     * 
+     * @return the number of repaired history entries
+     */
+    int reconcileIterationHistories();
+
+    /**
+     * Scheduled entry point of {@link #reconcileIterationHistories()}.
+     * <p>
+     * The first run reconciles all iterations with history, because the
+     * iterations updated before a restart are not known.
+     */
+    void scheduledReconcileIterationHistories();
+
     public ExactEstimate getLatestOriginalEstimateSum(Iteration iteration);
     
     /**
@@ -1,9 +1,11 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
 import fi.hut.soberit.agilefant.model.Label;
+import fi.hut.soberit.agilefant.model.Story;
 
 public interface LabelBusiness extends GenericBusiness<Label> {
    
@@ -11,6 +13,13 @@ public interface LabelBusiness extends GenericBusiness<Label> {
     
     public void createStoryLabels(List<String> labelNames, Integer storyId);
 
+    /**
+     * Add the given labels to all the given stories. The existing labels
+     * are looked up once for all the stories and the new ones are inserted
+     * in a single batch.
+     */
+    public void createStoryLabels(List<String> labelNames, Collection<Story> stories);
+
     List<Label> lookupLabelsLike(String labelName);
 
 }
\ No newline at end of file
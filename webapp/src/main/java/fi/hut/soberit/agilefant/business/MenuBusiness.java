@@ -2,12 +2,18 @@ package fi.hut.soberit.agilefant.business;
 
 import java.util.List;
 
+import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.transfer.MenuDataChanges;
 import fi.hut.soberit.agilefant.transfer.MenuDataNode;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
 
 
 /**
  * Business interface for handling functionality related to the lefthand menu.
+ * <p>
+ * The backlog menu is built from an in-memory tree of the backlogs, which is
+ * loaded on first use and kept up to date as backlogs are stored and deleted.
  * 
  * @author rjokelai
  * 
@@ -16,6 +22,33 @@ public interface MenuBusiness {
 
     public List<MenuDataNode> constructBacklogMenuData();
 
+    /**
+     * Get the changes of the backlog menu after the given version. The whole
+     * menu is returned if the changes are not known.
+     */
+    public MenuDataChanges constructBacklogMenuChanges(long sinceVersion);
+
     List<MenuDataNode> constructMyAssignmentsData(User user);
 
+    /**
+     * Get the shared in-memory tree of the products, projects and iterations.
+     * The tree is loaded on first use.
+     */
+    public BacklogMenuTree getBacklogMenuTree();
+
+    /**
+     * Update the backlog in the menu when the current transaction commits.
+     */
+    public void backlogStored(Backlog backlog);
+
+    /**
+     * Remove the backlog from the menu when the current transaction commits.
+     */
+    public void backlogDeleted(Backlog backlog);
+
+    /**
+     * Reload the menu on next use after the current transaction commits.
+     */
+    public void backlogMenuChanged();
+
 }
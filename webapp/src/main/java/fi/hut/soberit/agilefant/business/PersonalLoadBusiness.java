@@ -1,5 +1,8 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.util.Collection;
+import java.util.Map;
+
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.ComputedLoadData;
 import fi.hut.soberit.agilefant.transfer.UserLoadLimits;
@@ -7,5 +10,35 @@ import fi.hut.soberit.agilefant.transfer.UserLoadLimits;
 public interface PersonalLoadBusiness {
     public ComputedLoadData retrieveUserLoad(User user, int weeksAhead);
 
+    /**
+     * Get the loads of several users at once.
+     * <p>
+     * The loads that are not cached are computed together, with a fixed
+     * number of queries regardless of the number of users.
+     * 
+     * @return the loads by user id
+     */
+    public Map<Integer, ComputedLoadData> retrieveUserLoads(
+            Collection<User> users, int weeksAhead);
+
+    /**
+     * Discard the cached loads of all users.
+     * <p>
+     * Should be called after bulk changes, such as an import.
+     */
+    public void loadDataChanged();
+
+    /**
+     * Discard the cached loads of the users affected by changes to the given
+     * tasks, stories, backlogs and users.
+     * <p>
+     * The affected users are the responsibles of the tasks and stories and
+     * the users assigned to their iterations, the users assigned to the
+     * backlogs or responsible for work in them, and the given users.
+     */
+    public void loadDataChanged(Collection<Integer> taskIds,
+            Collection<Integer> storyIds, Collection<Integer> backlogIds,
+            Collection<Integer> userIds);
+
     public UserLoadLimits getDailyLoadLimitsByUser(User user);
 }
@@ -1,11 +1,37 @@
 package fi.hut.soberit.agilefant.business;
 
+import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
 import fi.hut.soberit.agilefant.model.Project;
 
+/**
+ * Renders the project burnup charts.
+ * <p>
+ * The burnup series of each project is kept in memory and extended as the
+ * history entries are written, and the rendered images are cached until the
+ * series, the project or the day changes.
+ */
 public interface ProjectBurnupBusiness {
 
     byte[] getBurnup(Project project);
     
     byte[] getSmallBurnup(Project project);
 
+    /**
+     * Adds the entry to the burnup series of its project after the current
+     * transaction commits.
+     */
+    void historyEntryStored(BacklogHistoryEntry entry);
+
+    /**
+     * Discards the burnup series of the project after the current
+     * transaction commits.
+     */
+    void historyEntriesRemoved(int projectId);
+
+    /**
+     * Discards the burnup series of all projects after the current
+     * transaction commits.
+     */
+    void burnupDataChanged();
+
 }
@@ -2,6 +2,7 @@ package fi.hut.soberit.agilefant.business;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import fi.hut.soberit.agilefant.exception.ObjectNotFoundException;
@@ -25,6 +26,14 @@ public interface ProjectBusiness extends GenericBusiness<Project> {
             IllegalArgumentException;
 
     public ProjectMetrics getProjectMetrics(Project project);
+
+    /**
+     * Get the metrics of many projects at once, by project id. The story
+     * and effort metrics of all the projects are calculated with the same
+     * grouped queries.
+     */
+    public Map<Integer, ProjectMetrics> getMultipleProjectMetrics(
+            Collection<Project> projects);
     
     /**
      * Calculate the sum of spent effort from all hour entries from the project itself, 
@@ -1,9 +1,14 @@
 package fi.hut.soberit.agilefant.business;
 
-import java.util.Collection;
-
-import fi.hut.soberit.agilefant.model.Rankable;
-
+/**
+ * Shifts the ranks of the rankables in the ranking context of a
+ * {@link RankingBusiness#rankUnder} call.
+ */
 public interface RankUnderDelegate {
-    Collection<? extends Rankable> getWithRankBetween(Integer first, Integer second);
+
+    /**
+     * Add the given amount to the ranks of the rankables with rank between
+     * and including the borders.
+     */
+    void shiftRanks(int lower, int upper, int amount);
 }
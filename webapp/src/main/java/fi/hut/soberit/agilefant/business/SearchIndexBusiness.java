@@ -0,0 +1,60 @@
+package fi.hut.soberit.agilefant.business;
+
+import java.util.List;
+
+import fi.hut.soberit.agilefant.model.NamedObject;
+
+/**
+ * Full-text index of the names and descriptions of backlogs, stories and
+ * tasks, used by {@link SearchBusiness}.
+ * <p>
+ * The index is built in the background when the application starts and kept
+ * up to date as the objects are stored or deleted.
+ */
+public interface SearchIndexBusiness {
+
+    /**
+     * Search the index.
+     * 
+     * @param type
+     *            the type of the searched objects, <code>Backlog</code> or
+     *            one of its subclasses, <code>Story</code> or
+     *            <code>Task</code>
+     * @return the ids of the matching objects, the most relevant first, or
+     *         null if the index can not be used for the search, e.g. it is
+     *         still being built or the search term contains no words
+     */
+    public List<Integer> search(Class<? extends NamedObject> type,
+            String searchTerm, int maxResults);
+
+    /**
+     * Update the object in the index.
+     * <p>
+     * If called inside a transaction, the index is updated after the
+     * transaction commits.
+     */
+    public void objectStored(NamedObject object);
+
+    /**
+     * Remove the object from the index.
+     * <p>
+     * If called inside a transaction, the index is updated after the
+     * transaction commits.
+     */
+    public void objectDeleted(NamedObject object);
+
+    /**
+     * Load all the searchable objects to the index.
+     */
+    public void buildIndex();
+
+    /**
+     * Add the objects missing from the index in the background, e.g. after a
+     * bulk load that did not update the index.
+     * <p>
+     * If called inside a transaction, the refresh starts after the
+     * transaction commits.
+     */
+    public void refreshIndex();
+
+}
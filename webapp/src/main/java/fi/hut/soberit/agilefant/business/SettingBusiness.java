@@ -7,6 +7,8 @@ import fi.hut.soberit.agilefant.model.Setting;
 
 /**
  * Business interface for handling functionality related to settings.
+ * <p>
+ * The settings are served from memory, so reading them is cheap.
  * 
  * @author kjniiran
  *
@@ -173,4 +175,16 @@ public interface SettingBusiness extends GenericBusiness<Setting> {
      * Set any value (used in import).
      */
     void setValue(String settingName, String value);
+    
+    /**
+     * Discard the in-memory settings after they have been changed directly
+     * in the database. The settings are reloaded on next use.
+     */
+    void settingsChanged();
+    
+    /**
+     * Reload the settings if another node has changed them. Called
+     * periodically by the scheduler.
+     */
+    void pollSettingsVersion();
 }
@@ -10,10 +10,38 @@ import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.StoryAccessCloudTO;
 
 public interface StoryAccessBusiness extends GenericBusiness<StoryAccess> {
+
+    /**
+     * Log an access of the logged user to the story.
+     * <p>
+     * The access is buffered in memory and written in the background by
+     * {@link #flushAccessEntries()}.
+     */
     public void addAccessEntry(Story story);
 
+    /**
+     * @see #addAccessEntry(Story)
+     */
     public void addAccessEntry(int storyId);
 
+    /**
+     * Writes the buffered story accesses in batches.
+     * <p>
+     * Run periodically in the background, and when enough accesses have been
+     * buffered.
+     *
+     * @return the number of accesses written
+     */
+    public int flushAccessEntries();
+
+    /**
+     * Writes the buffered story accesses. Called periodically by the
+     * scheduler.
+     *
+     * @see #flushAccessEntries()
+     */
+    public void scheduledFlushAccessEntries();
+
     public List<StoryAccessCloudTO> calculateOccurences(DateTime start,
             DateTime end, int userId, int numberOfItems);
 
@@ -1,5 +1,6 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -102,6 +103,12 @@ public interface StoryBusiness extends GenericBusiness<Story> {
      * If the story is in progress (state is anything but not_started or deferred) then set parent stories as started.
      */
     public void updateParentStates(Story story);
+
+    /**
+     * Update the parent states of all the given stories. A parent shared by
+     * several of the stories is visited only once.
+     */
+    public void updateParentStates(Collection<Story> stories);
     
     /**
      * Adds the given user to the set of responsibles for story
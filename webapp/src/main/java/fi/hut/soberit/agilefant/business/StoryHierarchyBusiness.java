@@ -42,6 +42,23 @@ public interface StoryHierarchyBusiness {
      * @return
      */
     public List<Story> retrieveProductRootStories(int productId, StoryFilters storyFilters);
+
+    /**
+     * Retrieve the story tree of the given product as transfer objects.
+     * <p>
+     * All the stories of the product are read with a single query and the
+     * tree is assembled in memory, so the children of the returned stories
+     * are not loaded lazily.
+     * 
+     * @param productId product id
+     * @param rootStoryId the story whose subtree to return, or null for
+     *            all the root stories of the product
+     * @param levels the number of levels to return, or 0 for the whole tree
+     * @param storyFilters story filters (or null if no filtering is to be done)
+     * @return the root stories, sorted by tree rank
+     */
+    public List<Story> retrieveProductStoryTree(int productId,
+            Integer rootStoryId, int levels, StoryFilters storyFilters);
     
     public void moveUnder(Story story, Story refernece);
     
@@ -71,4 +88,17 @@ public interface StoryHierarchyBusiness {
     public StoryTO recurseHierarchy(Story story);
 
     public StoryTreeBranchMetrics calculateStoryTreeMetrics(Story story);
+
+    /**
+     * Get the stored metrics of the story's branch.
+     * <p>
+     * The metrics are calculated from the loaded tree if none are stored.
+     */
+    public StoryTreeBranchMetrics retrieveStoryTreeMetrics(Story story);
+
+    /**
+     * Sets the stored branch metrics to the given stories and all the
+     * stories under them, read with a single lookup.
+     */
+    public void loadStoryTreeMetrics(List<Story> stories);
 }
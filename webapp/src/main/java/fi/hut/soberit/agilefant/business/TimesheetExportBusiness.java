@@ -1,5 +1,7 @@
 package fi.hut.soberit.agilefant.business;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Set;
 
 import org.apache.poi.ss.usermodel.Font;
@@ -37,4 +39,18 @@ public interface TimesheetExportBusiness {
             Set<Integer> backlogIds, DateTime startDate, DateTime endDate, DateTimeZone timeZone,
             Set<Integer> userIds);
 
+    /**
+     * Writes the timesheet as .xlsx to the given stream.
+     * <p>
+     * Unlike {@link #generateTimesheet}, the rows are written as they are
+     * read from the database and only a window of them is kept in memory,
+     * so there is no limit on the number of rows. The rows are therefore in
+     * the order of the hour entries, most recent first, instead of being
+     * sorted by backlog.
+     */
+    public void writeTimesheetXlsx(TextProvider textProvider,
+            Set<Integer> backlogIds, DateTime startDate, DateTime endDate,
+            DateTimeZone timeZone, Set<Integer> userIds, OutputStream out)
+            throws IOException;
+
 }
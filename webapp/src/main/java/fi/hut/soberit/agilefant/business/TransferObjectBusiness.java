@@ -11,7 +11,6 @@ import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.WhatsNextEntry;
 import fi.hut.soberit.agilefant.model.WhatsNextStoryEntry;
 import fi.hut.soberit.agilefant.transfer.AssignedWorkTO;
-import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
 import fi.hut.soberit.agilefant.transfer.DailyWorkTaskTO;
 import fi.hut.soberit.agilefant.transfer.IterationTO;
 import fi.hut.soberit.agilefant.transfer.ProjectTO;
@@ -41,50 +40,6 @@ public interface TransferObjectBusiness {
      */
     public ProjectTO constructProjectTO(Project project);
     
-    /**
-     * Get all users in AutoCompleteData containers.
-     */
-    public List<AutocompleteDataNode> constructUserAutocompleteData();
-    
-    /**
-     * Get all teams in AutoCompleteData containers.
-     * @param listUserIds Add user ids as idList.
-     */
-    public List<AutocompleteDataNode> constructTeamAutocompleteData(boolean listUserIds);
-    
-    /**
-     * Get all backlogs in AutoCompleteData containers.
-     * 
-     * Use <code>backlogId</code> to filter out other products' child backlogs.
-     *   
-     * @param backlogId Filter backlogs by parent product of the backlog with id <code>backlogId</code>
-     */
-    public List<AutocompleteDataNode> constructBacklogAutocompleteData(Integer backlogId);
-    
-    /**
-     * Get all backlogs and iterations in AutoCompleteData containers.
-     * 
-     * Use <code>backlogId</code> to filter out other products' child backlogs.
-     *   
-     * @param backlogId Filter backlogs by parent product of the backlog with id <code>backlogId</code>
-     */
-    public List<AutocompleteDataNode> constructBacklogAndIterationAutocompleteData(Integer backlogId);
-    
-    /**
-     * Get all products in <code>AutoCompleteData</code> containers.
-     */
-    public List<AutocompleteDataNode> constructProductAutocompleteData();
-    
-    /**
-     * Get all projects in <code>AutoCompleteData</code> containers.
-     */
-    public List<AutocompleteDataNode> constructProjectAutocompleteData();
-    
-    /**
-     * Get all backlogs in AutoCompleteData containers.
-     */
-    public List<AutocompleteDataNode> constructCurrentIterationAutocompleteData();
-
     /**    
      * Checks whether the backlog is ongoing, past or future.
      */
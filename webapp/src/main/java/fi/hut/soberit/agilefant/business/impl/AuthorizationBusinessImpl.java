@@ -1,89 +1,188 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import org.hibernate.Hibernate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
 import fi.hut.soberit.agilefant.business.BacklogBusiness;
-import fi.hut.soberit.agilefant.business.IterationBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
+import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Team;
 import fi.hut.soberit.agilefant.model.User;
-import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.util.GenerationGuard;
 
+/**
+ * Checks the access rights with per-user access sets.
+ * <p>
+ * The accessible products, standalone iterations and users of each user, as
+ * well as the root products of the backlogs, are computed once and cached
+ * until {@link #accessRightsChanged()} is called.
+ */
 @Service("authorizationBusiness")
 public class AuthorizationBusinessImpl implements AuthorizationBusiness {
 
+    /**
+     * Root product marker for standalone iterations.
+     */
+    private static final int STANDALONE_ITERATION = 0;
+
+    /**
+     * Root product marker for backlogs without a product.
+     */
+    private static final int NO_PRODUCT = -1;
+
 	@Autowired
 	BacklogBusiness backlogBusiness;
 	
-	@Autowired
-	IterationBusiness iterationBusiness;
-	
 	@Autowired
 	UserBusiness userBusiness;
+
+    private final ConcurrentMap<Integer, UserAccess> userAccesses = new ConcurrentHashMap<Integer, UserAccess>();
+
+    private final ConcurrentMap<Integer, Integer> rootProducts = new ConcurrentHashMap<Integer, Integer>();
+
+    private final GenerationGuard cacheGuard = new GenerationGuard();
 	
 	@Override
 	@Transactional(readOnly=true)
 	public boolean isBacklogAccessible(int backlogId, User user) {
-		user = this.userBusiness.retrieve(user.getId());
-		
-		if (user.isAdmin()) {
-		    return true;
-		}
-        
-        Collection<Team> teams = user.getTeams();
-        
-        Product product = (backlogBusiness.getParentProduct(backlogBusiness.retrieve(backlogId)));
-        if(product == null){
-            //standalone iteration
-            Iteration iteration = iterationBusiness.retrieve(backlogId);
-            if(iteration.isStandAlone()){
-                for (Iterator<Team> iter = teams.iterator(); iter.hasNext();){
-                    Team team = (Team) iter.next();
-                    
-                    Set<Iteration> iterations = team.getIterations();
-                    if (iterations.contains(iteration)) {
-                        return true; 
-                    }
-                }
-                return false;
-            }            
-        }        
-
-        for (Iterator<Team> iter = teams.iterator(); iter.hasNext();){
-            Team team = (Team) iter.next();
-            Set<Product> prods = team.getProducts();
-            if (prods.contains(product)) {
-                return true; 
-            }
-        }
-        return false;
+	    UserAccess access = getUserAccess(user);
+	    if (access.admin) {
+	        return true;
+	    }
+	    Integer rootProductId = rootProducts.get(backlogId);
+	    if (rootProductId == null) {
+	        rootProductId = cacheRootProduct(backlogBusiness.retrieve(backlogId));
+	    }
+	    return access.isAccessible(backlogId, rootProductId);
 	}
 	
     @Override
+    @Transactional(readOnly=true)
     public boolean isUserAccessible(int otherUserId, User user) {
-        user = this.userBusiness.retrieve(user.getId());
-        
-        if (user.isAdmin()) {
-            return true;
+        UserAccess access = getUserAccess(user);
+        return access.admin || access.userIds.contains(otherUserId);
+    }
+
+    @Override
+    @Transactional(readOnly=true)
+    public <T extends Backlog> List<T> filterAccessible(Collection<T> backlogs,
+            User user) {
+        UserAccess access = getUserAccess(user);
+        List<T> accessible = new ArrayList<T>();
+        for (T backlog : backlogs) {
+            if (access.admin) {
+                accessible.add(backlog);
+                continue;
+            }
+            Integer rootProductId = rootProducts.get(backlog.getId());
+            if (rootProductId == null) {
+                rootProductId = cacheRootProduct(backlog);
+            }
+            if (access.isAccessible(backlog.getId(), rootProductId)) {
+                accessible.add(backlog);
+            }
+        }
+        return accessible;
+    }
+
+    @Override
+    public void accessRightsChanged() {
+        cacheGuard.invalidate(new Runnable() {
+            public void run() {
+                userAccesses.clear();
+                rootProducts.clear();
+            }
+        });
+    }
+
+    @Override
+    public long getAccessRightsVersion() {
+        return cacheGuard.current();
+    }
+
+    private UserAccess getUserAccess(User user) {
+        UserAccess access = userAccesses.get(user.getId());
+        if (access != null) {
+            return access;
+        }
+        long generation = cacheGuard.current();
+        access = new UserAccess(userBusiness.retrieve(user.getId()));
+        if (cacheGuard.isCurrent(generation)) {
+            userAccesses.put(user.getId(), access);
         }
-        
-        for(Team team : user.getTeams()) {
-            for (User otherUser : team.getUsers()) {
-                if (otherUser.getId() == otherUserId) {
-                    return true;
+        return access;
+    }
+
+    private int cacheRootProduct(Backlog backlog) {
+        long generation = cacheGuard.current();
+        int rootProductId;
+        Product product = backlogBusiness.getParentProduct(backlog);
+        if (product != null) {
+            rootProductId = product.getId();
+        } else if (backlog instanceof Iteration && backlog.isStandAlone()) {
+            rootProductId = STANDALONE_ITERATION;
+        } else {
+            rootProductId = NO_PRODUCT;
+        }
+        if (cacheGuard.isCurrent(generation)) {
+            rootProducts.put(backlog.getId(), rootProductId);
+        }
+        return rootProductId;
+    }
+
+    public void setBacklogBusiness(BacklogBusiness backlogBusiness) {
+        this.backlogBusiness = backlogBusiness;
+    }
+
+    public void setUserBusiness(UserBusiness userBusiness) {
+        this.userBusiness = userBusiness;
+    }
+
+    /**
+     * The products, standalone iterations and users accessible through the
+     * user's teams.
+     */
+    private static class UserAccess {
+        private final boolean admin;
+        private final Set<Integer> productIds = new HashSet<Integer>();
+        private final Set<Integer> iterationIds = new HashSet<Integer>();
+        private final Set<Integer> userIds = new HashSet<Integer>();
+
+        public UserAccess(User user) {
+            this.admin = user.isAdmin();
+            if (admin) {
+                return;
+            }
+            for (Team team : user.getTeams()) {
+                for (Product product : team.getProducts()) {
+                    productIds.add(product.getId());
                 }
+                for (Iteration iteration : team.getIterations()) {
+                    iterationIds.add(iteration.getId());
+                }
+                for (User otherUser : team.getUsers()) {
+                    userIds.add(otherUser.getId());
+                }
+            }
+        }
+
+        public boolean isAccessible(int backlogId, int rootProductId) {
+            if (rootProductId == STANDALONE_ITERATION) {
+                return iterationIds.contains(backlogId);
             }
+            return productIds.contains(rootProductId);
         }
-        return false;
     }
 }
@@ -0,0 +1,393 @@
+package fi.hut.soberit.agilefant.business.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
+import fi.hut.soberit.agilefant.business.AutocompleteBusiness;
+import fi.hut.soberit.agilefant.business.MenuBusiness;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
+import fi.hut.soberit.agilefant.db.TeamDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
+import fi.hut.soberit.agilefant.util.TransactionUtils;
+
+/**
+ * Builds the chooser data from the shared {@link AutocompleteCatalog} and the
+ * backlog tree of the menu. Only the entities of the returned items are
+ * loaded, with a single query per type.
+ */
+@Service("autocompleteBusiness")
+public class AutocompleteBusinessImpl implements AutocompleteBusiness {
+
+    @Autowired
+    private UserDAO userDAO;
+
+    @Autowired
+    private TeamDAO teamDAO;
+
+    @Autowired
+    private BacklogDAO backlogDAO;
+
+    @Autowired
+    private MenuBusiness menuBusiness;
+
+    @Autowired
+    private AuthorizationBusiness authorizationBusiness;
+
+    private final Object catalogLock = new Object();
+
+    private AutocompleteCatalog catalog = null;
+
+    /*
+     * Start from the current time so that the entity tags are not reused
+     * after a restart.
+     */
+    private long catalogVersion = System.currentTimeMillis();
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructUserAutocompleteData(String prefix) {
+        AutocompleteCatalog currentCatalog = getCatalog();
+        Set<Integer> accessibleIds = getAccessibleUserIds(currentCatalog);
+        List<AutocompleteCatalog.UserEntry> matched = new ArrayList<AutocompleteCatalog.UserEntry>();
+        Set<Integer> ids = new HashSet<Integer>();
+        for (AutocompleteCatalog.UserEntry user : currentCatalog.getUsers()) {
+            if ((accessibleIds == null || accessibleIds.contains(user.getId()))
+                    && matches(getMatchedString(user), prefix)) {
+                matched.add(user);
+                ids.add(user.getId());
+            }
+        }
+
+        Map<Integer, User> users = new HashMap<Integer, User>();
+        for (User user : userDAO.getMultiple(ids)) {
+            users.put(user.getId(), user);
+        }
+        List<AutocompleteDataNode> autocompleteData = new ArrayList<AutocompleteDataNode>();
+        for (AutocompleteCatalog.UserEntry user : matched) {
+            AutocompleteDataNode curNode = new AutocompleteDataNode(User.class,
+                    user.getId(), user.getFullName(), user.isEnabled());
+            curNode.setMatchedString(getMatchedString(user));
+            curNode.setOriginalObject(users.get(user.getId()));
+            autocompleteData.add(curNode);
+        }
+        return autocompleteData;
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructTeamAutocompleteData(
+            boolean listUserIds, String prefix) {
+        AutocompleteCatalog currentCatalog = getCatalog();
+        User loggedUser = SecurityUtil.getLoggedUser();
+        Set<Integer> teamIds = isAdmin(currentCatalog) ? null : currentCatalog
+                .getTeamIds(loggedUser.getId());
+        List<AutocompleteCatalog.TeamEntry> matched = new ArrayList<AutocompleteCatalog.TeamEntry>();
+        Set<Integer> ids = new HashSet<Integer>();
+        for (AutocompleteCatalog.TeamEntry team : currentCatalog.getTeams()) {
+            if ((teamIds == null || teamIds.contains(team.getId()))
+                    && matches(team.getName(), prefix)) {
+                matched.add(team);
+                ids.add(team.getId());
+            }
+        }
+
+        Map<Integer, Team> teams = new HashMap<Integer, Team>();
+        for (Team team : teamDAO.getMultiple(ids)) {
+            teams.put(team.getId(), team);
+        }
+        List<AutocompleteDataNode> autocompleteData = new ArrayList<AutocompleteDataNode>();
+        for (AutocompleteCatalog.TeamEntry team : matched) {
+            Set<Integer> userIds = null;
+            if (listUserIds) {
+                userIds = new HashSet<Integer>(team.getUserIds());
+            }
+            AutocompleteDataNode curNode = new AutocompleteDataNode(Team.class,
+                    team.getId(), team.getName(), userIds);
+            curNode.setMatchedString(team.getName());
+            curNode.setOriginalObject(teams.get(team.getId()));
+            autocompleteData.add(curNode);
+        }
+        return autocompleteData;
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructBacklogAutocompleteData(
+            Integer backlogId, String prefix) {
+        BacklogMenuTree tree = menuBusiness.getBacklogMenuTree();
+        return constructBacklogNodes(tree, selectBacklogs(tree, backlogId), prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructBacklogAndIterationAutocompleteData(
+            Integer backlogId, String prefix) {
+        BacklogMenuTree tree = menuBusiness.getBacklogMenuTree();
+        List<BacklogMenuTree.Entry> entries = selectBacklogs(tree, backlogId);
+        entries.addAll(selectCurrentIterations(tree));
+        return constructBacklogNodes(tree, entries, prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructProductAutocompleteData(String prefix) {
+        BacklogMenuTree tree = menuBusiness.getBacklogMenuTree();
+        return constructBacklogNodes(tree, selectByType(tree, BacklogType.PRODUCT), prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructProjectAutocompleteData(String prefix) {
+        BacklogMenuTree tree = menuBusiness.getBacklogMenuTree();
+        return constructBacklogNodes(tree, selectByType(tree, BacklogType.PROJECT), prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public List<AutocompleteDataNode> constructCurrentIterationAutocompleteData(String prefix) {
+        BacklogMenuTree tree = menuBusiness.getBacklogMenuTree();
+        return constructBacklogNodes(tree, selectCurrentIterations(tree), prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public String getAutocompleteDataETag(User user) {
+        long version;
+        synchronized (catalogLock) {
+            version = catalogVersion;
+        }
+        StringBuilder tag = new StringBuilder();
+        tag.append(user.getId()).append('-');
+        tag.append(Long.toHexString(version)).append('-');
+        tag.append(Long.toHexString(menuBusiness.getBacklogMenuTree().getVersion())).append('-');
+        tag.append(Long.toHexString(authorizationBusiness.getAccessRightsVersion())).append('-');
+        tag.append(new LocalDate());
+        return tag.toString();
+    }
+
+    public void autocompleteDataChanged() {
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                synchronized (catalogLock) {
+                    catalogVersion++;
+                    catalog = null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the shared catalog, loading it if needed. If the data was changed
+     * while loading, the loaded catalog is used only for this call.
+     */
+    private AutocompleteCatalog getCatalog() {
+        long version;
+        synchronized (catalogLock) {
+            if (catalog != null) {
+                return catalog;
+            }
+            version = catalogVersion;
+        }
+        AutocompleteCatalog loaded = new AutocompleteCatalog(
+                userDAO.retrieveAutocompleteEntries(),
+                teamDAO.retrieveAutocompleteEntries());
+        synchronized (catalogLock) {
+            if (catalogVersion == version) {
+                catalog = loaded;
+            }
+        }
+        return loaded;
+    }
+
+    private boolean isAdmin(AutocompleteCatalog currentCatalog) {
+        AutocompleteCatalog.UserEntry user = currentCatalog.getUser(SecurityUtil
+                .getLoggedUser().getId());
+        return user != null && user.isAdmin();
+    }
+
+    /**
+     * @return the ids of the members of the logged user's teams, or
+     *         <code>null</code> if all the users are accessible
+     */
+    private Set<Integer> getAccessibleUserIds(AutocompleteCatalog currentCatalog) {
+        if (isAdmin(currentCatalog)) {
+            return null;
+        }
+        int loggedUserId = SecurityUtil.getLoggedUser().getId();
+        Set<Integer> userIds = new HashSet<Integer>();
+        for (AutocompleteCatalog.TeamEntry team : currentCatalog.getTeams()) {
+            if (team.getUserIds().contains(loggedUserId)) {
+                userIds.addAll(team.getUserIds());
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Get the products and projects, optionally only the ones under the same
+     * product as the given backlog.
+     */
+    private List<BacklogMenuTree.Entry> selectBacklogs(BacklogMenuTree tree,
+            Integer backlogId) {
+        Integer productId = null;
+        if (backlogId != null) {
+            BacklogMenuTree.Entry original = tree.getEntry(backlogId);
+            productId = (original == null) ? null : getProductId(tree, original);
+        }
+        List<BacklogMenuTree.Entry> entries = new ArrayList<BacklogMenuTree.Entry>();
+        for (BacklogMenuTree.Entry entry : tree.getEntries()) {
+            if (entry.getType() == BacklogType.ITERATION) {
+                continue; // iterations should not be included in backlogs list.
+            }
+            if (backlogId == null || equal(productId, getProductId(tree, entry))) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private List<BacklogMenuTree.Entry> selectByType(BacklogMenuTree tree,
+            BacklogType type) {
+        List<BacklogMenuTree.Entry> entries = new ArrayList<BacklogMenuTree.Entry>();
+        for (BacklogMenuTree.Entry entry : tree.getEntries()) {
+            if (entry.getType() == type) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private List<BacklogMenuTree.Entry> selectCurrentIterations(BacklogMenuTree tree) {
+        DateTime dayStart = new DateTime().withMillisOfDay(0);
+        List<BacklogMenuTree.Entry> entries = new ArrayList<BacklogMenuTree.Entry>();
+        for (BacklogMenuTree.Entry entry : selectByType(tree, BacklogType.ITERATION)) {
+            if (entry.getEndDate() != null && !entry.getEndDate().isBefore(dayStart)) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private List<AutocompleteDataNode> constructBacklogNodes(
+            BacklogMenuTree tree, List<BacklogMenuTree.Entry> entries,
+            String prefix) {
+        User loggedUser = SecurityUtil.getLoggedUser();
+        List<BacklogMenuTree.Entry> matched = new ArrayList<BacklogMenuTree.Entry>();
+        Map<Integer, String> names = new HashMap<Integer, String>();
+        for (BacklogMenuTree.Entry entry : entries) {
+            String name = getNameWithParents(tree, entry);
+            if (matches(name, prefix)
+                    && authorizationBusiness.isBacklogAccessible(entry.getId(), loggedUser)) {
+                matched.add(entry);
+                names.put(entry.getId(), name);
+            }
+        }
+
+        Map<Integer, Backlog> backlogs = new HashMap<Integer, Backlog>();
+        for (Backlog backlog : backlogDAO.getMultiple(names.keySet())) {
+            backlogs.put(backlog.getId(), backlog);
+        }
+        List<AutocompleteDataNode> autocompleteData = new ArrayList<AutocompleteDataNode>();
+        for (BacklogMenuTree.Entry entry : matched) {
+            String name = names.get(entry.getId());
+            AutocompleteDataNode node = new AutocompleteDataNode(Backlog.class,
+                    entry.getId(), name);
+            node.setMatchedString(name);
+            node.setOriginalObject(backlogs.get(entry.getId()));
+            autocompleteData.add(node);
+        }
+        return autocompleteData;
+    }
+
+    private static String getNameWithParents(BacklogMenuTree tree,
+            BacklogMenuTree.Entry entry) {
+        String name = entry.getName();
+        BacklogMenuTree.Entry parent = getParent(tree, entry);
+        while (parent != null) {
+            name = parent.getName() + " > " + name;
+            parent = getParent(tree, parent);
+        }
+        return name;
+    }
+
+    /**
+     * @return the id of the product the backlog belongs to, or
+     *         <code>null</code> for standalone iterations
+     */
+    private static Integer getProductId(BacklogMenuTree tree,
+            BacklogMenuTree.Entry entry) {
+        BacklogMenuTree.Entry root = entry;
+        for (BacklogMenuTree.Entry parent = getParent(tree, root); parent != null; parent = getParent(tree, root)) {
+            root = parent;
+        }
+        return (root.getType() == BacklogType.PRODUCT) ? root.getId() : null;
+    }
+
+    private static BacklogMenuTree.Entry getParent(BacklogMenuTree tree,
+            BacklogMenuTree.Entry entry) {
+        if (entry.getParentId() == null) {
+            return null;
+        }
+        return tree.getEntry(entry.getParentId());
+    }
+
+    private static String getMatchedString(AutocompleteCatalog.UserEntry user) {
+        return user.getFullName() + " " + user.getLoginName();
+    }
+
+    /**
+     * Check whether the string or one of its words starts with the prefix,
+     * ignoring the case.
+     */
+    static boolean matches(String matchedString, String prefix) {
+        if (prefix == null || prefix.trim().length() == 0) {
+            return true;
+        }
+        if (matchedString == null) {
+            return false;
+        }
+        String text = matchedString.toLowerCase();
+        String start = prefix.trim().toLowerCase();
+        for (int i = text.indexOf(start); i >= 0; i = text.indexOf(start, i + 1)) {
+            if (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    public void setUserDAO(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
+    public void setTeamDAO(TeamDAO teamDAO) {
+        this.teamDAO = teamDAO;
+    }
+
+    public void setBacklogDAO(BacklogDAO backlogDAO) {
+        this.backlogDAO = backlogDAO;
+    }
+
+    public void setMenuBusiness(MenuBusiness menuBusiness) {
+        this.menuBusiness = menuBusiness;
+    }
+
+    public void setAuthorizationBusiness(AuthorizationBusiness authorizationBusiness) {
+        this.authorizationBusiness = authorizationBusiness;
+    }
+}
@@ -0,0 +1,52 @@
+package fi.hut.soberit.agilefant.business.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
+
+@Service("backlogVersionBusiness")
+public class BacklogVersionBusinessImpl implements BacklogVersionBusiness {
+
+    /*
+     * Start from the current time so that the versions are not reused after a
+     * restart.
+     */
+    private final long initialVersion = System.currentTimeMillis();
+
+    private final AtomicLong sequence = new AtomicLong(initialVersion);
+
+    private final ConcurrentMap<Integer, Long> versions = new ConcurrentHashMap<Integer, Long>();
+
+    public long getVersion(int backlogId) {
+        Long version = versions.get(backlogId);
+        return (version == null) ? initialVersion : version;
+    }
+
+    public void backlogChanged(final int backlogId) {
+        bump(backlogId);
+        /*
+         * Readers may compute data from the old state between the first bump
+         * and the commit, so bump once more after the transaction.
+         */
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            bump(backlogId);
+                        }
+                    });
+        }
+    }
+
+    private void bump(int backlogId) {
+        versions.put(backlogId, sequence.incrementAndGet());
+    }
+
+}
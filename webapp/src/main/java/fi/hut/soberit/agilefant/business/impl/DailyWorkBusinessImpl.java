@@ -2,16 +2,18 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,13 +24,10 @@ import fi.hut.soberit.agilefant.business.StoryBusiness;
 import fi.hut.soberit.agilefant.business.TaskBusiness;
 import fi.hut.soberit.agilefant.business.TransferObjectBusiness;
 import fi.hut.soberit.agilefant.db.StoryDAO;
-import fi.hut.soberit.agilefant.db.StoryRankDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.db.WhatsNextEntryDAO;
 import fi.hut.soberit.agilefant.db.WhatsNextStoryEntryDAO;
-import fi.hut.soberit.agilefant.model.Rankable;
 import fi.hut.soberit.agilefant.model.Story;
-import fi.hut.soberit.agilefant.model.StoryRank;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.model.WhatsNextEntry;
@@ -36,19 +35,27 @@ import fi.hut.soberit.agilefant.model.WhatsNextStoryEntry;
 import fi.hut.soberit.agilefant.transfer.AssignedWorkTO;
 import fi.hut.soberit.agilefant.transfer.DailyWorkTaskTO;
 import fi.hut.soberit.agilefant.transfer.StoryTO;
+import fi.hut.soberit.agilefant.util.AssignedWorkIndex;
+import fi.hut.soberit.agilefant.util.GenerationGuard;
 
 @Service("dailyWorkBusiness")
 @Transactional
 public class DailyWorkBusinessImpl implements DailyWorkBusiness {
     private TaskDAO taskDAO;
     private StoryDAO storyDAO;
-    private StoryRankDAO storyRankDAO;
     private WhatsNextEntryDAO whatsNextEntryDAO;
     private WhatsNextStoryEntryDAO whatsNextStoryEntryDAO;
     private RankingBusiness rankingBusiness;
     private TaskBusiness taskBusiness;
     private StoryBusiness storyBusiness;
     private TransferObjectBusiness transferObjectBusiness;
+
+    /**
+     * The assigned work of each user, valid for the day it was read on.
+     */
+    private final ConcurrentMap<Integer, AssignedWorkIndex> cachedAssignedWork = new ConcurrentHashMap<Integer, AssignedWorkIndex>();
+
+    private final GenerationGuard cacheGuard = new GenerationGuard();
     
     @Autowired
     public void setTaskDAO(TaskDAO taskDAO) {
@@ -90,11 +97,6 @@ public class DailyWorkBusinessImpl implements DailyWorkBusiness {
         this.transferObjectBusiness = transferObjectBusiness;
     }
 
-    @Autowired
-    public void setStoryRankDAO(StoryRankDAO storyRankDAO) {
-        this.storyRankDAO = storyRankDAO;
-    }
-
     public Collection<DailyWorkTaskTO> getQueuedTasksForUser(User user) {
         Collection<WhatsNextEntry> entries = whatsNextEntryDAO.getWhatsNextEntriesFor(user);
         Collection<DailyWorkTaskTO> returned = new ArrayList<DailyWorkTaskTO>();
@@ -136,9 +138,8 @@ public class DailyWorkBusinessImpl implements DailyWorkBusiness {
         }
 
         RankUnderDelegate delegate = new RankUnderDelegate() {
-            public Collection<? extends Rankable> getWithRankBetween(Integer lower,
-                    Integer upper) {
-                return whatsNextEntryDAO.getTasksWithRankBetween(lower, upper, entry.getUser());
+            public void shiftRanks(int lower, int upper, int amount) {
+                whatsNextEntryDAO.shiftRanksBetween(lower, upper, amount, entry.getUser());
             }
         };
         
@@ -229,9 +230,8 @@ public class DailyWorkBusinessImpl implements DailyWorkBusiness {
         }
 
         RankUnderDelegate delegate = new RankUnderDelegate() {
-            public Collection<? extends Rankable> getWithRankBetween(Integer lower,
-                    Integer upper) {
-                return whatsNextStoryEntryDAO.getStoriesWithRankBetween(lower, upper, entry.getUser());
+            public void shiftRanks(int lower, int upper, int amount) {
+                whatsNextStoryEntryDAO.shiftRanksBetween(lower, upper, amount, entry.getUser());
             }
         };
         
@@ -282,77 +282,96 @@ public class DailyWorkBusinessImpl implements DailyWorkBusiness {
     }
 
     public AssignedWorkTO getAssignedWorkFor(User user) {
-        DateTime now = new DateTime();
-        DateTime dayStart = now.withMillisOfDay(0);
-        DateTime dayEnd   = dayStart.plusDays(1);
-        Interval interval = new Interval(dayStart, dayEnd);
-        
-        Collection<Task> tasks = taskDAO.getAllTasks(user, interval);
-        Collection<Story> stories = storyDAO.getAllIterationStoriesByResponsibleAndInterval(user, interval);
-        
-        AssignedWorkTO returnable = transferObjectBusiness.constructAssignedWorkTO(tasks, stories);
+        AssignedWorkIndex index = getAssignedWorkIndex(user.getId());
 
-        Collection<Story> finalStories = new ArrayList<Story>();
-        finalStories.addAll(returnable.getStories());
-        Collection<StoryRank> iterationRanks = storyRankDAO.getIterationRanksForStories(finalStories);
-        Collection<StoryRank> projectRanks = storyRankDAO.getProjectRanksForStories(finalStories);
+        Map<Integer, Task> tasksById = new HashMap<Integer, Task>();
+        for (Task task : taskDAO.getMultiple(index.getTaskIds())) {
+            tasksById.put(task.getId(), task);
+        }
+        Map<Integer, Story> storiesById = new HashMap<Integer, Story>();
+        for (Story story : storyDAO.getMultiple(index.getStoryIds())) {
+            storiesById.put(story.getId(), story);
+        }
+        List<Task> tasks = new ArrayList<Task>();
+        for (Integer taskId : index.getTaskIds()) {
+            Task task = tasksById.get(taskId);
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+        List<Story> stories = new ArrayList<Story>();
+        for (Integer storyId : index.getStoryIds()) {
+            Story story = storiesById.get(storyId);
+            if (story != null) {
+                stories.add(story);
+            }
+        }
 
-        setStoryRanks(returnable.getStories(), iterationRanks, projectRanks);
-        
+        AssignedWorkTO returnable = transferObjectBusiness.constructAssignedWorkTO(tasks, stories);
+
+        int rank = 0;
+        for (StoryTO story : returnable.getStories()) {
+            story.setRank(rank++);
+        }
         return returnable; 
     }
-    
-    @SuppressWarnings("unchecked")
-    private static void setStoryRanks(List<StoryTO> stories, Collection<StoryRank> iterationRanks, Collection<StoryRank> projectRanks) {
-        Map<Integer, Integer> rankMap = new HashMap<Integer, Integer>();
-        for (StoryRank rank : iterationRanks) {
-            rankMap.put(rank.getStory().getId(), rank.getRank());
+
+    /**
+     * Gets the user's assigned work of today from the cache, or reads it
+     * with two projection queries. Work read while the assignments change is
+     * not cached.
+     */
+    private AssignedWorkIndex getAssignedWorkIndex(int userId) {
+        LocalDate today = new LocalDate();
+        AssignedWorkIndex cached = cachedAssignedWork.get(userId);
+        if (cached != null && cached.getDay().equals(today)) {
+            return cached;
         }
-        // Set project ranks only for stories which do not have iteration ranks
-        for (StoryRank rank : projectRanks) {
-            int id = rank.getStory().getId();
-            if (!rankMap.containsKey(id)) {
-                rankMap.put(id, rank.getRank());
-            }
+
+        DateTime dayStart = today.toDateTimeAtStartOfDay();
+        Interval interval = new Interval(dayStart, dayStart.plusDays(1));
+        long generation = cacheGuard.current();
+        AssignedWorkIndex index = new AssignedWorkIndex(today,
+                storyDAO.retrieveAssignedStoryEntries(userId, interval),
+                taskDAO.retrieveAssignedTaskIdsWithoutStory(userId, interval));
+        if (cacheGuard.isCurrent(generation)) {
+            cachedAssignedWork.put(userId, index);
         }
-        // Set the ranks for the stories
-        for (StoryTO s : stories) {
-            s.setRank(rankMap.get(s.getId()));
+        return index;
+    }
+
+    public void assignedWorkChanged(Collection<Integer> storyIds,
+            Collection<Integer> taskIds, Collection<Integer> userIds) {
+        Set<Integer> changedUserIds = new HashSet<Integer>(userIds);
+        changedUserIds.addAll(storyDAO.retrieveResponsibleIds(storyIds));
+        changedUserIds.addAll(taskDAO.retrieveResponsibleIds(taskIds));
+        if (changedUserIds.isEmpty()) {
+            return;
         }
-        
-        Collections.sort(stories, new PropertyComparator("rank", true, true));
-        Collections.sort(stories, new Comparator<StoryTO>() {
-            @Override
-            public int compare(StoryTO o1, StoryTO o2) {
-                if (o1.getIteration() == null && o2.getIteration() == null) {
-                    return 0;
-                } else if (o1.getIteration() == null) {
-                    return -1;
-                } else if (o2.getIteration() == null) {
-                    return 1;
-                } else {
-                    return o1.getIteration().getName().compareToIgnoreCase(o2.getIteration().getName());
-                }
-            }
-        });
-        Collections.sort(stories, new Comparator<StoryTO>() {
-            @Override
-            public int compare(StoryTO o1, StoryTO o2) {
-                if (o1.getBacklog() == null && o2.getBacklog() == null) {
-                    return 0;
-                } else if (o1.getBacklog() == null) {
-                    return -1;
-                } else if (o2.getBacklog() == null) {
-                    return 1;
-                } else {
-                    return o1.getBacklog().getName().compareToIgnoreCase(o2.getBacklog().getName());
-                }
+        clearAfterCompletion(changedUserIds);
+    }
+
+    public void allAssignedWorkChanged() {
+        clearAfterCompletion(null);
+    }
+
+    private void clearAfterCompletion(final Collection<Integer> userIds) {
+        cacheGuard.invalidate(new Runnable() {
+            public void run() {
+                clear(userIds);
             }
         });
-        
-        int i = 0;
-        for (StoryTO s : stories) {
-            s.setRank(i++);
+    }
+
+    /**
+     * @param userIds the users whose work is discarded, or <code>null</code>
+     *            for all users
+     */
+    private void clear(Collection<Integer> userIds) {
+        if (userIds == null) {
+            cachedAssignedWork.clear();
+        } else {
+            cachedAssignedWork.keySet().removeAll(userIds);
         }
     }
 }
@@ -1,28 +1,47 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.SecureRandom;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
-import org.hibernate.Transaction;
+import org.hibernate.proxy.HibernateProxy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.base.Function;
+
+import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
+import fi.hut.soberit.agilefant.business.AutocompleteBusiness;
+import fi.hut.soberit.agilefant.business.DailyWorkBusiness;
 import fi.hut.soberit.agilefant.business.ExportImportBusiness;
 import fi.hut.soberit.agilefant.business.IterationBusiness;
+import fi.hut.soberit.agilefant.business.MenuBusiness;
+import fi.hut.soberit.agilefant.business.PersonalLoadBusiness;
+import fi.hut.soberit.agilefant.business.ProjectBurnupBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
+import fi.hut.soberit.agilefant.business.SearchIndexBusiness;
 import fi.hut.soberit.agilefant.business.SettingBusiness;
 import fi.hut.soberit.agilefant.business.TeamBusiness;
 import fi.hut.soberit.agilefant.db.AgilefantWidgetDAO;
 import fi.hut.soberit.agilefant.db.AssignmentDAO;
 import fi.hut.soberit.agilefant.db.BacklogHistoryEntryDAO;
 import fi.hut.soberit.agilefant.db.BacklogHourEntryDAO;
+import fi.hut.soberit.agilefant.db.DailyEffortSumDAO;
+import fi.hut.soberit.agilefant.db.GenericDAO;
 import fi.hut.soberit.agilefant.db.HolidayDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
@@ -32,9 +51,11 @@ import fi.hut.soberit.agilefant.db.ProductDAO;
 import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.db.SettingDAO;
 import fi.hut.soberit.agilefant.db.StoryAccessDAO;
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.StoryHourEntryDAO;
 import fi.hut.soberit.agilefant.db.StoryRankDAO;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.db.TaskHourEntryDAO;
 import fi.hut.soberit.agilefant.db.TeamDAO;
@@ -42,6 +63,7 @@ import fi.hut.soberit.agilefant.db.UserDAO;
 import fi.hut.soberit.agilefant.db.WhatsNextEntryDAO;
 import fi.hut.soberit.agilefant.db.WhatsNextStoryEntryDAO;
 import fi.hut.soberit.agilefant.db.WidgetCollectionDAO;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.AgilefantWidget;
 import fi.hut.soberit.agilefant.model.Project;
@@ -61,9 +83,18 @@ public class ExportImportBusinessImpl implements ExportImportBusiness {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ExportImportBusinessImpl.class);	
 	
+	private static final int EXPORT_BATCH_SIZE = 500;
+	
+	private static final int IMPORT_BATCH_SIZE = 500;
+	
+	private static final int IMPORT_PROGRESS_INTERVAL = 10000;
+	
 	@Autowired AssignmentDAO assignmentDAO;
 	@Autowired BacklogHistoryEntryDAO backlogHistoryEntryDAO;
 	@Autowired BacklogHourEntryDAO backlogHourEntryDAO;
+	@Autowired DailyEffortSumDAO dailyEffortSumDAO;
+	@Autowired StoryTreeMetricsDAO storyTreeMetricsDAO;
+	@Autowired StoryAncestorDAO storyAncestorDAO;
 	@Autowired HolidayDAO holidayDAO;
 	@Autowired HourEntryDAO hourEntryDAO;
 	@Autowired IterationDAO iterationDAO;
@@ -97,20 +128,33 @@ public class ExportImportBusinessImpl implements ExportImportBusiness {
 	@Autowired
 	private TeamBusiness teamBusiness;
 	
+	@Autowired
+	private AuthorizationBusiness authorizationBusiness;
+	
+	@Autowired
+	private PersonalLoadBusiness personalLoadBusiness;
+	
+	@Autowired
+	private SearchIndexBusiness searchIndexBusiness;
+	
+	@Autowired
+	private MenuBusiness menuBusiness;
+	
+	@Autowired
+	private AutocompleteBusiness autocompleteBusiness;
+	
+	@Autowired
+	private DailyWorkBusiness dailyWorkBusiness;
+	
+	@Autowired
+	private ProjectBurnupBusiness projectBurnupBusiness;
+	
 	@Autowired
 	SessionFactory sessionFactory;
 	
     @Autowired
     private TokenGenerator tokenGenerator;
 	
-	private void addInOrder(Story story, Collection<Story> stories) {
-		Story parent = story.getParent();
-		if(parent!=null && !stories.contains(parent) && story!=parent) {
-			this.addInOrder(parent, stories);
-		}
-		stories.add(story);
-	}
-	
 	public AgilefantWidgetAndRef addWidgetTypeInfo(AgilefantWidget widget) {
 		if(widget.getType().startsWith("story")) {
 			Story story = this.storyDAO.get(widget.getObjectId());
@@ -133,44 +177,113 @@ public class ExportImportBusinessImpl implements ExportImportBusiness {
 		
 	@Override
 	@Transactional(readOnly=true)
-	public OrganizationDumpTO exportOrganization() {
-
-		OrganizationDumpTO organizationTO = new OrganizationDumpTO();
-		
-		organizationTO.assignments.addAll(this.assignmentDAO.getAll());
-		organizationTO.backlogHistoryEntries.addAll(this.backlogHistoryEntryDAO.getAll());
-		organizationTO.backlogHourEntries.addAll(this.backlogHourEntryDAO.getAll());
-		organizationTO.holidays.addAll(this.holidayDAO.getAll());
-		organizationTO.iterations.addAll(this.iterationDAO.getAll());
-		organizationTO.iterationHistoryEntries.addAll(this.iterationHistoryEntryDAO.getAll());
-		organizationTO.labels.addAll(this.labelDAO.getAll());
-		organizationTO.products.addAll(this.productDAO.getAll());
-		organizationTO.projects.addAll(this.projectDAO.getAll());
-		organizationTO.settings.addAll(this.settingDAO.getAll());
-		
-		for(Story story : this.storyDAO.getAll()) {
-			this.addInOrder(story, organizationTO.stories);
+	public void exportOrganization(OrganizationDumpHandler handler) {
+		this.exportAll(handler, "users", this.userDAO);
+		this.exportAll(handler, "holidays", this.holidayDAO);
+		this.exportAll(handler, "products", this.productDAO);
+		this.exportAll(handler, "projects", this.projectDAO);
+		this.exportAll(handler, "iterations", this.iterationDAO);
+		this.exportStories(handler);
+		this.exportAll(handler, "tasks", this.taskDAO);
+		this.exportAll(handler, "assignments", this.assignmentDAO);
+		this.exportAll(handler, "backlogHourEntries", this.backlogHourEntryDAO);
+		this.exportAll(handler, "storyHourEntries", this.storyHourEntryDAO);
+		this.exportAll(handler, "taskHourEntries", this.taskHourEntryDAO);
+		this.exportAll(handler, "backlogHistoryEntries", this.backlogHistoryEntryDAO);
+		this.exportAll(handler, "iterationHistoryEntries", this.iterationHistoryEntryDAO);
+		this.exportAll(handler, "labels", this.labelDAO);
+		this.exportAll(handler, "storyAccesses", this.storyAccessDAO);
+		this.exportAll(handler, "storyRanks", this.storyRankDAO);
+		this.exportAll(handler, "teams", this.teamDAO);
+		this.exportAll(handler, "whatsNextEntries", this.whatsNextEntryDAO);
+		this.exportAll(handler, "whatsNextStoryEntries", this.whatsNextStoryEntryDAO);
+		this.exportAll(handler, "widgetCollections", this.widgetCollectionDAO);
+		this.exportWidgets(handler);
+		this.exportAll(handler, "settings", this.settingDAO);
+	}
+	
+	/**
+	 * Passes all objects of the DAO's type to the handler in batches. The
+	 * session is cleared after each batch, so that the loaded objects can be
+	 * garbage collected.
+	 */
+	private <T> void exportAll(OrganizationDumpHandler handler, String property, GenericDAO<T> dao) {
+		handler.startProperty(property);
+		int afterId = 0;
+		List<T> batch;
+		do {
+			batch = dao.getBatch(afterId, EXPORT_BATCH_SIZE);
+			for(T object : batch) {
+				handler.handleObject(object);
+			}
+			if(!batch.isEmpty()) {
+				afterId = this.getId(batch.get(batch.size() - 1));
+			}
+			this.sessionFactory.getCurrentSession().clear();
+		} while(batch.size() == EXPORT_BATCH_SIZE);
+		handler.endProperty();
+	}
+	
+	private int getId(Object object) {
+		return (Integer) this.sessionFactory.getCurrentSession().getIdentifier(object);
+	}
+	
+	/**
+	 * Exports the stories so that parent stories come before their children,
+	 * as the import saves them in this order.
+	 */
+	private void exportStories(OrganizationDumpHandler handler) {
+		handler.startProperty("stories");
+		List<Integer> storyIds = this.getStoryIdsInTreeOrder();
+		for(int i = 0; i < storyIds.size(); i += EXPORT_BATCH_SIZE) {
+			List<Integer> batchIds = storyIds.subList(i, Math.min(i + EXPORT_BATCH_SIZE, storyIds.size()));
+			Map<Integer, Story> stories = new HashMap<Integer, Story>();
+			for(Story story : this.storyDAO.getMultiple(batchIds)) {
+				stories.put(story.getId(), story);
+			}
+			for(Integer storyId : batchIds) {
+				handler.handleObject(stories.get(storyId));
+			}
+			this.sessionFactory.getCurrentSession().clear();
 		}
-		
-		organizationTO.storyAccesses.addAll(this.storyAccessDAO.getAll());
-		organizationTO.storyHourEntries.addAll(this.storyHourEntryDAO.getAll());
-		organizationTO.storyRanks.addAll(this.storyRankDAO.getAll());
-		organizationTO.tasks.addAll(this.taskDAO.getAll());
-		organizationTO.taskHourEntries.addAll(this.taskHourEntryDAO.getAll());
-		organizationTO.teams.addAll(this.teamDAO.getAll());
-		organizationTO.users.addAll(this.userDAO.getAll());
-		organizationTO.whatsNextEntries.addAll(this.whatsNextEntryDAO.getAll());
-		organizationTO.whatsNextStoryEntries.addAll(this.whatsNextStoryEntryDAO.getAll());
-		organizationTO.widgetCollections.addAll(this.widgetCollectionDAO.getAll());
-
-		for(AgilefantWidget widget : this.agilefantWidgetDAO.getAll()) {
-			AgilefantWidgetAndRef widgetAndRef = this.addWidgetTypeInfo(widget);
-			if(widgetAndRef!=null) {
-				organizationTO.widgets.add(widgetAndRef);
+		handler.endProperty();
+	}
+	
+	List<Integer> getStoryIdsInTreeOrder() {
+		Map<Integer, Integer> parentIds = this.storyDAO.retrieveParentIds();
+		List<Integer> ordered = new ArrayList<Integer>(parentIds.size());
+		Set<Integer> added = new HashSet<Integer>();
+		for(Integer storyId : parentIds.keySet()) {
+			// Add the ancestors that are not added yet, topmost first
+			Deque<Integer> path = new ArrayDeque<Integer>();
+			for(Integer id = storyId; id != null && !added.contains(id) && !path.contains(id); id = parentIds.get(id)) {
+				path.push(id);
+			}
+			while(!path.isEmpty()) {
+				Integer id = path.pop();
+				added.add(id);
+				ordered.add(id);
 			}
 		}
-		
-		return organizationTO;
+		return ordered;
+	}
+	
+	private void exportWidgets(OrganizationDumpHandler handler) {
+		handler.startProperty("widgets");
+		int afterId = 0;
+		List<AgilefantWidget> batch;
+		do {
+			batch = this.agilefantWidgetDAO.getBatch(afterId, EXPORT_BATCH_SIZE);
+			for(AgilefantWidget widget : batch) {
+				AgilefantWidgetAndRef widgetAndRef = this.addWidgetTypeInfo(widget);
+				if(widgetAndRef!=null) {
+					handler.handleObject(widgetAndRef);
+				}
+				afterId = widget.getId();
+			}
+			this.sessionFactory.getCurrentSession().clear();
+		} while(batch.size() == EXPORT_BATCH_SIZE);
+		handler.endProperty();
 	}
 	
 	private String generateDuplicateIdentifier() {
@@ -178,18 +291,19 @@ public class ExportImportBusinessImpl implements ExportImportBusiness {
 		return "_DUPLICATE" + new BigInteger(50, r).toString();
 	}
 	
-	void renameDuplicateData(OrganizationDumpTO organizationTO) {
-		for(User user : organizationTO.users) {
+	void renameDuplicateData(Object object) {
+		if(object instanceof User) {
+			User user = (User)object;
 			while (this.userBusiness.retrieveByLoginName(user.getLoginName())!=null) {
 				user.setLoginName(user.getLoginName() + generateDuplicateIdentifier());				
 			}
-		}
-		for(Team team : organizationTO.teams) {
+		} else if(object instanceof Team) {
+			Team team = (Team)object;
 			while (this.teamBusiness.getByTeamName(team.getName())!=null) {
 				team.setName(team.getName() + generateDuplicateIdentifier());
 			}
-		}
-		for(Iteration iteration : organizationTO.iterations) {
+		} else if(object instanceof Iteration) {
+			Iteration iteration = (Iteration)object;
 			if (iteration.getReadonlyToken() != null) {
 				iteration.setReadonlyToken(tokenGenerator.generateReadonlyToken(iteration.getReadonlyToken()));
 			}
@@ -198,57 +312,100 @@ public class ExportImportBusinessImpl implements ExportImportBusiness {
 	
 	@Override
 	@Transactional(rollbackFor=RuntimeException.class)
-	public void importOrganization(OrganizationDumpTO organizationTO) {
-		this.renameDuplicateData(organizationTO);
+	public void importOrganization(OrganizationDumpReader reader) {
+		BulkLoadContext.begin();
+		try {
+			reader.read(new ImportHandler(reader, this.settingDAO.count() == 0));
+		} catch(RuntimeException e) {
+			LOG.error("Error importing data");
+			throw e;
+		} finally {
+			BulkLoadContext.end();
+		}
+		this.dailyEffortSumDAO.rebuild();
+		this.storyAccessDAO.rebuildSums();
+		this.storyTreeMetricsDAO.rebuild();
+		this.storyAncestorDAO.rebuild();
+		this.authorizationBusiness.accessRightsChanged();
+		this.personalLoadBusiness.loadDataChanged();
+		this.searchIndexBusiness.refreshIndex();
+		this.menuBusiness.backlogMenuChanged();
+		this.autocompleteBusiness.autocompleteDataChanged();
+		this.dailyWorkBusiness.allAssignedWorkChanged();
+		this.projectBurnupBusiness.burnupDataChanged();
+		this.settingBusiness.settingsChanged();
+	}
+	
+	/**
+	 * Saves the imported objects as they are read. The session is flushed and
+	 * cleared after each batch, and the saved objects are replaced with
+	 * Hibernate proxies for the references that are read later, so that only
+	 * the current batch is kept in memory.
+	 */
+	private class ImportHandler implements OrganizationDumpHandler {
+		
+		private final OrganizationDumpReader reader;
+		private final boolean saveSettings;
+		private final Session session = sessionFactory.getCurrentSession();
+		private String property;
+		private int propertyCount = 0;
+		private int count = 0;
+		
+		public ImportHandler(OrganizationDumpReader reader, boolean saveSettings) {
+			this.reader = reader;
+			this.saveSettings = saveSettings;
+		}
 		
-		Collection<Object> objects = new ArrayList<Object>();
-		objects.addAll(organizationTO.users);
-		objects.addAll(organizationTO.holidays);
-		objects.addAll(organizationTO.products);
-		objects.addAll(organizationTO.projects);
-		objects.addAll(organizationTO.iterations);
-		objects.addAll(organizationTO.stories);
-		objects.addAll(organizationTO.tasks);
-		objects.addAll(organizationTO.assignments);
-		objects.addAll(organizationTO.backlogHourEntries);
-		objects.addAll(organizationTO.storyHourEntries);
-		objects.addAll(organizationTO.taskHourEntries);
-		objects.addAll(organizationTO.backlogHistoryEntries);
-		objects.addAll(organizationTO.iterationHistoryEntries);
-		objects.addAll(organizationTO.labels);
-		objects.addAll(organizationTO.storyAccesses);
-		objects.addAll(organizationTO.storyRanks);
-		objects.addAll(organizationTO.teams);
-		objects.addAll(organizationTO.whatsNextEntries);
-		objects.addAll(organizationTO.whatsNextStoryEntries);
-		objects.addAll(organizationTO.widgetCollections);
-		objects.addAll(organizationTO.widgets);
-		if (settingDAO.count() == 0) {
-			objects.addAll(organizationTO.settings);
-		} else {
-			for (Setting setting: organizationTO.settings) {
+		public void startProperty(String name) {
+			this.property = name;
+			this.propertyCount = 0;
+		}
+
+		public void handleObject(Object object) {
+			if(object instanceof HibernateProxy) {
+				// A reference to an object that is already imported
+				return;
+			}
+			if(object instanceof Setting && !this.saveSettings) {
+				Setting setting = (Setting)object;
 				settingBusiness.setValue(setting.getName(), setting.getValue());
+				return;
+			}
+			if(object instanceof AgilefantWidgetAndRef) {
+				// Deref the widget object here, will set proper object id as the referenced object is persisted by now
+				object = ((AgilefantWidgetAndRef)object).getAgilefantWidget();
+			}
+			renameDuplicateData(object);
+			this.session.save(object);
+			this.propertyCount++;
+			if(++this.count % IMPORT_BATCH_SIZE == 0) {
+				this.endBatch();
+			}
+			if(this.count % IMPORT_PROGRESS_INTERVAL == 0) {
+				LOG.info("Imported " + this.count + " objects, currently " + this.property);
 			}
 		}
 
-		Session session = this.sessionFactory.getCurrentSession();
-		try {
-			int index = 0;
-			for(Object object : objects) {
-				if(object instanceof AgilefantWidgetAndRef) {
-					// Deref the widget object here, will set proper object id as the referenced object is persisted by now
-					object = ((AgilefantWidgetAndRef)object).getAgilefantWidget();
-				}
-				session.save(object);					
-				if(index++ % 50 == 0) {
-					session.flush();
-					session.clear();
+		public void endProperty() {
+			this.endBatch();
+			LOG.info("Imported " + this.propertyCount + " " + this.property);
+		}
+		
+		private void endBatch() {
+			this.session.flush();
+			this.reader.replaceReadObjects(new Function<Object, Object>() {
+				public Object apply(Object object) {
+					if(!session.contains(object)) {
+						// Not saved yet, e.g. a nested object that comes later in its own property
+						return object;
+					}
+					Class<?> type = Hibernate.getClass(object);
+					Serializable id = session.getIdentifier(object);
+					session.evict(object);
+					return session.load(type, id);
 				}
-			}
-			
-		} catch(Exception e) {
-			LOG.error("Error importing data");
-			throw new RuntimeException(e);
+			});
+			this.session.clear();
 		}
 	}
 }
@@ -1,5 +1,7 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -19,6 +21,7 @@ import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.support.PropertyComparator;
@@ -38,6 +41,7 @@ import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.IterationMetrics;
 import fi.hut.soberit.agilefant.transfer.IterationTO;
 import fi.hut.soberit.agilefant.transfer.StoryTO;
+import fi.hut.soberit.agilefant.util.ExportUtils;
 import fi.hut.soberit.agilefant.util.StoryMetrics;
 
 @Service("exportIterationBusiness")
@@ -64,13 +68,28 @@ public class ExportIterationBusinessImpl implements ExportIterationBusiness {
 
     public Workbook exportIteration(int iterationId) {
         Workbook wb = new HSSFWorkbook();
+        fillWorkbook(wb, iterationId);
+        return wb;
+    }
+
+    public void writeIterationXlsx(int iterationId, OutputStream out)
+            throws IOException {
+        SXSSFWorkbook wb = new SXSSFWorkbook(ExportUtils.XLSX_ROW_WINDOW);
+        try {
+            fillWorkbook(wb, iterationId);
+            wb.write(out);
+        } finally {
+            wb.dispose();
+        }
+    }
+
+    private void fillWorkbook(Workbook wb, int iterationId) {
         IterationTO iteration = iterationBusiness
                 .getIterationContents(iterationId);
         SheetStyles styles = createStyles(wb);
         createSummary(wb, styles, iteration);
         createStories(wb, styles, iteration);
         createTasks(wb, styles, iteration);
-        return wb;
     }
 
     private SheetStyles createStyles(Workbook wb) {
@@ -466,7 +485,9 @@ public class ExportIterationBusinessImpl implements ExportIterationBusiness {
         if (value != null && value.length() > SpreadsheetVersion.EXCEL97.getMaxTextLength()) {
             value = value.substring(0, SpreadsheetVersion.EXCEL97.getMaxTextLength());
         }
-        cell.setCellValue(value);
+        if (value != null) {
+            cell.setCellValue(value);
+        }
     }
 
     private static void formatCellUsers(Cell cell, CellStyle style,
@@ -3,13 +3,12 @@ package fi.hut.soberit.agilefant.business.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
 import org.joda.time.LocalDate;
@@ -20,12 +19,15 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.BacklogBusiness;
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
 import fi.hut.soberit.agilefant.business.HourEntryBusiness;
 import fi.hut.soberit.agilefant.business.StoryBusiness;
 import fi.hut.soberit.agilefant.business.TaskBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
 import fi.hut.soberit.agilefant.db.BacklogHourEntryDAO;
+import fi.hut.soberit.agilefant.db.DailyEffortSumDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
 import fi.hut.soberit.agilefant.model.HourEntry;
@@ -58,6 +60,12 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
   
     @Autowired
     private BacklogHourEntryDAO backlogHourEntryDAO;
+    @Autowired
+    private BacklogVersionBusiness backlogVersionBusiness;
+    @Autowired
+    private DailyEffortSumDAO dailyEffortSumDAO;
+    @Autowired
+    private StoryTreeMetricsDAO storyTreeMetricsDAO;
 
     public HourEntryBusinessImpl() {
         super(HourEntry.class);
@@ -82,6 +90,7 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
             backlogEntry.setUser(targetUser);
             validateAndCopyFields(backlogEntry, effortEntry);
             this.hourEntryDAO.create(backlogEntry);
+            markBacklogChanged(backlogEntry);
         }
     }
 
@@ -98,6 +107,7 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
             storyEntry.setUser(targetUser);
             validateAndCopyFields(storyEntry, effortEntry);
             this.hourEntryDAO.create(storyEntry);
+            markBacklogChanged(storyEntry);
         }
     }
 
@@ -113,9 +123,66 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
             taskEntry.setUser(targetUser);
             validateAndCopyFields(taskEntry, effortEntry);
             this.hourEntryDAO.create(taskEntry);
+            markBacklogChanged(taskEntry);
         }
     }
     
+    @Override
+    @Transactional
+    public void store(HourEntry hourEntry) {
+        super.store(hourEntry);
+        markBacklogChanged(hourEntry);
+    }
+    
+    @Override
+    @Transactional
+    public void delete(int id) {
+        HourEntry hourEntry = hourEntryDAO.get(id);
+        if (hourEntry != null) {
+            markBacklogChanged(hourEntry);
+        }
+        super.delete(id);
+    }
+    
+    @Override
+    @Transactional
+    public void delete(HourEntry hourEntry) {
+        markBacklogChanged(hourEntry);
+        super.delete(hourEntry);
+    }
+    
+    /**
+     * Marks the iteration or backlog the entry's effort is counted in as
+     * changed.
+     */
+    private void markBacklogChanged(HourEntry hourEntry) {
+        Backlog backlog = getChangedBacklog(hourEntry);
+        if (backlog != null) {
+            backlogVersionBusiness.backlogChanged(backlog.getId());
+        }
+    }
+
+    private static Backlog getChangedBacklog(HourEntry hourEntry) {
+        Backlog backlog = null;
+        if (hourEntry instanceof TaskHourEntry) {
+            Task task = ((TaskHourEntry) hourEntry).getTask();
+            if (task != null) {
+                backlog = task.getIteration();
+                if (backlog == null && task.getStory() != null) {
+                    backlog = task.getStory().getIteration();
+                }
+            }
+        } else if (hourEntry instanceof StoryHourEntry) {
+            Story story = ((StoryHourEntry) hourEntry).getStory();
+            if (story != null) {
+                backlog = story.getIteration();
+            }
+        } else if (hourEntry instanceof BacklogHourEntry) {
+            backlog = ((BacklogHourEntry) hourEntry).getBacklog();
+        }
+        return backlog;
+    }
+    
     private void validateAndCopyFields(HourEntry target, HourEntry source) {
         if(source.getDate() == null) {
             throw new IllegalArgumentException("Invalid date");
@@ -170,9 +237,15 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
     
     @Transactional(readOnly = true)
     public List<DailySpentEffort> getDailySpentEffortByIteration(Iteration iteration) {
-        List<HourEntry> entries = hourEntryDAO.getAllIterationHourEntries(iteration.getId());
-        
-        return this.getDailySpentEffortForHourEntries(entries, iteration.getStartDate(), iteration.getEndDate());
+        return this.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), iteration.getEndDate());
+    }
+
+    @Transactional(readOnly = true)
+    public List<DailySpentEffort> getDailySpentEffortForIteration(Iteration iteration,
+            DateTime start, DateTime end) {
+        Map<LocalDate, Long> dailySums = dailyEffortSumDAO.getDailySumsByIteration(
+                iteration.getId(), start.toLocalDate(), end.toLocalDate());
+        return getDailySpentEffortForDays(dailySums, start, end);
     }
     
     @Transactional(readOnly = true)
@@ -199,6 +272,15 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
         }
         return dateTime;
     }
+
+    /**
+     * The daily sums are stored by the server days, so they can be used only
+     * when the user's days start at the same time.
+     */
+    private boolean isServerDay(DateTimeZone zone, DateTimeZone serverTimeZone) {
+        int serverOffset = (serverTimeZone == null) ? 0 : serverTimeZone.getOffset(0);
+        return zone.getOffset(0) == serverOffset;
+    }
     
     public List<HourEntry> getEntriesByUserAndDay(LocalDate day, int userId, int userHourTimeZone, int userMinuteTimeZone, DateTimeZone serverTimeZone) {
         DateTimeZone zone = DateTimeZone.forOffsetHoursMinutes(userHourTimeZone, userMinuteTimeZone);
@@ -220,6 +302,9 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
         tmp.setSecondOfMinute(59);
         DateTime end = tmp.toDateTime();
         DateTimeZone zone = DateTimeZone.forOffsetHoursMinutes(userHourTimeZone, userMinuteTimeZone);
+        if (isServerDay(zone, serverTimeZone)) {
+            return dailyEffortSumDAO.calculateSumByUser(userId, start.toLocalDate(), end.toLocalDate());
+        }
         start = setTimeZone(start, zone, serverTimeZone);
         end = setTimeZone(end, zone, serverTimeZone);
         return this.hourEntryDAO.calculateSumByUserAndTimeInterval(userId, start, end);
@@ -248,9 +333,9 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
         if(start.compareTo(end) >= 0) {
             return Collections.emptyList();
         }
-        List<HourEntry> entries = this.hourEntryDAO.getHourEntriesByFilter(start, end, userId);
-        
-        return getDailySpentEffortForHourEntries(entries, start, end);
+        Map<LocalDate, Long> dailySums = dailyEffortSumDAO.getDailySumsByUser(userId,
+                start.toLocalDate(), end.toLocalDate());
+        return getDailySpentEffortForDays(dailySums, start, end);
     }
     
     /**
@@ -268,6 +353,11 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
         if(start.compareTo(end) >= 0) {
             return Collections.emptyList();
         }
+        if (isServerDay(zone, serverTimeZone)) {
+            Map<LocalDate, Long> dailySums = dailyEffortSumDAO.getDailySumsByUser(userId,
+                    start.toLocalDate(), end.toLocalDate());
+            return getDailySpentEffortForDays(dailySums, start, end);
+        }
         List<HourEntry> entries = this.hourEntryDAO.getHourEntriesByFilter(startWithZone, endWithZone, userId);
         
         //sum efforts per day
@@ -299,12 +389,11 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
     
     public List<DailySpentEffort> getDailySpentEffortForHourEntries(List<? extends HourEntry> entries,
             DateTime start, DateTime end) {
-        Map<Date, Long> dbData = new HashMap<Date, Long>();
-        List<DailySpentEffort> dailyEffort = new ArrayList<DailySpentEffort>();
+        Map<LocalDate, Long> dbData = new HashMap<LocalDate, Long>();
 
         //sum efforts per day
         for(HourEntry entry : entries) {
-            Date date = entry.getDate().toDateMidnight().toDate();
+            LocalDate date = entry.getDate().toLocalDate();
             
             if(!dbData.containsKey(date)) {
                 dbData.put(date, 0L);
@@ -313,15 +402,21 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
             dbData.put(date, dbData.get(date) + entry.getMinutesSpent());
         }
         
+        return getDailySpentEffortForDays(dbData, start, end);
+    }
+
+    private List<DailySpentEffort> getDailySpentEffortForDays(Map<LocalDate, Long> dailySums,
+            DateTime start, DateTime end) {
+        List<DailySpentEffort> dailyEffort = new ArrayList<DailySpentEffort>();
         MutableDateTime iteratorDate = new MutableDateTime(start.toDateMidnight());
         
         //construct list that has a single entry per day
         while(iteratorDate.compareTo(end) <= 0) {
             DailySpentEffort effortEntry = new DailySpentEffort();
-            Date currentDate = iteratorDate.toDate();
+            LocalDate currentDate = iteratorDate.toDateTime().toLocalDate();
             
-            if(dbData.containsKey(currentDate)) {
-                effortEntry.setSpentEffort(dbData.get(currentDate));
+            if(dailySums.containsKey(currentDate)) {
+                effortEntry.setSpentEffort(dailySums.get(currentDate));
             }
             
             effortEntry.setDay(iteratorDate.toDateTime());
@@ -349,40 +444,101 @@ public class HourEntryBusinessImpl extends GenericBusinessImpl<HourEntry>
     public void setBacklogBusiness(BacklogBusiness backlogBusiness) {
         this.backlogBusiness = backlogBusiness;
     }
+    public void setBacklogVersionBusiness(BacklogVersionBusiness backlogVersionBusiness) {
+        this.backlogVersionBusiness = backlogVersionBusiness;
+    }
+    public void setDailyEffortSumDAO(DailyEffortSumDAO dailyEffortSumDAO) {
+        this.dailyEffortSumDAO = dailyEffortSumDAO;
+    }
+    public void setStoryTreeMetricsDAO(StoryTreeMetricsDAO storyTreeMetricsDAO) {
+        this.storyTreeMetricsDAO = storyTreeMetricsDAO;
+    }
 
+    /**
+     * The entries are deleted and moved with bulk statements, so the daily
+     * sums, the story tree metrics and the backlog versions, which are
+     * otherwise updated per entry, are updated here once for all of them.
+     */
     public void deleteAll(Collection<? extends HourEntry> hourEntries) {
-        for (HourEntry hourEntry : hourEntries) {
-            hourEntryDAO.remove(hourEntry);
+        if (hourEntries.isEmpty()) {
+            return;
         }
+        Set<Integer> ids = getIds(hourEntries);
+        BranchChanges changes = new BranchChanges(hourEntries);
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.removeAll(hourEntries);
+        changes.apply();
     }
     
     public void moveToBacklog(Collection<? extends HourEntry> hourEntries, Backlog backlog) {
-        for (HourEntry hourEntry : hourEntries) {
-            BacklogHourEntry newHourEntry = new BacklogHourEntry();
-            try {
-                PropertyUtils.copyProperties(newHourEntry, hourEntry);
-                newHourEntry.setId(0);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
-            hourEntryDAO.remove(hourEntry);
-            newHourEntry.setBacklog(backlog);
-            hourEntryDAO.store(newHourEntry);
+        if (hourEntries.isEmpty()) {
+            return;
         }
+        Set<Integer> ids = getIds(hourEntries);
+        BranchChanges changes = new BranchChanges(hourEntries);
+        changes.backlogIds.add(backlog.getId());
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.moveToBacklog(hourEntries, backlog.getId());
+        dailyEffortSumDAO.addHourEntryMinutes(ids, 1);
+        changes.apply();
     }
 
     public void moveToStory(Collection<? extends HourEntry> hourEntries, Story story) {
+        if (hourEntries.isEmpty()) {
+            return;
+        }
+        Set<Integer> ids = getIds(hourEntries);
+        BranchChanges changes = new BranchChanges(hourEntries);
+        changes.storyIds.add(story.getId());
+        if (story.getIteration() != null) {
+            changes.backlogIds.add(story.getIteration().getId());
+        }
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.moveToStory(hourEntries, story.getId());
+        dailyEffortSumDAO.addHourEntryMinutes(ids, 1);
+        changes.apply();
+    }
+
+    private static Set<Integer> getIds(Collection<? extends HourEntry> hourEntries) {
+        Set<Integer> ids = new HashSet<Integer>();
         for (HourEntry hourEntry : hourEntries) {
-            StoryHourEntry newHourEntry = new StoryHourEntry();
-            try {
-                PropertyUtils.copyProperties(newHourEntry, hourEntry);
-                newHourEntry.setId(0);
-            } catch (Exception e) {
-                throw new RuntimeException(e);
+            ids.add(hourEntry.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The stories, tasks and backlogs whose derived data changes when the
+     * hour entries are deleted or moved.
+     */
+    private class BranchChanges {
+        private final Set<Integer> storyIds = new HashSet<Integer>();
+        private final Set<Integer> taskIds = new HashSet<Integer>();
+        private final Set<Integer> backlogIds = new HashSet<Integer>();
+
+        private BranchChanges(Collection<? extends HourEntry> hourEntries) {
+            for (HourEntry hourEntry : hourEntries) {
+                if (hourEntry instanceof TaskHourEntry
+                        && ((TaskHourEntry) hourEntry).getTask() != null) {
+                    taskIds.add(((TaskHourEntry) hourEntry).getTask().getId());
+                } else if (hourEntry instanceof StoryHourEntry
+                        && ((StoryHourEntry) hourEntry).getStory() != null) {
+                    storyIds.add(((StoryHourEntry) hourEntry).getStory().getId());
+                }
+                Backlog backlog = getChangedBacklog(hourEntry);
+                if (backlog != null) {
+                    backlogIds.add(backlog.getId());
+                }
+            }
+        }
+
+        private void apply() {
+            if (!storyIds.isEmpty() || !taskIds.isEmpty()) {
+                storyTreeMetricsDAO.updateBranches(storyIds, taskIds);
+            }
+            for (Integer backlogId : backlogIds) {
+                backlogVersionBusiness.backlogChanged(backlogId);
             }
-            hourEntryDAO.remove(hourEntry);
-            newHourEntry.setStory(story);
-            hourEntryDAO.store(newHourEntry);
         }
     }
     
@@ -9,6 +9,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.List;
@@ -38,6 +39,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
 import fi.hut.soberit.agilefant.business.HourEntryBusiness;
 import fi.hut.soberit.agilefant.business.IterationBurndownBusiness;
 import fi.hut.soberit.agilefant.business.IterationBusiness;
@@ -83,6 +90,20 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
     @Autowired
     private SettingBusiness settingBusiness;
 
+    @Autowired
+    private BacklogVersionBusiness backlogVersionBusiness;
+
+    /* Rendered chart images, bounded by their total size */
+    protected static final long CHART_CACHE_MAX_BYTES = 16 * 1024 * 1024;
+
+    private final Cache<String, byte[]> chartCache = CacheBuilder.newBuilder()
+            .maximumWeight(CHART_CACHE_MAX_BYTES)
+            .weigher(new Weigher<String, byte[]>() {
+                public int weigh(String key, byte[] value) {
+                    return value.length;
+                }
+            }).build();
+
     /* Chart sizes */
     protected static final int DEFAULT_WIDTH = 780;
     protected static final int DEFAULT_HEIGHT = 600;
@@ -195,6 +216,11 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
         this.iterationBusiness = iterationBusiness;
     }
 
+    public void setBacklogVersionBusiness(
+            BacklogVersionBusiness backlogVersionBusiness) {
+        this.backlogVersionBusiness = backlogVersionBusiness;
+    }
+
     /**
      * Generates a byte array (a png image file) from a JFreeChart object
      * 
@@ -231,17 +257,55 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
 
     /** {@inheritDoc} */
     public byte[] getIterationBurndown(Iteration iteration, Integer timeZoneOffset) {
-        return getChartImageByteArray(constructChart(iteration, timeZoneOffset));
+        return getCachedChartImage(iteration, timeZoneOffset, DEFAULT_WIDTH,
+                DEFAULT_HEIGHT, false);
     }
 
     public byte[] getSmallIterationBurndown(Iteration iteration, Integer timeZoneOffset) {
-        return getChartImageByteArray(constructSmallChart(iteration, timeZoneOffset),
-                SMALL_WIDTH, SMALL_HEIGHT);
+        return getCachedChartImage(iteration, timeZoneOffset, SMALL_WIDTH,
+                SMALL_HEIGHT, true);
     }
 
     public byte[] getCustomIterationBurndown(Iteration iteration,
             Integer width, Integer height, Integer timeZoneOffset) {
-        return getChartImageByteArray(constructChart(iteration, timeZoneOffset), width, height);
+        return getCachedChartImage(iteration, timeZoneOffset, width, height,
+                false);
+    }
+
+    /** {@inheritDoc} */
+    public String getIterationBurndownETag(Iteration iteration,
+            Integer timeZoneOffset) {
+        int iterationHash = Objects.hashCode(iteration.getName(),
+                iteration.getStartDate(), iteration.getEndDate());
+        StringBuilder tag = new StringBuilder();
+        tag.append(iteration.getId()).append('-');
+        tag.append(Long.toHexString(backlogVersionBusiness.getVersion(iteration.getId()))).append('-');
+        tag.append(Integer.toHexString(iterationHash)).append('-');
+        tag.append(new LocalDate()).append('-');
+        tag.append(timeZoneOffset).append('-');
+        tag.append(settingBusiness.isWeekendsInBurndown() ? 'w' : 'n');
+        tag.append(settingBusiness.isHourReportingEnabled() ? 'h' : 'n');
+        return tag.toString();
+    }
+
+    /**
+     * Returns the burndown image from the chart cache or renders and caches
+     * it if the iteration has changed since the last rendering.
+     */
+    private byte[] getCachedChartImage(Iteration iteration,
+            Integer timeZoneOffset, int width, int height, boolean small) {
+        String key = getIterationBurndownETag(iteration, timeZoneOffset) + "-"
+                + width + "x" + height + (small ? "s" : "");
+        byte[] image = chartCache.getIfPresent(key);
+        if (image == null) {
+            JFreeChart chart = small ? constructSmallChart(iteration,
+                    timeZoneOffset) : constructChart(iteration, timeZoneOffset);
+            image = getChartImageByteArray(chart, width, height);
+            if (image != null) {
+                chartCache.put(key, image);
+            }
+        }
+        return image;
     }
 
     protected JFreeChart constructChart(Iteration iteration, boolean drawLegend, Integer timeZoneOffset) {
@@ -462,14 +526,10 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
         List<IterationHistoryEntry> iterationEntries = iterationHistoryEntryBusiness
                 .getHistoryEntriesForIteration(iteration);
         
-        List<HourEntry> hourEntries = hourEntryBusiness.getHourEntriesForIteration(iteration);
-        
-        // Clear all hour entries if hour reporting is disabled so we don't mess up with the y-axis scaling
+        // Leave out the spent effort if hour reporting is disabled so we don't mess up with the y-axis scaling
         // It is more simple to hide the spent effort line than remove the series from the graph as it would affect the series indexes
         // (see more comments on that in transformToSmallChart below HORROR comment)
-        if (!settingBusiness.isHourReportingEnabled()) {
-            hourEntries.clear();
-        }
+        boolean spentEffortShown = settingBusiness.isHourReportingEnabled();
 
         LocalDate yesterday = new LocalDate().minusDays(1);
         LocalDate today = new LocalDate();
@@ -485,13 +545,13 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
                 new LocalDate(iteration.getStartDate()),
                 determineEndDate(new LocalDate(iteration.getEndDate()))));
         
-        chartDataset.addSeries(getEffortSpentTimeSeries(hourEntries, 
+        chartDataset.addSeries(getEffortSpentTimeSeries(iteration, spentEffortShown,
                 iterationStartDate, iterationEndDate));
 
         chartDataset.addSeries(getCurrentDayEffortLeftSeries(yesterdayEntry,
                 todayEntry));
         
-        chartDataset.addSeries(getCurrentDaySpentEffortSeries(hourEntries, 
+        chartDataset.addSeries(getCurrentDaySpentEffortSeries(iteration, spentEffortShown,
                 iterationStartDate));
         
         chartDataset.addSeries(getScopingTimeSeries(iterationEntries,
@@ -651,13 +711,13 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
      * Get the <code>TimeSeries</code> for drawing the current day line.
      * @param timeDifferenceHours 
      */
-    protected TimeSeries getCurrentDaySpentEffortSeries(List<? extends HourEntry> hourEntries,
-            DateTime startDate) {
+    protected TimeSeries getCurrentDaySpentEffortSeries(Iteration iteration,
+            boolean spentEffortShown, DateTime startDate) {
         TimeSeries effortSpentSeries = new TimeSeries(CURRENT_DAY_EFFORT_SPENT_SERIES_NAME);
         
         DateTime tomorrow = new DateMidnight().plusDays(1).toDateTime();
         
-        List<DailySpentEffort> spentEffortList = hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntries, 
+        List<DailySpentEffort> spentEffortList = getDailySpentEffort(iteration, spentEffortShown,
                 startDate, tomorrow);
         
         double cumulativeSum = 0.0;
@@ -680,26 +740,27 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
     }
 
     /**
-     * Creates a TimeSeries of effort spent for a given list of HourEntries
+     * Creates a TimeSeries of effort spent in the given iteration
      * 
-     * @param hourEntries
+     * @param iteration
+     * @param spentEffortShown
      * @param startDate
      * @param endDate
      * @return
      */
-    protected TimeSeries getEffortSpentTimeSeries(List<? extends HourEntry> hourEntries, 
-            DateTime startDate, DateTime endDate) {
+    protected TimeSeries getEffortSpentTimeSeries(Iteration iteration,
+            boolean spentEffortShown, DateTime startDate, DateTime endDate) {
         TimeSeries effortSpentSeries = new TimeSeries(EFFORT_SPENT_SERIES_NAME);
         
         List<DailySpentEffort> spentEffortList = new ArrayList<DailySpentEffort>();
         DateMidnight today = new DateMidnight();
         
         if (today.isBefore(endDate)) {
-           spentEffortList = hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntries, 
+           spentEffortList = getDailySpentEffort(iteration, spentEffortShown,
                 startDate.minusDays(1), today.minusDays(1).toDateTime());
         }
         else {
-            spentEffortList = hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntries, 
+            spentEffortList = getDailySpentEffort(iteration, spentEffortShown,
                 startDate.minusDays(1), endDate.plusDays(1));
         }
         
@@ -716,6 +777,16 @@ public class IterationBurndownBusinessImpl implements IterationBurndownBusiness
         
         return effortSpentSeries;
     }
+
+    private List<DailySpentEffort> getDailySpentEffort(Iteration iteration,
+            boolean spentEffortShown, DateTime startDate, DateTime endDate) {
+        if (!spentEffortShown) {
+            return hourEntryBusiness.getDailySpentEffortForHourEntries(
+                    Collections.<HourEntry>emptyList(), startDate, endDate);
+        }
+        return hourEntryBusiness.getDailySpentEffortForIteration(iteration,
+                startDate, endDate);
+    }
     
     protected TimeSeriesDataItem getEffortSpentDataItemForDay(DailySpentEffort entry) {
         Second second  = new Second(entry.getDay().
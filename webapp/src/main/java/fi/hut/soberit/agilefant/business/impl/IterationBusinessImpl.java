@@ -8,6 +8,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
@@ -20,6 +22,7 @@ import org.springframework.transaction.annotation.Transactional;
 import fi.hut.soberit.agilefant.business.AssignmentBusiness;
 import fi.hut.soberit.agilefant.business.BacklogBusiness;
 import fi.hut.soberit.agilefant.business.BacklogHistoryEntryBusiness;
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
 import fi.hut.soberit.agilefant.business.HourEntryBusiness;
 import fi.hut.soberit.agilefant.business.IterationBusiness;
 import fi.hut.soberit.agilefant.business.IterationHistoryEntryBusiness;
@@ -28,8 +31,10 @@ import fi.hut.soberit.agilefant.business.StoryRankBusiness;
 import fi.hut.soberit.agilefant.business.TaskBusiness;
 import fi.hut.soberit.agilefant.business.TeamBusiness;
 import fi.hut.soberit.agilefant.business.TransferObjectBusiness;
+import fi.hut.soberit.agilefant.db.HourEntryDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO;
+import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.history.BacklogHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.StoryHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.TaskHistoryDAO;
@@ -91,6 +96,42 @@ public class IterationBusinessImpl extends GenericBusinessImpl<Iteration>
     private StoryHistoryDAO storyHistoryDAO;
     @Autowired
     private TaskHistoryDAO taskHistoryDAO;
+    @Autowired
+    private StoryDAO storyDAO;
+    @Autowired
+    private HourEntryDAO hourEntryDAO;
+    @Autowired
+    private BacklogVersionBusiness backlogVersionBusiness;
+
+    /**
+     * How long the computed metrics are cached. The metrics depend on the
+     * current date as well, so they are recomputed every now and then even
+     * without changes.
+     */
+    private static final long METRICS_CACHE_TIME = 60 * 1000L;
+
+    /**
+     * The computed metrics by iteration id.
+     */
+    private final ConcurrentMap<Integer, CachedMetrics> cachedMetrics = new ConcurrentHashMap<Integer, CachedMetrics>();
+
+    private static class CachedMetrics {
+        private final long version;
+        private final long computedAt;
+        private final IterationMetrics metrics;
+
+        public CachedMetrics(long version, long computedAt,
+                IterationMetrics metrics) {
+            this.version = version;
+            this.computedAt = computedAt;
+            this.metrics = metrics;
+        }
+
+        public boolean isValid(long version, long now) {
+            return this.version == version
+                    && now - this.computedAt < METRICS_CACHE_TIME;
+        }
+    }
     
     public IterationBusinessImpl() {
         super(Iteration.class);
@@ -326,9 +367,137 @@ public class IterationBusinessImpl extends GenericBusinessImpl<Iteration>
         //5. variance
         metrics.setVariance(calculateVariance(iteration));
         
-        //6. calculate percentages
-        metrics.setPercentDoneTasks(calculatePercent(pairTasks.first, pairTasks.second));
-        metrics.setPercentDoneStories(calculatePercent(pairStories.first, pairStories.second));
+        //6. calculate 'Value'
+        metrics.setTotalValue(backlogBusiness.getStoryValueSumByIteration(iteration));
+        metrics.setCompletedValue(backlogBusiness.getCompletedStoryValueSumByIteration(iteration));
+
+        //7. calculate percentages
+        calculatePercentages(metrics);
+        return metrics;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<Integer, IterationMetrics> getIterationMetrics(
+            Collection<? extends Iteration> iterations) {
+        long now = System.currentTimeMillis();
+        Map<Integer, IterationMetrics> result = new HashMap<Integer, IterationMetrics>();
+        Map<Integer, Iteration> uncachedIterations = new HashMap<Integer, Iteration>();
+        Map<Integer, Long> versions = new HashMap<Integer, Long>();
+        for (Iteration iteration : iterations) {
+            long version = backlogVersionBusiness.getVersion(iteration.getId());
+            CachedMetrics cached = cachedMetrics.get(iteration.getId());
+            if (cached != null && cached.isValid(version, now)) {
+                result.put(iteration.getId(), cached.metrics);
+            } else {
+                uncachedIterations.put(iteration.getId(), iteration);
+                versions.put(iteration.getId(), version);
+            }
+        }
+        if (uncachedIterations.isEmpty()) {
+            return result;
+        }
+
+        Map<Integer, IterationMetrics> computed = this
+                .calculateIterationMetrics(uncachedIterations);
+        for (Map.Entry<Integer, IterationMetrics> entry : computed.entrySet()) {
+            result.put(entry.getKey(), entry.getValue());
+            cachedMetrics.put(entry.getKey(), new CachedMetrics(versions
+                    .get(entry.getKey()), now, entry.getValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the metrics of the given iterations with grouped queries.
+     * The results are the same as with {@link #getIterationMetrics(Iteration)}.
+     */
+    private Map<Integer, IterationMetrics> calculateIterationMetrics(
+            Map<Integer, Iteration> iterations) {
+        Set<Integer> iterationIds = iterations.keySet();
+        LocalDate today = new LocalDate();
+
+        Map<Integer, IterationHistoryEntry> latestEntries = iterationHistoryEntryDAO
+                .retrieveLatest(iterationIds);
+        Map<Integer, IterationHistoryEntry> yesterdayEntries = iterationHistoryEntryDAO
+                .retrieveByDate(iterationIds, today.minusDays(1));
+        Map<Integer, Pair<Integer, Integer>> storyPointSums = storyDAO
+                .getDoneAndTotalStoryPointSumsByIteration(iterationIds);
+        Map<Integer, Pair<Integer, Integer>> storyValueSums = storyDAO
+                .getCompletedAndTotalStoryValueSumsByIteration(iterationIds);
+        Map<Integer, Long> spentEffortSums = hourEntryDAO
+                .calculateIterationHourEntriesSums(iterationIds);
+        Map<Integer, Pair<Integer, Integer>> taskCounts = iterationDAO
+                .getCountOfDoneAndNonDeferredTasksByIteration(iterationIds);
+        Map<Integer, Pair<Integer, Integer>> storyCounts = iterationDAO
+                .getCountOfDoneAndAllStoriesByIteration(iterationIds);
+
+        Map<Integer, IterationMetrics> result = new HashMap<Integer, IterationMetrics>();
+        for (Iteration iteration : iterations.values()) {
+            Integer id = iteration.getId();
+            IterationMetrics metrics = new IterationMetrics();
+
+            IterationHistoryEntry latestHistoryEntry = latestEntries.get(id);
+            if (latestHistoryEntry == null) {
+                metrics.setOriginalEstimate(new ExactEstimate(0));
+                metrics.setEffortLeft(new ExactEstimate(0));
+            } else {
+                metrics.setOriginalEstimate(new ExactEstimate(latestHistoryEntry
+                        .getOriginalEstimateSum()));
+                metrics.setEffortLeft(new ExactEstimate(latestHistoryEntry
+                        .getEffortLeftSum()));
+            }
+
+            if (iteration.getBacklogSize() == null)
+                metrics.setPlannedSize(new ExactEstimate(0));
+            else
+                metrics.setPlannedSize(new ExactEstimate(iteration.getBacklogSize().intValue()));
+
+            Pair<Integer, Integer> storyPoints = valueOrZeros(storyPointSums.get(id));
+            metrics.setDailyVelocity(calculateDailyStoryPointsVelocity(new LocalDate(iteration.getStartDate()), new LocalDate(iteration.getEndDate()), storyPoints.first));
+            metrics.setStoryPoints(storyPoints.second);
+            metrics.setDoneStoryPoints(storyPoints.first);
+
+            Long spentEffort = spentEffortSums.get(id);
+            metrics.setSpentEffort(new ExactEstimate((spentEffort == null) ? 0L : spentEffort));
+
+            Pair<Integer, Integer> pairTasks = valueOrZeros(taskCounts.get(id));
+            metrics.setTotalTasks(pairTasks.second);
+            metrics.setCompletedTasks(pairTasks.first);
+
+            Pair<Integer, Integer> pairStories = valueOrZeros(storyCounts.get(id));
+            metrics.setTotalStories(pairStories.second);
+            metrics.setCompletedStories(pairStories.first);
+
+            metrics.setTotalDays(Days.daysBetween(iteration.getStartDate(), iteration.getEndDate()).getDays());
+            if (today.isBefore(iteration.getEndDate().toLocalDate())) {
+                metrics.setDaysLeft(backlogBusiness.daysLeftInSchedulableBacklog(iteration).getDays());
+            }
+
+            if (latestHistoryEntry != null) {
+                metrics.setVariance(calculateVariance(iteration,
+                        latestHistoryEntry, yesterdayEntries.get(id)));
+            }
+
+            Pair<Integer, Integer> storyValues = valueOrZeros(storyValueSums.get(id));
+            metrics.setTotalValue(storyValues.second);
+            metrics.setCompletedValue(storyValues.first);
+
+            calculatePercentages(metrics);
+            result.put(id, metrics);
+        }
+        return result;
+    }
+
+    private static Pair<Integer, Integer> valueOrZeros(Pair<Integer, Integer> value) {
+        if (value == null) {
+            return Pair.create(0, 0);
+        }
+        return value;
+    }
+
+    private void calculatePercentages(IterationMetrics metrics) {
+        metrics.setPercentDoneTasks(calculatePercent(metrics.getCompletedTasks(), metrics.getTotalTasks()));
+        metrics.setPercentDoneStories(calculatePercent(metrics.getCompletedStories(), metrics.getTotalStories()));
         metrics.setPercentSpentEffort(calculatePercent(metrics.getSpentEffort().intValue(), metrics.getPlannedSize().intValue()));
         if(metrics.getPercentSpentEffort() > 100)
             metrics.setPercentSpentEffort(100);
@@ -338,12 +507,7 @@ public class IterationBusinessImpl extends GenericBusinessImpl<Iteration>
             int effortDone = metrics.getOriginalEstimate().intValue() - metrics.getEffortLeft().intValue();
             metrics.setCompletedEffortPercentage(calculatePercent(effortDone, metrics.getOriginalEstimate().intValue()));
         }
-        
-        //7. calculate 'Value'
-        metrics.setTotalValue(backlogBusiness.getStoryValueSumByIteration(iteration));
-        metrics.setCompletedValue(backlogBusiness.getCompletedStoryValueSumByIteration(iteration));
         metrics.setPercentCompletedValue(calculatePercent(metrics.getCompletedValue(), metrics.getTotalValue()));
-        return metrics;
     }
 
     
@@ -561,8 +725,17 @@ public class IterationBusinessImpl extends GenericBusinessImpl<Iteration>
         if(latestHistoryEntry == null) {
             return null;
         }
+        final IterationHistoryEntry yesterdayEntry = iterationHistoryEntryDAO
+                .retrieveByDate(iter.getId(), new LocalDate().minusDays(1));
+        return calculateVariance(iter, latestHistoryEntry, yesterdayEntry);
+    }
+
+    private Integer calculateVariance(Iteration iter,
+            IterationHistoryEntry latestHistoryEntry,
+            IterationHistoryEntry yesterdayEntry) {
         long effortLeft = latestHistoryEntry.getEffortLeftSum();
-        long dailyVelocity = calculateDailyVelocity(iter).longValue();
+        long dailyVelocity = calculateDailyVelocity(new LocalDate(iter.getStartDate()),
+                new LocalDate(iter.getEndDate()), yesterdayEntry).longValue();
         if(dailyVelocity != 0 && iter.getStartDate().isBeforeNow() && effortLeft != 0) {
             int daysLeft = (int) (effortLeft / dailyVelocity);
             return daysLeft - backlogBusiness.daysLeftInSchedulableBacklog(iter).getDays(); 
@@ -1,15 +1,30 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Days;
 import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.typesafe.config.Config;
+
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
 import fi.hut.soberit.agilefant.business.IterationHistoryEntryBusiness;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO;
@@ -17,22 +32,52 @@ import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
 import fi.hut.soberit.agilefant.util.Pair;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Service("iterationHistoryEntryBusiness")
 @Transactional
 public class IterationHistoryEntryBusinessImpl extends
         GenericBusinessImpl<IterationHistoryEntry> implements
         IterationHistoryEntryBusiness {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IterationHistoryEntryBusinessImpl.class);
+
+    private static final long RECONCILIATION_INTERVAL = 15 * 60 * 1000L;
     
     private IterationHistoryEntryDAO iterationHistoryEntryDAO;
     
     @Autowired
     private IterationDAO iterationDAO;    
     
+    @Autowired
+    private BacklogVersionBusiness backlogVersionBusiness;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private boolean incrementalHistory = true;
+
+    /**
+     * Iterations updated incrementally since the last reconciliation.
+     */
+    private final Set<Integer> incrementallyUpdated = Collections
+            .newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * Whether all iterations with history have been queued for the first
+     * reconciliation after startup.
+     */
+    private volatile boolean startupReconciliationQueued = false;
+    
     public IterationHistoryEntryBusinessImpl() {
         super(IterationHistoryEntry.class);
     }
     
+    @Autowired
+    public void setConfig(Config config) {
+        this.incrementalHistory = config.getBoolean("agilefant.history.incremental");
+    }
+
     @Autowired
     public void setIterationHistoryEntryDAO(
             IterationHistoryEntryDAO iterationHistoryEntryDAO) {
@@ -64,6 +109,111 @@ public class IterationHistoryEntryBusinessImpl extends
             newEntry.setDeltaOriginalEstimate(originalEstimateSum - oldOriginalEstimateSum);
             iterationHistoryEntryDAO.store(newEntry);
         }
+        incrementallyUpdated.remove(iterationId);
+        backlogVersionBusiness.backlogChanged(iterationId);
+    }
+
+    public void applyIterationHistoryDelta(int iterationId,
+            long effortLeftDelta, long originalEstimateDelta) {
+        if (!incrementalHistory) {
+            updateIterationHistory(iterationId);
+            return;
+        }
+        IterationHistoryEntry latest = iterationHistoryEntryDAO.retrieveLatest(iterationId);
+        if (latest == null) {
+            updateIterationHistory(iterationId);
+            return;
+        }
+        if (effortLeftDelta == 0 && originalEstimateDelta == 0) {
+            return;
+        }
+
+        if (Days.daysBetween(latest.getTimestamp().toDateMidnight(), new DateTime().toDateMidnight()).getDays() == 0) {
+            iterationHistoryEntryDAO.addToSums(latest, effortLeftDelta, originalEstimateDelta);
+        }
+        else {
+            IterationHistoryEntry newEntry = new IterationHistoryEntry();
+            newEntry.setIteration(iterationDAO.get(iterationId));
+            newEntry.setTimestamp(new LocalDate());
+            newEntry.setEffortLeftSum(latest.getEffortLeftSum() + effortLeftDelta);
+            newEntry.setOriginalEstimateSum(latest.getOriginalEstimateSum() + originalEstimateDelta);
+            newEntry.setDeltaOriginalEstimate(originalEstimateDelta);
+            iterationHistoryEntryDAO.store(newEntry);
+        }
+        incrementallyUpdated.add(iterationId);
+        backlogVersionBusiness.backlogChanged(iterationId);
+    }
+
+    @Transactional(readOnly = true)
+    public Triple<Integer, ExactEstimate, ExactEstimate> calculateTaskHistoryContribution(
+            int taskId) {
+        return iterationHistoryEntryDAO.calculateTaskHistoryContribution(taskId);
+    }
+
+    @Scheduled(fixedDelay = RECONCILIATION_INTERVAL)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void scheduledReconcileIterationHistories() {
+        if (incrementalHistory && !startupReconciliationQueued) {
+            // The iterations updated before a restart are not known anymore
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setReadOnly(true);
+            incrementallyUpdated.addAll(template.execute(new TransactionCallback<List<Integer>>() {
+                public List<Integer> doInTransaction(TransactionStatus status) {
+                    return iterationHistoryEntryDAO.retrieveIterationIdsWithHistory();
+                }
+            }));
+            startupReconciliationQueued = true;
+        }
+        this.reconcileIterationHistories();
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int reconcileIterationHistories() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        int repaired = 0;
+        for (final Integer iterationId : new ArrayList<Integer>(incrementallyUpdated)) {
+            try {
+                boolean changed = template.execute(new TransactionCallback<Boolean>() {
+                    public Boolean doInTransaction(TransactionStatus status) {
+                        return reconcileIterationHistory(iterationId);
+                    }
+                });
+                if (changed) {
+                    repaired++;
+                }
+            } catch (RuntimeException e) {
+                // Left to be reconciled again on the next run
+                LOG.error("Reconciling the history of iteration " + iterationId + " failed", e);
+                continue;
+            }
+            incrementallyUpdated.remove(iterationId);
+        }
+        return repaired;
+    }
+
+    private boolean reconcileIterationHistory(int iterationId) {
+        IterationHistoryEntry latest = iterationHistoryEntryDAO.retrieveLatest(iterationId);
+        if (latest == null) {
+            return false;
+        }
+        Pair<ExactEstimate, ExactEstimate> sums = iterationHistoryEntryDAO.calculateCurrentHistoryData(iterationId);
+        long effortLeftSum = (sums.first == null) ? 0 : sums.first.getMinorUnits();
+        long originalEstimateSum = (sums.second == null) ? 0 : sums.second.getMinorUnits();
+        if (latest.getEffortLeftSum() == effortLeftSum
+                && latest.getOriginalEstimateSum() == originalEstimateSum) {
+            return false;
+        }
+        LOG.warn("Repairing history of iteration " + iterationId
+                + ": effort left " + latest.getEffortLeftSum() + " -> " + effortLeftSum
+                + ", original estimate " + latest.getOriginalEstimateSum() + " -> " + originalEstimateSum);
+        latest.setDeltaOriginalEstimate(latest.getDeltaOriginalEstimate()
+                + originalEstimateSum - latest.getOriginalEstimateSum());
+        latest.setEffortLeftSum(effortLeftSum);
+        latest.setOriginalEstimateSum(originalEstimateSum);
+        iterationHistoryEntryDAO.store(latest);
+        backlogVersionBusiness.backlogChanged(iterationId);
+        return true;
     }
     
     @Transactional(readOnly = true)
@@ -90,6 +240,20 @@ public class IterationHistoryEntryBusinessImpl extends
         this.iterationDAO = iterationDAO;
     }
 
+    public void setTransactionManager(
+            PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setIncrementalHistory(boolean incrementalHistory) {
+        this.incrementalHistory = incrementalHistory;
+    }
+
+    public void setBacklogVersionBusiness(
+            BacklogVersionBusiness backlogVersionBusiness) {
+        this.backlogVersionBusiness = backlogVersionBusiness;
+    }
+
     @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
     public LocalDate calculateExpectedEffortDoneDate(LocalDate startDate,
             ExactEstimate effortLeft, ExactEstimate velocity) {
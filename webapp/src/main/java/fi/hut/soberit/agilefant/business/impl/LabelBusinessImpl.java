@@ -1,6 +1,10 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.DateTime;
@@ -84,6 +88,39 @@ public class LabelBusinessImpl extends GenericBusinessImpl<Label> implements
         }
     }
     
+    public void createStoryLabels(List<String> labelNames, Collection<Story> stories) {
+        if (labelNames == null || labelNames.isEmpty() || stories.isEmpty()) {
+            return;
+        }
+        Set<Integer> storyIds = new HashSet<Integer>();
+        for (Story story : stories) {
+            storyIds.add(story.getId());
+        }
+        Map<Integer, Set<String>> existing = labelDAO.getExistingStoryLabelNames(storyIds, labelNames);
+        User currentUser = SecurityUtil.getLoggedUser();
+        DateTime timestamp = new DateTime();
+        List<Label> labels = new ArrayList<Label>();
+        for (Story story : stories) {
+            Set<String> storyLabels = existing.get(story.getId());
+            if (storyLabels == null) {
+                storyLabels = new HashSet<String>();
+            }
+            for (String name : labelNames) {
+                Label label = new Label();
+                label.setName(name);
+                if (!storyLabels.add(label.getName())) {
+                    continue;
+                }
+                label.setDisplayName(name);
+                label.setCreator(currentUser);
+                label.setStory(story);
+                label.setTimestamp(timestamp);
+                labels.add(label);
+            }
+        }
+        labelDAO.insertLabels(labels);
+    }
+    
     public List<Label> lookupLabelsLike(String labelName) {
         return labelDAO.lookupLabelsLike(labelName);
     }
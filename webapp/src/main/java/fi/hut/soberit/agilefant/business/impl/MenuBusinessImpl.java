@@ -1,37 +1,43 @@
 package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.support.PropertyComparator;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
-import fi.hut.soberit.agilefant.business.IterationBusiness;
 import fi.hut.soberit.agilefant.business.MenuBusiness;
-import fi.hut.soberit.agilefant.business.ProductBusiness;
-import fi.hut.soberit.agilefant.business.TransferObjectBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
-import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Schedulable;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.transfer.MenuDataChanges;
 import fi.hut.soberit.agilefant.transfer.MenuDataNode;
+import fi.hut.soberit.agilefant.transfer.ScheduleStatus;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
 import fi.hut.soberit.agilefant.util.MyAssignmentsMenuBuilder;
+import fi.hut.soberit.agilefant.util.TransactionUtils;
 
 /**
  * The implementation class for calculating data to the lefthand menu.
+ * <p>
+ * The backlog menu is projected from a shared {@link BacklogMenuTree}, which
+ * is loaded with a single projection query on first use and patched after
+ * each commit that stores or deletes backlogs. Only the access to the top
+ * level backlogs is checked per user.
  * 
  * @author rjokelai
  */
@@ -39,6 +45,8 @@ import fi.hut.soberit.agilefant.util.MyAssignmentsMenuBuilder;
 @Transactional
 public class MenuBusinessImpl implements MenuBusiness {
 
+    private static final int STANDALONE_ITERATIONS_NODE_ID = -1;
+
     @Autowired
     private IterationDAO iterationDAO;
     
@@ -49,13 +57,7 @@ public class MenuBusinessImpl implements MenuBusiness {
     private StoryDAO storyDAO;
     
     @Autowired
-    private ProductBusiness productBusiness;
-    
-    @Autowired
-    private IterationBusiness iterationBusiness;
-
-    @Autowired
-    private TransferObjectBusiness transferObjectBusiness;
+    private BacklogDAO backlogDAO;
     
     @Autowired
     private UserBusiness userBusiness;
@@ -63,33 +65,87 @@ public class MenuBusinessImpl implements MenuBusiness {
     @Autowired
     private AuthorizationBusiness authorizationBusiness;
 
-    @SuppressWarnings("unchecked")
+    private final BacklogMenuTree backlogMenuTree = new BacklogMenuTree();
+
+    /*
+     * Guards the loading of the tree against the changes committed while the
+     * tree is being loaded.
+     */
+    private final Object treeLock = new Object();
+
+    private boolean treeLoaded = false;
+
+    private long treeChangeCount = 0;
+
+    @Transactional(readOnly = true)
     public List<MenuDataNode> constructBacklogMenuData() {
-    	
-        List<MenuDataNode> nodes = new ArrayList<MenuDataNode>();
-        List<Product> products = new ArrayList<Product>(productBusiness
-                .retrieveAllOrderByName());
-        Collections.sort(products, new PropertyComparator("name", true, true));
+        return constructMenuDataNodes(getBacklogMenuTree());
+    }
 
-        for (Product prod : products) {
-        	if (checkAccess(prod)) {
-                nodes.add(constructMenuDataNode(prod));
-            }
+    @Transactional(readOnly = true)
+    public MenuDataChanges constructBacklogMenuChanges(long sinceVersion) {
+        BacklogMenuTree tree = getBacklogMenuTree();
+        MenuDataChanges result = new MenuDataChanges();
+        BacklogMenuTree.Changes changes = (tree == backlogMenuTree) ? tree
+                .getChangesSince(sinceVersion) : null;
+        if (changes == null) {
+            result.setVersion(tree.getVersion());
+            result.setMenuData(constructMenuDataNodes(tree));
+            return result;
         }
         
-        final List<Iteration> standAloneIterations = new ArrayList<Iteration>(iterationBusiness.retrieveAllStandAloneIterations());
+        result.setVersion(changes.getVersion());
+        Map<Integer, Boolean> rootAccess = new HashMap<Integer, Boolean>();
+        for (BacklogMenuTree.Entry entry : changes.getChanged()) {
+            int rootId = changes.getRootId(entry.getId());
+            Boolean accessible = rootAccess.get(rootId);
+            if (accessible == null) {
+                accessible = checkAccess(rootId);
+                rootAccess.put(rootId, accessible);
+            }
+            if (accessible) {
+                MenuDataNode node = constructMenuDataNode(entry);
+                node.setParentId(getParentNodeId(entry));
+                result.getChanged().add(node);
+            } else {
+                result.getRemovedIds().add(entry.getId());
+            }
+        }
+        result.getRemovedIds().addAll(changes.getRemovedIds());
+        return result;
+    }
+
+    private List<MenuDataNode> constructMenuDataNodes(BacklogMenuTree tree) {
+        List<MenuDataNode> nodes = new ArrayList<MenuDataNode>();
+        List<MenuDataNode> standaloneIterationNodes = new ArrayList<MenuDataNode>();
+        boolean hasStandaloneIterations = false;
+        Map<Integer, MenuDataNode> nodesById = new HashMap<Integer, MenuDataNode>();
         
-        List<MenuDataNode> standaloneIterationNodes = new LinkedList<MenuDataNode>();
-        for (Iteration iteration: standAloneIterations) {
-            if (checkAccess(iteration)) {
-                standaloneIterationNodes.add(constructMenuDataNode(iteration));
+        // The parents are always listed before their children
+        for (BacklogMenuTree.Entry entry : tree.getEntries()) {
+            MenuDataNode node = constructMenuDataNode(entry);
+            if (entry.getParentId() != null) {
+                MenuDataNode parentNode = nodesById.get(entry.getParentId());
+                if (parentNode != null) {
+                    parentNode.getChildren().add(node);
+                    nodesById.put(entry.getId(), node);
+                }
+            } else if (entry.getType() == BacklogType.ITERATION) {
+                hasStandaloneIterations = true;
+                if (checkAccess(entry.getId())) {
+                    standaloneIterationNodes.add(node);
+                }
+            } else if (checkAccess(entry.getId())) {
+                nodes.add(node);
+                nodesById.put(entry.getId(), node);
             }
         }
-        if (standAloneIterations.size() > 0) {
+        
+        if (hasStandaloneIterations) {
             MenuDataNode standaloneIterationsParentNode = new MenuDataNode();
             standaloneIterationsParentNode.setTitle("[Standalone iterations]");
             standaloneIterationsParentNode.setType(BacklogType.PRODUCT);
-            standaloneIterationsParentNode.setId(-1);
+            standaloneIterationsParentNode.setId(STANDALONE_ITERATIONS_NODE_ID);
             standaloneIterationsParentNode.setChildren(standaloneIterationNodes);
             nodes.add(standaloneIterationsParentNode);
         }
@@ -97,33 +153,113 @@ public class MenuBusinessImpl implements MenuBusiness {
         return nodes;
     }
 
-    @SuppressWarnings("unchecked")
-    private MenuDataNode constructMenuDataNode(Backlog backlog) {
+    private MenuDataNode constructMenuDataNode(BacklogMenuTree.Entry entry) {
         MenuDataNode mdn = new MenuDataNode();
-        mdn.setTitle(backlog.getName());
-        mdn.setId(backlog.getId());
-        mdn.setScheduleStatus(transferObjectBusiness
-                .getBacklogScheduleStatus(backlog));
-        List<Backlog> children = Collections.EMPTY_LIST;
-        if (!(backlog instanceof Iteration)) { // optimization
-            children = new ArrayList<Backlog>();
-            children.addAll(backlog.getChildren());
-            Collections.sort(children, new PropertyComparator("startDate",
-                    true, true));
+        mdn.setTitle(entry.getName());
+        mdn.setId(entry.getId());
+        mdn.setType(entry.getType());
+        if (entry.getType() == BacklogType.PRODUCT) {
+            mdn.setScheduleStatus(ScheduleStatus.ONGOING);
+        } else {
+            mdn.setScheduleStatus(ScheduleStatus.forTimeframe(
+                    entry.getStartDate(), entry.getEndDate()));
         }
-        
-        final BacklogType backlogClassType = BacklogType.forBacklog(backlog);
-        if (backlogClassType != null) {
-            mdn.setType(backlogClassType);
+        return mdn;
+    }
+
+    private Integer getParentNodeId(BacklogMenuTree.Entry entry) {
+        if (entry.getParentId() == null && entry.getType() == BacklogType.ITERATION) {
+            return STANDALONE_ITERATIONS_NODE_ID;
         }
-        
-        for (Backlog child : children) {
-            mdn.getChildren().add(constructMenuDataNode(child));
+        return entry.getParentId();
+    }
+
+    /**
+     * Get the shared tree, loading it if needed. If backlogs were changed
+     * while loading, a tree of just the loaded data is returned and the
+     * shared tree is loaded on next use.
+     */
+    @Transactional(readOnly = true)
+    public BacklogMenuTree getBacklogMenuTree() {
+        long changeCount;
+        synchronized (treeLock) {
+            if (treeLoaded) {
+                return backlogMenuTree;
+            }
+            changeCount = treeChangeCount;
+        }
+        List<BacklogMenuTree.Entry> entries = backlogDAO.retrieveMenuTreeEntries();
+        synchronized (treeLock) {
+            if (treeChangeCount == changeCount) {
+                backlogMenuTree.load(entries);
+                treeLoaded = true;
+                return backlogMenuTree;
+            }
         }
+        BacklogMenuTree tree = new BacklogMenuTree();
+        tree.load(entries);
+        return tree;
+    }
 
-        return mdn;
+    public void backlogStored(Backlog backlog) {
+        final BacklogMenuTree.Entry entry = toMenuTreeEntry(backlog);
+        if (entry == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                synchronized (treeLock) {
+                    treeChangeCount++;
+                    if (treeLoaded) {
+                        backlogMenuTree.put(entry);
+                    }
+                }
+            }
+        });
     }
-    
+
+    public void backlogDeleted(Backlog backlog) {
+        final int id = backlog.getId();
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                synchronized (treeLock) {
+                    treeChangeCount++;
+                    if (treeLoaded) {
+                        backlogMenuTree.remove(id);
+                    }
+                }
+            }
+        });
+    }
+
+    public void backlogMenuChanged() {
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                synchronized (treeLock) {
+                    treeChangeCount++;
+                    treeLoaded = false;
+                }
+            }
+        });
+    }
+
+    private static BacklogMenuTree.Entry toMenuTreeEntry(Backlog backlog) {
+        BacklogType type = BacklogType.forBacklog(backlog);
+        if (type == null) {
+            return null;
+        }
+        Integer parentId = (backlog.getParent() == null) ? null : backlog
+                .getParent().getId();
+        if (backlog instanceof Schedulable) {
+            Schedulable schedulable = (Schedulable) backlog;
+            return new BacklogMenuTree.Entry(backlog.getId(), parentId, type,
+                    backlog.getName(), schedulable.getStartDate(),
+                    schedulable.getEndDate());
+        }
+        return new BacklogMenuTree.Entry(backlog.getId(), parentId, type,
+                backlog.getName(), null, null);
+    }
+
     @Transactional(readOnly = true)
     public List<MenuDataNode> constructMyAssignmentsData(User user) {
         List<Project> projects = projectDAO.retrieveActiveWithUserAssigned(user.getId());
@@ -144,23 +280,10 @@ public class MenuBusinessImpl implements MenuBusiness {
         return builder.getNodes();
     }
     
-    private boolean checkAccess(Backlog bl){
-        return this.authorizationBusiness.isBacklogAccessible(bl.getId(), SecurityUtil.getLoggedUser());
-    }
-
-    public void setProductBusiness(ProductBusiness productBusiness) {
-        this.productBusiness = productBusiness;
-    }
-    
-    public void setIterationBusiness(IterationBusiness iterationBusiness) {
-        this.iterationBusiness = iterationBusiness;
+    private boolean checkAccess(int backlogId){
+        return this.authorizationBusiness.isBacklogAccessible(backlogId, SecurityUtil.getLoggedUser());
     }
 
-    public void setTransferObjectBusiness(
-            TransferObjectBusiness transferObjectBusiness) {
-        this.transferObjectBusiness = transferObjectBusiness;
-    }
-    
     public void setIterationDAO(IterationDAO iterationDAO) {
         this.iterationDAO = iterationDAO;
     }
@@ -173,6 +296,10 @@ public class MenuBusinessImpl implements MenuBusiness {
         this.storyDAO = storyDAO;
     }
     
+    public void setBacklogDAO(BacklogDAO backlogDAO) {
+        this.backlogDAO = backlogDAO;
+    }
+    
     public void setUserBusiness(UserBusiness userBusiness) {
     	this.userBusiness = userBusiness;
     }
@@ -9,6 +9,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -24,6 +26,7 @@ import fi.hut.soberit.agilefant.business.SettingBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
 import fi.hut.soberit.agilefant.db.AssignmentDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
+import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.model.Assignment;
@@ -43,6 +46,8 @@ import fi.hut.soberit.agilefant.transfer.IterationLoadContainer;
 import fi.hut.soberit.agilefant.transfer.ProjectLoadContainer;
 import fi.hut.soberit.agilefant.transfer.UnassignedLoadTO;
 import fi.hut.soberit.agilefant.transfer.UserLoadLimits;
+import fi.hut.soberit.agilefant.util.GenerationGuard;
+import fi.hut.soberit.agilefant.util.Pair;
 
 @Service("personalLoadBusiness")
 @Transactional(readOnly = true)
@@ -62,9 +67,183 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
     @Autowired
     private AssignmentDAO assignmentDAO;
 
+    @Autowired
+    private ProjectDAO projectDAO;
+
     @Autowired
     private SettingBusiness settingBusiness;
 
+    /**
+     * How long the computed loads are cached. The loads depend on the current
+     * time as well, so they are recomputed every now and then even without
+     * changes.
+     */
+    private static final long LOAD_CACHE_TIME = 5 * 60 * 1000L;
+
+    /**
+     * The computed loads by user id and number of weeks.
+     */
+    private final ConcurrentMap<Pair<Integer, Integer>, CachedLoad> cachedLoads = new ConcurrentHashMap<Pair<Integer, Integer>, CachedLoad>();
+
+    private final GenerationGuard cacheGuard = new GenerationGuard();
+
+    /**
+     * Immutable copy of a computed load. The backlogs are referred to by id,
+     * and new transfer objects are built from the copy on each request, so
+     * that the requests neither share the transfer objects nor the entities.
+     */
+    private static class CachedLoad {
+        private final DateTime startDate;
+        private final DateTime endDate;
+        private final long computedAt;
+        private final List<CachedIntervalLoad> intervalLoads;
+
+        public CachedLoad(DateTime startDate, long computedAt,
+                ComputedLoadData loadData) {
+            this.startDate = startDate;
+            this.endDate = loadData.getEndDate();
+            this.computedAt = computedAt;
+            List<CachedIntervalLoad> intervalLoads = new ArrayList<CachedIntervalLoad>();
+            for (IntervalLoadContainer container : loadData.getLoadContainers()) {
+                intervalLoads.add(new CachedIntervalLoad(container));
+            }
+            this.intervalLoads = Collections.unmodifiableList(intervalLoads);
+        }
+
+        public boolean isValid(DateTime startDate, long now) {
+            return this.startDate.equals(startDate)
+                    && now - this.computedAt < LOAD_CACHE_TIME;
+        }
+
+        public void collectBacklogIds(Set<Integer> iterationIds,
+                Set<Integer> projectIds) {
+            for (CachedIntervalLoad intervalLoad : intervalLoads) {
+                for (CachedBacklogLoad backlogLoad : intervalLoad.detailedLoad) {
+                    if (backlogLoad.iteration) {
+                        iterationIds.add(backlogLoad.backlogId);
+                    } else {
+                        projectIds.add(backlogLoad.backlogId);
+                    }
+                }
+            }
+        }
+
+        public ComputedLoadData toLoadData(Map<Integer, Iteration> iterations,
+                Map<Integer, Project> projects) {
+            List<IntervalLoadContainer> containers = new ArrayList<IntervalLoadContainer>();
+            for (CachedIntervalLoad intervalLoad : intervalLoads) {
+                containers.add(intervalLoad.toContainer(iterations, projects));
+            }
+            ComputedLoadData loadData = new ComputedLoadData();
+            loadData.setLoadContainers(containers);
+            loadData.setStartDate(startDate);
+            loadData.setEndDate(endDate);
+            return loadData;
+        }
+    }
+
+    private static class CachedIntervalLoad {
+        private final Interval interval;
+        private final long assignedLoad;
+        private final long baselineLoad;
+        private final long unassignedLoad;
+        private final long futureLoad;
+        private final long workHours;
+        private final List<CachedBacklogLoad> detailedLoad;
+
+        public CachedIntervalLoad(IntervalLoadContainer container) {
+            this.interval = container.getInterval();
+            this.assignedLoad = container.getAssignedLoad();
+            this.baselineLoad = container.getBaselineLoad();
+            this.unassignedLoad = container.getUnassignedLoad();
+            this.futureLoad = container.getFutureLoad();
+            this.workHours = container.getWorkHours();
+            List<CachedBacklogLoad> detailedLoad = new ArrayList<CachedBacklogLoad>();
+            for (BacklogLoadContainer backlogLoad : container.getDetailedLoad()) {
+                if (backlogLoad != null && backlogLoad.getBacklog() != null) {
+                    detailedLoad.add(new CachedBacklogLoad(backlogLoad));
+                }
+            }
+            this.detailedLoad = Collections.unmodifiableList(detailedLoad);
+        }
+
+        public IntervalLoadContainer toContainer(
+                Map<Integer, Iteration> iterations,
+                Map<Integer, Project> projects) {
+            IntervalLoadContainer container = new IntervalLoadContainer();
+            container.setInterval(interval);
+            container.setAssignedLoad(assignedLoad);
+            container.setBaselineLoad(baselineLoad);
+            container.setUnassignedLoad(unassignedLoad);
+            container.setFutureLoad(futureLoad);
+            container.setWorkHours(workHours);
+            for (CachedBacklogLoad backlogLoad : detailedLoad) {
+                BacklogLoadContainer backlogContainer = backlogLoad
+                        .toContainer(iterations, projects);
+                if (backlogContainer != null) {
+                    container.getDetailedLoad().add(backlogContainer);
+                }
+            }
+            return container;
+        }
+    }
+
+    private static class CachedBacklogLoad {
+        private final int backlogId;
+        private final boolean iteration;
+        private final long totalAssignedLoad;
+        private final long totalUnassignedLoad;
+        private final long totalBaselineLoad;
+        private final long totalFutureLoad;
+
+        public CachedBacklogLoad(BacklogLoadContainer container) {
+            this.backlogId = container.getBacklog().getId();
+            this.iteration = container instanceof IterationLoadContainer;
+            if (this.iteration) {
+                IterationLoadContainer iterationLoad = (IterationLoadContainer) container;
+                this.totalAssignedLoad = iterationLoad.getTotalAssignedLoad();
+                this.totalUnassignedLoad = iterationLoad.getTotalUnassignedLoad();
+            } else {
+                this.totalAssignedLoad = 0L;
+                this.totalUnassignedLoad = 0L;
+            }
+            this.totalBaselineLoad = container.getTotalBaselineLoad();
+            this.totalFutureLoad = container.getTotalFutureLoad();
+        }
+
+        /**
+         * @return the container, or <code>null</code> if the backlog no
+         *         longer exists
+         */
+        public BacklogLoadContainer toContainer(
+                Map<Integer, Iteration> iterations,
+                Map<Integer, Project> projects) {
+            BacklogLoadContainer container;
+            if (iteration) {
+                Iteration backlog = iterations.get(backlogId);
+                if (backlog == null) {
+                    return null;
+                }
+                IterationLoadContainer iterationLoad = new IterationLoadContainer();
+                iterationLoad.setIteration(backlog);
+                iterationLoad.setTotalAssignedLoad(totalAssignedLoad);
+                iterationLoad.setTotalUnassignedLoad(totalUnassignedLoad);
+                container = iterationLoad;
+            } else {
+                Project backlog = projects.get(backlogId);
+                if (backlog == null) {
+                    return null;
+                }
+                ProjectLoadContainer projectLoad = new ProjectLoadContainer();
+                projectLoad.setProject(backlog);
+                container = projectLoad;
+            }
+            container.setTotalBaselineLoad(totalBaselineLoad);
+            container.setTotalFutureLoad(totalFutureLoad);
+            return container;
+        }
+    }
+
     /**
      * Calculate sum of task effort left portions for given user per iteration
      * for tasks that don't have direct assignees, but have assignees for the
@@ -84,7 +263,13 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         }
         Map<Integer, Integer> responsibleCounts = storyDAO
                 .getNumOfResponsiblesByStory(storyTaskStoryIds);
+        addStoryAssignedTaskLoad(iterationEffortData, storyTasks,
+                responsibleCounts);
+    }
 
+    private void addStoryAssignedTaskLoad(
+            Map<Integer, IterationLoadContainer> iterationEffortData,
+            List<Task> storyTasks, Map<Integer, Integer> responsibleCounts) {
         for (Task task : storyTasks) {
             Iteration iteration = (Iteration) task.getStory().getIteration();
             int numberOfAssignees = responsibleCounts.get(task.getStory()
@@ -131,6 +316,13 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         }
         Map<Integer, Integer> responsibleCounts = taskDAO
                 .getNumOfResponsiblesByTask(assignedTaskIds);
+        addDirectlyAssignedTaskLoad(iterationEffortData, assignedTasks,
+                responsibleCounts);
+    }
+
+    private void addDirectlyAssignedTaskLoad(
+            Map<Integer, IterationLoadContainer> iterationEffortData,
+            List<Task> assignedTasks, Map<Integer, Integer> responsibleCounts) {
         for (Task task : assignedTasks) {
             Iteration iteration = task.getIteration();
             if (iteration == null) {
@@ -174,7 +366,12 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
 
         // get iterations
         loadIterationAvailabilitySums(rawUnassignedLoad);
+        addUnassignedTaskLoad(iterationEffortData, rawUnassignedLoad);
+    }
 
+    private void addUnassignedTaskLoad(
+            Map<Integer, IterationLoadContainer> iterationEffortData,
+            List<UnassignedLoadTO> rawUnassignedLoad) {
         for (UnassignedLoadTO row : rawUnassignedLoad) {
             if (!iterationEffortData.containsKey(row.iterationId)) {
                 IterationLoadContainer newContainer = new IterationLoadContainer();
@@ -212,19 +409,25 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         .getTotalAvailability(iterationIds);
         
         for (Iteration iter : emptyIterations) {
-            int availability = lookupAvailability(user, iter);
-            int totalAvailability = totalAvailabilities.get(iter.getId());
-            double fraction = (double)availability/(double)totalAvailability;
-            if (!iterationEffortData.containsKey(iter.getId())) {
-                IterationLoadContainer newContainer = new IterationLoadContainer();
-                newContainer.setIteration(iter);
-                iterationEffortData.put(iter.getId(), newContainer);
-            }
-            iterationEffortData.get(iter.getId()).setTotalFutureLoad(
-                    (long)(fraction*(double)iter.getBacklogSize().longValue()));
+            addIterationFutureLoad(iterationEffortData, iter,
+                    lookupAvailability(user, iter),
+                    totalAvailabilities.get(iter.getId()));
         }
     }
 
+    private void addIterationFutureLoad(
+            Map<Integer, IterationLoadContainer> iterationEffortData,
+            Iteration iter, int availability, int totalAvailability) {
+        double fraction = (double)availability/(double)totalAvailability;
+        if (!iterationEffortData.containsKey(iter.getId())) {
+            IterationLoadContainer newContainer = new IterationLoadContainer();
+            newContainer.setIteration(iter);
+            iterationEffortData.put(iter.getId(), newContainer);
+        }
+        iterationEffortData.get(iter.getId()).setTotalFutureLoad(
+                (long)(fraction*(double)iter.getBacklogSize().longValue()));
+    }
+
     private int lookupAvailability(User user, Iteration iter) {
         for(Assignment assign : iter.getAssignments()) {
             if(assign.getUser() == user) {
@@ -248,17 +451,23 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         for (UnassignedLoadTO row : rawUnassignedLoad) {
             iterationIds.add(row.iterationId);
         }
-        Collection<Iteration> iterations = this.iterationDAO.getMultiple(iterationIds);
+        Map<Integer, Iteration> iterations = mapById(this.iterationDAO
+                .getMultiple(iterationIds));
         
         // get availability sums per iteration
         Map<Integer, Integer> totalAvailabilities = this.iterationDAO
                 .getTotalAvailability(iterationIds);
+        setIterationAvailabilitySums(rawUnassignedLoad, iterations,
+                totalAvailabilities);
+    }
 
+    private void setIterationAvailabilitySums(
+            List<UnassignedLoadTO> rawUnassignedLoad,
+            Map<Integer, Iteration> iterations,
+            Map<Integer, Integer> totalAvailabilities) {
         for (UnassignedLoadTO row : rawUnassignedLoad) {
-            for (Iteration iter : iterations) {
-                if (iter.getId() == row.iterationId) {
-                    row.iteration = iter;
-                }
+            if (iterations.containsKey(row.iterationId)) {
+                row.iteration = iterations.get(row.iterationId);
             }
             if (totalAvailabilities.containsKey(row.iterationId)) {
                 row.availabilitySum = totalAvailabilities.get(row.iterationId);
@@ -368,10 +577,15 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
      */
     public void addBaselineLoad(ComputedLoadData preComputedLoad, User user,
             Interval interval) {
-        List<IntervalLoadContainer> loadContainers = preComputedLoad
-                .getLoadContainers();
         List<Assignment> assigments = this.assignmentDAO
                 .assigmentsInBacklogTimeframe(interval, user);
+        addBaselineLoad(preComputedLoad, user, assigments);
+    }
+
+    private void addBaselineLoad(ComputedLoadData preComputedLoad, User user,
+            List<Assignment> assigments) {
+        List<IntervalLoadContainer> loadContainers = preComputedLoad
+                .getLoadContainers();
         Map<Integer, Interval> assigmentIntervals = calculateAssigmentIntervals(assigments);
         for (IntervalLoadContainer intervalLoad : loadContainers) {
             for (Assignment assignment : assigments) {
@@ -471,6 +685,112 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         Map<Integer, IterationLoadContainer> iterationEffortLeft = this
                 .calculateTotalAssignedUserLoad(user, interval);
         this.calculateIterationFutureLoad(iterationEffortLeft, user, interval);
+        ComputedLoadData loadData = this.distributeLoad(iterationEffortLeft,
+                user, startDate, endDate, len);
+        this.addBaselineLoad(loadData, user, interval);
+        return loadData;
+    }
+
+    /**
+     * Computes the loads of the given users like
+     * {@link #generatePersonalAssignedLoad(User, DateTime, DateTime, Period)},
+     * but fetches the data of all the users with the same queries.
+     * 
+     * @return the loads by user id
+     */
+    public Map<Integer, ComputedLoadData> generatePersonalAssignedLoads(
+            Collection<User> users, DateTime startDate, DateTime endDate,
+            Period len) {
+        Interval interval = new Interval(startDate, endDate);
+        Set<Integer> userIds = new HashSet<Integer>();
+        for (User user : users) {
+            userIds.add(user.getId());
+        }
+
+        Map<Integer, List<Task>> assignedTasks = this.taskDAO
+                .getTasksWithEffortLeftByResponsibles(userIds, interval);
+        Map<Integer, List<Task>> storyTasks = this.taskDAO
+                .getStoryAssignedTasksWithEffortLeftByResponsibles(userIds,
+                        interval);
+        Map<Integer, List<UnassignedLoadTO>> unassignedLoad = this.taskDAO
+                .getUnassignedTasksWithEffortLeftByAssignees(userIds, interval);
+        Map<Integer, List<Pair<Iteration, Assignment>>> futureAssignments = new HashMap<Integer, List<Pair<Iteration, Assignment>>>();
+        for (Pair<Iteration, Assignment> futureAssignment : this.iterationDAO
+                .retrieveEmptyIterationAssignmentsWithPlannedSize(startDate,
+                        endDate, userIds)) {
+            addToUser(futureAssignments, futureAssignment.second.getUser(),
+                    futureAssignment);
+        }
+        Map<Integer, List<Assignment>> assignments = new HashMap<Integer, List<Assignment>>();
+        for (Assignment assignment : this.assignmentDAO
+                .assigmentsInBacklogTimeframe(interval, userIds)) {
+            addToUser(assignments, assignment.getUser(), assignment);
+        }
+
+        // responsible counts and availability sums of all the users' data
+        Set<Integer> taskIds = new HashSet<Integer>();
+        for (List<Task> tasks : assignedTasks.values()) {
+            for (Task task : tasks) {
+                taskIds.add(task.getId());
+            }
+        }
+        Set<Integer> storyIds = new HashSet<Integer>();
+        for (List<Task> tasks : storyTasks.values()) {
+            for (Task task : tasks) {
+                storyIds.add(task.getStory().getId());
+            }
+        }
+        Set<Integer> unassignedIterationIds = new HashSet<Integer>();
+        for (List<UnassignedLoadTO> rows : unassignedLoad.values()) {
+            for (UnassignedLoadTO row : rows) {
+                unassignedIterationIds.add(row.iterationId);
+            }
+        }
+        Set<Integer> iterationIds = new HashSet<Integer>(unassignedIterationIds);
+        for (List<Pair<Iteration, Assignment>> userAssignments : futureAssignments.values()) {
+            for (Pair<Iteration, Assignment> futureAssignment : userAssignments) {
+                iterationIds.add(futureAssignment.first.getId());
+            }
+        }
+        Map<Integer, Integer> taskResponsibleCounts = this.taskDAO
+                .getNumOfResponsiblesByTask(taskIds);
+        Map<Integer, Integer> storyResponsibleCounts = this.storyDAO
+                .getNumOfResponsiblesByStory(storyIds);
+        Map<Integer, Iteration> iterations = mapById(this.iterationDAO
+                .getMultiple(unassignedIterationIds));
+        Map<Integer, Integer> totalAvailabilities = this.iterationDAO
+                .getTotalAvailability(iterationIds);
+
+        Map<Integer, ComputedLoadData> result = new HashMap<Integer, ComputedLoadData>();
+        for (User user : users) {
+            Map<Integer, IterationLoadContainer> iterationEffortLeft = new HashMap<Integer, IterationLoadContainer>();
+            this.addDirectlyAssignedTaskLoad(iterationEffortLeft,
+                    listOf(assignedTasks, user), taskResponsibleCounts);
+            this.addStoryAssignedTaskLoad(iterationEffortLeft,
+                    listOf(storyTasks, user), storyResponsibleCounts);
+            List<UnassignedLoadTO> rawUnassignedLoad = listOf(unassignedLoad, user);
+            this.setIterationAvailabilitySums(rawUnassignedLoad, iterations,
+                    totalAvailabilities);
+            this.addUnassignedTaskLoad(iterationEffortLeft, rawUnassignedLoad);
+            for (Pair<Iteration, Assignment> futureAssignment : listOf(
+                    futureAssignments, user)) {
+                Iteration iter = futureAssignment.first;
+                this.addIterationFutureLoad(iterationEffortLeft, iter,
+                        futureAssignment.second.getAvailability(),
+                        totalAvailabilities.get(iter.getId()));
+            }
+
+            ComputedLoadData loadData = this.distributeLoad(
+                    iterationEffortLeft, user, startDate, endDate, len);
+            this.addBaselineLoad(loadData, user, listOf(assignments, user));
+            result.put(user.getId(), loadData);
+        }
+        return result;
+    }
+
+    private ComputedLoadData distributeLoad(
+            Map<Integer, IterationLoadContainer> iterationEffortLeft,
+            User user, DateTime startDate, DateTime endDate, Period len) {
         List<IntervalLoadContainer> periods = this.initializeLoadContainers(
                 user, startDate, endDate, len);
         ComputedLoadData loadData = new ComputedLoadData();
@@ -482,13 +802,43 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
                         .get(iterationId), user);
             }
         }
-        this.addBaselineLoad(loadData, user, interval);
         loadData.setStartDate(startDate);
         loadData.setEndDate(endDate);
         return loadData;
     }
 
+    private static <T> void addToUser(Map<Integer, List<T>> itemsByUser,
+            User user, T item) {
+        List<T> items = itemsByUser.get(user.getId());
+        if (items == null) {
+            items = new ArrayList<T>();
+            itemsByUser.put(user.getId(), items);
+        }
+        items.add(item);
+    }
+
+    private static <T> List<T> listOf(Map<Integer, List<T>> itemsByUser,
+            User user) {
+        List<T> items = itemsByUser.get(user.getId());
+        return (items == null) ? new ArrayList<T>() : items;
+    }
+
+    private static <T extends Backlog> Map<Integer, T> mapById(
+            Collection<T> backlogs) {
+        Map<Integer, T> result = new HashMap<Integer, T>();
+        for (T backlog : backlogs) {
+            result.put(backlog.getId(), backlog);
+        }
+        return result;
+    }
+
     public ComputedLoadData retrieveUserLoad(User user, int weeksAhead) {
+        return this.retrieveUserLoads(Collections.singleton(user), weeksAhead)
+                .get(user.getId());
+    }
+
+    public Map<Integer, ComputedLoadData> retrieveUserLoads(
+            Collection<User> users, int weeksAhead) {
         Period len = new Period();
         len = len.plusDays(1);
         MutableDateTime startDate = new MutableDateTime();
@@ -496,7 +846,114 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
 
         DateTime start = startDate.toDateTime();
         DateTime end = start.plusWeeks(weeksAhead);
-        return this.generatePersonalAssignedLoad(user, start, end, len);
+        long now = System.currentTimeMillis();
+
+        Map<Integer, ComputedLoadData> result = new HashMap<Integer, ComputedLoadData>();
+        Map<Integer, CachedLoad> cachedUserLoads = new HashMap<Integer, CachedLoad>();
+        List<User> uncachedUsers = new ArrayList<User>();
+        for (User user : users) {
+            CachedLoad cached = cachedLoads.get(Pair.create(user.getId(), weeksAhead));
+            if (cached != null && cached.isValid(start, now)) {
+                cachedUserLoads.put(user.getId(), cached);
+            } else {
+                uncachedUsers.add(user);
+            }
+        }
+        if (!cachedUserLoads.isEmpty()) {
+            result.putAll(toLoadData(cachedUserLoads));
+        }
+        if (uncachedUsers.isEmpty()) {
+            return result;
+        }
+
+        long generation = cacheGuard.current();
+        Map<Integer, ComputedLoadData> computed = this
+                .generatePersonalAssignedLoads(uncachedUsers, start, end, len);
+        result.putAll(computed);
+        if (cacheGuard.isCurrent(generation)) {
+            for (Map.Entry<Integer, ComputedLoadData> entry : computed.entrySet()) {
+                cachedLoads.put(Pair.create(entry.getKey(), weeksAhead),
+                        new CachedLoad(start, now, entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Build the transfer objects of the cached loads, with the backlogs of
+     * all the loads loaded together.
+     */
+    private Map<Integer, ComputedLoadData> toLoadData(
+            Map<Integer, CachedLoad> cachedUserLoads) {
+        Set<Integer> iterationIds = new HashSet<Integer>();
+        Set<Integer> projectIds = new HashSet<Integer>();
+        for (CachedLoad cached : cachedUserLoads.values()) {
+            cached.collectBacklogIds(iterationIds, projectIds);
+        }
+        Map<Integer, Iteration> iterations = new HashMap<Integer, Iteration>();
+        if (!iterationIds.isEmpty()) {
+            iterations = mapById(this.iterationDAO.getMultiple(iterationIds));
+        }
+        Map<Integer, Project> projects = new HashMap<Integer, Project>();
+        if (!projectIds.isEmpty()) {
+            projects = mapById(this.projectDAO.getMultiple(projectIds));
+        }
+        Map<Integer, ComputedLoadData> result = new HashMap<Integer, ComputedLoadData>();
+        for (Map.Entry<Integer, CachedLoad> entry : cachedUserLoads.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toLoadData(iterations, projects));
+        }
+        return result;
+    }
+
+    public void loadDataChanged() {
+        clearAfterCompletion(null);
+    }
+
+    public void loadDataChanged(Collection<Integer> taskIds,
+            Collection<Integer> storyIds, Collection<Integer> backlogIds,
+            Collection<Integer> userIds) {
+        Set<Integer> changedUserIds = new HashSet<Integer>(userIds);
+        if (!taskIds.isEmpty()) {
+            changedUserIds.addAll(taskDAO.retrieveResponsibleIds(taskIds));
+        }
+        if (!storyIds.isEmpty()) {
+            changedUserIds.addAll(storyDAO.retrieveResponsibleIds(storyIds));
+        }
+        if (!backlogIds.isEmpty()) {
+            changedUserIds.addAll(taskDAO.retrieveResponsibleIdsByIterations(backlogIds));
+        }
+        if (!taskIds.isEmpty() || !storyIds.isEmpty() || !backlogIds.isEmpty()) {
+            changedUserIds.addAll(assignmentDAO.retrieveAssigneeIds(backlogIds,
+                    taskIds, storyIds));
+        }
+        if (changedUserIds.isEmpty()) {
+            return;
+        }
+        clearAfterCompletion(changedUserIds);
+    }
+
+    private void clearAfterCompletion(final Collection<Integer> userIds) {
+        cacheGuard.invalidate(new Runnable() {
+            public void run() {
+                clear(userIds);
+            }
+        });
+    }
+
+    /**
+     * @param userIds the users whose loads are discarded, or
+     *            <code>null</code> for all users
+     */
+    private void clear(Collection<Integer> userIds) {
+        if (userIds == null) {
+            cachedLoads.clear();
+            return;
+        }
+        for (Pair<Integer, Integer> key : cachedLoads.keySet()) {
+            if (userIds.contains(key.first)) {
+                cachedLoads.remove(key);
+            }
+        }
     }
 
     public UserLoadLimits getDailyLoadLimitsByUser(User user) {
@@ -548,6 +1005,10 @@ public class PersonalLoadBusinessImpl implements PersonalLoadBusiness {
         this.assignmentDAO = assignmentDAO;
     }
 
+    public void setProjectDAO(ProjectDAO projectDAO) {
+        this.projectDAO = projectDAO;
+    }
+
     public void setSettingBusiness(SettingBusiness settingBusiness) {
         this.settingBusiness = settingBusiness;
     }
@@ -38,16 +38,14 @@ public class PortfolioBusinessImpl implements PortfolioBusiness {
         
     private List<Project> getProjectTOs(Collection<Project> projects) {
         List<Project> projectTOs = new ArrayList<Project>();
-        for (Project project : projects) {
+        for (Project project : this.authorizationBusiness.filterAccessible(projects, SecurityUtil.getLoggedUser())) {
             ProjectTO projectTO = new ProjectTO(project);
             Set<User> assignees = new HashSet<User>();
             for (Assignment assignment : projectTO.getAssignments()) {
                 assignees.add(assignment.getUser());
             }
             projectTO.setAssignees(assignees);
-            if(this.authorizationBusiness.isBacklogAccessible(project.getId(), SecurityUtil.getLoggedUser())) {
-                projectTOs.add(projectTO);            	
-            }
+            projectTOs.add(projectTO);
         }
         return projectTOs;
     }
@@ -7,6 +7,7 @@ import java.awt.Stroke;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.ChartUtilities;
@@ -22,15 +23,23 @@ import org.jfree.data.time.TimeSeriesCollection;
 import org.jfree.data.time.TimeSeriesDataItem;
 import org.jfree.ui.RectangleInsets;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
 import fi.hut.soberit.agilefant.business.ProjectBurnupBusiness;
 import fi.hut.soberit.agilefant.db.BacklogHistoryEntryDAO;
+import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.util.CustomXYStepRenderer;
 import fi.hut.soberit.agilefant.util.ProjectBurnupData;
+import fi.hut.soberit.agilefant.util.TransactionUtils;
 import fi.hut.soberit.agilefant.util.Triple;
 
 @Service("projectBurnupBusiness")
@@ -61,16 +70,125 @@ public class ProjectBurnupBusinessImpl implements ProjectBurnupBusiness {
     protected static final String DONE_NAME = "Points done";
 
     
+    /* Burnup series of the projects */
+    protected static final int SERIES_CACHE_SIZE = 1000;
+
+    private final Cache<Integer, ProjectBurnupData> seriesCache = CacheBuilder.newBuilder()
+            .maximumSize(SERIES_CACHE_SIZE).build();
+
+    /**
+     * Incremented on every change, so that series read from the old state
+     * are not cached.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /* Rendered chart images, bounded by their total size */
+    protected static final long CHART_CACHE_MAX_BYTES = 8 * 1024 * 1024;
+
+    private final Cache<String, byte[]> chartCache = CacheBuilder.newBuilder()
+            .maximumWeight(CHART_CACHE_MAX_BYTES)
+            .weigher(new Weigher<String, byte[]>() {
+                public int weigh(String key, byte[] value) {
+                    return value.length;
+                }
+            }).build();
+
     @Transactional(readOnly = true)
     public byte[] getBurnup(Project project) {
-        return getChartImageByteArray(constructChart(project));
+        return getCachedChartImage(project, DEFAULT_WIDTH, DEFAULT_HEIGHT, false);
     }
     
     @Transactional(readOnly = true)
     public byte[] getSmallBurnup(Project project) {
-        return getChartImageByteArray(constructSmallChart(project), SMALL_WIDTH, SMALL_HEIGHT);
+        return getCachedChartImage(project, SMALL_WIDTH, SMALL_HEIGHT, true);
     }
-    
+
+    public void historyEntryStored(BacklogHistoryEntry entry) {
+        final int projectId = entry.getBacklog().getId();
+        final int entryId = entry.getId();
+        final ProjectBurnupData.Entry point = new ProjectBurnupData.Entry(
+                entry.getTimestamp(), entry.getEstimateSum(),
+                entry.getDoneSum(), entry.getBranchMax());
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                generation.incrementAndGet();
+                ProjectBurnupData data = seriesCache.getIfPresent(projectId);
+                if (data != null && !data.append(entryId, point)) {
+                    seriesCache.invalidate(projectId);
+                }
+            }
+        });
+    }
+
+    public void historyEntriesRemoved(final int projectId) {
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                generation.incrementAndGet();
+                seriesCache.invalidate(projectId);
+            }
+        });
+    }
+
+    public void burnupDataChanged() {
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                generation.incrementAndGet();
+                seriesCache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * Returns the burnup image from the chart cache or renders and caches it
+     * if the series or the project has changed since the last rendering.
+     */
+    private byte[] getCachedChartImage(Project project, int width,
+            int height, boolean small) {
+        ProjectBurnupData data = getBurnupData(project.getId());
+        int projectHash = Objects.hashCode(project.getName(),
+                project.getStartDate(), project.getEndDate());
+        StringBuilder key = new StringBuilder();
+        key.append(project.getId()).append('-');
+        key.append(Long.toHexString(data.getVersion())).append('-');
+        key.append(Integer.toHexString(projectHash)).append('-');
+        key.append(new LocalDate()).append('-');
+        key.append(width).append('x').append(height).append(small ? "s" : "");
+
+        byte[] image = chartCache.getIfPresent(key.toString());
+        if (image == null) {
+            JFreeChart chart = small ? constructSmallChart(project, data)
+                    : constructChart(project, data);
+            image = getChartImageByteArray(chart, width, height);
+            if (image != null) {
+                chartCache.put(key.toString(), image);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Gets the burnup series of the project from the cache, or reads it from
+     * the history entries. A series read while the entries change is not
+     * cached.
+     */
+    private ProjectBurnupData getBurnupData(int projectId) {
+        ProjectBurnupData data = seriesCache.getIfPresent(projectId);
+        if (data != null) {
+            return data;
+        }
+        long currentGeneration = generation.get();
+        data = backlogHistoryEntryDAO.retrieveBurnupData(projectId);
+        if (generation.get() == currentGeneration) {
+            seriesCache.put(projectId, data);
+        }
+        return data;
+    }
+
+    public void setBacklogHistoryEntryDAO(
+            BacklogHistoryEntryDAO backlogHistoryEntryDAO) {
+        this.backlogHistoryEntryDAO = backlogHistoryEntryDAO;
+    }
+
     
     /**
      * Generates a byte array (a png image file) from a JFreeChart object
@@ -95,15 +213,8 @@ public class ProjectBurnupBusinessImpl implements ProjectBurnupBusiness {
         return null;
     }
 
-    protected byte[] getChartImageByteArray(JFreeChart chart) {
-        return getChartImageByteArray(chart, DEFAULT_WIDTH, DEFAULT_HEIGHT);
-    }
-
-
-    protected JFreeChart constructChart(Project project) {
-        ProjectBurnupData data = backlogHistoryEntryDAO
-                .retrieveBurnupData(project.getId());
 
+    protected JFreeChart constructChart(Project project, ProjectBurnupData data) {
         JFreeChart burnup = ChartFactory.createXYStepChart("'" + project.getName() + "' burnup",
                 DATE_AXIS_LABEL, STORYPOINTS_AXIS_LABEL, null,
                 PlotOrientation.VERTICAL, true, true, false);
@@ -126,8 +237,8 @@ public class ProjectBurnupBusinessImpl implements ProjectBurnupBusiness {
         return burnup;
     }
     
-    protected JFreeChart constructSmallChart(Project project) {
-        JFreeChart burndown = this.constructChart(project);
+    protected JFreeChart constructSmallChart(Project project, ProjectBurnupData data) {
+        JFreeChart burndown = this.constructChart(project, data);
         return transformToSmallChart(burndown);
     }
     
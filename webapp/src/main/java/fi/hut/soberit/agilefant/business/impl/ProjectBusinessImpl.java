@@ -2,8 +2,11 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.Days;
@@ -37,7 +40,6 @@ import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
-import fi.hut.soberit.agilefant.model.Rankable;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.User;
@@ -47,7 +49,6 @@ import fi.hut.soberit.agilefant.transfer.ProjectTO;
 import fi.hut.soberit.agilefant.transfer.StoryTO;
 import fi.hut.soberit.agilefant.transfer.TaskTO;
 import fi.hut.soberit.agilefant.util.StoryFilters;
-import fi.hut.soberit.agilefant.util.StoryMetrics;
 
 @Service("projectBusiness")
 @Transactional
@@ -110,9 +111,33 @@ public class ProjectBusinessImpl extends GenericBusinessImpl<Project> implements
         if (project == null) {
             throw new IllegalArgumentException("Project must be supplied");
         }
-        ProjectMetrics metrics = projectDAO
-                .calculateProjectStoryMetrics(project.getId());
+        return getMultipleProjectMetrics(Collections.singleton(project))
+                .get(project.getId());
+    }
+
+    /** {@inheritDoc} */
+    @Transactional(readOnly = true)
+    public Map<Integer, ProjectMetrics> getMultipleProjectMetrics(
+            Collection<Project> projects) {
+        Map<Integer, Project> projectsById = new HashMap<Integer, Project>();
+        for (Project project : projects) {
+            projectsById.put(project.getId(), project);
+        }
+        Map<Integer, ProjectMetrics> result = projectDAO
+                .calculateProjectStoryMetrics(projectsById.keySet());
+        for (Project project : projectsById.values()) {
+            ProjectMetrics metrics = result.get(project.getId());
+            if (metrics == null) {
+                metrics = new ProjectMetrics();
+                result.put(project.getId(), metrics);
+            }
+            calculateScheduleAndPercentages(project, metrics);
+        }
+        return result;
+    }
 
+    private void calculateScheduleAndPercentages(Project project,
+            ProjectMetrics metrics) {
         LocalDate today = new LocalDate();
 
         metrics.setTotalDays(Days.daysBetween(project.getStartDate(),
@@ -144,18 +169,7 @@ public class ProjectBusinessImpl extends GenericBusinessImpl<Project> implements
                     * 100f / (float) metrics.getTotalValue()));
         }
         
-        // Effort spent
-        List<Story> leafStories = this.storyRankBusiness.retrieveByRankingContext(project);
-        StoryMetrics storyMetrics;
-        long x = 0, y = 0;
-        for(Story story : leafStories)
-        {
-            storyMetrics = storyBusiness.calculateMetrics(story);
-            x = x + (int)storyMetrics.getEffortSpent();
-            y = y + (int)storyMetrics.getOriginalEstimate();
-        }
-        metrics.setEffortSpent(new ExactEstimate(x));
-        metrics.setOriginalEstimate(new ExactEstimate(y));
+        // Effort spent and original estimate are calculated by the DAO
         metrics.setPlannedSize(project.getBacklogSize());
         if(metrics.getPlannedSize() == null)
             metrics.setPlannedSize(new ExactEstimate(0));
@@ -169,8 +183,6 @@ public class ProjectBusinessImpl extends GenericBusinessImpl<Project> implements
         else {
             metrics.setEfforSpentPercentage(100);
         }
-
-        return metrics;
     }
     
     /** {@inheritDoc} */
@@ -179,21 +191,9 @@ public class ProjectBusinessImpl extends GenericBusinessImpl<Project> implements
         if (project == null) {
             throw new IllegalArgumentException("Project must be supplied");
         }
-        
-        long totalSpentEffort = hourEntryBusiness.calculateSum(project.getHourEntries());
-        List<IterationTO> iterations = this.retrieveProjectIterations(project.getId());
-        for (Iteration iteration : iterations) {
-            totalSpentEffort += hourEntryBusiness.calculateSumOfIterationsHourEntries(iteration);
-        }
-        for (Story story: project.getStories()) {
-            if (story.getIteration() == null) {
-                totalSpentEffort += hourEntryBusiness.calculateSum(story.getHourEntries());
-                for (Task task : story.getTasks()) {
-                    totalSpentEffort += hourEntryBusiness.calculateSum(task.getHourEntries());
-                }
-            }
-        }
-        return totalSpentEffort;
+        Long sum = projectDAO.calculateProjectSpentEffortSums(
+                Collections.singleton(project.getId())).get(project.getId());
+        return (sum == null) ? 0 : sum;
     }
     
     /** {@inheritDoc} */
@@ -345,8 +345,8 @@ public class ProjectBusinessImpl extends GenericBusinessImpl<Project> implements
         }
         
         rankingBusiness.rankUnder(project, upperProject, new RankUnderDelegate() {
-            public Collection<? extends Rankable> getWithRankBetween(Integer lower, Integer upper) {
-                return projectDAO.getProjectsWithRankBetween(lower, upper);
+            public void shiftRanks(int lower, int upper, int amount) {
+                projectDAO.shiftRanksBetween(lower, upper, amount);
             }
         });
 
@@ -1,8 +1,5 @@
 package fi.hut.soberit.agilefant.business.impl;
 
-import java.util.ArrayList;
-import java.util.Collection;
-
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -68,25 +65,13 @@ public class RankingBusinessImpl implements RankingBusiness {
     }
     
     /**
-     * Shift ranks of all the given rankables according to the direction. 
-     * @param dir
-     * @param rankablesToShift
+     * Get the amount the ranks between the borders are shifted by.
      */
-    public void shiftRanks(RankDirection dir,
-            Collection<Rankable> rankablesToShift) {
-        if (dir == null || rankablesToShift == null) {
-            throw new IllegalArgumentException();
-        }
-        int modifier = 0;
+    public int getShiftAmount(RankDirection dir) {
         if (dir == RankDirection.DOWN) {
-            modifier = -1;
-        }
-        else {
-            modifier = 1;
-        }
-        for (Rankable rankable : rankablesToShift) {
-           rankable.setRank(rankable.getRank() + modifier);
+            return -1;
         }
+        return 1;
     }
     
     /**
@@ -126,10 +111,7 @@ public class RankingBusinessImpl implements RankingBusiness {
         int newRank = findOutNewRank(entry, upperEntry, dir);
         Pair<Integer, Integer> borders = getRankBorders(entry, upperEntry);
         
-        Collection<Rankable> shiftables = new ArrayList<Rankable>();
-        shiftables.addAll(delegate.getWithRankBetween(borders.first, borders.second));
-
-        shiftRanks(dir, shiftables);
+        delegate.shiftRanks(borders.first, borders.second, getShiftAmount(dir));
         entry.setRank(newRank);
     }
     
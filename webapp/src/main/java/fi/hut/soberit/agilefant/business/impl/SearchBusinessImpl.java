@@ -1,6 +1,7 @@
 package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -12,7 +13,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
 import fi.hut.soberit.agilefant.business.SearchBusiness;
+import fi.hut.soberit.agilefant.business.SearchIndexBusiness;
 import fi.hut.soberit.agilefant.db.BacklogDAO;
+import fi.hut.soberit.agilefant.db.GenericDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.db.UserDAO;
@@ -41,6 +44,11 @@ public class SearchBusinessImpl implements SearchBusiness {
     private TaskDAO taskDAO;
     @Autowired
     private AuthorizationBusiness authorizationBusiness;
+    /*
+     * Optional, the searches fall back to database queries without the index.
+     */
+    @Autowired(required = false)
+    private SearchIndexBusiness searchIndexBusiness;
     
     @Transactional(readOnly=true)
     public List<SearchResultRow> searchStoriesAndBacklog(String searchTerm) {
@@ -50,9 +58,9 @@ public class SearchBusinessImpl implements SearchBusiness {
             result.add(new SearchResultRow(quickRefMatch.getName(),
                     quickRefMatch));
         }
-        List<Backlog> backlogs = backlogDAO.searchByName(searchTerm);
-        List<Story> stories = storyDAO.searchByName(searchTerm);
-        List<Task> tasks = taskDAO.searchByName(searchTerm);
+        List<Backlog> backlogs = searchBacklogsByName(searchTerm, Backlog.class);
+        List<Story> stories = searchStoriesByName(searchTerm);
+        List<Task> tasks = searchTasksByName(searchTerm);
         try {
             Integer searchTermId = Integer.parseInt(searchTerm);
             backlogs.addAll(backlogDAO.searchByID(searchTermId));
@@ -68,6 +76,61 @@ public class SearchBusinessImpl implements SearchBusiness {
         return result;
     }
 
+    private List<Backlog> searchBacklogsByName(String searchTerm, Class<? extends Backlog> type) {
+        List<Integer> ids = searchIndex(type, searchTerm);
+        if (ids == null && type == Backlog.class) {
+            return backlogDAO.searchByName(searchTerm);
+        } else if (ids == null) {
+            return backlogDAO.searchByName(searchTerm, type);
+        }
+        return retrieveInOrder(backlogDAO, ids);
+    }
+
+    private List<Story> searchStoriesByName(String searchTerm) {
+        List<Integer> ids = searchIndex(Story.class, searchTerm);
+        if (ids == null) {
+            return storyDAO.searchByName(searchTerm);
+        }
+        return retrieveInOrder(storyDAO, ids);
+    }
+
+    private List<Task> searchTasksByName(String searchTerm) {
+        List<Integer> ids = searchIndex(Task.class, searchTerm);
+        if (ids == null) {
+            return taskDAO.searchByName(searchTerm);
+        }
+        return retrieveInOrder(taskDAO, ids);
+    }
+
+    /**
+     * Search the index, if available.
+     * 
+     * @return the matching ids, or null if the database should be searched
+     *         instead
+     */
+    private List<Integer> searchIndex(Class<? extends NamedObject> type, String searchTerm) {
+        if (searchIndexBusiness == null) {
+            return null;
+        }
+        return searchIndexBusiness.search(type, searchTerm, MAX_RESULTS_PER_TYPE);
+    }
+
+    private <T extends NamedObject> List<T> retrieveInOrder(GenericDAO<T> dao, List<Integer> ids) {
+        Collection<T> objects = dao.getMultiple(ids);
+        HashMap<Integer, T> objectsById = new HashMap<Integer, T>();
+        for (T object : objects) {
+            objectsById.put(object.getId(), object);
+        }
+        List<T> result = new ArrayList<T>();
+        for (Integer id : ids) {
+            T object = objectsById.get(id);
+            if (object != null) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
     private void storyListSearchResult(List<SearchResultRow> result,
             List<Story> stories) {
         HashMap<Integer, Boolean> backlogAccessMap = new HashMap<Integer, Boolean>();
@@ -189,21 +252,21 @@ public class SearchBusinessImpl implements SearchBusiness {
     
     public List<SearchResultRow> searchIterations(String searchTerm) {
         List<SearchResultRow> result = new ArrayList<SearchResultRow>();
-        List<Backlog> backlogs = backlogDAO.searchByName(searchTerm, Iteration.class);
+        List<Backlog> backlogs = searchBacklogsByName(searchTerm, Iteration.class);
         backlogListSearchResult(result, backlogs);
         return result;
     }
 
     public List<SearchResultRow> searchProjects(String searchTerm) {
         List<SearchResultRow> result = new ArrayList<SearchResultRow>();
-        List<Backlog> backlogs = backlogDAO.searchByName(searchTerm, Project.class);
+        List<Backlog> backlogs = searchBacklogsByName(searchTerm, Project.class);
         backlogListSearchResult(result, backlogs);
         return result;
     }
 
     public List<SearchResultRow> searchStories(String searchTerm) {
         List<SearchResultRow> result = new ArrayList<SearchResultRow>();
-        List<Story> stories = storyDAO.searchByName(searchTerm);
+        List<Story> stories = searchStoriesByName(searchTerm);
         storyListSearchResult(result, stories);
         return result;
     }
@@ -222,7 +285,7 @@ public class SearchBusinessImpl implements SearchBusiness {
     public List<SearchResultRow> searchTasks(String searchTerm) {
         HashMap<Integer, Boolean> backlogAccessMap = new HashMap<Integer, Boolean>();
         List<SearchResultRow> result = new ArrayList<SearchResultRow>();
-        List<Task> tasks = taskDAO.searchByName(searchTerm);
+        List<Task> tasks = searchTasksByName(searchTerm);
         for(Task task : tasks) {
             if(task.getStory() != null){
                 if(checkAccess(task.getStory().getBacklog(), backlogAccessMap)){  
@@ -238,4 +301,8 @@ public class SearchBusinessImpl implements SearchBusiness {
         }
         return result;
     }
+
+    public void setSearchIndexBusiness(SearchIndexBusiness searchIndexBusiness) {
+        this.searchIndexBusiness = searchIndexBusiness;
+    }
 }
@@ -0,0 +1,258 @@
+package fi.hut.soberit.agilefant.business.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hibernate.Hibernate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.typesafe.config.Config;
+
+import fi.hut.soberit.agilefant.business.SearchIndexBusiness;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
+import fi.hut.soberit.agilefant.db.StoryDAO;
+import fi.hut.soberit.agilefant.db.TaskDAO;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.NamedObject;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.util.InvertedIndex;
+import fi.hut.soberit.agilefant.util.TransactionUtils;
+import fi.hut.soberit.agilefant.util.Triple;
+
+/**
+ * In-memory implementation of the search index.
+ */
+@Service("searchIndexBusiness")
+public class SearchIndexBusinessImpl implements SearchIndexBusiness,
+        ApplicationListener<ContextRefreshedEvent> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchIndexBusinessImpl.class);
+
+    private static final int BUILD_BATCH_SIZE = 5000;
+
+    @Autowired
+    private BacklogDAO backlogDAO;
+    @Autowired
+    private StoryDAO storyDAO;
+    @Autowired
+    private TaskDAO taskDAO;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private AsyncTaskExecutor asyncTaskExecutor;
+
+    private boolean enabled = true;
+
+    private final InvertedIndex backlogIndex = new InvertedIndex();
+    private final InvertedIndex storyIndex = new InvertedIndex();
+    private final InvertedIndex taskIndex = new InvertedIndex();
+
+    private final AtomicBoolean buildStarted = new AtomicBoolean();
+
+    private volatile boolean ready = false;
+
+    private volatile boolean building = false;
+
+    /**
+     * Objects deleted while the index is being built, so that the build does
+     * not add them back.
+     */
+    private final Set<String> deletedDuringBuild = Collections.synchronizedSet(new HashSet<String>());
+
+    @Autowired
+    public void setConfig(Config config) {
+        this.enabled = config.getBoolean("agilefant.search.index.enabled");
+    }
+
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        if (!enabled || !buildStarted.compareAndSet(false, true)) {
+            return;
+        }
+        buildIndexInBackground();
+    }
+
+    public void refreshIndex() {
+        if (!enabled) {
+            return;
+        }
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                buildIndexInBackground();
+            }
+        });
+    }
+
+    private void buildIndexInBackground() {
+        asyncTaskExecutor.execute(new Runnable() {
+            public void run() {
+                buildIndex();
+            }
+        });
+    }
+
+    public void buildIndex() {
+        long start = System.currentTimeMillis();
+        building = true;
+        try {
+            indexAll(Product.class, backlogIndex);
+            indexAll(Project.class, backlogIndex);
+            indexAll(Iteration.class, backlogIndex);
+            indexAll(Story.class, storyIndex);
+            indexAll(Task.class, taskIndex);
+        } catch (RuntimeException e) {
+            LOG.error("Building the search index failed", e);
+            return;
+        } finally {
+            building = false;
+        }
+        ready = true;
+        deletedDuringBuild.clear();
+        LOG.info("Search index built in " + (System.currentTimeMillis() - start) + " ms: "
+                + backlogIndex.size() + " backlogs, " + storyIndex.size() + " stories, "
+                + taskIndex.size() + " tasks");
+    }
+
+    public List<Integer> search(Class<? extends NamedObject> type,
+            String searchTerm, int maxResults) {
+        if (!ready || InvertedIndex.tokenize(searchTerm).isEmpty()) {
+            return null;
+        }
+        return getIndex(type).search(searchTerm, type, maxResults);
+    }
+
+    public void objectStored(NamedObject object) {
+        if (!enabled) {
+            return;
+        }
+        final Class<?> type = Hibernate.getClass(object);
+        final InvertedIndex index = getIndex(type);
+        if (index == null) {
+            return;
+        }
+        final int id = object.getId();
+        final String name = object.getName();
+        final String description = getDescription(object);
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                index.put(id, type, name, description);
+            }
+        });
+    }
+
+    public void objectDeleted(NamedObject object) {
+        if (!enabled) {
+            return;
+        }
+        final Class<?> type = Hibernate.getClass(object);
+        final InvertedIndex index = getIndex(type);
+        if (index == null) {
+            return;
+        }
+        final int id = object.getId();
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                if (!ready || building) {
+                    deletedDuringBuild.add(getKey(type, id));
+                }
+                index.remove(id);
+            }
+        });
+    }
+
+    private void indexAll(Class<? extends NamedObject> type, InvertedIndex index) {
+        int afterId = 0;
+        List<Triple<Integer, String, String>> batch;
+        do {
+            batch = retrieveBatch(type, afterId);
+            for (Triple<Integer, String, String> row : batch) {
+                if (!deletedDuringBuild.contains(getKey(type, row.getFirst()))) {
+                    index.putIfAbsent(row.getFirst(), type, row.getSecond(), row.getThird());
+                }
+                afterId = row.getFirst();
+            }
+        } while (batch.size() == BUILD_BATCH_SIZE);
+    }
+
+    private List<Triple<Integer, String, String>> retrieveBatch(
+            final Class<? extends NamedObject> type, final int afterId) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(new TransactionCallback<List<Triple<Integer, String, String>>>() {
+            @SuppressWarnings("unchecked")
+            public List<Triple<Integer, String, String>> doInTransaction(TransactionStatus status) {
+                if (Story.class.equals(type)) {
+                    return storyDAO.retrieveSearchIndexData(afterId, BUILD_BATCH_SIZE);
+                } else if (Task.class.equals(type)) {
+                    return taskDAO.retrieveSearchIndexData(afterId, BUILD_BATCH_SIZE);
+                }
+                return backlogDAO.retrieveSearchIndexData((Class<? extends Backlog>) type,
+                        afterId, BUILD_BATCH_SIZE);
+            }
+        });
+    }
+
+    private InvertedIndex getIndex(Class<?> type) {
+        if (Backlog.class.isAssignableFrom(type)) {
+            return backlogIndex;
+        } else if (Story.class.isAssignableFrom(type)) {
+            return storyIndex;
+        } else if (Task.class.isAssignableFrom(type)) {
+            return taskIndex;
+        }
+        return null;
+    }
+
+    private String getDescription(NamedObject object) {
+        if (object instanceof Backlog) {
+            return ((Backlog) object).getDescription();
+        } else if (object instanceof Story) {
+            return ((Story) object).getDescription();
+        } else if (object instanceof Task) {
+            return ((Task) object).getDescription();
+        }
+        return null;
+    }
+
+    private static String getKey(Class<?> type, int id) {
+        return type.getSimpleName() + ":" + id;
+    }
+
+    public void setBacklogDAO(BacklogDAO backlogDAO) {
+        this.backlogDAO = backlogDAO;
+    }
+
+    public void setStoryDAO(StoryDAO storyDAO) {
+        this.storyDAO = storyDAO;
+    }
+
+    public void setTaskDAO(TaskDAO taskDAO) {
+        this.taskDAO = taskDAO;
+    }
+
+    public void setTransactionManager(
+            PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setAsyncTaskExecutor(AsyncTaskExecutor asyncTaskExecutor) {
+        this.asyncTaskExecutor = asyncTaskExecutor;
+    }
+
+}
@@ -9,21 +9,35 @@ import java.util.Map;
 import javax.annotation.PostConstruct;
 
 import org.joda.time.Period;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import fi.hut.soberit.agilefant.business.SettingBusiness;
 import fi.hut.soberit.agilefant.db.SettingDAO;
 import fi.hut.soberit.agilefant.model.Setting;
+import fi.hut.soberit.agilefant.util.TransactionUtils;
 
 /**
  * Business implementation for handling of settings
+ * <p>
+ * The setting values are read from an in-memory snapshot, which is loaded at
+ * startup and replaced whenever a setting is stored. Every store also changes
+ * the value of the {@link #SETTING_NAME_SETTINGS_VERSION} setting, which the
+ * other nodes of a clustered deployment poll to notice that their snapshots
+ * are out of date.
  * 
  * @author kjniiran
  * @author Pasi Pekkanen
@@ -50,6 +64,21 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     public static final String SETTING_NAME_BRANCH_METRICS = "branchMetricsType";
     public static final String SETTING_NAME_LABELS_IN_STORY_LIST = "labelsInStoryList";
     public static final String SETTING_NAME_WEEKENDS_IN_BURNDOWN = "weekendsInBurndown";
+    public static final String SETTING_NAME_SETTINGS_VERSION = "settingsVersion";
+    
+    private static final Logger LOG = LoggerFactory.getLogger(SettingBusinessImpl.class);
+    
+    /**
+     * How often the settings version is checked for changes made by other
+     * nodes, in milliseconds.
+     */
+    private static final long SETTINGS_VERSION_POLL_INTERVAL = 30 * 1000L;
+    
+    /**
+     * The setting values by name, or <code>null</code> if they need to be
+     * loaded. The map is never modified, but replaced as a whole.
+     */
+    private volatile Map<String, String> settingValues;
     
     public SettingBusinessImpl() {
         super(Setting.class);
@@ -94,6 +123,139 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
             setting.setValue(value);
             this.settingDAO.store(setting);
         } 
+        if (!SETTING_NAME_SETTINGS_VERSION.equals(settingName)) {
+            this.storeSettingsVersion();
+        }
+        this.updateSettingValue(settingName, value);
+    }
+    
+    /**
+     * Change the settings version so that the other nodes reload their
+     * settings. The version is based on the current time to keep it unique
+     * even if two nodes store settings at the same time.
+     */
+    private void storeSettingsVersion() {
+        Setting version = this.retrieveByName(SETTING_NAME_SETTINGS_VERSION);
+        long newVersion = System.currentTimeMillis();
+        if (version == null) {
+            version = new Setting();
+            version.setName(SETTING_NAME_SETTINGS_VERSION);
+            version.setValue(Long.toString(newVersion));
+            this.settingDAO.create(version);
+        } else {
+            newVersion = Math.max(newVersion, parseVersion(version.getValue()) + 1);
+            version.setValue(Long.toString(newVersion));
+            this.settingDAO.store(version);
+        }
+        this.updateSettingValue(SETTING_NAME_SETTINGS_VERSION, version.getValue());
+    }
+    
+    private static long parseVersion(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+    
+    /**
+     * Update the value in the snapshot when the current transaction commits.
+     */
+    private void updateSettingValue(final String settingName, final String value) {
+        TransactionUtils.afterCommit(new Runnable() {
+            public void run() {
+                putSettingValue(settingName, value);
+            }
+        });
+    }
+    
+    private synchronized void putSettingValue(String settingName, String value) {
+        if (this.settingValues == null) {
+            // Loaded with the new value on next read
+            return;
+        }
+        Map<String, String> values = new HashMap<String, String>(this.settingValues);
+        values.put(settingName, value);
+        this.settingValues = Collections.unmodifiableMap(values);
+    }
+    
+    /**
+     * Load the settings at startup. If the database is not available yet, the
+     * settings are loaded on first use instead.
+     */
+    @PostConstruct
+    public void loadSettings() {
+        try {
+            this.getSettingValues();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not load the settings at startup", e);
+        }
+    }
+    
+    private Map<String, String> getSettingValues() {
+        Map<String, String> values = this.settingValues;
+        if (values == null) {
+            values = this.reloadSettingValues();
+        }
+        return values;
+    }
+    
+    private synchronized Map<String, String> reloadSettingValues() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        // Do not load the uncommitted changes of the calling transaction
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Map<String, String> values = template.execute(new TransactionCallback<Map<String, String>>() {
+            public Map<String, String> doInTransaction(TransactionStatus status) {
+                Map<String, String> values = new HashMap<String, String>();
+                for (Setting setting : settingDAO.getAll()) {
+                    values.put(setting.getName(), setting.getValue());
+                }
+                return values;
+            }
+        });
+        this.settingValues = Collections.unmodifiableMap(values);
+        return this.settingValues;
+    }
+    
+    private String getSettingValue(String settingName) {
+        return this.getSettingValues().get(settingName);
+    }
+    
+    /**
+     * Reload the settings if another node has changed them.
+     */
+    @Scheduled(fixedDelay = SETTINGS_VERSION_POLL_INTERVAL)
+    @Transactional(readOnly = true)
+    public void pollSettingsVersion() {
+        Map<String, String> values = this.settingValues;
+        if (values == null) {
+            return;
+        }
+        Setting version = this.retrieveByName(SETTING_NAME_SETTINGS_VERSION);
+        String currentVersion = (version == null) ? null : version.getValue();
+        String loadedVersion = values.get(SETTING_NAME_SETTINGS_VERSION);
+        if (currentVersion != null && !currentVersion.equals(loadedVersion)) {
+            LOG.info("Settings changed on another node, reloading");
+            this.settingsChanged();
+        }
+    }
+    
+    public void settingsChanged() {
+        this.clearSettingValues();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            clearSettingValues();
+                        }
+                    });
+        }
+    }
+    
+    private synchronized void clearSettingValues() {
+        this.settingValues = null;
     }
     
     @Transactional
@@ -101,15 +263,15 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         this.storeSetting(settingName, value);
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isHourReportingEnabled() {
-        Setting setting = this.retrieveByName(SETTING_NAME_HOUR_REPORTING);
+        String value = this.getSettingValue(SETTING_NAME_HOUR_REPORTING);
 
-        if (setting == null) {
+        if (value == null) {
             return false;
         }
 
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
 
     @Transactional
@@ -118,15 +280,15 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
 
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isDailyWork() {
-        Setting setting = this.retrieveByName(SETTING_NAME_DAILY_WORK);
+        String value = this.getSettingValue(SETTING_NAME_DAILY_WORK);
 
-        if (setting == null) {
+        if (value == null) {
             return false;
         }
 
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
 
     @Transactional
@@ -134,15 +296,15 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         this.storeSetting(SETTING_NAME_DAILY_WORK, mode);
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isTimeSheet() {
-        Setting setting = this.retrieveByName(SETTING_NAME_TIME_SHEET);
+        String value = this.getSettingValue(SETTING_NAME_TIME_SHEET);
 
-        if (setting == null) {
+        if (value == null) {
             return false;
         }
 
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
     
     @Transactional
@@ -150,15 +312,15 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         this.storeSetting(SETTING_NAME_TIME_SHEET, mode);
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isDevPortfolio() {
-        Setting setting = this.retrieveByName(SETTING_NAME_DEV_PORTFOLIO);
+        String value = this.getSettingValue(SETTING_NAME_DEV_PORTFOLIO);
 
-        if (setting == null) {
+        if (value == null) {
             return false;
         }
 
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
 
     @Transactional
@@ -181,14 +343,14 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     /**
      * {@inheritDoc}
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public int getRangeLow() {
-        Setting setting = this.retrieveByName(SETTING_NAME_RANGE_LOW);
+        String value = this.getSettingValue(SETTING_NAME_RANGE_LOW);
 
-        if (setting == null) {
+        if (value == null) {
             return DEFAULT_RANGE_LOW;
         } else {
-            return Integer.parseInt(setting.getValue());
+            return Integer.parseInt(value);
         }
     }
 
@@ -207,14 +369,14 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     /**
      * {@inheritDoc}
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public int getRangeHigh() {
-        Setting setting = this.retrieveByName(SETTING_NAME_RANGE_HIGH);
+        String value = this.getSettingValue(SETTING_NAME_RANGE_HIGH);
 
-        if (setting == null) {
+        if (value == null) {
             return DEFAULT_RANGE_HIGH;
         }
-        return Integer.parseInt(setting.getValue());
+        return Integer.parseInt(value);
     }
 
     /**
@@ -232,14 +394,14 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     /**
      * {@inheritDoc}
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public int getOptimalLow() {
-        Setting setting = this.retrieveByName(SETTING_NAME_OPTIMAL_LOW);
+        String value = this.getSettingValue(SETTING_NAME_OPTIMAL_LOW);
 
-        if (setting == null) {
+        if (value == null) {
             return DEFAULT_OPTIMAL_LOW;
         }
-        return Integer.parseInt(setting.getValue());
+        return Integer.parseInt(value);
     }
 
     /**
@@ -257,14 +419,14 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     /**
      * {@inheritDoc}
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public int getOptimalHigh() {
-        Setting setting = this.retrieveByName(SETTING_NAME_OPTIMAL_HIGH);
+        String value = this.getSettingValue(SETTING_NAME_OPTIMAL_HIGH);
 
-        if (setting == null) {
+        if (value == null) {
             return DEFAULT_OPTIMAL_HIGH;
         }
-        return Integer.parseInt(setting.getValue());
+        return Integer.parseInt(value);
     }
 
     /**
@@ -282,25 +444,25 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
     /**
      * {@inheritDoc}
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public int getCriticalLow() {
-        Setting setting = this.retrieveByName(SETTING_NAME_CRITICAL_LOW);
+        String value = this.getSettingValue(SETTING_NAME_CRITICAL_LOW);
 
-        if (setting == null) {
+        if (value == null) {
             return DEFAULT_CRITICAL_LOW;
         }
-        return Integer.parseInt(setting.getValue());
+        return Integer.parseInt(value);
     }
     
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Period getPortfolioTimeSpan() {
-        Setting setting = this.retrieveByName(SETTING_NAME_PORTFOLIO_TIME_SPAN);
+        String value = this.getSettingValue(SETTING_NAME_PORTFOLIO_TIME_SPAN);
         
-        if(setting == null) {
+        if(value == null) {
             return DEFAULT_PORTFOLIO_TIME_SPAN; 
         }
-        return Period.months(Integer.parseInt(setting.getValue()));
+        return Period.months(Integer.parseInt(value));
         
     }
     
@@ -313,13 +475,13 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         }
     }
 
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public String getStoryTreeFieldOrder() {
-        Setting setting = this.retrieveByName(SETTING_NAME_STORY_TREE_FIELD_ORDER);
-        if (setting == null) {
+        String value = this.getSettingValue(SETTING_NAME_STORY_TREE_FIELD_ORDER);
+        if (value == null) {
             return DEFAULT_STORY_TREE_FIELD_ORDER;
         }
-        return setting.getValue();
+        return value;
     }
     
     public void setStoryTreeFieldOrder(String newOrder) {
@@ -349,13 +511,13 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         }
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public BranchMetricsType getBranchMetricsType() {
-        Setting setting = this.retrieveByName(SETTING_NAME_BRANCH_METRICS);
-        if (setting == null) {
+        String value = this.getSettingValue(SETTING_NAME_BRANCH_METRICS);
+        if (value == null) {
             return DEFAULT_BRANCH_METRICS;
         }
-        return BranchMetricsType.valueOf(setting.getValue());
+        return BranchMetricsType.valueOf(value);
     }
     
     
@@ -363,29 +525,29 @@ public class SettingBusinessImpl extends GenericBusinessImpl<Setting> implements
         this.storeSetting(SETTING_NAME_LABELS_IN_STORY_LIST, mode);
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isLabelsInStoryList() {
-        Setting setting = this.retrieveByName(SETTING_NAME_LABELS_IN_STORY_LIST);
+        String value = this.getSettingValue(SETTING_NAME_LABELS_IN_STORY_LIST);
 
-        if (setting == null) {
+        if (value == null) {
             return true;
         }
 
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
     
     public void setWeekendsInBurndown(boolean mode) {
         this.storeSetting(SETTING_NAME_WEEKENDS_IN_BURNDOWN, mode);
     }
     
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isWeekendsInBurndown() {
-        Setting setting = this.retrieveByName(SETTING_NAME_WEEKENDS_IN_BURNDOWN);
-        if (setting == null) {
+        String value = this.getSettingValue(SETTING_NAME_WEEKENDS_IN_BURNDOWN);
+        if (value == null) {
             return true;
         }
         
-        return setting.getValue().equals("true");
+        return value.equals("true");
     }
     
 }
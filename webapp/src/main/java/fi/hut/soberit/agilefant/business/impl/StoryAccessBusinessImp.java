@@ -5,12 +5,27 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.support.PropertyComparator;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import fi.hut.soberit.agilefant.business.StoryAccessBusiness;
 import fi.hut.soberit.agilefant.business.StoryBusiness;
@@ -22,40 +37,140 @@ import fi.hut.soberit.agilefant.model.StoryAccess;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.StoryAccessCloudTO;
-
+import fi.hut.soberit.agilefant.util.Triple;
+
+/**
+ * Logs the story accesses with a write-behind buffer.
+ * <p>
+ * The accesses are queued in memory as (user id, story id, time) and written
+ * in JDBC batches outside of the request transactions, together with the
+ * daily access counts the story access cloud is read from. When the queue is
+ * full, new accesses are dropped rather than slowing down the story views.
+ */
 @Service("storyAccessBusiness")
 @Transactional
 public class StoryAccessBusinessImp extends GenericBusinessImpl<StoryAccess>
-        implements StoryAccessBusiness {
+        implements StoryAccessBusiness, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StoryAccessBusinessImp.class);
+
+    private static final long FLUSH_INTERVAL = 10 * 1000L;
+
+    private static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * Number of buffered accesses which are written without waiting for the
+     * next scheduled flush.
+     */
+    private static final int FLUSH_THRESHOLD = 500;
+
+    private static final int FLUSH_BATCH_SIZE = 500;
 
     @Autowired
     private StoryAccessDAO storyAccessDAO;
     @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private AsyncTaskExecutor asyncTaskExecutor;
+    @Autowired
     private StoryBusiness storyBusiness;
     @Autowired
     private UserBusiness userBusiness;
     @Autowired
     private StoryHistoryDAO storyHistoryDAO;
 
+    private final BlockingQueue<Triple<Integer, Integer, DateTime>> pendingAccesses = new ArrayBlockingQueue<Triple<Integer, Integer, DateTime>>(QUEUE_CAPACITY);
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final AtomicLong droppedAccesses = new AtomicLong();
+
+    private final Object flushLock = new Object();
+
     public StoryAccessBusinessImp() {
         super(StoryAccess.class);
     }
 
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void addAccessEntry(Story story) {
-        DateTime now = new DateTime();
+        this.addAccessEntry(story.getId());
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void addAccessEntry(int storyId) {
         User user = SecurityUtil.getLoggedUser();
+        Triple<Integer, Integer, DateTime> access = Triple.create(user.getId(), storyId, new DateTime());
+        if (!pendingAccesses.offer(access)) {
+            droppedAccesses.incrementAndGet();
+            return;
+        }
+        if (pendingAccesses.size() >= FLUSH_THRESHOLD
+                && flushRequested.compareAndSet(false, true)) {
+            asyncTaskExecutor.execute(new Runnable() {
+                public void run() {
+                    flushRequested.set(false);
+                    flushAccessEntries();
+                }
+            });
+        }
+    }
+
+    @Scheduled(fixedDelay = FLUSH_INTERVAL)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void scheduledFlushAccessEntries() {
+        this.flushAccessEntries();
+    }
 
-        StoryAccess entry = new StoryAccess();
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int flushAccessEntries() {
+        synchronized (flushLock) {
+            long dropped = droppedAccesses.getAndSet(0);
+            if (dropped > 0) {
+                LOG.warn("Story access queue full, " + dropped + " accesses were not logged");
+            }
+            TransactionTemplate template = new TransactionTemplate(transactionManager);
+            template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            int written = 0;
+            while (true) {
+                final List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>(FLUSH_BATCH_SIZE);
+                pendingAccesses.drainTo(batch, FLUSH_BATCH_SIZE);
+                if (batch.isEmpty()) {
+                    return written;
+                }
+                try {
+                    template.execute(new TransactionCallbackWithoutResult() {
+                        @Override
+                        protected void doInTransactionWithoutResult(TransactionStatus status) {
+                            storyAccessDAO.storeAccesses(batch);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    LOG.error("Writing " + batch.size() + " story accesses failed, retrying on the next flush", e);
+                    requeue(batch);
+                    return written;
+                }
+                written += batch.size();
+            }
+        }
+    }
 
-        entry.setDate(now);
-        entry.setStory(story);
-        entry.setUser(user);
-        this.storyAccessDAO.create(entry);
+    /**
+     * Put the accesses of a failed batch back to the queue. The accesses that
+     * no longer fit are dropped.
+     */
+    private void requeue(List<Triple<Integer, Integer, DateTime>> batch) {
+        for (Triple<Integer, Integer, DateTime> access : batch) {
+            if (!pendingAccesses.offer(access)) {
+                droppedAccesses.incrementAndGet();
+            }
+        }
     }
 
-    public void addAccessEntry(int storyId) {
-        Story story = this.storyBusiness.retrieve(storyId);
-        this.addAccessEntry(story);
+    /**
+     * Writes the remaining accesses when the application is stopped.
+     */
+    public void destroy() {
+        this.flushAccessEntries();
     }
 
     @Transactional(readOnly=true)
@@ -78,11 +193,14 @@ public class StoryAccessBusinessImp extends GenericBusinessImpl<StoryAccess>
     @Transactional(readOnly=true)
     public List<StoryAccessCloudTO> calculateOccurences(DateTime start,
             DateTime end, User user, int numberOfItems) {
-        Map<Story, Long> data = this.storyAccessDAO.calculateAccessCounts(
-                start, end, user);
+        Map<Integer, Long> data = this.storyAccessDAO.calculateAccessCounts(
+                user.getId(), start.toLocalDate(), end.toLocalDate());
+
+        Collection<Story> stories = this.storyBusiness.retrieveMultiple(data.keySet());
+
         List<StoryAccessCloudTO> res = new ArrayList<StoryAccessCloudTO>();
-        for (Story story : data.keySet()) {
-            res.add(new StoryAccessCloudTO(story, data.get(story)));
+        for (Story story : stories) {
+            res.add(new StoryAccessCloudTO(story, data.get(story.getId())));
         }
         Collections.sort(res, new PropertyComparator("count", true, false));
         if(res.size() > numberOfItems) {
@@ -111,4 +229,21 @@ public class StoryAccessBusinessImp extends GenericBusinessImpl<StoryAccess>
         return res;
     }
 
+    public void setStoryAccessDAO(StoryAccessDAO storyAccessDAO) {
+        this.storyAccessDAO = storyAccessDAO;
+    }
+
+    public void setStoryBusiness(StoryBusiness storyBusiness) {
+        this.storyBusiness = storyBusiness;
+    }
+
+    public void setTransactionManager(
+            PlatformTransactionManager transactionManager) {
+        this.transactionManager = transactionManager;
+    }
+
+    public void setAsyncTaskExecutor(AsyncTaskExecutor asyncTaskExecutor) {
+        this.asyncTaskExecutor = asyncTaskExecutor;
+    }
+
 }
@@ -1,12 +1,15 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import fi.hut.soberit.agilefant.business.IterationHistoryEntryBusiness;
 import fi.hut.soberit.agilefant.business.LabelBusiness;
 import fi.hut.soberit.agilefant.business.StoryBatchBusiness;
 import fi.hut.soberit.agilefant.business.StoryBusiness;
@@ -20,7 +23,10 @@ public class StoryBatchBusinessImpl implements StoryBatchBusiness {
     private StoryBusiness storyBusiness;
     @Autowired
     private LabelBusiness labelBusiness;
+    @Autowired
+    private IterationHistoryEntryBusiness iterationHistoryEntryBusiness;
 
+    @Transactional
     public void modifyMultiple(Set<Integer> storyIds, StoryState state,
             List<String> labelNames) {
         Set<Story> stories = new HashSet<Story>();
@@ -35,20 +41,33 @@ public class StoryBatchBusinessImpl implements StoryBatchBusiness {
 
     private void addLabels(List<String> labelNames, Set<Story> stories) {
         if (labelNames != null && !labelNames.isEmpty()) {
-            for (Story story : stories) {
-                labelBusiness.createStoryLabels(labelNames, story.getId());
-
-            }
+            labelBusiness.createStoryLabels(labelNames, stories);
         }
     }
 
+    /**
+     * The changed stories are written with the session flush in one JDBC
+     * batch. The iteration history only depends on whether the stories are
+     * deferred, so it is updated once for each iteration where that changes.
+     */
     private void updateStates(StoryState state, Set<Story> stories) {
         if (state != null) {
+            List<Story> changed = new ArrayList<Story>();
+            Set<Integer> iterationIds = new HashSet<Integer>();
             for (Story story : stories) {
+                if (story.getState() == state) {
+                    continue;
+                }
+                if (story.getIteration() != null
+                        && (story.getState() == StoryState.DEFERRED || state == StoryState.DEFERRED)) {
+                    iterationIds.add(story.getIteration().getId());
+                }
                 story.setState(state);
-                storyBusiness.store(story);
-                storyBusiness.updateParentStates(story);
-                //storyBusiness.store(story.getId(), story, null, null, false);
+                changed.add(story);
+            }
+            storyBusiness.updateParentStates(changed);
+            for (Integer iterationId : iterationIds) {
+                iterationHistoryEntryBusiness.updateIterationHistory(iterationId);
             }
         }
     }
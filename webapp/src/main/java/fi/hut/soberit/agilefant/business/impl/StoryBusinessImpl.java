@@ -205,6 +205,22 @@ public class StoryBusinessImpl extends GenericBusinessImpl<Story> implements
         }
     }
 
+    public void updateParentStates(Collection<Story> stories) {
+        Set<Integer> visited = new HashSet<Integer>();
+        for (Story story : stories) {
+            if (story.getState() == StoryState.NOT_STARTED || story.getState() == StoryState.DEFERRED) {
+                continue;
+            }
+            for (Story parent = story.getParent(); parent != null && visited.add(parent.getId());
+                    parent = parent.getParent()) {
+                if (parent.getState() != StoryState.NOT_STARTED) {
+                    break;
+                }
+                parent.setState(StoryState.STARTED);
+            }
+        }
+    }
+
     private static void checkStoriesBacklogIfAssignedToIteration(Story persisted) {
         if (persisted == null) {
             return;
@@ -2,8 +2,12 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -21,17 +25,18 @@ import fi.hut.soberit.agilefant.business.StoryFilterBusiness;
 import fi.hut.soberit.agilefant.business.StoryHierarchyBusiness;
 import fi.hut.soberit.agilefant.business.StoryTreeIntegrityBusiness;
 import fi.hut.soberit.agilefant.db.StoryHierarchyDAO;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
-import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.transfer.StoryTO;
 import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
 import fi.hut.soberit.agilefant.util.StoryFilters;
+import fi.hut.soberit.agilefant.util.StoryTreeRankComparator;
 
 @Service("storyHierarchyBusiness")
 public class StoryHierarchyBusinessImpl implements StoryHierarchyBusiness {
@@ -50,6 +55,9 @@ public class StoryHierarchyBusinessImpl implements StoryHierarchyBusiness {
     
     @Autowired
     private StoryTreeIntegrityBusiness storyTreeIntegrityBusiness;
+
+    @Autowired
+    private StoryTreeMetricsDAO storyTreeMetricsDAO;
    
 
     @Transactional(readOnly = true)
@@ -232,6 +240,56 @@ public class StoryHierarchyBusinessImpl implements StoryHierarchyBusiness {
         }
     }
 
+    @Transactional(readOnly = true)
+    public List<Story> retrieveProductStoryTree(int productId,
+            Integer rootStoryId, int levels, StoryFilters storyFilters) {
+        List<Story> productStories = storyHierarchyDAO
+                .retrieveProductStories(productId);
+        Map<Integer, StoryTO> nodes = new HashMap<Integer, StoryTO>();
+        for (Story story : productStories) {
+            StoryTO node = new StoryTO(story);
+            node.setChildren(new ArrayList<Story>());
+            nodes.put(node.getId(), node);
+        }
+
+        List<Story> roots = new ArrayList<Story>();
+        for (Story story : productStories) {
+            StoryTO node = nodes.get(story.getId());
+            StoryTO parent = (story.getParent() == null) ? null : nodes
+                    .get(story.getParent().getId());
+            if (parent != null) {
+                parent.getChildren().add(node);
+            }
+            if (rootStoryId == null ? story.getParent() == null
+                    : rootStoryId.intValue() == story.getId()) {
+                roots.add(node);
+            }
+        }
+        Comparator<Story> treeRankComparator = new StoryTreeRankComparator();
+        for (StoryTO node : nodes.values()) {
+            Collections.sort(node.getChildren(), treeRankComparator);
+        }
+        Collections.sort(roots, treeRankComparator);
+
+        if (levels > 0) {
+            limitLevels(roots, levels);
+        }
+        if (storyFilters != null) {
+            return storyFilterBusiness.filterStories(roots, storyFilters);
+        }
+        return roots;
+    }
+
+    private void limitLevels(List<Story> stories, int levels) {
+        for (Story story : stories) {
+            if (levels > 1) {
+                limitLevels(story.getChildren(), levels - 1);
+            } else {
+                story.setChildren(new ArrayList<Story>());
+            }
+        }
+    }
+
     @Transactional(readOnly = true)
     public List<Story> retrieveProjectRootStories(int projectId,
             StoryFilters storyFilters) {
@@ -358,15 +416,8 @@ public class StoryHierarchyBusinessImpl implements StoryHierarchyBusiness {
     public StoryTreeBranchMetrics calculateStoryTreeMetrics(Story story) {
         StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
         
-        StoryState deferred = StoryState.DEFERRED;
-        
         if(story.getChildren().isEmpty()) {
-            if(story.getState() != deferred) {
-                metrics.leafPoints = storyPointsAsLong(story);
-                if(story.getState() == StoryState.DONE) {
-                    metrics.doneLeafPoints = storyPointsAsLong(story);
-                }
-            }
+            metrics.addLeafPoints(storyPointsAsLong(story), story.getState());
         }
         
         metrics.spentEffort = storyHoursAsLong(story);
@@ -376,26 +427,44 @@ public class StoryHierarchyBusinessImpl implements StoryHierarchyBusiness {
             if (child.getId() == story.getId()) {
                 continue;
             }
-            StoryTreeBranchMetrics childMetrics = this.calculateStoryTreeMetrics(child);
-            if(child.getState() != deferred) {
-                metrics.estimatedDonePoints += childMetrics.estimatedDonePoints;
-                metrics.estimatedPoints += childMetrics.estimatedPoints;
-                metrics.leafPoints += childMetrics.leafPoints;
-                metrics.doneLeafPoints += childMetrics.doneLeafPoints;
-            }
-            metrics.spentEffort += childMetrics.spentEffort;
-            metrics.effortLeft += childMetrics.effortLeft;
+            metrics.addChild(this.calculateStoryTreeMetrics(child), child.getState());
         }
         
-        if(storyPointsAsLong(story) > metrics.estimatedPoints) {
-            if(story.getState() != deferred) {
-                metrics.estimatedPoints = storyPointsAsLong(story);
-                if(story.getState() == StoryState.DONE) {
-                    metrics.estimatedDonePoints = storyPointsAsLong(story);
-                }
-            }
-        }
+        metrics.applyStoryPoints(storyPointsAsLong(story), story.getState());
         
         return metrics;
     }
+
+    @Transactional(readOnly = true)
+    public StoryTreeBranchMetrics retrieveStoryTreeMetrics(Story story) {
+        StoryTreeBranchMetrics metrics = storyTreeMetricsDAO.getBranchMetrics(
+                Arrays.asList(story.getId())).get(story.getId());
+        if (metrics == null) {
+            return calculateStoryTreeMetrics(story);
+        }
+        return metrics;
+    }
+
+    @Transactional(readOnly = true)
+    public void loadStoryTreeMetrics(List<Story> stories) {
+        Set<Story> nodes = Collections.newSetFromMap(new IdentityHashMap<Story, Boolean>());
+        collectBranches(stories, nodes);
+        Set<Integer> storyIds = new HashSet<Integer>();
+        for (Story story : nodes) {
+            storyIds.add(story.getId());
+        }
+        Map<Integer, StoryTreeBranchMetrics> metrics = storyTreeMetricsDAO
+                .getBranchMetrics(storyIds);
+        for (Story story : nodes) {
+            story.setBranchMetrics(metrics.get(story.getId()));
+        }
+    }
+
+    private void collectBranches(Collection<Story> stories, Set<Story> nodes) {
+        for (Story story : stories) {
+            if (nodes.add(story)) {
+                collectBranches(story.getChildren(), nodes);
+            }
+        }
+    }
 }
@@ -2,7 +2,6 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
@@ -23,6 +22,14 @@ import fi.hut.soberit.agilefant.transfer.StoryTO;
 @Transactional
 public class StoryRankBusinessImpl implements StoryRankBusiness {
 
+    /**
+     * The distance between the rank numbers of adjacent stories after a
+     * rebalance. A story is moved by giving it a rank number between its new
+     * neighbours, so about log2(RANK_GAP) moves fit in the same spot before
+     * the context has to be renumbered.
+     */
+    static final int RANK_GAP = 1024;
+
     @Autowired
     private StoryRankDAO storyRankDAO;
     @Autowired
@@ -72,60 +79,99 @@ public class StoryRankBusinessImpl implements StoryRankBusiness {
     }
 
     private void rankAbove(StoryRank rank, StoryRank next) {
-        LinkedList<StoryRank> ranks = prepareRankingContext(rank);
-
-        int nextIndex = ranks.indexOf(next);
-        if (nextIndex == -1) {
-            ranks.addLast(rank);
-        } else {
-            ranks.add(nextIndex, rank);
+        if (rank.getId() == next.getId()) {
+            return;
         }
-
-        updateContextRanks(ranks);
+        placeBetween(rank, this.storyRankDAO.retrievePreviousRank(next, rank), next);
     }
 
     private void rankBelow(StoryRank rank, StoryRank previous) {
-        LinkedList<StoryRank> ranks = prepareRankingContext(rank);
+        if (rank.getId() == previous.getId()) {
+            return;
+        }
+        placeBetween(rank, previous, this.storyRankDAO.retrieveNextRank(previous, rank));
+    }
 
-        int previousIndex = ranks.indexOf(previous);
-        if (previousIndex == -1 || previousIndex == ranks.size() - 1) {
-            ranks.addLast(rank);
+    /**
+     * Give the rank a rank number between the two neighbours. Only the moved
+     * rank is updated, unless the neighbours have no room between them.
+     * 
+     * @param previous
+     *            the rank above, or <code>null</code> for the head
+     * @param next
+     *            the rank below, or <code>null</code> for the bottom
+     */
+    private void placeBetween(StoryRank rank, StoryRank previous, StoryRank next) {
+        if (isBetween(rank, previous, next)) {
+            return;
+        }
+        long newRank;
+        if (previous == null && next == null) {
+            return;
+        } else if (previous == null) {
+            newRank = (long) next.getRank() - RANK_GAP;
+        } else if (next == null) {
+            newRank = (long) previous.getRank() + RANK_GAP;
+        } else if ((long) next.getRank() - previous.getRank() > 1) {
+            newRank = ((long) previous.getRank() + next.getRank()) / 2;
         } else {
-            ranks.add(previousIndex + 1, rank);
+            rebalance(rank, previous);
+            return;
         }
-
-        updateContextRanks(ranks);
+        if (newRank < Integer.MIN_VALUE || newRank > Integer.MAX_VALUE) {
+            rebalance(rank, previous);
+            return;
+        }
+        rank.setRank((int) newRank);
     }
 
-    private void updateContextRanks(LinkedList<StoryRank> ranks) {
+    /**
+     * Renumber the whole ranking context with even gaps and place the rank
+     * below the given rank. Needed only when repeated moves to the same spot
+     * have used up the gap between two ranks.
+     */
+    private void rebalance(StoryRank rank, StoryRank previous) {
+        List<StoryRank> ranks = new ArrayList<StoryRank>();
+        for (StoryRank current : this.storyRankDAO.retrieveRanksByBacklog(rank.getBacklog())) {
+            if (current.getId() != rank.getId()) {
+                ranks.add(current);
+            }
+        }
+        int index = 0;
+        if (previous != null) {
+            for (int i = 0; i < ranks.size(); i++) {
+                if (ranks.get(i).getId() == previous.getId()) {
+                    index = i + 1;
+                    break;
+                }
+            }
+        }
+        ranks.add(index, rank);
         int currentRankNum = 0;
         for (StoryRank currentRank : ranks) {
-            currentRank.setRank(currentRankNum++);
+            currentRank.setRank(currentRankNum);
+            currentRankNum += RANK_GAP;
         }
     }
 
-    private LinkedList<StoryRank> prepareRankingContext(StoryRank rank) {
-        LinkedList<StoryRank> ranks = retrieveLinkedList(rank);
-        if (ranks.contains(rank)) {
-            ranks.remove(rank);
-        }
-        return ranks;
-    }
-
-    private LinkedList<StoryRank> retrieveLinkedList(StoryRank rank) {
-        LinkedList<StoryRank> ranks = new LinkedList<StoryRank>();
-        ranks.addAll(this.storyRankDAO.retrieveRanksByBacklog(rank.getBacklog()));
-        return ranks;
+    /**
+     * Check whether the rank is already ordered between the neighbours.
+     */
+    private static boolean isBetween(StoryRank rank, StoryRank previous, StoryRank next) {
+        return (previous == null || compareRanks(previous, rank) < 0)
+                && (next == null || compareRanks(rank, next) < 0);
     }
 
     /**
-     * Remove item from the linked list.
+     * Compare the ranks in the order of {@link StoryRankDAO}: by rank number,
+     * ties broken by id.
      */
-
-    private void skipRank(StoryRank rank) {
-        LinkedList<StoryRank> ranks = retrieveLinkedList(rank);
-        ranks.remove(rank);
-        updateContextRanks(ranks);
+    private static int compareRanks(StoryRank first, StoryRank second) {
+        if (first.getRank() != second.getRank()) {
+            return (first.getRank() < second.getRank()) ? -1 : 1;
+        }
+        return (first.getId() < second.getId()) ? -1
+                : ((first.getId() == second.getId()) ? 0 : 1);
     }
 
     /**
@@ -184,7 +230,6 @@ public class StoryRankBusinessImpl implements StoryRankBusiness {
         }
         StoryRank rank = this.storyRankDAO.retrieveByBacklogAndStory(context,story);
         if (rank != null) {
-            skipRank(rank);
             this.storyRankDAO.remove(rank);
         }
     }
@@ -194,7 +239,6 @@ public class StoryRankBusinessImpl implements StoryRankBusiness {
      */
     public void removeStoryRanks(Story story) {
         for (StoryRank rank : story.getStoryRanks()) {
-            skipRank(rank);
             this.storyRankDAO.remove(rank);
         }
         story.getStoryRanks().clear();
@@ -220,57 +264,25 @@ public class StoryRankBusinessImpl implements StoryRankBusiness {
         }
         
         StoryRank rank = this.storyRankDAO.retrieveByBacklogAndStory(context, story);
-        LinkedList<StoryRank> ranks = new LinkedList<StoryRank>();
-        ranks.addAll(this.storyRankDAO.retrieveRanksByBacklog(context));
-        StoryRank tailRank = null;
-        try {
-            tailRank = ranks.getLast();
-        } catch (Exception e) {
-
-        }
         if (rank == null) {
             rank = createRank(story, context);
         }
-        
-        if(tailRank != null && (rank.getRank() == tailRank.getRank())){
-            //story is already at the bottom
-            return;
-        }
-        
-        if (tailRank != null) {
-            rankBelow(rank, tailRank);
-        }
-
+        placeBetween(rank, this.storyRankDAO.retrieveLastRank(context, rank), null);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     public void rankToHead(Story story, Backlog backlog) {
         if(backlog instanceof Product) {
             return;
         }
         
         StoryRank rank = this.storyRankDAO.retrieveByBacklogAndStory(backlog, story);
-        
-        LinkedList<StoryRank> ranks = new LinkedList<StoryRank>();
-        ranks.addAll(this.storyRankDAO.retrieveRanksByBacklog(backlog));
-        
-        StoryRank topRank = null;
-        
-        try {
-            topRank = ranks.getFirst();
-        } catch (Exception e) {
-        }
-        
         if (rank == null) {
             rank = createRank(story, backlog);
-        } 
-        else if (rank.getRank() == 0 && (topRank == null || topRank == rank)) {
-            //story is already at top
-            return;
-        }
-        
-        if (topRank != null) {
-            rankAbove(rank, topRank);
         }
+        placeBetween(rank, null, this.storyRankDAO.retrieveFirstRank(backlog, rank));
     }
 
     public void setStoryRankDAO(StoryRankDAO storyRankDAO) {
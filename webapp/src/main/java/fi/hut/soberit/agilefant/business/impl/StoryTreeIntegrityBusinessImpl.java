@@ -2,8 +2,12 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.BacklogBusiness;
 import fi.hut.soberit.agilefant.business.StoryTreeIntegrityBusiness;
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
 import fi.hut.soberit.agilefant.exception.StoryTreeIntegrityViolationException;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
@@ -21,22 +26,49 @@ import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.transfer.MoveStoryNode;
 import fi.hut.soberit.agilefant.util.StoryHierarchyIntegrityViolationType;
 import fi.hut.soberit.agilefant.util.StoryTreeIntegrityMessage;
+import fi.hut.soberit.agilefant.util.StoryTreeRankComparator;
 
 
 @Service("storyTreeIntegrityBusiness")
 @Transactional(readOnly = true)
 public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusiness {
     
+    /**
+     * Orders the messages by the ids of the source and the target stories.
+     * The sort is stable, so the messages of the same stories stay in the
+     * order of the rules.
+     */
+    private static final Comparator<StoryTreeIntegrityMessage> MESSAGE_STORY_ORDER = new Comparator<StoryTreeIntegrityMessage>() {
+        public int compare(StoryTreeIntegrityMessage message1,
+                StoryTreeIntegrityMessage message2) {
+            int result = compareIds(message1.getSource(), message2.getSource());
+            if (result != 0) {
+                return result;
+            }
+            return compareIds(message1.getTarget(), message2.getTarget());
+        }
+
+        private int compareIds(Story story1, Story story2) {
+            int id1 = (story1 == null) ? -1 : story1.getId();
+            int id2 = (story2 == null) ? -1 : story2.getId();
+            return (id1 < id2) ? -1 : ((id1 == id2) ? 0 : 1);
+        }
+    };
+
     @Autowired
     private BacklogBusiness backlogBusiness;
 
+    @Autowired
+    private StoryAncestorDAO storyAncestorDAO;
+
     /** {@inheritDoc} */
     public List<StoryTreeIntegrityMessage> checkChangeBacklog(
             Story story, Backlog newBacklog) {
         List<StoryTreeIntegrityMessage> messages = new ArrayList<StoryTreeIntegrityMessage>();
+        List<Story> descendants = storyAncestorDAO.retrieveDescendants(story);
         
         // If story has children
-        if (!story.getChildren().isEmpty()) {
+        if (!descendants.isEmpty()) {
             /*
              * Can't move to iteration, if the story has children.
              */
@@ -46,7 +78,7 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
              * Can't move to different branch, if the story has children.
              */
             Set<Backlog> allowed = getAllowedBacklogsForChildren(newBacklog); 
-            checkChildBacklogRule(story, messages, allowed, StoryHierarchyIntegrityViolationType.CHILD_IN_WRONG_BRANCH);
+            checkChildBacklogRule(descendants, messages, allowed, StoryHierarchyIntegrityViolationType.CHILD_IN_WRONG_BRANCH);
         }
         
         // If story has a parent
@@ -70,6 +102,7 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
             checkParentStoryConflict(story, newBacklog, messages);
         }
         
+        Collections.sort(messages, MESSAGE_STORY_ORDER);
         return messages;
     }
     
@@ -85,16 +118,14 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
         return allowed;
     }
 
-    static void checkChildBacklogRule(Story parent, List<StoryTreeIntegrityMessage> messages,
+    static void checkChildBacklogRule(List<Story> descendants, List<StoryTreeIntegrityMessage> messages,
             Set<Backlog> allowedBacklogs, StoryHierarchyIntegrityViolationType message) {
         
-        for (Story child : parent.getChildren()) {
+        for (Story child : descendants) {
             
             if (!allowedBacklogs.contains(child.getBacklog()) && !allowedBacklogs.contains(child.getIteration())) {
-                messages.add(new StoryTreeIntegrityMessage(parent, child, message));
+                messages.add(new StoryTreeIntegrityMessage(child.getParent(), child, message));
             }
-            
-            checkChildBacklogRule(child, messages, allowedBacklogs, message);
         }
         
     }
@@ -187,10 +218,11 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
             
             checkTargetBacklogInWrongBranch(story, newParent, messages, allowedBacklogs);
             
-            checkChildBacklogRule(story, messages, allowedBacklogs, StoryHierarchyIntegrityViolationType.TARGET_PARENT_IN_WRONG_BRANCH);
+            checkChildBacklogRule(storyAncestorDAO.retrieveDescendants(story), messages, allowedBacklogs,
+                    StoryHierarchyIntegrityViolationType.TARGET_PARENT_IN_WRONG_BRANCH);
         }
         
-        
+        Collections.sort(messages, MESSAGE_STORY_ORDER);
         return messages;
     }
 
@@ -228,15 +260,20 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
         }
     }
 
-    private MoveStoryNode recurseChangedStoryTreeChildren(Story movedStory, List<StoryTreeIntegrityMessage> messages) {
+    private MoveStoryNode recurseChangedStoryTreeChildren(Story movedStory,
+            Map<Integer, List<Story>> childrenByParent, List<StoryTreeIntegrityMessage> messages) {
         List<MoveStoryNode> children = new ArrayList<MoveStoryNode>();
         boolean containsChanges = false;
         
         MoveStoryNode currentStory = new MoveStoryNode();
         currentStory.setStory(movedStory);
         
-        for(Story story : movedStory.getChildren()) {
-            MoveStoryNode child = recurseChangedStoryTreeChildren(story, messages);
+        List<Story> storyChildren = childrenByParent.remove(movedStory.getId());
+        if (storyChildren == null) {
+            storyChildren = Collections.emptyList();
+        }
+        for(Story story : storyChildren) {
+            MoveStoryNode child = recurseChangedStoryTreeChildren(story, childrenByParent, messages);
             if(child.isContainsChanges()) {
                 containsChanges = true;
             }
@@ -268,7 +305,8 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
             List<StoryTreeIntegrityMessage> messages) {
         MoveStoryNode node;
         // 1. lookup children
-        node = recurseChangedStoryTreeChildren(movedStory, messages);
+        node = recurseChangedStoryTreeChildren(movedStory,
+                groupByParent(storyAncestorDAO.retrieveDescendants(movedStory)), messages);
         // 2. lookup parents
     
         MoveStoryNode lastChanged = node, previous = node;
@@ -291,6 +329,30 @@ public class StoryTreeIntegrityBusinessImpl implements StoryTreeIntegrityBusines
         return lastChanged;
     }
 
+    /**
+     * Group the loaded branch by the parent ids, in the tree rank order of
+     * the children collections.
+     */
+    private static Map<Integer, List<Story>> groupByParent(List<Story> descendants) {
+        Map<Integer, List<Story>> childrenByParent = new HashMap<Integer, List<Story>>();
+        for (Story story : descendants) {
+            if (story.getParent() == null) {
+                continue;
+            }
+            List<Story> children = childrenByParent.get(story.getParent().getId());
+            if (children == null) {
+                children = new ArrayList<Story>();
+                childrenByParent.put(story.getParent().getId(), children);
+            }
+            children.add(story);
+        }
+        Comparator<Story> treeRankComparator = new StoryTreeRankComparator();
+        for (List<Story> children : childrenByParent.values()) {
+            Collections.sort(children, treeRankComparator);
+        }
+        return childrenByParent;
+    }
+
     public boolean canStoryBeMovedToBacklog(Story story, Backlog newBacklog) {
         List<StoryTreeIntegrityMessage> messages = this.checkChangeBacklog(story, newBacklog);
         return messages.isEmpty();
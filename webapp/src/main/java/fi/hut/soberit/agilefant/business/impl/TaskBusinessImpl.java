@@ -1,6 +1,5 @@
 package fi.hut.soberit.agilefant.business.impl;
 
-import java.util.Collection;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -19,13 +18,13 @@ import fi.hut.soberit.agilefant.exception.ObjectNotFoundException;
 import fi.hut.soberit.agilefant.exception.OperationNotPermittedException;
 import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.Iteration;
-import fi.hut.soberit.agilefant.model.Rankable;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskState;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.util.HourEntryHandlingChoice;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Service("taskBusiness")
 @Transactional
@@ -66,6 +65,7 @@ public class TaskBusinessImpl extends GenericBusinessImpl<Task> implements
     public Task storeTask(Task task, Integer iterationId, Integer storyId, boolean storyToStarted) {
         Task storedTask = null;
         TaskState currentTaskState = null;
+        Triple<Integer, ExactEstimate, ExactEstimate> oldContribution = null;
 
         if (task == null) {
             throw new IllegalArgumentException("Task should be given");
@@ -73,6 +73,7 @@ public class TaskBusinessImpl extends GenericBusinessImpl<Task> implements
 
         if(task.getId() != 0) {
             currentTaskState = this.retrieveDetached(task.getId()).getState();
+            oldContribution = iterationHistoryEntryBusiness.calculateTaskHistoryContribution(task.getId());
         }
         
         // allow storing existing task without relations
@@ -111,7 +112,9 @@ public class TaskBusinessImpl extends GenericBusinessImpl<Task> implements
             }
         }
 
-        updateIterationHistoryIfApplicable(task);
+        Triple<Integer, ExactEstimate, ExactEstimate> newContribution = iterationHistoryEntryBusiness
+                .calculateTaskHistoryContribution(storedTask.getId());
+        applyIterationHistoryDeltas(oldContribution, newContribution);
 
         if (task.getState() == TaskState.DONE) {
             dailyWorkBusiness.removeTaskFromWorkQueues(task);
@@ -127,6 +130,35 @@ public class TaskBusinessImpl extends GenericBusinessImpl<Task> implements
         this.store(task);
     }
 
+    /**
+     * Applies the change in the task's share of the iteration history sums
+     * to the affected iterations' histories.
+     */
+    private void applyIterationHistoryDeltas(
+            Triple<Integer, ExactEstimate, ExactEstimate> oldContribution,
+            Triple<Integer, ExactEstimate, ExactEstimate> newContribution) {
+        Integer oldIterationId = (oldContribution == null) ? null : oldContribution.getFirst();
+        Integer newIterationId = newContribution.getFirst();
+        long effortLeft = newContribution.getSecond().getMinorUnits();
+        long originalEstimate = newContribution.getThird().getMinorUnits();
+
+        if (oldIterationId != null) {
+            long oldEffortLeft = oldContribution.getSecond().getMinorUnits();
+            long oldOriginalEstimate = oldContribution.getThird().getMinorUnits();
+            if (oldIterationId.equals(newIterationId)) {
+                iterationHistoryEntryBusiness.applyIterationHistoryDelta(newIterationId,
+                        effortLeft - oldEffortLeft, originalEstimate - oldOriginalEstimate);
+                return;
+            }
+            iterationHistoryEntryBusiness.applyIterationHistoryDelta(oldIterationId,
+                    -oldEffortLeft, -oldOriginalEstimate);
+        }
+        if (newIterationId != null) {
+            iterationHistoryEntryBusiness.applyIterationHistoryDelta(newIterationId,
+                    effortLeft, originalEstimate);
+        }
+    }
+
     private void updateIterationHistoryIfApplicable(Task task) {
         Integer iterationId = getTaskIterationId(task);
         updateIterationHistoryIfNotNull(iterationId);
@@ -302,9 +334,8 @@ public class TaskBusinessImpl extends GenericBusinessImpl<Task> implements
         }
 
         rankingBusiness.rankUnder(task, upperTask, new RankUnderDelegate() {
-            public Collection<? extends Rankable> getWithRankBetween(
-                    Integer first, Integer second) {
-                return taskDAO.getTasksWithRankBetween(first, second, task
+            public void shiftRanks(int lower, int upper, int amount) {
+                taskDAO.shiftRanksBetween(lower, upper, amount, task
                         .getIteration(), task.getStory());
             }
         });
@@ -2,6 +2,7 @@ package fi.hut.soberit.agilefant.business.impl;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -12,19 +13,20 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.business.TimesheetBusiness;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
-import fi.hut.soberit.agilefant.model.BacklogHourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
-import fi.hut.soberit.agilefant.model.StoryHourEntry;
-import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.transfer.BacklogTimesheetNode;
 import fi.hut.soberit.agilefant.transfer.StoryTimesheetNode;
 import fi.hut.soberit.agilefant.transfer.TaskTimesheetNode;
 import fi.hut.soberit.agilefant.util.TimesheetData;
+import fi.hut.soberit.agilefant.util.TimesheetEntryResolver;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 
 @Service("timesheetBusiness")
 @Transactional
@@ -32,6 +34,10 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
     
     @Autowired
     private HourEntryDAO hourEntryDAO;
+    @Autowired
+    private BacklogDAO backlogDAO;
+    @Autowired
+    private UserDAO userDAO;
     
     private DateTimeZone serverTimeZone = new DateTime().getZone();
     
@@ -72,26 +78,47 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
         this.linkBacklogs(sheetData);
         return sheetData;
     }
+    /**
+     * Reads the hour entries as projection rows in one query and groups them
+     * into unlinked nodes by id. Only the backlogs and users of the rows are
+     * loaded as entities, each in one query.
+     */
     protected TimesheetData getUnlinkedTimesheetData(Set<Integer> backlogIds, DateTime startDate, DateTime endDate, Set<Integer> userIds) {
         TimesheetData sheetData = new TimesheetData();
-        List<BacklogHourEntry> backlogEntries = this.hourEntryDAO.getBacklogHourEntriesByFilter(backlogIds, startDate, endDate, userIds);
-        List<StoryHourEntry> storyEntries = this.hourEntryDAO.getStoryHourEntriesByFilter(backlogIds, startDate, endDate, userIds);
-        List<TaskHourEntry> taskEntries = this.hourEntryDAO.getTaskHourEntriesByFilter(backlogIds, startDate, endDate, userIds);
-        
-        for(BacklogHourEntry entry : backlogEntries) {
-            sheetData.addEntry(entry);
+        if (backlogIds == null || backlogIds.isEmpty()) {
+            return sheetData;
         }
-        
-        for(StoryHourEntry entry : storyEntries) {
-            sheetData.addEntry(entry);
+        Set<Integer> subtreeIds = this.backlogDAO.retrieveSubtreeIds(backlogIds);
+        List<TimesheetEntryRow> rows = this.hourEntryDAO.retrieveTimesheetEntries(subtreeIds, startDate, endDate, userIds);
+        if (rows.isEmpty()) {
+            return sheetData;
         }
         
-        for(TaskHourEntry entry : taskEntries) {
-            sheetData.addEntry(entry);
+        Set<Integer> rowBacklogIds = new HashSet<Integer>();
+        Set<Integer> rowUserIds = new HashSet<Integer>();
+        for(TimesheetEntryRow row : rows) {
+            addIfNotNull(rowBacklogIds, row.getBacklogId());
+            addIfNotNull(rowBacklogIds, row.getStoryIterationId());
+            addIfNotNull(rowBacklogIds, row.getStoryBacklogId());
+            addIfNotNull(rowBacklogIds, row.getTaskIterationId());
+            rowUserIds.add(row.getUserId());
+        }
+        TimesheetEntryResolver resolver = new TimesheetEntryResolver(
+                this.backlogDAO.retrieveWithAncestors(rowBacklogIds),
+                this.userDAO.getMultiple(rowUserIds));
+        
+        for(TimesheetEntryRow row : rows) {
+            sheetData.addEntry(resolver.resolve(row));
         }
         return sheetData;
     }
     
+    private static void addIfNotNull(Set<Integer> ids, Integer id) {
+        if (id != null) {
+            ids.add(id);
+        }
+    }
+    
     protected void attachTaskNodeToStoryNode(TimesheetData sheetData, TaskTimesheetNode taskNode) {
         Story story = taskNode.getTask().getStory();
         if(story == null) {
@@ -101,7 +128,7 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
 
         StoryTimesheetNode parentNode = sheetData.getStoryNode(storyId);
         
-        if(parentNode != null && parentNode.getChildren().contains(taskNode)) {
+        if(!sheetData.markLinked(taskNode)) {
             return;
         }
         if(parentNode == null) {
@@ -120,7 +147,7 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
        int iterationId = iteration.getId();
        BacklogTimesheetNode parentNode = sheetData.getBacklogNode(iterationId);
        
-       if(parentNode != null && parentNode.getTaskNodes().contains(taskNode)) {
+       if(!sheetData.markLinked(taskNode)) {
            return;
        }
        
@@ -144,7 +171,7 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
         int backlogId = backlog.getId();
         BacklogTimesheetNode parentNode = sheetData.getBacklogNode(backlogId);
         
-        if(parentNode != null && parentNode.getStoryNodes().contains(storyNode)) {
+        if(!sheetData.markLinked(storyNode)) {
             return;
         }
         
@@ -165,7 +192,7 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
         
         BacklogTimesheetNode parentNode = sheetData.getBacklogNode(backlogId);
         
-        if(parentNode != null && parentNode.getBacklogNodes().contains(backlogNode)) {
+        if(!sheetData.markLinked(backlogNode)) {
             return;
         }
         if(parentNode == null) {
@@ -197,28 +224,25 @@ public class TimesheetBusinessImpl implements TimesheetBusiness {
     }
     
     protected void  linkBacklogs(TimesheetData sheetData) {
-        Collection<BacklogTimesheetNode> backlogNodes = new ArrayList<BacklogTimesheetNode>();
-        backlogNodes.addAll(sheetData.getBacklogNodes());
-        for(BacklogTimesheetNode node : backlogNodes) {
-            if(node.getBacklog() instanceof Iteration) {
-                this.attachBacklogNodeToBacklogNode(sheetData, node);
-            }
-        }
-        backlogNodes.addAll(sheetData.getBacklogNodes());
-        for(BacklogTimesheetNode node : backlogNodes) {
-            if(node.getBacklog() instanceof Project) {
-                this.attachBacklogNodeToBacklogNode(sheetData, node);
-            }
-        }
-        backlogNodes.addAll(sheetData.getBacklogNodes());
-        for(BacklogTimesheetNode node : backlogNodes) {
-            if(node.getBacklog() instanceof Product) {
-                this.attachBacklogNodeToBacklogNode(sheetData, node);
+        // Attaching adds the parent nodes, so the nodes are copied before each level
+        Class<?>[] levels = { Iteration.class, Project.class, Product.class };
+        for(Class<?> level : levels) {
+            Collection<BacklogTimesheetNode> backlogNodes = new ArrayList<BacklogTimesheetNode>(sheetData.getBacklogNodes());
+            for(BacklogTimesheetNode node : backlogNodes) {
+                if(level.isInstance(node.getBacklog())) {
+                    this.attachBacklogNodeToBacklogNode(sheetData, node);
+                }
             }
         }
     }
     public void setHourEntryDAO(HourEntryDAO hourEntryDAO) {
         this.hourEntryDAO = hourEntryDAO;
     }
+    public void setBacklogDAO(BacklogDAO backlogDAO) {
+        this.backlogDAO = backlogDAO;
+    }
+    public void setUserDAO(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
 
 }
@@ -1,6 +1,9 @@
 package fi.hut.soberit.agilefant.business.impl;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -13,6 +16,7 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,10 +26,17 @@ import org.springframework.transaction.annotation.Transactional;
 import com.opensymphony.xwork2.TextProvider;
 
 import fi.hut.soberit.agilefant.business.TimesheetExportBusiness;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.ExportUtils;
+import fi.hut.soberit.agilefant.util.TimesheetEntryResolver;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 import fi.hut.soberit.agilefant.util.TimesheetExportRowData;
 import fi.hut.soberit.agilefant.util.TimesheetExportRowDataComparator;
 
@@ -38,20 +49,18 @@ public class TimesheetExportBusinessImpl implements TimesheetExportBusiness {
     private CellStyle headerStyle;
     @Autowired
     private HourEntryDAO hourEntryDAO;
+    @Autowired
+    private BacklogDAO backlogDAO;
+    @Autowired
+    private UserDAO userDAO;
     private DateTimeZone serverTimeZone = new DateTime().getZone();
 
     public Workbook generateTimesheet(TextProvider textProvider,
             Set<Integer> backlogIds, DateTime startDate, DateTime endDate, DateTimeZone timeZone,
             Set<Integer> userIds) {
         Workbook workbook = new HSSFWorkbook();
-        if (startDate != null && timeZone != null) {
-        	startDate = startDate.minusMillis(timeZone.getOffset(0)).plusMillis(serverTimeZone.getOffset(0));
-        }
-        if (endDate != null && timeZone != null) {
-        	endDate = endDate.minusMillis(timeZone.getOffset(0)).plusMillis(serverTimeZone.getOffset(0));
-        }
         List<TimesheetExportRowData> reportData = this.getTimesheetRows(
-        		backlogIds, startDate, endDate, timeZone, userIds);
+        		backlogIds, toServerTime(startDate, timeZone), toServerTime(endDate, timeZone), timeZone, userIds);
         Sheet plainReport = workbook.createSheet("Agilefant Timesheet");
         this.initializeColumnStyles(workbook);
         this.renderHeader(plainReport, textProvider);
@@ -60,36 +69,90 @@ public class TimesheetExportBusinessImpl implements TimesheetExportBusiness {
         return workbook;
     }
 
+    public void writeTimesheetXlsx(TextProvider textProvider,
+            Set<Integer> backlogIds, DateTime startDate, DateTime endDate,
+            DateTimeZone timeZone, Set<Integer> userIds, OutputStream out)
+            throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ExportUtils.XLSX_ROW_WINDOW);
+        try {
+            final Sheet plainReport = workbook.createSheet("Agilefant Timesheet");
+            this.initializeColumnStyles(workbook);
+            this.renderHeader(plainReport, textProvider);
+            this.processTimesheetRows(backlogIds, toServerTime(startDate, timeZone),
+                    toServerTime(endDate, timeZone), timeZone, userIds, new RowHandler() {
+                        public void handleRow(TimesheetExportRowData rowData) {
+                            Row currentRow = plainReport.createRow(plainReport.getLastRowNum() + 1);
+                            setRowValues(currentRow, rowData);
+                        }
+                    });
+            // Only the rows still in the window are measured
+            this.sizeColumns(plainReport);
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+        }
+    }
+
+    private DateTime toServerTime(DateTime date, DateTimeZone timeZone) {
+        if (date == null || timeZone == null) {
+            return date;
+        }
+        return date.minusMillis(timeZone.getOffset(0)).plusMillis(serverTimeZone.getOffset(0));
+    }
+
     public List<TimesheetExportRowData> getTimesheetRows(
             Set<Integer> backlogIds, DateTime startDate, DateTime endDate, DateTimeZone timeZone,
             Set<Integer> userIds) {
-        List<BacklogHourEntry> backlogEntries = this.hourEntryDAO
-                .getBacklogHourEntriesByFilter(backlogIds, startDate, endDate,
-                        userIds);
-        List<StoryHourEntry> storyEntries = this.hourEntryDAO
-                .getStoryHourEntriesByFilter(backlogIds, startDate, endDate,
-                        userIds);
-        List<TaskHourEntry> taskEntries = this.hourEntryDAO
-                .getTaskHourEntriesByFilter(backlogIds, startDate, endDate,
-                        userIds);
-        List<TimesheetExportRowData> timesheetData = new ArrayList<TimesheetExportRowData>();
-
-        for (BacklogHourEntry entry : backlogEntries) {
-            timesheetData.add(new TimesheetExportRowData(entry));
-        }
+        final List<TimesheetExportRowData> timesheetData = new ArrayList<TimesheetExportRowData>();
+        this.processTimesheetRows(backlogIds, startDate, endDate, timeZone,
+                userIds, new RowHandler() {
+                    public void handleRow(TimesheetExportRowData rowData) {
+                        timesheetData.add(rowData);
+                    }
+                });
+        Collections.sort(timesheetData, new TimesheetExportRowDataComparator());
+        return timesheetData;
+    }
 
-        for (StoryHourEntry entry : storyEntries) {
-            timesheetData.add(new TimesheetExportRowData(entry));
-        }
+    private interface RowHandler {
+        public void handleRow(TimesheetExportRowData rowData);
+    }
 
-        for (TaskHourEntry entry : taskEntries) {
-            timesheetData.add(new TimesheetExportRowData(entry));
+    /**
+     * Streams the hour entries as projection rows and turns each into an
+     * export row as it is read. The backlogs of the selected subtrees and
+     * the users are loaded up front, so no entity is loaded per entry. The
+     * rows come most recent first.
+     */
+    private void processTimesheetRows(Set<Integer> backlogIds,
+            DateTime startDate, DateTime endDate, final DateTimeZone timeZone,
+            Set<Integer> userIds, final RowHandler rowHandler) {
+        if (backlogIds == null || backlogIds.isEmpty()) {
+            return;
         }
-        for (TimesheetExportRowData data: timesheetData) {
-        	data.setTimeZone(timeZone);
+        Set<Integer> subtreeIds = this.backlogDAO.retrieveSubtreeIds(backlogIds);
+        Collection<User> users = (userIds == null || userIds.isEmpty()) ? this.userDAO
+                .getAll() : this.userDAO.getMultiple(userIds);
+        final TimesheetEntryResolver resolver = new TimesheetEntryResolver(
+                this.backlogDAO.retrieveWithAncestors(subtreeIds), users);
+
+        this.hourEntryDAO.retrieveTimesheetEntries(subtreeIds, startDate,
+                endDate, userIds, new HourEntryDAO.TimesheetEntryHandler() {
+                    public void handleEntry(TimesheetEntryRow row) {
+                        TimesheetExportRowData data = toRowData(resolver.resolve(row));
+                        data.setTimeZone(timeZone);
+                        rowHandler.handleRow(data);
+                    }
+                });
+    }
+
+    private static TimesheetExportRowData toRowData(HourEntry entry) {
+        if (entry instanceof TaskHourEntry) {
+            return new TimesheetExportRowData((TaskHourEntry) entry);
+        } else if (entry instanceof StoryHourEntry) {
+            return new TimesheetExportRowData((StoryHourEntry) entry);
         }
-        Collections.sort(timesheetData, new TimesheetExportRowDataComparator());
-        return timesheetData;
+        return new TimesheetExportRowData((BacklogHourEntry) entry);
     }
 
     protected void renderSheetData(Sheet sheet,
@@ -102,7 +165,10 @@ public class TimesheetExportBusinessImpl implements TimesheetExportBusiness {
 
     protected Cell createCellWithValue(Row row, String value, int cellNo) {
         Cell cell = row.createCell(cellNo);
-        cell.setCellValue(value);
+        // A missing value is left blank, SXSSF can't size a null string cell
+        if (value != null) {
+            cell.setCellValue(value);
+        }
         return cell;
     }
 
@@ -187,4 +253,12 @@ public class TimesheetExportBusinessImpl implements TimesheetExportBusiness {
         this.hourEntryDAO = hourEntryDAO;
     }
 
+    public void setBacklogDAO(BacklogDAO backlogDAO) {
+        this.backlogDAO = backlogDAO;
+    }
+
+    public void setUserDAO(UserDAO userDAO) {
+        this.userDAO = userDAO;
+    }
+
 }
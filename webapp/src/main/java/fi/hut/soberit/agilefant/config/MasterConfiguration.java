@@ -8,7 +8,8 @@ import org.springframework.context.annotation.ImportResource;
 import fi.hut.soberit.agilefant.util.DbConnectionInfo;
 
 @Configuration
-@Import({ BusinessConfiguration.class, DaoConfiguration.class, RestConfiguration.class, TransactionConfiguration.class, WebConfiguration.class, ExportImportConfiguration.class, UtilConfiguration.class })
+@Import({ BusinessConfiguration.class, DaoConfiguration.class, RestConfiguration.class, TransactionConfiguration.class, WebConfiguration.class, ExportImportConfiguration.class, UtilConfiguration.class,
+        SchedulingConfiguration.class })
 @ImportResource({ "/WEB-INF/applicationContext-core.xml", "/WEB-INF/applicationContext-email.xml", "/WEB-INF/applicationContext-notifications.xml",
         "/WEB-INF/applicationContext-security.xml" })
 public class MasterConfiguration {
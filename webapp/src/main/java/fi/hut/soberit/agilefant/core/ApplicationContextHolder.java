@@ -23,6 +23,34 @@ public final class ApplicationContextHolder {
         return applicationContext;
     }
 
+    /**
+     * Get the only bean of the given type.
+     *
+     * @throws IllegalStateException
+     *             if the application context is not available
+     */
+    public static <T> T getBean(Class<T> type) {
+        return getRequiredApplicationContext().getBean(type);
+    }
+
+    /**
+     * Get the bean of the given name and type.
+     *
+     * @throws IllegalStateException
+     *             if the application context is not available
+     */
+    public static <T> T getBean(String name, Class<T> type) {
+        return getRequiredApplicationContext().getBean(name, type);
+    }
+
+    private static ApplicationContext getRequiredApplicationContext() {
+        ApplicationContext context = applicationContext;
+        if (context == null) {
+            throw new IllegalStateException("Cannot access Spring application context!");
+        }
+        return context;
+    }
+
     static synchronized void setApplicationContext(ApplicationContext appContext) {
         applicationContext = appContext;
     }
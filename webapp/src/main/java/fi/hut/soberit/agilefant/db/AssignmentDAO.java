@@ -1,6 +1,8 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import org.joda.time.Interval;
 
@@ -9,4 +11,17 @@ import fi.hut.soberit.agilefant.model.User;
 
 public interface AssignmentDAO extends GenericDAO<Assignment> {
     public List<Assignment> assigmentsInBacklogTimeframe(Interval interval, User user); 
+
+    /**
+     * Get the assignments of the given users to the backlogs that overlap with
+     * the given interval.
+     */
+    public List<Assignment> assigmentsInBacklogTimeframe(Interval interval, Collection<Integer> userIds);
+
+    /**
+     * Gets the ids of the users assigned to the given backlogs, or to the
+     * iterations of the given tasks and stories.
+     */
+    public Set<Integer> retrieveAssigneeIds(Collection<Integer> backlogIds,
+            Collection<Integer> taskIds, Collection<Integer> storyIds);
 }
@@ -2,8 +2,11 @@ package fi.hut.soberit.agilefant.db;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 
 import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
+import fi.hut.soberit.agilefant.util.Triple;
 
 /**
  * Interface for a DAO of a Backlog.
@@ -29,5 +32,28 @@ public interface BacklogDAO extends GenericDAO<Backlog> {
     
     public List<Backlog> searchByID(Integer id);
     
+    /**
+     * Gets the ids, names and descriptions of the backlogs of the given type in id order, for
+     * building the search index in batches.
+     */
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(Class<? extends Backlog> type, int afterId, int maxResults);
+    
     public Collection<Backlog> retrieveStandaloneIterations();
+    
+    /**
+     * Gets the menu data of all products, projects and iterations without
+     * loading the backlogs themselves.
+     */
+    public List<BacklogMenuTree.Entry> retrieveMenuTreeEntries();
+
+    /**
+     * Gets the ids of the given backlogs and all of their sub backlogs.
+     */
+    public Set<Integer> retrieveSubtreeIds(Collection<Integer> backlogIds);
+
+    /**
+     * Gets the given backlogs with their parent and grand parent backlogs
+     * fetched in the same query.
+     */
+    public List<Backlog> retrieveWithAncestors(Collection<Integer> backlogIds);
 }
@@ -0,0 +1,67 @@
+package fi.hut.soberit.agilefant.db;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+
+import fi.hut.soberit.agilefant.model.DailyEffortSum;
+
+/**
+ * Interface for the daily spent effort sums derived from the hour entries.
+ *
+ * @see fi.hut.soberit.agilefant.model.DailyEffortSum
+ */
+public interface DailyEffortSumDAO extends GenericDAO<DailyEffortSum> {
+
+    /**
+     * Add the given amount of minutes, which may be negative, to the sum of
+     * the user and target on the given day.
+     * <p>
+     * Exactly one of the target ids should be given. The sum is updated with
+     * plain JDBC in the current session, so this can be called while the
+     * session is being flushed. On MySQL the row is inserted or updated with
+     * a single statement against the unique key of the user, targets and
+     * day, so concurrent writers cannot create duplicate rows.
+     */
+    public void addMinutes(int userId, Integer backlogId, Integer storyId,
+            Integer taskId, LocalDate date, long minutes);
+
+    /**
+     * Add the minutes of the given hour entries, as they are currently
+     * stored, to the sums with the given sign.
+     * <p>
+     * Used around the bulk operations of
+     * {@link fi.hut.soberit.agilefant.db.HourEntryDAO}, which bypass the
+     * listener that normally updates the sums: the entries are subtracted
+     * with -1 before they are deleted or moved and added with 1 after they
+     * are moved.
+     */
+    public void addHourEntryMinutes(Collection<Integer> hourEntryIds, int sign);
+
+    /**
+     * Get the spent effort of the user per day between and including the
+     * given days. Days without spent effort are not included.
+     */
+    public Map<LocalDate, Long> getDailySumsByUser(int userId,
+            LocalDate start, LocalDate end);
+
+    /**
+     * Get the spent effort of the user between and including the given days.
+     */
+    public long calculateSumByUser(int userId, LocalDate start, LocalDate end);
+
+    /**
+     * Get the spent effort logged to the iteration, its stories and its tasks
+     * per day between and including the given days. Days without spent effort
+     * are not included.
+     */
+    public Map<LocalDate, Long> getDailySumsByIteration(int iterationId,
+            LocalDate start, LocalDate end);
+
+    /**
+     * Recalculate all the sums from the hour entries.
+     */
+    public void rebuild();
+
+}
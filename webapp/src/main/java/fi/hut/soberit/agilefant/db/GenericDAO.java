@@ -2,6 +2,7 @@ package fi.hut.soberit.agilefant.db;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Generic interface for a DAO of some type. Defines minimal functionality for a
@@ -41,6 +42,19 @@ public interface GenericDAO<T> {
      *         found
      */
     Collection<T> getMultiple(Collection<Integer> ids); 
+
+    /**
+     * Get a batch of objects of this type in id order.
+     * <p>
+     * Used for going through all the objects without loading them at once.
+     * 
+     * @param afterId
+     *            the batch starts after the object with this id
+     * @param maxResults
+     *            the maximum size of the batch
+     * @return the objects, or an empty list after the last batch
+     */
+    List<T> getBatch(int afterId, int maxResults);
     
     /**
      * Get data model object of this type by id.
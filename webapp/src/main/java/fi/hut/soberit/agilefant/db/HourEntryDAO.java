@@ -1,6 +1,8 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.DateTime;
@@ -11,6 +13,7 @@ import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 
 public interface HourEntryDAO extends GenericDAO<HourEntry> {
 
@@ -56,11 +59,53 @@ public interface HourEntryDAO extends GenericDAO<HourEntry> {
     public List<StoryHourEntry> getStoryHourEntriesByFilter(Set<Integer> backlogIds,
             DateTime startDate, DateTime endDate, Set<Integer> userIds);
     
+    /**
+     * Reads the hour entries of a timesheet as projection rows in one query
+     * and passes them to the handler one at a time, most recent first.
+     * <p>
+     * Unlike the filter methods above, the backlogs are not searched
+     * recursively: the entries are those logged to the given backlogs, to
+     * the stories in them and to the tasks in them.
+     * 
+     * @param backlogIds Set of backlog ids. If empty, the handler is not called.
+     * @param startDate Beginning (or null) of the search interval.
+     * @param endDate End (or null) of the search interval.
+     * @param userIds Set of user ids (or null).
+     */
+    public void retrieveTimesheetEntries(Collection<Integer> backlogIds,
+            DateTime startDate, DateTime endDate, Set<Integer> userIds,
+            TimesheetEntryHandler handler);
+
+    /**
+     * @see #retrieveTimesheetEntries(Collection, DateTime, DateTime, Set, TimesheetEntryHandler)
+     */
+    public List<TimesheetEntryRow> retrieveTimesheetEntries(
+            Collection<Integer> backlogIds, DateTime startDate,
+            DateTime endDate, Set<Integer> userIds);
+
+    /**
+     * Receives the rows of a streamed timesheet query.
+     */
+    public interface TimesheetEntryHandler {
+
+        public void handleEntry(TimesheetEntryRow row);
+    }
+    
     /**
      * Gets the iterations backlog, story and task hour entries and
      * calculates the sum of their spent time.
      */
     public long calculateIterationHourEntriesSum(int iterationId);
+
+    /**
+     * Calculates the sums of the spent time of the given iterations' backlog,
+     * story and task hour entries.
+     * <p>
+     * Returns the sums by iteration id. Iterations without hour entries are
+     * not included.
+     */
+    public Map<Integer, Long> calculateIterationHourEntriesSums(
+            Collection<Integer> iterationIds);
     
     /**
      * Get all hour entries matching the given filter.
@@ -77,6 +122,34 @@ public interface HourEntryDAO extends GenericDAO<HourEntry> {
     public List<HourEntry> retrieveByUserAndInterval(User user, Interval interval);
 
     long retrieveLatestHourEntryDelta(int userId);
+
+    /**
+     * Delete the given hour entries with bulk statements instead of one
+     * statement per entry.
+     * <p>
+     * The session is flushed and the entries are evicted from it first. The
+     * bulk statements bypass the Hibernate listeners, so the caller is
+     * responsible for the data derived from the entries.
+     */
+    public void removeAll(Collection<? extends HourEntry> hourEntries);
+
+    /**
+     * Turn the given hour entries into story hour entries of the given story
+     * with bulk statements. The entries keep their ids.
+     * 
+     * @see #removeAll(Collection)
+     */
+    public void moveToStory(Collection<? extends HourEntry> hourEntries,
+            int storyId);
+
+    /**
+     * Turn the given hour entries into backlog hour entries of the given
+     * backlog with bulk statements. The entries keep their ids.
+     * 
+     * @see #removeAll(Collection)
+     */
+    public void moveToBacklog(Collection<? extends HourEntry> hourEntries,
+            int backlogId);
     
     //public HourEntry retrieveLatestByUser(User user);
 }
@@ -1,11 +1,13 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.DateTime;
 
+import fi.hut.soberit.agilefant.model.Assignment;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
@@ -31,11 +33,39 @@ public interface IterationDAO extends GenericDAO<Iteration> {
     public Pair<Integer, Integer> getCountOfDoneAndAllStories(
             Iteration iteration);
 
+    /**
+     * Counts the done and the non-deferred tasks of the given iterations the
+     * same way as {@link #getCountOfDoneAndNonDeferred(Iteration)}.
+     * <p>
+     * Returns the counts by iteration id. Iterations without tasks are not
+     * included.
+     */
+    public Map<Integer, Pair<Integer, Integer>> getCountOfDoneAndNonDeferredTasksByIteration(
+            Collection<Integer> iterationIds);
+
+    /**
+     * Counts the done and the non-deferred stories of the given iterations.
+     * <p>
+     * Returns the counts by iteration id. Iterations without stories are not
+     * included.
+     */
+    public Map<Integer, Pair<Integer, Integer>> getCountOfDoneAndAllStoriesByIteration(
+            Collection<Integer> iterationIds);
+
     public Map<Integer, Integer> getTotalAvailability(Set<Integer> iterationIds);
 
     public List<Iteration> retrieveEmptyIterationsWithPlannedSize(
             DateTime startDate, DateTime endDate, User assignee);
 
+    /**
+     * Get the empty iterations with planned size that overlap with the given
+     * interval, together with the given users' assignments to them.
+     * 
+     * @see #retrieveEmptyIterationsWithPlannedSize(DateTime, DateTime, User)
+     */
+    public List<Pair<Iteration, Assignment>> retrieveEmptyIterationAssignmentsWithPlannedSize(
+            DateTime startDate, DateTime endDate, Collection<Integer> assigneeIds);
+
     public List<Iteration> retrieveCurrentAndFutureIterationsAt(
             DateTime dayStart);
     
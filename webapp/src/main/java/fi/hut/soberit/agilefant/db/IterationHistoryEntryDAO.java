@@ -1,13 +1,16 @@
 package fi.hut.soberit.agilefant.db;
 
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.LocalDate;
 
 import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
 import fi.hut.soberit.agilefant.util.Pair;
+import fi.hut.soberit.agilefant.util.Triple;
 
 public interface IterationHistoryEntryDAO extends
         GenericDAO<IterationHistoryEntry> {
@@ -16,9 +19,52 @@ public interface IterationHistoryEntryDAO extends
 
     Pair<ExactEstimate, ExactEstimate> calculateCurrentHistoryData(int iterationId);
 
+    /**
+     * Calculates the share of a single task in the iteration history sums.
+     * <p>
+     * Returns the id of the iteration the task is counted in, the task's
+     * effort left and its original estimate. The iteration id is null, if
+     * the task is not counted in any iteration history, e.g. it is deferred.
+     */
+    Triple<Integer, ExactEstimate, ExactEstimate> calculateTaskHistoryContribution(int taskId);
+
     public List<IterationHistoryEntry> getHistoryEntriesForIteration(
             int iterationId);
 
     IterationHistoryEntry retrieveByDate(int iterationId, LocalDate timestamp);
+
+    /**
+     * Get the latest history entries of the given iterations.
+     * <p>
+     * Returns the entries by iteration id. Iterations without history entries
+     * are not included.
+     */
+    Map<Integer, IterationHistoryEntry> retrieveLatest(Collection<Integer> iterationIds);
+
+    /**
+     * Get the latest history entries of the given iterations on or before the
+     * given date.
+     * <p>
+     * Returns the entries by iteration id. Iterations without such entries are
+     * not included.
+     */
+    Map<Integer, IterationHistoryEntry> retrieveByDate(
+            Collection<Integer> iterationIds, LocalDate timestamp);
+
+    /**
+     * Add the deltas to the effort left and original estimate sums of the
+     * entry in a single update, so that concurrent changes are not lost. The
+     * original estimate delta is also added to the entry's delta original
+     * estimate.
+     * <p>
+     * The entry is refreshed from the database.
+     */
+    void addToSums(IterationHistoryEntry entry, long effortLeftDelta,
+            long originalEstimateDelta);
+
+    /**
+     * Get the ids of the iterations that have history entries.
+     */
+    List<Integer> retrieveIterationIdsWithHistory();
     
 }
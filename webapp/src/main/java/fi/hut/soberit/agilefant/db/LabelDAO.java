@@ -1,6 +1,9 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import fi.hut.soberit.agilefant.model.Label;
 import fi.hut.soberit.agilefant.model.Story;
@@ -11,4 +14,19 @@ public interface LabelDAO extends GenericDAO<Label> {
 
     List<Label> lookupLabelsLike(String labelName);
 
+    /**
+     * Get the names of the given labels which the given stories already
+     * have, by story id, with a single query.
+     */
+    public Map<Integer, Set<String>> getExistingStoryLabelNames(
+            Collection<Integer> storyIds, Collection<String> labelNames);
+
+    /**
+     * Insert new labels with a single JDBC batch.
+     * <p>
+     * The labels are not added to the session, so they are not visible in
+     * the label collections of already loaded stories.
+     */
+    public void insertLabels(Collection<Label> labels);
+
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package fi.hut.soberit.agilefant.db;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.LocalDate;
 
@@ -46,7 +47,11 @@ public interface ProjectDAO extends GenericDAO<Project> {
      */
     public List<Project> getRankedProjects(LocalDate startDate, LocalDate endDate);
 
-    Collection<Project> getProjectsWithRankBetween(int lower, int upper);
+    /**
+     * Adds the amount to the ranks of the projects with rank between and
+     * including lower and upper borders, in a single bulk update.
+     */
+    void shiftRanksBetween(int lower, int upper, int amount);
     
     public Project getMaxRankedProject();
 
@@ -59,4 +64,26 @@ public interface ProjectDAO extends GenericDAO<Project> {
     
     public ProjectMetrics calculateProjectStoryMetrics(int backlogId);
 
+    /**
+     * Calculates the story metrics of the stories ranked in the given
+     * projects, including the effort spent on the stories and their tasks
+     * and the original estimates of the tasks, with grouped queries.
+     * <p>
+     * Returns the metrics by project id. Projects without ranked stories are
+     * not included.
+     */
+    public Map<Integer, ProjectMetrics> calculateProjectStoryMetrics(
+            Collection<Integer> projectIds);
+
+    /**
+     * Calculates the total spent effort of the given projects: the effort
+     * logged to the projects, their iterations and the stories and tasks
+     * in them.
+     * <p>
+     * Returns the sums by project id. Projects without spent effort are not
+     * included.
+     */
+    public Map<Integer, Long> calculateProjectSpentEffortSums(
+            Collection<Integer> projectIds);
+
 }
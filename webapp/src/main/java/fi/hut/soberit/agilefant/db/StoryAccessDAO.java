@@ -1,13 +1,39 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.List;
 import java.util.Map;
 
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 
-import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryAccess;
-import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.Triple;
 
 public interface StoryAccessDAO extends GenericDAO<StoryAccess> {
-    public Map<Story, Long> calculateAccessCounts(DateTime start, DateTime end, User user);
+
+    /**
+     * Store the given story accesses and add them to the daily access counts
+     * of {@link fi.hut.soberit.agilefant.model.StoryAccessSum}.
+     * <p>
+     * The accesses are given as (user id, story id, time) and written with
+     * JDBC batches in the current session. Accesses of stories or users that
+     * no longer exist are skipped. On MySQL the counts are added with
+     * <code>INSERT ... ON DUPLICATE KEY UPDATE</code>, so that concurrent
+     * writers do not create several rows for the same user, story and day.
+     */
+    public void storeAccesses(List<Triple<Integer, Integer, DateTime>> accesses);
+
+    /**
+     * Get the number of accesses of the user per story between and including
+     * the given days.
+     *
+     * @return the access counts by story id
+     */
+    public Map<Integer, Long> calculateAccessCounts(int userId,
+            LocalDate start, LocalDate end);
+
+    /**
+     * Recalculate all the daily access counts from the story accesses.
+     */
+    public void rebuildSums();
 }
@@ -0,0 +1,47 @@
+package fi.hut.soberit.agilefant.db;
+
+import java.util.List;
+
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryAncestor;
+
+/**
+ * Interface for the ancestor index of the story tree.
+ *
+ * @see fi.hut.soberit.agilefant.model.StoryAncestor
+ */
+public interface StoryAncestorDAO extends GenericDAO<StoryAncestor> {
+
+    /**
+     * Retrieve all the stories under the given story with a single query.
+     * <p>
+     * The backlog, iteration and parent of the stories are fetched with
+     * them, so the branch can be checked without loading the children
+     * collections.
+     * 
+     * @return the descendants of the story in no particular order
+     */
+    public List<Story> retrieveDescendants(Story story);
+
+    /**
+     * Move the given story and its branch under a new parent in the index.
+     * A story which is not in the index yet is added.
+     * <p>
+     * The rows are written with plain JDBC in the current session, so this
+     * can be called while the session is flushing.
+     * 
+     * @param parentId the new parent, or null for a root story
+     */
+    public void updateParent(int storyId, Integer parentId);
+
+    /**
+     * Remove a deleted story from the index.
+     */
+    public void remove(int storyId);
+
+    /**
+     * Recalculate the index of all the stories.
+     */
+    public void rebuild();
+
+}
@@ -11,7 +11,10 @@ import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.AssignedWorkIndex;
+import fi.hut.soberit.agilefant.util.Pair;
 import fi.hut.soberit.agilefant.util.StoryMetrics;
+import fi.hut.soberit.agilefant.util.Triple;
 
 public interface StoryDAO extends GenericDAO<Story> {
 
@@ -21,10 +24,45 @@ public interface StoryDAO extends GenericDAO<Story> {
     public int getStoryValueSumByIteration(int iterationId);
     public int getCompletedStoryValueSumByIteration(int iterationId);
 
+    /**
+     * Sums the story points of the stories in the given iterations.
+     * <p>
+     * Returns the sum of done stories and the sum of non-deferred stories by
+     * iteration id. Iterations without stories are not included.
+     */
+    public Map<Integer, Pair<Integer, Integer>> getDoneAndTotalStoryPointSumsByIteration(
+            Collection<Integer> iterationIds);
+
+    /**
+     * Sums the values of the stories in the given iterations.
+     * <p>
+     * Returns the sum of done stories and the sum of non-deferred stories by
+     * iteration id. Iterations without stories are not included.
+     */
+    public Map<Integer, Pair<Integer, Integer>> getCompletedAndTotalStoryValueSumsByIteration(
+            Collection<Integer> iterationIds);
+
     public Map<Integer, Integer> getNumOfResponsiblesByStory(Set<Integer> storyIds);
     
     public Collection<Story> getAllIterationStoriesByResponsibleAndInterval(User user, Interval interval);
 
+    /**
+     * Gets the ordering data of the stories shown on the user's Daily Work
+     * in a single projection query. These are the stories the user is
+     * responsible for and the stories with tasks assigned to the user, whose
+     * iteration, or backlog if the story is not in an iteration, overlaps
+     * with the interval. Done stories and done tasks are left out as in
+     * {@link #getAllIterationStoriesByResponsibleAndInterval(User, Interval)}
+     * and {@link TaskDAO#getAllTasks(User, Interval)}.
+     */
+    public List<AssignedWorkIndex.StoryEntry> retrieveAssignedStoryEntries(int userId, Interval interval);
+
+    /**
+     * Gets the ids of the users responsible for the stories or for any of
+     * their tasks.
+     */
+    public Set<Integer> retrieveResponsibleIds(Collection<Integer> storyIds);
+
     public List<Story> retrieveStoriesInIteration(Iteration iteration);
 
     public List<Story> retrieveStoriesInBacklog(Backlog backlog);
@@ -34,5 +72,17 @@ public interface StoryDAO extends GenericDAO<Story> {
     public List<Story> searchByName(String name);
     
     public List<Story> searchByID(Integer id);
+    
+    /**
+     * Gets the ids, names and descriptions of the stories in id order, for
+     * building the search index in batches.
+     */
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(int afterId, int maxResults);
+
+    /**
+     * Gets the parent story ids of all stories in id order. Root stories are
+     * mapped to null.
+     */
+    public Map<Integer, Integer> retrieveParentIds();
 
 }
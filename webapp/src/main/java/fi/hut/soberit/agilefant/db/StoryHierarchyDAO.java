@@ -75,6 +75,19 @@ public interface StoryHierarchyDAO {
      * @return list of product root stories
      */
     public List<Story> retrieveProductRootStories(int productId);
+
+    /**
+     * Retrieve all stories within a given product, in any order, with a
+     * single query.
+     * <p>
+     * The backlog, iteration and labels of the stories are fetched with
+     * them. The children collections are not initialized; the tree is
+     * assembled from the parents of the stories.
+     * 
+     * @param product id
+     * @return list of all product stories
+     */
+    public List<Story> retrieveProductStories(int productId);
     
     /**
      * Get a rank number for a new root story.
@@ -12,6 +12,36 @@ public interface StoryRankDAO extends GenericDAO<StoryRank> {
         
     List<StoryRank> retrieveRanksByBacklog(Backlog backlog);
     
+    /**
+     * Get the rank directly above the given rank in its backlog.
+     * 
+     * @param excluded
+     *            a rank to skip, may be <code>null</code>
+     * @return the previous rank, or <code>null</code> if the given rank is the
+     *         first
+     */
+    StoryRank retrievePreviousRank(StoryRank rank, StoryRank excluded);
+    
+    /**
+     * Get the rank directly below the given rank in its backlog.
+     * 
+     * @param excluded
+     *            a rank to skip, may be <code>null</code>
+     * @return the next rank, or <code>null</code> if the given rank is the
+     *         last
+     */
+    StoryRank retrieveNextRank(StoryRank rank, StoryRank excluded);
+    
+    /**
+     * Get the first rank of the backlog, skipping the excluded rank.
+     */
+    StoryRank retrieveFirstRank(Backlog backlog, StoryRank excluded);
+    
+    /**
+     * Get the last rank of the backlog, skipping the excluded rank.
+     */
+    StoryRank retrieveLastRank(Backlog backlog, StoryRank excluded);
+    
     public Collection<StoryRank> getIterationRanksForStories(Collection<Story> stories);
     public Collection<StoryRank> getProjectRanksForStories(Collection<Story> stories);
 }
@@ -0,0 +1,38 @@
+package fi.hut.soberit.agilefant.db;
+
+import java.util.Collection;
+import java.util.Map;
+
+import fi.hut.soberit.agilefant.model.StoryTreeMetrics;
+import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
+
+/**
+ * Interface for the stored metrics of the story tree branches.
+ *
+ * @see fi.hut.soberit.agilefant.model.StoryTreeMetrics
+ */
+public interface StoryTreeMetricsDAO extends GenericDAO<StoryTreeMetrics> {
+
+    /**
+     * Get the stored branch metrics of the given stories by story id.
+     * Stories without stored metrics are not included.
+     */
+    public Map<Integer, StoryTreeBranchMetrics> getBranchMetrics(
+            Collection<Integer> storyIds);
+
+    /**
+     * Recalculate the metrics of the given stories, the stories of the given
+     * tasks and all their ancestors.
+     * <p>
+     * The metrics are written with plain JDBC in the current session, so
+     * this can be called while the session is completing its transaction.
+     */
+    public void updateBranches(Collection<Integer> storyIds,
+            Collection<Integer> taskIds);
+
+    /**
+     * Recalculate the metrics of all the stories.
+     */
+    public void rebuild();
+
+}
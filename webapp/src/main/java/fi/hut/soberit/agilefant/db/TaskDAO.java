@@ -12,6 +12,7 @@ import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.UnassignedLoadTO;
+import fi.hut.soberit.agilefant.util.Triple;
 
 public interface TaskDAO extends GenericDAO<Task> {
     
@@ -80,6 +81,24 @@ public interface TaskDAO extends GenericDAO<Task> {
      */
     public List<Task> getAllTasks(User user, Interval interval);
 
+    /**
+     * Gets the ids of the tasks without a story that are assigned to the
+     * user, are not done and are in an iteration overlapping with the
+     * interval.
+     */
+    public List<Integer> retrieveAssignedTaskIdsWithoutStory(int userId, Interval interval);
+
+    /**
+     * Gets the ids of the users responsible for the tasks.
+     */
+    public Set<Integer> retrieveResponsibleIds(Collection<Integer> taskIds);
+
+    /**
+     * Gets the ids of the users responsible for the tasks in the given
+     * iterations, directly or through a story, and for the stories in them.
+     */
+    public Set<Integer> retrieveResponsibleIdsByIterations(Collection<Integer> iterationIds);
+
     
     /**
      * 
@@ -100,18 +119,49 @@ public interface TaskDAO extends GenericDAO<Task> {
             Interval interval);
 
     /**
-     * Get the iteration's straight child tasks with rank between and including
-     * lower and upper borders.
-     * <p>
-     * Will not get the iteration's stories' tasks.
-     * @param lower lower border of the rank (0 if topmost included)
-     * @param upper upper border of the rank
-     * @param parentIteration the parent iteration
-     * @param parentStory TODO
+     * Lookup the tasks with effort left that are directly assigned to any of
+     * the given users. Both the iteration tasks and the story tasks are
+     * included. Will lookup only tasks from iterations that overlap with the
+     * given interval.
      * 
-     * @return
+     * @param userIds
+     *            Ids of the assignees.
+     * @param interval
+     *            Search interval for the container iteration.
+     * @return the tasks by assignee id
+     */
+    public Map<Integer, List<Task>> getTasksWithEffortLeftByResponsibles(
+            Collection<Integer> userIds, Interval interval);
+
+    /**
+     * Lookup the tasks without assignees whose story is assigned to any of the
+     * given users. Will lookup only tasks from iterations that overlap with the
+     * given interval.
+     * 
+     * @return the tasks by story assignee id
+     */
+    public Map<Integer, List<Task>> getStoryAssignedTasksWithEffortLeftByResponsibles(
+            Collection<Integer> userIds, Interval interval);
+
+    /**
+     * Sum the effort left of unassigned iteration and story tasks per
+     * iteration, for the iterations that the given users are assigned to.
+     * 
+     * @return the sums by assigned user id
+     * @see #getUnassignedIterationTasksWithEffortLeft(User, Interval)
+     * @see #getUnassignedStoryTasksWithEffortLeft(User, Interval)
      */
-    public Collection<Task> getTasksWithRankBetween(int lower, int upper, Iteration parentIteration, Story parentStory);
+    public Map<Integer, List<UnassignedLoadTO>> getUnassignedTasksWithEffortLeftByAssignees(
+            Collection<Integer> userIds, Interval interval);
+
+    /**
+     * Adds the amount to the ranks of the parent's straight child tasks with
+     * rank between and including lower and upper borders, in a single bulk
+     * update.
+     * <p>
+     * Supply only one of the parents.
+     */
+    public void shiftRanksBetween(int lower, int upper, int amount, Iteration parentIteration, Story parentStory);
     
     /**
      * Gets the next task with the given parent and rank > parameter,
@@ -140,4 +190,10 @@ public interface TaskDAO extends GenericDAO<Task> {
     public List<Task> searchByName(String name);
     
     public List<Task> searchByID(Integer id);
+    
+    /**
+     * Gets the ids, names and descriptions of the tasks in id order, for
+     * building the search index in batches.
+     */
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(int afterId, int maxResults);
 }
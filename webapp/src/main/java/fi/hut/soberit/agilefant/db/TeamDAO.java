@@ -1,6 +1,9 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.List;
+
 import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
 
 /**
  * Interface for a DAO of a Team.
@@ -16,4 +19,10 @@ public interface TeamDAO extends GenericDAO<Team> {
      */
 	Team getByTeamName(String teamName);
 
+    /**
+     * Get the autocomplete data of all the teams ordered by id. The members
+     * of the teams are read with a single query.
+     */
+    List<AutocompleteCatalog.TeamEntry> retrieveAutocompleteEntries();
+
 }
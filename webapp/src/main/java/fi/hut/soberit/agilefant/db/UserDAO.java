@@ -3,6 +3,7 @@ package fi.hut.soberit.agilefant.db;
 import java.util.List;
 
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
 
 /**
  * Interface for a DAO of a User.
@@ -35,4 +36,9 @@ public interface UserDAO extends GenericDAO<User> {
     List<User> listUsersByEnabledStatus(boolean enabled);
     
     List<User> searchByName(String searchTerm);
+
+    /**
+     * Get the autocomplete data of all the users ordered by id.
+     */
+    List<AutocompleteCatalog.UserEntry> retrieveAutocompleteEntries();
 }
@@ -10,17 +10,11 @@ import fi.hut.soberit.agilefant.model.WhatsNextEntry;
 
 public interface WhatsNextEntryDAO extends GenericDAO<WhatsNextEntry> {
     /**
-     * Gets the user's "what's next" tasks with rank between and including
-     * lower and upper borders.
-     * <p>
-     * Will not get the iteration's stories' tasks.
-     * @param lower lower border of the rank (0 if topmost included)
-     * @param upper upper border of the rank
-     * @param user the user
-     * 
-     * @return
+     * Adds the amount to the ranks of the user's "what's next" tasks with
+     * rank between and including lower and upper borders, in a single bulk
+     * update.
      */
-    public Collection<WhatsNextEntry> getTasksWithRankBetween(int lower, int upper, User user);
+    public void shiftRanksBetween(int lower, int upper, int amount, User user);
         
     /**
      * Gets the last ranked "what's next" task for given user.
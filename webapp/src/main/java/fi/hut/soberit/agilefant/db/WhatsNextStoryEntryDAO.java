@@ -10,16 +10,11 @@ import fi.hut.soberit.agilefant.model.WhatsNextStoryEntry;
 
 public interface WhatsNextStoryEntryDAO extends GenericDAO<WhatsNextStoryEntry> {
     /**
-     * Gets the user's "what's next" stories with rank between and including
-     * lower and upper borders.
-     * <p>
-     * @param lower lower border of the rank (0 if topmost included)
-     * @param upper upper border of the rank
-     * @param user the user
-     * 
-     * @return
+     * Adds the amount to the ranks of the user's "what's next" stories with
+     * rank between and including lower and upper borders, in a single bulk
+     * update.
      */
-    public Collection<WhatsNextStoryEntry> getStoriesWithRankBetween(int lower, int upper, User user);
+    public void shiftRanksBetween(int lower, int upper, int amount, User user);
         
     /**
      * Gets the last ranked "what's next" story for given user.
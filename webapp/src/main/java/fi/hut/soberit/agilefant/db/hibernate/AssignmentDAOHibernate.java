@@ -1,8 +1,14 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Restrictions;
 import org.joda.time.DateTime;
@@ -24,8 +30,61 @@ public class AssignmentDAOHibernate extends GenericDAOHibernate<Assignment> impl
     public List<Assignment> assigmentsInBacklogTimeframe(Interval interval,
             User user) {
         Criteria crit = this.createCriteria(Assignment.class);
-        Criteria backlog = crit.createCriteria("backlog");
         crit.createCriteria("user").add(Restrictions.idEq(user.getId()));
+        addBacklogTimeframeLimit(crit.createCriteria("backlog"), interval);
+        return asList(crit);
+    }
+
+    public List<Assignment> assigmentsInBacklogTimeframe(Interval interval,
+            Collection<Integer> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Criteria crit = this.createCriteria(Assignment.class);
+        crit.add(Restrictions.in("user.id", userIds));
+        addBacklogTimeframeLimit(crit.createCriteria("backlog"), interval);
+        return asList(crit);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<Integer> retrieveAssigneeIds(Collection<Integer> backlogIds,
+            Collection<Integer> taskIds, Collection<Integer> storyIds) {
+        List<String> conditions = new ArrayList<String>();
+        if (!backlogIds.isEmpty()) {
+            conditions.add("assignment.backlog.id IN (:backlogIds)");
+        }
+        if (!taskIds.isEmpty()) {
+            conditions.add("assignment.backlog.id IN (SELECT task.iteration.id FROM Task task WHERE task.id IN (:taskIds))");
+            conditions.add("assignment.backlog.id IN (SELECT story.iteration.id FROM Task task JOIN task.story story WHERE task.id IN (:taskIds))");
+        }
+        if (!storyIds.isEmpty()) {
+            conditions.add("assignment.backlog.id IN (SELECT story.iteration.id FROM Story story WHERE story.id IN (:storyIds))");
+        }
+        if (conditions.isEmpty()) {
+            return new HashSet<Integer>();
+        }
+        StringBuilder hql = new StringBuilder(
+                "SELECT DISTINCT assignment.user.id FROM Assignment assignment WHERE ");
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) {
+                hql.append(" OR ");
+            }
+            hql.append(conditions.get(i));
+        }
+        Query query = getCurrentSession().createQuery(hql.toString());
+        if (!backlogIds.isEmpty()) {
+            query.setParameterList("backlogIds", backlogIds);
+        }
+        if (!taskIds.isEmpty()) {
+            query.setParameterList("taskIds", taskIds);
+        }
+        if (!storyIds.isEmpty()) {
+            query.setParameterList("storyIds", storyIds);
+        }
+        return new HashSet<Integer>(query.list());
+    }
+
+    private void addBacklogTimeframeLimit(Criteria backlog, Interval interval) {
         DateTime startDate = interval.getStart();
         DateTime endDate = interval.getEnd();
         //iteration may start during the interval
@@ -39,7 +98,6 @@ public class AssignmentDAOHibernate extends GenericDAOHibernate<Assignment> impl
         Criterion withinIteration = Restrictions.and(Restrictions.le(
                 "startDate", startDate), Restrictions.ge("endDate", endDate));
         backlog.add(Restrictions.or(overlaps, withinIteration));
-        return asList(crit);
     }
 
 }
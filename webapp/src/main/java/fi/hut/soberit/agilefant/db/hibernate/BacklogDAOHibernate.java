@@ -1,7 +1,12 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+
+import org.joda.time.DateTime;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -10,13 +15,20 @@ import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.business.SearchBusiness;
 import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryState;
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
+import fi.hut.soberit.agilefant.util.Triple;
 
 /**
  * Hibernate implementation of BacklogDAO interface using GenericDAOHibernate.
@@ -88,10 +100,72 @@ public class BacklogDAOHibernate extends GenericDAOHibernate<Backlog> implements
         return asList(crit);
     }
     
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(
+            Class<? extends Backlog> type, int afterId, int maxResults) {
+        return retrieveNamedObjectData(type, afterId, maxResults);
+    }
+
     public Collection<Backlog> retrieveStandaloneIterations() {
         Criteria crit = this.createCriteria(Backlog.class);
         crit.add(Restrictions.sqlRestriction("{alias}.parent_id is NULL"));
         crit.add(Restrictions.sqlRestriction("{alias}.backlogType like 'Iteration'"));
         return asCollection(crit);
     }
+
+    public List<BacklogMenuTree.Entry> retrieveMenuTreeEntries() {
+        List<BacklogMenuTree.Entry> entries = new ArrayList<BacklogMenuTree.Entry>();
+        Criteria crit = this.createCriteria(Product.class);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("name")));
+        List<Object[]> rows = asList(crit);
+        for (Object[] row : rows) {
+            entries.add(new BacklogMenuTree.Entry((Integer) row[0], null,
+                    BacklogType.PRODUCT, (String) row[1], null, null));
+        }
+        addScheduledMenuTreeEntries(entries, Project.class, BacklogType.PROJECT);
+        addScheduledMenuTreeEntries(entries, Iteration.class, BacklogType.ITERATION);
+        return entries;
+    }
+
+    private void addScheduledMenuTreeEntries(List<BacklogMenuTree.Entry> entries,
+            Class<? extends Backlog> type, BacklogType backlogType) {
+        Criteria crit = this.createCriteria(type);
+        crit.createAlias("parent", "parent", JoinType.LEFT_OUTER_JOIN);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("parent.id"))
+                .add(Projections.property("name"))
+                .add(Projections.property("startDate"))
+                .add(Projections.property("endDate")));
+        List<Object[]> rows = asList(crit);
+        for (Object[] row : rows) {
+            entries.add(new BacklogMenuTree.Entry((Integer) row[0],
+                    (Integer) row[1], backlogType, (String) row[2],
+                    (DateTime) row[3], (DateTime) row[4]));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<Integer> retrieveSubtreeIds(Collection<Integer> backlogIds) {
+        if (backlogIds == null || backlogIds.isEmpty()) {
+            return new HashSet<Integer>();
+        }
+        Query query = this.getCurrentSession().createQuery(
+                "select b.id from Backlog b left join b.parent p left join p.parent pp"
+                + " where b.id in (:ids) or p.id in (:ids) or pp.id in (:ids)");
+        query.setParameterList("ids", backlogIds);
+        return new HashSet<Integer>(query.list());
+    }
+
+    public List<Backlog> retrieveWithAncestors(Collection<Integer> backlogIds) {
+        if (backlogIds == null || backlogIds.isEmpty()) {
+            return new ArrayList<Backlog>();
+        }
+        Query query = this.getCurrentSession().createQuery(
+                "select b from Backlog b left join fetch b.parent p left join fetch p.parent"
+                + " where b.id in (:ids)");
+        query.setParameterList("ids", backlogIds);
+        return asList(query);
+    }
 }
@@ -37,12 +37,20 @@ public class BacklogHistoryEntryDAOHibernate extends
                 BacklogHistoryEntry.class);
         crit.add(Restrictions.eq("backlog.id", projectId));
         crit.addOrder(Order.asc("timestamp"));
-        crit
-                .setProjection(Projections.projectionList().add(
-                        Projections.groupProperty("timestamp")).add(
-                        Projections.max("estimateSum")).add(
-                        Projections.max("doneSum")).add(Projections.max("branchMax")));
-        List<Object[]> data = asList(crit);
-        return ProjectBurnupData.createFromRawData(data);
+        crit.addOrder(Order.asc("id"));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("timestamp"))
+                .add(Projections.property("estimateSum"))
+                .add(Projections.property("doneSum"))
+                .add(Projections.property("branchMax")));
+        List<Object[]> rows = asList(crit);
+        ProjectBurnupData data = new ProjectBurnupData();
+        for (Object[] row : rows) {
+            data.append((Integer) row[0], new ProjectBurnupData.Entry(
+                    (DateTime) row[1], (Long) row[2], (Long) row[3],
+                    (Long) row[4]));
+        }
+        return data;
     }
 }
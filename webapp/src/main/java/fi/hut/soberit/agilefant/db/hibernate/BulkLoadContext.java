@@ -0,0 +1,30 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+/**
+ * Marks the current thread as doing a bulk load of data, such as a database
+ * import.
+ * <p>
+ * The per-change Hibernate listeners, auditing included, skip the changes made
+ * during a bulk load. The code doing the bulk load is responsible for
+ * refreshing any derived data afterwards.
+ */
+public final class BulkLoadContext {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<Boolean>();
+
+    private BulkLoadContext() {
+    }
+
+    public static void begin() {
+        ACTIVE.set(Boolean.TRUE);
+    }
+
+    public static void end() {
+        ACTIVE.remove();
+    }
+
+    public static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+
+}
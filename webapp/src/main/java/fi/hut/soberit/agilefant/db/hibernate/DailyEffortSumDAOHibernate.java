@@ -0,0 +1,203 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
+import org.joda.time.LocalDate;
+import org.springframework.stereotype.Repository;
+
+import fi.hut.soberit.agilefant.db.DailyEffortSumDAO;
+import fi.hut.soberit.agilefant.model.DailyEffortSum;
+
+@Repository("dailyEffortSumDAO")
+public class DailyEffortSumDAOHibernate extends
+        GenericDAOHibernate<DailyEffortSum> implements DailyEffortSumDAO {
+
+    private static final String[] TARGET_COLUMNS = { "backlog_id", "story_id", "task_id" };
+
+    private static final int CHUNK_SIZE = 500;
+
+    private static final int NO_TARGET = 0;
+
+    public DailyEffortSumDAOHibernate() {
+        super(DailyEffortSum.class);
+    }
+
+    public void addMinutes(final int userId, Integer backlogId,
+            Integer storyId, Integer taskId, final LocalDate date,
+            final long minutes) {
+        if (minutes == 0) {
+            return;
+        }
+        final int[] targetIds = { toTargetId(backlogId), toTargetId(storyId),
+                toTargetId(taskId) };
+        final boolean upsert = supportsInsertOnDuplicateKeyUpdate();
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                if (upsert) {
+                    insertSum(connection, userId, targetIds, date, minutes, true);
+                } else if (updateSum(connection, userId, targetIds, date, minutes) == 0) {
+                    insertSum(connection, userId, targetIds, date, minutes, false);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public void addHourEntryMinutes(Collection<Integer> hourEntryIds, int sign) {
+        if (hourEntryIds.isEmpty()) {
+            return;
+        }
+        this.getCurrentSession().flush();
+        List<Integer> ids = new ArrayList<Integer>(hourEntryIds);
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            SQLQuery query = this.getCurrentSession().createSQLQuery(
+                    "SELECT user_id, backlog_id, story_id, task_id, CAST(date AS DATE), SUM(minutesSpent)"
+                    + " FROM hourentries WHERE date IS NOT NULL AND id IN (:ids)"
+                    + " GROUP BY user_id, backlog_id, story_id, task_id, CAST(date AS DATE)");
+            query.setParameterList("ids",
+                    ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size())));
+            for (Object[] row : (List<Object[]>) query.list()) {
+                addMinutes(((Number) row[0]).intValue(), toInteger(row[1]),
+                        toInteger(row[2]), toInteger(row[3]),
+                        LocalDate.fromDateFields((java.util.Date) row[4]),
+                        sign * ((Number) row[5]).longValue());
+            }
+        }
+    }
+
+    private static Integer toInteger(Object value) {
+        return (value == null) ? null : ((Number) value).intValue();
+    }
+
+    /**
+     * The target columns are part of the unique key, so a missing target is
+     * stored as 0 instead of NULL.
+     */
+    private static int toTargetId(Integer targetId) {
+        return (targetId == null) ? NO_TARGET : targetId;
+    }
+
+    private int updateSum(Connection connection, int userId,
+            int[] targetIds, LocalDate date, long minutes)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "UPDATE daily_effort_sums SET minutesSpent = minutesSpent + ? WHERE user_id = ? AND date = ?");
+        for (String column : TARGET_COLUMNS) {
+            sql.append(" AND ").append(column).append(" = ?");
+        }
+        PreparedStatement statement = connection.prepareStatement(sql.toString());
+        try {
+            int index = 1;
+            statement.setLong(index++, minutes);
+            statement.setInt(index++, userId);
+            statement.setDate(index++, toSqlDate(date));
+            for (int targetId : targetIds) {
+                statement.setInt(index++, targetId);
+            }
+            return statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void insertSum(Connection connection, int userId,
+            int[] targetIds, LocalDate date, long minutes,
+            boolean onDuplicateKeyUpdate) throws SQLException {
+        String sql = "INSERT INTO daily_effort_sums (user_id, backlog_id, story_id, task_id, date, minutesSpent) VALUES (?, ?, ?, ?, ?, ?)";
+        if (onDuplicateKeyUpdate) {
+            sql += " ON DUPLICATE KEY UPDATE minutesSpent = minutesSpent + VALUES(minutesSpent)";
+        }
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            int index = 1;
+            statement.setInt(index++, userId);
+            for (int targetId : targetIds) {
+                statement.setInt(index++, targetId);
+            }
+            statement.setDate(index++, toSqlDate(date));
+            statement.setLong(index++, minutes);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static Date toSqlDate(LocalDate date) {
+        return Date.valueOf(date.toString());
+    }
+
+    public Map<LocalDate, Long> getDailySumsByUser(int userId,
+            LocalDate start, LocalDate end) {
+        Criteria crit = this.createCriteria(DailyEffortSum.class);
+        crit.add(Restrictions.eq("userId", userId));
+        crit.add(Restrictions.between("date", start, end));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("date"))
+                .add(Projections.sum("minutesSpent")));
+        List<Object[]> rows = asList(crit);
+        return toDailySums(rows);
+    }
+
+    public long calculateSumByUser(int userId, LocalDate start, LocalDate end) {
+        Criteria crit = this.createCriteria(DailyEffortSum.class);
+        crit.add(Restrictions.eq("userId", userId));
+        crit.add(Restrictions.between("date", start, end));
+        crit.setProjection(Projections.sum("minutesSpent"));
+        Long sum = uniqueResult(crit);
+        return (sum == null) ? 0 : sum;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<LocalDate, Long> getDailySumsByIteration(int iterationId,
+            LocalDate start, LocalDate end) {
+        Query query = this.getCurrentSession().createQuery(
+                "select d.date, sum(d.minutesSpent) from DailyEffortSum d"
+                + " where d.date between :start and :end"
+                + " and (d.backlogId = :iterationId"
+                + " or d.storyId in (select s.id from Story s where s.iteration.id = :iterationId)"
+                + " or d.taskId in (select t.id from Task t left join t.story ts"
+                + " where t.iteration.id = :iterationId or ts.iteration.id = :iterationId))"
+                + " group by d.date");
+        query.setParameter("start", start);
+        query.setParameter("end", end);
+        query.setInteger("iterationId", iterationId);
+        List<Object[]> rows = query.list();
+        return toDailySums(rows);
+    }
+
+    private static Map<LocalDate, Long> toDailySums(List<Object[]> rows) {
+        Map<LocalDate, Long> sums = new HashMap<LocalDate, Long>();
+        for (Object[] row : rows) {
+            sums.put((LocalDate) row[0], (Long) row[1]);
+        }
+        return sums;
+    }
+
+    public void rebuild() {
+        this.getCurrentSession().flush();
+        this.getCurrentSession().createQuery("delete from DailyEffortSum")
+                .executeUpdate();
+        this.getCurrentSession().createSQLQuery(
+                "INSERT INTO daily_effort_sums (user_id, backlog_id, story_id, task_id, date, minutesSpent)"
+                + " SELECT user_id, COALESCE(backlog_id, 0), COALESCE(story_id, 0), COALESCE(task_id, 0),"
+                + " CAST(date AS DATE), SUM(minutesSpent)"
+                + " FROM hourentries WHERE date IS NOT NULL"
+                + " GROUP BY user_id, backlog_id, story_id, task_id, CAST(date AS DATE)")
+                .executeUpdate();
+    }
+
+}
@@ -1,10 +1,12 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import javax.annotation.PostConstruct;
 
@@ -12,11 +14,19 @@ import org.hibernate.Criteria;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import com.google.common.base.Predicate;
+
 import fi.hut.soberit.agilefant.db.GenericDAO;
+import fi.hut.soberit.agilefant.model.Rankable;
+import fi.hut.soberit.agilefant.util.Triple;
 
 /**
  * Generically implements basic DAO functionality specified by GenericDAO.
@@ -82,6 +92,20 @@ public abstract class GenericDAOHibernate<T> implements GenericDAO<T> {
         return asCollection(c);
     }
 
+    /** {@inheritDoc} */
+    public List<T> getBatch(int afterId, int maxResults) {
+        /*
+         * HQL instead of criteria, so that eagerly fetched collections are
+         * not joined to the rows limited by maxResults.
+         */
+        Query query = this.getCurrentSession().createQuery(
+                "from " + getPersistentClass().getName()
+                        + " where id > :afterId order by id");
+        query.setInteger("afterId", afterId);
+        query.setMaxResults(maxResults);
+        return asList(query);
+    }
+
     /** {@inheritDoc} */
     public void remove(int id) {
         this.remove(this.get(id));
@@ -136,6 +160,77 @@ public abstract class GenericDAOHibernate<T> implements GenericDAO<T> {
         return ((Long) this.uniqueResult(criteria)).intValue() > 0;
     }
 
+    /**
+     * Gets the ids, names and descriptions of the objects of the given type
+     * in id order, starting after the given id.
+     */
+    protected List<Triple<Integer, String, String>> retrieveNamedObjectData(
+            Class<?> type, int afterId, int maxResults) {
+        Criteria crit = this.createCriteria(type);
+        crit.add(Restrictions.gt("id", afterId));
+        crit.addOrder(Order.asc("id"));
+        crit.setMaxResults(maxResults);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("name"))
+                .add(Projections.property("description")));
+        List<Object[]> rows = asList(crit);
+        List<Triple<Integer, String, String>> data = new ArrayList<Triple<Integer, String, String>>();
+        for (Object[] row : rows) {
+            data.add(Triple.create((Integer) row[0], (String) row[1], (String) row[2]));
+        }
+        return data;
+    }
+
+    /**
+     * Executes a bulk update of the ranks of the entities between and
+     * including the borders. Bulk updates bypass the session, so the loaded
+     * instances the update may have changed are refreshed, keeping their
+     * stale ranks from being flushed over the new ones.
+     * 
+     * @param inContext
+     *            matches the entities in the ranking context the update is
+     *            restricted to, so that only they are refreshed
+     * @return the number of updated rows
+     */
+    protected int executeRankShift(Query update, int lower, int upper,
+            Predicate<? super T> inContext) {
+        int updated = update.executeUpdate();
+        if (updated > 0) {
+            refreshLoadedRanks(lower, upper, inContext);
+        }
+        return updated;
+    }
+
+    /**
+     * Whether the database supports <code>INSERT ... ON DUPLICATE KEY
+     * UPDATE</code>, which the production MySQL database does and the
+     * embedded test database does not.
+     */
+    protected boolean supportsInsertOnDuplicateKeyUpdate() {
+        return ((SessionFactoryImplementor) sessionFactory).getDialect() instanceof MySQLDialect;
+    }
+
+    private void refreshLoadedRanks(int lower, int upper,
+            Predicate<? super T> inContext) {
+        Session session = this.getCurrentSession();
+        Map<?, ?> entitiesByKey = ((SessionImplementor) session)
+                .getPersistenceContext().getEntitiesByKey();
+        List<T> loaded = new ArrayList<T>();
+        for (Object entity : entitiesByKey.values()) {
+            if (getPersistentClass().isInstance(entity) && entity instanceof Rankable) {
+                loaded.add(getPersistentClass().cast(entity));
+            }
+        }
+        for (T entity : loaded) {
+            Integer rank = ((Rankable) entity).getRank();
+            if (rank != null && rank >= lower && rank <= upper
+                    && inContext.apply(entity)) {
+                session.refresh(entity);
+            }
+        }
+    }
+
     public Session getCurrentSession() {
         return this.sessionFactory.getCurrentSession();
     }
@@ -1,16 +1,26 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.hibernate.Criteria;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.type.StandardBasicTypes;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.joda.time.Interval;
@@ -24,11 +34,16 @@ import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.model.TaskState;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 
 @Repository("hourEntryDAO")
 public class HourEntryDAOHibernate extends GenericDAOHibernate<HourEntry>
         implements HourEntryDAO {
 
+    private static final int TIMESHEET_FETCH_SIZE = 500;
+
+    private static final int BULK_CHUNK_SIZE = 500;
+
     public HourEntryDAOHibernate() {
         super(HourEntry.class);
     }
@@ -177,6 +192,97 @@ public class HourEntryDAOHibernate extends GenericDAOHibernate<HourEntry>
         return asList(crit);
     }
 
+    public void retrieveTimesheetEntries(Collection<Integer> backlogIds,
+            DateTime startDate, DateTime endDate, Set<Integer> userIds,
+            TimesheetEntryHandler handler) {
+        if (backlogIds == null || backlogIds.isEmpty()) {
+            return;
+        }
+        StringBuilder sql = new StringBuilder(
+                "SELECT he.id AS entryId, he.date AS entryDate, he.description AS description,"
+                + " he.minutesSpent AS minutesSpent, he.user_id AS userId, he.backlog_id AS backlogId,"
+                + " s.id AS storyId, s.name AS storyName, s.iteration_id AS storyIterationId,"
+                + " s.backlog_id AS storyBacklogId, t.id AS taskId, t.name AS taskName,"
+                + " t.iteration_id AS taskIterationId"
+                + " FROM hourentries he"
+                + " LEFT JOIN tasks t ON t.id = he.task_id"
+                + " LEFT JOIN stories s ON s.id = COALESCE(he.story_id, t.story_id)"
+                + " WHERE (he.backlog_id IN (:backlogIds) OR s.iteration_id IN (:backlogIds)"
+                + " OR s.backlog_id IN (:backlogIds) OR t.iteration_id IN (:backlogIds))");
+        if (startDate != null) {
+            sql.append(" AND he.date >= :startDate");
+        }
+        if (endDate != null) {
+            sql.append(" AND he.date <= :endDate");
+        }
+        if (userIds != null && userIds.size() > 0) {
+            sql.append(" AND he.user_id IN (:userIds)");
+        }
+        sql.append(" ORDER BY he.date DESC");
+
+        SQLQuery query = this.getCurrentSession().createSQLQuery(sql.toString());
+        query.addScalar("entryId", StandardBasicTypes.INTEGER)
+                .addScalar("entryDate", StandardBasicTypes.TIMESTAMP)
+                .addScalar("description", StandardBasicTypes.STRING)
+                .addScalar("minutesSpent", StandardBasicTypes.LONG)
+                .addScalar("userId", StandardBasicTypes.INTEGER)
+                .addScalar("backlogId", StandardBasicTypes.INTEGER)
+                .addScalar("storyId", StandardBasicTypes.INTEGER)
+                .addScalar("storyName", StandardBasicTypes.STRING)
+                .addScalar("storyIterationId", StandardBasicTypes.INTEGER)
+                .addScalar("storyBacklogId", StandardBasicTypes.INTEGER)
+                .addScalar("taskId", StandardBasicTypes.INTEGER)
+                .addScalar("taskName", StandardBasicTypes.STRING)
+                .addScalar("taskIterationId", StandardBasicTypes.INTEGER);
+        query.setParameterList("backlogIds", backlogIds);
+        if (startDate != null) {
+            query.setTimestamp("startDate", startDate.toDate());
+        }
+        if (endDate != null) {
+            query.setTimestamp("endDate", endDate.toDate());
+        }
+        if (userIds != null && userIds.size() > 0) {
+            Set<Integer> users = new HashSet<Integer>(userIds);
+            // See setDateUserFilter
+            users.add(UserBusiness.NON_EXISTENT_USER_ID);
+            query.setParameterList("userIds", users);
+        }
+        query.setFetchSize(TIMESHEET_FETCH_SIZE);
+        query.setReadOnly(true);
+
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                handler.handleEntry(toTimesheetEntryRow(results.get()));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    public List<TimesheetEntryRow> retrieveTimesheetEntries(
+            Collection<Integer> backlogIds, DateTime startDate,
+            DateTime endDate, Set<Integer> userIds) {
+        final List<TimesheetEntryRow> rows = new ArrayList<TimesheetEntryRow>();
+        this.retrieveTimesheetEntries(backlogIds, startDate, endDate, userIds,
+                new TimesheetEntryHandler() {
+                    public void handleEntry(TimesheetEntryRow row) {
+                        rows.add(row);
+                    }
+                });
+        return rows;
+    }
+
+    private static TimesheetEntryRow toTimesheetEntryRow(Object[] row) {
+        Date date = (Date) row[1];
+        return new TimesheetEntryRow((Integer) row[0],
+                (date == null) ? null : new DateTime(date.getTime()),
+                (String) row[2], (Long) row[3], (Integer) row[4],
+                (Integer) row[5], (Integer) row[6], (String) row[7],
+                (Integer) row[8], (Integer) row[9], (Integer) row[10],
+                (String) row[11], (Integer) row[12]);
+    }
+
     public long calculateIterationHourEntriesSum(int iterationId) {
         long tasksEntrySum = getSumForTaskHourEntriesWithoutStoryForIteration(iterationId);
         long tasksWithStoryEntrySum = getSumForTaskHourEntriesWithStoryForIteration(iterationId);
@@ -187,6 +293,62 @@ public class HourEntryDAOHibernate extends GenericDAOHibernate<HourEntry>
                 + backlogEntrySum;
     }
 
+    public Map<Integer, Long> calculateIterationHourEntriesSums(
+            Collection<Integer> iterationIds) {
+        if (iterationIds == null || iterationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Long> result = new HashMap<Integer, Long>();
+
+        Criteria taskCrit = this.createCriteria(TaskHourEntry.class);
+        taskCrit.createAlias("task", "task");
+        taskCrit.add(Restrictions.isNull("task.story"));
+        taskCrit.add(Restrictions.in("task.iteration.id", iterationIds));
+        taskCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("task.iteration.id"))
+                .add(Projections.sum("minutesSpent")));
+        addSums(result, taskCrit);
+
+        Criteria storyTaskCrit = this.createCriteria(TaskHourEntry.class);
+        storyTaskCrit.createAlias("task", "task");
+        storyTaskCrit.createAlias("task.story", "story");
+        storyTaskCrit.add(Restrictions.in("story.iteration.id", iterationIds));
+        storyTaskCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("story.iteration.id"))
+                .add(Projections.sum("minutesSpent")));
+        addSums(result, storyTaskCrit);
+
+        Criteria storyCrit = this.createCriteria(StoryHourEntry.class);
+        storyCrit.createAlias("story", "story");
+        storyCrit.add(Restrictions.in("story.iteration.id", iterationIds));
+        storyCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("story.iteration.id"))
+                .add(Projections.sum("minutesSpent")));
+        addSums(result, storyCrit);
+
+        Criteria backlogCrit = this.createCriteria(BacklogHourEntry.class);
+        backlogCrit.add(Restrictions.in("backlog.id", iterationIds));
+        backlogCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("backlog.id"))
+                .add(Projections.sum("minutesSpent")));
+        addSums(result, backlogCrit);
+
+        return result;
+    }
+
+    private void addSums(Map<Integer, Long> sums, Criteria criteria) {
+        List<Object[]> rows = asList(criteria);
+        for (Object[] row : rows) {
+            if (row[1] == null) {
+                continue;
+            }
+            Integer id = (Integer) row[0];
+            Long previous = sums.get(id);
+            long sum = (Long) row[1];
+            sums.put(id, (previous == null) ? sum : previous + sum);
+        }
+    }
+
     private List<HourEntry> getHourEntriesForTaskWithoutStoryForIteration(
             int iterationId) {
         Criteria criteria = this.createCriteria(TaskHourEntry.class);
@@ -389,4 +551,63 @@ public class HourEntryDAOHibernate extends GenericDAOHibernate<HourEntry>
         DateTime now = new DateTime();
         return new Duration(hourEntry.getDate(), now).getStandardSeconds() / 60;
     }
+
+    public void removeAll(Collection<? extends HourEntry> hourEntries) {
+        for (List<Integer> ids : detach(hourEntries)) {
+            Query query = this.getCurrentSession().createQuery(
+                    "delete from HourEntry he where he.id in (:ids)");
+            query.setParameterList("ids", ids);
+            query.executeUpdate();
+        }
+    }
+
+    public void moveToStory(Collection<? extends HourEntry> hourEntries,
+            int storyId) {
+        move(hourEntries, "StoryHourEntry", null, storyId);
+    }
+
+    public void moveToBacklog(Collection<? extends HourEntry> hourEntries,
+            int backlogId) {
+        move(hourEntries, "BacklogHourEntry", backlogId, null);
+    }
+
+    /**
+     * The entity type is stored in the discriminator column of the single
+     * table, which cannot be changed with HQL.
+     */
+    private void move(Collection<? extends HourEntry> hourEntries,
+            String type, Integer backlogId, Integer storyId) {
+        for (List<Integer> ids : detach(hourEntries)) {
+            SQLQuery query = this.getCurrentSession().createSQLQuery(
+                    "UPDATE hourentries SET DTYPE = :type, backlog_id = :backlogId,"
+                    + " story_id = :storyId, task_id = NULL WHERE id IN (:ids)");
+            query.addSynchronizedEntityClass(HourEntry.class);
+            query.setString("type", type);
+            query.setParameter("backlogId", backlogId, StandardBasicTypes.INTEGER);
+            query.setParameter("storyId", storyId, StandardBasicTypes.INTEGER);
+            query.setParameterList("ids", ids);
+            query.executeUpdate();
+        }
+    }
+
+    /**
+     * Flush the session and evict the entries, so that the session does not
+     * write or return their stale state after the bulk statements.
+     * 
+     * @return the ids of the entries in chunks
+     */
+    private List<List<Integer>> detach(Collection<? extends HourEntry> hourEntries) {
+        this.getCurrentSession().flush();
+        List<List<Integer>> chunks = new ArrayList<List<Integer>>();
+        List<Integer> chunk = null;
+        for (HourEntry hourEntry : hourEntries) {
+            if (chunk == null || chunk.size() == BULK_CHUNK_SIZE) {
+                chunk = new ArrayList<Integer>();
+                chunks.add(chunk);
+            }
+            chunk.add(hourEntry.getId());
+            this.getCurrentSession().evict(hourEntry);
+        }
+        return chunks;
+    }
 }
@@ -19,10 +19,12 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 import org.joda.time.DateTime;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.db.IterationDAO;
+import fi.hut.soberit.agilefant.model.Assignment;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
@@ -188,6 +190,91 @@ public class IterationDAOHibernate extends GenericDAOHibernate<Iteration>
                 .asList("iteration"), iteration);
     }
 
+    public Map<Integer, Pair<Integer, Integer>> getCountOfDoneAndNonDeferredTasksByIteration(
+            Collection<Integer> iterationIds) {
+        if (iterationIds == null || iterationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Pair<Integer, Integer>> result = new HashMap<Integer, Pair<Integer, Integer>>();
+
+        Criteria storyTaskCrit = this.createCriteria(Task.class);
+        storyTaskCrit.createAlias("story", "story");
+        storyTaskCrit.add(Restrictions.in("story.iteration.id", iterationIds));
+        storyTaskCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("story.iteration.id"))
+                .add(Projections.groupProperty("state"))
+                .add(Projections.groupProperty("story.state"))
+                .add(Projections.rowCount()));
+        List<Object[]> storyTaskRows = asList(storyTaskCrit);
+        addTaskCounts(result, storyTaskRows);
+
+        Criteria iterationTaskCrit = this.createCriteria(Task.class);
+        iterationTaskCrit.createAlias("story", "story", JoinType.LEFT_OUTER_JOIN);
+        iterationTaskCrit.add(Restrictions.in("iteration.id", iterationIds));
+        iterationTaskCrit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("iteration.id"))
+                .add(Projections.groupProperty("state"))
+                .add(Projections.groupProperty("story.state"))
+                .add(Projections.rowCount()));
+        List<Object[]> iterationTaskRows = asList(iterationTaskCrit);
+        addTaskCounts(result, iterationTaskRows);
+
+        return result;
+    }
+
+    /**
+     * Adds the grouped task counts to the done and non-deferred counts. The
+     * rows are iteration id, task state, story state and count.
+     */
+    private void addTaskCounts(Map<Integer, Pair<Integer, Integer>> counts,
+            List<Object[]> rows) {
+        for (Object[] row : rows) {
+            if (row[1] == TaskState.DEFERRED || row[2] == StoryState.DEFERRED) {
+                continue;
+            }
+            Integer iterationId = (Integer) row[0];
+            int count = ((Long) row[3]).intValue();
+            Pair<Integer, Integer> previous = counts.get(iterationId);
+            int done = (previous == null) ? 0 : previous.first;
+            int total = (previous == null) ? 0 : previous.second;
+            if (row[1] == TaskState.DONE) {
+                done += count;
+            }
+            counts.put(iterationId, Pair.create(done, total + count));
+        }
+    }
+
+    public Map<Integer, Pair<Integer, Integer>> getCountOfDoneAndAllStoriesByIteration(
+            Collection<Integer> iterationIds) {
+        if (iterationIds == null || iterationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Criteria criteria = this.createCriteria(Story.class);
+        criteria.add(Restrictions.in("iteration.id", iterationIds));
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("iteration.id"))
+                .add(Projections.groupProperty("state"))
+                .add(Projections.rowCount()));
+        List<Object[]> rows = asList(criteria);
+
+        Map<Integer, Pair<Integer, Integer>> result = new HashMap<Integer, Pair<Integer, Integer>>();
+        for (Object[] row : rows) {
+            Integer iterationId = (Integer) row[0];
+            int count = ((Long) row[2]).intValue();
+            Pair<Integer, Integer> previous = result.get(iterationId);
+            int done = (previous == null) ? 0 : previous.first;
+            int total = (previous == null) ? 0 : previous.second;
+            if (row[1] == StoryState.DONE) {
+                done += count;
+            }
+            if (row[1] != StoryState.DEFERRED) {
+                total += count;
+            }
+            result.put(iterationId, Pair.create(done, total));
+        }
+        return result;
+    }
+
     public Map<Integer, Integer> getTotalAvailability(Set<Integer> iterationIds) {
         if (iterationIds == null || iterationIds.size() == 0) {
             return Collections.emptyMap();
@@ -236,6 +323,42 @@ public class IterationDAOHibernate extends GenericDAOHibernate<Iteration>
         return asList(crit);
     }
 
+    public List<Pair<Iteration, Assignment>> retrieveEmptyIterationAssignmentsWithPlannedSize(
+            DateTime startDate, DateTime endDate, Collection<Integer> assigneeIds) {
+        if (assigneeIds == null || assigneeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Criteria crit = this.createCriteria(Iteration.class);
+
+        // interval limitations
+        Criterion startDateLimit = Restrictions.between("startDate", startDate,
+                endDate);
+        Criterion endDateLimit = Restrictions.between("endDate", startDate,
+                endDate);
+        Criterion overlaps = Restrictions.or(startDateLimit, endDateLimit);
+        Criterion withinIteration = Restrictions.and(Restrictions.le(
+                "startDate", startDate), Restrictions.ge("endDate", endDate));
+        crit.add(Restrictions.or(overlaps, withinIteration));
+
+        // limit by assignees
+        crit.createAlias("assignments", "assignment");
+        crit.add(Restrictions.in("assignment.user.id", assigneeIds));
+
+        // must have planned size set and be empty
+        crit.add(Restrictions.isNotNull("backlogSize"));
+        crit.add(Restrictions.isEmpty("assignedStories"));
+        crit.add(Restrictions.isEmpty("tasks"));
+
+        crit.setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
+        List<Map<String, Object>> rows = asList(crit);
+        List<Pair<Iteration, Assignment>> result = new ArrayList<Pair<Iteration, Assignment>>();
+        for (Map<String, Object> row : rows) {
+            result.add(Pair.create((Iteration) row.get(Criteria.ROOT_ALIAS),
+                    (Assignment) row.get("assignment")));
+        }
+        return result;
+    }
+
     public List<Iteration> retrieveCurrentAndFutureIterationsAt(DateTime point) {
 
         Criteria crit = this.createCriteria(Iteration.class);
@@ -1,12 +1,20 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Criteria;
 import org.hibernate.FetchMode;
+import org.hibernate.Query;
+import org.hibernate.criterion.DetachedCriteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.hibernate.sql.JoinType;
 import org.joda.time.LocalDate;
 import org.springframework.stereotype.Repository;
 
@@ -17,6 +25,7 @@ import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.util.Pair;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Repository("iterationHistoryEntryDAO")
 public class IterationHistoryEntryDAOHibernate extends
@@ -46,6 +55,65 @@ public class IterationHistoryEntryDAOHibernate extends
         return retrieveByDateInternal(iterationId, null);
     }
 
+    public Map<Integer, IterationHistoryEntry> retrieveLatest(
+            Collection<Integer> iterationIds) {
+        return retrieveByDateInternal(iterationIds, null);
+    }
+
+    public Map<Integer, IterationHistoryEntry> retrieveByDate(
+            Collection<Integer> iterationIds, LocalDate timestamp) {
+        return retrieveByDateInternal(iterationIds, timestamp);
+    }
+
+    private Map<Integer, IterationHistoryEntry> retrieveByDateInternal(
+            Collection<Integer> iterationIds, LocalDate timestamp) {
+        if (iterationIds == null || iterationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        DetachedCriteria latestTimestamp = DetachedCriteria.forClass(
+                IterationHistoryEntry.class, "other");
+        latestTimestamp.add(Restrictions.eqProperty("other.iteration.id",
+                "entry.iteration.id"));
+        if (timestamp != null) {
+            latestTimestamp.add(Restrictions.le("other.timestamp", timestamp));
+        }
+        latestTimestamp.setProjection(Projections.max("other.timestamp"));
+
+        Criteria crit = this.createCriteria(IterationHistoryEntry.class, "entry");
+        crit.add(Restrictions.in("entry.iteration.id", iterationIds));
+        crit.add(Subqueries.propertyEq("entry.timestamp", latestTimestamp));
+        crit.addOrder(Order.asc("entry.id"));
+        List<IterationHistoryEntry> entries = asList(crit);
+
+        Map<Integer, IterationHistoryEntry> result = new HashMap<Integer, IterationHistoryEntry>();
+        for (IterationHistoryEntry entry : entries) {
+            result.put(entry.getIteration().getId(), entry);
+        }
+        return result;
+    }
+
+    public void addToSums(IterationHistoryEntry entry, long effortLeftDelta,
+            long originalEstimateDelta) {
+        Query query = getCurrentSession().createQuery(
+                "UPDATE IterationHistoryEntry entry "
+                + "SET entry.effortLeftSum = entry.effortLeftSum + :effortLeftDelta, "
+                + "entry.originalEstimateSum = entry.originalEstimateSum + :originalEstimateDelta, "
+                + "entry.deltaOriginalEstimate = entry.deltaOriginalEstimate + :originalEstimateDelta "
+                + "WHERE entry.id = :id");
+        query.setLong("effortLeftDelta", effortLeftDelta);
+        query.setLong("originalEstimateDelta", originalEstimateDelta);
+        query.setInteger("id", entry.getId());
+        query.executeUpdate();
+        getCurrentSession().refresh(entry);
+    }
+
+    public List<Integer> retrieveIterationIdsWithHistory() {
+        Criteria crit = this.createCriteria(IterationHistoryEntry.class);
+        crit.setProjection(Projections.distinct(Projections.property("iteration.id")));
+        crit.addOrder(Order.asc("iteration.id"));
+        return asList(crit);
+    }
+
     public Pair<ExactEstimate, ExactEstimate> calculateCurrentHistoryData(int iterationId) {
         Pair<ExactEstimate, ExactEstimate> tasksWithoutStorySum = this.calculateCurrentHistoryData_tasksWithoutStory(iterationId);
         Pair<ExactEstimate, ExactEstimate> tasksInsideStorySum = this.calculateCurrentHistoryData_tasksInsideStory(iterationId);
@@ -93,6 +161,39 @@ public class IterationHistoryEntryDAOHibernate extends
         return parseResultToPair(results);
     }
     
+    public Triple<Integer, ExactEstimate, ExactEstimate> calculateTaskHistoryContribution(int taskId) {
+        Criteria crit = this.createCriteria(Task.class);
+        crit.createAlias("story", "story", JoinType.LEFT_OUTER_JOIN);
+        crit.add(Restrictions.idEq(taskId));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.property("state"))
+                .add(Projections.property("effortLeft"))
+                .add(Projections.property("originalEstimate"))
+                .add(Projections.property("iteration.id"))
+                .add(Projections.property("story.state"))
+                .add(Projections.property("story.iteration.id")));
+        Object[] results = (Object[]) this.uniqueResult(crit);
+
+        if (results == null || results[0] == TaskState.DEFERRED) {
+            return Triple.create(null, new ExactEstimate(0), new ExactEstimate(0));
+        }
+        Integer iterationId = (Integer) results[3];
+        if (iterationId == null && results[4] != StoryState.DEFERRED) {
+            iterationId = (Integer) results[5];
+        }
+        if (iterationId == null) {
+            return Triple.create(null, new ExactEstimate(0), new ExactEstimate(0));
+        }
+        return Triple.create(iterationId, toEstimate(results[1]), toEstimate(results[2]));
+    }
+
+    private ExactEstimate toEstimate(Object value) {
+        if (value == null) {
+            return new ExactEstimate(0);
+        }
+        return (ExactEstimate) value;
+    }
+
     private Pair<ExactEstimate, ExactEstimate> parseResultToPair(Object[] results) {
         long first = 0;
         long second = 0;
@@ -1,13 +1,25 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.db.LabelDAO;
@@ -54,5 +66,66 @@ LabelDAO {
         
     }
 
+    public Map<Integer, Set<String>> getExistingStoryLabelNames(
+            Collection<Integer> storyIds, Collection<String> labelNames) {
+        Map<Integer, Set<String>> existing = new HashMap<Integer, Set<String>>();
+        if (storyIds.isEmpty() || labelNames.isEmpty()) {
+            return existing;
+        }
+        Set<String> names = new HashSet<String>();
+        for (String labelName : labelNames) {
+            names.add(labelName.toLowerCase(Locale.ENGLISH));
+        }
+        Criteria crit = this.createCriteria(Label.class);
+        crit.add(Restrictions.in("story.id", storyIds));
+        crit.add(Restrictions.in("name", names));
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.property("story.id"))
+                .add(Projections.property("name")));
+        List<Object[]> rows = asList(crit);
+        for (Object[] row : rows) {
+            Set<String> storyLabels = existing.get(row[0]);
+            if (storyLabels == null) {
+                storyLabels = new HashSet<String>();
+                existing.put((Integer) row[0], storyLabels);
+            }
+            storyLabels.add((String) row[1]);
+        }
+        return existing;
+    }
+
+    public void insertLabels(final Collection<Label> labels) {
+        if (labels.isEmpty()) {
+            return;
+        }
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                PreparedStatement insert = connection.prepareStatement(
+                        "INSERT INTO labels (displayName, name, timestamp, creator_id, story_id) VALUES (?, ?, ?, ?, ?)");
+                try {
+                    for (Label label : labels) {
+                        insert.setString(1, label.getDisplayName());
+                        insert.setString(2, label.getName());
+                        if (label.getTimestamp() == null) {
+                            insert.setNull(3, Types.TIMESTAMP);
+                        } else {
+                            insert.setTimestamp(3, new Timestamp(label.getTimestamp().getMillis()));
+                        }
+                        if (label.getCreator() == null) {
+                            insert.setNull(4, Types.INTEGER);
+                        } else {
+                            insert.setInt(4, label.getCreator().getId());
+                        }
+                        insert.setInt(5, label.getStory().getId());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                } finally {
+                    insert.close();
+                }
+            }
+        });
+    }
+
 }
     
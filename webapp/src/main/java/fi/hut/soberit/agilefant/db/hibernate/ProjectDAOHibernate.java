@@ -1,7 +1,10 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
@@ -14,11 +17,19 @@ import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Predicates;
+
 import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
+import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.StoryState;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.TaskHourEntry;
+import fi.hut.soberit.agilefant.model.TaskState;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.ProjectMetrics;
 
@@ -57,10 +68,14 @@ public class ProjectDAOHibernate extends GenericDAOHibernate<Project> implements
         return asList(crit);
     }
     
-    public Collection<Project> getProjectsWithRankBetween(int lower, int upper) {
-        Criteria crit = this.createCriteria(Project.class);
-        crit.add(Restrictions.between("rank", lower, upper));
-        return asCollection(crit);
+    public void shiftRanksBetween(int lower, int upper, int amount) {
+        Query query = getCurrentSession().createQuery(
+                "UPDATE Project project SET project.rank = project.rank + :amount "
+                + "WHERE project.rank BETWEEN :lower AND :upper");
+        query.setInteger("amount", amount);
+        query.setInteger("lower", lower);
+        query.setInteger("upper", upper);
+        executeRankShift(query, lower, upper, Predicates.<Project>alwaysTrue());
     }
     
     public Collection<Project> getUnrankedProjects(LocalDate startDate, LocalDate endDate) {
@@ -126,17 +141,30 @@ public class ProjectDAOHibernate extends GenericDAOHibernate<Project> implements
         return 0;
     }
     public ProjectMetrics calculateProjectStoryMetrics(int backlogId) {
+        ProjectMetrics metrics = calculateProjectStoryMetrics(
+                Collections.singleton(backlogId)).get(backlogId);
+        return (metrics == null) ? new ProjectMetrics() : metrics;
+    }
+
+    public Map<Integer, ProjectMetrics> calculateProjectStoryMetrics(
+            Collection<Integer> projectIds) {
+        Map<Integer, ProjectMetrics> result = new HashMap<Integer, ProjectMetrics>();
+        if (projectIds == null || projectIds.isEmpty()) {
+            return result;
+        }
         Criteria crit = this.createCriteria(Story.class);
+        crit.createAlias("storyRanks", "rank");
+        crit.add(Restrictions.in("rank.backlog.id", projectIds));
         ProjectionList proj = Projections.projectionList();
         proj.add(Projections.sum("storyPoints"));
         proj.add(Projections.sum("storyValue"));
         proj.add(Projections.count("id"));
         proj.add(Projections.groupProperty("state"));
+        proj.add(Projections.groupProperty("rank.backlog.id"));
         crit.setProjection(proj);
-        crit.createCriteria("storyRanks", "ranks").createCriteria("backlog", "backlog").add(Restrictions.idEq(backlogId));
         List<Object[]> res = asList(crit);
-        ProjectMetrics metrics = new ProjectMetrics();
         for(Object[] row : res) {
+            ProjectMetrics metrics = getMetrics(result, (Integer) row[4]);
             if((StoryState)row[3] == StoryState.DONE) {
                 metrics.setCompletedStoryPoints(metrics.getCompletedStoryPoints() + toInt(row[0]));
                 metrics.setNumberOfDoneStories(metrics.getNumberOfDoneStories() + toInt(row[2]));
@@ -152,7 +180,117 @@ public class ProjectDAOHibernate extends GenericDAOHibernate<Project> implements
                 metrics.setTotalValue(metrics.getTotalValue() + toInt(row[1]));
             }
         }
-        return metrics;
+
+        // Effort spent on the ranked stories and their tasks
+        Map<Integer, Long> effortSpent = new HashMap<Integer, Long>();
+        Criteria storyEntryCrit = this.createCriteria(StoryHourEntry.class);
+        storyEntryCrit.createAlias("story", "story");
+        storyEntryCrit.createAlias("story.storyRanks", "rank");
+        addSums(effortSpent, storyEntryCrit, "rank.backlog.id", projectIds, "minutesSpent");
+
+        Criteria taskEntryCrit = this.createCriteria(TaskHourEntry.class);
+        taskEntryCrit.createAlias("task", "task");
+        taskEntryCrit.createAlias("task.story", "story");
+        taskEntryCrit.createAlias("story.storyRanks", "rank");
+        addSums(effortSpent, taskEntryCrit, "rank.backlog.id", projectIds, "minutesSpent");
+
+        // Original estimates of the tasks in the ranked stories
+        Map<Integer, Long> originalEstimates = new HashMap<Integer, Long>();
+        Criteria taskCrit = this.createCriteria(Task.class);
+        taskCrit.createAlias("story", "story");
+        taskCrit.createAlias("story.storyRanks", "rank");
+        taskCrit.add(Restrictions.ne("state", TaskState.DEFERRED));
+        addSums(originalEstimates, taskCrit, "rank.backlog.id", projectIds, "originalEstimate");
+
+        for (Map.Entry<Integer, Long> entry : effortSpent.entrySet()) {
+            getMetrics(result, entry.getKey()).setEffortSpent(
+                    new ExactEstimate(entry.getValue()));
+        }
+        for (Map.Entry<Integer, Long> entry : originalEstimates.entrySet()) {
+            getMetrics(result, entry.getKey()).setOriginalEstimate(
+                    new ExactEstimate(entry.getValue()));
+        }
+        return result;
+    }
+
+    public Map<Integer, Long> calculateProjectSpentEffortSums(
+            Collection<Integer> projectIds) {
+        Map<Integer, Long> sums = new HashMap<Integer, Long>();
+        if (projectIds == null || projectIds.isEmpty()) {
+            return sums;
+        }
+
+        // Spent effort logged to the projects and their iterations
+        Criteria projectCrit = this.createCriteria(BacklogHourEntry.class);
+        addSums(sums, projectCrit, "backlog.id", projectIds, "minutesSpent");
+
+        Criteria iterationCrit = this.createCriteria(BacklogHourEntry.class);
+        iterationCrit.createAlias("backlog", "backlog");
+        addSums(sums, iterationCrit, "backlog.parent.id", projectIds, "minutesSpent");
+
+        // Stories and their tasks count towards their iteration if they have one
+        Criteria iterationStoryCrit = this.createCriteria(StoryHourEntry.class);
+        iterationStoryCrit.createAlias("story", "story");
+        iterationStoryCrit.createAlias("story.iteration", "iteration");
+        addSums(sums, iterationStoryCrit, "iteration.parent.id", projectIds, "minutesSpent");
+
+        Criteria projectStoryCrit = this.createCriteria(StoryHourEntry.class);
+        projectStoryCrit.createAlias("story", "story");
+        projectStoryCrit.add(Restrictions.isNull("story.iteration"));
+        addSums(sums, projectStoryCrit, "story.backlog.id", projectIds, "minutesSpent");
+
+        Criteria iterationTaskCrit = this.createCriteria(TaskHourEntry.class);
+        iterationTaskCrit.createAlias("task", "task");
+        iterationTaskCrit.createAlias("task.iteration", "iteration");
+        iterationTaskCrit.add(Restrictions.isNull("task.story"));
+        addSums(sums, iterationTaskCrit, "iteration.parent.id", projectIds, "minutesSpent");
+
+        Criteria iterationStoryTaskCrit = this.createCriteria(TaskHourEntry.class);
+        iterationStoryTaskCrit.createAlias("task", "task");
+        iterationStoryTaskCrit.createAlias("task.story", "story");
+        iterationStoryTaskCrit.createAlias("story.iteration", "iteration");
+        addSums(sums, iterationStoryTaskCrit, "iteration.parent.id", projectIds, "minutesSpent");
+
+        Criteria projectStoryTaskCrit = this.createCriteria(TaskHourEntry.class);
+        projectStoryTaskCrit.createAlias("task", "task");
+        projectStoryTaskCrit.createAlias("task.story", "story");
+        projectStoryTaskCrit.add(Restrictions.isNull("story.iteration"));
+        addSums(sums, projectStoryTaskCrit, "story.backlog.id", projectIds, "minutesSpent");
+
+        return sums;
+    }
+
+    private static ProjectMetrics getMetrics(Map<Integer, ProjectMetrics> metrics,
+            Integer projectId) {
+        ProjectMetrics projectMetrics = metrics.get(projectId);
+        if (projectMetrics == null) {
+            projectMetrics = new ProjectMetrics();
+            metrics.put(projectId, projectMetrics);
+        }
+        return projectMetrics;
+    }
+
+    /**
+     * Sums the given property grouped by the given project id property and
+     * adds the sums to the previous ones.
+     */
+    private void addSums(Map<Integer, Long> sums, Criteria criteria,
+            String projectIdProperty, Collection<Integer> projectIds,
+            String sumProperty) {
+        criteria.add(Restrictions.in(projectIdProperty, projectIds));
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty(projectIdProperty))
+                .add(Projections.sum(sumProperty)));
+        List<Object[]> rows = asList(criteria);
+        for (Object[] row : rows) {
+            if (row[1] == null) {
+                continue;
+            }
+            Integer id = (Integer) row[0];
+            Long previous = sums.get(id);
+            long sum = ((Number) row[1]).longValue();
+            sums.put(id, (previous == null) ? sum : previous + sum);
+        }
     }
     
 }
@@ -1,20 +1,28 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.hibernate.Criteria;
-import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.jdbc.Work;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.db.StoryAccessDAO;
-import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryAccess;
-import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.model.StoryAccessSum;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Repository("storyAccessDAO")
 public class StoryAccessDAOHibernate extends GenericDAOHibernate<StoryAccess> implements
@@ -24,24 +32,142 @@ public class StoryAccessDAOHibernate extends GenericDAOHibernate<StoryAccess> im
         super(StoryAccess.class);
     }
 
-    public Map<Story, Long> calculateAccessCounts(DateTime start,
-            DateTime end, User user) {
-        Criteria crit = this.createCriteria(StoryAccess.class);
-        crit.add(Restrictions.eq("user", user));
+    public void storeAccesses(
+            final List<Triple<Integer, Integer, DateTime>> accesses) {
+        if (accesses.isEmpty()) {
+            return;
+        }
+        final Map<Triple<Integer, Integer, LocalDate>, Long> counts = new LinkedHashMap<Triple<Integer, Integer, LocalDate>, Long>();
+        for (Triple<Integer, Integer, DateTime> access : accesses) {
+            Triple<Integer, Integer, LocalDate> key = Triple.create(
+                    access.first, access.second, access.third.toLocalDate());
+            Long count = counts.get(key);
+            counts.put(key, (count == null) ? 1L : count + 1);
+        }
+        final boolean upsert = supportsInsertOnDuplicateKeyUpdate();
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                insertAccesses(connection, accesses);
+                if (upsert) {
+                    insertSums(connection, new ArrayList<Triple<Integer, Integer, LocalDate>>(counts.keySet()), counts, true);
+                } else {
+                    List<Triple<Integer, Integer, LocalDate>> missing = updateSums(connection, counts);
+                    insertSums(connection, missing, counts, false);
+                }
+            }
+        });
+    }
+
+    private void insertAccesses(Connection connection,
+            List<Triple<Integer, Integer, DateTime>> accesses)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO story_access (date, story_id, user_id)"
+                + " SELECT ?, s.id, u.id FROM stories s, users u WHERE s.id = ? AND u.id = ?");
+        try {
+            for (Triple<Integer, Integer, DateTime> access : accesses) {
+                statement.setTimestamp(1, new Timestamp(access.third.getMillis()));
+                statement.setInt(2, access.second);
+                statement.setInt(3, access.first);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * @return the counts which have no row to add to
+     */
+    private List<Triple<Integer, Integer, LocalDate>> updateSums(
+            Connection connection,
+            Map<Triple<Integer, Integer, LocalDate>, Long> counts)
+            throws SQLException {
+        List<Triple<Integer, Integer, LocalDate>> keys = new ArrayList<Triple<Integer, Integer, LocalDate>>(counts.keySet());
+        PreparedStatement statement = connection.prepareStatement(
+                "UPDATE story_access_sums SET accessCount = accessCount + ?"
+                + " WHERE user_id = ? AND story_id = ? AND date = ?");
+        int[] updated;
+        try {
+            for (Triple<Integer, Integer, LocalDate> key : keys) {
+                statement.setLong(1, counts.get(key));
+                statement.setInt(2, key.first);
+                statement.setInt(3, key.second);
+                statement.setDate(4, toSqlDate(key.third));
+                statement.addBatch();
+            }
+            updated = statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+        List<Triple<Integer, Integer, LocalDate>> missing = new ArrayList<Triple<Integer, Integer, LocalDate>>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                missing.add(keys.get(i));
+            }
+        }
+        return missing;
+    }
+
+    private void insertSums(Connection connection,
+            List<Triple<Integer, Integer, LocalDate>> keys,
+            Map<Triple<Integer, Integer, LocalDate>, Long> counts,
+            boolean onDuplicateKeyUpdate) throws SQLException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO story_access_sums (user_id, story_id, date, accessCount)"
+                + " SELECT u.id, s.id, ?, ? FROM stories s, users u WHERE s.id = ? AND u.id = ?";
+        if (onDuplicateKeyUpdate) {
+            sql += " ON DUPLICATE KEY UPDATE accessCount = accessCount + VALUES(accessCount)";
+        }
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            for (Triple<Integer, Integer, LocalDate> key : keys) {
+                statement.setDate(1, toSqlDate(key.third));
+                statement.setLong(2, counts.get(key));
+                statement.setInt(3, key.second);
+                statement.setInt(4, key.first);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static Date toSqlDate(LocalDate date) {
+        return Date.valueOf(date.toString());
+    }
+
+    public Map<Integer, Long> calculateAccessCounts(int userId,
+            LocalDate start, LocalDate end) {
+        Criteria crit = this.createCriteria(StoryAccessSum.class);
+        crit.add(Restrictions.eq("userId", userId));
         crit.add(Restrictions.between("date", start, end));
-        ProjectionList proj = Projections.projectionList();
-        proj.add(Projections.groupProperty("story"));
-        proj.add(Projections.count("id"));
-        crit.setProjection(proj);
-        
-        Map<Story, Long> res = new HashMap<Story, Long>();
-        
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("storyId"))
+                .add(Projections.sum("accessCount")));
+
+        Map<Integer, Long> res = new HashMap<Integer, Long>();
         List<Object[]> data = asList(crit);
-        for(Object[] row : data) {
-            res.put((Story)row[0], (Long)row[1]);
+        for (Object[] row : data) {
+            res.put((Integer) row[0], (Long) row[1]);
         }
         return res;
     }
 
-    
+    public void rebuildSums() {
+        this.getCurrentSession().flush();
+        this.getCurrentSession().createQuery("delete from StoryAccessSum")
+                .executeUpdate();
+        this.getCurrentSession().createSQLQuery(
+                "INSERT INTO story_access_sums (user_id, story_id, date, accessCount)"
+                + " SELECT user_id, story_id, CAST(date AS DATE), COUNT(*)"
+                + " FROM story_access WHERE date IS NOT NULL"
+                + " GROUP BY user_id, story_id, CAST(date AS DATE)")
+                .executeUpdate();
+    }
+
 }
@@ -0,0 +1,180 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maintains the rows of the <code>story_ancestors</code> table with plain
+ * JDBC, so that it can be used both while a Hibernate session is flushing
+ * and from the database migrations.
+ *
+ * @see fi.hut.soberit.agilefant.model.StoryAncestor
+ */
+public final class StoryAncestorCalculator {
+
+    private static final int BATCH_SIZE = 500;
+
+    private StoryAncestorCalculator() {
+    }
+
+    /**
+     * Move the given story and the stories under it under a new parent. The
+     * links to the old ancestors are removed and the links to the ancestors
+     * of the new parent are added. A story without any rows gets its own row.
+     *
+     * @param parentId the new parent, or null for a root story
+     */
+    public static void updateParent(Connection connection, int storyId,
+            Integer parentId) throws SQLException {
+        Map<Integer, Integer> subtree = retrieveLinks(connection,
+                "SELECT descendant_id, depth FROM story_ancestors WHERE ancestor_id = ?",
+                storyId);
+        if (subtree.isEmpty()) {
+            subtree.put(storyId, 0);
+            PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO story_ancestors (ancestor_id, descendant_id, depth) VALUES (?, ?, 0)");
+            try {
+                insert.setInt(1, storyId);
+                insert.setInt(2, storyId);
+                insert.executeUpdate();
+            } finally {
+                insert.close();
+            }
+        }
+
+        PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM story_ancestors WHERE descendant_id = ? AND depth > ?");
+        try {
+            for (Map.Entry<Integer, Integer> node : subtree.entrySet()) {
+                delete.setInt(1, node.getKey());
+                delete.setInt(2, node.getValue());
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        } finally {
+            delete.close();
+        }
+
+        if (parentId == null) {
+            return;
+        }
+        Map<Integer, Integer> ancestors = retrieveLinks(connection,
+                "SELECT ancestor_id, depth FROM story_ancestors WHERE descendant_id = ?",
+                parentId);
+        if (ancestors.isEmpty()) {
+            ancestors.put(parentId, 0);
+        }
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO story_ancestors (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)");
+        try {
+            int batched = 0;
+            for (Map.Entry<Integer, Integer> ancestor : ancestors.entrySet()) {
+                if (subtree.containsKey(ancestor.getKey())) {
+                    // A move under the story's own branch would close a cycle
+                    continue;
+                }
+                for (Map.Entry<Integer, Integer> node : subtree.entrySet()) {
+                    insert.setInt(1, ancestor.getKey());
+                    insert.setInt(2, node.getKey());
+                    insert.setInt(3, ancestor.getValue() + 1 + node.getValue());
+                    insert.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+    }
+
+    /**
+     * Remove the rows of a deleted story.
+     */
+    public static void remove(Connection connection, int storyId)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM story_ancestors WHERE descendant_id = ?");
+        try {
+            statement.setInt(1, storyId);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+        statement = connection.prepareStatement(
+                "DELETE FROM story_ancestors WHERE ancestor_id = ?");
+        try {
+            statement.setInt(1, storyId);
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Recalculate the rows of all the stories.
+     */
+    public static void rebuild(Connection connection) throws SQLException {
+        Map<Integer, Integer> parents = new HashMap<Integer, Integer>();
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate("DELETE FROM story_ancestors");
+            ResultSet rs = statement.executeQuery("SELECT id, parent_id FROM stories");
+            while (rs.next()) {
+                int parent = rs.getInt(2);
+                parents.put(rs.getInt(1), rs.wasNull() ? null : parent);
+            }
+        } finally {
+            statement.close();
+        }
+
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO story_ancestors (ancestor_id, descendant_id, depth) VALUES (?, ?, ?)");
+        try {
+            int batched = 0;
+            for (Integer storyId : parents.keySet()) {
+                // A broken tree with a cycle is cut where the cycle closes
+                Set<Integer> visited = new HashSet<Integer>();
+                int depth = 0;
+                for (Integer current = storyId; current != null
+                        && parents.containsKey(current) && visited.add(current);
+                        current = parents.get(current)) {
+                    insert.setInt(1, current);
+                    insert.setInt(2, storyId);
+                    insert.setInt(3, depth++);
+                    insert.addBatch();
+                    if (++batched % BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static Map<Integer, Integer> retrieveLinks(Connection connection,
+            String sql, int storyId) throws SQLException {
+        Map<Integer, Integer> links = new HashMap<Integer, Integer>();
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            statement.setInt(1, storyId);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                links.put(rs.getInt(1), rs.getInt(2));
+            }
+        } finally {
+            statement.close();
+        }
+        return links;
+    }
+}
@@ -0,0 +1,61 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.hibernate.Query;
+import org.hibernate.jdbc.Work;
+import org.springframework.stereotype.Repository;
+
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryAncestor;
+
+@Repository("storyAncestorDAO")
+public class StoryAncestorDAOHibernate extends
+        GenericDAOHibernate<StoryAncestor> implements StoryAncestorDAO {
+
+    public StoryAncestorDAOHibernate() {
+        super(StoryAncestor.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Story> retrieveDescendants(Story story) {
+        Query query = this.getCurrentSession().createQuery(
+                "select s from Story s "
+                        + "left join fetch s.backlog "
+                        + "left join fetch s.iteration "
+                        + "left join fetch s.parent "
+                        + "where s.id in (select a.descendantId from StoryAncestor a "
+                        + "where a.ancestorId = :storyId and a.depth > 0)");
+        query.setInteger("storyId", story.getId());
+        return query.list();
+    }
+
+    public void updateParent(final int storyId, final Integer parentId) {
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                StoryAncestorCalculator.updateParent(connection, storyId, parentId);
+            }
+        });
+    }
+
+    public void remove(final int storyId) {
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                StoryAncestorCalculator.remove(connection, storyId);
+            }
+        });
+    }
+
+    public void rebuild() {
+        this.getCurrentSession().flush();
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                StoryAncestorCalculator.rebuild(connection);
+            }
+        });
+    }
+
+}
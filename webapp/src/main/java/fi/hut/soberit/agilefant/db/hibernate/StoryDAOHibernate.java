@@ -4,6 +4,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,6 +18,7 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.ProjectionList;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.sql.JoinType;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.springframework.stereotype.Repository;
@@ -28,8 +31,11 @@ import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.AssignedWorkIndex;
+import fi.hut.soberit.agilefant.util.Pair;
 import fi.hut.soberit.agilefant.util.StoryMetrics;
 import fi.hut.soberit.agilefant.model.TaskState;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Repository("storyDAO")
 public class StoryDAOHibernate extends GenericDAOHibernate<Story> implements
@@ -99,6 +105,47 @@ public class StoryDAOHibernate extends GenericDAOHibernate<Story> implements
         return Integer.parseInt(result.toString());
     }
 
+    public Map<Integer, Pair<Integer, Integer>> getDoneAndTotalStoryPointSumsByIteration(
+            Collection<Integer> iterationIds) {
+        return sumDoneAndNonDeferredByIteration("storyPoints", iterationIds);
+    }
+
+    public Map<Integer, Pair<Integer, Integer>> getCompletedAndTotalStoryValueSumsByIteration(
+            Collection<Integer> iterationIds) {
+        return sumDoneAndNonDeferredByIteration("storyValue", iterationIds);
+    }
+
+    private Map<Integer, Pair<Integer, Integer>> sumDoneAndNonDeferredByIteration(
+            String property, Collection<Integer> iterationIds) {
+        if (iterationIds == null || iterationIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Criteria criteria = this.createCriteria(Story.class);
+        criteria.add(Restrictions.in("iteration.id", iterationIds));
+        criteria.setProjection(Projections.projectionList()
+                .add(Projections.groupProperty("iteration.id"))
+                .add(Projections.groupProperty("state"))
+                .add(Projections.sum(property)));
+        List<Object[]> rows = asList(criteria);
+
+        Map<Integer, Pair<Integer, Integer>> result = new HashMap<Integer, Pair<Integer, Integer>>();
+        for (Object[] row : rows) {
+            Integer iterationId = (Integer) row[0];
+            int sum = (row[2] == null) ? 0 : ((Number) row[2]).intValue();
+            Pair<Integer, Integer> sums = result.get(iterationId);
+            int done = (sums == null) ? 0 : sums.first;
+            int total = (sums == null) ? 0 : sums.second;
+            if (row[1] == StoryState.DONE) {
+                done += sum;
+            }
+            if (row[1] != StoryState.DEFERRED) {
+                total += sum;
+            }
+            result.put(iterationId, Pair.create(done, total));
+        }
+        return result;
+    }
+
     public Map<Integer, Integer> getNumOfResponsiblesByStory(
             Set<Integer> storyIds) {
         if(storyIds == null || storyIds.size() == 0) {
@@ -149,6 +196,72 @@ public class StoryDAOHibernate extends GenericDAOHibernate<Story> implements
         
         return stories;
     }
+
+    /*
+     * The interval conditions are those of IterationDAOHelpers: a backlog
+     * overlaps if it starts before the interval ends or ends during it, and
+     * backlogs without a start date are products.
+     */
+    private static final String QUERY_RETRIEVE_ASSIGNED_STORY_ENTRIES =
+        "SELECT story.id, backlog.name, iteration.name,"
+        + " (SELECT iterationRank.rank FROM StoryRank iterationRank"
+        + "   WHERE iterationRank.story = story AND iterationRank.backlog = iteration),"
+        + " (SELECT MIN(projectRank.rank) FROM StoryRank projectRank JOIN projectRank.backlog rankBacklog"
+        + "   WHERE projectRank.story = story AND rankBacklog.class = :projectType)"
+        + " FROM Story story"
+        + " LEFT JOIN story.backlog backlog"
+        + " LEFT JOIN story.iteration iteration"
+        + " WHERE ((iteration.id IS NOT NULL"
+        + "     AND (iteration.startDate <= :end OR iteration.endDate BETWEEN :start AND :end))"
+        + "   OR (iteration.id IS NULL AND backlog.id IS NOT NULL"
+        + "     AND (backlog.startDate IS NULL OR backlog.startDate <= :end"
+        + "       OR backlog.endDate BETWEEN :start AND :end)))"
+        + " AND (EXISTS (SELECT task.id FROM Task task JOIN task.responsibles taskResponsible"
+        + "     WHERE task.story = story AND taskResponsible.id = :userId AND task.state <> :taskDone)"
+        + "   OR (story.state <> :storyDone AND EXISTS (SELECT responsible.id FROM Story responsibleStory"
+        + "     JOIN responsibleStory.responsibles responsible"
+        + "     WHERE responsibleStory = story AND responsible.id = :userId)))";
+
+    @SuppressWarnings("unchecked")
+    public List<AssignedWorkIndex.StoryEntry> retrieveAssignedStoryEntries(int userId, Interval interval) {
+        Query query = getCurrentSession().createQuery(QUERY_RETRIEVE_ASSIGNED_STORY_ENTRIES);
+        query.setParameter("userId", userId);
+        query.setParameter("start", interval.getStart());
+        query.setParameter("end", interval.getEnd());
+        query.setParameter("projectType", "Project");
+        query.setParameter("taskDone", TaskState.DONE);
+        query.setParameter("storyDone", StoryState.DONE);
+        List<Object[]> rows = query.list();
+        List<AssignedWorkIndex.StoryEntry> entries = new ArrayList<AssignedWorkIndex.StoryEntry>(rows.size());
+        for (Object[] row : rows) {
+            entries.add(new AssignedWorkIndex.StoryEntry((Integer) row[0],
+                    (String) row[1], (String) row[2], (Integer) row[3],
+                    (Integer) row[4]));
+        }
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<Integer> retrieveResponsibleIds(Collection<Integer> storyIds) {
+        Set<Integer> userIds = new HashSet<Integer>();
+        if (storyIds.isEmpty()) {
+            return userIds;
+        }
+        Query query = getCurrentSession().createQuery(
+                "SELECT DISTINCT responsible.id FROM Story story"
+                + " JOIN story.responsibles responsible"
+                + " WHERE story.id IN (:storyIds)");
+        query.setParameterList("storyIds", storyIds);
+        userIds.addAll(query.list());
+
+        query = getCurrentSession().createQuery(
+                "SELECT DISTINCT responsible.id FROM Task task"
+                + " JOIN task.responsibles responsible"
+                + " WHERE task.story.id IN (:storyIds)");
+        query.setParameterList("storyIds", storyIds);
+        userIds.addAll(query.list());
+        return userIds;
+    }
     
     
     public List<Story> retrieveStoriesInIteration(Iteration iteration) {
@@ -219,4 +332,24 @@ public class StoryDAOHibernate extends GenericDAOHibernate<Story> implements
         return asList(crit);
     }
 
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(
+            int afterId, int maxResults) {
+        return retrieveNamedObjectData(Story.class, afterId, maxResults);
+    }
+
+    public Map<Integer, Integer> retrieveParentIds() {
+        Criteria crit = this.createCriteria(Story.class);
+        crit.createAlias("parent", "parent", JoinType.LEFT_OUTER_JOIN);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("parent.id")));
+        crit.addOrder(Order.asc("id"));
+        List<Object[]> rows = asList(crit);
+        Map<Integer, Integer> parentIds = new LinkedHashMap<Integer, Integer>();
+        for (Object[] row : rows) {
+            parentIds.put((Integer) row[0], (Integer) row[1]);
+        }
+        return parentIds;
+    }
+
 }
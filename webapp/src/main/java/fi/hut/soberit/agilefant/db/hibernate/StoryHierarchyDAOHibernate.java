@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.criterion.CriteriaSpecification;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.LogicalExpression;
@@ -240,6 +241,23 @@ public class StoryHierarchyDAOHibernate extends GenericDAOHibernate<Story>
         return asList(rootFilter);
     }
 
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    public List<Story> retrieveProductStories(int productId) {
+        Query query = this.getCurrentSession().createQuery(
+                "select distinct s from Story s "
+                        + "left join fetch s.backlog b "
+                        + "left join fetch s.iteration i "
+                        + "left join fetch i.parent "
+                        + "left join fetch s.labels "
+                        + "left join b.parent bp "
+                        + "left join bp.parent bpp "
+                        + "where b.id = :productId or bp.id = :productId "
+                        + "or bpp.id = :productId");
+        query.setInteger("productId", productId);
+        return query.list();
+    }
+
     /** {@inheritDoc} */
     public int getMaximumTreeRank(int productId) {
         Criteria rootFilter = getRootStoryCriteria(productId);
@@ -35,8 +35,54 @@ public class StoryRankDAOHibernate extends GenericDAOHibernate<StoryRank>
                 StoryRank.class);
         crit.add(Restrictions.eq("backlog", backlog));
         crit.addOrder(Order.asc("rank"));
+        crit.addOrder(Order.asc("id"));
         return asList(crit);
     }
+
+    public StoryRank retrievePreviousRank(StoryRank rank, StoryRank excluded) {
+        Criteria crit = createNeighbourCriteria(rank.getBacklog(), excluded);
+        crit.add(Restrictions.or(
+                Restrictions.lt("rank", rank.getRank()),
+                Restrictions.and(Restrictions.eq("rank", rank.getRank()),
+                        Restrictions.lt("id", rank.getId()))));
+        crit.addOrder(Order.desc("rank"));
+        crit.addOrder(Order.desc("id"));
+        return firstResult(crit);
+    }
+
+    public StoryRank retrieveNextRank(StoryRank rank, StoryRank excluded) {
+        Criteria crit = createNeighbourCriteria(rank.getBacklog(), excluded);
+        crit.add(Restrictions.or(
+                Restrictions.gt("rank", rank.getRank()),
+                Restrictions.and(Restrictions.eq("rank", rank.getRank()),
+                        Restrictions.gt("id", rank.getId()))));
+        crit.addOrder(Order.asc("rank"));
+        crit.addOrder(Order.asc("id"));
+        return firstResult(crit);
+    }
+
+    public StoryRank retrieveFirstRank(Backlog backlog, StoryRank excluded) {
+        Criteria crit = createNeighbourCriteria(backlog, excluded);
+        crit.addOrder(Order.asc("rank"));
+        crit.addOrder(Order.asc("id"));
+        return firstResult(crit);
+    }
+
+    public StoryRank retrieveLastRank(Backlog backlog, StoryRank excluded) {
+        Criteria crit = createNeighbourCriteria(backlog, excluded);
+        crit.addOrder(Order.desc("rank"));
+        crit.addOrder(Order.desc("id"));
+        return firstResult(crit);
+    }
+
+    private Criteria createNeighbourCriteria(Backlog backlog, StoryRank excluded) {
+        Criteria crit = this.createCriteria(StoryRank.class);
+        crit.add(Restrictions.eq("backlog", backlog));
+        if (excluded != null) {
+            crit.add(Restrictions.ne("id", excluded.getId()));
+        }
+        return crit;
+    }
     
     public Collection<StoryRank> getIterationRanksForStories(Collection<Story> stories) {
         if(stories.isEmpty()) {
@@ -0,0 +1,415 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fi.hut.soberit.agilefant.model.StoryState;
+import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
+
+/**
+ * Calculates the rows of the <code>story_tree_metrics</code> table with plain
+ * JDBC, so that it can be used both while a Hibernate session is completing
+ * its transaction and from the database migrations.
+ * <p>
+ * The metrics of a story are calculated from its own points, tasks and hour
+ * entries and the stored metrics of its children, the same way as
+ * {@link fi.hut.soberit.agilefant.business.StoryHierarchyBusiness#calculateStoryTreeMetrics}
+ * does for a loaded tree.
+ *
+ * @see fi.hut.soberit.agilefant.model.StoryTreeMetrics
+ */
+public final class StoryTreeMetricsCalculator {
+
+    private static final StoryState[] STATES = StoryState.values();
+
+    private static final String METRICS_COLUMNS = "leafPoints, doneLeafPoints, estimatedPoints, estimatedDonePoints, spentEffort, effortLeft";
+
+    private StoryTreeMetricsCalculator() {
+    }
+
+    private static class StoryNode {
+        private final int id;
+        private final Integer parentId;
+        private final long storyPoints;
+        private final StoryState state;
+
+        private StoryNode(ResultSet rs) throws SQLException {
+            this.id = rs.getInt("id");
+            int parent = rs.getInt("parent_id");
+            this.parentId = rs.wasNull() ? null : parent;
+            this.storyPoints = rs.getLong("storyPoints");
+            this.state = STATES[rs.getInt("state")];
+        }
+    }
+
+    /**
+     * Recalculate the metrics of the given stories, the stories of the given
+     * tasks and all their ancestors, children before parents. The rows of
+     * stories which no longer exist are removed.
+     */
+    public static void updateBranches(Connection connection,
+            Collection<Integer> storyIds, Collection<Integer> taskIds)
+            throws SQLException {
+        final Map<Integer, StoryNode> nodes = new HashMap<Integer, StoryNode>();
+        Set<Integer> missing = new HashSet<Integer>();
+        Set<Integer> pending = new HashSet<Integer>(storyIds);
+        if (!taskIds.isEmpty()) {
+            pending.addAll(retrieveTaskStoryIds(connection, taskIds));
+        }
+        while (!pending.isEmpty()) {
+            Set<Integer> found = new HashSet<Integer>();
+            for (StoryNode node : retrieveNodes(connection, pending)) {
+                nodes.put(node.id, node);
+                found.add(node.id);
+            }
+            for (Integer id : pending) {
+                if (!found.contains(id)) {
+                    missing.add(id);
+                }
+            }
+            pending.clear();
+            for (Integer id : found) {
+                Integer parentId = nodes.get(id).parentId;
+                if (parentId != null && !nodes.containsKey(parentId)
+                        && !missing.contains(parentId)) {
+                    pending.add(parentId);
+                }
+            }
+        }
+        deleteRows(connection, missing);
+
+        final Map<Integer, Integer> depths = new HashMap<Integer, Integer>();
+        for (StoryNode node : nodes.values()) {
+            depths.put(node.id, depth(node, nodes));
+        }
+        List<StoryNode> ordered = new ArrayList<StoryNode>(nodes.values());
+        Collections.sort(ordered, new Comparator<StoryNode>() {
+            public int compare(StoryNode o1, StoryNode o2) {
+                return depths.get(o2.id) - depths.get(o1.id);
+            }
+        });
+        for (StoryNode node : ordered) {
+            storeRow(connection, node.id, calculate(connection, node, new HashSet<Integer>()));
+        }
+    }
+
+    /**
+     * Recalculate the metrics of all the stories.
+     */
+    public static void rebuild(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate("DELETE FROM story_tree_metrics");
+        } finally {
+            statement.close();
+        }
+
+        Map<Integer, StoryNode> nodes = new HashMap<Integer, StoryNode>();
+        Map<Integer, List<StoryNode>> children = new HashMap<Integer, List<StoryNode>>();
+        statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery("SELECT id, parent_id, storyPoints, state FROM stories");
+            while (rs.next()) {
+                StoryNode node = new StoryNode(rs);
+                nodes.put(node.id, node);
+            }
+        } finally {
+            statement.close();
+        }
+        for (StoryNode node : nodes.values()) {
+            if (node.parentId != null && node.parentId != node.id) {
+                List<StoryNode> siblings = children.get(node.parentId);
+                if (siblings == null) {
+                    siblings = new ArrayList<StoryNode>();
+                    children.put(node.parentId, siblings);
+                }
+                siblings.add(node);
+            }
+        }
+        Map<Integer, Long> spentMinutes = sumByStory(connection,
+                "SELECT story_id, SUM(minutesSpent) FROM hourentries WHERE story_id IS NOT NULL GROUP BY story_id");
+        Map<Integer, Long> taskSpentMinutes = sumByStory(connection,
+                "SELECT t.story_id, SUM(he.minutesSpent) FROM hourentries he JOIN tasks t ON t.id = he.task_id"
+                + " WHERE t.story_id IS NOT NULL GROUP BY t.story_id");
+        Map<Integer, Long> effortLeft = sumByStory(connection,
+                "SELECT story_id, SUM(effortleft) FROM tasks WHERE story_id IS NOT NULL GROUP BY story_id");
+
+        Map<Integer, StoryTreeBranchMetrics> metrics = new HashMap<Integer, StoryTreeBranchMetrics>();
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO story_tree_metrics (story_id, " + METRICS_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        try {
+            for (StoryNode node : nodes.values()) {
+                calculate(node, children, spentMinutes, taskSpentMinutes,
+                        effortLeft, metrics, new HashSet<Integer>());
+            }
+            for (Map.Entry<Integer, StoryTreeBranchMetrics> entry : metrics.entrySet()) {
+                setRowValues(insert, 1, entry.getKey(), entry.getValue());
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static StoryTreeBranchMetrics calculate(StoryNode node,
+            Map<Integer, List<StoryNode>> children,
+            Map<Integer, Long> spentMinutes, Map<Integer, Long> taskSpentMinutes,
+            Map<Integer, Long> effortLeft,
+            Map<Integer, StoryTreeBranchMetrics> calculated, Set<Integer> path) {
+        StoryTreeBranchMetrics metrics = calculated.get(node.id);
+        if (metrics != null) {
+            return metrics;
+        }
+        metrics = new StoryTreeBranchMetrics();
+        List<StoryNode> nodeChildren = children.get(node.id);
+        // A broken tree with a cycle is cut where the cycle closes
+        path.add(node.id);
+        if (nodeChildren == null) {
+            metrics.addLeafPoints(node.storyPoints, node.state);
+        } else {
+            for (StoryNode child : nodeChildren) {
+                if (!path.contains(child.id)) {
+                    metrics.addChild(calculate(child, children, spentMinutes,
+                            taskSpentMinutes, effortLeft, calculated, path), child.state);
+                }
+            }
+        }
+        path.remove(node.id);
+        metrics.spentEffort += toHours(getSum(spentMinutes, node.id)
+                + getSum(taskSpentMinutes, node.id));
+        metrics.effortLeft += toHours(getSum(effortLeft, node.id));
+        metrics.applyStoryPoints(node.storyPoints, node.state);
+        calculated.put(node.id, metrics);
+        return metrics;
+    }
+
+    private static StoryTreeBranchMetrics calculate(Connection connection,
+            StoryNode node, Set<Integer> path) throws SQLException {
+        StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
+        boolean hasChildren = false;
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT s.id, s.parent_id, s.storyPoints, s.state, m.story_id, m.leafPoints, m.doneLeafPoints,"
+                + " m.estimatedPoints, m.estimatedDonePoints, m.spentEffort, m.effortLeft"
+                + " FROM stories s LEFT JOIN story_tree_metrics m ON m.story_id = s.id"
+                + " WHERE s.parent_id = ? AND s.id <> ?");
+        List<StoryNode> uncalculated = new ArrayList<StoryNode>();
+        try {
+            statement.setInt(1, node.id);
+            statement.setInt(2, node.id);
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                hasChildren = true;
+                StoryNode child = new StoryNode(rs);
+                rs.getInt("story_id");
+                if (rs.wasNull()) {
+                    uncalculated.add(child);
+                } else {
+                    metrics.addChild(readMetrics(rs), child.state);
+                }
+            }
+        } finally {
+            statement.close();
+        }
+        path.add(node.id);
+        for (StoryNode child : uncalculated) {
+            if (!path.contains(child.id)) {
+                StoryTreeBranchMetrics childMetrics = calculate(connection, child, path);
+                storeRow(connection, child.id, childMetrics);
+                metrics.addChild(childMetrics, child.state);
+            }
+        }
+        path.remove(node.id);
+        if (!hasChildren) {
+            metrics.addLeafPoints(node.storyPoints, node.state);
+        }
+        metrics.spentEffort += toHours(sumForStory(connection,
+                "SELECT SUM(minutesSpent) FROM hourentries WHERE story_id = ?", node.id)
+                + sumForStory(connection,
+                "SELECT SUM(he.minutesSpent) FROM hourentries he JOIN tasks t ON t.id = he.task_id WHERE t.story_id = ?", node.id));
+        metrics.effortLeft += toHours(sumForStory(connection,
+                "SELECT SUM(effortleft) FROM tasks WHERE story_id = ?", node.id));
+        metrics.applyStoryPoints(node.storyPoints, node.state);
+        return metrics;
+    }
+
+    private static List<StoryNode> retrieveNodes(Connection connection,
+            Collection<Integer> ids) throws SQLException {
+        List<StoryNode> nodes = new ArrayList<StoryNode>();
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT id, parent_id, storyPoints, state FROM stories WHERE id IN ("
+                + placeholders(ids.size()) + ")");
+        try {
+            int index = 1;
+            for (Integer id : ids) {
+                statement.setInt(index++, id);
+            }
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                nodes.add(new StoryNode(rs));
+            }
+        } finally {
+            statement.close();
+        }
+        return nodes;
+    }
+
+    private static Set<Integer> retrieveTaskStoryIds(Connection connection,
+            Collection<Integer> taskIds) throws SQLException {
+        Set<Integer> storyIds = new HashSet<Integer>();
+        PreparedStatement statement = connection.prepareStatement(
+                "SELECT story_id FROM tasks WHERE story_id IS NOT NULL AND id IN ("
+                + placeholders(taskIds.size()) + ")");
+        try {
+            int index = 1;
+            for (Integer id : taskIds) {
+                statement.setInt(index++, id);
+            }
+            ResultSet rs = statement.executeQuery();
+            while (rs.next()) {
+                storyIds.add(rs.getInt(1));
+            }
+        } finally {
+            statement.close();
+        }
+        return storyIds;
+    }
+
+    private static int depth(StoryNode node, Map<Integer, StoryNode> nodes) {
+        Set<Integer> visited = new HashSet<Integer>();
+        int depth = 0;
+        for (StoryNode current = node; current != null && visited.add(current.id);
+                current = (current.parentId == null) ? null : nodes.get(current.parentId)) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private static void storeRow(Connection connection, int storyId,
+            StoryTreeBranchMetrics metrics) throws SQLException {
+        PreparedStatement update = connection.prepareStatement(
+                "UPDATE story_tree_metrics SET leafPoints = ?, doneLeafPoints = ?, estimatedPoints = ?,"
+                + " estimatedDonePoints = ?, spentEffort = ?, effortLeft = ? WHERE story_id = ?");
+        try {
+            int index = setMetrics(update, 1, metrics);
+            update.setInt(index, storyId);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        } finally {
+            update.close();
+        }
+        PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO story_tree_metrics (story_id, " + METRICS_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        try {
+            setRowValues(insert, 1, storyId, metrics);
+            insert.executeUpdate();
+        } finally {
+            insert.close();
+        }
+    }
+
+    private static void deleteRows(Connection connection,
+            Collection<Integer> storyIds) throws SQLException {
+        if (storyIds.isEmpty()) {
+            return;
+        }
+        PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM story_tree_metrics WHERE story_id IN ("
+                + placeholders(storyIds.size()) + ")");
+        try {
+            int index = 1;
+            for (Integer id : storyIds) {
+                statement.setInt(index++, id);
+            }
+            statement.executeUpdate();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void setRowValues(PreparedStatement statement, int index,
+            int storyId, StoryTreeBranchMetrics metrics) throws SQLException {
+        statement.setInt(index, storyId);
+        setMetrics(statement, index + 1, metrics);
+    }
+
+    private static int setMetrics(PreparedStatement statement, int index,
+            StoryTreeBranchMetrics metrics) throws SQLException {
+        statement.setLong(index++, metrics.leafPoints);
+        statement.setLong(index++, metrics.doneLeafPoints);
+        statement.setLong(index++, metrics.estimatedPoints);
+        statement.setLong(index++, metrics.estimatedDonePoints);
+        statement.setLong(index++, metrics.spentEffort);
+        statement.setLong(index++, metrics.effortLeft);
+        return index;
+    }
+
+    private static StoryTreeBranchMetrics readMetrics(ResultSet rs)
+            throws SQLException {
+        StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
+        metrics.leafPoints = rs.getLong("leafPoints");
+        metrics.doneLeafPoints = rs.getLong("doneLeafPoints");
+        metrics.estimatedPoints = rs.getLong("estimatedPoints");
+        metrics.estimatedDonePoints = rs.getLong("estimatedDonePoints");
+        metrics.spentEffort = rs.getLong("spentEffort");
+        metrics.effortLeft = rs.getLong("effortLeft");
+        return metrics;
+    }
+
+    private static long sumForStory(Connection connection, String sql,
+            int storyId) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        try {
+            statement.setInt(1, storyId);
+            ResultSet rs = statement.executeQuery();
+            return rs.next() ? rs.getLong(1) : 0;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static Map<Integer, Long> sumByStory(Connection connection,
+            String sql) throws SQLException {
+        Map<Integer, Long> sums = new HashMap<Integer, Long>();
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet rs = statement.executeQuery(sql);
+            while (rs.next()) {
+                sums.put(rs.getInt(1), rs.getLong(2));
+            }
+        } finally {
+            statement.close();
+        }
+        return sums;
+    }
+
+    private static long getSum(Map<Integer, Long> sums, int storyId) {
+        Long sum = sums.get(storyId);
+        return (sum == null) ? 0 : sum;
+    }
+
+    private static long toHours(long minutes) {
+        return Math.round(minutes / 60.0);
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sql.append((i == 0) ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,58 @@
+package fi.hut.soberit.agilefant.db.hibernate;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.jdbc.Work;
+import org.springframework.stereotype.Repository;
+
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
+import fi.hut.soberit.agilefant.model.StoryTreeMetrics;
+import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
+
+@Repository("storyTreeMetricsDAO")
+public class StoryTreeMetricsDAOHibernate extends
+        GenericDAOHibernate<StoryTreeMetrics> implements StoryTreeMetricsDAO {
+
+    public StoryTreeMetricsDAOHibernate() {
+        super(StoryTreeMetrics.class);
+    }
+
+    public Map<Integer, StoryTreeBranchMetrics> getBranchMetrics(
+            Collection<Integer> storyIds) {
+        Map<Integer, StoryTreeBranchMetrics> metrics = new HashMap<Integer, StoryTreeBranchMetrics>();
+        for (StoryTreeMetrics row : this.getMultiple(storyIds)) {
+            metrics.put(row.getId(), row.toBranchMetrics());
+        }
+        return metrics;
+    }
+
+    public void updateBranches(Collection<Integer> storyIds,
+            Collection<Integer> taskIds) {
+        if (storyIds.isEmpty() && taskIds.isEmpty()) {
+            return;
+        }
+        final List<Integer> stories = new ArrayList<Integer>(storyIds);
+        final List<Integer> tasks = new ArrayList<Integer>(taskIds);
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                StoryTreeMetricsCalculator.updateBranches(connection, stories, tasks);
+            }
+        });
+    }
+
+    public void rebuild() {
+        this.getCurrentSession().flush();
+        this.getCurrentSession().doWork(new Work() {
+            public void execute(Connection connection) throws SQLException {
+                StoryTreeMetricsCalculator.rebuild(connection);
+            }
+        });
+    }
+
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -20,6 +21,8 @@ import org.hibernate.criterion.Restrictions;
 import org.joda.time.Interval;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Predicate;
+
 import fi.hut.soberit.agilefant.business.SearchBusiness;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.model.ExactEstimate;
@@ -30,6 +33,7 @@ import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskState;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.UnassignedLoadTO;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @Repository("taskDAO")
 public class TaskDAOHibernate extends GenericDAOHibernate<Task> implements
@@ -130,6 +134,62 @@ public class TaskDAOHibernate extends GenericDAOHibernate<Task> implements
 
         return tasks;
     }
+
+    @SuppressWarnings("unchecked")
+    public List<Integer> retrieveAssignedTaskIdsWithoutStory(int userId, Interval interval) {
+        Query query = getCurrentSession().createQuery(
+                "SELECT task.id FROM Task task"
+                + " JOIN task.responsibles responsible"
+                + " JOIN task.iteration iteration"
+                + " WHERE responsible.id = :userId"
+                + " AND task.story IS NULL"
+                + " AND task.state <> :taskDone"
+                + " AND (iteration.startDate <= :end OR iteration.endDate BETWEEN :start AND :end)"
+                + " ORDER BY task.id");
+        query.setParameter("userId", userId);
+        query.setParameter("start", interval.getStart());
+        query.setParameter("end", interval.getEnd());
+        query.setParameter("taskDone", TaskState.DONE);
+        return query.list();
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<Integer> retrieveResponsibleIds(Collection<Integer> taskIds) {
+        if (taskIds.isEmpty()) {
+            return new HashSet<Integer>();
+        }
+        Query query = getCurrentSession().createQuery(
+                "SELECT DISTINCT responsible.id FROM Task task"
+                + " JOIN task.responsibles responsible"
+                + " WHERE task.id IN (:taskIds)");
+        query.setParameterList("taskIds", taskIds);
+        return new HashSet<Integer>(query.list());
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<Integer> retrieveResponsibleIdsByIterations(
+            Collection<Integer> iterationIds) {
+        Set<Integer> userIds = new HashSet<Integer>();
+        if (iterationIds.isEmpty()) {
+            return userIds;
+        }
+        Query query = getCurrentSession().createQuery(
+                "SELECT DISTINCT responsible.id FROM Task task"
+                + " JOIN task.responsibles responsible"
+                + " LEFT JOIN task.story story"
+                + " WHERE task.iteration.id IN (:iterationIds)"
+                + " OR story.iteration.id IN (:iterationIds)");
+        query.setParameterList("iterationIds", iterationIds);
+        userIds.addAll(query.list());
+
+        query = getCurrentSession().createQuery(
+                "SELECT DISTINCT responsible.id FROM Story story"
+                + " JOIN story.responsibles responsible"
+                + " WHERE story.iteration.id IN (:iterationIds)");
+        query.setParameterList("iterationIds", iterationIds);
+        userIds.addAll(query.list());
+        return userIds;
+    }
     
     public List<Task> getAllTasks(User user, Interval interval) {
         List<Task> tasks = new ArrayList<Task>();
@@ -248,13 +308,153 @@ public class TaskDAOHibernate extends GenericDAOHibernate<Task> implements
         return result;
     }
     
+    public Map<Integer, List<Task>> getTasksWithEffortLeftByResponsibles(
+            Collection<Integer> userIds, Interval interval) {
+        Map<Integer, List<Task>> result = new HashMap<Integer, List<Task>>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        Criteria crit = this.createCriteria(Task.class);
+        crit.createAlias("responsibles", "responsible");
+        crit.add(Restrictions.in("responsible.id", userIds));
+        Criteria iteration = crit.createCriteria("iteration");
+        iteration.setFetchMode("parent", FetchMode.SELECT);
+        IterationDAOHelpers.addIterationIntervalStartLimit(iteration, interval);
+        crit.add(Restrictions.isNull("story"));
+        crit.add(Restrictions.gt("effortLeft", ExactEstimate.ZERO));
+        crit.setFetchMode("creator", FetchMode.SELECT);
+        addTasksByUser(result, crit, "responsible");
+
+        crit = this.createCriteria(Task.class);
+        crit.createAlias("responsibles", "responsible");
+        crit.add(Restrictions.in("responsible.id", userIds));
+        iteration = crit.createCriteria("story").createCriteria("iteration");
+        iteration.setFetchMode("parent", FetchMode.SELECT);
+        IterationDAOHelpers.addIterationIntervalStartLimit(iteration, interval);
+        crit.add(Restrictions.gt("effortLeft", ExactEstimate.ZERO));
+        crit.setFetchMode("creator", FetchMode.SELECT);
+        addTasksByUser(result, crit, "responsible");
+        return result;
+    }
+
+    public Map<Integer, List<Task>> getStoryAssignedTasksWithEffortLeftByResponsibles(
+            Collection<Integer> userIds, Interval interval) {
+        Map<Integer, List<Task>> result = new HashMap<Integer, List<Task>>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        Criteria crit = this.createCriteria(Task.class);
+        crit.add(Restrictions.isEmpty("responsibles"));
+        Criteria story = crit.createCriteria("story");
+        story.createAlias("responsibles", "responsible");
+        story.add(Restrictions.in("responsible.id", userIds));
+        IterationDAOHelpers.addIterationIntervalStartLimit(story.createCriteria("iteration"), interval);
+        crit.setFetchMode("creator", FetchMode.SELECT);
+        addTasksByUser(result, crit, "responsible");
+        return result;
+    }
+
+    private void addTasksByUser(Map<Integer, List<Task>> tasksByUser,
+            Criteria crit, String userAlias) {
+        crit.setResultTransformer(Criteria.ALIAS_TO_ENTITY_MAP);
+        List<Map<String, Object>> rows = asList(crit);
+        for (Map<String, Object> row : rows) {
+            int userId = ((User) row.get(userAlias)).getId();
+            List<Task> tasks = tasksByUser.get(userId);
+            if (tasks == null) {
+                tasks = new ArrayList<Task>();
+                tasksByUser.put(userId, tasks);
+            }
+            tasks.add((Task) row.get(Criteria.ROOT_ALIAS));
+        }
+    }
+
+    public Map<Integer, List<UnassignedLoadTO>> getUnassignedTasksWithEffortLeftByAssignees(
+            Collection<Integer> userIds, Interval interval) {
+        Map<Integer, List<UnassignedLoadTO>> result = new HashMap<Integer, List<UnassignedLoadTO>>();
+        if (userIds == null || userIds.isEmpty()) {
+            return result;
+        }
+        Criteria iteration = this.createCriteria(Iteration.class, "iter");
+        iteration.createAlias("assignments", "assigments");
+        iteration.add(Restrictions.in("assigments.user.id", userIds));
+        IterationDAOHelpers.addIterationIntervalStartLimit(iteration, interval);
+        Criteria tasks = iteration.createCriteria("tasks", "task");
+        tasks.add(Restrictions.isEmpty("responsibles"));
+        tasks.add(Restrictions.isNull("story"));
+        addUnassignedLoadByUser(result, iteration);
+
+        iteration = this.createCriteria(Iteration.class, "iter");
+        iteration.createAlias("assignments", "assigments");
+        iteration.add(Restrictions.in("assigments.user.id", userIds));
+        IterationDAOHelpers.addIterationIntervalStartLimit(iteration, interval);
+        Criteria stories = iteration.createCriteria("assignedStories");
+        stories.add(Restrictions.isEmpty("responsibles"));
+        tasks = stories.createCriteria("tasks", "task");
+        tasks.add(Restrictions.isEmpty("responsibles"));
+        tasks.add(Restrictions.isNotNull("effortLeft"));
+        addUnassignedLoadByUser(result, iteration);
+        return result;
+    }
+
+    private void addUnassignedLoadByUser(
+            Map<Integer, List<UnassignedLoadTO>> loadByUser, Criteria iteration) {
+        ProjectionList effortLeftSum = Projections.projectionList();
+        effortLeftSum.add(Projections.sum("task.effortLeft"));
+        effortLeftSum.add(Projections.groupProperty("iter.id"));
+        effortLeftSum.add(Projections.groupProperty("assigments.availability"));
+        effortLeftSum.add(Projections.groupProperty("assigments.user.id"));
+        iteration.setProjection(effortLeftSum);
+
+        List<Object[]> data = asList(iteration);
+        for (Object[] rowData : data) {
+            long effortLeft = 0l;
+            if (rowData[0] != null) {
+                effortLeft = (Long) rowData[0];
+            }
+            UnassignedLoadTO row = new UnassignedLoadTO(new ExactEstimate(
+                    effortLeft), (Integer) rowData[1], (Integer) rowData[2]);
+            int userId = (Integer) rowData[3];
+            List<UnassignedLoadTO> rows = loadByUser.get(userId);
+            if (rows == null) {
+                rows = new ArrayList<UnassignedLoadTO>();
+                loadByUser.put(userId, rows);
+            }
+            rows.add(row);
+        }
+    }
+
     /** {@inheritDoc} */
-    public Collection<Task> getTasksWithRankBetween(int lower, int upper,
-            Iteration parentIteration, Story parentStory) {
-        Criteria task = this.createCriteria(Task.class);
-        addParentRestriction(task, parentIteration, parentStory);
-        task.add(Restrictions.between("rank", lower, upper));
-        return asList(task);
+    public void shiftRanksBetween(int lower, int upper, int amount,
+            final Iteration parentIteration, final Story parentStory) {
+        String hql = "UPDATE Task task SET task.rank = task.rank + :amount "
+                + "WHERE task.rank BETWEEN :lower AND :upper";
+        if (parentIteration != null) {
+            hql += " AND task.iteration.id = :parentId";
+        } else if (parentStory != null) {
+            hql += " AND task.story.id = :parentId";
+        }
+        Query query = getCurrentSession().createQuery(hql);
+        query.setInteger("amount", amount);
+        query.setInteger("lower", lower);
+        query.setInteger("upper", upper);
+        if (parentIteration != null) {
+            query.setInteger("parentId", parentIteration.getId());
+        } else if (parentStory != null) {
+            query.setInteger("parentId", parentStory.getId());
+        }
+        executeRankShift(query, lower, upper, new Predicate<Task>() {
+            public boolean apply(Task task) {
+                if (parentIteration != null) {
+                    return task.getIteration() != null
+                            && task.getIteration().getId() == parentIteration.getId();
+                } else if (parentStory != null) {
+                    return task.getStory() != null
+                            && task.getStory().getId() == parentStory.getId();
+                }
+                return true;
+            }
+        });
     }
     
     /** {@inheritDoc} */
@@ -307,4 +507,9 @@ public class TaskDAOHibernate extends GenericDAOHibernate<Task> implements
         crit.setMaxResults(SearchBusiness.MAX_RESULTS_PER_TYPE);
         return asList(crit);
     }
+
+    public List<Triple<Integer, String, String>> retrieveSearchIndexData(
+            int afterId, int maxResults) {
+        return retrieveNamedObjectData(Task.class, afterId, maxResults);
+    }
 }
@@ -1,11 +1,21 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.hibernate.Criteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.db.TeamDAO;
 import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
 
 @Repository("teamDAO")
 public class TeamDAOHibernate extends GenericDAOHibernate<Team> implements
@@ -22,4 +32,42 @@ public class TeamDAOHibernate extends GenericDAOHibernate<Team> implements
         return firstResult(crit);
     }
 
+    /** {@inheritDoc} */
+    public List<AutocompleteCatalog.TeamEntry> retrieveAutocompleteEntries() {
+        Criteria crit = this.createCriteria(Team.class);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("name")));
+        crit.addOrder(Order.asc("id"));
+        Map<Integer, String> names = new LinkedHashMap<Integer, String>();
+        List<Object[]> rows = asList(crit);
+        for (Object[] row : rows) {
+            names.put((Integer) row[0], (String) row[1]);
+        }
+
+        crit = this.createCriteria(Team.class);
+        crit.createAlias("users", "user");
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("user.id")));
+        Map<Integer, Set<Integer>> userIds = new LinkedHashMap<Integer, Set<Integer>>();
+        rows = asList(crit);
+        for (Object[] row : rows) {
+            Set<Integer> members = userIds.get(row[0]);
+            if (members == null) {
+                members = new HashSet<Integer>();
+                userIds.put((Integer) row[0], members);
+            }
+            members.add((Integer) row[1]);
+        }
+
+        List<AutocompleteCatalog.TeamEntry> entries = new ArrayList<AutocompleteCatalog.TeamEntry>();
+        for (Map.Entry<Integer, String> team : names.entrySet()) {
+            Set<Integer> members = userIds.get(team.getKey());
+            entries.add(new AutocompleteCatalog.TeamEntry(team.getKey(),
+                    team.getValue(), (members == null) ? new HashSet<Integer>() : members));
+        }
+        return entries;
+    }
+
 }
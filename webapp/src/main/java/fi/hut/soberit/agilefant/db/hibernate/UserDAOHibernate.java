@@ -1,14 +1,18 @@
 package fi.hut.soberit.agilefant.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.hibernate.Criteria;
 import org.hibernate.criterion.MatchMode;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
 import fi.hut.soberit.agilefant.db.UserDAO;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
 
 /**
  * Hibernate implementation of UserDAO interface using GenericDAOHibernate.
@@ -50,4 +54,24 @@ public class UserDAOHibernate extends GenericDAOHibernate<User> implements
         return asList(crit);
     }
 
+    /** {@inheritDoc} */
+    public List<AutocompleteCatalog.UserEntry> retrieveAutocompleteEntries() {
+        Criteria crit = this.createCriteria(User.class);
+        crit.setProjection(Projections.projectionList()
+                .add(Projections.id())
+                .add(Projections.property("fullName"))
+                .add(Projections.property("loginName"))
+                .add(Projections.property("enabled"))
+                .add(Projections.property("admin")));
+        crit.addOrder(Order.asc("id"));
+        List<AutocompleteCatalog.UserEntry> entries = new ArrayList<AutocompleteCatalog.UserEntry>();
+        List<Object[]> rows = asList(crit);
+        for (Object[] row : rows) {
+            entries.add(new AutocompleteCatalog.UserEntry((Integer) row[0],
+                    (String) row[1], (String) row[2], (Boolean) row[3],
+                    (Boolean) row[4]));
+        }
+        return entries;
+    }
+
 }
@@ -13,6 +13,8 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Predicate;
+
 import fi.hut.soberit.agilefant.db.WhatsNextEntryDAO;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskState;
@@ -46,13 +48,20 @@ WhatsNextEntryDAO {
         return uniqueResult(entry);
     }
 
-    public Collection<WhatsNextEntry> getTasksWithRankBetween(int lower, int upper, User user) {
-        Criteria entry = this.createCriteria(WhatsNextEntry.class);
-        entry.add(Restrictions.eq("user", user));
-        entry.add(Restrictions.between("rank", lower, upper));
-        entry.setFetchMode("user", FetchMode.SELECT);
-        entry.setFetchMode("task", FetchMode.JOIN);
-        return asList(entry);
+    public void shiftRanksBetween(int lower, int upper, int amount, final User user) {
+        Query query = getCurrentSession().createQuery(
+                "UPDATE WhatsNextEntry entry SET entry.rank = entry.rank + :amount "
+                + "WHERE entry.user.id = :userId AND entry.rank BETWEEN :lower AND :upper");
+        query.setInteger("amount", amount);
+        query.setInteger("userId", user.getId());
+        query.setInteger("lower", lower);
+        query.setInteger("upper", upper);
+        executeRankShift(query, lower, upper, new Predicate<WhatsNextEntry>() {
+            public boolean apply(WhatsNextEntry entry) {
+                return entry.getUser() != null
+                        && entry.getUser().getId() == user.getId();
+            }
+        });
     }
 
     public WhatsNextEntry getWhatsNextEntryFor(User user, Task task) {
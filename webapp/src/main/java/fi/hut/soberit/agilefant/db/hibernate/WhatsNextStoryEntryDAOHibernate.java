@@ -13,6 +13,8 @@ import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Predicate;
+
 import fi.hut.soberit.agilefant.db.WhatsNextStoryEntryDAO;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryState;
@@ -46,13 +48,20 @@ WhatsNextStoryEntryDAO {
         return uniqueResult(entry);
     }
 
-    public Collection<WhatsNextStoryEntry> getStoriesWithRankBetween(int lower, int upper, User user) {
-        Criteria entry = this.createCriteria(WhatsNextStoryEntry.class);
-        entry.add(Restrictions.eq("user", user));
-        entry.add(Restrictions.between("rank", lower, upper));
-        entry.setFetchMode("user", FetchMode.SELECT);
-        entry.setFetchMode("story", FetchMode.JOIN);
-        return asList(entry);
+    public void shiftRanksBetween(int lower, int upper, int amount, final User user) {
+        Query query = getCurrentSession().createQuery(
+                "UPDATE WhatsNextStoryEntry entry SET entry.rank = entry.rank + :amount "
+                + "WHERE entry.user.id = :userId AND entry.rank BETWEEN :lower AND :upper");
+        query.setInteger("amount", amount);
+        query.setInteger("userId", user.getId());
+        query.setInteger("lower", lower);
+        query.setInteger("upper", upper);
+        executeRankShift(query, lower, upper, new Predicate<WhatsNextStoryEntry>() {
+            public boolean apply(WhatsNextStoryEntry entry) {
+                return entry.getUser() != null
+                        && entry.getUser().getId() == user.getId();
+            }
+        });
     }
 
     public WhatsNextStoryEntry getWhatsNextStoryEntryFor(User user, Story story) {
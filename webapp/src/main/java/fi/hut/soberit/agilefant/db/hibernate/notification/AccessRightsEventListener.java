@@ -0,0 +1,102 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.AuthorizationBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Hibernate listener which discards the cached access rights of
+ * {@link AuthorizationBusiness} when the teams, their members, products or
+ * iterations, or the backlog hierarchy change.
+ */
+public class AccessRightsEventListener implements PostUpdateEventListener,
+        PostDeleteEventListener, PostCollectionRecreateEventListener,
+        PostCollectionUpdateEventListener, PostCollectionRemoveEventListener {
+
+    private static final Set<String> ACCESS_COLLECTION_ROLES = new HashSet<String>(Arrays.asList(
+            Team.class.getName() + ".users",
+            Team.class.getName() + ".products",
+            Team.class.getName() + ".iterations",
+            User.class.getName() + ".teams",
+            Product.class.getName() + ".teams",
+            Iteration.class.getName() + ".teams"));
+
+    private AuthorizationBusiness authorizationBusiness;
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Team
+                || entity instanceof Backlog && isDirty(event, "parent")
+                || entity instanceof User && isDirty(event, "admin")) {
+            accessRightsChanged();
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Team || entity instanceof Backlog || entity instanceof User) {
+            accessRightsChanged();
+        }
+    }
+
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private void handleCollectionEvent(AbstractCollectionEvent event) {
+        if (ACCESS_COLLECTION_ROLES.contains(event.getCollection().getRole())) {
+            accessRightsChanged();
+        }
+    }
+
+    private boolean isDirty(PostUpdateEvent event, String propertyName) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            if (propertyName.equals(propertyNames[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void accessRightsChanged() {
+        if (authorizationBusiness == null) {
+            authorizationBusiness = ApplicationContextHolder.getBean(AuthorizationBusiness.class);
+        }
+        authorizationBusiness.accessRightsChanged();
+    }
+}
@@ -0,0 +1,91 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.AutocompleteBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Hibernate listener which reloads the autocomplete catalog of
+ * {@link AutocompleteBusiness} when users, teams or their members change.
+ * Backlog changes are covered by the version of the backlog menu tree.
+ */
+public class AutocompleteEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final Set<String> MEMBER_COLLECTION_ROLES = new HashSet<String>(Arrays.asList(
+            Team.class.getName() + ".users",
+            User.class.getName() + ".teams"));
+
+    private AutocompleteBusiness autocompleteBusiness;
+
+    public void onPostInsert(PostInsertEvent event) {
+        handleEntityEvent(event.getEntity());
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        handleEntityEvent(event.getEntity());
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        handleEntityEvent(event.getEntity());
+    }
+
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private void handleEntityEvent(Object entity) {
+        if (entity instanceof User || entity instanceof Team) {
+            autocompleteDataChanged();
+        }
+    }
+
+    private void handleCollectionEvent(AbstractCollectionEvent event) {
+        if (MEMBER_COLLECTION_ROLES.contains(event.getCollection().getRole())) {
+            autocompleteDataChanged();
+        }
+    }
+
+    private void autocompleteDataChanged() {
+        if (BulkLoadContext.isActive()) {
+            // The catalog is reloaded after the bulk load instead
+            return;
+        }
+        if (autocompleteBusiness == null) {
+            autocompleteBusiness = ApplicationContextHolder.getBean(AutocompleteBusiness.class);
+        }
+        autocompleteBusiness.autocompleteDataChanged();
+    }
+}
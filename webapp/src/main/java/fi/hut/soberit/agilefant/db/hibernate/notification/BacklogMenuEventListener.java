@@ -0,0 +1,79 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.MenuBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Backlog;
+
+/**
+ * Hibernate listener which keeps the backlog menu of {@link MenuBusiness} up
+ * to date when backlogs are created, moved, renamed, rescheduled or deleted.
+ */
+public class BacklogMenuEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final Set<String> MENU_PROPERTIES = new HashSet<String>(Arrays.asList(
+            "name", "parent", "startDate", "endDate"));
+
+    private MenuBusiness menuBusiness;
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (isMenuBacklog(event.getEntity())) {
+            getMenuBusiness().backlogStored((Backlog) event.getEntity());
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (isMenuBacklog(event.getEntity()) && isMenuDataDirty(event)) {
+            getMenuBusiness().backlogStored((Backlog) event.getEntity());
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (isMenuBacklog(event.getEntity())) {
+            getMenuBusiness().backlogDeleted((Backlog) event.getEntity());
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private boolean isMenuBacklog(Object entity) {
+        if (BulkLoadContext.isActive()) {
+            // The menu is reloaded after the bulk load instead
+            return false;
+        }
+        return entity instanceof Backlog;
+    }
+
+    private boolean isMenuDataDirty(PostUpdateEvent event) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            if (MENU_PROPERTIES.contains(propertyNames[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private MenuBusiness getMenuBusiness() {
+        if (menuBusiness == null) {
+            menuBusiness = ApplicationContextHolder.getBean(MenuBusiness.class);
+        }
+        return menuBusiness;
+    }
+}
@@ -0,0 +1,97 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.BacklogVersionBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+
+/**
+ * Hibernate listener which bumps the change versions of
+ * {@link BacklogVersionBusiness} when an iteration, or the stories or tasks
+ * in it change. When a story or task is moved, the versions of both the old
+ * and the new iteration are bumped.
+ */
+public class BacklogVersionEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private BacklogVersionBusiness backlogVersionBusiness;
+
+    public void onPostInsert(PostInsertEvent event) {
+        Set<Integer> iterationIds = new HashSet<Integer>();
+        addIterationIds(iterationIds, event.getEntity());
+        backlogsChanged(iterationIds);
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        Set<Integer> iterationIds = new HashSet<Integer>();
+        if (entity instanceof Iteration) {
+            iterationIds.add(((Iteration) entity).getId());
+        }
+        addIterationIds(iterationIds, entity);
+        if ((entity instanceof Story || entity instanceof Task)
+                && event.getOldState() != null) {
+            String[] propertyNames = event.getPersister().getPropertyNames();
+            Object[] oldState = event.getOldState();
+            for (int i = 0; i < propertyNames.length; i++) {
+                if ("iteration".equals(propertyNames[i])) {
+                    addIterationId(iterationIds, oldState[i]);
+                } else if ("story".equals(propertyNames[i])
+                        && oldState[i] instanceof Story) {
+                    addIterationId(iterationIds, ((Story) oldState[i]).getIteration());
+                }
+            }
+        }
+        backlogsChanged(iterationIds);
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        Set<Integer> iterationIds = new HashSet<Integer>();
+        addIterationIds(iterationIds, event.getEntity());
+        backlogsChanged(iterationIds);
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private void addIterationIds(Set<Integer> iterationIds, Object entity) {
+        if (entity instanceof Story) {
+            addIterationId(iterationIds, ((Story) entity).getIteration());
+        } else if (entity instanceof Task) {
+            Task task = (Task) entity;
+            addIterationId(iterationIds, task.getIteration());
+            if (task.getStory() != null) {
+                addIterationId(iterationIds, task.getStory().getIteration());
+            }
+        }
+    }
+
+    private void addIterationId(Set<Integer> iterationIds, Object iteration) {
+        if (iteration instanceof Iteration) {
+            iterationIds.add(((Iteration) iteration).getId());
+        }
+    }
+
+    private void backlogsChanged(Set<Integer> iterationIds) {
+        if (iterationIds.isEmpty() || BulkLoadContext.isActive()) {
+            return;
+        }
+        if (backlogVersionBusiness == null) {
+            backlogVersionBusiness = ApplicationContextHolder.getBean(BacklogVersionBusiness.class);
+        }
+        for (Integer iterationId : iterationIds) {
+            backlogVersionBusiness.backlogChanged(iterationId);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.joda.time.DateTime;
+
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.DailyEffortSumDAO;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.HourEntry;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Hibernate listener which keeps the daily spent effort sums of
+ * {@link DailyEffortSumDAO} up to date when hour entries are created, changed
+ * or deleted. An update subtracts the old state of the entry and adds the
+ * new one.
+ */
+public class DailyEffortSumEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private DailyEffortSumDAO dailyEffortSumDAO;
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof HourEntry) {
+            addMinutes(event.getPersister().getPropertyNames(), event.getState(), 1);
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof HourEntry && event.getOldState() != null) {
+            String[] propertyNames = event.getPersister().getPropertyNames();
+            addMinutes(propertyNames, event.getOldState(), -1);
+            addMinutes(propertyNames, event.getState(), 1);
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof HourEntry) {
+            addMinutes(event.getPersister().getPropertyNames(), event.getDeletedState(), -1);
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private void addMinutes(String[] propertyNames, Object[] state, int sign) {
+        if (state == null || BulkLoadContext.isActive()) {
+            // The bulk load rebuilds the sums when it is done
+            return;
+        }
+        DateTime date = null;
+        long minutesSpent = 0;
+        User user = null;
+        Integer backlogId = null;
+        Integer storyId = null;
+        Integer taskId = null;
+        for (int i = 0; i < propertyNames.length; i++) {
+            Object value = state[i];
+            if ("date".equals(propertyNames[i])) {
+                date = (DateTime) value;
+            } else if ("minutesSpent".equals(propertyNames[i])) {
+                minutesSpent = (Long) value;
+            } else if ("user".equals(propertyNames[i])) {
+                user = (User) value;
+            } else if (value instanceof Backlog) {
+                backlogId = ((Backlog) value).getId();
+            } else if (value instanceof Story) {
+                storyId = ((Story) value).getId();
+            } else if (value instanceof Task) {
+                taskId = ((Task) value).getId();
+            }
+        }
+        if (date == null || user == null) {
+            return;
+        }
+        getDailyEffortSumDAO().addMinutes(user.getId(), backlogId, storyId,
+                taskId, date.toLocalDate(), sign * minutesSpent);
+    }
+
+    private DailyEffortSumDAO getDailyEffortSumDAO() {
+        if (dailyEffortSumDAO == null) {
+            dailyEffortSumDAO = ApplicationContextHolder.getBean(DailyEffortSumDAO.class);
+        }
+        return dailyEffortSumDAO;
+    }
+}
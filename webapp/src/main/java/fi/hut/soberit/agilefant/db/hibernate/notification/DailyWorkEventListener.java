@@ -0,0 +1,220 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.DailyWorkBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryRank;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Hibernate listener which discards the cached assigned work of
+ * {@link DailyWorkBusiness} when the tasks, stories, story ranks or the task
+ * and story assignees change.
+ * <p>
+ * The changed tasks and stories are collected while the session is flushed,
+ * and the work of their assignees is discarded once when the transaction is
+ * about to commit. Deleted tasks and stories, and renamed or rescheduled
+ * backlogs, discard the work of all users.
+ */
+public class DailyWorkEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final String[] STORY_PROPERTIES = { "backlog", "iteration", "state" };
+    private static final String[] TASK_PROPERTIES = { "story", "iteration", "state" };
+    private static final String[] BACKLOG_PROPERTIES = { "name", "startDate", "endDate" };
+
+    private static final String TASK_RESPONSIBLES_ROLE = Task.class.getName() + ".responsibles";
+    private static final String STORY_RESPONSIBLES_ROLE = Story.class.getName() + ".responsibles";
+
+    private static final ThreadLocal<AssignedWorkUpdate> PENDING = new ThreadLocal<AssignedWorkUpdate>();
+
+    private DailyWorkBusiness dailyWorkBusiness;
+
+    /**
+     * The assigned work changed in a single transaction.
+     */
+    private class AssignedWorkUpdate implements BeforeTransactionCompletionProcess {
+        private final EventSource session;
+        private final Set<Integer> storyIds = new HashSet<Integer>();
+        private final Set<Integer> taskIds = new HashSet<Integer>();
+        private final Set<Integer> userIds = new HashSet<Integer>();
+        private boolean all = false;
+        private boolean done = false;
+
+        private AssignedWorkUpdate(EventSource session) {
+            this.session = session;
+        }
+
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            done = true;
+            if (PENDING.get() == this) {
+                PENDING.remove();
+            }
+            if (all) {
+                getDailyWorkBusiness().allAssignedWorkChanged();
+            } else {
+                getDailyWorkBusiness().assignedWorkChanged(storyIds, taskIds, userIds);
+            }
+        }
+    }
+
+    public void onPostInsert(PostInsertEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Task || entity instanceof Story
+                || entity instanceof StoryRank) {
+            markChanged(event.getSession(), entity);
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Backlog) {
+            if (isDirty(event, BACKLOG_PROPERTIES)) {
+                markAllChanged(event.getSession());
+            }
+        } else if ((entity instanceof Task && isDirty(event, TASK_PROPERTIES))
+                || (entity instanceof Story && isDirty(event, STORY_PROPERTIES))
+                || entity instanceof StoryRank) {
+            markChanged(event.getSession(), entity);
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof StoryRank) {
+            markChanged(event.getSession(), entity);
+        } else if (entity instanceof Task || entity instanceof Story
+                || entity instanceof Backlog) {
+            // The assignees of deleted rows cannot be queried anymore
+            markAllChanged(event.getSession());
+        }
+    }
+
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private static boolean isDirty(PostUpdateEvent event, String[] tracked) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            for (String name : tracked) {
+                if (name.equals(propertyNames[index])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void handleCollectionEvent(AbstractCollectionEvent event) {
+        String role = event.getCollection().getRole();
+        if (!TASK_RESPONSIBLES_ROLE.equals(role)
+                && !STORY_RESPONSIBLES_ROLE.equals(role)) {
+            return;
+        }
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
+        AssignedWorkUpdate update = getAssignedWorkUpdate(event.getSession());
+        markChanged(update, event.getAffectedOwnerOrNull());
+        // The removed assignees are only found in the snapshot
+        Serializable snapshot = event.getCollection().getStoredSnapshot();
+        Collection<?> previous = null;
+        if (snapshot instanceof Map<?, ?>) {
+            previous = ((Map<?, ?>) snapshot).values();
+        } else if (snapshot instanceof Collection<?>) {
+            previous = (Collection<?>) snapshot;
+        }
+        if (previous != null) {
+            for (Object user : previous) {
+                if (user instanceof User) {
+                    update.userIds.add(((User) user).getId());
+                }
+            }
+        }
+    }
+
+    private void markChanged(EventSource session, Object entity) {
+        if (BulkLoadContext.isActive()) {
+            // The bulk load discards the cached work when it is done
+            return;
+        }
+        markChanged(getAssignedWorkUpdate(session), entity);
+    }
+
+    private static void markChanged(AssignedWorkUpdate update, Object entity) {
+        if (entity instanceof Task) {
+            update.taskIds.add(((Task) entity).getId());
+        } else if (entity instanceof Story) {
+            update.storyIds.add(((Story) entity).getId());
+        } else if (entity instanceof StoryRank) {
+            update.storyIds.add(((StoryRank) entity).getStory().getId());
+        }
+    }
+
+    private void markAllChanged(EventSource session) {
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
+        getAssignedWorkUpdate(session).all = true;
+    }
+
+    private AssignedWorkUpdate getAssignedWorkUpdate(EventSource session) {
+        AssignedWorkUpdate update = PENDING.get();
+        if (update == null || update.done || update.session != session) {
+            update = new AssignedWorkUpdate(session);
+            session.getActionQueue().registerProcess(update);
+            PENDING.set(update);
+        }
+        return update;
+    }
+
+    private DailyWorkBusiness getDailyWorkBusiness() {
+        if (dailyWorkBusiness == null) {
+            dailyWorkBusiness = ApplicationContextHolder.getBean(DailyWorkBusiness.class);
+        }
+        return dailyWorkBusiness;
+    }
+}
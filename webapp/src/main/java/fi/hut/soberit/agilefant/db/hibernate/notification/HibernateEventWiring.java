@@ -1,8 +1,13 @@
 package fi.hut.soberit.agilefant.db.hibernate.notification;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.annotation.PostConstruct;
 import org.hibernate.SessionFactory;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.envers.event.EnversListener;
+import org.hibernate.event.service.spi.EventListenerGroup;
 import org.hibernate.event.service.spi.EventListenerRegistry;
 import org.hibernate.event.spi.EventType;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +21,28 @@ public class HibernateEventWiring {
 
     private NotificationEventListener listener;
 
+    private AccessRightsEventListener accessRightsListener;
+
+    private SearchIndexEventListener searchIndexListener;
+
+    private PersonalLoadEventListener personalLoadListener;
+
+    private BacklogVersionEventListener backlogVersionListener;
+
+    private BacklogMenuEventListener backlogMenuListener;
+
+    private DailyEffortSumEventListener dailyEffortSumListener;
+
+    private StoryTreeMetricsEventListener storyTreeMetricsListener;
+
+    private StoryAncestorEventListener storyAncestorListener;
+
+    private AutocompleteEventListener autocompleteListener;
+
+    private DailyWorkEventListener dailyWorkListener;
+
+    private ProjectBurnupEventListener projectBurnupListener;
+
     @PostConstruct
     public void registerListeners() {
         listener = new NotificationEventListener();
@@ -24,5 +51,99 @@ public class HibernateEventWiring {
         registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(listener);
         registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(listener);
         registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(listener);
+
+        accessRightsListener = new AccessRightsEventListener();
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(accessRightsListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(accessRightsListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(accessRightsListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(accessRightsListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(accessRightsListener);
+
+        searchIndexListener = new SearchIndexEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(searchIndexListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(searchIndexListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(searchIndexListener);
+
+        personalLoadListener = new PersonalLoadEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(personalLoadListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(personalLoadListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(personalLoadListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(personalLoadListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(personalLoadListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(personalLoadListener);
+
+        backlogVersionListener = new BacklogVersionEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(backlogVersionListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(backlogVersionListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(backlogVersionListener);
+
+        backlogMenuListener = new BacklogMenuEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(backlogMenuListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(backlogMenuListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(backlogMenuListener);
+
+        dailyEffortSumListener = new DailyEffortSumEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(dailyEffortSumListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(dailyEffortSumListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(dailyEffortSumListener);
+
+        storyTreeMetricsListener = new StoryTreeMetricsEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(storyTreeMetricsListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(storyTreeMetricsListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(storyTreeMetricsListener);
+
+        storyAncestorListener = new StoryAncestorEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(storyAncestorListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(storyAncestorListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(storyAncestorListener);
+
+        autocompleteListener = new AutocompleteEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(autocompleteListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(autocompleteListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(autocompleteListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(autocompleteListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(autocompleteListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(autocompleteListener);
+
+        dailyWorkListener = new DailyWorkEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(dailyWorkListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(dailyWorkListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(dailyWorkListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE).appendListener(dailyWorkListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_UPDATE).appendListener(dailyWorkListener);
+        registry.getEventListenerGroup(EventType.POST_COLLECTION_REMOVE).appendListener(dailyWorkListener);
+
+        projectBurnupListener = new ProjectBurnupEventListener();
+        registry.getEventListenerGroup(EventType.POST_INSERT).appendListener(projectBurnupListener);
+        registry.getEventListenerGroup(EventType.POST_UPDATE).appendListener(projectBurnupListener);
+        registry.getEventListenerGroup(EventType.POST_DELETE).appendListener(projectBurnupListener);
+
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.POST_INSERT));
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.POST_UPDATE));
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.POST_DELETE));
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.PRE_COLLECTION_UPDATE));
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.PRE_COLLECTION_REMOVE));
+        wrapAuditListeners(registry.getEventListenerGroup(EventType.POST_COLLECTION_RECREATE));
+    }
+
+    /**
+     * Replaces the Envers listeners of the group with ones that can be
+     * suspended for bulk loads. The order of the listeners is kept.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> void wrapAuditListeners(EventListenerGroup<T> group) {
+        List<T> listeners = new ArrayList<T>();
+        for (T listener : group.listeners()) {
+            if (listener instanceof EnversListener
+                    && !(listener instanceof SuspendableAuditListener)) {
+                listeners.add((T) new SuspendableAuditListener((EnversListener) listener));
+            } else {
+                listeners.add(listener);
+            }
+        }
+        group.clear();
+        for (T listener : listeners) {
+            group.appendListener(listener);
+        }
     }
 }
\ No newline at end of file
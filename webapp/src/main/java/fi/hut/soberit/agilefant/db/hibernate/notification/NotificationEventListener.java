@@ -6,11 +6,11 @@ import org.hibernate.event.spi.PostInsertEvent;
 import org.hibernate.event.spi.PostInsertEventListener;
 import org.hibernate.event.spi.PostUpdateEvent;
 import org.hibernate.event.spi.PostUpdateEventListener;
-import org.springframework.context.ApplicationContext;
 
 import fi.hut.soberit.agilefant.business.NotificationBusiness;
 import fi.hut.soberit.agilefant.business.impl.NotificationEmailSender;
 import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.notification.NotificationEvent;
 import fi.hut.soberit.agilefant.model.notification.NotificationEventType;
@@ -25,6 +25,9 @@ public class NotificationEventListener implements PostInsertEventListener, PostU
     private NotificationBusiness notificationBusiness;
 
     public void onPostInsert(PostInsertEvent postInsertEvent) {
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
         checkState();
         final NotificationEvent notificationEvent =
                 new NotificationEvent(postInsertEvent.getEntity(), NotificationEventType.INSERT);
@@ -35,6 +38,9 @@ public class NotificationEventListener implements PostInsertEventListener, PostU
     }
 
     public void onPostUpdate(PostUpdateEvent postUpdateEvent) {
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
         checkState();
 
         if (checkIgnore(postUpdateEvent)) {
@@ -50,6 +56,9 @@ public class NotificationEventListener implements PostInsertEventListener, PostU
     }
 
     public void onPostDelete(PostDeleteEvent postDeleteEvent) {
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
         checkState();
         notificationBusiness.handleNotificationEvent(
                 new NotificationEvent(postDeleteEvent.getEntity(), NotificationEventType.DELETE));
@@ -59,13 +68,8 @@ public class NotificationEventListener implements PostInsertEventListener, PostU
 
     private void checkState() {
         if (notificationBusiness == null) {
-            final ApplicationContext applicationContext = ApplicationContextHolder.getApplicationContext();
-            if (applicationContext == null) {
-                throw new IllegalStateException("Cannot access Spring application context!");
-            }
-
-            notificationBusiness = (NotificationBusiness) applicationContext.getBean(
-                    NotificationEmailSender.NOTIFICATION_BUSINESS_BEAN_NAME);
+            notificationBusiness = ApplicationContextHolder.getBean(NotificationEmailSender.NOTIFICATION_BUSINESS_BEAN_NAME,
+                    NotificationBusiness.class);
         }
     }
 
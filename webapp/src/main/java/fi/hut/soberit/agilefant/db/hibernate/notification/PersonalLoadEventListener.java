@@ -0,0 +1,270 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.hibernate.Hibernate;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.AbstractCollectionEvent;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostCollectionRemoveEvent;
+import org.hibernate.event.spi.PostCollectionRemoveEventListener;
+import org.hibernate.event.spi.PostCollectionUpdateEvent;
+import org.hibernate.event.spi.PostCollectionUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.PersonalLoadBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Assignment;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Holiday;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Hibernate listener which discards the cached loads of
+ * {@link PersonalLoadBusiness} when the tasks, stories, assignments, backlogs,
+ * holidays or the task and story assignees change.
+ * <p>
+ * The changed tasks, stories, backlogs and users are collected while the
+ * session is flushed, and the loads of the affected users are discarded once
+ * when the transaction is about to commit. Deleted backlogs discard the loads
+ * of all users.
+ */
+public class PersonalLoadEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener,
+        PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+        PostCollectionRemoveEventListener {
+
+    private static final String[] TASK_PROPERTIES = { "effortLeft", "state", "iteration", "story" };
+    private static final String[] STORY_PROPERTIES = { "state", "iteration", "backlog" };
+    private static final String[] BACKLOG_PROPERTIES = { "startDate", "endDate", "backlogSize", "baselineLoad" };
+
+    private static final String TASK_RESPONSIBLES_ROLE = Task.class.getName() + ".responsibles";
+    private static final String STORY_RESPONSIBLES_ROLE = Story.class.getName() + ".responsibles";
+
+    private static final ThreadLocal<LoadUpdate> PENDING = new ThreadLocal<LoadUpdate>();
+
+    private PersonalLoadBusiness personalLoadBusiness;
+
+    /**
+     * The load data changed in a single transaction.
+     */
+    private class LoadUpdate implements BeforeTransactionCompletionProcess {
+        private final EventSource session;
+        private final Set<Integer> taskIds = new HashSet<Integer>();
+        private final Set<Integer> storyIds = new HashSet<Integer>();
+        private final Set<Integer> backlogIds = new HashSet<Integer>();
+        private final Set<Integer> userIds = new HashSet<Integer>();
+        private boolean all = false;
+        private boolean done = false;
+
+        private LoadUpdate(EventSource session) {
+            this.session = session;
+        }
+
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            done = true;
+            if (PENDING.get() == this) {
+                PENDING.remove();
+            }
+            if (all) {
+                getPersonalLoadBusiness().loadDataChanged();
+            } else {
+                getPersonalLoadBusiness().loadDataChanged(taskIds, storyIds,
+                        backlogIds, userIds);
+            }
+        }
+    }
+
+    public void onPostInsert(PostInsertEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Task || entity instanceof Story
+                || entity instanceof Assignment || entity instanceof Holiday) {
+            markChanged(event.getSession(), entity);
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Backlog) {
+            if (isDirty(event, BACKLOG_PROPERTIES)) {
+                markChanged(event.getSession(), entity);
+            }
+        } else if ((entity instanceof Task && isDirty(event, TASK_PROPERTIES))
+                || (entity instanceof Story && isDirty(event, STORY_PROPERTIES))
+                || entity instanceof Assignment || entity instanceof Holiday) {
+            if (BulkLoadContext.isActive()) {
+                return;
+            }
+            LoadUpdate update = getLoadUpdate(event.getSession());
+            markChanged(update, entity);
+            // The previous backlogs and users are only found in the old state
+            Object[] oldState = event.getOldState();
+            if (oldState != null) {
+                for (Object value : oldState) {
+                    markReference(update, value);
+                }
+            }
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        Object entity = event.getEntity();
+        if (entity instanceof Backlog) {
+            // The assignees of deleted backlogs cannot be queried anymore
+            markAllChanged(event.getSession());
+        } else if (entity instanceof Task || entity instanceof Story
+                || entity instanceof Assignment || entity instanceof Holiday) {
+            if (BulkLoadContext.isActive()) {
+                return;
+            }
+            // The deleted rows cannot be queried anymore
+            LoadUpdate update = getLoadUpdate(event.getSession());
+            for (Object value : event.getDeletedState()) {
+                markReference(update, value);
+            }
+        }
+    }
+
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+        handleCollectionEvent(event);
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private static boolean isDirty(PostUpdateEvent event, String[] tracked) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            for (String name : tracked) {
+                if (name.equals(propertyNames[index])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void handleCollectionEvent(AbstractCollectionEvent event) {
+        String role = event.getCollection().getRole();
+        if (!TASK_RESPONSIBLES_ROLE.equals(role)
+                && !STORY_RESPONSIBLES_ROLE.equals(role)) {
+            return;
+        }
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
+        LoadUpdate update = getLoadUpdate(event.getSession());
+        Object owner = event.getAffectedOwnerOrNull();
+        if (owner instanceof Task) {
+            update.taskIds.add(((Task) owner).getId());
+        } else if (owner instanceof Story) {
+            update.storyIds.add(((Story) owner).getId());
+        }
+        // The removed assignees are only found in the snapshot
+        Serializable snapshot = event.getCollection().getStoredSnapshot();
+        Collection<?> previous = null;
+        if (snapshot instanceof Map<?, ?>) {
+            previous = ((Map<?, ?>) snapshot).values();
+        } else if (snapshot instanceof Collection<?>) {
+            previous = (Collection<?>) snapshot;
+        }
+        if (previous != null) {
+            for (Object user : previous) {
+                markReference(update, user);
+            }
+        }
+    }
+
+    private void markChanged(EventSource session, Object entity) {
+        if (BulkLoadContext.isActive()) {
+            // The bulk load discards the cached loads when it is done
+            return;
+        }
+        markChanged(getLoadUpdate(session), entity);
+    }
+
+    private static void markChanged(LoadUpdate update, Object entity) {
+        if (entity instanceof Task) {
+            update.taskIds.add(((Task) entity).getId());
+        } else if (entity instanceof Story) {
+            update.storyIds.add(((Story) entity).getId());
+        } else if (entity instanceof Backlog) {
+            update.backlogIds.add(((Backlog) entity).getId());
+        } else if (entity instanceof Assignment) {
+            markReference(update, ((Assignment) entity).getUser());
+            markReference(update, ((Assignment) entity).getBacklog());
+        } else if (entity instanceof Holiday) {
+            markReference(update, ((Holiday) entity).getUser());
+        }
+    }
+
+    /**
+     * Mark a property value of a changed or deleted entity. The task and story
+     * assignees are only marked if they are already loaded.
+     */
+    private static void markReference(LoadUpdate update, Object value) {
+        if (value instanceof User) {
+            update.userIds.add(((User) value).getId());
+        } else if (value instanceof Backlog) {
+            update.backlogIds.add(((Backlog) value).getId());
+        } else if (value instanceof Story) {
+            update.storyIds.add(((Story) value).getId());
+        } else if (value instanceof Collection<?> && Hibernate.isInitialized(value)) {
+            for (Object element : (Collection<?>) value) {
+                if (element instanceof User) {
+                    update.userIds.add(((User) element).getId());
+                }
+            }
+        }
+    }
+
+    private void markAllChanged(EventSource session) {
+        if (BulkLoadContext.isActive()) {
+            return;
+        }
+        getLoadUpdate(session).all = true;
+    }
+
+    private LoadUpdate getLoadUpdate(EventSource session) {
+        LoadUpdate update = PENDING.get();
+        if (update == null || update.done || update.session != session) {
+            update = new LoadUpdate(session);
+            session.getActionQueue().registerProcess(update);
+            PENDING.set(update);
+        }
+        return update;
+    }
+
+    private PersonalLoadBusiness getPersonalLoadBusiness() {
+        if (personalLoadBusiness == null) {
+            personalLoadBusiness = ApplicationContextHolder.getBean(PersonalLoadBusiness.class);
+        }
+        return personalLoadBusiness;
+    }
+}
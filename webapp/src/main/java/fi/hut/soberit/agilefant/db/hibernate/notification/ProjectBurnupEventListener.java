@@ -0,0 +1,68 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.ProjectBurnupBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
+
+/**
+ * Hibernate listener which extends the burnup series of
+ * {@link ProjectBurnupBusiness} when project history entries are written, and
+ * discards the series of the project when its entries are deleted.
+ */
+public class ProjectBurnupEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private ProjectBurnupBusiness projectBurnupBusiness;
+
+    public void onPostInsert(PostInsertEvent event) {
+        entryStored(event.getEntity());
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        entryStored(event.getEntity());
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!(event.getEntity() instanceof BacklogHistoryEntry)
+                || BulkLoadContext.isActive()) {
+            return;
+        }
+        BacklogHistoryEntry entry = (BacklogHistoryEntry) event.getEntity();
+        if (entry.getBacklog() == null) {
+            getProjectBurnupBusiness().burnupDataChanged();
+        } else {
+            getProjectBurnupBusiness().historyEntriesRemoved(entry.getBacklog().getId());
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private void entryStored(Object entity) {
+        if (!(entity instanceof BacklogHistoryEntry)
+                || BulkLoadContext.isActive()) {
+            // The bulk load discards the series when it is done
+            return;
+        }
+        BacklogHistoryEntry entry = (BacklogHistoryEntry) entity;
+        if (entry.getBacklog() == null || entry.getTimestamp() == null) {
+            getProjectBurnupBusiness().burnupDataChanged();
+        } else {
+            getProjectBurnupBusiness().historyEntryStored(entry);
+        }
+    }
+
+    private ProjectBurnupBusiness getProjectBurnupBusiness() {
+        if (projectBurnupBusiness == null) {
+            projectBurnupBusiness = ApplicationContextHolder.getBean(ProjectBurnupBusiness.class);
+        }
+        return projectBurnupBusiness;
+    }
+}
@@ -0,0 +1,76 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.business.SearchIndexBusiness;
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.NamedObject;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+
+/**
+ * Hibernate listener which keeps the {@link SearchIndexBusiness} up to date
+ * when backlogs, stories and tasks are stored or deleted.
+ */
+public class SearchIndexEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private SearchIndexBusiness searchIndexBusiness;
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (isIndexed(event.getEntity())) {
+            getSearchIndexBusiness().objectStored((NamedObject) event.getEntity());
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (isIndexed(event.getEntity()) && isSearchableDataDirty(event)) {
+            getSearchIndexBusiness().objectStored((NamedObject) event.getEntity());
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (isIndexed(event.getEntity())) {
+            getSearchIndexBusiness().objectDeleted((NamedObject) event.getEntity());
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private boolean isIndexed(Object entity) {
+        if (BulkLoadContext.isActive()) {
+            // The index is refreshed after the bulk load instead
+            return false;
+        }
+        return entity instanceof Backlog || entity instanceof Story || entity instanceof Task;
+    }
+
+    private boolean isSearchableDataDirty(PostUpdateEvent event) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            String propertyName = propertyNames[index];
+            if ("name".equals(propertyName) || "description".equals(propertyName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private SearchIndexBusiness getSearchIndexBusiness() {
+        if (searchIndexBusiness == null) {
+            searchIndexBusiness = ApplicationContextHolder.getBean(SearchIndexBusiness.class);
+        }
+        return searchIndexBusiness;
+    }
+}
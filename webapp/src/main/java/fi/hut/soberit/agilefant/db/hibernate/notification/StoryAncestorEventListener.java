@@ -0,0 +1,72 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.Story;
+
+/**
+ * Hibernate listener which keeps the story ancestor index of
+ * {@link StoryAncestorDAO} up to date when stories are created, moved under
+ * another parent or deleted.
+ */
+public class StoryAncestorEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private StoryAncestorDAO storyAncestorDAO;
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Story && !BulkLoadContext.isActive()) {
+            Story story = (Story) event.getEntity();
+            getStoryAncestorDAO().updateParent(story.getId(), getParentId(story));
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Story && !BulkLoadContext.isActive()
+                && isParentDirty(event)) {
+            Story story = (Story) event.getEntity();
+            getStoryAncestorDAO().updateParent(story.getId(), getParentId(story));
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Story && !BulkLoadContext.isActive()) {
+            getStoryAncestorDAO().remove(((Story) event.getEntity()).getId());
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private static Integer getParentId(Story story) {
+        return (story.getParent() == null) ? null : story.getParent().getId();
+    }
+
+    private static boolean isParentDirty(PostUpdateEvent event) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            if ("parent".equals(propertyNames[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private StoryAncestorDAO getStoryAncestorDAO() {
+        if (storyAncestorDAO == null) {
+            storyAncestorDAO = ApplicationContextHolder.getBean(StoryAncestorDAO.class);
+        }
+        return storyAncestorDAO;
+    }
+}
@@ -0,0 +1,157 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+
+import fi.hut.soberit.agilefant.core.ApplicationContextHolder;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+import fi.hut.soberit.agilefant.model.HourEntry;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryHourEntry;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.TaskHourEntry;
+
+/**
+ * Hibernate listener which keeps the stored story tree metrics of
+ * {@link StoryTreeMetricsDAO} up to date when stories, tasks and hour entries
+ * change.
+ * <p>
+ * The changed stories are collected while the session is flushed, and their
+ * branches are recalculated once when the transaction is about to commit, so
+ * that the whole tree is already written.
+ */
+public class StoryTreeMetricsEventListener implements PostInsertEventListener,
+        PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final String[] STORY_PROPERTIES = { "parent", "storyPoints", "state" };
+    private static final String[] TASK_PROPERTIES = { "story", "effortLeft" };
+    private static final String[] HOUR_ENTRY_PROPERTIES = { "story", "task", "minutesSpent" };
+
+    private static final ThreadLocal<BranchUpdate> PENDING = new ThreadLocal<BranchUpdate>();
+
+    private StoryTreeMetricsDAO storyTreeMetricsDAO;
+
+    /**
+     * The stories and tasks changed in a single transaction.
+     */
+    private class BranchUpdate implements BeforeTransactionCompletionProcess {
+        private final EventSource session;
+        private final Set<Integer> storyIds = new HashSet<Integer>();
+        private final Set<Integer> taskIds = new HashSet<Integer>();
+        private boolean done = false;
+
+        private BranchUpdate(EventSource session) {
+            this.session = session;
+        }
+
+        public void doBeforeTransactionCompletion(SessionImplementor session) {
+            done = true;
+            if (PENDING.get() == this) {
+                PENDING.remove();
+            }
+            getStoryTreeMetricsDAO().updateBranches(storyIds, taskIds);
+        }
+    }
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (isTracked(event.getEntity())) {
+            markChanged(event.getSession(), event.getEntity(),
+                    event.getPersister().getPropertyNames(), event.getState());
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        Object entity = event.getEntity();
+        if (!isTracked(entity) || !isDirty(event)) {
+            return;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        markChanged(event.getSession(), entity, propertyNames, event.getOldState());
+        markChanged(event.getSession(), entity, propertyNames, event.getState());
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (isTracked(event.getEntity())) {
+            markChanged(event.getSession(), event.getEntity(),
+                    event.getPersister().getPropertyNames(), event.getDeletedState());
+        }
+    }
+
+    //--------------------------------------------------- HELPER METHODS -----------------------------------------------
+
+    private static boolean isTracked(Object entity) {
+        return entity instanceof Story || entity instanceof Task
+                || entity instanceof StoryHourEntry
+                || entity instanceof TaskHourEntry;
+    }
+
+    private static boolean isDirty(PostUpdateEvent event) {
+        int[] dirtyProperties = event.getDirtyProperties();
+        if (dirtyProperties == null) {
+            return true;
+        }
+        String[] tracked = TASK_PROPERTIES;
+        if (event.getEntity() instanceof Story) {
+            tracked = STORY_PROPERTIES;
+        } else if (event.getEntity() instanceof HourEntry) {
+            tracked = HOUR_ENTRY_PROPERTIES;
+        }
+        String[] propertyNames = event.getPersister().getPropertyNames();
+        for (int index : dirtyProperties) {
+            for (String name : tracked) {
+                if (name.equals(propertyNames[index])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void markChanged(EventSource session, Object entity,
+            String[] propertyNames, Object[] state) {
+        if (state == null || BulkLoadContext.isActive()) {
+            // The bulk load rebuilds the metrics when it is done
+            return;
+        }
+        BranchUpdate update = getBranchUpdate(session);
+        if (entity instanceof Story) {
+            update.storyIds.add(((Story) entity).getId());
+        }
+        for (int i = 0; i < propertyNames.length; i++) {
+            Object value = state[i];
+            if (value instanceof Story) {
+                update.storyIds.add(((Story) value).getId());
+            } else if (value instanceof Task) {
+                update.taskIds.add(((Task) value).getId());
+            }
+        }
+    }
+
+    private BranchUpdate getBranchUpdate(EventSource session) {
+        BranchUpdate update = PENDING.get();
+        if (update == null || update.done || update.session != session) {
+            update = new BranchUpdate(session);
+            session.getActionQueue().registerProcess(update);
+            PENDING.set(update);
+        }
+        return update;
+    }
+
+    private StoryTreeMetricsDAO getStoryTreeMetricsDAO() {
+        if (storyTreeMetricsDAO == null) {
+            storyTreeMetricsDAO = ApplicationContextHolder.getBean(StoryTreeMetricsDAO.class);
+        }
+        return storyTreeMetricsDAO;
+    }
+}
@@ -0,0 +1,79 @@
+package fi.hut.soberit.agilefant.db.hibernate.notification;
+
+import org.hibernate.envers.configuration.AuditConfiguration;
+import org.hibernate.envers.event.EnversListener;
+import org.hibernate.event.spi.PostCollectionRecreateEvent;
+import org.hibernate.event.spi.PostCollectionRecreateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.event.spi.PreCollectionRemoveEvent;
+import org.hibernate.event.spi.PreCollectionRemoveEventListener;
+import org.hibernate.event.spi.PreCollectionUpdateEvent;
+import org.hibernate.event.spi.PreCollectionUpdateEventListener;
+
+import fi.hut.soberit.agilefant.db.hibernate.BulkLoadContext;
+
+/**
+ * Wraps an Envers listener so that no audit data is written during a bulk
+ * load.
+ * <p>
+ * Implements {@link EnversListener} as well, since the audit reader looks up
+ * the audit configuration from the registered listeners.
+ */
+@SuppressWarnings("serial")
+public class SuspendableAuditListener implements EnversListener,
+        PostInsertEventListener, PostUpdateEventListener,
+        PostDeleteEventListener, PreCollectionUpdateEventListener,
+        PreCollectionRemoveEventListener, PostCollectionRecreateEventListener {
+
+    private final EnversListener delegate;
+
+    public SuspendableAuditListener(EnversListener delegate) {
+        this.delegate = delegate;
+    }
+
+    public AuditConfiguration getAuditConfiguration() {
+        return delegate.getAuditConfiguration();
+    }
+
+    public void onPostInsert(PostInsertEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PostInsertEventListener) delegate).onPostInsert(event);
+        }
+    }
+
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PostUpdateEventListener) delegate).onPostUpdate(event);
+        }
+    }
+
+    public void onPostDelete(PostDeleteEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PostDeleteEventListener) delegate).onPostDelete(event);
+        }
+    }
+
+    public void onPreUpdateCollection(PreCollectionUpdateEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PreCollectionUpdateEventListener) delegate).onPreUpdateCollection(event);
+        }
+    }
+
+    public void onPreRemoveCollection(PreCollectionRemoveEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PreCollectionRemoveEventListener) delegate).onPreRemoveCollection(event);
+        }
+    }
+
+    public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+        if (!BulkLoadContext.isActive()) {
+            ((PostCollectionRecreateEventListener) delegate).onPostRecreateCollection(event);
+        }
+    }
+
+}
@@ -1,29 +1,58 @@
 package fi.hut.soberit.agilefant.exportimport;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.hibernate.Hibernate;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.ObjectIdGenerator;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializable;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.DefaultDeserializationContext;
+import com.fasterxml.jackson.databind.deser.DeserializerFactory;
+import com.fasterxml.jackson.databind.deser.impl.ReadableObjectId;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.DefaultSerializerProvider;
+import com.fasterxml.jackson.databind.ser.SerializerFactory;
+import com.fasterxml.jackson.databind.ser.impl.WritableObjectId;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.google.common.base.Function;
 import com.typesafe.config.Config;
 
+import fi.hut.soberit.agilefant.business.ExportImportBusiness;
+import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpHandler;
+import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpReader;
 import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpTO;
 import fi.hut.soberit.agilefant.model.AgilefantWidget;
 import fi.hut.soberit.agilefant.model.Assignment;
@@ -49,6 +78,7 @@ import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.model.WhatsNextEntry;
 import fi.hut.soberit.agilefant.model.WhatsNextStoryEntry;
 import fi.hut.soberit.agilefant.model.WidgetCollection;
+import fi.hut.soberit.agilefant.util.Pair;
 
 @Component
 public class ExportImport {
@@ -73,6 +103,7 @@ public class ExportImport {
 
     	objectMapper.setVisibility(PropertyAccessor.ALL, Visibility.NONE);
     	objectMapper.setVisibility(PropertyAccessor.FIELD, Visibility.ANY);    	
+    	objectMapper.setSerializerProvider(new ExportSerializerProvider());
 
     	return objectMapper;
 	}
@@ -85,27 +116,41 @@ public class ExportImport {
 		return this.config.getString(VERSION);
 	}
 	
-	public void toJson(OutputStream out, OrganizationDumpTO organizationTO) {
+	public void setConfig(Config config) {
+		this.config = config;
+	}
+	
+	/**
+	 * Writes the organization's data as JSON while it is being read from the
+	 * database. The output stream is not closed.
+	 */
+	public void toJson(OutputStream out, ExportImportBusiness exportImportBusiness) {
 		try {
 			ExportData exportData = new ExportData();
 			exportData.version = this.getVersion();
-			ObjectWriter objectWriter = this.getObjectMapper().writer(new DefaultPrettyPrinter());
-			objectWriter.writeValue(out, exportData);
-			objectWriter.writeValue(out, organizationTO);			
+			JsonGenerator generator = this.getObjectMapper().getFactory().createGenerator(out);
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.setPrettyPrinter(new DefaultPrettyPrinter());
+			this.getObjectMapper().writeValue(generator, exportData);
+			this.getObjectMapper().writeValue(generator, new OrganizationDumpWriter(exportImportBusiness));
+			generator.close();
 		} catch(Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
-	public OrganizationDumpTO fromJson(InputStream in) throws VersionMismatchException {
+	/**
+	 * Reads the organization's data from JSON and passes it to the business
+	 * for importing while it is being read.
+	 */
+	public void fromJson(InputStream in, ExportImportBusiness exportImportBusiness) throws VersionMismatchException {
 		try {
 			JsonParser parser = this.getObjectMapper().getFactory().createParser(in);
 	    	ExportData exportData = this.getObjectMapper().readValue(parser, ExportData.class);			
 			if(!this.getVersion().substring(0, 3).equals(exportData.version.substring(0, 3))) {
 				throw new VersionMismatchException("Current application version is " + this.getVersion() + " while import version is " + exportData.version);
 			}
-	    	OrganizationDumpTO organizationTO = this.getObjectMapper().readValue(parser, OrganizationDumpTO.class);
-	    	return organizationTO;
+			exportImportBusiness.importOrganization(new OrganizationDumpJsonReader(parser));
 		} catch(Exception e) {
 			throw new RuntimeException(e);
 		}
@@ -335,6 +380,240 @@ public class ExportImport {
 		
 	}
 	
+	/**
+	 * Writes the OrganizationDumpTO properties as the objects are received from
+	 * the streamed export. All objects are serialized with the same provider,
+	 * so objects written once are referred to by their object ids later on.
+	 */
+	private static class OrganizationDumpWriter implements JsonSerializable {
+		
+		private final ExportImportBusiness exportImportBusiness;
+		
+		public OrganizationDumpWriter(ExportImportBusiness exportImportBusiness) {
+			this.exportImportBusiness = exportImportBusiness;
+		}
+
+		@Override
+		public void serialize(final JsonGenerator generator, final SerializerProvider provider) throws IOException {
+			generator.writeStartObject();
+			this.exportImportBusiness.exportOrganization(new OrganizationDumpHandler() {
+				public void startProperty(String name) {
+					try {
+						generator.writeArrayFieldStart(name);
+					} catch(IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+
+				public void handleObject(Object object) {
+					try {
+						provider.defaultSerializeValue(object, generator);
+					} catch(IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+
+				public void endProperty() {
+					try {
+						generator.writeEndArray();
+					} catch(IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			generator.writeEndObject();
+		}
+
+		@Override
+		public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSer) throws IOException {
+			this.serialize(generator, provider);
+		}
+	}
+	
+	/**
+	 * Reads the OrganizationDumpTO properties one object at a time. All objects
+	 * are read with the same deserialization context, so that the object ids
+	 * refer to the objects read earlier.
+	 */
+	private class OrganizationDumpJsonReader implements OrganizationDumpReader {
+		
+		private final JsonParser parser;
+		
+		private final ImportDeserializationContext context;
+		
+		public OrganizationDumpJsonReader(JsonParser parser) {
+			this.parser = parser;
+			this.context = new ImportDeserializationContext(
+					(DefaultDeserializationContext) getObjectMapper().getDeserializationContext(),
+					getObjectMapper().getDeserializationConfig(), parser);
+		}
+
+		@Override
+		public void read(OrganizationDumpHandler handler) {
+			try {
+				if(this.parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new JsonMappingException("Organization data expected", this.parser.getCurrentLocation());
+				}
+				while(this.parser.nextToken() == JsonToken.FIELD_NAME) {
+					String name = this.parser.getCurrentName();
+					JavaType elementType = this.getElementType(name);
+					if(this.parser.nextToken() != JsonToken.START_ARRAY || elementType == null) {
+						this.parser.skipChildren();
+						continue;
+					}
+					JsonDeserializer<Object> deserializer = this.context.findRootValueDeserializer(elementType);
+					handler.startProperty(name);
+					while(this.parser.nextToken() != JsonToken.END_ARRAY) {
+						if(this.parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+							handler.handleObject(deserializer.deserialize(this.parser, this.context));
+						}
+					}
+					handler.endProperty();
+				}
+			} catch(IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void replaceReadObjects(Function<Object, Object> replacement) {
+			this.context.replaceObjects(replacement);
+		}
+		
+		private JavaType getElementType(String property) {
+			try {
+				Field field = OrganizationDumpTO.class.getField(property);
+				return getObjectMapper().getTypeFactory().constructType(field.getGenericType()).getContentType();
+			} catch(NoSuchFieldException e) {
+				return null;
+			}
+		}
+	}
+	
+	/**
+	 * Deserialization context that keeps track of the objects it has read, so
+	 * that they can be replaced with lighter references afterwards.
+	 */
+	@SuppressWarnings("serial")
+	private static class ImportDeserializationContext extends DefaultDeserializationContext {
+		
+		private List<ReadableObjectId> unreplacedObjectIds = new ArrayList<ReadableObjectId>();
+		
+		public ImportDeserializationContext(DefaultDeserializationContext src, DeserializationConfig config, JsonParser parser) {
+			this(src, config, parser, null);
+		}
+		
+		private ImportDeserializationContext(DefaultDeserializationContext src, DeserializationConfig config, JsonParser parser, InjectableValues values) {
+			super(src, config, parser, values);
+		}
+		
+		private ImportDeserializationContext(DefaultDeserializationContext src, DeserializerFactory factory) {
+			super(src, factory);
+		}
+		
+		@Override
+		public ReadableObjectId findObjectId(Object id, ObjectIdGenerator<?> generator) {
+			int count = (_objectIds == null) ? 0 : _objectIds.size();
+			ReadableObjectId objectId = super.findObjectId(id, generator);
+			if(_objectIds.size() > count) {
+				this.unreplacedObjectIds.add(objectId);
+			}
+			return objectId;
+		}
+		
+		public void replaceObjects(Function<Object, Object> replacement) {
+			List<ReadableObjectId> remaining = new ArrayList<ReadableObjectId>();
+			for(ReadableObjectId objectId : this.unreplacedObjectIds) {
+				Object replaced = (objectId.item == null) ? null : replacement.apply(objectId.item);
+				if(replaced == null || replaced == objectId.item) {
+					remaining.add(objectId);
+				} else {
+					objectId.item = replaced;
+				}
+			}
+			this.unreplacedObjectIds = remaining;
+		}
+
+		@Override
+		public DefaultDeserializationContext with(DeserializerFactory factory) {
+			return new ImportDeserializationContext(this, factory);
+		}
+
+		@Override
+		public DefaultDeserializationContext createInstance(DeserializationConfig config, JsonParser parser, InjectableValues values) {
+			return new ImportDeserializationContext(this, config, parser, values);
+		}
+	}
+	
+	/**
+	 * Serializer provider that recognizes already written model objects by
+	 * their type and id instead of object identity. The streamed export clears
+	 * the Hibernate session between batches, so the same entity can be met as
+	 * several instances. Only the keys are kept, not the objects.
+	 */
+	@SuppressWarnings("serial")
+	public static class ExportSerializerProvider extends DefaultSerializerProvider {
+		
+		public ExportSerializerProvider() {
+			super();
+		}
+		
+		protected ExportSerializerProvider(SerializerProvider src, SerializationConfig config, SerializerFactory factory) {
+			super(src, config, factory);
+		}
+
+		@Override
+		public ExportSerializerProvider createInstance(SerializationConfig config, SerializerFactory factory) {
+			return new ExportSerializerProvider(this, config, factory);
+		}
+		
+		@Override
+		protected Map<Object, WritableObjectId> _createObjectIdMap() {
+			return new HashMap<Object, WritableObjectId>() {
+				@Override
+				public WritableObjectId get(Object key) {
+					return super.get(getEntityKey(key));
+				}
+				
+				@Override
+				public WritableObjectId put(Object key, WritableObjectId value) {
+					return super.put(getEntityKey(key), value);
+				}
+			};
+		}
+		
+		private static Object getEntityKey(Object object) {
+			Class<?> type = Hibernate.getClass(object);
+			try {
+				Method getId = type.getMethod("getId");
+				return Pair.create(type, getId.invoke(object));
+			} catch(NoSuchMethodException e) {
+				return new IdentityKey(object);
+			} catch(Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+	
+	private static class IdentityKey {
+		
+		private final Object object;
+		
+		public IdentityKey(Object object) {
+			this.object = object;
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.object);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof IdentityKey && ((IdentityKey) obj).object == this.object;
+		}
+	}
+	
 	@SuppressWarnings("serial")
 	public static class VersionMismatchException extends Exception {
 
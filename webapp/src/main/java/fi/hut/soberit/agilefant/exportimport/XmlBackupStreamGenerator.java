@@ -1,45 +1,27 @@
 package fi.hut.soberit.agilefant.exportimport;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import fi.hut.soberit.agilefant.business.ExportImportBusiness;
-import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpTO;
 
 /**
- * Generates a zipped database dump using ExportImportUtil and provides it in a ByteArrayOutputStream for access.
+ * Generates a zipped database dump using ExportImport and writes it directly to a given output stream.
  */
 public class XmlBackupStreamGenerator {
 
-    private ByteArrayOutputStream zippedDbOutputStream;
-
-    /**
-     * Initializes the class for taking a xml dump
-     */
-    public XmlBackupStreamGenerator() {
-        this.zippedDbOutputStream = new ByteArrayOutputStream();
-    }
-
     /**
-     * Returns dumped database as zipped ByteArrayOutputStream. It's usually a good idea to call generate first
+     * Writes the zipped database dump to the given stream while the data is read from the database.
+     * The stream itself is not closed.
      */
-    public ByteArrayOutputStream getZippedDbOutputStream() {
-        return this.zippedDbOutputStream;
-    }
-
-
-    public void generateZippedDbOutputStream(ExportImportBusiness exportImportBusiness, ExportImport exportImport) throws Exception {
-        zippedDbOutputStream = new ByteArrayOutputStream();
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-            
-        OrganizationDumpTO organizationTO = exportImportBusiness.exportOrganization();
-        exportImport.toJson(out, organizationTO);
-            
-        ZipOutputStream outzip = new ZipOutputStream(zippedDbOutputStream);
+    public void generateZippedDbOutputStream(ExportImportBusiness exportImportBusiness, ExportImport exportImport,
+            OutputStream out) throws IOException {
+        ZipOutputStream outzip = new ZipOutputStream(out);
         outzip.putNextEntry(new ZipEntry("fantbackup.json"));
-        out.writeTo(outzip);
+        exportImport.toJson(outzip, exportImportBusiness);
         outzip.closeEntry();
-        outzip.close();
+        outzip.finish();
     }
 
 }
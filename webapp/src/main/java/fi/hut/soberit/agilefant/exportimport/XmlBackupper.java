@@ -1,6 +1,6 @@
 package fi.hut.soberit.agilefant.exportimport;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import fi.hut.soberit.agilefant.business.ExportImportBusiness;
 
 /**
@@ -8,33 +8,15 @@ import fi.hut.soberit.agilefant.business.ExportImportBusiness;
  */
 public class XmlBackupper {
 
-    private ByteArrayOutputStream dbOutputStream;
-
-    /**
-     * 
-     */
-    public XmlBackupper() {
-        dbOutputStream = new ByteArrayOutputStream();
-    }
-
     /**
-     * Calls Dbbackup to generate zipped stream Returns ByteArrayOutputStream
-     * that is zipped DBdump from exportImportBusiness or
-     * null if generating stream failed for some reason.
+     * Calls Dbbackup to write the zipped DBdump from exportImportBusiness to
+     * the given output stream. The dump is streamed, so it is never held in
+     * memory as a whole.
      */
-    public ByteArrayOutputStream generateDBDumpStream(ExportImportBusiness exportImportBusiness, ExportImport exportImport) throws Exception {
+    public void generateDBDumpStream(ExportImportBusiness exportImportBusiness, ExportImport exportImport,
+            OutputStream out) throws Exception {
         XmlBackupStreamGenerator dbbackup = new XmlBackupStreamGenerator();
-        dbbackup.generateZippedDbOutputStream(exportImportBusiness, exportImport);
-
-        this.dbOutputStream = dbbackup.getZippedDbOutputStream();
-        return dbbackup.getZippedDbOutputStream();
-    }
-
-    /**
-     * Returns and output stream that contains the zipped dbdump
-     */
-    public ByteArrayOutputStream getDbOutputStream() {
-        return this.dbOutputStream;
+        dbbackup.generateZippedDbOutputStream(exportImportBusiness, exportImport, out);
     }
 
 }
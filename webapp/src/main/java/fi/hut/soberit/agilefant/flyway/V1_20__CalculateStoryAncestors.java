@@ -0,0 +1,25 @@
+package fi.hut.soberit.agilefant.flyway;
+
+import java.sql.Connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.googlecode.flyway.core.api.migration.jdbc.JdbcMigration;
+
+import fi.hut.soberit.agilefant.db.hibernate.StoryAncestorCalculator;
+
+public class V1_20__CalculateStoryAncestors implements JdbcMigration {
+
+	private static final Logger LOG = LoggerFactory.getLogger(V1_20__CalculateStoryAncestors.class);
+
+	@Override
+	public void migrate(Connection connection) throws Exception {
+		try {
+			StoryAncestorCalculator.rebuild(connection);
+		} catch(Exception e) {
+			LOG.error("Unable to calculate the story ancestors");
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package fi.hut.soberit.agilefant.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Type;
+import org.joda.time.LocalDate;
+
+/**
+ * Hibernate entity bean which represents the spent effort a user has logged
+ * to a single backlog, story or task during a single day.
+ * <p>
+ * The sums are derived from the hour entries and kept up to date by
+ * {@link fi.hut.soberit.agilefant.db.hibernate.notification.DailyEffortSumEventListener}
+ * so that the daily spent effort can be read without loading the hour
+ * entries. The target ids are plain columns without foreign keys. There is
+ * one row per user, target and day; the ids of the other targets are 0 so
+ * that they can be part of the unique key.
+ *
+ * @see fi.hut.soberit.agilefant.model.HourEntry
+ */
+@Entity
+@Table(name = "daily_effort_sums", uniqueConstraints = @UniqueConstraint(
+        name = "daily_effort_sums_target",
+        columnNames = { "user_id", "backlog_id", "story_id", "task_id", "date" }))
+@org.hibernate.annotations.Table(appliesTo = "daily_effort_sums", indexes = {
+        @Index(name = "daily_effort_sums_user", columnNames = { "user_id", "date", "minutesSpent" }),
+        @Index(name = "daily_effort_sums_backlog", columnNames = { "backlog_id", "date", "minutesSpent" }),
+        @Index(name = "daily_effort_sums_story", columnNames = { "story_id", "date", "minutesSpent" }),
+        @Index(name = "daily_effort_sums_task", columnNames = { "task_id", "date", "minutesSpent" }) })
+public class DailyEffortSum {
+
+    private int id;
+
+    private int userId;
+
+    private int backlogId;
+
+    private int storyId;
+
+    private int taskId;
+
+    private LocalDate date;
+
+    private long minutesSpent;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Column(name = "user_id", nullable = false)
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * @return the id of the backlog, or 0 if the effort is not logged to a backlog
+     */
+    @Column(name = "backlog_id", nullable = false)
+    public int getBacklogId() {
+        return backlogId;
+    }
+
+    public void setBacklogId(int backlogId) {
+        this.backlogId = backlogId;
+    }
+
+    /**
+     * @return the id of the story, or 0 if the effort is not logged to a story
+     */
+    @Column(name = "story_id", nullable = false)
+    public int getStoryId() {
+        return storyId;
+    }
+
+    public void setStoryId(int storyId) {
+        this.storyId = storyId;
+    }
+
+    /**
+     * @return the id of the task, or 0 if the effort is not logged to a task
+     */
+    @Column(name = "task_id", nullable = false)
+    public int getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(int taskId) {
+        this.taskId = taskId;
+    }
+
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentLocalDate")
+    @Column(nullable = false)
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    @Column(nullable = false)
+    public long getMinutesSpent() {
+        return minutesSpent;
+    }
+
+    public void setMinutesSpent(long minutesSpent) {
+        this.minutesSpent = minutesSpent;
+    }
+}
@@ -66,7 +66,7 @@ public class Story implements TimesheetLoggable, LabelContainer, NamedObject, Ta
     private Integer storyPoints;
     private Integer storyValue;
     
-    private Story fullInfoStory;
+    private StoryTreeBranchMetrics branchMetrics;
     
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -205,8 +205,12 @@ public class Story implements TimesheetLoggable, LabelContainer, NamedObject, Ta
         this.storyPoints = storyPoints;
     }
     
-    public void setFullInfoStory(Story fullInfoStory) {
-        this.fullInfoStory = fullInfoStory;
+    /**
+     * Sets the stored metrics of the story's branch, so that they are not
+     * calculated from the loaded tree.
+     */
+    public void setBranchMetrics(StoryTreeBranchMetrics branchMetrics) {
+        this.branchMetrics = branchMetrics;
     }
     
     @JSON
@@ -217,12 +221,9 @@ public class Story implements TimesheetLoggable, LabelContainer, NamedObject, Ta
     	if (getStoryPoints() != null) {
     		storyPoints = getStoryPoints();
     	}
-    	StoryHierarchyBusinessImpl impl = new StoryHierarchyBusinessImpl();
-    	StoryTreeBranchMetrics metrics;
-    	if (this.fullInfoStory != null) {
-    	    metrics = impl.calculateStoryTreeMetrics(this.fullInfoStory);
-    	} else {
-            metrics = impl.calculateStoryTreeMetrics(this);
+    	StoryTreeBranchMetrics metrics = this.branchMetrics;
+    	if (metrics == null) {
+    	    metrics = new StoryHierarchyBusinessImpl().calculateStoryTreeMetrics(this);
     	}
     	long estimatedPoints = metrics.getEstimatedPoints();
     	if (estimatedPoints > storyPoints) {
@@ -0,0 +1,88 @@
+package fi.hut.soberit.agilefant.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+import org.hibernate.annotations.Index;
+import org.hibernate.annotations.Type;
+import org.joda.time.LocalDate;
+
+/**
+ * Hibernate entity bean which represents how many times a user has opened a
+ * single story during a single day.
+ * <p>
+ * The counts are derived from the story accesses and written together with
+ * them, so that the story access cloud can be read without counting the
+ * accesses. There is one row for each user, story and day.
+ *
+ * @see fi.hut.soberit.agilefant.model.StoryAccess
+ */
+@Entity
+@Table(name = "story_access_sums", uniqueConstraints = @UniqueConstraint(
+        name = "story_access_sums_access", columnNames = { "user_id", "story_id", "date" }))
+@org.hibernate.annotations.Table(appliesTo = "story_access_sums", indexes = {
+        @Index(name = "story_access_sums_user", columnNames = { "user_id", "date", "story_id", "accessCount" }) })
+public class StoryAccessSum {
+
+    private int id;
+
+    private int userId;
+
+    private int storyId;
+
+    private LocalDate date;
+
+    private long accessCount;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Column(name = "user_id", nullable = false)
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    @Column(name = "story_id", nullable = false)
+    public int getStoryId() {
+        return storyId;
+    }
+
+    public void setStoryId(int storyId) {
+        this.storyId = storyId;
+    }
+
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentLocalDate")
+    @Column(nullable = false)
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    @Column(nullable = false)
+    public long getAccessCount() {
+        return accessCount;
+    }
+
+    public void setAccessCount(long accessCount) {
+        this.accessCount = accessCount;
+    }
+}
@@ -0,0 +1,86 @@
+package fi.hut.soberit.agilefant.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Index;
+
+/**
+ * Hibernate entity bean which represents a story and one of its ancestor
+ * stories in the story tree.
+ * <p>
+ * Every story has a row for itself with the depth 0 and a row for each of its
+ * ancestors with the distance to the ancestor as the depth, so that a whole
+ * branch or parent chain can be read with a single query. The rows are
+ * derived from the parents of the stories and kept up to date by
+ * {@link fi.hut.soberit.agilefant.db.hibernate.notification.StoryAncestorEventListener}.
+ * The ids are plain columns without foreign keys.
+ *
+ * @see fi.hut.soberit.agilefant.db.StoryAncestorDAO
+ */
+@Entity
+@Table(name = "story_ancestors")
+@org.hibernate.annotations.Table(appliesTo = "story_ancestors", indexes = {
+        @Index(name = "story_ancestors_descendant", columnNames = { "descendant_id", "depth" }) })
+public class StoryAncestor implements Serializable {
+
+    private static final long serialVersionUID = -3183570437528853542L;
+
+    private int ancestorId;
+
+    private int descendantId;
+
+    private int depth;
+
+    @Id
+    @Column(name = "ancestor_id")
+    public int getAncestorId() {
+        return ancestorId;
+    }
+
+    public void setAncestorId(int ancestorId) {
+        this.ancestorId = ancestorId;
+    }
+
+    @Id
+    @Column(name = "descendant_id")
+    public int getDescendantId() {
+        return descendantId;
+    }
+
+    public void setDescendantId(int descendantId) {
+        this.descendantId = descendantId;
+    }
+
+    /**
+     * The number of parent links between the stories; 0 for the row of the
+     * story itself.
+     */
+    @Column(nullable = false)
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof StoryAncestor)) {
+            return false;
+        }
+        StoryAncestor other = (StoryAncestor) obj;
+        return ancestorId == other.ancestorId
+                && descendantId == other.descendantId;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * ancestorId + descendantId;
+    }
+}
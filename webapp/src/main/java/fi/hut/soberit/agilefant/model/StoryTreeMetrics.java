@@ -0,0 +1,120 @@
+package fi.hut.soberit.agilefant.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
+
+/**
+ * Hibernate entity bean which represents the metrics of a story and all the
+ * stories under it.
+ * <p>
+ * The metrics are derived from the story tree, the tasks and the hour entries
+ * and kept up to date by
+ * {@link fi.hut.soberit.agilefant.db.hibernate.notification.StoryTreeMetricsEventListener}
+ * so that the metrics of a branch can be read without loading the branch.
+ * The id is the id of the story; there is no foreign key to the story.
+ *
+ * @see fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics
+ */
+@Entity
+@Table(name = "story_tree_metrics")
+public class StoryTreeMetrics {
+
+    private int id;
+
+    private long leafPoints;
+
+    private long doneLeafPoints;
+
+    private long estimatedPoints;
+
+    private long estimatedDonePoints;
+
+    private long spentEffort;
+
+    private long effortLeft;
+
+    @Id
+    @Column(name = "story_id")
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    @Column(nullable = false)
+    public long getLeafPoints() {
+        return leafPoints;
+    }
+
+    public void setLeafPoints(long leafPoints) {
+        this.leafPoints = leafPoints;
+    }
+
+    @Column(nullable = false)
+    public long getDoneLeafPoints() {
+        return doneLeafPoints;
+    }
+
+    public void setDoneLeafPoints(long doneLeafPoints) {
+        this.doneLeafPoints = doneLeafPoints;
+    }
+
+    @Column(nullable = false)
+    public long getEstimatedPoints() {
+        return estimatedPoints;
+    }
+
+    public void setEstimatedPoints(long estimatedPoints) {
+        this.estimatedPoints = estimatedPoints;
+    }
+
+    @Column(nullable = false)
+    public long getEstimatedDonePoints() {
+        return estimatedDonePoints;
+    }
+
+    public void setEstimatedDonePoints(long estimatedDonePoints) {
+        this.estimatedDonePoints = estimatedDonePoints;
+    }
+
+    /**
+     * The spent effort in hours, rounded per story.
+     */
+    @Column(nullable = false)
+    public long getSpentEffort() {
+        return spentEffort;
+    }
+
+    public void setSpentEffort(long spentEffort) {
+        this.spentEffort = spentEffort;
+    }
+
+    /**
+     * The effort left in hours, rounded per story.
+     */
+    @Column(nullable = false)
+    public long getEffortLeft() {
+        return effortLeft;
+    }
+
+    public void setEffortLeft(long effortLeft) {
+        this.effortLeft = effortLeft;
+    }
+
+    public StoryTreeBranchMetrics toBranchMetrics() {
+        StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
+        metrics.leafPoints = leafPoints;
+        metrics.doneLeafPoints = doneLeafPoints;
+        metrics.estimatedPoints = estimatedPoints;
+        metrics.estimatedDonePoints = estimatedDonePoints;
+        metrics.spentEffort = spentEffort;
+        metrics.effortLeft = effortLeft;
+        return metrics;
+    }
+}
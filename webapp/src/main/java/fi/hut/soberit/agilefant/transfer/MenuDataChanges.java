@@ -0,0 +1,63 @@
+package fi.hut.soberit.agilefant.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import flexjson.JSON;
+
+/**
+ * The changes of the backlog menu after a given menu version.
+ * <p>
+ * If the changes after the requested version are not known, the whole menu is
+ * returned in <code>menuData</code> and the change lists are empty.
+ */
+public class MenuDataChanges {
+
+    private long version;
+    private List<MenuDataNode> menuData;
+    private List<MenuDataNode> changed = new ArrayList<MenuDataNode>();
+    private List<Integer> removedIds = new ArrayList<Integer>();
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @JSON
+    public long getVersion() {
+        return version;
+    }
+
+    public void setMenuData(List<MenuDataNode> menuData) {
+        this.menuData = menuData;
+    }
+
+    @JSON
+    public List<MenuDataNode> getMenuData() {
+        return menuData;
+    }
+
+    public void setChanged(List<MenuDataNode> changed) {
+        this.changed = changed;
+    }
+
+    /**
+     * The added and changed nodes without their children.
+     */
+    @JSON
+    public List<MenuDataNode> getChanged() {
+        return changed;
+    }
+
+    public void setRemovedIds(List<Integer> removedIds) {
+        this.removedIds = removedIds;
+    }
+
+    /**
+     * The ids of the nodes that were removed or are no longer accessible.
+     */
+    @JSON
+    public List<Integer> getRemovedIds() {
+        return removedIds;
+    }
+
+}
@@ -8,6 +8,7 @@ import flexjson.JSON;
 public class MenuDataNode {
     
     private int id;
+    private Integer parentId;
     private String title;
     private ScheduleStatus scheduleStatus = ScheduleStatus.ONGOING;
     private boolean expand = false;
@@ -26,6 +27,19 @@ public class MenuDataNode {
         return id;
     }
 
+    public void setParentId(Integer parentId) {
+        this.parentId = parentId;
+    }
+
+    /**
+     * The id of the parent node. Only set for the nodes of
+     * {@link MenuDataChanges}, where the nodes are not nested.
+     */
+    @JSON
+    public Integer getParentId() {
+        return parentId;
+    }
+
     public void setTitle(String title) {
         this.title = title;
     }
@@ -1,5 +1,22 @@
 package fi.hut.soberit.agilefant.transfer;
 
+import org.joda.time.DateTime;
+import org.joda.time.Interval;
+
 public enum ScheduleStatus {
-    PAST, ONGOING, FUTURE
+    PAST, ONGOING, FUTURE;
+    
+    
+    public static ScheduleStatus forTimeframe(DateTime startDate, DateTime endDate) {
+        Interval interval = new Interval(startDate, endDate);
+        if (interval.isBeforeNow()) {
+            return PAST;
+        }
+        else if (interval.isAfterNow()) {
+            return FUTURE;
+        }
+        return ONGOING;
+    }
+    
+    
 }
@@ -1,5 +1,7 @@
 package fi.hut.soberit.agilefant.transfer;
 
+import fi.hut.soberit.agilefant.model.StoryState;
+
 public class StoryTreeBranchMetrics {
     public long doneLeafPoints = 0;
     public long leafPoints = 0;
@@ -27,4 +29,45 @@ public class StoryTreeBranchMetrics {
 	public long getEffortLeft() {
 		return effortLeft;
 	}
+
+	/**
+	 * Counts the points of a story without children as leaf points.
+	 */
+	public void addLeafPoints(long storyPoints, StoryState state) {
+	    if (state != StoryState.DEFERRED) {
+	        leafPoints += storyPoints;
+	        if (state == StoryState.DONE) {
+	            doneLeafPoints += storyPoints;
+	        }
+	    }
+	}
+
+	/**
+	 * Adds the metrics of a child branch. The points of deferred branches are
+	 * not counted, their effort is.
+	 */
+	public void addChild(StoryTreeBranchMetrics child, StoryState childState) {
+	    if (childState != StoryState.DEFERRED) {
+	        estimatedDonePoints += child.estimatedDonePoints;
+	        estimatedPoints += child.estimatedPoints;
+	        leafPoints += child.leafPoints;
+	        doneLeafPoints += child.doneLeafPoints;
+	    }
+	    spentEffort += child.spentEffort;
+	    effortLeft += child.effortLeft;
+	}
+
+	/**
+	 * Uses the points of the story itself as the estimate when they are
+	 * higher than the estimate of its children. Called after the children
+	 * have been added.
+	 */
+	public void applyStoryPoints(long storyPoints, StoryState state) {
+	    if (storyPoints > estimatedPoints && state != StoryState.DEFERRED) {
+	        estimatedPoints = storyPoints;
+	        if (state == StoryState.DONE) {
+	            estimatedDonePoints = storyPoints;
+	        }
+	    }
+	}
 }
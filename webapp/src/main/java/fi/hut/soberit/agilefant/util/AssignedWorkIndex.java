@@ -0,0 +1,140 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.joda.time.LocalDate;
+
+/**
+ * Immutable read model of the work assigned to a user on a single day.
+ * <p>
+ * Holds the ids of the stories in their Daily Work order and the ids of the
+ * tasks without a story, so that it can be cached between requests and the
+ * entities loaded by id in the session of each request.
+ */
+public class AssignedWorkIndex {
+
+    /**
+     * Orders the stories by backlog name, iteration name and rank. Stories
+     * without a backlog or iteration come first, stories without a rank
+     * last.
+     */
+    public static final Comparator<StoryEntry> STORY_ORDER = new Comparator<StoryEntry>() {
+        public int compare(StoryEntry o1, StoryEntry o2) {
+            int result = compareNames(o1.backlogName, o2.backlogName);
+            if (result == 0) {
+                result = compareNames(o1.iterationName, o2.iterationName);
+            }
+            if (result == 0) {
+                result = compareRanks(o1.getRank(), o2.getRank());
+            }
+            if (result == 0) {
+                result = (o1.storyId < o2.storyId) ? -1
+                        : ((o1.storyId == o2.storyId) ? 0 : 1);
+            }
+            return result;
+        }
+    };
+
+    private final LocalDate day;
+
+    private final List<Integer> storyIds;
+
+    private final List<Integer> taskIds;
+
+    public AssignedWorkIndex(LocalDate day, Collection<StoryEntry> stories,
+            Collection<Integer> taskIds) {
+        List<StoryEntry> sorted = new ArrayList<StoryEntry>(stories);
+        Collections.sort(sorted, STORY_ORDER);
+        List<Integer> sortedIds = new ArrayList<Integer>(sorted.size());
+        for (StoryEntry story : sorted) {
+            sortedIds.add(story.storyId);
+        }
+        this.day = day;
+        this.storyIds = Collections.unmodifiableList(sortedIds);
+        this.taskIds = Collections.unmodifiableList(new ArrayList<Integer>(taskIds));
+    }
+
+    /**
+     * @return the day the assigned work was read for
+     */
+    public LocalDate getDay() {
+        return day;
+    }
+
+    /**
+     * @return the ids of the stories in their Daily Work order
+     */
+    public List<Integer> getStoryIds() {
+        return storyIds;
+    }
+
+    /**
+     * @return the ids of the assigned tasks without a story
+     */
+    public List<Integer> getTaskIds() {
+        return taskIds;
+    }
+
+    private static int compareNames(String name1, String name2) {
+        if (name1 == null) {
+            return (name2 == null) ? 0 : -1;
+        } else if (name2 == null) {
+            return 1;
+        }
+        return name1.compareToIgnoreCase(name2);
+    }
+
+    private static int compareRanks(Integer rank1, Integer rank2) {
+        if (rank1 == null) {
+            return (rank2 == null) ? 0 : 1;
+        } else if (rank2 == null) {
+            return -1;
+        }
+        return rank1.compareTo(rank2);
+    }
+
+    /**
+     * The ordering data of a single assigned story.
+     */
+    public static class StoryEntry {
+        private final int storyId;
+        private final String backlogName;
+        private final String iterationName;
+        private final Integer iterationRank;
+        private final Integer projectRank;
+
+        public StoryEntry(int storyId, String backlogName,
+                String iterationName, Integer iterationRank,
+                Integer projectRank) {
+            this.storyId = storyId;
+            this.backlogName = backlogName;
+            this.iterationName = iterationName;
+            this.iterationRank = iterationRank;
+            this.projectRank = projectRank;
+        }
+
+        public int getStoryId() {
+            return storyId;
+        }
+
+        public String getBacklogName() {
+            return backlogName;
+        }
+
+        public String getIterationName() {
+            return iterationName;
+        }
+
+        /**
+         * @return the rank in the iteration, or the rank in the project if
+         *         the story has no iteration rank
+         */
+        public Integer getRank() {
+            return (iterationRank != null) ? iterationRank : projectRank;
+        }
+    }
+}
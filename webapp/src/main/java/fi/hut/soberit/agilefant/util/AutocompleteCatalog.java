@@ -0,0 +1,147 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable in-memory catalog of the users and teams offered by the
+ * autocomplete choosers.
+ * <p>
+ * The catalog is built from projection queries, so that the choosers can be
+ * filtered without loading the user and team entities and their team
+ * memberships.
+ */
+public class AutocompleteCatalog {
+
+    private final List<UserEntry> users;
+
+    private final List<TeamEntry> teams;
+
+    private final Map<Integer, UserEntry> usersById = new HashMap<Integer, UserEntry>();
+
+    /**
+     * The ids of the teams of each user.
+     */
+    private final Map<Integer, Set<Integer>> userTeamIds = new HashMap<Integer, Set<Integer>>();
+
+    public AutocompleteCatalog(Collection<UserEntry> users,
+            Collection<TeamEntry> teams) {
+        this.users = Collections.unmodifiableList(new ArrayList<UserEntry>(users));
+        this.teams = Collections.unmodifiableList(new ArrayList<TeamEntry>(teams));
+        for (UserEntry user : this.users) {
+            usersById.put(user.id, user);
+        }
+        for (TeamEntry team : this.teams) {
+            for (Integer userId : team.userIds) {
+                Set<Integer> teamIds = userTeamIds.get(userId);
+                if (teamIds == null) {
+                    teamIds = new HashSet<Integer>();
+                    userTeamIds.put(userId, teamIds);
+                }
+                teamIds.add(team.id);
+            }
+        }
+    }
+
+    public List<UserEntry> getUsers() {
+        return users;
+    }
+
+    public List<TeamEntry> getTeams() {
+        return teams;
+    }
+
+    /**
+     * @return the user, or <code>null</code> if not found
+     */
+    public UserEntry getUser(int userId) {
+        return usersById.get(userId);
+    }
+
+    /**
+     * @return the ids of the teams the user belongs to
+     */
+    public Set<Integer> getTeamIds(int userId) {
+        Set<Integer> teamIds = userTeamIds.get(userId);
+        if (teamIds == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(teamIds);
+    }
+
+    /**
+     * The chooser data of a single user.
+     */
+    public static class UserEntry {
+        private final int id;
+        private final String fullName;
+        private final String loginName;
+        private final boolean enabled;
+        private final boolean admin;
+
+        public UserEntry(int id, String fullName, String loginName,
+                boolean enabled, boolean admin) {
+            this.id = id;
+            this.fullName = fullName;
+            this.loginName = loginName;
+            this.enabled = enabled;
+            this.admin = admin;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getFullName() {
+            return fullName;
+        }
+
+        public String getLoginName() {
+            return loginName;
+        }
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public boolean isAdmin() {
+            return admin;
+        }
+    }
+
+    /**
+     * The chooser data of a single team.
+     */
+    public static class TeamEntry {
+        private final int id;
+        private final String name;
+        private final Set<Integer> userIds;
+
+        public TeamEntry(int id, String name, Set<Integer> userIds) {
+            this.id = id;
+            this.name = name;
+            this.userIds = Collections.unmodifiableSet(new HashSet<Integer>(userIds));
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the ids of the members of the team
+         */
+        public Set<Integer> getUserIds() {
+            return userIds;
+        }
+    }
+}
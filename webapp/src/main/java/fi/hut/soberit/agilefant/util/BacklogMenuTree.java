@@ -0,0 +1,421 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.joda.time.DateTime;
+
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+
+/**
+ * In-memory tree of the products, projects and iterations shown in the
+ * backlog menu.
+ * <p>
+ * The top level backlogs are ordered by name and the other backlogs by their
+ * start date, like in the menu. Every change increments the version of the
+ * tree, and the ids of the changed backlogs are kept for the latest
+ * {@link #MAX_LOGGED_CHANGES} changes so that the changes after a given
+ * version can be fetched.
+ * <p>
+ * The tree is thread safe.
+ */
+public class BacklogMenuTree {
+
+    public static final int MAX_LOGGED_CHANGES = 1000;
+
+    private static final Comparator<Entry> NAME_COMPARATOR = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            int result = String.CASE_INSENSITIVE_ORDER.compare(
+                    nullToEmpty(o1.name), nullToEmpty(o2.name));
+            if (result == 0) {
+                result = compareIds(o1, o2);
+            }
+            return result;
+        }
+    };
+
+    private static final Comparator<Entry> START_DATE_COMPARATOR = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            int result = 0;
+            if (o1.startDate == null) {
+                result = (o2.startDate == null) ? 0 : 1;
+            } else if (o2.startDate == null) {
+                result = -1;
+            } else {
+                result = o1.startDate.compareTo(o2.startDate);
+            }
+            if (result == 0) {
+                result = compareIds(o1, o2);
+            }
+            return result;
+        }
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    /**
+     * The sorted children of each backlog. The top level backlogs are stored
+     * with the <code>null</code> key.
+     */
+    private final Map<Integer, List<Entry>> children = new HashMap<Integer, List<Entry>>();
+
+    private final LinkedList<Change> changes = new LinkedList<Change>();
+
+    /*
+     * Start from the current time so that the versions are not reused after a
+     * restart.
+     */
+    private long version = System.currentTimeMillis();
+
+    /**
+     * The oldest version after which all the changes are in the log.
+     */
+    private long loggedSince = version;
+
+    /**
+     * Replace the contents of the tree. The change log is cleared.
+     */
+    public void load(Collection<Entry> newEntries) {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            children.clear();
+            changes.clear();
+            for (Entry entry : newEntries) {
+                entries.put(entry.id, entry);
+                getChildList(entry.parentId).add(entry);
+            }
+            for (Map.Entry<Integer, List<Entry>> childList : children.entrySet()) {
+                Collections.sort(childList.getValue(), getComparator(childList.getKey()));
+            }
+            version++;
+            loggedSince = version;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the backlog to the tree or replace its previous data. Moving a
+     * backlog keeps its children.
+     */
+    public void put(Entry entry) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.get(entry.id);
+            if (entry.equals(previous)) {
+                return;
+            }
+            if (previous != null) {
+                removeFromParent(previous);
+            }
+            entries.put(entry.id, entry);
+            insertSorted(getChildList(entry.parentId), entry);
+            logChange(entry.id);
+            if (previous != null && !equal(previous.parentId, entry.parentId)) {
+                // The descendants may now be under a different top level backlog
+                logDescendants(entry.id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the backlog and its descendants from the tree.
+     */
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return;
+            }
+            removeFromParent(entry);
+            removeSubtree(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getVersion() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Entry getEntry(int id) {
+        lock.readLock().lock();
+        try {
+            return entries.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get all the backlogs in the menu order. Each backlog is preceded by its
+     * parent.
+     */
+    public List<Entry> getEntries() {
+        lock.readLock().lock();
+        try {
+            List<Entry> result = new ArrayList<Entry>(entries.size());
+            addSubtrees(result, null);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the changes made after the given version.
+     *
+     * @return the changes, or <code>null</code> if the changes are not known
+     *         any more
+     */
+    public Changes getChangesSince(long sinceVersion) {
+        lock.readLock().lock();
+        try {
+            if (sinceVersion < loggedSince || sinceVersion > version) {
+                return null;
+            }
+            Set<Integer> changedIds = new LinkedHashSet<Integer>();
+            for (Change change : changes) {
+                if (change.version > sinceVersion) {
+                    changedIds.add(change.id);
+                }
+            }
+            Changes result = new Changes(version);
+            for (Integer id : changedIds) {
+                Entry entry = entries.get(id);
+                if (entry == null) {
+                    result.removedIds.add(id);
+                } else {
+                    result.changed.add(entry);
+                    result.rootIds.put(id, getRootId(entry));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Entry> getChildList(Integer parentId) {
+        List<Entry> childList = children.get(parentId);
+        if (childList == null) {
+            childList = new ArrayList<Entry>();
+            children.put(parentId, childList);
+        }
+        return childList;
+    }
+
+    private void insertSorted(List<Entry> childList, Entry entry) {
+        int index = Collections.binarySearch(childList, entry,
+                getComparator(entry.parentId));
+        childList.add((index < 0) ? -index - 1 : index, entry);
+    }
+
+    private void removeFromParent(Entry entry) {
+        List<Entry> childList = children.get(entry.parentId);
+        if (childList != null) {
+            childList.remove(entry);
+        }
+    }
+
+    private void removeSubtree(Entry entry) {
+        entries.remove(entry.id);
+        List<Entry> childList = children.remove(entry.id);
+        if (childList != null) {
+            for (Entry child : childList) {
+                removeSubtree(child);
+            }
+        }
+        logChange(entry.id);
+    }
+
+    private void logDescendants(int id) {
+        List<Entry> childList = children.get(id);
+        if (childList != null) {
+            for (Entry child : childList) {
+                logChange(child.id);
+                logDescendants(child.id);
+            }
+        }
+    }
+
+    private void addSubtrees(List<Entry> result, Integer parentId) {
+        List<Entry> childList = children.get(parentId);
+        if (childList == null) {
+            return;
+        }
+        for (Entry entry : childList) {
+            result.add(entry);
+            addSubtrees(result, entry.id);
+        }
+    }
+
+    private int getRootId(Entry entry) {
+        Entry root = entry;
+        while (root.parentId != null && entries.containsKey(root.parentId)) {
+            root = entries.get(root.parentId);
+        }
+        return root.id;
+    }
+
+    private void logChange(int id) {
+        version++;
+        changes.add(new Change(version, id));
+        if (changes.size() > MAX_LOGGED_CHANGES) {
+            loggedSince = changes.removeFirst().version;
+        }
+    }
+
+    private static Comparator<Entry> getComparator(Integer parentId) {
+        return (parentId == null) ? NAME_COMPARATOR : START_DATE_COMPARATOR;
+    }
+
+    private static int compareIds(Entry o1, Entry o2) {
+        return (o1.id < o2.id) ? -1 : ((o1.id == o2.id) ? 0 : 1);
+    }
+
+    private static String nullToEmpty(String value) {
+        return (value == null) ? "" : value;
+    }
+
+    private static boolean equal(Object o1, Object o2) {
+        return (o1 == null) ? o2 == null : o1.equals(o2);
+    }
+
+    /**
+     * The menu data of a single backlog.
+     */
+    public static class Entry {
+        private final int id;
+        private final Integer parentId;
+        private final BacklogType type;
+        private final String name;
+        private final DateTime startDate;
+        private final DateTime endDate;
+
+        public Entry(int id, Integer parentId, BacklogType type, String name,
+                DateTime startDate, DateTime endDate) {
+            this.id = id;
+            this.parentId = parentId;
+            this.type = type;
+            this.name = name;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the parent backlog, or <code>null</code> for top
+         *         level backlogs
+         */
+        public Integer getParentId() {
+            return parentId;
+        }
+
+        public BacklogType getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public DateTime getStartDate() {
+            return startDate;
+        }
+
+        public DateTime getEndDate() {
+            return endDate;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return id == other.id && equal(parentId, other.parentId)
+                    && type == other.type && equal(name, other.name)
+                    && equal(startDate, other.startDate)
+                    && equal(endDate, other.endDate);
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+    }
+
+    /**
+     * The changes of the tree after some version.
+     */
+    public static class Changes {
+        private final long version;
+        private final List<Entry> changed = new ArrayList<Entry>();
+        private final List<Integer> removedIds = new ArrayList<Integer>();
+        private final Map<Integer, Integer> rootIds = new HashMap<Integer, Integer>();
+
+        private Changes(long version) {
+            this.version = version;
+        }
+
+        /**
+         * @return the version of the tree the changes lead to
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the current data of the added and changed backlogs
+         */
+        public List<Entry> getChanged() {
+            return changed;
+        }
+
+        public List<Integer> getRemovedIds() {
+            return removedIds;
+        }
+
+        /**
+         * @return the id of the top level backlog of the changed backlog
+         */
+        public int getRootId(int id) {
+            return rootIds.get(id);
+        }
+    }
+
+    private static class Change {
+        private final long version;
+        private final int id;
+
+        public Change(long version, int id) {
+            this.version = version;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package fi.hut.soberit.agilefant.util;
+
+public class ExportUtils {
+
+    /**
+     * The number of rows of each sheet the .xlsx exports keep in memory, the
+     * rest are flushed to a temporary file.
+     */
+    public static final int XLSX_ROW_WINDOW = 100;
+
+}
@@ -0,0 +1,57 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps an in-memory cache from storing values computed from stale data.
+ * <p>
+ * Take the {@link #current()} generation before reading the data of a value,
+ * and cache the value only if the generation {@link #isCurrent(long)} after
+ * that. {@link #invalidate(Runnable)} starts a new generation and clears the
+ * cache, and does both again after the current transaction completes, since
+ * values read before the commit may still be cached concurrently.
+ */
+public class GenerationGuard {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @return the current generation, which changes on every invalidation
+     */
+    public long current() {
+        return generation.get();
+    }
+
+    /**
+     * @return true, if the cache has not been invalidated since the given
+     *         generation was taken
+     */
+    public boolean isCurrent(long generation) {
+        return this.generation.get() == generation;
+    }
+
+    /**
+     * Start a new generation and run the action clearing the cache, now and
+     * after the current transaction, if there is one.
+     */
+    public void invalidate(final Runnable clear) {
+        invalidateNow(clear);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager
+                    .registerSynchronization(new TransactionSynchronizationAdapter() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            invalidateNow(clear);
+                        }
+                    });
+        }
+    }
+
+    private void invalidateNow(Runnable clear) {
+        generation.incrementAndGet();
+        clear.run();
+    }
+}
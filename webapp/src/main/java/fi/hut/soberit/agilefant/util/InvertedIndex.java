@@ -0,0 +1,311 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory inverted index over the names and descriptions of objects of one
+ * kind.
+ * <p>
+ * The texts are split into lower case terms of letters and digits. A search
+ * matches the objects that have a term starting with each of the search
+ * terms. Search terms shorter than {@link #MIN_PREFIX_LENGTH} must match
+ * whole terms. The matches are ranked by whether the terms were found in the name
+ * or only in the description, and whether they matched whole terms or just
+ * prefixes.
+ * <p>
+ * The index is thread safe.
+ */
+public class InvertedIndex {
+
+    private static final Pattern HTML_TAGS = Pattern.compile("<[^>]*>");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * The minimum length of a query term that matches the terms it is a prefix
+     * of. Shorter query terms only match whole terms.
+     */
+    public static final int MIN_PREFIX_LENGTH = 3;
+
+    private static final int NAME_TERM_SCORE = 4;
+    private static final int NAME_PREFIX_SCORE = 3;
+    private static final int DESCRIPTION_TERM_SCORE = 2;
+    private static final int DESCRIPTION_PREFIX_SCORE = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TreeMap<String, Set<Integer>> postings = new TreeMap<String, Set<Integer>>();
+
+    private final Map<Integer, Document> documents = new HashMap<Integer, Document>();
+
+    /**
+     * Add the object to the index or replace its previous contents.
+     */
+    public void put(int id, Class<?> type, String name, String description) {
+        Document document = new Document(type, name, description);
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+            addInternal(id, document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add the object to the index, unless it is indexed already.
+     *
+     * @return true, if the object was added
+     */
+    public boolean putIfAbsent(int id, Class<?> type, String name,
+            String description) {
+        Document document = new Document(type, name, description);
+        lock.writeLock().lock();
+        try {
+            if (documents.containsKey(id)) {
+                return false;
+            }
+            addInternal(id, document);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Search the index.
+     *
+     * @param query
+     *            the search terms
+     * @param type
+     *            only objects of this type or its subtypes are returned
+     * @param maxResults
+     *            the maximum number of results
+     * @return the ids of the matching objects, the best match first
+     */
+    public List<Integer> search(String query, Class<?> type, int maxResults) {
+        final Set<String> queryTerms = new LinkedHashSet<String>(tokenize(query));
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<Integer>();
+        }
+
+        final Map<Integer, Integer> scores = new HashMap<Integer, Integer>();
+        final Map<Integer, String> names = new HashMap<Integer, String>();
+        lock.readLock().lock();
+        try {
+            // Only the postings of the most selective term are collected, the
+            // other terms are checked against the terms of the candidates
+            Collection<Set<Integer>> candidatePostings = null;
+            int candidateCount = Integer.MAX_VALUE;
+            for (String queryTerm : queryTerms) {
+                Collection<Set<Integer>> matches = matchingPostings(queryTerm);
+                int count = 0;
+                for (Set<Integer> ids : matches) {
+                    count += ids.size();
+                }
+                if (count == 0) {
+                    return new ArrayList<Integer>();
+                }
+                if (count < candidateCount) {
+                    candidatePostings = matches;
+                    candidateCount = count;
+                }
+            }
+
+            Set<Integer> candidates = new HashSet<Integer>();
+            for (Set<Integer> ids : candidatePostings) {
+                candidates.addAll(ids);
+            }
+            for (Integer id : candidates) {
+                Document document = documents.get(id);
+                if (!type.isAssignableFrom(document.type)) {
+                    continue;
+                }
+                int score = document.score(queryTerms);
+                if (score > 0) {
+                    scores.put(id, score);
+                    names.put(id, document.name);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Integer> results = new ArrayList<Integer>(scores.keySet());
+        Collections.sort(results, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                int result = scores.get(o2).compareTo(scores.get(o1));
+                if (result == 0) {
+                    result = names.get(o1).compareToIgnoreCase(names.get(o2));
+                }
+                if (result == 0) {
+                    result = o1.compareTo(o2);
+                }
+                return result;
+            }
+        });
+        if (results.size() > maxResults) {
+            results = new ArrayList<Integer>(results.subList(0, maxResults));
+        }
+        return results;
+    }
+
+    /**
+     * Get the postings of the terms the query term matches. Query terms
+     * shorter than {@link #MIN_PREFIX_LENGTH} only match whole terms, so that
+     * the first keystrokes of a search do not go through most of the index.
+     */
+    private Collection<Set<Integer>> matchingPostings(String queryTerm) {
+        if (!isPrefix(queryTerm)) {
+            Set<Integer> ids = postings.get(queryTerm);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            return Collections.singletonList(ids);
+        }
+        return postings.subMap(queryTerm, queryTerm + Character.MAX_VALUE).values();
+    }
+
+    private static boolean isPrefix(String queryTerm) {
+        return queryTerm.length() >= MIN_PREFIX_LENGTH;
+    }
+
+    /**
+     * Split the text into lower case terms. HTML tags are ignored.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<String>();
+        if (text == null) {
+            return terms;
+        }
+        String plainText = HTML_TAGS.matcher(text).replaceAll(" ");
+        for (String term : SEPARATORS.split(plainText.toLowerCase(Locale.ENGLISH))) {
+            if (term.length() > 0) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private void addInternal(int id, Document document) {
+        documents.put(id, document);
+        for (String term : document.terms()) {
+            Set<Integer> ids = postings.get(term);
+            if (ids == null) {
+                ids = new HashSet<Integer>();
+                postings.put(term, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    private void removeInternal(int id) {
+        Document document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        for (String term : document.terms()) {
+            Set<Integer> ids = postings.get(term);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    private static class Document {
+        private final Class<?> type;
+        private final String name;
+        private final Set<String> nameTerms;
+        private final Set<String> descriptionTerms;
+
+        public Document(Class<?> type, String name, String description) {
+            this.type = type;
+            this.name = (name == null) ? "" : name;
+            this.nameTerms = new HashSet<String>(tokenize(name));
+            this.descriptionTerms = new HashSet<String>(tokenize(description));
+            this.descriptionTerms.removeAll(nameTerms);
+        }
+
+        public Set<String> terms() {
+            Set<String> terms = new HashSet<String>(nameTerms);
+            terms.addAll(descriptionTerms);
+            return terms;
+        }
+
+        /**
+         * @return the sum of the scores of the query terms, or 0 if some of
+         *         them do not match
+         */
+        public int score(Set<String> queryTerms) {
+            int score = 0;
+            for (String queryTerm : queryTerms) {
+                int termScore = score(queryTerm);
+                if (termScore == 0) {
+                    return 0;
+                }
+                score += termScore;
+            }
+            return score;
+        }
+
+        private int score(String queryTerm) {
+            if (nameTerms.contains(queryTerm)) {
+                return NAME_TERM_SCORE;
+            }
+            if (isPrefix(queryTerm) && startsWith(nameTerms, queryTerm)) {
+                return NAME_PREFIX_SCORE;
+            }
+            if (descriptionTerms.contains(queryTerm)) {
+                return DESCRIPTION_TERM_SCORE;
+            }
+            if (isPrefix(queryTerm) && startsWith(descriptionTerms, queryTerm)) {
+                return DESCRIPTION_PREFIX_SCORE;
+            }
+            return 0;
+        }
+
+        private static boolean startsWith(Set<String> terms, String prefix) {
+            for (String term : terms) {
+                if (term.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -1,18 +1,57 @@
 package fi.hut.soberit.agilefant.util;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
 
+/**
+ * Burnup time series of a project.
+ * <p>
+ * The points are kept in primitive arrays in timestamp order, so that the
+ * series of a long-running project can be kept in memory and extended as
+ * new history entries are written. History entries with the same timestamp
+ * are merged into a single point of their maximum sums.
+ */
 public class ProjectBurnupData implements Iterable<ProjectBurnupData.Entry> {
 
-    private final List<ProjectBurnupData.Entry> entries;
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Source of the versions, so that the versions of different series
+     * instances never collide.
+     */
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private long[] estimateSums = new long[INITIAL_CAPACITY];
+    private long[] doneSums = new long[INITIAL_CAPACITY];
+    private long[] branchMaxes = new long[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * The id of the history entry of the last point, or 0 if not known.
+     */
+    private int lastEntryId = 0;
+
+    /**
+     * Whether the last point was merged from several history entries.
+     */
+    private boolean lastPointMerged = false;
+
+    private long version = VERSIONS.incrementAndGet();
+
+    public ProjectBurnupData() {
+    }
 
     public ProjectBurnupData(List<ProjectBurnupData.Entry> entries) {
-        this.entries = entries;
+        for (Entry entry : entries) {
+            append(0, entry);
+        }
     }
 
     public static class Entry {
@@ -46,18 +85,81 @@ public class ProjectBurnupData implements Iterable<ProjectBurnupData.Entry> {
 
     }
 
+    /**
+     * Adds the state of a stored history entry to the end of the series. If
+     * the entry is the one of the last point, the point is replaced.
+     *
+     * @param entryId
+     *            the id of the history entry, or 0 if not known
+     * @return <code>false</code> if the entry cannot be added without
+     *         rebuilding the series, in which case the series is unchanged
+     */
+    public synchronized boolean append(int entryId, Entry entry) {
+        long timestamp = entry.timestamp.getMillis();
+        if (size > 0 && entryId != 0 && entryId == lastEntryId) {
+            if (lastPointMerged
+                    || (size > 1 && timestamp <= timestamps[size - 2])) {
+                return false;
+            }
+            size--;
+            addPoint(timestamp, entry);
+        } else if (size == 0 || timestamp > timestamps[size - 1]) {
+            addPoint(timestamp, entry);
+            lastPointMerged = false;
+        } else if (timestamp == timestamps[size - 1]) {
+            int last = size - 1;
+            estimateSums[last] = Math.max(estimateSums[last], entry.estimateSum);
+            doneSums[last] = Math.max(doneSums[last], entry.doneSum);
+            branchMaxes[last] = Math.max(branchMaxes[last], entry.branchMax);
+            lastPointMerged = true;
+        } else {
+            return false;
+        }
+        lastEntryId = entryId;
+        version = VERSIONS.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return a version that changes whenever the series changes
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Iterates over a snapshot of the points, so the series may be extended
+     * while iterating.
+     */
     public Iterator<Entry> iterator() {
+        List<Entry> entries;
+        synchronized (this) {
+            entries = new ArrayList<Entry>(size);
+            for (int i = 0; i < size; i++) {
+                entries.add(new Entry(new DateTime(timestamps[i]),
+                        estimateSums[i], doneSums[i], branchMaxes[i]));
+            }
+        }
         return Collections.unmodifiableList(entries).iterator();
     }
 
-    public static ProjectBurnupData createFromRawData(List<Object[]> rawData) {
-        List<ProjectBurnupData.Entry> entries = new ArrayList<ProjectBurnupData.Entry>(
-                rawData.size());
-        for (Object[] rawEntry : rawData) {
-            entries.add(new Entry((DateTime) rawEntry[0],
-                    (Long) rawEntry[1], (Long) rawEntry[2], (Long) rawEntry[3]));
+    private void addPoint(long timestamp, Entry entry) {
+        if (size == timestamps.length) {
+            int capacity = size * 2;
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            estimateSums = Arrays.copyOf(estimateSums, capacity);
+            doneSums = Arrays.copyOf(doneSums, capacity);
+            branchMaxes = Arrays.copyOf(branchMaxes, capacity);
         }
-        return new ProjectBurnupData(entries);
+        timestamps[size] = timestamp;
+        estimateSums[size] = entry.estimateSum;
+        doneSums[size] = entry.doneSum;
+        branchMaxes[size] = entry.branchMax;
+        size++;
     }
 
 }
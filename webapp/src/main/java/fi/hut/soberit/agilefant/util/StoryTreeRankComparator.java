@@ -0,0 +1,18 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.Comparator;
+
+import fi.hut.soberit.agilefant.model.Story;
+
+/**
+ * Orders the stories by their rank among their siblings.
+ */
+public class StoryTreeRankComparator implements Comparator<Story> {
+
+    public int compare(Story story1, Story story2) {
+        int rank1 = story1.getTreeRank();
+        int rank2 = story2.getTreeRank();
+        return (rank1 < rank2) ? -1 : ((rank1 == rank2) ? 0 : 1);
+    }
+
+}
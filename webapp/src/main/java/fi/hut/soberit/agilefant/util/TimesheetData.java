@@ -2,9 +2,12 @@ package fi.hut.soberit.agilefant.util;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.transfer.BacklogTimesheetNode;
@@ -15,11 +18,23 @@ public class TimesheetData {
     private Map<Integer, BacklogTimesheetNode> backlogNodes;
     private Map<Integer, StoryTimesheetNode> storyNodes;
     private Map<Integer, TaskTimesheetNode> taskNode;
+    private Set<TimesheetNode> linkedNodes;
     
     public TimesheetData() {
         this.backlogNodes = new HashMap<Integer, BacklogTimesheetNode>();
         this.storyNodes = new HashMap<Integer, StoryTimesheetNode>();
         this.taskNode = new HashMap<Integer, TaskTimesheetNode>();
+        this.linkedNodes = new HashSet<TimesheetNode>();
+    }
+
+    public void addEntry(HourEntry entry) {
+        if (entry instanceof TaskHourEntry) {
+            this.addEntry((TaskHourEntry) entry);
+        } else if (entry instanceof StoryHourEntry) {
+            this.addEntry((StoryHourEntry) entry);
+        } else if (entry instanceof BacklogHourEntry) {
+            this.addEntry((BacklogHourEntry) entry);
+        }
     }
 
     public void addEntry(BacklogHourEntry entry) {
@@ -59,6 +74,16 @@ public class TimesheetData {
     public void addNode(TaskTimesheetNode node) {
         this.taskNode.put(node.getId(), node);
     }
+
+    /**
+     * Marks the node as attached to its parent node.
+     * 
+     * @return false if the node was already attached
+     */
+    public boolean markLinked(TimesheetNode node) {
+        return this.linkedNodes.add(node);
+    }
+
     public BacklogTimesheetNode getBacklogNode(int backlogId) {
         return this.backlogNodes.get(backlogId);
     }
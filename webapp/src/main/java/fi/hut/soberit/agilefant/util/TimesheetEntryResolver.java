@@ -0,0 +1,106 @@
+package fi.hut.soberit.agilefant.util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.HourEntry;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryHourEntry;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.TaskHourEntry;
+import fi.hut.soberit.agilefant.model.User;
+
+/**
+ * Turns timesheet projection rows into hour entries for the timesheet tree
+ * and export.
+ * <p>
+ * The backlogs and users are the loaded entities, looked up by id. The
+ * stories and tasks are not loaded: they are transient objects which only
+ * hold the id, the name and the parent read with the row, shared by all the
+ * rows of the same story or task. None of the created objects may be saved.
+ */
+public class TimesheetEntryResolver {
+
+    private final Map<Integer, Backlog> backlogs = new HashMap<Integer, Backlog>();
+    private final Map<Integer, User> users = new HashMap<Integer, User>();
+    private final Map<Integer, Story> stories = new HashMap<Integer, Story>();
+    private final Map<Integer, Task> tasks = new HashMap<Integer, Task>();
+
+    /**
+     * @param backlogs
+     *            the backlogs of the rows; their ancestors are included
+     * @param users
+     *            the users of the rows
+     */
+    public TimesheetEntryResolver(Collection<Backlog> backlogs,
+            Collection<User> users) {
+        for (Backlog backlog : backlogs) {
+            for (Backlog current = backlog; current != null; current = current.getParent()) {
+                this.backlogs.put(current.getId(), current);
+            }
+        }
+        for (User user : users) {
+            this.users.put(user.getId(), user);
+        }
+    }
+
+    public HourEntry resolve(TimesheetEntryRow row) {
+        HourEntry entry;
+        if (row.getTaskId() != null) {
+            TaskHourEntry taskEntry = new TaskHourEntry();
+            taskEntry.setTask(getTask(row));
+            entry = taskEntry;
+        } else if (row.getStoryId() != null) {
+            StoryHourEntry storyEntry = new StoryHourEntry();
+            storyEntry.setStory(getStory(row));
+            entry = storyEntry;
+        } else {
+            BacklogHourEntry backlogEntry = new BacklogHourEntry();
+            backlogEntry.setBacklog(getBacklog(row.getBacklogId()));
+            entry = backlogEntry;
+        }
+        entry.setId(row.getEntryId());
+        entry.setDate(row.getDate());
+        entry.setDescription(row.getDescription());
+        entry.setMinutesSpent(row.getMinutesSpent());
+        entry.setUser(users.get(row.getUserId()));
+        return entry;
+    }
+
+    private Task getTask(TimesheetEntryRow row) {
+        Task task = tasks.get(row.getTaskId());
+        if (task == null) {
+            task = new Task();
+            task.setId(row.getTaskId());
+            task.setName(row.getTaskName());
+            if (row.getStoryId() != null) {
+                task.setStory(getStory(row));
+            } else {
+                task.setIteration((Iteration) getBacklog(row.getTaskIterationId()));
+            }
+            tasks.put(task.getId(), task);
+        }
+        return task;
+    }
+
+    private Story getStory(TimesheetEntryRow row) {
+        Story story = stories.get(row.getStoryId());
+        if (story == null) {
+            story = new Story();
+            story.setId(row.getStoryId());
+            story.setName(row.getStoryName());
+            story.setIteration((Iteration) getBacklog(row.getStoryIterationId()));
+            story.setBacklog(getBacklog(row.getStoryBacklogId()));
+            stories.put(story.getId(), story);
+        }
+        return story;
+    }
+
+    private Backlog getBacklog(Integer backlogId) {
+        return (backlogId == null) ? null : backlogs.get(backlogId);
+    }
+}
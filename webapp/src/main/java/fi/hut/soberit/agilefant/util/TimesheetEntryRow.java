@@ -0,0 +1,113 @@
+package fi.hut.soberit.agilefant.util;
+
+import org.joda.time.DateTime;
+
+/**
+ * A single hour entry of a timesheet as a flat projection row.
+ * <p>
+ * Holds the ids and names the timesheet needs instead of the entities, so
+ * that the entries can be read in one query and handled one at a time.
+ * Exactly one of the backlog, story and task ids of the entry itself is set;
+ * the story of a task entry is the story of the task.
+ *
+ * @see fi.hut.soberit.agilefant.db.HourEntryDAO#retrieveTimesheetEntries
+ */
+public class TimesheetEntryRow {
+
+    private final int entryId;
+    private final DateTime date;
+    private final String description;
+    private final long minutesSpent;
+    private final int userId;
+
+    private final Integer backlogId;
+
+    private final Integer storyId;
+    private final String storyName;
+    private final Integer storyIterationId;
+    private final Integer storyBacklogId;
+
+    private final Integer taskId;
+    private final String taskName;
+    private final Integer taskIterationId;
+
+    public TimesheetEntryRow(int entryId, DateTime date, String description,
+            long minutesSpent, int userId, Integer backlogId, Integer storyId,
+            String storyName, Integer storyIterationId, Integer storyBacklogId,
+            Integer taskId, String taskName, Integer taskIterationId) {
+        this.entryId = entryId;
+        this.date = date;
+        this.description = description;
+        this.minutesSpent = minutesSpent;
+        this.userId = userId;
+        this.backlogId = backlogId;
+        this.storyId = storyId;
+        this.storyName = storyName;
+        this.storyIterationId = storyIterationId;
+        this.storyBacklogId = storyBacklogId;
+        this.taskId = taskId;
+        this.taskName = taskName;
+        this.taskIterationId = taskIterationId;
+    }
+
+    public int getEntryId() {
+        return entryId;
+    }
+
+    public DateTime getDate() {
+        return date;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public long getMinutesSpent() {
+        return minutesSpent;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    /**
+     * The backlog of a backlog entry, otherwise null.
+     */
+    public Integer getBacklogId() {
+        return backlogId;
+    }
+
+    /**
+     * The story of a story entry, or the story of the task of a task entry.
+     */
+    public Integer getStoryId() {
+        return storyId;
+    }
+
+    public String getStoryName() {
+        return storyName;
+    }
+
+    public Integer getStoryIterationId() {
+        return storyIterationId;
+    }
+
+    public Integer getStoryBacklogId() {
+        return storyBacklogId;
+    }
+
+    /**
+     * The task of a task entry, otherwise null.
+     */
+    public Integer getTaskId() {
+        return taskId;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public Integer getTaskIterationId() {
+        return taskIterationId;
+    }
+}
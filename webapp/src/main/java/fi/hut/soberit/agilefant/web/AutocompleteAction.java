@@ -4,6 +4,11 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts2.interceptor.ServletRequestAware;
+import org.apache.struts2.interceptor.ServletResponseAware;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.support.PropertyComparator;
 import org.springframework.context.annotation.Scope;
@@ -12,66 +17,117 @@ import org.springframework.stereotype.Component;
 import com.opensymphony.xwork2.Action;
 import com.opensymphony.xwork2.ActionSupport;
 
-import fi.hut.soberit.agilefant.business.TransferObjectBusiness;
+import fi.hut.soberit.agilefant.business.AutocompleteBusiness;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
 
 @Component("autocompleteAction")
 @Scope("prototype")
-public class AutocompleteAction extends ActionSupport {
+public class AutocompleteAction extends ActionSupport implements
+        ServletRequestAware, ServletResponseAware {
 
     private static final long serialVersionUID = 7282682342820966296L;
-    
+
     private List<AutocompleteDataNode> autocompleteData = null;
-    
+
     private Integer backlogId;
-    
+
+    private String term;
+
     @Autowired
-    private TransferObjectBusiness transferObjectBusiness;
-    
+    private AutocompleteBusiness autocompleteBusiness;
+
+    private HttpServletRequest request;
+
+    private HttpServletResponse response;
+
     @SuppressWarnings("unchecked")
     public String userTeamData() {
+        if (isNotModified()) {
+            return Action.NONE;
+        }
         autocompleteData = new ArrayList<AutocompleteDataNode>();
-        autocompleteData.addAll(transferObjectBusiness.constructUserAutocompleteData());
-        autocompleteData.addAll(transferObjectBusiness.constructTeamAutocompleteData(true));
-        
+        autocompleteData.addAll(autocompleteBusiness.constructUserAutocompleteData(term));
+        autocompleteData.addAll(autocompleteBusiness.constructTeamAutocompleteData(true, term));
+
         Collections.sort(autocompleteData, new PropertyComparator("name", true, true));
-        
+
         return Action.SUCCESS;
     }
-    
+
     public String teamData() {
-        autocompleteData = transferObjectBusiness.constructTeamAutocompleteData(false);
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructTeamAutocompleteData(false, term);
         return Action.SUCCESS;
     }
-    
+
     public String backlogData() {
-        autocompleteData = transferObjectBusiness.constructBacklogAutocompleteData(backlogId);
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructBacklogAutocompleteData(backlogId, term);
         return Action.SUCCESS;
     }
-    
+
     public String backlogAndIterationData() {
-        autocompleteData = transferObjectBusiness.constructBacklogAndIterationAutocompleteData(backlogId);
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructBacklogAndIterationAutocompleteData(backlogId, term);
         return Action.SUCCESS;
     }
-    
+
     public String productData() {
-        autocompleteData = transferObjectBusiness.constructProductAutocompleteData();
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructProductAutocompleteData(term);
         return Action.SUCCESS;
     }
-    
+
     public String projectData() {
-        autocompleteData = transferObjectBusiness.constructProjectAutocompleteData();
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructProjectAutocompleteData(term);
         return Action.SUCCESS;
     }
 
     public String currentIterationData() {
-        autocompleteData = transferObjectBusiness.constructCurrentIterationAutocompleteData();
+        if (isNotModified()) {
+            return Action.NONE;
+        }
+        autocompleteData = autocompleteBusiness.constructCurrentIterationAutocompleteData(term);
         return Action.SUCCESS;
     }
 
-    public void setTransferObjectBusiness(
-            TransferObjectBusiness transferObjectBusiness) {
-        this.transferObjectBusiness = transferObjectBusiness;
+    /**
+     * Sets the entity tag of the logged user's chooser data to the response
+     * and checks whether the client already has the current data. The
+     * parameters are part of the requested URL, so the same tag is used for
+     * all of them.
+     */
+    private boolean isNotModified() {
+        if (request == null || response == null) {
+            return false;
+        }
+        String eTag = "\""
+                + autocompleteBusiness.getAutocompleteDataETag(SecurityUtil
+                        .getLoggedUser()) + "\"";
+        response.setHeader("ETag", eTag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (eTag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+
+    public void setAutocompleteBusiness(
+            AutocompleteBusiness autocompleteBusiness) {
+        this.autocompleteBusiness = autocompleteBusiness;
     }
 
     public List<AutocompleteDataNode> getAutocompleteData() {
@@ -82,4 +138,20 @@ public class AutocompleteAction extends ActionSupport {
         this.backlogId = backlogId;
     }
 
+    /**
+     * Only return the items whose name or one of its words starts with the
+     * term.
+     */
+    public void setTerm(String term) {
+        this.term = term;
+    }
+
+    public void setServletRequest(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    public void setServletResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
 }
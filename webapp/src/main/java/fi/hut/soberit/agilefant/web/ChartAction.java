@@ -3,6 +3,11 @@ package fi.hut.soberit.agilefant.web;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts2.interceptor.ServletRequestAware;
+import org.apache.struts2.interceptor.ServletResponseAware;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -19,7 +24,8 @@ import fi.hut.soberit.agilefant.model.Project;
 
 @Component("chartAction")
 @Scope("prototype")
-public class ChartAction extends ActionSupport {
+public class ChartAction extends ActionSupport implements
+        ServletRequestAware, ServletResponseAware {
 
     private static final long serialVersionUID = -2860355939047563512L;
     
@@ -44,6 +50,10 @@ public class ChartAction extends ActionSupport {
     
     private Integer timeZoneOffset = 0;
     
+    private HttpServletRequest request;
+    
+    private HttpServletResponse response;
+    
     public void setIterationBurndownBusiness(
             IterationBurndownBusiness iterationBurndownBusiness) {
         this.iterationBurndownBusiness = iterationBurndownBusiness;
@@ -68,12 +78,18 @@ public class ChartAction extends ActionSupport {
 
     public String getIterationBurndown() {
         Iteration iteration = iterationBusiness.retrieve(backlogId);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getIterationBurndown(iteration, timeZoneOffset);
         return Action.SUCCESS;
     }
     
     public String getIterationBurndownByToken() {
         Iteration iteration = iterationBusiness.retreiveIterationByReadonlyToken(readonlyToken);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getIterationBurndown(iteration, timeZoneOffset);
         return Action.SUCCESS;
     }
@@ -92,27 +108,59 @@ public class ChartAction extends ActionSupport {
 
     public String getSmallIterationBurndown() {
         Iteration iteration = iterationBusiness.retrieve(backlogId);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getSmallIterationBurndown(iteration, timeZoneOffset);
         return Action.SUCCESS;
     }
     
     public String getSmallIterationBurndownByToken() {
         Iteration iteration = iterationBusiness.retreiveIterationByReadonlyToken(readonlyToken);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getSmallIterationBurndown(iteration, timeZoneOffset);
         return Action.SUCCESS;
     }
                   
     public String getCustomIterationBurndown() {
         Iteration iteration = iterationBusiness.retrieve(backlogId);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getCustomIterationBurndown(iteration, customBdWidth, customBdHeight, timeZoneOffset);
         return Action.SUCCESS;
     }
     
     public String getCustomIterationBurndownByToken() {
         Iteration iteration = iterationBusiness.retreiveIterationByReadonlyToken(readonlyToken);
+        if (isBurndownNotModified(iteration)) {
+            return Action.NONE;
+        }
         result = iterationBurndownBusiness.getCustomIterationBurndown(iteration, customBdWidth, customBdHeight, timeZoneOffset);
         return Action.SUCCESS;
     }
+
+    /**
+     * Sets the burndown's entity tag to the response and checks whether the
+     * client already has the current image.
+     */
+    private boolean isBurndownNotModified(Iteration iteration) {
+        if (request == null || response == null) {
+            return false;
+        }
+        String eTag = "\""
+                + iterationBurndownBusiness.getIterationBurndownETag(iteration,
+                        timeZoneOffset) + "\"";
+        response.setHeader("ETag", eTag);
+        response.setHeader("Cache-Control", "no-cache");
+        if (eTag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
   
     public InputStream getInputStream() {
         return new ByteArrayInputStream(result);
@@ -136,6 +184,14 @@ public class ChartAction extends ActionSupport {
         this.timeZoneOffset = timeZoneOffset;
     }
 
+    public void setServletRequest(HttpServletRequest request) {
+        this.request = request;
+    }
+
+    public void setServletResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
     public byte[] getResult() {
         return result;
     }    
@@ -1,12 +1,15 @@
 package fi.hut.soberit.agilefant.web;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.util.zip.ZipInputStream;
 
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.struts2.interceptor.ServletResponseAware;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -17,7 +20,6 @@ import com.opensymphony.xwork2.ActionSupport;
 import com.typesafe.config.Config;
 
 import fi.hut.soberit.agilefant.business.ExportImportBusiness;
-import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpTO;
 import fi.hut.soberit.agilefant.business.IterationBusiness;
 import fi.hut.soberit.agilefant.business.ProductBusiness;
 import fi.hut.soberit.agilefant.business.UserBusiness;
@@ -27,12 +29,13 @@ import fi.hut.soberit.agilefant.exportimport.ExportImport.VersionMismatchExcepti
 
 @Component("dbExportAction")
 @Scope("prototype")
-public class DatabaseExportAction extends ActionSupport {
+public class DatabaseExportAction extends ActionSupport implements ServletResponseAware {
 
     private static final long serialVersionUID = -1639488740106383276L;
 
+    private static final Logger LOG = LoggerFactory.getLogger(DatabaseExportAction.class);
+
     private XmlBackupper takeDbBackup;
-    private ByteArrayOutputStream databaseStream;
     private String errorStacktrace;
     @Autowired
     private ExportImportBusiness exportImportBusiness;
@@ -52,6 +55,8 @@ public class DatabaseExportAction extends ActionSupport {
     private Config config;
     
     private File fileUpload;
+    
+    private HttpServletResponse response;
 
     public File getFileUpload() {
         return fileUpload;
@@ -75,13 +80,24 @@ public class DatabaseExportAction extends ActionSupport {
         return Action.SUCCESS;
     }
 
+    /**
+     * Streams the zipped export directly to the response.
+     */
     public String generateDatabaseExport() {
         try {
             this.takeDbBackup = new XmlBackupper();
-            this.databaseStream = takeDbBackup.generateDBDumpStream(exportImportBusiness, exportImport);
-            
-            return Action.SUCCESS;
+            response.setContentType("application/octet-stream");
+            response.setHeader("Content-Disposition", "filename=\"AgilefantDatabaseExport.zip\"");
+            takeDbBackup.generateDBDumpStream(exportImportBusiness, exportImport, response.getOutputStream());
+            response.flushBuffer();
+            return Action.NONE;
         } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the export is already sent, the error page can't be shown anymore
+                LOG.error("Database export failed", e);
+                return Action.NONE;
+            }
+            response.reset();
         	errorStacktrace = Throwables.getStackTraceAsString(e);
             return Action.ERROR;
         }
@@ -95,8 +111,7 @@ public class DatabaseExportAction extends ActionSupport {
             InputStream inputStream = new FileInputStream(fileUpload);
             ZipInputStream zipInputStream = new ZipInputStream(inputStream);
             zipInputStream.getNextEntry();
-            OrganizationDumpTO organizationTO = exportImport.fromJson(zipInputStream);
-            exportImportBusiness.importOrganization(organizationTO);
+            exportImport.fromJson(zipInputStream, exportImportBusiness);
             return Action.SUCCESS;
         } catch (Exception e) {
             if (e.getCause() instanceof VersionMismatchException) {
@@ -108,14 +123,6 @@ public class DatabaseExportAction extends ActionSupport {
         }
     }
 
-    public InputStream getDatabaseStream() {
-        return new ByteArrayInputStream(this.databaseStream.toByteArray());
-    }
-
-    public void setDatabaseStream(ByteArrayOutputStream databaseStream) {
-        this.databaseStream = databaseStream;
-    }
-    
     public String getErrorStacktrace() {
     	return errorStacktrace;
     }
@@ -131,4 +138,8 @@ public class DatabaseExportAction extends ActionSupport {
     	return this.config.getBoolean("agilefant.import.enabled");
     }
 
+    public void setServletResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
 }
@@ -5,8 +5,13 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.struts2.interceptor.ServletResponseAware;
 import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -17,17 +22,19 @@ import fi.hut.soberit.agilefant.business.ExportIterationBusiness;
 
 @Scope("prototype")
 @Component("exportIterationAction")
-public class ExportIterationAction implements Action {
+public class ExportIterationAction implements Action, ServletResponseAware {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExportIterationAction.class);
+
     private ByteArrayOutputStream iterationData;
     private String exportFileName;
     private int iterationId;
     @Autowired
     private ExportIterationBusiness exportIterationBusiness;
+    private HttpServletResponse response;
 
     public String execute() {
-        DateTime now = new DateTime();
-        exportFileName = "Agilefant_Iteration_" + iterationId + "_"
-                + now.toString("yyyyMMDDHHmm");
+        exportFileName = createExportFileName();
         iterationData = new ByteArrayOutputStream();
         Workbook exportable = exportIterationBusiness
                 .exportIteration(iterationId);
@@ -39,6 +46,35 @@ public class ExportIterationAction implements Action {
         return Action.SUCCESS;
     }
 
+    /**
+     * Streams the .xlsx export directly to the response.
+     */
+    public String exportXlsx() {
+        try {
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "filename=\""
+                    + createExportFileName() + ".xlsx\"");
+            exportIterationBusiness.writeIterationXlsx(iterationId,
+                    response.getOutputStream());
+            response.flushBuffer();
+            return Action.NONE;
+        } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the export is already sent, the error can't be shown anymore
+                LOG.error("Iteration export failed", e);
+                return Action.NONE;
+            }
+            response.reset();
+            return Action.ERROR;
+        }
+    }
+
+    private String createExportFileName() {
+        DateTime now = new DateTime();
+        return "Agilefant_Iteration_" + iterationId + "_"
+                + now.toString("yyyyMMDDHHmm");
+    }
+
     public int getIterationId() {
         return iterationId;
     }
@@ -55,4 +91,13 @@ public class ExportIterationAction implements Action {
         return exportFileName;
     }
 
+    public void setServletResponse(HttpServletResponse response) {
+        this.response = response;
+    }
+
+    public void setExportIterationBusiness(
+            ExportIterationBusiness exportIterationBusiness) {
+        this.exportIterationBusiness = exportIterationBusiness;
+    }
+
 }
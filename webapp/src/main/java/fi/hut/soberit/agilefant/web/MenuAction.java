@@ -11,6 +11,7 @@ import com.opensymphony.xwork2.ActionSupport;
 
 import fi.hut.soberit.agilefant.business.MenuBusiness;
 import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.MenuDataChanges;
 import fi.hut.soberit.agilefant.transfer.MenuDataNode;
 
 /**
@@ -29,12 +30,19 @@ public class MenuAction extends ActionSupport {
     
     private List<MenuDataNode> menuData;
     private List<MenuDataNode> assignmentData;    
+    private MenuDataChanges menuDataChanges;
+    private long sinceVersion;
     
     public String constructBacklogMenuData() {
         menuData = menuBusiness.constructBacklogMenuData();
         return Action.SUCCESS;
     }
     
+    public String constructBacklogMenuChanges() {
+        menuDataChanges = menuBusiness.constructBacklogMenuChanges(sinceVersion);
+        return Action.SUCCESS;
+    }
+    
     public String constructAssignmentData() {
         assignmentData = menuBusiness.constructMyAssignmentsData(SecurityUtil.getLoggedUser());
         return Action.SUCCESS;
@@ -52,4 +60,12 @@ public class MenuAction extends ActionSupport {
         return assignmentData;
     }
     
+    public MenuDataChanges getMenuDataChanges() {
+        return menuDataChanges;
+    }
+    
+    public void setSinceVersion(long sinceVersion) {
+        this.sinceVersion = sinceVersion;
+    }
+    
 }
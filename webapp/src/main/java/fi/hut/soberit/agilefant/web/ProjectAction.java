@@ -3,6 +3,7 @@ package fi.hut.soberit.agilefant.web;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.DateTime;
@@ -71,9 +72,9 @@ public class ProjectAction implements CRUDAction, Prefetching, ContextAware {
     
     public String iterationList() {
         iterations = projectBusiness.retrieveProjectIterations(projectId);
+        Map<Integer, IterationMetrics> metrics = iterationBusiness.getIterationMetrics(iterations);
         for (IterationTO iteration : iterations) {
-        	IterationMetrics iterationMetrics = iterationBusiness.getIterationMetrics(iteration);
-        	iteration.setIterationMetrics(iterationMetrics);
+        	iteration.setIterationMetrics(metrics.get(iteration.getId()));
         }
         return Action.SUCCESS;
     }
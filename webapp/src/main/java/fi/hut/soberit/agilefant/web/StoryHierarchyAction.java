@@ -1,7 +1,6 @@
 package fi.hut.soberit.agilefant.web;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +39,7 @@ public class StoryHierarchyAction extends ActionSupport {
     private Story story;
     private Story topmostStory;
     private Integer referenceStoryId;
+    private int levels = 0;
 
     private List<Story> hierarchy = new ArrayList<Story>();
     
@@ -153,47 +153,21 @@ public class StoryHierarchyAction extends ActionSupport {
     
     public String retrieveBranchMetrics() {
         story = this.storyBusiness.retrieve(this.storyId);
-        this.branchMetrics = this.storyHierarchyBusiness.calculateStoryTreeMetrics(story);
+        this.branchMetrics = this.storyHierarchyBusiness.retrieveStoryTreeMetrics(story);
         return Action.SUCCESS;
     }
         
     public String retrieveProductRootStories() {
-        stories = storyHierarchyBusiness.retrieveProductRootStories(productId, storyFilters);
-        for (Story story: stories) {
-            Story fullInfoStory = this.storyBusiness.retrieve(story.getId());
-            story.setFullInfoStory(fullInfoStory);
-            HashMap<Integer, Story> fullInfoStoryMap = new HashMap<Integer, Story>();
-            initHashMap(fullInfoStory.getChildren(), fullInfoStoryMap);
-            setStoriesInformation(story.getChildren(), fullInfoStoryMap);
-        }
+        stories = storyHierarchyBusiness.retrieveProductStoryTree(productId,
+                storyId, levels, storyFilters);
+        storyHierarchyBusiness.loadStoryTreeMetrics(stories);
         return Action.SUCCESS;
     }
     public String retrieveProjectRootStories() {
         stories = storyHierarchyBusiness.retrieveProjectRootStories(projectId, storyFilters);
-        for (Story story: stories) {
-            Story fullInfoStory = this.storyBusiness.retrieve(story.getId());
-            story.setFullInfoStory(fullInfoStory);
-            HashMap<Integer, Story> fullInfoStoryMap = new HashMap<Integer, Story>();
-            initHashMap(fullInfoStory.getChildren(), fullInfoStoryMap);
-            setStoriesInformation(story.getChildren(), fullInfoStoryMap);
-        }
+        storyHierarchyBusiness.loadStoryTreeMetrics(stories);
         return Action.SUCCESS;
     }
-    
-    private void initHashMap(List<Story> fullInfoStories, HashMap<Integer, Story> fullInfoStoryMap) {
-        for (Story fullInfoStory: fullInfoStories) {
-            fullInfoStoryMap.put(fullInfoStory.getId(), fullInfoStory);
-            initHashMap(fullInfoStory.getChildren(), fullInfoStoryMap);
-        }
-    }
-    
-    private void setStoriesInformation(List<Story> stories, HashMap<Integer, Story> fullInfoStoryMap) {
-        for (Story story: stories) {
-            Story fullInfoStory = fullInfoStoryMap.get(story.getId());
-            story.setFullInfoStory(fullInfoStory);
-            setStoriesInformation(story.getChildren(), fullInfoStoryMap);
-        }
-    }
 
     /*
      * SETTERS AND GETTERS
@@ -223,6 +197,10 @@ public class StoryHierarchyAction extends ActionSupport {
         this.referenceStoryId = parentId;
     }
 
+    public void setLevels(int levels) {
+        this.levels = levels;
+    }
+
     public void setStoryHierarchyBusiness(
             StoryHierarchyBusiness storyHierarchyBusiness) {
         this.storyHierarchyBusiness = storyHierarchyBusiness;
@@ -14,9 +14,14 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.struts2.interceptor.ServletResponseAware;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -45,9 +50,11 @@ import flexjson.JSONSerializer;
  */
 @Component("timesheetAction")
 @Scope("prototype")
-public class TimesheetAction extends ActionSupport {
+public class TimesheetAction extends ActionSupport implements ServletResponseAware {
 
     private static final long serialVersionUID = -8988740967426943267L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimesheetAction.class);
     
     @Autowired
     private TimesheetBusiness timesheetBusiness;
@@ -94,6 +101,8 @@ public class TimesheetAction extends ActionSupport {
     private ByteArrayOutputStream exportableReport;
     
     private String errorMessage = "";
+    
+    private HttpServletResponse response;
    
     
     public Set<Integer> getSelectedBacklogs() {
@@ -118,7 +127,11 @@ public class TimesheetAction extends ActionSupport {
         return this.authorizationBusiness.isBacklogAccessible(backlogId, user);
     }
 
-    public String generateTree(){
+    /**
+     * The selected backlogs, or all products if none is selected. The
+     * standalone iterations are selected with id 0.
+     */
+    private Set<Integer> getReportBacklogs() {
         Set<Integer> selectedBacklogIds = this.getSelectedBacklogs();
         if(selectedBacklogIds == null || selectedBacklogIds.size() == 0) {
             Collection<Product> products = new ArrayList<Product>();
@@ -139,32 +152,18 @@ public class TimesheetAction extends ActionSupport {
                 }
             }
         }
+        return selectedBacklogIds;
+    }
+
+    public String generateTree(){
+        Set<Integer> selectedBacklogIds = this.getReportBacklogs();
         products = timesheetBusiness.getRootNodes(selectedBacklogIds, startDate, endDate, timeZone, this.userIds);
         effortSum = timesheetBusiness.getRootNodeSum(products);
         return Action.SUCCESS;
     }
     
     public String generateExeclReport(){
-        Set<Integer> selectedBacklogIds = this.getSelectedBacklogs();
-        if(selectedBacklogIds == null || selectedBacklogIds.size() == 0) {
-            Collection<Product> products = new ArrayList<Product>();
-            productBusiness.storeAllTimeSheets(products);
-            for (Product product: products) {
-                selectedBacklogIds.add(product.getId());
-            }
-        }        
-        if (selectedBacklogIds.contains(0))
-        {
-            // Standalone Iterations
-            selectedBacklogIds.remove(0);
-            Collection<Backlog> iters = backlogBusiness.retrieveAllStandAloneIterations();
-            for (Iterator<Backlog> i = iters.iterator();i.hasNext();){
-                int backlogId = i.next().getId();
-                if (checkAccess(backlogId)) {
-                    selectedBacklogIds.add(backlogId);
-                }
-            }
-        }
+        Set<Integer> selectedBacklogIds = this.getReportBacklogs();
         Workbook wb = this.timesheetExportBusiness.generateTimesheet(this, selectedBacklogIds, startDate, endDate, timeZone, userIds);
         this.exportableReport = new ByteArrayOutputStream();
         try {
@@ -175,6 +174,29 @@ public class TimesheetAction extends ActionSupport {
         return Action.SUCCESS;
     }
 
+    /**
+     * Streams the .xlsx report directly to the response.
+     */
+    public String generateXlsxReport() {
+        Set<Integer> selectedBacklogIds = this.getReportBacklogs();
+        try {
+            response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            response.setHeader("Content-Disposition", "filename=\"agilefantTimesheet.xlsx\"");
+            this.timesheetExportBusiness.writeTimesheetXlsx(this, selectedBacklogIds, startDate, endDate, timeZone, userIds, response.getOutputStream());
+            response.flushBuffer();
+            return Action.NONE;
+        } catch (Exception e) {
+            if (response.isCommitted()) {
+                // Part of the report is already sent, the error page can't be shown anymore
+                LOG.error("Timesheet export failed", e);
+                return Action.NONE;
+            }
+            response.reset();
+            this.errorMessage = "Timesheet export failed";
+            return Action.ERROR;
+        }
+    }
+
     public List<User> getSelectedUsers() {
         if(this.userIds == null) {
             return Collections.emptyList();
@@ -329,4 +351,8 @@ public class TimesheetAction extends ActionSupport {
     public String getErrorMessage() {
         return this.errorMessage;
     }
+
+    public void setServletResponse(HttpServletResponse response) {
+        this.response = response;
+    }
 }
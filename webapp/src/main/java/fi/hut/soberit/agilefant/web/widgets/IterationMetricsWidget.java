@@ -1,5 +1,7 @@
 package fi.hut.soberit.agilefant.web.widgets;
 
+import java.util.Collections;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
@@ -28,7 +30,8 @@ public class IterationMetricsWidget extends CommonWidget {
     @Override
     public String execute() {
         iteration = iterationBusiness.retrieve(getObjectId());
-        iterationMetrics = iterationBusiness.getIterationMetrics(iteration);
+        iterationMetrics = iterationBusiness.getIterationMetrics(
+                Collections.singleton(iteration)).get(iteration.getId());
         return SUCCESS;
     }
     
@@ -0,0 +1,3 @@
+-- Story ranks are spread out so that a story can be moved by updating only its own rank
+update storyrank set `rank` = `rank` * 1024;
+create index storyrank_backlog_rank on storyrank (backlog_id, `rank`, id);
@@ -0,0 +1,23 @@
+-- Daily spent effort sums of the hour entries, so that the daily spent effort can be read without the entries
+-- The ids of the targets the effort is not logged to are 0, so that the targets can be part of the unique key
+CREATE TABLE `daily_effort_sums` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `user_id` int(11) NOT NULL,
+  `backlog_id` int(11) NOT NULL DEFAULT 0,
+  `story_id` int(11) NOT NULL DEFAULT 0,
+  `task_id` int(11) NOT NULL DEFAULT 0,
+  `date` date NOT NULL,
+  `minutesSpent` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `daily_effort_sums_target` (`user_id`, `backlog_id`, `story_id`, `task_id`, `date`),
+  KEY `daily_effort_sums_user` (`user_id`, `date`, `minutesSpent`),
+  KEY `daily_effort_sums_backlog` (`backlog_id`, `date`, `minutesSpent`),
+  KEY `daily_effort_sums_story` (`story_id`, `date`, `minutesSpent`),
+  KEY `daily_effort_sums_task` (`task_id`, `date`, `minutesSpent`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `daily_effort_sums` (`user_id`, `backlog_id`, `story_id`, `task_id`, `date`, `minutesSpent`)
+SELECT `user_id`, COALESCE(`backlog_id`, 0), COALESCE(`story_id`, 0), COALESCE(`task_id`, 0), CAST(`date` AS DATE), SUM(`minutesSpent`)
+FROM `hourentries`
+WHERE `date` IS NOT NULL
+GROUP BY `user_id`, `backlog_id`, `story_id`, `task_id`, CAST(`date` AS DATE);
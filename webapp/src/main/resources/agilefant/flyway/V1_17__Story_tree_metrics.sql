@@ -0,0 +1,12 @@
+-- Metrics of each story and the stories under it, so that the metrics of a branch can be read without the branch
+-- The rows are calculated by the next migration
+CREATE TABLE `story_tree_metrics` (
+  `story_id` int(11) NOT NULL,
+  `leafPoints` bigint(20) NOT NULL,
+  `doneLeafPoints` bigint(20) NOT NULL,
+  `estimatedPoints` bigint(20) NOT NULL,
+  `estimatedDonePoints` bigint(20) NOT NULL,
+  `spentEffort` bigint(20) NOT NULL,
+  `effortLeft` bigint(20) NOT NULL,
+  PRIMARY KEY (`story_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,9 @@
+-- Every story with each of its ancestors and itself, so that a branch can be read without walking the tree
+-- The rows are calculated by the next migration
+CREATE TABLE `story_ancestors` (
+  `ancestor_id` int(11) NOT NULL,
+  `descendant_id` int(11) NOT NULL,
+  `depth` int(11) NOT NULL,
+  PRIMARY KEY (`ancestor_id`, `descendant_id`),
+  KEY `story_ancestors_descendant` (`descendant_id`, `depth`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
@@ -0,0 +1,20 @@
+-- Daily story access counts of the users, so that the story access cloud can be read without counting the accesses
+CREATE TABLE `story_access_sums` (
+  `id` int(11) NOT NULL AUTO_INCREMENT,
+  `user_id` int(11) NOT NULL,
+  `story_id` int(11) NOT NULL,
+  `date` date NOT NULL,
+  `accessCount` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE KEY `story_access_sums_access` (`user_id`, `story_id`, `date`),
+  KEY `story_access_sums_user` (`user_id`, `date`, `story_id`, `accessCount`),
+  KEY `story_access_sums_story` (`story_id`),
+  CONSTRAINT `story_access_sums_user_fk` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`) ON DELETE CASCADE,
+  CONSTRAINT `story_access_sums_story_fk` FOREIGN KEY (`story_id`) REFERENCES `stories` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+INSERT INTO `story_access_sums` (`user_id`, `story_id`, `date`, `accessCount`)
+SELECT `user_id`, `story_id`, CAST(`date` AS DATE), COUNT(*)
+FROM `story_access`
+WHERE `date` IS NOT NULL
+GROUP BY `user_id`, `story_id`, CAST(`date` AS DATE);
@@ -90,6 +90,11 @@ $(document).ready(function() {
     closeMenu();
     window.location="exportIteration.action?iterationId=${iterationId}";
   }).appendTo(actionMenu);
+
+  $('<li/>').text('Export (.xlsx)').click(function() {
+    closeMenu();
+    window.location="exportIterationXlsx.action?iterationId=${iterationId}";
+  }).appendTo(actionMenu);
  
   $('<li/>').text('Delete').click(function() {
     closeMenu();
@@ -350,7 +350,8 @@ Reporting
 						<tr>
 							<td></td>
 							<td><ww:submit value="Calculate" /> <ww:submit
-								value="Export to Excel" action="generateExcel" /></td>
+								value="Export to Excel" action="generateExcel" /> <ww:submit
+								value="Export to Excel (.xlsx)" action="generateExcelXlsx" /></td>
 						</tr>
 					</tbody>
 				</table>
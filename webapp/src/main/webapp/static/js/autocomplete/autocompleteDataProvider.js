@@ -59,6 +59,10 @@ AutocompleteDataProvider.prototype.filterIdLists = function(items) {
   }
   return retList;
 };
+/**
+ * The data is fetched with GET, so that the browser revalidates its cached
+ * copy with the entity tag of the data instead of downloading it again.
+ */
 AutocompleteDataProvider.prototype._fetchData = function(url, params) {
   var returnedData = null;
   var data = {};
@@ -66,10 +70,10 @@ AutocompleteDataProvider.prototype._fetchData = function(url, params) {
   jQuery.ajax({
     async: false,
     url: url,
-    cache: false,
+    cache: true,
     dataType: "json",
     data: data,
-    type: "post",
+    type: "get",
     success: function(data,status) {
       returnedData = data;
     },
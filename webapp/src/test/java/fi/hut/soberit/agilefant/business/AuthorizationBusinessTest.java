@@ -0,0 +1,179 @@
+package fi.hut.soberit.agilefant.business;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.business.impl.AuthorizationBusinessImpl;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.model.User;
+
+public class AuthorizationBusinessTest {
+
+    private AuthorizationBusinessImpl authorizationBusiness;
+
+    private BacklogBusiness backlogBusiness;
+
+    private UserBusiness userBusiness;
+
+    private User user;
+    private User teamMate;
+    private Product product;
+    private Product otherProduct;
+    private Project project;
+    private Iteration standaloneIteration;
+    private Iteration otherStandaloneIteration;
+
+    @Before
+    public void setUp() {
+        authorizationBusiness = new AuthorizationBusinessImpl();
+        backlogBusiness = createMock(BacklogBusiness.class);
+        userBusiness = createMock(UserBusiness.class);
+        authorizationBusiness.setBacklogBusiness(backlogBusiness);
+        authorizationBusiness.setUserBusiness(userBusiness);
+
+        product = new Product();
+        product.setId(1);
+        otherProduct = new Product();
+        otherProduct.setId(2);
+        project = new Project();
+        project.setId(3);
+        project.setParent(product);
+        standaloneIteration = new Iteration();
+        standaloneIteration.setId(4);
+        otherStandaloneIteration = new Iteration();
+        otherStandaloneIteration.setId(5);
+
+        user = new User();
+        user.setId(10);
+        user.setAdmin(false);
+        teamMate = new User();
+        teamMate.setId(11);
+
+        Team team = new Team();
+        team.getProducts().add(product);
+        team.getIterations().add(standaloneIteration);
+        team.getUsers().add(user);
+        team.getUsers().add(teamMate);
+        user.getTeams().add(team);
+    }
+
+    private void replayAll() {
+        replay(backlogBusiness, userBusiness);
+    }
+
+    private void verifyAll() {
+        verify(backlogBusiness, userBusiness);
+    }
+
+    private void expectBacklog(Backlog backlog, Product parentProduct) {
+        expect(backlogBusiness.retrieve(backlog.getId())).andReturn(backlog);
+        expect(backlogBusiness.getParentProduct(backlog)).andReturn(parentProduct);
+    }
+
+    @Test
+    public void testIsBacklogAccessible() {
+        expect(userBusiness.retrieve(user.getId())).andReturn(user);
+        expectBacklog(project, product);
+        expectBacklog(otherProduct, otherProduct);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+        assertFalse(authorizationBusiness.isBacklogAccessible(otherProduct.getId(), user));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testIsBacklogAccessible_standaloneIterations() {
+        expect(userBusiness.retrieve(user.getId())).andReturn(user);
+        expectBacklog(standaloneIteration, null);
+        expectBacklog(otherStandaloneIteration, null);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isBacklogAccessible(standaloneIteration.getId(), user));
+        assertFalse(authorizationBusiness.isBacklogAccessible(otherStandaloneIteration.getId(), user));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testIsBacklogAccessible_admin() {
+        User admin = new User();
+        admin.setId(20);
+        expect(userBusiness.retrieve(admin.getId())).andReturn(admin);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isBacklogAccessible(otherProduct.getId(), admin));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testIsBacklogAccessible_cached() {
+        expect(userBusiness.retrieve(user.getId())).andReturn(user);
+        expectBacklog(project, product);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+        assertTrue(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testIsBacklogAccessible_accessRightsChanged() {
+        expect(userBusiness.retrieve(user.getId())).andReturn(user).times(2);
+        expectBacklog(project, product);
+        expectBacklog(project, product);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+        user.getTeams().clear();
+        authorizationBusiness.accessRightsChanged();
+        assertFalse(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testFilterAccessible() {
+        expect(userBusiness.retrieve(user.getId())).andReturn(user);
+        expect(backlogBusiness.getParentProduct(product)).andReturn(product);
+        expect(backlogBusiness.getParentProduct(otherProduct)).andReturn(otherProduct);
+        expect(backlogBusiness.getParentProduct(project)).andReturn(product);
+        expect(backlogBusiness.getParentProduct(standaloneIteration)).andReturn(null);
+        expect(backlogBusiness.getParentProduct(otherStandaloneIteration)).andReturn(null);
+        replayAll();
+
+        List<Backlog> accessible = authorizationBusiness.filterAccessible(
+                Arrays.<Backlog> asList(product, otherProduct, project,
+                        standaloneIteration, otherStandaloneIteration), user);
+        assertEquals(Arrays.<Backlog> asList(product, project, standaloneIteration), accessible);
+        assertTrue(authorizationBusiness.isBacklogAccessible(project.getId(), user));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testIsUserAccessible() {
+        User stranger = new User();
+        stranger.setId(12);
+        expect(userBusiness.retrieve(user.getId())).andReturn(user);
+        replayAll();
+
+        assertTrue(authorizationBusiness.isUserAccessible(teamMate.getId(), user));
+        assertFalse(authorizationBusiness.isUserAccessible(stranger.getId(), user));
+
+        verifyAll();
+    }
+}
@@ -0,0 +1,403 @@
+package fi.hut.soberit.agilefant.business;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.business.impl.AutocompleteBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
+import fi.hut.soberit.agilefant.db.TeamDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Team;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
+
+public class AutocompleteBusinessTest {
+
+    private AutocompleteBusinessImpl autocompleteBusiness;
+    private UserDAO userDAO;
+    private TeamDAO teamDAO;
+    private BacklogDAO backlogDAO;
+    private MenuBusiness menuBusiness;
+    private AuthorizationBusiness authorizationBusiness;
+
+    private User loggedUser;
+    private List<AutocompleteCatalog.UserEntry> userEntries;
+    private List<AutocompleteCatalog.TeamEntry> teamEntries;
+    private BacklogMenuTree tree;
+
+    @Before
+    public void setUp_dependencies() {
+        autocompleteBusiness = new AutocompleteBusinessImpl();
+
+        userDAO = createMock(UserDAO.class);
+        autocompleteBusiness.setUserDAO(userDAO);
+
+        teamDAO = createMock(TeamDAO.class);
+        autocompleteBusiness.setTeamDAO(teamDAO);
+
+        backlogDAO = createMock(BacklogDAO.class);
+        autocompleteBusiness.setBacklogDAO(backlogDAO);
+
+        menuBusiness = createMock(MenuBusiness.class);
+        autocompleteBusiness.setMenuBusiness(menuBusiness);
+
+        authorizationBusiness = createMock(AuthorizationBusiness.class);
+        autocompleteBusiness.setAuthorizationBusiness(authorizationBusiness);
+    }
+
+    @Before
+    public void setUp_data() {
+        loggedUser = new User();
+        loggedUser.setId(1);
+        SecurityUtil.setLoggedUser(loggedUser);
+
+        userEntries = new ArrayList<AutocompleteCatalog.UserEntry>();
+        userEntries.add(new AutocompleteCatalog.UserEntry(1, "daadaa", "additional", true, false));
+        userEntries.add(new AutocompleteCatalog.UserEntry(2, "Team Mate", "mate", false, false));
+        userEntries.add(new AutocompleteCatalog.UserEntry(3, "Someone Else", "else", true, false));
+
+        teamEntries = new ArrayList<AutocompleteCatalog.TeamEntry>();
+        teamEntries.add(new AutocompleteCatalog.TeamEntry(1, "daa", ids(1, 2)));
+        teamEntries.add(new AutocompleteCatalog.TeamEntry(2, "Other team", ids(3)));
+
+        DateTime now = new DateTime();
+        tree = new BacklogMenuTree();
+        tree.load(Arrays.asList(
+                new BacklogMenuTree.Entry(1, null, BacklogType.PRODUCT, "Product", null, null),
+                new BacklogMenuTree.Entry(123, null, BacklogType.PRODUCT, "Wrong", null, null),
+                new BacklogMenuTree.Entry(7, 1, BacklogType.PROJECT, "Project",
+                        now.minusMonths(1), now.plusMonths(1)),
+                new BacklogMenuTree.Entry(333, 7, BacklogType.ITERATION, "Iter 1",
+                        now.minusDays(5), now.plusDays(5)),
+                new BacklogMenuTree.Entry(615, 1, BacklogType.ITERATION, "Iter 2",
+                        now.minusDays(5), now.withMillisOfDay(0)),
+                new BacklogMenuTree.Entry(616, 1, BacklogType.ITERATION, "Ended",
+                        now.minusDays(10), now.minusDays(2))));
+    }
+
+    private void replayAll() {
+        replay(userDAO, teamDAO, backlogDAO, menuBusiness, authorizationBusiness);
+    }
+
+    private void verifyAll() {
+        verify(userDAO, teamDAO, backlogDAO, menuBusiness, authorizationBusiness);
+    }
+
+    private static Set<Integer> ids(Integer... ids) {
+        return new HashSet<Integer>(Arrays.asList(ids));
+    }
+
+    private void expectCatalogLoad() {
+        expect(userDAO.retrieveAutocompleteEntries()).andReturn(userEntries);
+        expect(teamDAO.retrieveAutocompleteEntries()).andReturn(teamEntries);
+    }
+
+    private void setAdmin() {
+        userEntries.set(0, new AutocompleteCatalog.UserEntry(1, "daadaa", "additional", true, true));
+    }
+
+    /**
+     * Helper method to get a <code>AutocompleteDataNode</code> with specified id.
+     */
+    private AutocompleteDataNode getDataNodeById(int id, Collection<AutocompleteDataNode> nodes) {
+        for (AutocompleteDataNode adn : nodes) {
+            if (adn.getId() == id) {
+                return adn;
+            }
+        }
+        return null;
+    }
+
+    private Backlog createBacklog(Backlog backlog, int id) {
+        backlog.setId(id);
+        return backlog;
+    }
+
+    /*
+     * USER AND TEAM AUTOCOMPLETE DATA
+     */
+    @Test
+    public void testConstructUserAutocompleteData() {
+        setAdmin();
+        User user = new User();
+        user.setId(1);
+        expectCatalogLoad();
+        expect(userDAO.getMultiple(ids(1, 2, 3))).andReturn(Arrays.asList(user));
+
+        replayAll();
+        List<AutocompleteDataNode> actual = autocompleteBusiness.constructUserAutocompleteData(null);
+        verifyAll();
+
+        assertEquals(3, actual.size());
+        assertEquals(1, (int) actual.get(0).getId());
+        assertEquals("daadaa", actual.get(0).getName());
+        assertEquals("daadaa additional", actual.get(0).getMatchedString());
+        assertEquals("fi.hut.soberit.agilefant.model.User", actual.get(0).getBaseClassName());
+        assertNull(actual.get(0).getIdList());
+        assertSame(user, actual.get(0).getOriginalObject());
+        assertFalse(actual.get(1).isEnabled());
+    }
+
+    @Test
+    public void testConstructUserAutocompleteData_teamMembers() {
+        expectCatalogLoad();
+        expect(userDAO.getMultiple(ids(1, 2))).andReturn(new ArrayList<User>());
+
+        replayAll();
+        List<AutocompleteDataNode> actual = autocompleteBusiness.constructUserAutocompleteData(null);
+        verifyAll();
+
+        assertEquals(2, actual.size());
+        assertEquals(1, (int) actual.get(0).getId());
+        assertEquals(2, (int) actual.get(1).getId());
+    }
+
+    @Test
+    public void testConstructUserAutocompleteData_prefix() {
+        setAdmin();
+        expectCatalogLoad();
+        expect(userDAO.getMultiple(ids(2))).andReturn(new ArrayList<User>());
+        expect(userDAO.getMultiple(ids(3))).andReturn(new ArrayList<User>());
+
+        replayAll();
+        // Matches the start of "Mate" and of "else"
+        List<AutocompleteDataNode> actual = autocompleteBusiness.constructUserAutocompleteData("MA");
+        List<AutocompleteDataNode> second = autocompleteBusiness.constructUserAutocompleteData(" el");
+        verifyAll();
+
+        assertEquals(1, actual.size());
+        assertEquals(2, (int) actual.get(0).getId());
+        assertEquals(1, second.size());
+        assertEquals(3, (int) second.get(0).getId());
+    }
+
+    @Test
+    public void testConstructTeamAutocompleteData_withUserIds() {
+        Team team = new Team();
+        team.setId(1);
+        expectCatalogLoad();
+        expect(teamDAO.getMultiple(ids(1))).andReturn(Arrays.asList(team));
+
+        replayAll();
+        List<AutocompleteDataNode> actual = autocompleteBusiness.constructTeamAutocompleteData(true, null);
+        verifyAll();
+
+        assertEquals(1, actual.size());
+        assertEquals(1, (int) actual.get(0).getId());
+        assertEquals("daa", actual.get(0).getName());
+        assertEquals("daa", actual.get(0).getMatchedString());
+        assertEquals("fi.hut.soberit.agilefant.model.Team", actual.get(0).getBaseClassName());
+        assertSame(team, actual.get(0).getOriginalObject());
+        assertEquals(ids(1, 2), actual.get(0).getIdList());
+    }
+
+    @Test
+    public void testConstructTeamAutocompleteData_withoutUserIds() {
+        setAdmin();
+        expectCatalogLoad();
+        expect(teamDAO.getMultiple(ids(1, 2))).andReturn(new ArrayList<Team>());
+
+        replayAll();
+        List<AutocompleteDataNode> actual = autocompleteBusiness.constructTeamAutocompleteData(false, null);
+        verifyAll();
+
+        assertEquals(2, actual.size());
+        assertEquals("Other team", actual.get(1).getName());
+        assertNull(actual.get(0).getIdList());
+    }
+
+    @Test
+    public void testCatalogLoadedOnce() {
+        expectCatalogLoad();
+        expect(teamDAO.getMultiple(ids(1))).andReturn(new ArrayList<Team>()).times(2);
+
+        replayAll();
+        autocompleteBusiness.constructTeamAutocompleteData(false, null);
+        autocompleteBusiness.constructTeamAutocompleteData(false, null);
+        verifyAll();
+
+        reset(userDAO, teamDAO, backlogDAO, menuBusiness, authorizationBusiness);
+        teamEntries.add(new AutocompleteCatalog.TeamEntry(3, "New team", ids(1)));
+        expectCatalogLoad();
+        expect(teamDAO.getMultiple(ids(1, 3))).andReturn(new ArrayList<Team>());
+
+        replayAll();
+        autocompleteBusiness.autocompleteDataChanged();
+        assertEquals(2, autocompleteBusiness.constructTeamAutocompleteData(false, null).size());
+        verifyAll();
+    }
+
+    /*
+     * BACKLOG AUTOCOMPLETE DATA
+     */
+    @Test
+    public void testGetBacklogAutocompleteData() {
+        Backlog product = createBacklog(new Product(), 1);
+        Backlog project = createBacklog(new Project(), 7);
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(1, loggedUser)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(7, loggedUser)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(123, loggedUser)).andReturn(false);
+        expect(backlogDAO.getMultiple(ids(1, 7))).andReturn(Arrays.asList(product, project));
+
+        replayAll();
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructBacklogAutocompleteData(null, null);
+        verifyAll();
+
+        // only backlogs should be included in backlogs autocomplete data
+        assertEquals(2, nodes.size());
+
+        AutocompleteDataNode node = getDataNodeById(1, nodes);
+        assertEquals(Backlog.class.getCanonicalName(), node.getBaseClassName());
+        assertEquals("Product", node.getName());
+        assertEquals(product, node.getOriginalObject());
+
+        node = getDataNodeById(7, nodes);
+        assertEquals("Product > Project", node.getName());
+        assertEquals(node.getName(), node.getMatchedString());
+        assertEquals(project, node.getOriginalObject());
+    }
+
+    @Test
+    public void testGetBacklogAutocompleteData_filterByBacklog() {
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(1, loggedUser)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(7, loggedUser)).andReturn(true);
+        expect(backlogDAO.getMultiple(ids(1, 7))).andReturn(new ArrayList<Backlog>());
+
+        replayAll();
+        // Supply the iteration id
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructBacklogAutocompleteData(333, null);
+        verifyAll();
+
+        assertEquals(2, nodes.size());
+        assertEquals("Product", getDataNodeById(1, nodes).getName());
+        assertEquals("Product > Project", getDataNodeById(7, nodes).getName());
+    }
+
+    @Test
+    public void testGetBacklogAutocompleteData_prefix() {
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(7, loggedUser)).andReturn(true);
+        expect(backlogDAO.getMultiple(ids(7))).andReturn(new ArrayList<Backlog>());
+
+        replayAll();
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructBacklogAutocompleteData(null, "proj");
+        verifyAll();
+
+        assertEquals(1, nodes.size());
+        assertEquals("Product > Project", nodes.get(0).getName());
+    }
+
+    /**
+     * Project autocomplete data.
+     */
+    @Test
+    public void testGetProjectAutocompleteData() {
+        Backlog project = createBacklog(new Project(), 7);
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(7, loggedUser)).andReturn(true);
+        expect(backlogDAO.getMultiple(ids(7))).andReturn(Arrays.asList(project));
+
+        replayAll();
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructProjectAutocompleteData(null);
+        verifyAll();
+
+        assertEquals(1, nodes.size());
+        AutocompleteDataNode node = getDataNodeById(7, nodes);
+        assertEquals("Product > Project", node.getName());
+        assertEquals(node.getName(), node.getMatchedString());
+        assertEquals(project, node.getOriginalObject());
+    }
+
+    @Test
+    public void testGetCurrentIterationAutocompleteData() {
+        Backlog iterationUnderProject = createBacklog(new Iteration(), 333);
+        Backlog iterationUnderProduct = createBacklog(new Iteration(), 615);
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(333, loggedUser)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(615, loggedUser)).andReturn(true);
+        expect(backlogDAO.getMultiple(ids(333, 615))).andReturn(
+                Arrays.asList(iterationUnderProject, iterationUnderProduct));
+
+        replayAll();
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructCurrentIterationAutocompleteData(null);
+        verifyAll();
+
+        // The iteration which ended before today is not included
+        assertEquals(2, nodes.size());
+        AutocompleteDataNode node = getDataNodeById(333, nodes);
+        assertEquals("Product > Project > Iter 1", node.getName());
+        assertEquals(iterationUnderProject, node.getOriginalObject());
+
+        node = getDataNodeById(615, nodes);
+        assertEquals("Product > Iter 2", node.getName());
+        assertEquals(iterationUnderProduct, node.getOriginalObject());
+    }
+
+    @Test
+    public void testConstructProductAutocompleteData() {
+        Backlog product1 = createBacklog(new Product(), 1);
+        Backlog product2 = createBacklog(new Product(), 123);
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree);
+        expect(authorizationBusiness.isBacklogAccessible(1, loggedUser)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(123, loggedUser)).andReturn(true);
+        expect(backlogDAO.getMultiple(ids(1, 123))).andReturn(Arrays.asList(product1, product2));
+
+        replayAll();
+        List<AutocompleteDataNode> nodes = autocompleteBusiness.constructProductAutocompleteData(null);
+        verifyAll();
+
+        AutocompleteDataNode actual = getDataNodeById(1, nodes);
+        assertEquals("Product", actual.getName());
+        assertEquals(product1, actual.getOriginalObject());
+
+        actual = getDataNodeById(123, nodes);
+        assertEquals("Wrong", actual.getName());
+        assertEquals(product2, actual.getOriginalObject());
+    }
+
+    @Test
+    public void testGetAutocompleteDataETag() {
+        expect(menuBusiness.getBacklogMenuTree()).andReturn(tree).anyTimes();
+        expect(authorizationBusiness.getAccessRightsVersion()).andReturn(5L).anyTimes();
+
+        replayAll();
+        String first = autocompleteBusiness.getAutocompleteDataETag(loggedUser);
+        assertEquals(first, autocompleteBusiness.getAutocompleteDataETag(loggedUser));
+        autocompleteBusiness.autocompleteDataChanged();
+        String second = autocompleteBusiness.getAutocompleteDataETag(loggedUser);
+        tree.remove(616);
+        String third = autocompleteBusiness.getAutocompleteDataETag(loggedUser);
+        verifyAll();
+
+        assertFalse(first.equals(second));
+        assertFalse(second.equals(third));
+    }
+}
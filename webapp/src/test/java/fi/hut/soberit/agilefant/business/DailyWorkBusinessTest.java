@@ -6,6 +6,10 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -16,18 +20,18 @@ import org.junit.Test;
 
 import fi.hut.soberit.agilefant.business.impl.DailyWorkBusinessImpl;
 import fi.hut.soberit.agilefant.db.StoryDAO;
-import fi.hut.soberit.agilefant.db.StoryRankDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.db.WhatsNextEntryDAO;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Rankable;
 import fi.hut.soberit.agilefant.model.Story;
-import fi.hut.soberit.agilefant.model.StoryRank;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.model.WhatsNextEntry;
 import fi.hut.soberit.agilefant.transfer.AssignedWorkTO;
 import fi.hut.soberit.agilefant.transfer.DailyWorkTaskTO;
+import fi.hut.soberit.agilefant.transfer.StoryTO;
+import fi.hut.soberit.agilefant.util.AssignedWorkIndex;
 
 public class DailyWorkBusinessTest {
     private DailyWorkBusinessImpl testable;
@@ -55,8 +59,6 @@ public class DailyWorkBusinessTest {
     private WhatsNextEntry whatsNextEntry_forTask2AndUser;
 
     private TransferObjectBusiness transferObjectBusiness;
-    
-    private StoryRankDAO storyRankDAO;
 
     private StoryDAO storyDAO;
     
@@ -82,9 +84,6 @@ public class DailyWorkBusinessTest {
         transferObjectBusiness = createMock(TransferObjectBusiness.class);
         testable.setTransferObjectBusiness(transferObjectBusiness);
         
-        storyRankDAO = createMock(StoryRankDAO.class);
-        testable.setStoryRankDAO(storyRankDAO);
-
         backlog = new Product();
         backlog.setId(5);
         
@@ -110,42 +109,61 @@ public class DailyWorkBusinessTest {
     }
 
     private void replayAll() {
-        replay(taskDAO, storyDAO, whatsNextEntryDAO, rankingBusiness, taskBusiness, transferObjectBusiness, storyRankDAO);
+        replay(taskDAO, storyDAO, whatsNextEntryDAO, rankingBusiness, taskBusiness, transferObjectBusiness);
     }
     
     private void verifyAll() {
-        verify(taskDAO, storyDAO, whatsNextEntryDAO, rankingBusiness, taskBusiness, transferObjectBusiness, storyRankDAO);
+        verify(taskDAO, storyDAO, whatsNextEntryDAO, rankingBusiness, taskBusiness, transferObjectBusiness);
+    }
+
+    private Story createStory(int id) {
+        Story story = new Story();
+        story.setId(id);
+        return story;
+    }
+
+    private AssignedWorkTO createAssignedWork(Story... stories) {
+        List<StoryTO> storyTOs = new ArrayList<StoryTO>();
+        for (Story story : stories) {
+            storyTOs.add(new StoryTO(story));
+        }
+        AssignedWorkTO assignedWork = new AssignedWorkTO();
+        assignedWork.setStories(storyTOs);
+        assignedWork.setTasksWithoutStory(new ArrayList<Task>());
+        return assignedWork;
     }
 
-    @SuppressWarnings("unchecked")
     @Test
     public void testGetAssignedWorkFor() {
-        ArrayList<Task> tasks = new ArrayList<Task>();
-        tasks.addAll(Arrays.asList(task1, task2, task3));
-        
-        Story story = new Story();
-        ArrayList<Story> stories = new ArrayList<Story>();
-        stories.addAll(Arrays.asList(story));
+        user.setId(7);
+        Story story10 = createStory(10);
+        Story story11 = createStory(11);
 
         Capture<Interval> interval = new Capture<Interval>();
         Capture<Interval> interval2 = new Capture<Interval>();
         
-        expect(taskDAO.getAllTasks(EasyMock.eq(user), 
-                EasyMock.and(EasyMock.capture(interval), EasyMock.isA(Interval.class)))).andReturn(tasks);
-        expect(storyDAO.getAllIterationStoriesByResponsibleAndInterval(EasyMock.eq(user), 
-                EasyMock.and(EasyMock.capture(interval2), EasyMock.isA(Interval.class)))).andReturn(stories);
-        AssignedWorkTO assignedWork = new AssignedWorkTO();
+        expect(storyDAO.retrieveAssignedStoryEntries(EasyMock.eq(7),
+                EasyMock.and(EasyMock.capture(interval), EasyMock.isA(Interval.class)))).andReturn(
+                Arrays.asList(new AssignedWorkIndex.StoryEntry(10, "Project", "Iteration", 2, null),
+                        new AssignedWorkIndex.StoryEntry(11, "Project", "Iteration", 1, null)));
+        expect(taskDAO.retrieveAssignedTaskIdsWithoutStory(EasyMock.eq(7), 
+                EasyMock.and(EasyMock.capture(interval2), EasyMock.isA(Interval.class)))).andReturn(
+                Arrays.asList(1));
+        expect(taskDAO.getMultiple(Arrays.asList(1))).andReturn(Arrays.asList(task1));
+        expect(storyDAO.getMultiple(Arrays.asList(11, 10))).andReturn(
+                new HashSet<Story>(Arrays.asList(story10, story11)));
+        AssignedWorkTO assignedWork = createAssignedWork(story11, story10);
         
-        expect(transferObjectBusiness.constructAssignedWorkTO(tasks, stories)).andReturn(assignedWork);
+        expect(transferObjectBusiness.constructAssignedWorkTO(Arrays.asList(task1),
+                Arrays.asList(story11, story10))).andReturn(assignedWork);
 
-        expect(storyRankDAO.getIterationRanksForStories(EasyMock.isA(Collection.class))).andReturn(new ArrayList<StoryRank>());
-        expect(storyRankDAO.getProjectRanksForStories(EasyMock.isA(Collection.class))).andReturn(new ArrayList<StoryRank>());
-        
         replayAll();
         AssignedWorkTO returned = testable.getAssignedWorkFor(user);
         verifyAll();
         
         assertSame(assignedWork, returned);
+        assertEquals(Integer.valueOf(0), returned.getStories().get(0).getRank());
+        assertEquals(Integer.valueOf(1), returned.getStories().get(1).getRank());
 
         assertTrue(interval.hasCaptured());
         assertTrue(interval2.hasCaptured());
@@ -163,6 +181,108 @@ public class DailyWorkBusinessTest {
         // and the milliseconds within the day must be 0 
         assertEquals(0, intervalValue.getStart().getMillisOfDay());
     }
+
+    @Test
+    public void testGetAssignedWorkFor_cached() {
+        user.setId(7);
+        Story story10 = createStory(10);
+        List<Integer> noIds = Collections.emptyList();
+
+        expect(storyDAO.retrieveAssignedStoryEntries(EasyMock.eq(7), EasyMock.isA(Interval.class))).andReturn(
+                Arrays.asList(new AssignedWorkIndex.StoryEntry(10, "Project", null, null, null)));
+        expect(taskDAO.retrieveAssignedTaskIdsWithoutStory(EasyMock.eq(7), EasyMock.isA(Interval.class)))
+                .andReturn(noIds);
+        expect(taskDAO.getMultiple(noIds)).andReturn(new HashSet<Task>()).times(2);
+        expect(storyDAO.getMultiple(Arrays.asList(10))).andReturn(Arrays.asList(story10)).times(2);
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+
+        replayAll();
+        testable.getAssignedWorkFor(user);
+        testable.getAssignedWorkFor(user);
+        verifyAll();
+    }
+
+    @Test
+    public void testAssignedWorkChanged() {
+        user.setId(7);
+        Story story10 = createStory(10);
+        List<Integer> noIds = Collections.emptyList();
+        Set<Integer> storyIds = new HashSet<Integer>(Arrays.asList(10));
+        Set<Integer> taskIds = new HashSet<Integer>();
+
+        expect(storyDAO.retrieveAssignedStoryEntries(EasyMock.eq(7), EasyMock.isA(Interval.class))).andReturn(
+                Arrays.asList(new AssignedWorkIndex.StoryEntry(10, "Project", null, null, null))).times(2);
+        expect(taskDAO.retrieveAssignedTaskIdsWithoutStory(EasyMock.eq(7), EasyMock.isA(Interval.class)))
+                .andReturn(noIds).times(2);
+        expect(taskDAO.getMultiple(noIds)).andReturn(new HashSet<Task>()).times(2);
+        expect(storyDAO.getMultiple(Arrays.asList(10))).andReturn(Arrays.asList(story10)).times(2);
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(storyDAO.retrieveResponsibleIds(storyIds)).andReturn(new HashSet<Integer>(Arrays.asList(7)));
+        expect(taskDAO.retrieveResponsibleIds(taskIds)).andReturn(new HashSet<Integer>());
+
+        replayAll();
+        testable.getAssignedWorkFor(user);
+        testable.assignedWorkChanged(storyIds, taskIds, new HashSet<Integer>());
+        testable.getAssignedWorkFor(user);
+        verifyAll();
+    }
+
+    @Test
+    public void testAssignedWorkChanged_otherUser() {
+        user.setId(7);
+        Story story10 = createStory(10);
+        List<Integer> noIds = Collections.emptyList();
+        Set<Integer> noIdSet = new HashSet<Integer>();
+
+        expect(storyDAO.retrieveAssignedStoryEntries(EasyMock.eq(7), EasyMock.isA(Interval.class))).andReturn(
+                Arrays.asList(new AssignedWorkIndex.StoryEntry(10, "Project", null, null, null)));
+        expect(taskDAO.retrieveAssignedTaskIdsWithoutStory(EasyMock.eq(7), EasyMock.isA(Interval.class)))
+                .andReturn(noIds);
+        expect(taskDAO.getMultiple(noIds)).andReturn(new HashSet<Task>()).times(2);
+        expect(storyDAO.getMultiple(Arrays.asList(10))).andReturn(Arrays.asList(story10)).times(2);
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(storyDAO.retrieveResponsibleIds(noIdSet)).andReturn(new HashSet<Integer>());
+        expect(taskDAO.retrieveResponsibleIds(noIdSet)).andReturn(new HashSet<Integer>());
+
+        replayAll();
+        testable.getAssignedWorkFor(user);
+        testable.assignedWorkChanged(noIdSet, noIdSet, Arrays.asList(8));
+        testable.getAssignedWorkFor(user);
+        verifyAll();
+    }
+
+    @Test
+    public void testAllAssignedWorkChanged() {
+        user.setId(7);
+        Story story10 = createStory(10);
+        List<Integer> noIds = Collections.emptyList();
+
+        expect(storyDAO.retrieveAssignedStoryEntries(EasyMock.eq(7), EasyMock.isA(Interval.class))).andReturn(
+                Arrays.asList(new AssignedWorkIndex.StoryEntry(10, "Project", null, null, null))).times(2);
+        expect(taskDAO.retrieveAssignedTaskIdsWithoutStory(EasyMock.eq(7), EasyMock.isA(Interval.class)))
+                .andReturn(noIds).times(2);
+        expect(taskDAO.getMultiple(noIds)).andReturn(new HashSet<Task>()).times(2);
+        expect(storyDAO.getMultiple(Arrays.asList(10))).andReturn(Arrays.asList(story10)).times(2);
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+        expect(transferObjectBusiness.constructAssignedWorkTO(new ArrayList<Task>(), Arrays.asList(story10)))
+                .andReturn(createAssignedWork(story10));
+
+        replayAll();
+        testable.getAssignedWorkFor(user);
+        testable.allAssignedWorkChanged();
+        testable.getAssignedWorkFor(user);
+        verifyAll();
+    }
     
     @Test
     public void testGetQueuedTasksForUser() {
@@ -237,7 +357,7 @@ public class DailyWorkBusinessTest {
         );
         
         // from delegate:
-        expect(whatsNextEntryDAO.getTasksWithRankBetween(1, 2, user)).andReturn(new ArrayList<WhatsNextEntry>());
+        whatsNextEntryDAO.shiftRanksBetween(1, 2, -1, user);
         
         DailyWorkTaskTO originalTO = new DailyWorkTaskTO(task1);
         expect(transferObjectBusiness.constructQueuedDailyWorkTaskTO(isA(WhatsNextEntry.class))).andReturn(
@@ -249,7 +369,7 @@ public class DailyWorkBusinessTest {
         DailyWorkTaskTO returnedTO = testable.rankUnderTaskOnWhatsNext(user, task1, task2);
 
         assertTrue(delegateCapture.hasCaptured());
-        delegateCapture.getValue().getWithRankBetween(1, 2);
+        delegateCapture.getValue().shiftRanks(1, 2, -1);
         verifyAll();
 
         assertTrue(entryCapture.hasCaptured());
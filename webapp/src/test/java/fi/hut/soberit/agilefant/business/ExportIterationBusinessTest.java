@@ -0,0 +1,173 @@
+package fi.hut.soberit.agilefant.business;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import javax.imageio.ImageIO;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFPictureData;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import fi.hut.soberit.agilefant.business.impl.ExportIterationBusinessImpl;
+import fi.hut.soberit.agilefant.model.ExactEstimate;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.StoryState;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.model.TaskState;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.test.Mock;
+import fi.hut.soberit.agilefant.test.MockContextLoader;
+import fi.hut.soberit.agilefant.test.MockedTestCase;
+import fi.hut.soberit.agilefant.test.TestedBean;
+import fi.hut.soberit.agilefant.transfer.IterationMetrics;
+import fi.hut.soberit.agilefant.transfer.IterationTO;
+import fi.hut.soberit.agilefant.transfer.StoryTO;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(loader = MockContextLoader.class)
+public class ExportIterationBusinessTest extends MockedTestCase {
+
+    @TestedBean
+    private ExportIterationBusinessImpl exportIterationBusiness;
+    @Mock
+    private IterationBusiness iterationBusiness;
+    @Mock
+    private SettingBusiness settingBusiness;
+    @Mock
+    private IterationBurndownBusiness iterationBurndownBusiness;
+
+    private IterationTO iteration;
+
+    @Before
+    public void setUp() {
+        User user = new User();
+        user.setFullName("Exporting User");
+        SecurityUtil.setLoggedUser(user);
+
+        iteration = new IterationTO();
+        iteration.setId(1);
+        iteration.setName("Iteration 1");
+        iteration.setStartDate(new DateTime(2010, 1, 1, 0, 0, 0, 0));
+        iteration.setEndDate(new DateTime(2010, 1, 15, 0, 0, 0, 0));
+        iteration.setDescription("Iteration description");
+
+        StoryTO story = new StoryTO();
+        story.setId(2);
+        story.setName("Story 1");
+        story.setRank(0);
+        story.setStoryPoints(5);
+        story.setState(StoryState.STARTED);
+        story.setResponsibles(new HashSet<User>(Arrays.asList(user)));
+
+        Task task = new Task();
+        task.setId(3);
+        task.setName("Task 1");
+        task.setRank(0);
+        task.setState(TaskState.NOT_STARTED);
+        task.setStory(new Story());
+        task.getStory().setId(2);
+        task.getStory().setName("Story 1");
+        task.setEffortLeft(new ExactEstimate(120));
+        task.setOriginalEstimate(new ExactEstimate(180));
+        story.setTasks(new HashSet<Task>(Arrays.asList(task)));
+
+        iteration.setRankedStories(Arrays.asList(story));
+        iteration.setTasks(new HashSet<Task>());
+    }
+
+    @After
+    public void tearDown() {
+        SecurityUtil.clearLoggedUser();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testWriteIterationXlsx() throws IOException {
+        byte[] burndown = createPng();
+        expect(iterationBusiness.getIterationContents(1)).andReturn(iteration);
+        expect(iterationBusiness.getIterationMetrics(iteration)).andReturn(
+                new IterationMetrics());
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true)
+                .anyTimes();
+        expect(iterationBurndownBusiness.getIterationBurndown(iteration, 0))
+                .andReturn(burndown);
+        replayAll();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportIterationBusiness.writeIterationXlsx(1, out);
+        verifyAll();
+
+        Workbook wb = new XSSFWorkbook(new ByteArrayInputStream(out
+                .toByteArray()));
+        assertEquals(3, wb.getNumberOfSheets());
+
+        Sheet summary = wb.getSheet("Summary");
+        assertTrue(summary.getRow(0).getCell(0).getStringCellValue()
+                .endsWith(" by Exporting User"));
+        assertEquals("Iteration 1", summary.getRow(2).getCell(1)
+                .getStringCellValue());
+        // The merged cells are styled through info.getRow(row)
+        assertNotNull(summary.getRow(6).getCell(6));
+        assertEquals("Story name", summary.getRow(9).getCell(0)
+                .getStringCellValue());
+        assertEquals("Story 1", summary.getRow(10).getCell(0)
+                .getStringCellValue());
+        assertEquals(5.0, summary.getRow(10).getCell(1).getNumericCellValue(),
+                0.0);
+        assertEquals("Story Totals", summary.getRow(11).getCell(0)
+                .getStringCellValue());
+        assertEquals("Total", summary.getRow(13).getCell(0)
+                .getStringCellValue());
+        assertTrue(summary.getColumnWidth(1) > 0);
+
+        assertEquals(1, wb.getAllPictures().size());
+        XSSFPictureData picture = (XSSFPictureData) wb.getAllPictures().get(0);
+        assertEquals(Workbook.PICTURE_TYPE_PNG, picture.getPictureType());
+        assertArrayEquals(burndown, picture.getData());
+
+        Sheet stories = wb.getSheet("Stories");
+        assertEquals("ID", stories.getRow(0).getCell(0).getStringCellValue());
+        assertEquals(2.0, stories.getRow(1).getCell(0).getNumericCellValue(),
+                0.0);
+        assertEquals("Story 1", stories.getRow(1).getCell(1)
+                .getStringCellValue());
+        assertEquals("Exporting User", stories.getRow(1).getCell(4)
+                .getStringCellValue());
+
+        Sheet tasks = wb.getSheet("Tasks");
+        assertEquals("Name", tasks.getRow(0).getCell(1).getStringCellValue());
+        assertEquals("Task 1", tasks.getRow(1).getCell(1).getStringCellValue());
+        assertEquals("Story 1", tasks.getRow(1).getCell(2)
+                .getStringCellValue());
+        assertEquals(2.0, tasks.getRow(1).getCell(6).getNumericCellValue(),
+                0.0);
+        assertEquals(3.0, tasks.getRow(1).getCell(7).getNumericCellValue(),
+                0.0);
+        assertNull(tasks.getRow(2));
+    }
+
+    private static byte[] createPng() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB),
+                "png", png);
+        return png.toByteArray();
+    }
+}
@@ -7,20 +7,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.easymock.Capture;
 import org.easymock.classextension.EasyMock;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
 
+import fi.hut.soberit.agilefant.business.impl.BacklogVersionBusinessImpl;
 import fi.hut.soberit.agilefant.business.impl.HourEntryBusinessImpl;
 import fi.hut.soberit.agilefant.db.BacklogHourEntryDAO;
+import fi.hut.soberit.agilefant.db.DailyEffortSumDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
 import fi.hut.soberit.agilefant.exception.ObjectNotFoundException;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
 import fi.hut.soberit.agilefant.model.HourEntry;
@@ -39,6 +45,8 @@ public class HourEntryBusinessTest {
     private HourEntryBusinessImpl hourEntryBusiness;
     private BacklogHourEntryDAO backlogHourEntryDAO;
     private HourEntryDAO hourEntryDAO;
+    private DailyEffortSumDAO dailyEffortSumDAO;
+    private StoryTreeMetricsDAO storyTreeMetricsDAO;
     private StoryBusiness storyBusiness;
     private UserBusiness userBusiness;
     private TaskBusiness taskBusiness;
@@ -61,6 +69,8 @@ public class HourEntryBusinessTest {
         hourEntryBusiness = new HourEntryBusinessImpl();
         hourEntryDAO = createMock(HourEntryDAO.class);
         backlogHourEntryDAO = createMock(BacklogHourEntryDAO.class);
+        dailyEffortSumDAO = createMock(DailyEffortSumDAO.class);
+        storyTreeMetricsDAO = createMock(StoryTreeMetricsDAO.class);
         
         storyBusiness = createMock(StoryBusiness.class);
         hourEntryBusiness.setStoryBusiness(storyBusiness);
@@ -76,6 +86,9 @@ public class HourEntryBusinessTest {
         
         hourEntryBusiness.setHourEntryDAO(hourEntryDAO);
         hourEntryBusiness.setBacklogHourEntryDAO(backlogHourEntryDAO);
+        hourEntryBusiness.setDailyEffortSumDAO(dailyEffortSumDAO);
+        hourEntryBusiness.setStoryTreeMetricsDAO(storyTreeMetricsDAO);
+        hourEntryBusiness.setBacklogVersionBusiness(new BacklogVersionBusinessImpl());
     }
     
     @Before
@@ -85,11 +98,11 @@ public class HourEntryBusinessTest {
     }
     
     private void replayAll() {
-        replay(hourEntryDAO, backlogHourEntryDAO, storyBusiness, taskBusiness, userBusiness, backlogBusiness);
+        replay(hourEntryDAO, backlogHourEntryDAO, dailyEffortSumDAO, storyTreeMetricsDAO, storyBusiness, taskBusiness, userBusiness, backlogBusiness);
     }
     
     private void verifyAll() {
-        verify(hourEntryDAO, backlogHourEntryDAO, storyBusiness, taskBusiness, userBusiness, backlogBusiness);
+        verify(hourEntryDAO, backlogHourEntryDAO, dailyEffortSumDAO, storyTreeMetricsDAO, storyBusiness, taskBusiness, userBusiness, backlogBusiness);
     }
     
     @Test
@@ -268,6 +281,54 @@ public class HourEntryBusinessTest {
         verify(hourEntryDAO);
     }
     
+    @Test
+    public void testGetDailySpentEffortByInterval_serverTimeZone() {
+        DateTime start = new DateTime(2009,4,28,0,0,0,0);
+        DateTime end = new DateTime(2009,5,1,23,59,0,0);
+        Map<LocalDate, Long> dailySums = new HashMap<LocalDate, Long>();
+        dailySums.put(new LocalDate(2009, 4, 28), 1900L);
+        dailySums.put(new LocalDate(2009, 4, 30), 54000L);
+        expect(dailyEffortSumDAO.getDailySumsByUser(0, start.toLocalDate(), end.toLocalDate()))
+            .andReturn(dailySums);
+        replay(hourEntryDAO, dailyEffortSumDAO);
+        List<DailySpentEffort> res = hourEntryBusiness.getDailySpentEffortByInterval(start, end, 0, 0, 0, DateTimeZone.UTC);
+        assertEquals(4, res.size());
+        assertEquals(1900L, (long)res.get(0).getSpentEffort());
+        assertEquals(null, res.get(1).getSpentEffort());
+        assertEquals(54000L, (long)res.get(2).getSpentEffort());
+        assertEquals(null, res.get(3).getSpentEffort());
+        verify(hourEntryDAO, dailyEffortSumDAO);
+    }
+    
+    @Test
+    public void calculateWeekSum_serverTimeZone() {
+        expect(dailyEffortSumDAO.calculateSumByUser(0, new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 7)))
+            .andReturn(120L);
+        replay(hourEntryDAO, dailyEffortSumDAO);
+        assertEquals(120L, hourEntryBusiness.calculateWeekSum(new LocalDate(2009, 6, 4), 0, 0, 0, DateTimeZone.UTC));
+        verify(hourEntryDAO, dailyEffortSumDAO);
+    }
+    
+    @Test
+    public void testGetDailySpentEffortForIteration() {
+        Iteration iteration = new Iteration();
+        iteration.setId(5);
+        DateTime start = new DateTime(2009,6,1,0,0,0,0);
+        DateTime end = new DateTime(2009,6,3,12,0,0,0);
+        Map<LocalDate, Long> dailySums = new HashMap<LocalDate, Long>();
+        dailySums.put(new LocalDate(2009, 6, 2), 60L);
+        expect(dailyEffortSumDAO.getDailySumsByIteration(5, start.toLocalDate(), end.toLocalDate()))
+            .andReturn(dailySums);
+        replay(dailyEffortSumDAO);
+        List<DailySpentEffort> res = hourEntryBusiness.getDailySpentEffortForIteration(iteration, start, end);
+        assertEquals(3, res.size());
+        assertEquals(null, res.get(0).getSpentEffort());
+        assertEquals(60L, (long)res.get(1).getSpentEffort());
+        assertEquals(start.plusDays(1), res.get(1).getDay());
+        assertEquals(null, res.get(2).getSpentEffort());
+        verify(dailyEffortSumDAO);
+    }
+    
     @Test
     public void testGetEntriesByUserAndDay() {
         DateTime start = new DateTime(2009,6,2,0,0,0,0);
@@ -487,60 +548,76 @@ public class HourEntryBusinessTest {
     
     @Test
     public void testDeleteAll() {
+        Story story = new Story();
+        story.setId(5);
+        Task task = new Task();
+        task.setId(7);
         List<HourEntry> hourEntries = new ArrayList<HourEntry>();
-        HourEntry hourEntry1 = new HourEntry();
-        HourEntry hourEntry2 = new HourEntry();
+        StoryHourEntry hourEntry1 = new StoryHourEntry();
+        hourEntry1.setId(1);
+        hourEntry1.setStory(story);
+        TaskHourEntry hourEntry2 = new TaskHourEntry();
+        hourEntry2.setId(2);
+        hourEntry2.setTask(task);
         hourEntries.add(hourEntry1);
         hourEntries.add(hourEntry2);
-        hourEntryDAO.remove(hourEntry1);
-        hourEntryDAO.remove(hourEntry2);
+        Set<Integer> ids = new HashSet<Integer>(Arrays.asList(1, 2));
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.removeAll(hourEntries);
+        storyTreeMetricsDAO.updateBranches(new HashSet<Integer>(Arrays.asList(5)),
+                new HashSet<Integer>(Arrays.asList(7)));
         replayAll();
         hourEntryBusiness.deleteAll(hourEntries);
         verifyAll();
     }
 
+    @Test
+    public void testDeleteAll_empty() {
+        replayAll();
+        hourEntryBusiness.deleteAll(new ArrayList<HourEntry>());
+        verifyAll();
+    }
+
     @Test
     public void testMoveToBacklog() {
         Iteration backlog = new Iteration();
+        backlog.setId(3);
         List<HourEntry> hourEntries = new ArrayList<HourEntry>();
         HourEntry hourEntry1 = new HourEntry();
+        hourEntry1.setId(1);
         HourEntry hourEntry2 = new HourEntry();
+        hourEntry2.setId(2);
         hourEntries.add(hourEntry1);
         hourEntries.add(hourEntry2);
-        hourEntryDAO.remove(hourEntry1);
-        hourEntryDAO.remove(hourEntry2);
-        Capture<BacklogHourEntry> newHourEntry1 = new Capture<BacklogHourEntry>();
-        Capture<BacklogHourEntry> newHourEntry2 = new Capture<BacklogHourEntry>();
-        hourEntryDAO.store(EasyMock.capture(newHourEntry1));
-        hourEntryDAO.store(EasyMock.capture(newHourEntry2));
+        Set<Integer> ids = new HashSet<Integer>(Arrays.asList(1, 2));
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.moveToBacklog(hourEntries, 3);
+        dailyEffortSumDAO.addHourEntryMinutes(ids, 1);
         replayAll();
         hourEntryBusiness.moveToBacklog(hourEntries, backlog);
-        assertSame(backlog, newHourEntry1.getValue().getBacklog());
-        assertSame(backlog, newHourEntry2.getValue().getBacklog());
         verifyAll();
     }
 
     @Test
-    public void testMoveToBacklog_checkFields() {
-        Iteration backlog = new Iteration();
-        List<HourEntry> hourEntries = new ArrayList<HourEntry>();
-        User user = new User();
-        DateTime now = new DateTime();
-        HourEntry hourEntry1 = new HourEntry();
-        hourEntry1.setMinutesSpent(100L);
-        hourEntry1.setDate(now);
-        hourEntry1.setDescription("Description");
-        hourEntry1.setUser(user);
-        hourEntries.add(hourEntry1);
-        hourEntryDAO.remove(hourEntry1);
-        Capture<BacklogHourEntry> newHourEntry1 = new Capture<BacklogHourEntry>();
-        hourEntryDAO.store(EasyMock.capture(newHourEntry1));
+    public void testMoveToStory() {
+        Story story = new Story();
+        story.setId(5);
+        Task task = new Task();
+        task.setId(7);
+        task.setStory(story);
+        List<TaskHourEntry> hourEntries = new ArrayList<TaskHourEntry>();
+        TaskHourEntry hourEntry = new TaskHourEntry();
+        hourEntry.setId(1);
+        hourEntry.setTask(task);
+        hourEntries.add(hourEntry);
+        Set<Integer> ids = new HashSet<Integer>(Arrays.asList(1));
+        dailyEffortSumDAO.addHourEntryMinutes(ids, -1);
+        hourEntryDAO.moveToStory(hourEntries, 5);
+        dailyEffortSumDAO.addHourEntryMinutes(ids, 1);
+        storyTreeMetricsDAO.updateBranches(new HashSet<Integer>(Arrays.asList(5)),
+                new HashSet<Integer>(Arrays.asList(7)));
         replayAll();
-        hourEntryBusiness.moveToBacklog(hourEntries, backlog);
-        assertEquals(100L, newHourEntry1.getValue().getMinutesSpent());
-        assertEquals(now, newHourEntry1.getValue().getDate());
-        assertEquals("Description", newHourEntry1.getValue().getDescription());
-        assertSame(user, newHourEntry1.getValue().getUser());
+        hourEntryBusiness.moveToStory(hourEntries, story);
         verifyAll();
     }
 
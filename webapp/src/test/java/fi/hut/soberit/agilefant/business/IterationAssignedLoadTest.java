@@ -15,8 +15,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.impl.IterationBusinessImpl;
+import fi.hut.soberit.agilefant.db.HourEntryDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO;
+import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.history.BacklogHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.StoryHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.TaskHistoryDAO;
@@ -75,6 +77,12 @@ public class IterationAssignedLoadTest extends MockedTestCase {
     private StoryHistoryDAO storyHistoryDAO;
     @Mock(strict=true)
     private TaskHistoryDAO taskHistoryDAO;
+    @Mock(strict=true)
+    private StoryDAO storyDAO;
+    @Mock(strict=true)
+    private HourEntryDAO hourEntryDAO;
+    @Mock(strict=true)
+    private BacklogVersionBusiness backlogVersionBusiness;
 
     private User user1;
     private User user2;
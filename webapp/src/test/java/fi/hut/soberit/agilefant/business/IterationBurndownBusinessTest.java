@@ -21,9 +21,9 @@ import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
 
+import fi.hut.soberit.agilefant.business.impl.BacklogVersionBusinessImpl;
 import fi.hut.soberit.agilefant.business.impl.IterationBurndownBusinessImpl;
 import fi.hut.soberit.agilefant.model.ExactEstimate;
-import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
 import fi.hut.soberit.agilefant.transfer.DailySpentEffort;
@@ -45,6 +45,7 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
     HourEntryBusiness hourEntryBusiness;
     IterationBusiness iterationBusiness;
     SettingBusiness settingBusiness;
+    BacklogVersionBusiness backlogVersionBusiness;
     
     Iteration iteration;
     DateTime startDate;
@@ -54,7 +55,6 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
     JFreeChart chart;
     
     List<DailySpentEffort> dailySpentEffortList;
-    List<HourEntry> hourEntryList;
     
     IterationHistoryEntry entry1;
     IterationHistoryEntry entry2;
@@ -82,6 +82,9 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         iterationBurndownBusiness.setSettingBusiness(settingBusiness);
         super.setSettingBusiness(settingBusiness);
         
+        backlogVersionBusiness = new BacklogVersionBusinessImpl();
+        iterationBurndownBusiness.setBacklogVersionBusiness(backlogVersionBusiness);
+        
         startDate = new DateTime(2009,1,1,0,0,0,0);
         endDate = new DateTime(2009,1,10,0,0,0,0);
         iteration = new Iteration();
@@ -112,7 +115,6 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         entriesList = Arrays.asList(entry1, entry2);
         
         dailySpentEffortList = new ArrayList<DailySpentEffort>();
-        hourEntryList = new ArrayList<HourEntry>();
         
         
     }
@@ -125,14 +127,12 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
         expect(hourEntryBusiness.getDailySpentEffortByIteration(iteration)).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
-        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
+        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true).times(2);
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true).times(3);
         replay(iterationHistoryEntryBusiness, iterationBusiness, hourEntryBusiness, settingBusiness);
         
         assertNotNull(iterationBurndownBusiness.getIterationBurndown(iteration, 0));
@@ -148,14 +148,12 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
-        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
+        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true).times(2);
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true).times(3);
         replay(iterationHistoryEntryBusiness, iterationBusiness, hourEntryBusiness, settingBusiness);
 
         assertNotNull(iterationBurndownBusiness.getSmallIterationBurndown(iteration, 0));
@@ -171,14 +169,12 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
-        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
-        expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
+        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true).times(2);
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true).times(3);
         replay(iterationHistoryEntryBusiness, iterationBusiness, hourEntryBusiness, settingBusiness);
         
         assertNotNull(iterationBurndownBusiness.getCustomIterationBurndown(iteration, 1024, 768, 0));
@@ -187,6 +183,47 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         verify(iterationHistoryEntryBusiness, iterationBusiness);
     }
     
+    @Test
+    public void testGetIterationBurndown_cached() {
+        expect(iterationHistoryEntryBusiness.getHistoryEntriesForIteration(iteration)).andReturn(Arrays.asList(entry));
+        expect(iterationHistoryEntryBusiness.calculateExpectedEffortDoneDate(isA(LocalDate.class), isA(ExactEstimate.class), isA(ExactEstimate.class))).andReturn(null);
+        
+        expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
+        
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        
+        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true).anyTimes();
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true).anyTimes();
+        replay(iterationHistoryEntryBusiness, iterationBusiness, hourEntryBusiness, settingBusiness);
+        
+        byte[] first = iterationBurndownBusiness.getIterationBurndown(iteration, 0);
+        assertSame(first, iterationBurndownBusiness.getIterationBurndown(iteration, 0));
+        
+        verify(iterationHistoryEntryBusiness, iterationBusiness);
+    }
+    
+    @Test
+    public void testGetIterationBurndownETag() {
+        expect(settingBusiness.isWeekendsInBurndown()).andReturn(true).anyTimes();
+        expect(settingBusiness.isHourReportingEnabled()).andReturn(true).anyTimes();
+        replay(settingBusiness);
+        
+        String tag = iterationBurndownBusiness.getIterationBurndownETag(iteration, 0);
+        assertEquals(tag, iterationBurndownBusiness.getIterationBurndownETag(iteration, 0));
+        assertFalse(tag.equals(iterationBurndownBusiness.getIterationBurndownETag(iteration, 120)));
+        
+        backlogVersionBusiness.backlogChanged(iteration.getId());
+        String changedTag = iterationBurndownBusiness.getIterationBurndownETag(iteration, 0);
+        assertFalse(tag.equals(changedTag));
+        
+        iteration.setName("Renamed");
+        assertFalse(changedTag.equals(iterationBurndownBusiness.getIterationBurndownETag(iteration, 0)));
+        
+        verify(settingBusiness);
+    }
+    
     @Test
     public void testConstructChart() {
         expect(iterationHistoryEntryBusiness.getHistoryEntriesForIteration(iteration)).andReturn(Arrays.asList(entry));
@@ -194,10 +231,9 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
         expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
         expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
@@ -231,10 +267,9 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
         expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
         expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
@@ -364,10 +399,9 @@ public class IterationBurndownBusinessTest extends IterationBurndownBusinessImpl
         
         expect(iterationBusiness.calculateDailyVelocity(isA(LocalDate.class), isA(LocalDate.class), isA(IterationHistoryEntry.class))).andReturn(ExactEstimate.ZERO);
         
-        expect(hourEntryBusiness.getHourEntriesForIteration(iteration)).andReturn(hourEntryList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
-        expect(hourEntryBusiness.getDailySpentEffortForHourEntries(hourEntryList, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), iteration.getEndDate().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate().minusDays(1), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
+        expect(hourEntryBusiness.getDailySpentEffortForIteration(iteration, iteration.getStartDate(), new DateTime().toDateMidnight().toDateTime().plusDays(1))).andReturn(dailySpentEffortList);
         
         expect(settingBusiness.isWeekendsInBurndown()).andReturn(true);
         expect(settingBusiness.isHourReportingEnabled()).andReturn(true);
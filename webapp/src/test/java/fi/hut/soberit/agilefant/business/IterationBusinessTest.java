@@ -7,11 +7,13 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -31,8 +33,10 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.impl.IterationBusinessImpl;
+import fi.hut.soberit.agilefant.db.HourEntryDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO;
+import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.history.BacklogHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.StoryHistoryDAO;
 import fi.hut.soberit.agilefant.db.history.TaskHistoryDAO;
@@ -96,6 +100,12 @@ public class IterationBusinessTest  extends MockedTestCase {
     TeamBusiness teamBusiness;
     @Mock
     TaskHistoryDAO taskHistoryDAO;
+    @Mock
+    StoryDAO storyDAO;
+    @Mock
+    HourEntryDAO hourEntryDAO;
+    @Mock
+    BacklogVersionBusiness backlogVersionBusiness;
     
     Iteration iteration;
     Project project;
@@ -357,9 +367,106 @@ public class IterationBusinessTest  extends MockedTestCase {
     }
     
 
+    private void expectIterationMetricsQueries(Set<Integer> iterationIds,
+            IterationHistoryEntry latestEntry) {
+        Map<Integer, IterationHistoryEntry> latestEntries = new HashMap<Integer, IterationHistoryEntry>();
+        latestEntries.put(iteration.getId(), latestEntry);
+        Map<Integer, IterationHistoryEntry> noEntries = Collections.emptyMap();
+        Map<Integer, Pair<Integer, Integer>> storyPoints = new HashMap<Integer, Pair<Integer, Integer>>();
+        storyPoints.put(iteration.getId(), Pair.create(10, 68));
+        Map<Integer, Pair<Integer, Integer>> noSums = Collections.emptyMap();
+        Map<Integer, Long> spentEffort = new HashMap<Integer, Long>();
+        spentEffort.put(iteration.getId(), 127L);
+        Map<Integer, Pair<Integer, Integer>> taskCounts = new HashMap<Integer, Pair<Integer, Integer>>();
+        taskCounts.put(iteration.getId(), Pair.create(2, 4));
+        Map<Integer, Pair<Integer, Integer>> storyCounts = new HashMap<Integer, Pair<Integer, Integer>>();
+        storyCounts.put(iteration.getId(), Pair.create(1, 2));
+
+        expect(iterationHistoryEntryDAO.retrieveLatest(iterationIds)).andReturn(latestEntries);
+        expect(iterationHistoryEntryDAO.retrieveByDate(iterationIds, new LocalDate().minusDays(1)))
+                .andReturn(noEntries);
+        expect(storyDAO.getDoneAndTotalStoryPointSumsByIteration(iterationIds)).andReturn(storyPoints);
+        expect(storyDAO.getCompletedAndTotalStoryValueSumsByIteration(iterationIds)).andReturn(noSums);
+        expect(hourEntryDAO.calculateIterationHourEntriesSums(iterationIds)).andReturn(spentEffort);
+        expect(iterationDAO.getCountOfDoneAndNonDeferredTasksByIteration(iterationIds)).andReturn(taskCounts);
+        expect(iterationDAO.getCountOfDoneAndAllStoriesByIteration(iterationIds)).andReturn(storyCounts);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetIterationMetrics_multipleIterations() {
+        Iteration emptyIteration = new Iteration();
+        emptyIteration.setId(124);
+        emptyIteration.setStartDate(iteration.getStartDate());
+        emptyIteration.setEndDate(iteration.getEndDate());
+        IterationHistoryEntry latestEntry = new IterationHistoryEntry();
+        latestEntry.setEffortLeftSum(112);
+        latestEntry.setOriginalEstimateSum(257);
+
+        expect(backlogVersionBusiness.getVersion(123)).andReturn(1L);
+        expect(backlogVersionBusiness.getVersion(124)).andReturn(1L);
+        expectIterationMetricsQueries(new HashSet<Integer>(Arrays.asList(123, 124)), latestEntry);
+        replayAll();
+
+        Map<Integer, IterationMetrics> actual = iterationBusiness
+                .getIterationMetrics(Arrays.asList(iteration, emptyIteration));
+
+        verifyAll();
+        assertEquals(2, actual.size());
+        IterationMetrics metrics = actual.get(123);
+        assertEquals(112L, metrics.getEffortLeft().getMinorUnits().longValue());
+        assertEquals(257L, metrics.getOriginalEstimate().getMinorUnits().longValue());
+        assertEquals(68, metrics.getStoryPoints().intValue());
+        assertEquals(10, metrics.getDoneStoryPoints().intValue());
+        assertEquals(127L, metrics.getSpentEffort().getMinorUnits().longValue());
+        assertEquals(Integer.valueOf(50), metrics.getPercentDoneTasks());
+        assertEquals(Integer.valueOf(50), metrics.getPercentDoneStories());
+        assertEquals(56, metrics.getCompletedEffortPercentage());
+        assertEquals(15, metrics.getDoneStoryPointsPercentage());
+        assertNull(metrics.getVariance());
+
+        IterationMetrics emptyMetrics = actual.get(124);
+        assertEquals(0L, emptyMetrics.getEffortLeft().getMinorUnits().longValue());
+        assertEquals(0, emptyMetrics.getStoryPoints().intValue());
+        assertEquals(0, emptyMetrics.getTotalTasks().intValue());
+        assertEquals(0, emptyMetrics.getTotalStories().intValue());
+        assertEquals(0, emptyMetrics.getTotalValue());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetIterationMetrics_multipleIterationsCached() {
+        Iteration emptyIteration = new Iteration();
+        emptyIteration.setId(124);
+        emptyIteration.setStartDate(iteration.getStartDate());
+        emptyIteration.setEndDate(iteration.getEndDate());
+        IterationHistoryEntry latestEntry = new IterationHistoryEntry();
+        latestEntry.setEffortLeftSum(30);
+        latestEntry.setOriginalEstimateSum(60);
+
+        expect(backlogVersionBusiness.getVersion(123)).andReturn(1L).times(2);
+        expect(backlogVersionBusiness.getVersion(123)).andReturn(2L);
+        expect(backlogVersionBusiness.getVersion(124)).andReturn(1L).times(3);
+        expectIterationMetricsQueries(new HashSet<Integer>(Arrays.asList(123, 124)), latestEntry);
+        expectIterationMetricsQueries(new HashSet<Integer>(Arrays.asList(123)), latestEntry);
+        replayAll();
+
+        List<Iteration> iterations = Arrays.asList(iteration, emptyIteration);
+        Map<Integer, IterationMetrics> first = iterationBusiness.getIterationMetrics(iterations);
+        Map<Integer, IterationMetrics> second = iterationBusiness.getIterationMetrics(iterations);
+        Map<Integer, IterationMetrics> third = iterationBusiness.getIterationMetrics(iterations);
+
+        verifyAll();
+        assertSame(first.get(123), second.get(123));
+        assertSame(first.get(124), second.get(124));
+        assertTrue(first.get(123) != third.get(123));
+        assertSame(first.get(124), third.get(124));
+        assertEquals(30L, third.get(123).getEffortLeft().getMinorUnits().longValue());
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testGetIterationMetrics_nullIteration() {
-        iterationBusiness.getIterationMetrics(null);
+        iterationBusiness.getIterationMetrics((Iteration) null);
     }
 
     @Test
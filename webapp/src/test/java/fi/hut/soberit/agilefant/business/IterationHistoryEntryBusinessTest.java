@@ -3,11 +3,19 @@ package fi.hut.soberit.agilefant.business;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+
 import org.easymock.Capture;
 import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
 
+import fi.hut.soberit.agilefant.business.impl.BacklogVersionBusinessImpl;
 import fi.hut.soberit.agilefant.business.impl.IterationHistoryEntryBusinessImpl;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.IterationHistoryEntryDAO;
@@ -35,6 +43,18 @@ public class IterationHistoryEntryBusinessTest {
         this.iterationDAO = createMock(IterationDAO.class);
         iterationHistoryEntryBusiness.setIterationDAO(iterationDAO);
         iterationHistoryEntryBusiness.setIterationHistoryEntryDAO(iterationHistoryEntryDAO);
+        iterationHistoryEntryBusiness.setBacklogVersionBusiness(new BacklogVersionBusinessImpl());
+        iterationHistoryEntryBusiness.setTransactionManager(new PlatformTransactionManager() {
+            public void rollback(TransactionStatus status) throws TransactionException {
+            }
+
+            public TransactionStatus getTransaction(TransactionDefinition definition) throws TransactionException {
+                return new SimpleTransactionStatus();
+            }
+
+            public void commit(TransactionStatus status) throws TransactionException {
+            }
+        });
         
         iteration = new Iteration();
         iteration.setId(1);
@@ -120,6 +140,155 @@ public class IterationHistoryEntryBusinessTest {
         verify(iterationDAO, iterationHistoryEntryDAO);
     }
     
+    @Test
+    public void testApplyIterationHistoryDelta_latestEntryToday() {
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        iterationHistoryEntryDAO.addToSums(latestEntry, -20, 10);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, -20, 10);
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testApplyIterationHistoryDelta_latestEntryYesterday() {
+        latestEntry.setTimestamp(new LocalDate().minusDays(1));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        expect(iterationDAO.get(1)).andReturn(iteration);
+        Capture<IterationHistoryEntry> capturedEntry = new Capture<IterationHistoryEntry>();
+        iterationHistoryEntryDAO.store(capture(capturedEntry));
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, -20, 10);
+        IterationHistoryEntry entry = capturedEntry.getValue();
+        assertEquals(0, entry.getId());
+        assertEquals(40, entry.getEffortLeftSum());
+        assertEquals(100, entry.getOriginalEstimateSum());
+        assertEquals(10, entry.getDeltaOriginalEstimate());
+        assertEquals(new LocalDate(), entry.getTimestamp());
+        assertEquals(iteration, entry.getIteration());
+        assertEquals(60, latestEntry.getEffortLeftSum());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testApplyIterationHistoryDelta_noChange() {
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, 0, 0);
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testApplyIterationHistoryDelta_noHistory() {
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(10), new ExactEstimate(20));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(null);
+        expect(iterationDAO.get(1)).andReturn(iteration);
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(null);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        Capture<IterationHistoryEntry> capturedEntry = new Capture<IterationHistoryEntry>();
+        iterationHistoryEntryDAO.store(capture(capturedEntry));
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, 5, 5);
+        assertEquals(10, capturedEntry.getValue().getEffortLeftSum());
+        assertEquals(20, capturedEntry.getValue().getOriginalEstimateSum());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testApplyIterationHistoryDelta_incrementalDisabled() {
+        iterationHistoryEntryBusiness.setIncrementalHistory(false);
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(10), new ExactEstimate(20));
+        expect(iterationDAO.get(1)).andReturn(iteration);
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        iterationHistoryEntryDAO.store(latestEntry);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, 5, 5);
+        assertEquals(10, latestEntry.getEffortLeftSum());
+        assertEquals(20, latestEntry.getOriginalEstimateSum());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testReconcileIterationHistories() {
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(35), new ExactEstimate(100));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry).times(2);
+        iterationHistoryEntryDAO.addToSums(latestEntry, -20, 10);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        iterationHistoryEntryDAO.store(latestEntry);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, -20, 10);
+        assertEquals(1, iterationHistoryEntryBusiness.reconcileIterationHistories());
+        assertEquals(35, latestEntry.getEffortLeftSum());
+        assertEquals(100, latestEntry.getOriginalEstimateSum());
+        assertEquals(10, latestEntry.getDeltaOriginalEstimate());
+
+        // Already reconciled
+        assertEquals(0, iterationHistoryEntryBusiness.reconcileIterationHistories());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testReconcileIterationHistories_noDrift() {
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(60), new ExactEstimate(90));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry).times(2);
+        iterationHistoryEntryDAO.addToSums(latestEntry, -20, 10);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, -20, 10);
+        assertEquals(0, iterationHistoryEntryBusiness.reconcileIterationHistories());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testReconcileIterationHistories_failureRetried() {
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(35), new ExactEstimate(100));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        iterationHistoryEntryDAO.addToSums(latestEntry, -20, 10);
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andThrow(new RuntimeException("Deadlock"));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        iterationHistoryEntryDAO.store(latestEntry);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(1, -20, 10);
+        assertEquals(0, iterationHistoryEntryBusiness.reconcileIterationHistories());
+        assertEquals(1, iterationHistoryEntryBusiness.reconcileIterationHistories());
+        assertEquals(35, latestEntry.getEffortLeftSum());
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
+    @Test
+    public void testScheduledReconcileIterationHistories_allIterationsAfterStartup() {
+        Pair<ExactEstimate, ExactEstimate> sums = Pair.create(new ExactEstimate(35), new ExactEstimate(90));
+        expect(iterationHistoryEntryDAO.retrieveIterationIdsWithHistory()).andReturn(Arrays.asList(1));
+        expect(iterationHistoryEntryDAO.retrieveLatest(1)).andReturn(latestEntry);
+        expect(iterationHistoryEntryDAO.calculateCurrentHistoryData(1)).andReturn(sums);
+        iterationHistoryEntryDAO.store(latestEntry);
+        replay(iterationDAO, iterationHistoryEntryDAO);
+
+        iterationHistoryEntryBusiness.scheduledReconcileIterationHistories();
+        assertEquals(35, latestEntry.getEffortLeftSum());
+        // Only the first run checks all iterations
+        iterationHistoryEntryBusiness.scheduledReconcileIterationHistories();
+
+        verify(iterationDAO, iterationHistoryEntryDAO);
+    }
+
     @Test
     public void testGetHistoryEntriesForIteration() {
         expect(iterationHistoryEntryDAO.getHistoryEntriesForIteration(iteration.getId()))
@@ -6,9 +6,15 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
@@ -79,4 +85,36 @@ public class LabelBusinessTest extends MockedTestCase {
         
     }
 
+    @Test
+    @DirtiesContext
+    public void testCreateStoryLabels_multipleStories() {
+        User user = new User();
+        this.setCurrentUser(user);
+
+        List<String> labelNames = Arrays.asList("Foo", "faa");
+        Story story1 = new Story();
+        story1.setId(1);
+        Story story2 = new Story();
+        story2.setId(2);
+        List<Story> stories = Arrays.asList(story1, story2);
+
+        Map<Integer, Set<String>> existing = new HashMap<Integer, Set<String>>();
+        existing.put(2, new HashSet<String>(Arrays.asList("foo")));
+        expect(labelDAO.getExistingStoryLabelNames(new HashSet<Integer>(Arrays.asList(1, 2)), labelNames))
+                .andReturn(existing);
+        Capture<Collection<Label>> capt = new Capture<Collection<Label>>();
+        labelDAO.insertLabels(EasyMock.capture(capt));
+
+        replayAll();
+        labelBusiness.createStoryLabels(labelNames, stories);
+        verifyAll();
+
+        List<String> created = new ArrayList<String>();
+        for (Label label : capt.getValue()) {
+            assertEquals(user, label.getCreator());
+            created.add(label.getStory().getId() + ":" + label.getDisplayName());
+        }
+        assertEquals(Arrays.asList("1:Foo", "1:faa", "2:faa"), created);
+    }
+
 }
@@ -2,73 +2,61 @@ package fi.hut.soberit.agilefant.business;
 
 import static org.easymock.EasyMock.createStrictMock;
 import static org.easymock.EasyMock.expect;
-import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
-import org.easymock.EasyMock;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 
 import fi.hut.soberit.agilefant.business.impl.MenuBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
 import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
-import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
-import fi.hut.soberit.agilefant.model.Team;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.transfer.MenuDataChanges;
 import fi.hut.soberit.agilefant.transfer.MenuDataNode;
 import fi.hut.soberit.agilefant.transfer.ScheduleStatus;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
 
 public class MenuBusinessTest {
 
     MenuBusinessImpl menuBusiness;
     
-    ProductBusiness productBusiness;
-    
-    IterationBusiness iterationBusiness;
-    
     ProjectDAO projectDAO;
     
     IterationDAO iterationDAO;
     
     StoryDAO storyDAO;
     
-    TransferObjectBusiness transferObjectBusiness;
+    BacklogDAO backlogDAO;
     
     UserBusiness userBusiness;
     
     AuthorizationBusiness authorizationBusiness;
     
-    Set<Product> products;
+    List<BacklogMenuTree.Entry> entries;
+    
+    User user;
     
     @Before
     public void setUp_dependencies() {
         menuBusiness = new MenuBusinessImpl();
         
-        productBusiness = createStrictMock(ProductBusiness.class);
-        menuBusiness.setProductBusiness(productBusiness);
-        
-        transferObjectBusiness = createStrictMock(TransferObjectBusiness.class);
-        menuBusiness.setTransferObjectBusiness(transferObjectBusiness);
-        
-        iterationBusiness = createStrictMock(IterationBusiness.class);
-        menuBusiness.setIterationBusiness(iterationBusiness);
-        
         iterationDAO = createStrictMock(IterationDAO.class);
         menuBusiness.setIterationDAO(iterationDAO);
         
@@ -78,87 +66,58 @@ public class MenuBusinessTest {
         storyDAO = createStrictMock(StoryDAO.class);
         menuBusiness.setStoryDAO(storyDAO);
         
+        backlogDAO = createStrictMock(BacklogDAO.class);
+        menuBusiness.setBacklogDAO(backlogDAO);
+        
         userBusiness = createStrictMock(UserBusiness.class);
         menuBusiness.setUserBusiness(userBusiness);
         
         authorizationBusiness = createStrictMock(AuthorizationBusiness.class);
         menuBusiness.setAuthorizationBusiness(authorizationBusiness);
+        
+        user = new User();
+        user.setId(10);
+        SecurityUtil.setLoggedUser(user);
     }
 
     @Before
     public void setUp_dataset() {
-        products = new HashSet<Product>();
-        Product prod1 = new Product();
-        prod1.setName("zzz");
-        prod1.setId(2);
-        products.add(prod1);
-        Product prod2 = new Product();
-        prod2.setName("aaa");
-        products.add(prod2);
-        prod2.setId(1);
-        
-        Project proj1 = new Project();
-        proj1.setStartDate(new DateTime(2009,1,1,0,0,0,0));
-        proj1.setId(3);
-        Project proj2 = new Project();
-        proj2.setStartDate(new DateTime(2009,10,1,0,0,0,0));
-        proj2.setId(5);
-        Project proj3 = new Project();
-        proj3.setStartDate(new DateTime(2009,6,1,0,0,0,0));
-        proj3.setId(4);
-        
-        prod1.getChildren().add(proj1);
-        prod1.getChildren().add(proj2);
-        prod1.getChildren().add(proj3);
-        
-        Iteration iter1 = new Iteration();
-        iter1.setStartDate(new DateTime(2009,12,1,0,0,0,0));
-        iter1.setId(8);
-        Iteration iter2 = new Iteration();
-        iter2.setStartDate(new DateTime(2009,2,1,0,0,0,0));
-        iter2.setId(6);
-        Iteration iter3 = new Iteration();
-        iter3.setStartDate(new DateTime(2009,7,1,0,0,0,0));
-        iter3.setId(7);
-        
-        proj1.getChildren().add(iter1);
-        proj1.getChildren().add(iter2);
-        proj1.getChildren().add(iter3);
+        entries = new ArrayList<BacklogMenuTree.Entry>();
+        entries.add(new BacklogMenuTree.Entry(2, null, BacklogType.PRODUCT, "zzz", null, null));
+        entries.add(new BacklogMenuTree.Entry(1, null, BacklogType.PRODUCT, "aaa", null, null));
+        
+        entries.add(new BacklogMenuTree.Entry(3, 2, BacklogType.PROJECT, "Project 3",
+                new DateTime(2009,1,1,0,0,0,0), new DateTime(2009,12,31,0,0,0,0)));
+        entries.add(new BacklogMenuTree.Entry(5, 2, BacklogType.PROJECT, "Project 5",
+                new DateTime(2009,10,1,0,0,0,0), new DateTime(2009,12,31,0,0,0,0)));
+        entries.add(new BacklogMenuTree.Entry(4, 2, BacklogType.PROJECT, "Project 4",
+                new DateTime(2009,6,1,0,0,0,0), new DateTime(2009,12,31,0,0,0,0)));
+        
+        entries.add(new BacklogMenuTree.Entry(8, 3, BacklogType.ITERATION, "Iteration 8",
+                new DateTime(2009,12,1,0,0,0,0), new DateTime(2009,12,31,0,0,0,0)));
+        entries.add(new BacklogMenuTree.Entry(6, 3, BacklogType.ITERATION, "Iteration 6",
+                new DateTime(2009,2,1,0,0,0,0), new DateTime(2009,2,28,0,0,0,0)));
+        entries.add(new BacklogMenuTree.Entry(7, 3, BacklogType.ITERATION, "Iteration 7",
+                new DateTime(2009,7,1,0,0,0,0), new DateTime(2009,7,31,0,0,0,0)));
     }
+    
     private void replayAll() {
-        replay(iterationDAO, projectDAO, storyDAO, productBusiness, transferObjectBusiness, iterationBusiness, userBusiness, authorizationBusiness);
+        replay(iterationDAO, projectDAO, storyDAO, backlogDAO, userBusiness, authorizationBusiness);
     }
 
     private void verifyAll() {
-        verify(iterationDAO, projectDAO, storyDAO, productBusiness, transferObjectBusiness, iterationBusiness, userBusiness, authorizationBusiness);
+        verify(iterationDAO, projectDAO, storyDAO, backlogDAO, userBusiness, authorizationBusiness);
+    }
+    
+    private void resetAll() {
+        reset(iterationDAO, projectDAO, storyDAO, backlogDAO, userBusiness, authorizationBusiness);
     }
     
     @Test
     public void constructBacklogMenuData() {  
-        User user = new User();
-        user.setId(10);
-        SecurityUtil.setLoggedUser(user);
-        Team team = new Team();
-        Collection<User> users = new ArrayList<User>();
-        users.add(user);
-        team.setUsers(users);
-        Collection<Team> teams = new ArrayList<Team>();
-        teams.add(team);
-        user.setTeams(teams);
-        team.setProducts(products);
-        
-        expect(productBusiness.retrieveAllOrderByName()).andReturn(
-                products);
-        expect(authorizationBusiness.isBacklogAccessible(1, SecurityUtil.getLoggedUser())).andReturn(true);
-        expect(authorizationBusiness.isBacklogAccessible(2, SecurityUtil.getLoggedUser())).andReturn(true);
-
-        final ArrayList<Iteration> emptyStandAloneIterations = new ArrayList<Iteration>();
-        expect(iterationBusiness.retrieveAllStandAloneIterations())
-            .andReturn(emptyStandAloneIterations);
-        
-        expect(transferObjectBusiness.getBacklogScheduleStatus(isA(Backlog.class)))
-            .andReturn(ScheduleStatus.FUTURE).times(8);
-        
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
         replayAll();
                
         List<MenuDataNode> actual = menuBusiness.constructBacklogMenuData();
@@ -166,6 +125,143 @@ public class MenuBusinessTest {
         
         assertEquals(2, actual.size());
         checkProducts(actual);
+        assertEquals(ScheduleStatus.ONGOING, actual.get(0).getScheduleStatus());
+        assertEquals(ScheduleStatus.PAST, actual.get(1).getChildren().get(0).getScheduleStatus());
+        assertEquals(BacklogType.ITERATION, actual.get(1).getChildren().get(0)
+                .getChildren().get(0).getAddClass());
+    }
+    
+    @Test
+    public void constructBacklogMenuData_treeIsCached() {
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(false);
+        replayAll();
+        
+        menuBusiness.constructBacklogMenuData();
+        List<MenuDataNode> actual = menuBusiness.constructBacklogMenuData();
+        verifyAll();
+        
+        assertEquals(1, actual.size());
+        assertEquals(1, actual.get(0).getId());
+    }
+    
+    @Test
+    public void constructBacklogMenuData_standaloneIterations() {
+        entries.add(new BacklogMenuTree.Entry(9, null, BacklogType.ITERATION, "Standalone 9", null, null));
+        entries.add(new BacklogMenuTree.Entry(10, null, BacklogType.ITERATION, "Standalone 10", null, null));
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(10, user)).andReturn(false);
+        expect(authorizationBusiness.isBacklogAccessible(9, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        
+        List<MenuDataNode> actual = menuBusiness.constructBacklogMenuData();
+        verifyAll();
+        
+        assertEquals(3, actual.size());
+        checkProducts(actual);
+        MenuDataNode standaloneNode = actual.get(2);
+        assertEquals(-1, standaloneNode.getId());
+        assertEquals(1, standaloneNode.getChildren().size());
+        assertEquals(9, standaloneNode.getChildren().get(0).getId());
+    }
+    
+    @Test
+    public void backlogStored_patchesMenu() {
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        menuBusiness.constructBacklogMenuData();
+        verifyAll();
+        resetAll();
+        
+        Product product = new Product();
+        product.setId(1);
+        Project project = new Project();
+        project.setId(4);
+        project.setName("Moved project");
+        project.setParent(product);
+        project.setStartDate(new DateTime(2009,6,1,0,0,0,0));
+        project.setEndDate(new DateTime(2009,12,31,0,0,0,0));
+        menuBusiness.backlogStored(project);
+        
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        List<MenuDataNode> actual = menuBusiness.constructBacklogMenuData();
+        verifyAll();
+        
+        assertEquals(1, actual.get(0).getChildren().size());
+        assertEquals("Moved project", actual.get(0).getChildren().get(0).getTitle());
+        assertEquals(2, actual.get(1).getChildren().size());
+    }
+    
+    @Test
+    public void constructBacklogMenuChanges() {
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        MenuDataChanges initial = menuBusiness.constructBacklogMenuChanges(0L);
+        verifyAll();
+        resetAll();
+        assertEquals(2, initial.getMenuData().size());
+        
+        Product product = new Product();
+        product.setId(2);
+        Iteration iteration = new Iteration();
+        iteration.setId(11);
+        iteration.setName("New iteration");
+        iteration.setParent(new Project());
+        iteration.getParent().setId(4);
+        iteration.getParent().setParent(product);
+        menuBusiness.backlogStored(iteration);
+        Iteration deleted = new Iteration();
+        deleted.setId(6);
+        menuBusiness.backlogDeleted(deleted);
+        
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        MenuDataChanges changes = menuBusiness.constructBacklogMenuChanges(initial.getVersion());
+        verifyAll();
+        
+        assertNull(changes.getMenuData());
+        assertEquals(initial.getVersion() + 2, changes.getVersion());
+        assertEquals(1, changes.getChanged().size());
+        assertEquals(11, changes.getChanged().get(0).getId());
+        assertEquals(Integer.valueOf(4), changes.getChanged().get(0).getParentId());
+        assertEquals(Arrays.asList(6), changes.getRemovedIds());
+    }
+    
+    @Test
+    public void constructBacklogMenuChanges_inaccessible() {
+        expect(backlogDAO.retrieveMenuTreeEntries()).andReturn(entries);
+        expect(authorizationBusiness.isBacklogAccessible(1, user)).andReturn(true);
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(true);
+        replayAll();
+        long version = menuBusiness.constructBacklogMenuChanges(0L).getVersion();
+        verifyAll();
+        resetAll();
+        
+        Project project = new Project();
+        project.setId(12);
+        project.setName("Hidden project");
+        project.setParent(new Product());
+        project.getParent().setId(2);
+        menuBusiness.backlogStored(project);
+        
+        expect(authorizationBusiness.isBacklogAccessible(2, user)).andReturn(false);
+        replayAll();
+        MenuDataChanges changes = menuBusiness.constructBacklogMenuChanges(version);
+        verifyAll();
+        
+        assertEquals(0, changes.getChanged().size());
+        assertEquals(Arrays.asList(12), changes.getRemovedIds());
     }
     
     @Test
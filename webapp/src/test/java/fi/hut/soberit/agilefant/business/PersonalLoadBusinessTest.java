@@ -3,6 +3,7 @@ package fi.hut.soberit.agilefant.business;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -22,6 +23,7 @@ import org.junit.Test;
 import fi.hut.soberit.agilefant.business.impl.PersonalLoadBusinessImpl;
 import fi.hut.soberit.agilefant.db.AssignmentDAO;
 import fi.hut.soberit.agilefant.db.IterationDAO;
+import fi.hut.soberit.agilefant.db.ProjectDAO;
 import fi.hut.soberit.agilefant.db.StoryDAO;
 import fi.hut.soberit.agilefant.db.TaskDAO;
 import fi.hut.soberit.agilefant.model.Assignment;
@@ -37,6 +39,7 @@ import fi.hut.soberit.agilefant.transfer.IntervalLoadContainer;
 import fi.hut.soberit.agilefant.transfer.IterationLoadContainer;
 import fi.hut.soberit.agilefant.transfer.UnassignedLoadTO;
 import fi.hut.soberit.agilefant.transfer.UserLoadLimits;
+import fi.hut.soberit.agilefant.util.Pair;
 
 public class PersonalLoadBusinessTest {
 
@@ -46,6 +49,7 @@ public class PersonalLoadBusinessTest {
     private StoryDAO storyDAO;
     private IterationDAO iterationDAO;
     private AssignmentDAO assignmentDAO;
+    private ProjectDAO projectDAO;
     private SettingBusiness settingBusiness;
     private User user;
     private Task task1;
@@ -64,12 +68,14 @@ public class PersonalLoadBusinessTest {
         storyDAO = createStrictMock(StoryDAO.class);
         iterationDAO = createStrictMock(IterationDAO.class);
         assignmentDAO = createStrictMock(AssignmentDAO.class);
+        projectDAO = createStrictMock(ProjectDAO.class);
         settingBusiness = createStrictMock(SettingBusiness.class);
         personalLoadBusiness.setStoryDAO(storyDAO);
         personalLoadBusiness.setTaskDAO(taskDAO);
         personalLoadBusiness.setUserBusiness(userBusiness);
         personalLoadBusiness.setIterationDAO(iterationDAO);
         personalLoadBusiness.setAssignmentDAO(assignmentDAO);
+        personalLoadBusiness.setProjectDAO(projectDAO);
         personalLoadBusiness.setSettingBusiness(settingBusiness);
         user = new User();
 
@@ -101,12 +107,12 @@ public class PersonalLoadBusinessTest {
 
     private void replayAll() {
         replay(userBusiness, taskDAO, storyDAO, iterationDAO, assignmentDAO,
-                settingBusiness);
+                projectDAO, settingBusiness);
     }
 
     private void verifyAll() {
         verify(userBusiness, taskDAO, storyDAO, iterationDAO, assignmentDAO,
-                settingBusiness);
+                projectDAO, settingBusiness);
     }
 
     @Test
@@ -574,6 +580,136 @@ public class PersonalLoadBusinessTest {
         verifyAll();
     }
     
+    private void expectNoLoadData(Set<Integer> userIds) {
+        Map<Integer, List<Task>> noTasks = new HashMap<Integer, List<Task>>();
+        expect(taskDAO.getTasksWithEffortLeftByResponsibles(eq(userIds), isA(Interval.class)))
+                .andReturn(noTasks);
+        expect(taskDAO.getStoryAssignedTasksWithEffortLeftByResponsibles(eq(userIds), isA(Interval.class)))
+                .andReturn(noTasks);
+        expect(taskDAO.getUnassignedTasksWithEffortLeftByAssignees(eq(userIds), isA(Interval.class)))
+                .andReturn(new HashMap<Integer, List<UnassignedLoadTO>>());
+        expect(iterationDAO.retrieveEmptyIterationAssignmentsWithPlannedSize(
+                isA(DateTime.class), isA(DateTime.class), eq(userIds)))
+                .andReturn(new ArrayList<Pair<Iteration, Assignment>>());
+        expect(assignmentDAO.assigmentsInBacklogTimeframe(isA(Interval.class), eq(userIds)))
+                .andReturn(new ArrayList<Assignment>());
+        expect(taskDAO.getNumOfResponsiblesByTask(new HashSet<Integer>()))
+                .andReturn(new HashMap<Integer, Integer>());
+        expect(storyDAO.getNumOfResponsiblesByStory(new HashSet<Integer>()))
+                .andReturn(new HashMap<Integer, Integer>());
+        expect(iterationDAO.getMultiple(new HashSet<Integer>()))
+                .andReturn(new ArrayList<Iteration>());
+        expect(iterationDAO.getTotalAvailability(new HashSet<Integer>()))
+                .andReturn(new HashMap<Integer, Integer>());
+    }
+
+    @Test
+    public void testRetrieveUserLoads() {
+        initDataset();
+        User user1 = new User();
+        user1.setId(1);
+        User user2 = new User();
+        user2.setId(2);
+        Set<Integer> userIds = new HashSet<Integer>(Arrays.asList(1, 2));
+        iter.setStartDate(new DateTime().minusDays(1));
+        iter.setEndDate(new DateTime().plusDays(14));
+        task1.setIteration(iter);
+        Map<Integer, List<Task>> assignedTasks = new HashMap<Integer, List<Task>>();
+        assignedTasks.put(1, Arrays.asList(task1));
+
+        expect(taskDAO.getTasksWithEffortLeftByResponsibles(eq(userIds), isA(Interval.class)))
+                .andReturn(assignedTasks);
+        expect(taskDAO.getStoryAssignedTasksWithEffortLeftByResponsibles(eq(userIds), isA(Interval.class)))
+                .andReturn(new HashMap<Integer, List<Task>>());
+        expect(taskDAO.getUnassignedTasksWithEffortLeftByAssignees(eq(userIds), isA(Interval.class)))
+                .andReturn(new HashMap<Integer, List<UnassignedLoadTO>>());
+        expect(iterationDAO.retrieveEmptyIterationAssignmentsWithPlannedSize(
+                isA(DateTime.class), isA(DateTime.class), eq(userIds)))
+                .andReturn(new ArrayList<Pair<Iteration, Assignment>>());
+        expect(assignmentDAO.assigmentsInBacklogTimeframe(isA(Interval.class), eq(userIds)))
+                .andReturn(new ArrayList<Assignment>());
+        expect(taskDAO.getNumOfResponsiblesByTask(new HashSet<Integer>(Arrays.asList(1))))
+                .andReturn(assigneeMap);
+        expect(storyDAO.getNumOfResponsiblesByStory(new HashSet<Integer>()))
+                .andReturn(new HashMap<Integer, Integer>());
+        expect(iterationDAO.getMultiple(new HashSet<Integer>()))
+                .andReturn(new ArrayList<Iteration>());
+        expect(iterationDAO.getTotalAvailability(new HashSet<Integer>()))
+                .andReturn(new HashMap<Integer, Integer>());
+        expect(userBusiness.calculateWorktimePerPeriod(eq(user1), isA(Interval.class)))
+                .andReturn(Duration.standardDays(1)).anyTimes();
+        expect(iterationDAO.getMultiple(new HashSet<Integer>(Arrays.asList(1))))
+                .andReturn(Arrays.asList(iter));
+        replayAll();
+
+        Map<Integer, ComputedLoadData> actual = personalLoadBusiness
+                .retrieveUserLoads(Arrays.asList(user1, user2), 1);
+        assertEquals(2, actual.size());
+        assertEquals(7, actual.get(1).getLoadContainers().size());
+        assertEquals(250L, actual.get(1).getLoadContainers().get(0).getAssignedLoad());
+        assertEquals(0L, actual.get(2).getLoadContainers().get(0).getAssignedLoad());
+
+        // the loads are cached, but each request gets its own copy
+        actual.get(1).getLoadContainers().get(0).setAssignedLoad(0L);
+        Map<Integer, ComputedLoadData> cached = personalLoadBusiness
+                .retrieveUserLoads(Arrays.asList(user1, user2), 1);
+        assertNotSame(actual.get(1), cached.get(1));
+        assertEquals(7, cached.get(1).getLoadContainers().size());
+        IntervalLoadContainer first = cached.get(1).getLoadContainers().get(0);
+        assertEquals(250L, first.getAssignedLoad());
+        assertEquals(1, first.getDetailedLoad().size());
+        assertSame(iter, ((IterationLoadContainer) first.getDetailedLoad().get(0)).getIteration());
+        assertEquals(0L, cached.get(2).getLoadContainers().get(0).getAssignedLoad());
+        verifyAll();
+    }
+
+    @Test
+    public void testRetrieveUserLoads_loadDataChanged() {
+        User user1 = new User();
+        user1.setId(1);
+        expectNoLoadData(new HashSet<Integer>(Arrays.asList(1)));
+        expectNoLoadData(new HashSet<Integer>(Arrays.asList(1)));
+        replayAll();
+
+        ComputedLoadData first = personalLoadBusiness.retrieveUserLoad(user1, 1);
+        personalLoadBusiness.loadDataChanged();
+        ComputedLoadData second = personalLoadBusiness.retrieveUserLoad(user1, 1);
+        assertNotSame(first, second);
+        verifyAll();
+    }
+
+    @Test
+    public void testRetrieveUserLoads_loadDataChangedForUsers() {
+        User user1 = new User();
+        user1.setId(1);
+        User user2 = new User();
+        user2.setId(2);
+        Set<Integer> taskIds = new HashSet<Integer>(Arrays.asList(5));
+        Set<Integer> storyIds = new HashSet<Integer>();
+        Set<Integer> backlogIds = new HashSet<Integer>(Arrays.asList(3));
+        Set<Integer> userIds = new HashSet<Integer>();
+        expectNoLoadData(new HashSet<Integer>(Arrays.asList(1)));
+        expectNoLoadData(new HashSet<Integer>(Arrays.asList(2)));
+        expect(taskDAO.retrieveResponsibleIds(taskIds))
+                .andReturn(new HashSet<Integer>(Arrays.asList(1)));
+        expect(taskDAO.retrieveResponsibleIdsByIterations(backlogIds))
+                .andReturn(new HashSet<Integer>());
+        expect(assignmentDAO.retrieveAssigneeIds(backlogIds, taskIds, storyIds))
+                .andReturn(new HashSet<Integer>());
+        expectNoLoadData(new HashSet<Integer>(Arrays.asList(1)));
+        replayAll();
+
+        ComputedLoadData first1 = personalLoadBusiness.retrieveUserLoad(user1, 1);
+        ComputedLoadData first2 = personalLoadBusiness.retrieveUserLoad(user2, 1);
+        personalLoadBusiness.loadDataChanged(taskIds, storyIds, backlogIds, userIds);
+        // only the load of the task assignee is computed again
+        ComputedLoadData second1 = personalLoadBusiness.retrieveUserLoad(user1, 1);
+        ComputedLoadData second2 = personalLoadBusiness.retrieveUserLoad(user2, 1);
+        assertNotSame(first1, second1);
+        assertEquals(first2.getLoadContainers().size(), second2.getLoadContainers().size());
+        verifyAll();
+    }
+
     @Test
     public void testGetDailyLoadLimitsByUser() {
         user.setWeekEffort(new ExactEstimate(5000L));
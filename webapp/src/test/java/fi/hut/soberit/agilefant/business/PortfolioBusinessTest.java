@@ -10,7 +10,6 @@ import static org.junit.Assert.assertSame;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.easymock.EasyMock;
 import org.joda.time.LocalDate;
 import org.joda.time.Months;
 import org.joda.time.Period;
@@ -100,8 +99,8 @@ public class PortfolioBusinessTest {
                 rankedProjects);
         expect(projectDAO.getUnrankedProjects(today, endDate)).andReturn(
                 unrankedProjects);
-        expect(authorizationBusiness.isBacklogAccessible(EasyMock.eq(rankedProject.getId()), EasyMock.anyObject(User.class))).andReturn(true).anyTimes();
-        expect(authorizationBusiness.isBacklogAccessible(EasyMock.eq(unrankedProject.getId()), EasyMock.anyObject(User.class))).andReturn(true).anyTimes();
+        expect(authorizationBusiness.filterAccessible(rankedProjects, user)).andReturn(rankedProjects);
+        expect(authorizationBusiness.filterAccessible(unrankedProjects, user)).andReturn(unrankedProjects);
         replayAll();
 
         PortfolioTO result = portfolioBusiness.getPortfolioData();
@@ -1,5 +1,6 @@
 package fi.hut.soberit.agilefant.business;
 
+import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.util.LinkedList;
@@ -10,6 +11,9 @@ import org.joda.time.DateTime;
 import org.junit.Test;
 
 import fi.hut.soberit.agilefant.business.impl.ProjectBurnupBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogHistoryEntryDAO;
+import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
+import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.util.ProjectBurnupData;
 import fi.hut.soberit.agilefant.util.Triple;
 
@@ -51,4 +55,74 @@ public class ProjectBurnupBusinessTest extends ProjectBurnupBusinessImpl {
         assertEquals(4, datasets.second.getSeries(0).getItemCount());
     }
 
+    private Project createProject() {
+        Project project = new Project();
+        project.setId(3);
+        project.setName("Project");
+        project.setStartDate(new DateTime().minusDays(10));
+        project.setEndDate(new DateTime().plusDays(10));
+        return project;
+    }
+
+    private BacklogHistoryEntry createHistoryEntry(int id, Project project,
+            DateTime timestamp, long estimateSum) {
+        BacklogHistoryEntry entry = new BacklogHistoryEntry();
+        entry.setId(id);
+        entry.setBacklog(project);
+        entry.setTimestamp(timestamp);
+        entry.setEstimateSum(estimateSum);
+        return entry;
+    }
+
+    @Test
+    public void testGetSmallBurnup_cached() {
+        Project project = createProject();
+        List<ProjectBurnupData.Entry> entries = new LinkedList<ProjectBurnupData.Entry>();
+        entries.add(new ProjectBurnupData.Entry(new DateTime().minusDays(2), 10, 0, 10));
+        BacklogHistoryEntryDAO backlogHistoryEntryDAO = createMock(BacklogHistoryEntryDAO.class);
+        setBacklogHistoryEntryDAO(backlogHistoryEntryDAO);
+        expect(backlogHistoryEntryDAO.retrieveBurnupData(3)).andReturn(new ProjectBurnupData(entries));
+        replay(backlogHistoryEntryDAO);
+
+        byte[] image = getSmallBurnup(project);
+        assertNotNull(image);
+        assertSame(image, getSmallBurnup(project));
+        assertNotSame(image, getBurnup(project));
+        verify(backlogHistoryEntryDAO);
+    }
+
+    @Test
+    public void testHistoryEntryStored() {
+        Project project = createProject();
+        ProjectBurnupData data = new ProjectBurnupData();
+        data.append(1, new ProjectBurnupData.Entry(new DateTime().minusDays(2), 10, 0, 10));
+        BacklogHistoryEntryDAO backlogHistoryEntryDAO = createMock(BacklogHistoryEntryDAO.class);
+        setBacklogHistoryEntryDAO(backlogHistoryEntryDAO);
+        expect(backlogHistoryEntryDAO.retrieveBurnupData(3)).andReturn(data);
+        replay(backlogHistoryEntryDAO);
+
+        byte[] image = getSmallBurnup(project);
+        historyEntryStored(createHistoryEntry(2, project, new DateTime().minusDays(1), 20));
+        assertEquals(2, data.size());
+        assertNotSame(image, getSmallBurnup(project));
+        verify(backlogHistoryEntryDAO);
+    }
+
+    @Test
+    public void testHistoryEntriesRemoved() {
+        Project project = createProject();
+        List<ProjectBurnupData.Entry> entries = new LinkedList<ProjectBurnupData.Entry>();
+        entries.add(new ProjectBurnupData.Entry(new DateTime().minusDays(2), 10, 0, 10));
+        BacklogHistoryEntryDAO backlogHistoryEntryDAO = createMock(BacklogHistoryEntryDAO.class);
+        setBacklogHistoryEntryDAO(backlogHistoryEntryDAO);
+        expect(backlogHistoryEntryDAO.retrieveBurnupData(3)).andReturn(new ProjectBurnupData(entries));
+        expect(backlogHistoryEntryDAO.retrieveBurnupData(3)).andReturn(new ProjectBurnupData());
+        replay(backlogHistoryEntryDAO);
+
+        getSmallBurnup(project);
+        historyEntriesRemoved(3);
+        getSmallBurnup(project);
+        verify(backlogHistoryEntryDAO);
+    }
+
 }
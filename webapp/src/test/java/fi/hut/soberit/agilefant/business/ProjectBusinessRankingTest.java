@@ -4,7 +4,6 @@ import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -346,15 +345,12 @@ public class ProjectBusinessRankingTest {
         }
         
         @Override
-        public Collection<Project> getProjectsWithRankBetween(int lower,
-                int upper) {
-            List<Project> result = new ArrayList<Project>();
+        public void shiftRanksBetween(int lower, int upper, int amount) {
             for (Project project : projects) {
                 if (project.getRank() >= lower && project.getRank() <= upper) {
-                    result.add(project);
+                    project.setRank(project.getRank() + amount);
                 }
             }
-            return result;
         }
     }
 
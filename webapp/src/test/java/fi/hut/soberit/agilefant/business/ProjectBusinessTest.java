@@ -6,8 +6,11 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.easymock.EasyMock;
@@ -27,6 +30,7 @@ import fi.hut.soberit.agilefant.exception.ObjectNotFoundException;
 import fi.hut.soberit.agilefant.model.Assignment;
 import fi.hut.soberit.agilefant.model.BacklogHistoryEntry;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
@@ -114,7 +118,6 @@ public class ProjectBusinessTest  extends MockedTestCase {
     @DirtiesContext
     public void testGetProjectMetrics() {
         ProjectMetrics metrics = new ProjectMetrics();
-        List<Story> leafStories = new ArrayList<Story>();
         project.setStartDate(new DateTime().minusDays(7));
         project.setEndDate(project.getStartDate().plusDays(10));
 
@@ -131,11 +134,11 @@ public class ProjectBusinessTest  extends MockedTestCase {
         metrics.setTotalValue(10);
         
         
-        expect(projectDAO.calculateProjectStoryMetrics(project.getId())).andReturn(metrics);
+        Map<Integer, ProjectMetrics> metricsByProject = new HashMap<Integer, ProjectMetrics>();
+        metricsByProject.put(project.getId(), metrics);
+        expect(projectDAO.calculateProjectStoryMetrics(Collections.singleton(project.getId())))
+            .andReturn(metricsByProject);
         expect(backlogBusiness.daysLeftInSchedulableBacklog(project)).andReturn(Days.days(3));
-        expect(storyRankBusiness.retrieveByRankingContext(project)).andReturn(leafStories);
-        for(Story story : leafStories)
-            expect(storyBusiness.calculateMetrics(story));
         
 
         replayAll();
@@ -151,6 +154,49 @@ public class ProjectBusinessTest  extends MockedTestCase {
         verifyAll();
     }
 
+    @Test
+    @DirtiesContext
+    public void testGetMultipleProjectMetrics() {
+        Project other = new Project();
+        other.setId(project.getId() + 1);
+        project.setStartDate(new DateTime().minusDays(20));
+        project.setEndDate(project.getStartDate().plusDays(10));
+        other.setStartDate(project.getStartDate());
+        other.setEndDate(project.getEndDate());
+        other.setBacklogSize(new ExactEstimate(200));
+
+        ProjectMetrics otherMetrics = new ProjectMetrics();
+        otherMetrics.setEffortSpent(new ExactEstimate(50));
+        Map<Integer, ProjectMetrics> metricsByProject = new HashMap<Integer, ProjectMetrics>();
+        metricsByProject.put(other.getId(), otherMetrics);
+        expect(projectDAO.calculateProjectStoryMetrics(new HashSet<Integer>(
+                Arrays.asList(project.getId(), other.getId()))))
+            .andReturn(metricsByProject);
+        replayAll();
+
+        Map<Integer, ProjectMetrics> actual = projectBusiness
+                .getMultipleProjectMetrics(Arrays.asList(project, other));
+
+        assertEquals(2, actual.size());
+        assertEquals(0, actual.get(project.getId()).getNumberOfStories());
+        assertEquals(10, actual.get(project.getId()).getTotalDays());
+        assertSame(otherMetrics, actual.get(other.getId()));
+        assertEquals(25, otherMetrics.getEffortSpentPercentage());
+        verifyAll();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testGetProjectTotalSpentEffort() {
+        Map<Integer, Long> sums = new HashMap<Integer, Long>();
+        sums.put(project.getId(), 120L);
+        expect(projectDAO.calculateProjectSpentEffortSums(Collections.singleton(project.getId())))
+            .andReturn(sums);
+        replayAll();
+        assertEquals(120L, projectBusiness.getProjectTotalSpentEffort(project));
+        verifyAll();
+    }
+
     @Test(expected = IllegalArgumentException.class)
     @DirtiesContext
     public void testGetProjectMetrics_nullProject() {
@@ -2,10 +2,6 @@ package fi.hut.soberit.agilefant.business;
 
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-
 import org.junit.Before;
 import org.junit.Test;
 
@@ -108,47 +104,6 @@ public class RankingBusinessTest {
     }
     
     
-    /*
-     * SHIFT RANKS
-     */
-    private void assertShiftRanks(int originalFirst, int originalSecond,
-            int expectedFirst, int expectedSecond, RankDirection dir) {
-        rankable1.setRank(originalFirst);
-        rankable2.setRank(originalSecond);
-        
-        rankingBusiness.shiftRanks(dir, Arrays.asList(rankable1, rankable2));
-        
-        assertEquals(expectedFirst, rankable1.getRank().intValue());
-        assertEquals(expectedSecond, rankable2.getRank().intValue());
-    }
-    
-    @Test
-    public void testShiftRanks_toTop() {
-        assertShiftRanks(137, 337, 138, 338, RankDirection.TOP);
-    }
-   
-    
-    @Test
-    public void testShiftRanks_upwards() {
-        assertShiftRanks(127, 381, 128, 382, RankDirection.UP);
-    }
-    
-    @Test
-    public void testShiftRanks_downwards() {
-        assertShiftRanks(521, 985, 520, 984, RankDirection.DOWN);
-    }
-    
-    @Test(expected = IllegalArgumentException.class)
-    public void testShiftRanks_noDirection() {
-        rankingBusiness.shiftRanks(null, new ArrayList<Rankable>());
-    }
-    
-    @Test(expected = IllegalArgumentException.class)
-    public void testShiftRanks_noRankables() {
-        rankingBusiness.shiftRanks(RankDirection.UP, null);
-    }
-    
-    
     /*
      * FIND OUT NEW RANK 
      */
@@ -198,12 +153,10 @@ public class RankingBusinessTest {
         rankable4.setRank(4);
         
         rankingBusiness.rankUnder(rankable1, rankable3, new RankUnderDelegate() {
-            public Collection<? extends Rankable> getWithRankBetween(
-                    Integer first, Integer second) {
-                assertEquals(2, first.intValue());
-                assertEquals(3, second.intValue());
-                
-                return Arrays.asList(new Rankable[] { rankable2, rankable3 }); 
+            public void shiftRanks(int lower, int upper, int amount) {
+                assertEquals(2, lower);
+                assertEquals(3, upper);
+                assertEquals(-1, amount);
             }
         });
         
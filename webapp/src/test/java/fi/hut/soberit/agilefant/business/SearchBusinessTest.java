@@ -1,6 +1,9 @@
 package fi.hut.soberit.agilefant.business;
 
+import static org.easymock.EasyMock.createMock;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
@@ -344,6 +347,59 @@ public class SearchBusinessTest extends MockedTestCase {
         assertSame(res.get(0), actual.get(0).getOriginalObject());
     }
     
+    @Test
+    @DirtiesContext
+    public void testSearchStories_fromIndex() {
+        setAccess();
+        SearchIndexBusiness searchIndexBusiness = createMock(SearchIndexBusiness.class);
+        searchBusiness.setSearchIndexBusiness(searchIndexBusiness);
+
+        Iteration iteration = new Iteration();
+        iteration.setName("Iteration");
+        Story first = new Story();
+        first.setId(2);
+        first.setName("Foo bar");
+        first.setIteration(iteration);
+        Story second = new Story();
+        second.setId(1);
+        second.setName("Foo");
+        second.setIteration(iteration);
+
+        expect(searchIndexBusiness.search(Story.class, "foo", SearchBusiness.MAX_RESULTS_PER_TYPE))
+                .andReturn(Arrays.asList(2, 1));
+        expect(storyDAO.getMultiple(Arrays.asList(2, 1))).andReturn(Arrays.asList(second, first));
+        expect(authorizationBusiness.isBacklogAccessible(0, SecurityUtil.getLoggedUser())).andReturn(true);
+        replayAll();
+        replay(searchIndexBusiness);
+
+        List<SearchResultRow> actual = searchBusiness.searchStories("foo");
+
+        verifyAll();
+        verify(searchIndexBusiness);
+        assertEquals(2, actual.size());
+        assertSame(first, actual.get(0).getOriginalObject());
+        assertSame(second, actual.get(1).getOriginalObject());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testSearchStories_indexNotAvailable() {
+        setAccess();
+        SearchIndexBusiness searchIndexBusiness = createMock(SearchIndexBusiness.class);
+        searchBusiness.setSearchIndexBusiness(searchIndexBusiness);
+
+        expect(searchIndexBusiness.search(Story.class, "foo", SearchBusiness.MAX_RESULTS_PER_TYPE))
+                .andReturn(null);
+        expect(storyDAO.searchByName("foo")).andReturn(new ArrayList<Story>());
+        replayAll();
+        replay(searchIndexBusiness);
+
+        assertTrue(searchBusiness.searchStories("foo").isEmpty());
+
+        verifyAll();
+        verify(searchIndexBusiness);
+    }
+
     private void setAccess(){
         User user = new User();
         team = new Team();
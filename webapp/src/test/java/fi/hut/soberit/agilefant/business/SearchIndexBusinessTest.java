@@ -0,0 +1,133 @@
+package fi.hut.soberit.agilefant.business;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import fi.hut.soberit.agilefant.business.impl.SearchIndexBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
+import fi.hut.soberit.agilefant.db.StoryDAO;
+import fi.hut.soberit.agilefant.db.TaskDAO;
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.Task;
+import fi.hut.soberit.agilefant.util.Triple;
+
+public class SearchIndexBusinessTest {
+
+    private SearchIndexBusinessImpl searchIndexBusiness;
+    private BacklogDAO backlogDAO;
+    private StoryDAO storyDAO;
+    private TaskDAO taskDAO;
+    private PlatformTransactionManager transactionManager;
+
+    @Before
+    public void setUp() {
+        searchIndexBusiness = new SearchIndexBusinessImpl();
+        backlogDAO = createMock(BacklogDAO.class);
+        storyDAO = createMock(StoryDAO.class);
+        taskDAO = createMock(TaskDAO.class);
+        searchIndexBusiness.setBacklogDAO(backlogDAO);
+        searchIndexBusiness.setStoryDAO(storyDAO);
+        searchIndexBusiness.setTaskDAO(taskDAO);
+        transactionManager = createNiceMock(PlatformTransactionManager.class);
+        searchIndexBusiness.setTransactionManager(transactionManager);
+    }
+
+    private void replayAll() {
+        replay(backlogDAO, storyDAO, taskDAO, transactionManager);
+    }
+
+    private void verifyAll() {
+        verify(backlogDAO, storyDAO, taskDAO);
+    }
+
+    private List<Triple<Integer, String, String>> rows(Triple<Integer, String, String>... rows) {
+        return new ArrayList<Triple<Integer, String, String>>(Arrays.asList(rows));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expectBuild() {
+        List<Triple<Integer, String, String>> empty = rows();
+        expect(backlogDAO.retrieveSearchIndexData(Product.class, 0, 5000)).andReturn(empty);
+        expect(backlogDAO.retrieveSearchIndexData(Project.class, 0, 5000)).andReturn(
+                rows(Triple.create(2, "Login service", (String) null)));
+        expect(backlogDAO.retrieveSearchIndexData(Iteration.class, 0, 5000)).andReturn(empty);
+        expect(storyDAO.retrieveSearchIndexData(0, 5000)).andReturn(
+                rows(Triple.create(5, "Login form", "Validation"),
+                        Triple.create(6, "Logout", (String) null)));
+        expect(taskDAO.retrieveSearchIndexData(0, 5000)).andReturn(empty);
+    }
+
+    @Test
+    public void testSearch_notBuilt() {
+        assertNull(searchIndexBusiness.search(Story.class, "login", 10));
+    }
+
+    @Test
+    public void testBuildIndex() {
+        expectBuild();
+        replayAll();
+
+        searchIndexBusiness.buildIndex();
+
+        assertEquals(Arrays.asList(5, 6), searchIndexBusiness.search(Story.class, "log", 10));
+        assertEquals(Arrays.asList(5), searchIndexBusiness.search(Story.class, "valid", 10));
+        assertEquals(Arrays.asList(2), searchIndexBusiness.search(Backlog.class, "login", 10));
+        assertTrue(searchIndexBusiness.search(Iteration.class, "login", 10).isEmpty());
+        assertTrue(searchIndexBusiness.search(Task.class, "login", 10).isEmpty());
+        assertNull(searchIndexBusiness.search(Story.class, " ", 10));
+
+        verifyAll();
+    }
+
+    @Test
+    public void testObjectStoredAndDeleted() {
+        expectBuild();
+        replayAll();
+        searchIndexBusiness.buildIndex();
+
+        Story story = new Story();
+        story.setId(6);
+        story.setName("Logout button");
+        searchIndexBusiness.objectStored(story);
+        Task task = new Task();
+        task.setId(7);
+        task.setName("Fix logout");
+        searchIndexBusiness.objectStored(task);
+
+        assertEquals(Arrays.asList(6), searchIndexBusiness.search(Story.class, "button", 10));
+        assertEquals(Arrays.asList(7), searchIndexBusiness.search(Task.class, "logout", 10));
+
+        searchIndexBusiness.objectDeleted(story);
+        assertEquals(Arrays.asList(5), searchIndexBusiness.search(Story.class, "log", 10));
+
+        verifyAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testBuildIndex_deletedDuringBuild() {
+        Story story = new Story();
+        story.setId(5);
+        searchIndexBusiness.objectDeleted(story);
+
+        expectBuild();
+        replayAll();
+        searchIndexBusiness.buildIndex();
+
+        assertEquals(Arrays.asList(6), searchIndexBusiness.search(Story.class, "log", 10));
+
+        verifyAll();
+    }
+}
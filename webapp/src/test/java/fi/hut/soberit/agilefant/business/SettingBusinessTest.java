@@ -69,6 +69,7 @@ public class SettingBusinessTest {
         Setting created = new Setting();
         created.setValue("15");
         expect(settingDAO.getByName("int")).andReturn(created);
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.storeSetting("int", 15);
         assertEquals("15", testable.retrieveByName("int").getValue());
@@ -82,6 +83,7 @@ public class SettingBusinessTest {
         Setting created = new Setting();
         created.setValue("true");
         expect(settingDAO.getByName("bool")).andReturn(created);
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.storeSetting("bool", true);
         assertEquals("true", testable.retrieveByName("bool").getValue());
@@ -92,6 +94,7 @@ public class SettingBusinessTest {
     public void testStoreSetting() {
         expect(settingDAO.getByName("foo")).andReturn(setting);
         settingDAO.store(setting);
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.storeSetting("foo", "new");
         assertEquals("new", setting.getValue());
@@ -110,6 +113,7 @@ public class SettingBusinessTest {
         
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_HOUR_REPORTING)).andReturn(setting);
         settingDAO.store(eqSetting(parameterSetting));
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.setHourReporting(true);
         verify(settingDAO);
@@ -124,6 +128,7 @@ public class SettingBusinessTest {
         
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_HOUR_REPORTING)).andReturn(null);
         expect(settingDAO.create(eqSetting(parameterSetting))).andReturn(1);
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.setHourReporting(true);
         verify(settingDAO);
@@ -138,6 +143,7 @@ public class SettingBusinessTest {
         
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_HOUR_REPORTING)).andReturn(null);
         expect(settingDAO.create(eqSetting(parameterSetting))).andReturn(1);
+        expectSettingsVersionStored();
         replay(settingDAO);
         testable.setHourReporting(true);
         verify(settingDAO);
@@ -157,6 +163,8 @@ public class SettingBusinessTest {
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_STORY_TREE_FIELD_ORDER)).andReturn(previousSetting);
         settingDAO.store(eqSetting(parameterSetting));
         
+        expectSettingsVersionStored();
+        
         replay(settingDAO);
         testable.setStoryTreeFieldOrder("state,storyPoints,labels,name,backlog");
         verify(settingDAO);
@@ -182,6 +190,8 @@ public class SettingBusinessTest {
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_BRANCH_METRICS)).andReturn(null);
         expect(settingDAO.create(eqSetting(parameterSetting))).andReturn(1);
         
+        expectSettingsVersionStored();
+        
         replay(settingDAO);
         testable.setBranchMetricsType(BranchMetricsType.leaf);
         verify(settingDAO);
@@ -201,6 +211,8 @@ public class SettingBusinessTest {
         expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_BRANCH_METRICS)).andReturn(setting);
         settingDAO.store(eqSetting(parameterSetting));
         
+        expectSettingsVersionStored();
+        
         replay(settingDAO);
         testable.setBranchMetricsType(BranchMetricsType.off);
         verify(settingDAO);
@@ -212,7 +224,7 @@ public class SettingBusinessTest {
         setting.setName(SettingBusinessImpl.SETTING_NAME_BRANCH_METRICS);
         setting.setValue(SettingBusiness.BranchMetricsType.estimate.toString());
         
-        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_BRANCH_METRICS)).andReturn(setting);
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(setting));
         
         replay(settingDAO);
         assertEquals(BranchMetricsType.estimate, testable.getBranchMetricsType());
@@ -221,10 +233,91 @@ public class SettingBusinessTest {
     
     @Test
     public void testGetBranchMetricsType_noSuchSettings() {
-        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_BRANCH_METRICS)).andReturn(null);
+        expect(settingDAO.getAll()).andReturn(new ArrayList<Setting>());
         
         replay(settingDAO);
         assertEquals(SettingBusiness.DEFAULT_BRANCH_METRICS, testable.getBranchMetricsType());
         verify(settingDAO);
     }
+    
+    @Test
+    public void testGetSettings_servedFromMemory() {
+        Setting hourReporting = new Setting();
+        hourReporting.setName(SettingBusinessImpl.SETTING_NAME_HOUR_REPORTING);
+        hourReporting.setValue("true");
+        Setting rangeLow = new Setting();
+        rangeLow.setName(SettingBusinessImpl.SETTING_NAME_RANGE_LOW);
+        rangeLow.setValue("10");
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(hourReporting, rangeLow));
+        replay(settingDAO);
+        
+        testable.loadSettings();
+        assertEquals(true, testable.isHourReportingEnabled());
+        assertEquals(true, testable.isHourReportingEnabled());
+        assertEquals(10, testable.getRangeLow());
+        assertEquals(SettingBusiness.DEFAULT_RANGE_HIGH, testable.getRangeHigh());
+        verify(settingDAO);
+    }
+    
+    @Test
+    public void testStoreSetting_updatesSnapshot() {
+        Setting rangeLow = new Setting();
+        rangeLow.setName(SettingBusinessImpl.SETTING_NAME_RANGE_LOW);
+        rangeLow.setValue("10");
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(rangeLow));
+        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_RANGE_LOW)).andReturn(rangeLow);
+        settingDAO.store(rangeLow);
+        expectSettingsVersionStored();
+        replay(settingDAO);
+        
+        assertEquals(10, testable.getRangeLow());
+        testable.setRangeLow(20);
+        assertEquals(20, testable.getRangeLow());
+        verify(settingDAO);
+    }
+    
+    @Test
+    public void testPollSettingsVersion_changed() {
+        Setting loadedVersion = new Setting();
+        loadedVersion.setName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION);
+        loadedVersion.setValue("1");
+        Setting currentVersion = new Setting();
+        currentVersion.setName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION);
+        currentVersion.setValue("2");
+        Setting hourReporting = new Setting();
+        hourReporting.setName(SettingBusinessImpl.SETTING_NAME_HOUR_REPORTING);
+        hourReporting.setValue("true");
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(loadedVersion));
+        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION)).andReturn(currentVersion);
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(currentVersion, hourReporting));
+        replay(settingDAO);
+        
+        assertEquals(false, testable.isHourReportingEnabled());
+        testable.pollSettingsVersion();
+        assertEquals(true, testable.isHourReportingEnabled());
+        verify(settingDAO);
+    }
+    
+    @Test
+    public void testPollSettingsVersion_unchanged() {
+        Setting version = new Setting();
+        version.setName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION);
+        version.setValue("1");
+        expect(settingDAO.getAll()).andReturn(Arrays.asList(version));
+        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION)).andReturn(version);
+        replay(settingDAO);
+        
+        testable.loadSettings();
+        testable.pollSettingsVersion();
+        assertEquals(false, testable.isDailyWork());
+        verify(settingDAO);
+    }
+    
+    private void expectSettingsVersionStored() {
+        Setting version = new Setting();
+        version.setName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION);
+        version.setValue("1");
+        expect(settingDAO.getByName(SettingBusinessImpl.SETTING_NAME_SETTINGS_VERSION)).andReturn(version);
+        settingDAO.store(version);
+    }
 }
@@ -0,0 +1,144 @@
+package fi.hut.soberit.agilefant.business;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.easymock.Capture;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import fi.hut.soberit.agilefant.business.impl.StoryAccessBusinessImp;
+import fi.hut.soberit.agilefant.db.StoryAccessDAO;
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.StoryAccessCloudTO;
+import fi.hut.soberit.agilefant.util.Triple;
+
+public class StoryAccessBusinessTest {
+
+    private StoryAccessBusinessImp storyAccessBusiness;
+    private StoryAccessDAO storyAccessDAO;
+    private StoryBusiness storyBusiness;
+    private PlatformTransactionManager transactionManager;
+    private AsyncTaskExecutor asyncTaskExecutor;
+
+    @Before
+    public void setUp() {
+        storyAccessBusiness = new StoryAccessBusinessImp();
+        storyAccessDAO = createMock(StoryAccessDAO.class);
+        storyBusiness = createMock(StoryBusiness.class);
+        transactionManager = createNiceMock(PlatformTransactionManager.class);
+        asyncTaskExecutor = createMock(AsyncTaskExecutor.class);
+        storyAccessBusiness.setStoryAccessDAO(storyAccessDAO);
+        storyAccessBusiness.setStoryBusiness(storyBusiness);
+        storyAccessBusiness.setTransactionManager(transactionManager);
+        storyAccessBusiness.setAsyncTaskExecutor(asyncTaskExecutor);
+
+        User user = new User();
+        user.setId(3);
+        SecurityUtil.setLoggedUser(user);
+    }
+
+    @After
+    public void tearDown() {
+        SecurityUtil.clearLoggedUser();
+    }
+
+    private void replayAll() {
+        replay(storyAccessDAO, storyBusiness, transactionManager, asyncTaskExecutor);
+    }
+
+    private void verifyAll() {
+        verify(storyAccessDAO, storyBusiness, asyncTaskExecutor);
+    }
+
+    @Test
+    public void testAddAccessEntry_flushAccessEntries() {
+        Story story = new Story();
+        story.setId(6);
+        Capture<List<Triple<Integer, Integer, DateTime>>> batch = new Capture<List<Triple<Integer, Integer, DateTime>>>();
+        storyAccessDAO.storeAccesses(capture(batch));
+        replayAll();
+
+        storyAccessBusiness.addAccessEntry(5);
+        storyAccessBusiness.addAccessEntry(story);
+        assertEquals(2, storyAccessBusiness.flushAccessEntries());
+        assertEquals(0, storyAccessBusiness.flushAccessEntries());
+        verifyAll();
+
+        assertEquals(2, batch.getValue().size());
+        assertEquals(Integer.valueOf(3), batch.getValue().get(0).first);
+        assertEquals(Integer.valueOf(5), batch.getValue().get(0).second);
+        assertEquals(Integer.valueOf(6), batch.getValue().get(1).second);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testAddAccessEntry_threshold() {
+        asyncTaskExecutor.execute(isA(Runnable.class));
+        // Written in batches of 500 accesses
+        storyAccessDAO.storeAccesses(isA(List.class));
+        expectLastCall().times(2);
+        replayAll();
+
+        for (int i = 0; i < 600; i++) {
+            storyAccessBusiness.addAccessEntry(5);
+        }
+        assertEquals(600, storyAccessBusiness.flushAccessEntries());
+        verifyAll();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testFlushAccessEntries_failure() {
+        storyAccessDAO.storeAccesses(isA(List.class));
+        expectLastCall().andThrow(new RuntimeException());
+        // The failed batch is written on the next flush
+        storyAccessDAO.storeAccesses(isA(List.class));
+        replayAll();
+
+        storyAccessBusiness.addAccessEntry(5);
+        assertEquals(0, storyAccessBusiness.flushAccessEntries());
+        assertEquals(1, storyAccessBusiness.flushAccessEntries());
+        verifyAll();
+    }
+
+    @Test
+    public void testCalculateOccurences() {
+        User user = new User();
+        user.setId(3);
+        Story story1 = new Story();
+        story1.setId(5);
+        Story story2 = new Story();
+        story2.setId(6);
+        Map<Integer, Long> counts = new HashMap<Integer, Long>();
+        counts.put(5, 1L);
+        counts.put(6, 4L);
+        counts.put(7, 2L);
+        DateTime start = new DateTime(2009, 6, 1, 12, 0, 0, 0);
+        DateTime end = new DateTime(2009, 6, 8, 12, 0, 0, 0);
+        expect(storyAccessDAO.calculateAccessCounts(3, start.toLocalDate(), end.toLocalDate()))
+                .andReturn(counts);
+        expect(storyBusiness.retrieveMultiple(counts.keySet())).andReturn(
+                Arrays.asList(story1, story2));
+        replayAll();
+
+        List<StoryAccessCloudTO> result = storyAccessBusiness.calculateOccurences(start, end, user, 20);
+        verifyAll();
+
+        assertEquals(2, result.size());
+        assertSame(story2, result.get(0).getStory());
+        assertEquals(4L, result.get(0).getCount());
+        assertSame(story1, result.get(1).getStory());
+    }
+}
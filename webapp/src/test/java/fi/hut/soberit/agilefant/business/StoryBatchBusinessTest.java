@@ -2,10 +2,12 @@ package fi.hut.soberit.agilefant.business;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.easymock.IArgumentMatcher;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.test.annotation.DirtiesContext;
@@ -13,6 +15,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.impl.StoryBatchBusinessImpl;
+import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.test.Mock;
@@ -34,6 +37,8 @@ public class StoryBatchBusinessTest extends MockedTestCase{
     private LabelBusiness labelBusiness;
     @Mock
     private StoryBusiness storyBusiness;
+    @Mock
+    private IterationHistoryEntryBusiness iterationHistoryEntryBusiness;
     
     @Test
     @DirtiesContext
@@ -50,16 +55,9 @@ public class StoryBatchBusinessTest extends MockedTestCase{
         StoryState state = StoryState.IMPLEMENTED;
         
         expect(storyBusiness.retrieveMultiple(storyIds)).andReturn(Arrays.asList(story1, story2));
-        storyBusiness.updateParentStates(story1);
-        expectLastCall();
-        storyBusiness.updateParentStates(story2);
-        expectLastCall();
-        
-        storyBusiness.store(story1);
-        storyBusiness.store(story2);
+        storyBusiness.updateParentStates(collectionOf(story1, story2));
         
-        labelBusiness.createStoryLabels(labels, 1);
-        labelBusiness.createStoryLabels(labels, 2);
+        labelBusiness.createStoryLabels(eq(labels), collectionOf(story1, story2));
         
         replayAll();
         storyBatchBusiness.modifyMultiple(storyIds, state, labels);
@@ -82,13 +80,7 @@ public class StoryBatchBusinessTest extends MockedTestCase{
         StoryState state = StoryState.IMPLEMENTED;
         
         expect(storyBusiness.retrieveMultiple(storyIds)).andReturn(Arrays.asList(story1, story2));
-        storyBusiness.updateParentStates(story1);
-        expectLastCall();
-        storyBusiness.updateParentStates(story2);
-        expectLastCall();
-
-        storyBusiness.store(story1);
-        storyBusiness.store(story2);
+        storyBusiness.updateParentStates(collectionOf(story1, story2));
         
         replayAll();
         storyBatchBusiness.modifyMultiple(storyIds, state, null);
@@ -119,4 +111,49 @@ public class StoryBatchBusinessTest extends MockedTestCase{
         assertEquals(StoryState.NOT_STARTED, story1.getState());
         assertEquals(StoryState.NOT_STARTED, story2.getState());
     }
+
+    @Test
+    @DirtiesContext
+    public void testModifyMultiple_deferredUpdatesIterationHistoryOnce() {
+        Iteration iteration = new Iteration();
+        iteration.setId(10);
+        Story story1 = new Story();
+        story1.setId(1);
+        story1.setIteration(iteration);
+        Story story2 = new Story();
+        story2.setId(2);
+        story2.setIteration(iteration);
+        Story story3 = new Story();
+        story3.setId(3);
+        story3.setState(StoryState.DEFERRED);
+
+        Set<Integer> storyIds = new HashSet<Integer>(Arrays.asList(1, 2, 3));
+
+        expect(storyBusiness.retrieveMultiple(storyIds)).andReturn(Arrays.asList(story1, story2, story3));
+        storyBusiness.updateParentStates(collectionOf(story1, story2));
+        iterationHistoryEntryBusiness.updateIterationHistory(10);
+
+        replayAll();
+        storyBatchBusiness.modifyMultiple(storyIds, StoryState.DEFERRED, null);
+        verifyAll();
+        assertEquals(StoryState.DEFERRED, story1.getState());
+        assertEquals(StoryState.DEFERRED, story2.getState());
+    }
+
+    /**
+     * Matches a collection with the given stories in any order.
+     */
+    private static Collection<Story> collectionOf(final Story... stories) {
+        reportMatcher(new IArgumentMatcher() {
+            public boolean matches(Object argument) {
+                return argument instanceof Collection
+                        && ((Collection<?>) argument).size() == stories.length
+                        && ((Collection<?>) argument).containsAll(Arrays.asList(stories));
+            }
+            public void appendTo(StringBuffer buffer) {
+                buffer.append("collectionOf(").append(Arrays.asList(stories)).append(")");
+            }
+        });
+        return null;
+    }
 }
@@ -692,6 +692,35 @@ public class StoryBusinessTest {
         assertEquals("Parent story's children not empty", 0, story.getChildren().size());
     }
 
+    @Test
+    public void testUpdateParentStates_multipleStories() {
+        Story root = new Story();
+        root.setId(1);
+        Story parent = new Story();
+        parent.setId(2);
+        parent.setParent(root);
+        Story child1 = new Story();
+        child1.setId(3);
+        child1.setParent(parent);
+        child1.setState(StoryState.IMPLEMENTED);
+        Story child2 = new Story();
+        child2.setId(4);
+        child2.setParent(parent);
+        child2.setState(StoryState.DONE);
+        Story deferred = new Story();
+        deferred.setId(5);
+        deferred.setParent(new Story());
+        deferred.setState(StoryState.DEFERRED);
+
+        replayAll();
+        storyBusiness.updateParentStates(Arrays.asList(child1, child2, deferred));
+        verifyAll();
+
+        assertEquals(StoryState.STARTED, parent.getState());
+        assertEquals(StoryState.STARTED, root.getState());
+        assertEquals(StoryState.NOT_STARTED, deferred.getParent().getState());
+    }
+
     
     
     
@@ -5,7 +5,11 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -17,6 +21,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.impl.StoryHierarchyBusinessImpl;
 import fi.hut.soberit.agilefant.db.StoryHierarchyDAO;
+import fi.hut.soberit.agilefant.db.StoryTreeMetricsDAO;
 import fi.hut.soberit.agilefant.exception.StoryTreeIntegrityViolationException;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
@@ -52,6 +57,9 @@ public class StoryHierarchyBusinessTest extends MockedTestCase {
     @Mock(strict = true)
     private StoryTreeIntegrityBusiness storyTreeIntegrityBusiness;
 
+    @Mock(strict = true)
+    private StoryTreeMetricsDAO storyTreeMetricsDAO;
+
     private List<Story> children;
 
     private Story story;
@@ -124,6 +132,76 @@ public class StoryHierarchyBusinessTest extends MockedTestCase {
         verifyAll();
     }
 
+    private Story createTreeStory(int id, int treeRank, Story parent) {
+        Story story = new Story();
+        story.setId(id);
+        story.setTreeRank(treeRank);
+        story.setParent(parent);
+        return story;
+    }
+
+    private List<Story> createProductStories() {
+        Story root1 = createTreeStory(1, 1, null);
+        Story root2 = createTreeStory(2, 0, null);
+        Story child1 = createTreeStory(11, 5, root1);
+        Story child2 = createTreeStory(12, 2, root1);
+        Story grandChild = createTreeStory(121, 0, child2);
+        return Arrays.asList(grandChild, child1, root1, child2, root2);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRetrieveProductStoryTree() {
+        expect(storyHierarchyDAO.retrieveProductStories(100))
+                .andReturn(createProductStories());
+        replayAll();
+        List<Story> actual = storyHierarchyBusiness.retrieveProductStoryTree(
+                100, null, 0, null);
+        verifyAll();
+
+        assertEquals(2, actual.size());
+        assertEquals(2, actual.get(0).getId());
+        assertTrue(actual.get(0).getChildren().isEmpty());
+
+        Story root1 = actual.get(1);
+        assertEquals(1, root1.getId());
+        assertTrue(root1 instanceof StoryTO);
+        assertEquals(2, root1.getChildren().size());
+        assertEquals(12, root1.getChildren().get(0).getId());
+        assertEquals(11, root1.getChildren().get(1).getId());
+        assertEquals(121, root1.getChildren().get(0).getChildren().get(0).getId());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRetrieveProductStoryTree_subtreeLevels() {
+        expect(storyHierarchyDAO.retrieveProductStories(100))
+                .andReturn(createProductStories());
+        replayAll();
+        List<Story> actual = storyHierarchyBusiness.retrieveProductStoryTree(
+                100, 1, 1, null);
+        verifyAll();
+
+        assertEquals(1, actual.size());
+        assertEquals(1, actual.get(0).getId());
+        assertTrue(actual.get(0).getChildren().isEmpty());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRetrieveProductStoryTree_withStoryFilters() {
+        StoryFilters storyFilters = new StoryFilters(null, null);
+        List<Story> filtered = new ArrayList<Story>();
+        expect(storyHierarchyDAO.retrieveProductStories(100))
+                .andReturn(createProductStories());
+        expect(storyFilterBusiness.filterStories(isA(List.class), same(storyFilters)))
+                .andReturn(filtered);
+        replayAll();
+        assertSame(filtered, storyHierarchyBusiness.retrieveProductStoryTree(
+                100, null, 2, storyFilters));
+        verifyAll();
+    }
+
     @Test
     @DirtiesContext
     public void testRetrieveProjectRootStories_withStoryFilters() {
@@ -774,4 +852,59 @@ public class StoryHierarchyBusinessTest extends MockedTestCase {
        
     }
     
+    @Test
+    @DirtiesContext
+    public void testRetrieveStoryTreeMetrics() {
+        Story root = new Story();
+        root.setId(1000);
+        StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
+        expect(storyTreeMetricsDAO.getBranchMetrics(Arrays.asList(1000)))
+                .andReturn(Collections.singletonMap(1000, metrics));
+
+        replayAll();
+        assertSame(metrics, storyHierarchyBusiness.retrieveStoryTreeMetrics(root));
+        verifyAll();
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRetrieveStoryTreeMetrics_notStored() {
+        Story root = new Story();
+        root.setId(1000);
+        root.setStoryPoints(5);
+        expect(storyTreeMetricsDAO.getBranchMetrics(Arrays.asList(1000)))
+                .andReturn(Collections.<Integer, StoryTreeBranchMetrics>emptyMap());
+
+        replayAll();
+        StoryTreeBranchMetrics metrics = storyHierarchyBusiness.retrieveStoryTreeMetrics(root);
+        verifyAll();
+        assertEquals(5, metrics.estimatedPoints);
+    }
+
+    @Test
+    @DirtiesContext
+    public void testLoadStoryTreeMetrics() {
+        Story root = new Story();
+        root.setId(1000);
+        root.setStoryPoints(5);
+        Story child = new Story();
+        child.setId(1);
+        child.setStoryPoints(8);
+        root.setChildren(Arrays.asList(child));
+
+        StoryTreeBranchMetrics rootMetrics = new StoryTreeBranchMetrics();
+        rootMetrics.estimatedPoints = 8;
+        rootMetrics.estimatedDonePoints = 3;
+        Map<Integer, StoryTreeBranchMetrics> metrics = new HashMap<Integer, StoryTreeBranchMetrics>();
+        metrics.put(1000, rootMetrics);
+        metrics.put(1, new StoryTreeBranchMetrics());
+        expect(storyTreeMetricsDAO.getBranchMetrics(new HashSet<Integer>(Arrays.asList(1000, 1))))
+                .andReturn(metrics);
+
+        replayAll();
+        storyHierarchyBusiness.loadStoryTreeMetrics(Arrays.asList(root));
+        verifyAll();
+        // The stored metrics are used instead of the loaded tree
+        assertTrue(root.getHighestPoints().contains("3 / 8"));
+    }
 }
@@ -3,7 +3,6 @@ package fi.hut.soberit.agilefant.business;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
 import org.easymock.Capture;
@@ -52,9 +51,13 @@ public class StoryRankBusinessTest {
         storyRanks.add(new StoryRank());
         storyRanks.add(new StoryRank());
 
+        storyRanks.get(0).setId(1);
+        storyRanks.get(1).setId(2);
+        storyRanks.get(2).setId(3);
+
         storyRanks.get(0).setRank(0);
-        storyRanks.get(1).setRank(1);
-        storyRanks.get(2).setRank(2);
+        storyRanks.get(1).setRank(1024);
+        storyRanks.get(2).setRank(2048);
 
         context = new Project();
 
@@ -65,6 +68,7 @@ public class StoryRankBusinessTest {
         story = new Story();
 
         rankable = new StoryRank();
+        rankable.setId(4);
         rankable.setBacklog(context);
     }
 
@@ -115,38 +119,81 @@ public class StoryRankBusinessTest {
     @Test
     public void testRankAbove() {
         Story ref = new Story();
+        rankable.setRank(4096);
 
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(rankable);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
                 storyRanks.get(1));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
+        expect(storyRankDAO.retrievePreviousRank(storyRanks.get(1), rankable))
+                .andReturn(storyRanks.get(0));
         replayAll();
         storyRankBusiness.rankAbove(story, context, ref);
         verifyAll();
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, rankable.getRank());
-        assertSame(2, storyRanks.get(1).getRank());
-        assertSame(3, storyRanks.get(2).getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(512, rankable.getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
     }
 
     @Test
     public void testRankAbove_toTop() {
         Story ref = new Story();
+        rankable.setRank(4096);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(rankable);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
                 storyRanks.get(0));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
+        expect(storyRankDAO.retrievePreviousRank(storyRanks.get(0), rankable))
+                .andReturn(null);
         replayAll();
         storyRankBusiness.rankAbove(story, context, ref);
         verifyAll();
-        assertSame(0, rankable.getRank());
-        assertSame(1, storyRanks.get(0).getRank());
-        assertSame(2, storyRanks.get(1).getRank());
-        assertSame(3, storyRanks.get(2).getRank());
+        assertEquals(-1024, rankable.getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
+    }
+
+    @Test
+    public void testRankAbove_alreadyInPlace() {
+        Story ref = new Story();
+        rankable.setRank(100);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
+                .andReturn(rankable);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
+                storyRanks.get(1));
+        expect(storyRankDAO.retrievePreviousRank(storyRanks.get(1), rankable))
+                .andReturn(storyRanks.get(0));
+        replayAll();
+        storyRankBusiness.rankAbove(story, context, ref);
+        verifyAll();
+        assertEquals(100, rankable.getRank());
+    }
+
+    @Test
+    public void testRankAbove_gapExhausted() {
+        Story ref = new Story();
+        rankable.setRank(4096);
+        storyRanks.get(1).setRank(1);
+        storyRanks.get(2).setRank(2);
+        List<StoryRank> allRanks = new ArrayList<StoryRank>(storyRanks);
+        allRanks.add(rankable);
+
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
+                .andReturn(rankable);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
+                storyRanks.get(1));
+        expect(storyRankDAO.retrievePreviousRank(storyRanks.get(1), rankable))
+                .andReturn(storyRanks.get(0));
+        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(allRanks);
+        replayAll();
+        storyRankBusiness.rankAbove(story, context, ref);
+        verifyAll();
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, rankable.getRank());
+        assertEquals(2048, storyRanks.get(1).getRank());
+        assertEquals(3072, storyRanks.get(2).getRank());
     }
 
     @Test
@@ -173,40 +220,42 @@ public class StoryRankBusinessTest {
     @Test
     public void testRankBelow() {
         Story ref = new Story();
+        rankable.setRank(-1024);
 
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(rankable);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
                 storyRanks.get(1));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
+        expect(storyRankDAO.retrieveNextRank(storyRanks.get(1), rankable))
+                .andReturn(storyRanks.get(2));
         replayAll();
         storyRankBusiness.rankBelow(story, context, ref);
         verifyAll();
 
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, storyRanks.get(1).getRank());
-        assertSame(2, rankable.getRank());
-        assertSame(3, storyRanks.get(2).getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(1536, rankable.getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
     }
 
     @Test
     public void testRankBelow_topBottom() {
         Story ref = new Story();
+        rankable.setRank(-1024);
 
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(rankable);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, ref)).andReturn(
                 storyRanks.get(2));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
+        expect(storyRankDAO.retrieveNextRank(storyRanks.get(2), rankable))
+                .andReturn(null);
         replayAll();
         storyRankBusiness.rankBelow(story, context, ref);
         verifyAll();
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, storyRanks.get(1).getRank());
-        assertSame(2, storyRanks.get(2).getRank());
-        assertSame(3, rankable.getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
+        assertEquals(3072, rankable.getRank());
     }
 
     @Test
@@ -233,72 +282,76 @@ public class StoryRankBusinessTest {
     public void testRemoveRank() {
         expect(this.storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(this.storyRanks.get(1));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
         this.storyRankDAO.remove(this.storyRanks.get(1));
         replayAll();
         this.storyRankBusiness.removeRank(story, context);
         verifyAll();
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, storyRanks.get(2).getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
     }
 
     @Test
     public void testRemoveRank_top() {
         expect(this.storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(this.storyRanks.get(0));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
         this.storyRankDAO.remove(this.storyRanks.get(0));
         replayAll();
         this.storyRankBusiness.removeRank(story, context);
         verifyAll();
-        assertSame(0, storyRanks.get(1).getRank());
-        assertSame(1, storyRanks.get(2).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
     }
 
     @Test
     public void testRemoveRank_bottom() {
         expect(this.storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(this.storyRanks.get(2));
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
         this.storyRankDAO.remove(this.storyRanks.get(2));
         replayAll();
         this.storyRankBusiness.removeRank(story, context);
         verifyAll();
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, storyRanks.get(1).getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
     }
 
     @Test
     public void testRankToBottom() {
+        rankable.setRank(-1024);
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(rankable);
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                storyRanks);
+        expect(storyRankDAO.retrieveLastRank(context, rankable)).andReturn(
+                storyRanks.get(2));
+        replayAll();
+        storyRankBusiness.rankToBottom(story, context);
+        verifyAll();
+        assertEquals(0, storyRanks.get(0).getRank());
+        assertEquals(1024, storyRanks.get(1).getRank());
+        assertEquals(2048, storyRanks.get(2).getRank());
+        assertEquals(3072, rankable.getRank());
+    }
+
+    @Test
+    public void testRankToBottom_alreadyAtBottom() {
+        rankable.setRank(5000);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
+                .andReturn(rankable);
+        expect(storyRankDAO.retrieveLastRank(context, rankable)).andReturn(
+                storyRanks.get(2));
         replayAll();
         storyRankBusiness.rankToBottom(story, context);
         verifyAll();
-        assertSame(0, storyRanks.get(0).getRank());
-        assertSame(1, storyRanks.get(1).getRank());
-        assertSame(2, storyRanks.get(2).getRank());
-        assertSame(3, rankable.getRank());
+        assertEquals(5000, rankable.getRank());
     }
 
-    @SuppressWarnings("unchecked")
     @Test
     public void testRankToBottom_emptyContext() {
         Serializable id = new Integer(1);
         Capture<StoryRank> capt = new Capture<StoryRank>();
         expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
                 .andReturn(null);
-        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(
-                Collections.EMPTY_LIST);
         expect(storyRankDAO.create(EasyMock.capture(capt))).andReturn(id);
         expect(storyRankDAO.get(1)).andReturn(rankable);
+        expect(storyRankDAO.retrieveLastRank(context, rankable)).andReturn(null);
         
         replayAll();
         storyRankBusiness.rankToBottom(story, context);
@@ -308,4 +361,38 @@ public class StoryRankBusinessTest {
         assertSame(story, rank.getStory());
         assertSame(0, rankable.getRank());
     }
+
+    @Test
+    public void testRankToHead() {
+        rankable.setRank(4096);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
+                .andReturn(rankable);
+        expect(storyRankDAO.retrieveFirstRank(context, rankable)).andReturn(
+                storyRanks.get(0));
+        replayAll();
+        storyRankBusiness.rankToHead(story, context);
+        verifyAll();
+        assertEquals(-1024, rankable.getRank());
+        assertEquals(0, storyRanks.get(0).getRank());
+    }
+
+    @Test
+    public void testRankToHead_rankOverflow() {
+        rankable.setRank(4096);
+        storyRanks.get(0).setRank(Integer.MIN_VALUE);
+        List<StoryRank> allRanks = new ArrayList<StoryRank>(storyRanks);
+        allRanks.add(rankable);
+        expect(storyRankDAO.retrieveByBacklogAndStory(context, story))
+                .andReturn(rankable);
+        expect(storyRankDAO.retrieveFirstRank(context, rankable)).andReturn(
+                storyRanks.get(0));
+        expect(storyRankDAO.retrieveRanksByBacklog(context)).andReturn(allRanks);
+        replayAll();
+        storyRankBusiness.rankToHead(story, context);
+        verifyAll();
+        assertEquals(0, rankable.getRank());
+        assertEquals(1024, storyRanks.get(0).getRank());
+        assertEquals(2048, storyRanks.get(1).getRank());
+        assertEquals(3072, storyRanks.get(2).getRank());
+    }
 }
@@ -1,5 +1,6 @@
 package fi.hut.soberit.agilefant.business;
 
+import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
@@ -13,6 +14,7 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.impl.StoryTreeIntegrityBusinessImpl;
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.test.Mock;
 import fi.hut.soberit.agilefant.test.MockContextLoader;
@@ -31,18 +33,20 @@ public class StoryTreeIntegrityBusinessBuildChangeTreeTest extends MockedTestCas
     @Mock
     private BacklogBusiness backlogBusiness;
     
+    @Mock
+    private StoryAncestorDAO storyAncestorDAO;
+    
     @Test
     @DirtiesContext
     public void testGenerateChangedStoryTree_secondLevelChildren() {
-        Story root = new Story();
-        Story child1 = new Story();
-        Story child2 = new Story();
-        Story child11 = new Story();
-        Story child12 = new Story();
-        
-        root.setChildren(Arrays.asList(child1, child2));
+        Story root = createStory(1, null);
+        Story child1 = createStory(11, root);
+        Story child2 = createStory(12, root);
+        Story child11 = createStory(111, child1);
+        Story child12 = createStory(112, child1);
         
-        child1.setChildren(Arrays.asList(child11, child12));
+        expect(storyAncestorDAO.retrieveDescendants(root)).andReturn(
+                Arrays.asList(child12, child2, child11, child1));
         
         List<StoryTreeIntegrityMessage> messages = new ArrayList<StoryTreeIntegrityMessage>();
         messages.add(new StoryTreeIntegrityMessage(root, child11, null));
@@ -83,6 +87,9 @@ public class StoryTreeIntegrityBusinessBuildChangeTreeTest extends MockedTestCas
         List<StoryTreeIntegrityMessage> messages = new ArrayList<StoryTreeIntegrityMessage>();
         messages.add(new StoryTreeIntegrityMessage(level2, null, null));
         
+        expect(storyAncestorDAO.retrieveDescendants(level3)).andReturn(
+                new ArrayList<Story>());
+        
         
         replayAll();
         MoveStoryNode storyNode = this.testable.generateChangedStoryTree(level3, messages);
@@ -95,6 +102,13 @@ public class StoryTreeIntegrityBusinessBuildChangeTreeTest extends MockedTestCas
         assertEquals(0, storyNode.getChildren().get(0).getChildren().size());
         
     }
+    private Story createStory(int id, Story parent) {
+        Story story = new Story();
+        story.setId(id);
+        story.setParent(parent);
+        return story;
+    }
+
     private MoveStoryNode findStoryNode(Story story, List<MoveStoryNode> nodes) {
         for(MoveStoryNode node: nodes) {
             if(node.getStory() == story) {
@@ -3,11 +3,7 @@ package fi.hut.soberit.agilefant.business;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.LinkedList;
-
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +31,7 @@ import fi.hut.soberit.agilefant.test.MockContextLoader;
 import fi.hut.soberit.agilefant.test.MockedTestCase;
 import fi.hut.soberit.agilefant.test.TestedBean;
 import fi.hut.soberit.agilefant.util.HourEntryHandlingChoice;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(loader = MockContextLoader.class)
@@ -111,6 +108,17 @@ public class TaskBusinessTest extends MockedTestCase {
         rankingBusiness.rankToBottom(rankable, lastTask);
     }
 
+    /**
+     * Helper method for expecting the task's share of the iteration history
+     * to be calculated.
+     */
+    private void expectHistoryContribution(Task task, Integer iterationId,
+            long effortLeft, long originalEstimate) {
+        expect(iterationHistoryEntryBusiness.calculateTaskHistoryContribution(task.getId()))
+                .andReturn(Triple.create(iterationId, new ExactEstimate(effortLeft),
+                        new ExactEstimate(originalEstimate)));
+    }
+
     @Test
     @DirtiesContext
     public void testStoreTask_newTaskToIteration() {
@@ -122,8 +130,9 @@ public class TaskBusinessTest extends MockedTestCase {
         expect(taskDAO.create(task)).andReturn(1351);
         expect(taskDAO.get(1351)).andReturn(task);
         expect(taskDAO.getLastTaskInRank(null, iteration)).andReturn(lastTask);
-        expect(taskDAO.getTasksWithRankBetween(0, 22, iteration, null)).andReturn(new LinkedList<Task>());
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
+        taskDAO.shiftRanksBetween(0, 22, 1, iteration, null);
+        expectHistoryContribution(task, iteration.getId(), 0, 0);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), 0, 0);
 
         replayAll();
 
@@ -150,8 +159,9 @@ public class TaskBusinessTest extends MockedTestCase {
         expect(taskDAO.create(task)).andReturn(1351);
         expect(taskDAO.get(1351)).andReturn(task);
         expect(taskDAO.getLastTaskInRank(story, null)).andReturn(lastTask);
-        expect(taskDAO.getTasksWithRankBetween(0, 222, null, story)).andReturn(new LinkedList<Task>());
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
+        taskDAO.shiftRanksBetween(0, 222, 1, null, story);
+        expectHistoryContribution(task, iteration.getId(), 0, 0);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), 0, 0);
 
         replayAll();
 
@@ -171,8 +181,10 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setIteration(iteration);
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, iteration.getId(), 10, 20);
         taskDAO.store(task);
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
+        expectHistoryContribution(task, iteration.getId(), 5, 20);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), -5, 0);
 
         replayAll();
 
@@ -190,13 +202,16 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setIteration(new Iteration());
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, 7, 10, 20);
         expect(iterationBusiness.retrieve(iteration.getId())).andReturn(
                 iteration);
         taskDAO.store(task);
 
         expectRankToBottom(task, null, iteration);
 
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
+        expectHistoryContribution(task, iteration.getId(), 10, 20);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(7, -10, -20);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), 10, 20);
 
         replayAll();
 
@@ -214,12 +229,14 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setId(54326);
         task.setState(TaskState.DONE);
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, iteration.getId(), 30, 40);
         expect(iterationBusiness.retrieve(iteration.getId())).andReturn(
                 iteration);
         taskDAO.store(task);
         expectRankToBottom(task, null, iteration);
+        expectHistoryContribution(task, iteration.getId(), 0, 40);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), -30, 0);
         dailyWorkBusiness.removeTaskFromWorkQueues(task);
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
 
         replayAll();
 
@@ -236,9 +253,11 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setOriginalEstimate(new ExactEstimate(120));
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, null, 0, 0);
         expect(storyBusiness.retrieve(story.getId())).andReturn(story);
         taskDAO.store(task);
         expectRankToBottom(task, story, null);
+        expectHistoryContribution(task, null, 0, 0);
 
         replayAll();
 
@@ -261,9 +280,11 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setOriginalEstimate(null);
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, null, 0, 0);
         expect(storyBusiness.retrieve(story.getId())).andReturn(story);
         taskDAO.store(task);
         expectRankToBottom(task, story, null);
+        expectHistoryContribution(task, null, 0, 0);
 
         replayAll();
 
@@ -285,8 +306,10 @@ public class TaskBusinessTest extends MockedTestCase {
         task.setIteration(iteration);
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task);
+        expectHistoryContribution(task, iteration.getId(), 10, 20);
         taskDAO.store(task);
-        iterationHistoryEntryBusiness.updateIterationHistory(iteration.getId());
+        expectHistoryContribution(task, iteration.getId(), 10, 20);
+        iterationHistoryEntryBusiness.applyIterationHistoryDelta(iteration.getId(), 0, 0);
 
         replayAll();
 
@@ -330,9 +353,11 @@ public class TaskBusinessTest extends MockedTestCase {
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task2);
 
+        expectHistoryContribution(task, null, 0, 0);
         expect(storyBusiness.retrieve(story.getId())).andReturn(story);
         taskDAO.store(task);
         expectRankToBottom(task, story, null);
+        expectHistoryContribution(task, null, 0, 0);
 
         replayAll();
 
@@ -354,9 +379,11 @@ public class TaskBusinessTest extends MockedTestCase {
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task2);
 
+        expectHistoryContribution(task, null, 0, 0);
         expect(storyBusiness.retrieve(story.getId())).andReturn(story);
         taskDAO.store(task);
         expectRankToBottom(task, story, null);
+        expectHistoryContribution(task, null, 0, 0);
 
         replayAll();
 
@@ -377,9 +404,11 @@ public class TaskBusinessTest extends MockedTestCase {
         task2.setState(TaskState.STARTED);
 
         expect(taskDAO.getAndDetach(task.getId())).andReturn(task2);
+        expectHistoryContribution(task, null, 0, 0);
         expect(storyBusiness.retrieve(story.getId())).andReturn(story);
         taskDAO.store(task);
         expectRankToBottom(task, story, null);
+        expectHistoryContribution(task, null, 0, 0);
 
         replayAll();
 
@@ -818,6 +847,23 @@ public class TaskBusinessTest extends MockedTestCase {
         fourthTaskInRank.setStory(rankParentStory);
     }
 
+    /**
+     * Expect a bulk rank shift and apply it to the given tasks like the
+     * database would.
+     */
+    private void expectShiftRanks(int lower, int upper, final int amount,
+            Iteration iteration, Story story, final Task... shiftedTasks) {
+        taskDAO.shiftRanksBetween(lower, upper, amount, iteration, story);
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                for (Task shifted : shiftedTasks) {
+                    shifted.setRank(shifted.getRank() + amount);
+                }
+                return null;
+            }
+        });
+    }
+
     private void checkRanks(int first, int second, int third, int fourth) {
         assertEquals("First rank does not match", first, firstTaskInRank
                 .getRank().intValue());
@@ -832,11 +878,8 @@ public class TaskBusinessTest extends MockedTestCase {
     @Test
     @DirtiesContext
     public void testRankUnderTask_twoUpwards() {
-        Collection<Task> returnedTasksWithRankBetween = Arrays.asList(
-                secondTaskInRank, thirdTaskInRank);
-
-        expect(taskDAO.getTasksWithRankBetween(1, 5, null, rankParentStory))
-                .andReturn(returnedTasksWithRankBetween);
+        expectShiftRanks(1, 5, 1, null, rankParentStory, secondTaskInRank,
+                thirdTaskInRank);
 
         replayAll();
         Task actual = taskBusiness.rankUnderTask(fourthTaskInRank,
@@ -850,8 +893,8 @@ public class TaskBusinessTest extends MockedTestCase {
     @Test
     @DirtiesContext
     public void testRankUnderTask_twoDownwards() {
-        expect(taskDAO.getTasksWithRankBetween(1, 5, null, rankParentStory))
-                .andReturn(Arrays.asList(secondTaskInRank, thirdTaskInRank));
+        expectShiftRanks(1, 5, -1, null, rankParentStory, secondTaskInRank,
+                thirdTaskInRank);
         replayAll();
         taskBusiness.rankUnderTask(firstTaskInRank, thirdTaskInRank);
         verifyAll();
@@ -861,10 +904,8 @@ public class TaskBusinessTest extends MockedTestCase {
     @Test
     @DirtiesContext
     public void testRankUnderTask_toTop() {
-        expect(taskDAO.getTasksWithRankBetween(0, 4, null, rankParentStory))
-                .andReturn(
-                        Arrays.asList(firstTaskInRank, secondTaskInRank,
-                                thirdTaskInRank));
+        expectShiftRanks(0, 4, 1, null, rankParentStory, firstTaskInRank,
+                secondTaskInRank);
         replayAll();
         taskBusiness.rankUnderTask(thirdTaskInRank, null);
         verifyAll();
@@ -874,10 +915,8 @@ public class TaskBusinessTest extends MockedTestCase {
     @Test
     @DirtiesContext
     public void testRankUnderTask_toBottom() {
-        expect(taskDAO.getTasksWithRankBetween(1, 6, null, rankParentStory))
-                .andReturn(
-                        Arrays.asList(secondTaskInRank, thirdTaskInRank,
-                                fourthTaskInRank));
+        expectShiftRanks(1, 6, -1, null, rankParentStory, secondTaskInRank,
+                thirdTaskInRank, fourthTaskInRank);
         replayAll();
         taskBusiness.rankUnderTask(firstTaskInRank, fourthTaskInRank);
         verifyAll();
@@ -902,8 +941,7 @@ public class TaskBusinessTest extends MockedTestCase {
         first.setIteration(iter);
         second.setIteration(iter);
 
-        expect(taskDAO.getTasksWithRankBetween(1, 0, iter, null)).andReturn(
-                new ArrayList<Task>());
+        taskDAO.shiftRanksBetween(1, 0, -1, iter, null);
         replayAll();
         taskBusiness.rankUnderTask(first, second);
         verifyAll();
@@ -992,11 +1030,8 @@ public class TaskBusinessTest extends MockedTestCase {
         expect(storyBusiness.retrieve(123)).andReturn(expectedParent).times(2);
         expect(taskDAO.getLastTaskInRank(expectedParent, null)).andReturn(
                 fourthTaskInRank);
-        expect(
-                taskDAO.getTasksWithRankBetween(0, fourthTaskInRank.getRank(),
-                        null, expectedParent)).andReturn(
-                Arrays.asList(firstTaskInRank, secondTaskInRank,
-                        thirdTaskInRank, fourthTaskInRank));
+        taskDAO.shiftRanksBetween(0, fourthTaskInRank.getRank(), 1, null,
+                expectedParent);
         replayAll();
         Task actual = taskBusiness.rankAndMove(rankedTask, null, 123, null);
         verifyAll();
@@ -1019,8 +1054,7 @@ public class TaskBusinessTest extends MockedTestCase {
                 .times(2);
         expect(taskDAO.getLastTaskInRank(null, expectedParent)).andReturn(
                 lastTask);
-        expect(taskDAO.getTasksWithRankBetween(5, 12, expectedParent, null))
-                .andReturn(Arrays.asList(lastTask));
+        taskDAO.shiftRanksBetween(5, 12, 1, expectedParent, null);
         replayAll();
         Task actual = taskBusiness
                 .rankAndMove(new Task(), upperTask, null, 222);
@@ -3,7 +3,6 @@ package fi.hut.soberit.agilefant.business;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
@@ -15,7 +14,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import fi.hut.soberit.agilefant.business.impl.TimesheetBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
@@ -25,14 +26,18 @@ import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
+import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.transfer.BacklogTimesheetNode;
 import fi.hut.soberit.agilefant.transfer.StoryTimesheetNode;
 import fi.hut.soberit.agilefant.transfer.TaskTimesheetNode;
 import fi.hut.soberit.agilefant.util.TimesheetData;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 
 public class TimesheetBusinessTest extends TimesheetBusinessImpl {
     
     private HourEntryDAO hourEntryDAO;
+    private BacklogDAO backlogDAO;
+    private UserDAO userDAO;
     
     private Set<Integer> backlogIds;
     private Set<Integer> userIds;
@@ -43,6 +48,8 @@ public class TimesheetBusinessTest extends TimesheetBusinessImpl {
     private TaskHourEntry taskHE;
     private TaskHourEntry iterTaskHE;
     private TimesheetData sheetData;
+    private Project project;
+    private Iteration iteration;
     
     private class TimesheetTestNode extends BacklogTimesheetNode {
 
@@ -59,6 +66,10 @@ public class TimesheetBusinessTest extends TimesheetBusinessImpl {
     public void setUp() {
         this.hourEntryDAO = createMock(HourEntryDAO.class);
         super.setHourEntryDAO(this.hourEntryDAO);
+        this.backlogDAO = createMock(BacklogDAO.class);
+        super.setBacklogDAO(this.backlogDAO);
+        this.userDAO = createMock(UserDAO.class);
+        super.setUserDAO(this.userDAO);
         
         backlogIds = new HashSet<Integer>(Arrays.asList(1,2,3));
         userIds = new HashSet<Integer>(Arrays.asList(1,2));
@@ -99,6 +110,9 @@ public class TimesheetBusinessTest extends TimesheetBusinessImpl {
         sheetData.addEntry(taskHE);
         sheetData.addNode(new BacklogTimesheetNode(iter));
         sheetData.addNode(new BacklogTimesheetNode(prod));
+        
+        this.project = proj;
+        this.iteration = iter;
     }
     
     @Test
@@ -160,41 +174,63 @@ public class TimesheetBusinessTest extends TimesheetBusinessImpl {
     
     @Test
     public void testGetUnlinkedTimesheetData_emptyDataset() {
-        List<BacklogHourEntry> emptyBacklogHEList = new ArrayList<BacklogHourEntry>();
-        List<StoryHourEntry> emptyStoryHEList = new ArrayList<StoryHourEntry>();
-        List<TaskHourEntry> emptyTaskHEList = new ArrayList<TaskHourEntry>();
+        List<TimesheetEntryRow> emptyRows = Collections.emptyList();
+        Set<Integer> subtreeIds = new HashSet<Integer>(Arrays.asList(1, 2, 3, 4));
         
-        expect(this.hourEntryDAO.getBacklogHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyBacklogHEList);
-        expect(this.hourEntryDAO.getStoryHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyStoryHEList);
-        expect(this.hourEntryDAO.getTaskHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyTaskHEList);
+        expect(this.backlogDAO.retrieveSubtreeIds(backlogIds)).andReturn(subtreeIds);
+        expect(this.hourEntryDAO.retrieveTimesheetEntries(subtreeIds, startDate, endDate, userIds)).andReturn(emptyRows);
         
-        replay(this.hourEntryDAO);
+        replay(this.hourEntryDAO, this.backlogDAO, this.userDAO);
         
         TimesheetData actualData = super.getUnlinkedTimesheetData(backlogIds, startDate, endDate, userIds);
         assertNotNull(actualData);
-        verify(this.hourEntryDAO);
+        assertTrue(actualData.getBacklogNodes().isEmpty());
+        verify(this.hourEntryDAO, this.backlogDAO, this.userDAO);
     }
+    
+    @Test
+    public void testGetUnlinkedTimesheetData_noBacklogs() {
+        replay(this.hourEntryDAO, this.backlogDAO, this.userDAO);
+        
+        TimesheetData actualData = super.getUnlinkedTimesheetData(new HashSet<Integer>(), startDate, endDate, userIds);
+        assertNotNull(actualData);
+        verify(this.hourEntryDAO, this.backlogDAO, this.userDAO);
+    }
+    
     @Test
     public void testGetUnlinkedTimesheetData_withData() {
-        List<BacklogHourEntry> emptyBacklogHEList = Arrays.asList(this.backlogHE);
-        List<StoryHourEntry> emptyStoryHEList = Arrays.asList(this.storyHE);
-        List<TaskHourEntry> emptyTaskHEList = Arrays.asList(this.taskHE);
+        User user = new User();
+        user.setId(1);
+        Set<Integer> subtreeIds = new HashSet<Integer>(Arrays.asList(1, 2, 3));
+        List<TimesheetEntryRow> rows = Arrays.asList(
+                new TimesheetEntryRow(1, startDate, "backlog", 10, 1, 2, null, null, null, null, null, null, null),
+                new TimesheetEntryRow(2, startDate, "story", 20, 1, null, 1, "Story 1", 3, null, null, null, null),
+                new TimesheetEntryRow(3, startDate, "task", 30, 1, null, 1, "Story 1", 3, null, 1, "Task 1", null),
+                new TimesheetEntryRow(4, startDate, "task", 40, 1, null, 1, "Story 1", 3, null, 1, "Task 1", null));
         
-        expect(this.hourEntryDAO.getBacklogHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyBacklogHEList);
-        expect(this.hourEntryDAO.getStoryHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyStoryHEList);
-        expect(this.hourEntryDAO.getTaskHourEntriesByFilter(backlogIds, startDate, endDate, userIds)).andReturn(emptyTaskHEList);
+        expect(this.backlogDAO.retrieveSubtreeIds(backlogIds)).andReturn(subtreeIds);
+        expect(this.hourEntryDAO.retrieveTimesheetEntries(subtreeIds, startDate, endDate, userIds)).andReturn(rows);
+        expect(this.backlogDAO.retrieveWithAncestors(new HashSet<Integer>(Arrays.asList(2, 3))))
+                .andReturn(Arrays.asList((Backlog) this.project, this.iteration));
+        expect(this.userDAO.getMultiple(new HashSet<Integer>(Arrays.asList(1))))
+                .andReturn(Arrays.asList(user));
         
-        replay(this.hourEntryDAO);
+        replay(this.hourEntryDAO, this.backlogDAO, this.userDAO);
         
         TimesheetData actualData = super.getUnlinkedTimesheetData(backlogIds, startDate, endDate, userIds);
         assertNotNull(actualData);
         assertNotNull(actualData.getBacklogNode(2));
+        assertSame(this.project, actualData.getBacklogNode(2).getBacklog());
         assertNotNull(actualData.getStoryNode(1));
+        assertSame(this.iteration, actualData.getStoryNode(1).getStory().getIteration());
         assertNotNull(actualData.getTaskNode(1));
+        assertEquals("Task 1", actualData.getTaskNode(1).getName());
+        assertEquals(2, actualData.getTaskNode(1).getHourEntries().size());
+        assertSame(user, actualData.getTaskNode(1).getHourEntries().get(0).getUser());
         assertNull(actualData.getBacklogNode(1));
         assertNull(actualData.getStoryNode(2));
         assertNull(actualData.getTaskNode(2));
-        verify(this.hourEntryDAO);
+        verify(this.hourEntryDAO, this.backlogDAO, this.userDAO);
     }
     
     @Test
@@ -3,8 +3,10 @@ package fi.hut.soberit.agilefant.business;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -17,6 +19,8 @@ import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.easymock.IAnswer;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -25,7 +29,10 @@ import org.junit.Test;
 import com.opensymphony.xwork2.TextProvider;
 
 import fi.hut.soberit.agilefant.business.impl.TimesheetExportBusinessImpl;
+import fi.hut.soberit.agilefant.db.BacklogDAO;
 import fi.hut.soberit.agilefant.db.HourEntryDAO;
+import fi.hut.soberit.agilefant.db.UserDAO;
+import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
@@ -35,6 +42,7 @@ import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.Task;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 import fi.hut.soberit.agilefant.util.TimesheetExportRowData;
 
 public class TimesheetExportBusinessTest extends TimesheetExportBusinessImpl {
@@ -101,53 +109,127 @@ public class TimesheetExportBusinessTest extends TimesheetExportBusinessImpl {
     @Test
     public void testGetTimesheetRows_noData() {
         HourEntryDAO heDAO = createMock(HourEntryDAO.class);
-        List<BacklogHourEntry> backlogEntries = Collections.emptyList();
-        List<StoryHourEntry> storyEntries = Collections.emptyList();
-        List<TaskHourEntry> taskEntries = Collections.emptyList();
-        expect(heDAO.getBacklogHourEntriesByFilter(null, null, null, null))
-                .andReturn(backlogEntries);
-        expect(heDAO.getStoryHourEntriesByFilter(null, null, null, null))
-                .andReturn(storyEntries);
-        expect(heDAO.getTaskHourEntriesByFilter(null, null, null, null))
-                .andReturn(taskEntries);
+        BacklogDAO backlogDAO = createMock(BacklogDAO.class);
+        UserDAO userDAO = createMock(UserDAO.class);
         this.setHourEntryDAO(heDAO);
-        replay(heDAO);
+        this.setBacklogDAO(backlogDAO);
+        this.setUserDAO(userDAO);
+        replay(heDAO, backlogDAO, userDAO);
         List<TimesheetExportRowData> actual = super.getTimesheetRows(null,
                 null, null, null, null);
         assertEquals(0, actual.size());
-        verify(heDAO);
+        verify(heDAO, backlogDAO, userDAO);
     }
 
     @Test
     public void testGetTimesheetRows() {
         Set<Integer> backlogIds = new HashSet<Integer>(Arrays.asList(1, 2, 3));
+        Set<Integer> subtreeIds = new HashSet<Integer>(Arrays.asList(1, 2, 3, 4));
         Set<Integer> userIds = new HashSet<Integer>(Arrays.asList(1, 2));
         DateTime startTime = new DateTime(2009, 1, 1, 0, 0, 0, 0);
         DateTime endtTime = new DateTime(2009, 6, 1, 0, 0, 0, 0);
         HourEntryDAO heDAO = createMock(HourEntryDAO.class);
-
-        List<BacklogHourEntry> backlogEntries = Arrays.asList(productEntry);
-        List<StoryHourEntry> storyEntries = Arrays.asList(storyEntry);
-        List<TaskHourEntry> taskEntries = Arrays.asList(taskEntry);
-
-        expect(
-                heDAO.getBacklogHourEntriesByFilter(backlogIds, startTime,
-                        endtTime, userIds)).andReturn(backlogEntries);
-        expect(
-                heDAO.getStoryHourEntriesByFilter(backlogIds, startTime,
-                        endtTime, userIds)).andReturn(storyEntries);
-        expect(
-                heDAO.getTaskHourEntriesByFilter(backlogIds, startTime,
-                        endtTime, userIds)).andReturn(taskEntries);
+        BacklogDAO backlogDAO = createMock(BacklogDAO.class);
+        UserDAO userDAO = createMock(UserDAO.class);
+
+        product.setId(1);
+        project.setId(2);
+        iteration.setId(3);
+        user.setId(1);
+        final List<TimesheetEntryRow> rows = Arrays.asList(
+                new TimesheetEntryRow(1, date, "foofaa", 60, 1, 1, null, null, null, null, null, null, null),
+                new TimesheetEntryRow(2, date, null, 0, 1, null, 1, "story 1", 3, 2, null, null, null),
+                new TimesheetEntryRow(3, date, "foo", 60, 1, null, 1, "story 1", 3, 2, 1, "task 1", null));
+
+        expect(backlogDAO.retrieveSubtreeIds(backlogIds)).andReturn(subtreeIds);
+        expect(backlogDAO.retrieveWithAncestors(subtreeIds)).andReturn(
+                Arrays.asList((Backlog) iteration));
+        expect(userDAO.getMultiple(userIds)).andReturn(Arrays.asList(user));
+        heDAO.retrieveTimesheetEntries(eq(subtreeIds), eq(startTime),
+                eq(endtTime), eq(userIds), isA(HourEntryDAO.TimesheetEntryHandler.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                HourEntryDAO.TimesheetEntryHandler handler = (HourEntryDAO.TimesheetEntryHandler) getCurrentArguments()[4];
+                for (TimesheetEntryRow row : rows) {
+                    handler.handleEntry(row);
+                }
+                return null;
+            }
+        });
 
         this.setHourEntryDAO(heDAO);
+        this.setBacklogDAO(backlogDAO);
+        this.setUserDAO(userDAO);
 
-        replay(heDAO);
+        replay(heDAO, backlogDAO, userDAO);
         List<TimesheetExportRowData> actual = super.getTimesheetRows(
                 backlogIds, startTime, endtTime, null, userIds);
         assertEquals(3, actual.size());
-        verify(heDAO);
+        for (TimesheetExportRowData row : actual) {
+            assertSame(product, row.getProduct());
+            assertSame(user, row.getUser());
+        }
+        TimesheetExportRowData taskRow = actual.get(2);
+        assertEquals("task 1", taskRow.getTask().getName());
+        assertEquals("story 1", taskRow.getStory().getName());
+        assertSame(iteration, taskRow.getIteration());
+        assertSame(project, taskRow.getProject());
+        verify(heDAO, backlogDAO, userDAO);
+
+    }
+
+    @Test
+    public void testWriteTimesheetXlsx() throws IOException {
+        Set<Integer> backlogIds = new HashSet<Integer>(Arrays.asList(3));
+        Set<Integer> subtreeIds = new HashSet<Integer>(Arrays.asList(3));
+        HourEntryDAO heDAO = createMock(HourEntryDAO.class);
+        BacklogDAO backlogDAO = createMock(BacklogDAO.class);
+        UserDAO userDAO = createMock(UserDAO.class);
+        TextProvider textProvider = mockTextProvider();
 
+        product.setId(1);
+        project.setId(2);
+        iteration.setId(3);
+        user.setId(1);
+        final List<TimesheetEntryRow> rows = Arrays.asList(
+                new TimesheetEntryRow(1, date, "foofaa", 60, 1, 3, null, null, null, null, null, null, null),
+                new TimesheetEntryRow(2, date, null, 30, 1, null, 1, "story 1", 3, 2, null, null, null),
+                new TimesheetEntryRow(3, date, "foo", 90, 1, null, 1, "story 1", 3, 2, 1, "task 1", null));
+
+        expect(backlogDAO.retrieveSubtreeIds(backlogIds)).andReturn(subtreeIds);
+        expect(backlogDAO.retrieveWithAncestors(subtreeIds)).andReturn(
+                Arrays.asList((Backlog) iteration));
+        expect(userDAO.getAll()).andReturn(Arrays.asList(user));
+        heDAO.retrieveTimesheetEntries(eq(subtreeIds), (DateTime) isNull(),
+                (DateTime) isNull(), (Set<Integer>) isNull(),
+                isA(HourEntryDAO.TimesheetEntryHandler.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                HourEntryDAO.TimesheetEntryHandler handler = (HourEntryDAO.TimesheetEntryHandler) getCurrentArguments()[4];
+                for (TimesheetEntryRow row : rows) {
+                    handler.handleEntry(row);
+                }
+                return null;
+            }
+        });
+
+        this.setHourEntryDAO(heDAO);
+        this.setBacklogDAO(backlogDAO);
+        this.setUserDAO(userDAO);
+
+        replay(heDAO, backlogDAO, userDAO, textProvider);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        super.writeTimesheetXlsx(textProvider, backlogIds, null, null,
+                DateTimeZone.UTC, null, out);
+        verify(heDAO, backlogDAO, userDAO, textProvider);
+
+        Sheet sheet = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray())).getSheetAt(0);
+        assertEquals("PROD COL", sheet.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("foofaa", sheet.getRow(1).getCell(7).getStringCellValue());
+        assertEquals("story 1", sheet.getRow(2).getCell(4).getStringCellValue());
+        assertEquals("task 1", sheet.getRow(3).getCell(6).getStringCellValue());
+        assertEquals(1.5, sheet.getRow(3).getCell(10).getNumericCellValue(), 0.001);
+        assertNull(sheet.getRow(4));
     }
 
     private TextProvider mockTextProvider() {
@@ -6,15 +6,11 @@ import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNull;
-import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 import org.easymock.EasyMock;
@@ -23,19 +19,15 @@ import org.junit.Before;
 import org.junit.Test;
 
 import fi.hut.soberit.agilefant.business.impl.TransferObjectBusinessImpl;
-import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.Task;
-import fi.hut.soberit.agilefant.model.Team;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.model.WhatsNextEntry;
-import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.AssignedWorkTO;
-import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
 import fi.hut.soberit.agilefant.transfer.DailyWorkTaskTO;
 import fi.hut.soberit.agilefant.transfer.IterationTO;
 import fi.hut.soberit.agilefant.transfer.ProjectTO;
@@ -48,13 +40,6 @@ public class TransferObjectBusinessTest {
 
     private TransferObjectBusinessImpl transferObjectBusiness = new TransferObjectBusinessImpl();
     private HourEntryBusiness hourEntryBusiness;
-    private UserBusiness userBusiness;
-    private TeamBusiness teamBusiness;
-    private BacklogBusiness backlogBusiness;
-    private ProductBusiness productBusiness;
-    private ProjectBusiness projectBusiness;
-    private IterationBusiness iterationBusiness;
-    private AuthorizationBusiness authorizationBusiness;
     
     Project   project;
     Iteration iteration;
@@ -63,7 +48,6 @@ public class TransferObjectBusinessTest {
     Task task;
     User assignedUser;
     User notAssignedUser;
-    Team team;
     private StoryBusiness storyBusiness;
 
     @Before
@@ -71,42 +55,17 @@ public class TransferObjectBusinessTest {
         hourEntryBusiness = createMock(HourEntryBusiness.class);
         transferObjectBusiness.setHourEntryBusiness(hourEntryBusiness);
         
-        userBusiness = createMock(UserBusiness.class);
-        transferObjectBusiness.setUserBusiness(userBusiness);
-        
-        teamBusiness = createMock(TeamBusiness.class);
-        transferObjectBusiness.setTeamBusiness(teamBusiness);
-        
-        backlogBusiness = createMock(BacklogBusiness.class);
-        transferObjectBusiness.setBacklogBusiness(backlogBusiness);
-        
-        productBusiness = createMock(ProductBusiness.class);
-        transferObjectBusiness.setProductBusiness(productBusiness);
-        
-        projectBusiness = createMock(ProjectBusiness.class);
-        transferObjectBusiness.setProjectBusiness(projectBusiness);
-        
-        iterationBusiness = createMock(IterationBusiness.class);
-        transferObjectBusiness.setIterationBusiness(iterationBusiness);
-
         storyBusiness = createMock(StoryBusiness.class);
         transferObjectBusiness.setStoryBusiness(storyBusiness);
         
-        authorizationBusiness = createMock(AuthorizationBusiness.class);
-        transferObjectBusiness.setAuthorizationBusiness(authorizationBusiness);
-        
     }
     
     private void verifyAll() {
-        verify(hourEntryBusiness, userBusiness, storyBusiness, teamBusiness,
-                backlogBusiness, productBusiness, projectBusiness,
-                iterationBusiness, authorizationBusiness);
+        verify(hourEntryBusiness, storyBusiness);
     }
 
     private void replayAll() {
-        replay(hourEntryBusiness, userBusiness, storyBusiness, teamBusiness,
-                backlogBusiness, productBusiness, projectBusiness,
-                iterationBusiness, authorizationBusiness);
+        replay(hourEntryBusiness, storyBusiness);
     }
     
     
@@ -207,322 +166,6 @@ public class TransferObjectBusinessTest {
         assertEquals(ScheduleStatus.PAST, actual.getScheduleStatus());
     }
     
-   @Test
-   public void testConstructUserAutocompleteData() {
-        User user = new User();
-        user.setId(1);
-        user.setFullName("daadaa");
-        user.setLoginName("additional");
-        user.setAdmin(true);
-        SecurityUtil.setLoggedUser(user);
-        
-        expect(userBusiness.retrieve(1)).andReturn(user);
-        expect(userBusiness.retrieveAll()).andReturn(Arrays.asList(user));
-        
-        replayAll();
-        List<AutocompleteDataNode> actual = this.transferObjectBusiness.constructUserAutocompleteData();
-        assertEquals(1, actual.size());
-        assertEquals(1, (int)actual.get(0).getId());
-        assertEquals("daadaa", actual.get(0).getName());
-        assertEquals("daadaa additional", actual.get(0).getMatchedString());
-        assertEquals("fi.hut.soberit.agilefant.model.User", actual.get(0).getBaseClassName());
-        assertNull(actual.get(0).getIdList());
-        verifyAll();
-    }
-    
-    @Test
-    public void testConstructTeamAutocompleteData_withUserIds() {
-        User user1 = new User();
-        User user2 = new User();
-        Team team = new Team();
-        user1.setId(1);
-        user2.setId(2);
-        team.setName("daa");
-        team.setId(1);
-        team.setUsers(Arrays.asList(user1,user2));
-        SecurityUtil.setLoggedUser(user1);
-        
-        expect(userBusiness.retrieve(1)).andReturn(user1);
-        expect(teamBusiness.retrieveAll()).andReturn(Arrays.asList(team));
-        
-        replayAll();
-        List<AutocompleteDataNode> actual = this.transferObjectBusiness.constructTeamAutocompleteData(true);
-        assertEquals(1, actual.size());
-        assertEquals(1, (int)actual.get(0).getId());
-        assertEquals("daa", actual.get(0).getName());
-        assertEquals("daa", actual.get(0).getMatchedString());
-        assertEquals("fi.hut.soberit.agilefant.model.Team", actual.get(0).getBaseClassName());
-        assertSame(team, actual.get(0).getOriginalObject());
-        assertEquals(2, actual.get(0).getIdList().size());
-        verifyAll();
-    }
-    
-    @Test
-    public void testConstructTeamAutocompleteData_withoutUserIds() {
-        User user1 = new User();
-        User user2 = new User();
-        Team team = new Team();
-        user1.setId(1);
-        user2.setId(2);
-        team.setName("daa");
-        team.setId(1);
-        team.setUsers(Arrays.asList(user1,user2));
-        SecurityUtil.setLoggedUser(user1);
-        
-        expect(userBusiness.retrieve(1)).andReturn(user1);
-        expect(teamBusiness.retrieveAll()).andReturn(Arrays.asList(team));
-        
-        replayAll();
-        List<AutocompleteDataNode> actual = this.transferObjectBusiness.constructTeamAutocompleteData(false);
-        assertEquals(1, actual.size());
-        assertEquals(1, (int)actual.get(0).getId());
-        assertEquals("daa", actual.get(0).getName());
-        assertEquals("daa", actual.get(0).getMatchedString());
-        assertEquals("fi.hut.soberit.agilefant.model.Team", actual.get(0).getBaseClassName());
-        assertSame(team, actual.get(0).getOriginalObject());
-        assertNull(actual.get(0).getIdList());
-        verifyAll();
-    }
-
-    /*
-     * BACKLOG AUTOCOMPLETE DATA
-     */
-    @Test
-    public void testGetBacklogAutocompleteData() {
-        setAccess();
-        
-        Backlog product = new Product();
-        product.setId(1);
-        product.setName("Product");
-        
-        Set<Product> products = new HashSet<Product>();
-        products.add((Product)product);
-        team.setProducts(products);
-        
-        Backlog project = new Project();
-        project.setId(7);
-        project.setParent(product);
-        project.setName("Project");
-        
-        Backlog iterationUnderProject = new Iteration();
-        iterationUnderProject.setId(333);
-        iterationUnderProject.setParent(project);
-        iterationUnderProject.setName("Iter 1");
-        
-        Backlog iterationUnderProduct = new Iteration();
-        iterationUnderProduct.setId(615);
-        iterationUnderProduct.setParent(product);
-        iterationUnderProduct.setName("Iter 2");
-        
-        expect(backlogBusiness.retrieveAll())
-            .andReturn(Arrays.asList(product, project, iterationUnderProject, iterationUnderProduct));
-        expect(authorizationBusiness.isBacklogAccessible(1, SecurityUtil.getLoggedUser())).andReturn(true);
-        expect(authorizationBusiness.isBacklogAccessible(7, SecurityUtil.getLoggedUser())).andReturn(true);
-        
-        replayAll();
-        
-        List<AutocompleteDataNode> nodes = transferObjectBusiness.constructBacklogAutocompleteData(null);
-        
-        verifyAll();
-        
-        // only backlogs should be included in backlogs autocomplete data
-        assertEquals(2, nodes.size());
-        
-        AutocompleteDataNode node = getDataNodeById(1, nodes);
-        assertEquals(Backlog.class.getCanonicalName(), node.getBaseClassName());
-        assertEquals("Product", node.getName());
-        assertEquals(product, node.getOriginalObject());
-        
-        node = getDataNodeById(7, nodes);
-        assertEquals("Product > Project", node.getName());
-        assertEquals(node.getName(), node.getMatchedString());
-        assertEquals(project, node.getOriginalObject());
-    }
-    
-    @Test
-    public void testGetBacklogAutocompleteData_filterByBacklog() {
-        setAccess();
-        
-        Product product = new Product();
-        product.setId(1);
-        product.setName("Product");
-        
-        Product product2 = new Product();
-        product2.setId(123);
-        product2.setName("Wrong");
-        
-        Set<Product> products = new HashSet<Product>();
-        products.add((Product)product);
-        products.add((Product)product2);
-        team.setProducts(products);
-        
-        Backlog project = new Project();
-        project.setId(7);
-        project.setParent(product);
-        project.setName("Project");
-
-        expect(backlogBusiness.retrieveAll()).andReturn(Arrays.asList(product, project, product2));
-
-        expect(backlogBusiness.retrieve(7)).andReturn(project);
-        expect(backlogBusiness.getParentProduct(project)).andReturn(product);
-        
-        expect(backlogBusiness.getParentProduct(product)).andReturn(product);
-        expect(backlogBusiness.getParentProduct(project)).andReturn(product);
-        expect(backlogBusiness.getParentProduct(product2)).andReturn(product2);
-        
-        expect(authorizationBusiness.isBacklogAccessible(1, SecurityUtil.getLoggedUser())).andReturn(true);
-        expect(authorizationBusiness.isBacklogAccessible(7, SecurityUtil.getLoggedUser())).andReturn(true);
-        
-        replayAll();
-        
-        // Supply the project id
-        List<AutocompleteDataNode> nodes = transferObjectBusiness
-                .constructBacklogAutocompleteData(7);
-        
-        verifyAll();
-        
-        assertEquals(2, nodes.size());
-        
-        AutocompleteDataNode node = getDataNodeById(1, nodes);
-        assertEquals(Backlog.class.getCanonicalName(), node.getBaseClassName());
-        assertEquals("Product", node.getName());
-        assertEquals(product, node.getOriginalObject());
-        
-        node = getDataNodeById(7, nodes);
-        assertEquals("Product > Project", node.getName());
-        assertEquals(node.getName(), node.getMatchedString());
-        assertEquals(project, node.getOriginalObject());
-    }
-       
-    /**
-     * Project autocomplete data.
-     */
-    @Test
-    public void testGetProjectAutocompleteData() {
-        setAccess();
-
-        Product product = new Product();
-        product.setId(1);
-        product.setName("Product");
-        
-        Set<Product> products = new HashSet<Product>();
-        products.add((Product)product);
-        team.setProducts(products);
-        
-        Project project = new Project();
-        project.setId(7);
-        project.setParent(product);
-        project.setName("Project");
-        
-        expect(projectBusiness.retrieveAll()).andReturn(Arrays.asList(project));
-        expect(authorizationBusiness.isBacklogAccessible(7, SecurityUtil.getLoggedUser())).andReturn(true);
-        
-        replayAll();
-        
-        List<AutocompleteDataNode> nodes = transferObjectBusiness
-                .constructProjectAutocompleteData();
-        verifyAll();
-        
-        assertEquals(1, nodes.size());
-               
-        AutocompleteDataNode node = getDataNodeById(7, nodes);
-        assertEquals("Product > Project", node.getName());
-        assertEquals(node.getName(), node.getMatchedString());
-        assertEquals(project, node.getOriginalObject());
-
-    }
-
-    @Test
-    public void testGetCurrentIterationAutocompleteData() {
-        Backlog product = new Product();
-        product.setId(1);
-        product.setName("Product");
-        
-        Backlog project = new Project();
-        project.setId(7);
-        project.setParent(product);
-        project.setName("Project");
-        
-        Iteration iterationUnderProject = new Iteration();
-        iterationUnderProject.setId(333);
-        iterationUnderProject.setParent(project);
-        iterationUnderProject.setName("Iter 1");
-        
-        Iteration iterationUnderProduct = new Iteration();
-        iterationUnderProduct.setId(615);
-        iterationUnderProduct.setParent(product);
-        iterationUnderProduct.setName("Iter 2");
-        
-        expect(iterationBusiness.retrieveCurrentAndFutureIterations())
-            .andReturn(Arrays.asList(iterationUnderProject, iterationUnderProduct));
-        
-        expect(authorizationBusiness.isBacklogAccessible(333, SecurityUtil.getLoggedUser())).andReturn(true);
-        expect(authorizationBusiness.isBacklogAccessible(615, SecurityUtil.getLoggedUser())).andReturn(true);
-        
-        replayAll();
-        
-        List<AutocompleteDataNode> nodes = transferObjectBusiness
-                .constructCurrentIterationAutocompleteData();
-        
-        verifyAll();
-        
-        assertEquals(2, nodes.size());
-        AutocompleteDataNode node = getDataNodeById(333, nodes);
-        assertEquals("Product > Project > Iter 1", node.getName());
-        assertEquals(iterationUnderProject, node.getOriginalObject());
-        
-        node = getDataNodeById(615, nodes);
-        assertEquals("Product > Iter 2", node.getName());
-        assertEquals(iterationUnderProduct, node.getOriginalObject());
-    }
-
-    
-    /**
-     * Helper method to get a <code>AutocompleteDataNode</code> with specified id.
-     */
-    private AutocompleteDataNode getDataNodeById(int id, Collection<AutocompleteDataNode> nodes) {
-        for (AutocompleteDataNode adn : nodes) {
-            if (adn.getId() == id) {
-                return adn;
-            }
-        }
-        return null;
-    }
-    
-    @Test
-    public void testConstructProductAutocompleteData() { 
-        setAccess();
-        
-        Product product1 = new Product();
-        product1.setId(756);
-        product1.setName("Test product no. 1");
-        Product product2 = new Product();
-        product2.setName("Foo bar");
-        product2.setId(918);
-        
-        Set<Product> products = new HashSet<Product>();
-        products.add((Product)product1);
-        products.add((Product)product2);
-        team.setProducts(products);
-        
-        expect(userBusiness.retrieve(0)).andReturn(SecurityUtil.getLoggedUser()).anyTimes();
-        expect(productBusiness.retrieveAll()).andReturn(Arrays.asList(product1, product2));
-        expect(authorizationBusiness.isBacklogAccessible(756, SecurityUtil.getLoggedUser())).andReturn(true);
-        expect(authorizationBusiness.isBacklogAccessible(918, SecurityUtil.getLoggedUser())).andReturn(true);
-        replayAll();
-        List<AutocompleteDataNode> nodes = transferObjectBusiness
-                .constructProductAutocompleteData();
-        verifyAll();
-        
-        AutocompleteDataNode actual = getDataNodeById(756, nodes);
-        assertEquals("Test product no. 1", actual.getName());
-        assertEquals(product1, actual.getOriginalObject());
-        
-        actual = getDataNodeById(918, nodes);
-        assertEquals("Foo bar", actual.getName());
-        assertEquals(product2, actual.getOriginalObject());
-    }
-    
     @Test
     public void testCalculateBacklogScheduleStatus_forProduct() {
         Product product = new Product();
@@ -657,16 +300,4 @@ public class TransferObjectBusinessTest {
         assertEquals(2, assigned.getStories().get(0).getTasks().size());
         assertTrue(assigned.getStories().get(0).getTasks().iterator().next() instanceof TaskTO);
     };
-    
-    private void setAccess(){
-        User user = new User();
-        team = new Team();
-        Collection<User> users = new ArrayList<User>();
-        users.add(user);
-        team.setUsers(users);
-        Collection<Team> teams = new ArrayList<Team>();
-        teams.add(team);
-        user.setTeams(teams);
-        SecurityUtil.setLoggedUser(user);
-    }
 }
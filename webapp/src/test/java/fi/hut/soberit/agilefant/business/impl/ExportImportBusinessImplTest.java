@@ -0,0 +1,43 @@
+package fi.hut.soberit.agilefant.business.impl;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.db.StoryDAO;
+
+public class ExportImportBusinessImplTest {
+
+    private ExportImportBusinessImpl impl;
+
+    @Before
+    public void setUp() {
+        impl = new ExportImportBusinessImpl();
+        impl.storyDAO = createMock(StoryDAO.class);
+    }
+
+    @Test
+    public void testGetStoryIdsInTreeOrder() {
+        Map<Integer, Integer> parentIds = new LinkedHashMap<Integer, Integer>();
+        parentIds.put(1, 5);
+        parentIds.put(2, null);
+        parentIds.put(3, 1);
+        parentIds.put(4, 2);
+        parentIds.put(5, null);
+        expect(impl.storyDAO.retrieveParentIds()).andReturn(parentIds);
+        replay(impl.storyDAO);
+
+        assertEquals(Arrays.asList(5, 1, 2, 3, 4), impl.getStoryIdsInTreeOrder());
+
+        verify(impl.storyDAO);
+    }
+}
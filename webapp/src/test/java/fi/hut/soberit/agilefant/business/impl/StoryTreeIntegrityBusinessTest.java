@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
+import org.easymock.IAnswer;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,6 +15,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import fi.hut.soberit.agilefant.business.BacklogBusiness;
 import fi.hut.soberit.agilefant.business.impl.StoryTreeIntegrityBusinessImpl;
+import fi.hut.soberit.agilefant.db.StoryAncestorDAO;
 import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Product;
@@ -40,6 +42,9 @@ public class StoryTreeIntegrityBusinessTest extends MockedTestCase {
     @Mock
     private BacklogBusiness backlogBusiness;
 
+    @Mock
+    private StoryAncestorDAO storyAncestorDAO;
+
     List<StoryTreeIntegrityMessage> messages;
 
     /*
@@ -87,6 +92,27 @@ public class StoryTreeIntegrityBusinessTest extends MockedTestCase {
                 story_21, story_32);
     }
 
+    @Test
+    @DirtiesContext
+    public void testChangeBacklog_messagesSortedByStory() {
+        story_21.setId(21);
+        story_31.setId(31);
+        story_32.setId(32);
+        story_41.setId(41);
+        expect(backlogBusiness.getParentProduct(story_21.getBacklog()))
+                .andReturn(product);
+        expect(backlogBusiness.getParentProduct(project2)).andReturn(product);
+
+        replayAll();
+        messages = testable.checkChangeBacklog(story_21, project2);
+        verifyAll();
+
+        assertNumberOfMessages(messages, 3);
+        assertSame(story_31, messages.get(0).getTarget());
+        assertSame(story_32, messages.get(1).getTarget());
+        assertSame(story_41, messages.get(2).getTarget());
+    }
+
     @Test
     @DirtiesContext
     public void testChangeBacklog_moveToProduct_parentInProject() {
@@ -281,6 +307,28 @@ public class StoryTreeIntegrityBusinessTest extends MockedTestCase {
         constructStories();
         setStoryBacklogs();
         setStoryRelations();
+        expectDescendants();
+    }
+
+    /**
+     * The ancestor index returns the branches of the constructed stories.
+     */
+    private void expectDescendants() {
+        expect(storyAncestorDAO.retrieveDescendants(isA(Story.class)))
+                .andStubAnswer(new IAnswer<List<Story>>() {
+                    public List<Story> answer() throws Throwable {
+                        List<Story> descendants = new ArrayList<Story>();
+                        addDescendants((Story) getCurrentArguments()[0], descendants);
+                        return descendants;
+                    }
+                });
+    }
+
+    private static void addDescendants(Story story, List<Story> descendants) {
+        for (Story child : story.getChildren()) {
+            descendants.add(child);
+            addDescendants(child, descendants);
+        }
     }
 
     private void constructStories() {
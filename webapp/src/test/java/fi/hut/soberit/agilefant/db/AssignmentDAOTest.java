@@ -2,6 +2,9 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import org.joda.time.DateTime;
@@ -71,4 +74,29 @@ public class AssignmentDAOTest extends AbstractHibernateTests {
         List<Assignment> actual = assignmentDAO.assigmentsInBacklogTimeframe(interval, user);
         assertEquals(2, actual.size());
     }
+    
+    @Test
+    public void testAssigmentsInBacklogTimeframe_multipleUsers() {
+        executeClassSql();
+        interval = new Interval(new DateTime(2009,6,2,0,0,0,0), new DateTime(2009,6,8,0,0,0,0));
+        List<Assignment> actual = assignmentDAO.assigmentsInBacklogTimeframe(interval, Arrays.asList(2, 999));
+        assertEquals(2, actual.size());
+        for (Assignment assignment : actual) {
+            assertEquals(2, assignment.getUser().getId());
+        }
+    }
+
+    @Test
+    public void testRetrieveAssigneeIds() {
+        executeClassSql();
+        List<Integer> none = Collections.emptyList();
+        assertEquals(new HashSet<Integer>(Arrays.asList(2)),
+                assignmentDAO.retrieveAssigneeIds(Arrays.asList(2), none, none));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+                assignmentDAO.retrieveAssigneeIds(none, Arrays.asList(1), none));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+                assignmentDAO.retrieveAssigneeIds(none, none, Arrays.asList(1)));
+        assertTrue(assignmentDAO.retrieveAssigneeIds(none, Arrays.asList(2), none).isEmpty());
+        assertTrue(assignmentDAO.retrieveAssigneeIds(none, none, none).isEmpty());
+    }
 }
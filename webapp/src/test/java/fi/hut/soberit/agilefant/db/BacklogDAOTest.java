@@ -2,7 +2,11 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +17,8 @@ import fi.hut.soberit.agilefant.model.Backlog;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.Project;
 import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+import fi.hut.soberit.agilefant.util.BacklogMenuTree;
 
 @ContextConfiguration
 @Transactional
@@ -65,4 +71,39 @@ public class BacklogDAOTest extends AbstractHibernateTests {
         List<Backlog> backlogs = backlogDAO.searchByName(search, Project.class);
         assertEquals(0, backlogs.size());
     }
+    
+    @Test
+    public void testRetrieveMenuTreeEntries() {
+        executeClassSql();
+        Map<Integer, BacklogMenuTree.Entry> entries = new HashMap<Integer, BacklogMenuTree.Entry>();
+        for (BacklogMenuTree.Entry entry : backlogDAO.retrieveMenuTreeEntries()) {
+            entries.put(entry.getId(), entry);
+        }
+        assertEquals(5, entries.size());
+        assertEquals(BacklogType.PROJECT, entries.get(3).getType());
+        assertNull(entries.get(3).getParentId());
+        assertEquals("Project 1", entries.get(3).getName());
+        assertEquals(BacklogType.ITERATION, entries.get(4).getType());
+        assertEquals(Integer.valueOf(3), entries.get(4).getParentId());
+        assertNull(entries.get(1).getParentId());
+    }
+
+    @Test
+    public void testRetrieveSubtreeIds() {
+        executeClassSql();
+        assertEquals(new HashSet<Integer>(Arrays.asList(3, 4, 5)),
+                backlogDAO.retrieveSubtreeIds(Arrays.asList(3)));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 4)),
+                backlogDAO.retrieveSubtreeIds(Arrays.asList(1, 4)));
+        assertTrue(backlogDAO.retrieveSubtreeIds(new HashSet<Integer>()).isEmpty());
+    }
+
+    @Test
+    public void testRetrieveWithAncestors() {
+        executeClassSql();
+        List<Backlog> backlogs = backlogDAO.retrieveWithAncestors(Arrays.asList(4));
+        assertEquals(1, backlogs.size());
+        assertEquals(4, backlogs.get(0).getId());
+        assertEquals(3, backlogs.get(0).getParent().getId());
+    }
 }
@@ -0,0 +1,121 @@
+package fi.hut.soberit.agilefant.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+
+@ContextConfiguration
+@Transactional
+public class DailyEffortSumDAOTest extends AbstractHibernateTests {
+
+    @Autowired
+    private DailyEffortSumDAO testable;
+
+    @Test
+    public void testAddMinutes() {
+        LocalDate day = new LocalDate(2009, 6, 1);
+        testable.addMinutes(1, 3, null, null, day, 30);
+        testable.addMinutes(1, 3, null, null, day, 15);
+        testable.addMinutes(1, null, 1, null, day, 60);
+        testable.addMinutes(1, 3, null, null, day, -10);
+        testable.addMinutes(2, 3, null, null, day, 5);
+
+        assertEquals(3, testable.count());
+        Map<LocalDate, Long> sums = testable.getDailySumsByUser(1, day, day);
+        assertEquals(1, sums.size());
+        assertEquals(95L, (long) sums.get(day));
+    }
+
+    @Test
+    public void testAddMinutes_singleRowPerTarget() {
+        LocalDate day = new LocalDate(2009, 6, 1);
+        testable.addMinutes(1, null, 1, null, day, 30);
+        testable.addMinutes(1, null, 1, null, day, 15);
+
+        assertEquals(1, testable.count());
+        assertEquals(45L, simpleJdbcTemplate.queryForLong(
+                "SELECT minutesSpent FROM daily_effort_sums WHERE user_id = 1 AND story_id = 1"));
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void testAddMinutes_duplicateRowRejected() {
+        testable.addMinutes(1, null, 1, null, new LocalDate(2009, 6, 1), 30);
+        // A concurrent writer that missed the existing row
+        simpleJdbcTemplate.update("INSERT INTO daily_effort_sums"
+                + " (user_id, backlog_id, story_id, task_id, date, minutesSpent)"
+                + " VALUES (1, 0, 1, 0, '2009-06-01', 15)");
+    }
+
+    @Test
+    public void testRebuild_getDailySumsByUser() {
+        executeClassSql();
+        testable.rebuild();
+
+        Map<LocalDate, Long> sums = testable.getDailySumsByUser(1,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 3));
+        assertEquals(3, sums.size());
+        assertEquals(45L, (long) sums.get(new LocalDate(2009, 6, 1)));
+        assertEquals(45L, (long) sums.get(new LocalDate(2009, 6, 2)));
+        assertEquals(120L, (long) sums.get(new LocalDate(2009, 6, 3)));
+    }
+
+    @Test
+    public void testRebuild_calculateSumByUser() {
+        executeClassSql();
+        testable.rebuild();
+
+        assertEquals(210L, testable.calculateSumByUser(1,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 3)));
+        assertEquals(0L, testable.calculateSumByUser(2,
+                new LocalDate(2009, 6, 3), new LocalDate(2009, 6, 7)));
+    }
+
+    @Test
+    public void testRebuild_getDailySumsByIteration() {
+        executeClassSql();
+        testable.rebuild();
+
+        Map<LocalDate, Long> sums = testable.getDailySumsByIteration(3,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 7));
+        assertEquals(3, sums.size());
+        assertEquals(45L, (long) sums.get(new LocalDate(2009, 6, 1)));
+        assertEquals(105L, (long) sums.get(new LocalDate(2009, 6, 2)));
+        assertEquals(20L, (long) sums.get(new LocalDate(2009, 6, 3)));
+    }
+
+    @Test
+    public void testRebuild_replacesSums() {
+        executeClassSql();
+        testable.addMinutes(1, 3, null, null, new LocalDate(2009, 6, 1), 1000);
+        testable.rebuild();
+
+        assertEquals(45L, testable.calculateSumByUser(1,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 1)));
+    }
+
+    @Test
+    public void testAddHourEntryMinutes() {
+        executeClassSql();
+        testable.rebuild();
+        testable.addHourEntryMinutes(Arrays.asList(1, 2, 4), -1);
+
+        assertEquals(0L, testable.calculateSumByUser(1,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 2)));
+        assertEquals(60L, testable.calculateSumByUser(2,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 2)));
+
+        testable.addHourEntryMinutes(Arrays.asList(2), 1);
+        assertEquals(15L, testable.calculateSumByUser(1,
+                new LocalDate(2009, 6, 1), new LocalDate(2009, 6, 1)));
+    }
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.joda.time.DateTime;
@@ -14,9 +15,11 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.model.BacklogHourEntry;
+import fi.hut.soberit.agilefant.model.HourEntry;
 import fi.hut.soberit.agilefant.model.StoryHourEntry;
 import fi.hut.soberit.agilefant.model.TaskHourEntry;
 import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.util.TimesheetEntryRow;
 
 @ContextConfiguration
 @Transactional
@@ -208,6 +211,14 @@ public class HourEntryDAOTest extends AbstractHibernateTests {
         assertEquals(0, actualSum);
     }
     
+    @Test
+    public void testCalculateIterationHourEntriesSums() {
+        executeClassSql();
+        Map<Integer, Long> sums = hourEntryDAO.calculateIterationHourEntriesSums(Arrays.asList(5, 6));
+        assertEquals(1, sums.size());
+        assertEquals(4240L, sums.get(5).longValue());
+    }
+    
     @Test
     public void testGetHourEntriesByFilter() {
         executeClassSql();
@@ -264,4 +275,99 @@ public class HourEntryDAOTest extends AbstractHibernateTests {
         assertEquals(1, hourEntryDAO.getTaskHourEntries(4, 1).size());
     }
 
+
+    @Test
+    public void testRetrieveTimesheetEntries_product() {
+        executeClassSql();
+        Set<Integer> backlogs = new HashSet<Integer>(Arrays.asList(1, 3, 4, 5, 6));
+        List<TimesheetEntryRow> rows = hourEntryDAO.retrieveTimesheetEntries(backlogs, null, null, null);
+        assertEquals(21, rows.size());
+    }
+
+    @Test
+    public void testRetrieveTimesheetEntries_iteration() {
+        executeClassSql();
+        Set<Integer> backlogs = new HashSet<Integer>(Arrays.asList(5));
+        List<TimesheetEntryRow> rows = hourEntryDAO.retrieveTimesheetEntries(backlogs, null, null, null);
+        assertEquals(10, rows.size());
+        for (TimesheetEntryRow row : rows) {
+            if (row.getEntryId() == 5) {
+                assertEquals(Integer.valueOf(8), row.getTaskId());
+                assertEquals(Integer.valueOf(5), row.getTaskIterationId());
+                assertNull(row.getStoryId());
+                assertEquals(20, row.getMinutesSpent());
+            } else if (row.getEntryId() == 1) {
+                assertEquals(Integer.valueOf(1), row.getTaskId());
+                assertEquals(Integer.valueOf(1), row.getStoryId());
+                assertEquals("Story 1", row.getStoryName());
+                assertEquals(Integer.valueOf(5), row.getStoryIterationId());
+                assertEquals(Integer.valueOf(3), row.getStoryBacklogId());
+            } else if (row.getEntryId() == 11) {
+                assertEquals(Integer.valueOf(5), row.getBacklogId());
+                assertEquals(new DateTime(2009, 5, 14, 10, 20, 0, 0), row.getDate());
+            }
+        }
+    }
+
+    @Test
+    public void testRetrieveTimesheetEntries_dateFilter() {
+        executeClassSql();
+        Set<Integer> backlogs = new HashSet<Integer>(Arrays.asList(5));
+        DateTime startTime = new DateTime(2009, 5, 14, 9, 0, 0, 0);
+        DateTime endTime = new DateTime(2009, 5, 14, 16, 0, 0, 0);
+        List<TimesheetEntryRow> rows = hourEntryDAO.retrieveTimesheetEntries(backlogs, startTime, endTime, null);
+        assertEquals(1, rows.size());
+        assertEquals(11, rows.get(0).getEntryId());
+    }
+
+    @Test
+    public void testRetrieveTimesheetEntries_userFilter() {
+        executeClassSql();
+        Set<Integer> backlogs = new HashSet<Integer>(Arrays.asList(5));
+        assertEquals(10, hourEntryDAO.retrieveTimesheetEntries(backlogs, null,
+                null, new HashSet<Integer>(Arrays.asList(1))).size());
+        assertEquals(0, hourEntryDAO.retrieveTimesheetEntries(backlogs, null,
+                null, new HashSet<Integer>(Arrays.asList(2))).size());
+    }
+
+    @Test
+    public void testRetrieveTimesheetEntries_noBacklogs() {
+        executeClassSql();
+        assertEquals(0, hourEntryDAO.retrieveTimesheetEntries(new HashSet<Integer>(), null, null, null).size());
+    }
+
+    @Test
+    public void testRemoveAll() {
+        executeClassSql();
+        List<HourEntry> hourEntries = Arrays.asList(hourEntryDAO.get(1),
+                hourEntryDAO.get(2));
+        hourEntryDAO.removeAll(hourEntries);
+        assertNull(hourEntryDAO.get(1));
+        assertNull(hourEntryDAO.get(2));
+        assertNotNull(hourEntryDAO.get(3));
+    }
+
+    @Test
+    public void testMoveToStory() {
+        executeClassSql();
+        List<HourEntry> hourEntries = Arrays.asList(hourEntryDAO.get(3),
+                hourEntryDAO.get(4));
+        hourEntryDAO.moveToStory(hourEntries, 7);
+        HourEntry moved = hourEntryDAO.get(3);
+        assertTrue(moved instanceof StoryHourEntry);
+        assertEquals(7, ((StoryHourEntry) moved).getStory().getId());
+        assertEquals(40L, moved.getMinutesSpent());
+        assertTrue(hourEntryDAO.get(4) instanceof StoryHourEntry);
+        assertTrue(hourEntryDAO.get(1) instanceof TaskHourEntry);
+    }
+
+    @Test
+    public void testMoveToBacklog() {
+        executeClassSql();
+        List<HourEntry> hourEntries = Arrays.asList(hourEntryDAO.get(3));
+        hourEntryDAO.moveToBacklog(hourEntries, 6);
+        HourEntry moved = hourEntryDAO.get(3);
+        assertTrue(moved instanceof BacklogHourEntry);
+        assertEquals(6, ((BacklogHourEntry) moved).getBacklog().getId());
+    }
 }
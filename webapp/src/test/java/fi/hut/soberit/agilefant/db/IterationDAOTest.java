@@ -11,6 +11,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.transaction.annotation.Transactional;
 
+import fi.hut.soberit.agilefant.model.Assignment;
 import fi.hut.soberit.agilefant.model.Iteration;
 import fi.hut.soberit.agilefant.model.StoryState;
 import fi.hut.soberit.agilefant.model.Task;
@@ -42,6 +43,30 @@ public class IterationDAOTest extends  AbstractHibernateTests {
                 .getCountOfDoneAndAllStories(iteration));
     }
 
+    @Test
+    public void testGetCountOfDoneAndNonDeferredTasksByIteration() {
+        executeClassSql();
+        Map<Integer, Pair<Integer, Integer>> counts = iterationDAO
+                .getCountOfDoneAndNonDeferredTasksByIteration(Arrays.asList(1, 2, 3, 4));
+        for (int id = 1; id <= 3; id++) {
+            assertEquals(iterationDAO.getCountOfDoneAndNonDeferred(iterationDAO.get(id)),
+                    counts.get(id));
+        }
+        assertFalse(counts.containsKey(4));
+    }
+
+    @Test
+    public void testGetCountOfDoneAndAllStoriesByIteration() {
+        executeClassSql();
+        Map<Integer, Pair<Integer, Integer>> counts = iterationDAO
+                .getCountOfDoneAndAllStoriesByIteration(Arrays.asList(1, 2, 3, 4));
+        for (int id = 1; id <= 3; id++) {
+            assertEquals(iterationDAO.getCountOfDoneAndAllStories(iterationDAO.get(id)),
+                    counts.get(id));
+        }
+        assertFalse(counts.containsKey(4));
+    }
+
     @Test
     public void testRetrieveEmptyIterationsWithPlannedSize() {
         executeClassSql();
@@ -56,6 +81,19 @@ public class IterationDAOTest extends  AbstractHibernateTests {
         assertEquals(4, actual.get(0).getId());
     }
 
+    @Test
+    public void testRetrieveEmptyIterationAssignmentsWithPlannedSize() {
+        executeClassSql();
+        DateTime startDate = new DateTime(2009, 6, 4, 0, 0, 0, 0);
+        DateTime endDate = new DateTime(2009, 6, 15, 0, 0, 0, 0);
+        List<Pair<Iteration, Assignment>> actual = iterationDAO
+                .retrieveEmptyIterationAssignmentsWithPlannedSize(startDate,
+                        endDate, Arrays.asList(1));
+        assertEquals(1, actual.size());
+        assertEquals(4, actual.get(0).first.getId());
+        assertEquals(1, actual.get(0).second.getUser().getId());
+    }
+
     @Test
     public void testRetrieveCurrentAndFutureIterationsAt() {
         executeClassSql();
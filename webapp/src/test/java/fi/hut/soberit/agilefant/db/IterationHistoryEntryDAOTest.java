@@ -2,7 +2,11 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
 
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +17,7 @@ import fi.hut.soberit.agilefant.model.ExactEstimate;
 import fi.hut.soberit.agilefant.model.IterationHistoryEntry;
 import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
 import fi.hut.soberit.agilefant.util.Pair;
+import fi.hut.soberit.agilefant.util.Triple;
 @ContextConfiguration
 @Transactional
 public class IterationHistoryEntryDAOTest extends AbstractHibernateTests {
@@ -34,6 +39,28 @@ public class IterationHistoryEntryDAOTest extends AbstractHibernateTests {
         assertNull(entry);
     }
     
+    @Test
+    public void testRetrieveLatest_multipleIterations() {
+        executeClassSql();
+        Map<Integer, IterationHistoryEntry> entries = iterationHistoryEntryDAO
+                .retrieveLatest(Arrays.asList(1, 2, 3));
+        assertEquals(2, entries.size());
+        assertEquals(4, entries.get(1).getId());
+        assertEquals(5, entries.get(3).getId());
+    }
+
+    @Test
+    public void testRetrieveByDate_multipleIterations() {
+        executeClassSql();
+        Map<Integer, IterationHistoryEntry> entries = iterationHistoryEntryDAO
+                .retrieveByDate(Arrays.asList(1, 3), new LocalDate(2009, 1, 2));
+        assertEquals(2, entries.size());
+        assertEquals(2, entries.get(1).getId());
+        assertEquals(5, entries.get(3).getId());
+        assertTrue(iterationHistoryEntryDAO.retrieveByDate(Arrays.asList(1, 3),
+                new LocalDate(2008, 12, 31)).isEmpty());
+    }
+    
     @Test
     public void testCalculateCurrentHistoryData() {
         executeClassSql();
@@ -51,6 +78,51 @@ public class IterationHistoryEntryDAOTest extends AbstractHibernateTests {
         assertEquals(0L, sums.getSecond().getMinorUnits().longValue());
     }
 
+    @Test
+    public void testCalculateTaskHistoryContribution_taskInIteration() {
+        executeClassSql();
+        Triple<Integer, ExactEstimate, ExactEstimate> contribution = iterationHistoryEntryDAO
+                .calculateTaskHistoryContribution(2);
+        assertEquals(Integer.valueOf(1), contribution.getFirst());
+        assertEquals(20L, contribution.getSecond().getMinorUnits().longValue());
+        assertEquals(30L, contribution.getThird().getMinorUnits().longValue());
+    }
+
+    @Test
+    public void testCalculateTaskHistoryContribution_taskInStory() {
+        executeClassSql();
+        Triple<Integer, ExactEstimate, ExactEstimate> contribution = iterationHistoryEntryDAO
+                .calculateTaskHistoryContribution(10);
+        assertEquals(Integer.valueOf(1), contribution.getFirst());
+        assertEquals(40L, contribution.getSecond().getMinorUnits().longValue());
+        assertEquals(60L, contribution.getThird().getMinorUnits().longValue());
+    }
+
+    @Test
+    public void testCalculateTaskHistoryContribution_deferredTask() {
+        executeClassSql();
+        Triple<Integer, ExactEstimate, ExactEstimate> contribution = iterationHistoryEntryDAO
+                .calculateTaskHistoryContribution(20);
+        assertNull(contribution.getFirst());
+        assertEquals(0L, contribution.getSecond().getMinorUnits().longValue());
+    }
+
+    @Test
+    public void testCalculateTaskHistoryContribution_deferredStory() {
+        executeClassSql();
+        Triple<Integer, ExactEstimate, ExactEstimate> contribution = iterationHistoryEntryDAO
+                .calculateTaskHistoryContribution(21);
+        assertNull(contribution.getFirst());
+    }
+
+    @Test
+    public void testCalculateTaskHistoryContribution_notFound() {
+        executeClassSql();
+        Triple<Integer, ExactEstimate, ExactEstimate> contribution = iterationHistoryEntryDAO
+                .calculateTaskHistoryContribution(-1);
+        assertNull(contribution.getFirst());
+    }
+
     @Test
     public void testGetHistoryEntriesForIteration() {
         executeClassSql();
@@ -61,4 +133,25 @@ public class IterationHistoryEntryDAOTest extends AbstractHibernateTests {
         assertEquals(60, actualEntries.get(0).getOriginalEstimateSum());
         assertEquals(4, actualEntries.size());
     }
+
+    @Test
+    public void testAddToSums() {
+        executeClassSql();
+        IterationHistoryEntry entry = iterationHistoryEntryDAO.retrieveLatest(1);
+        iterationHistoryEntryDAO.addToSums(entry, -10, 5);
+        assertEquals(20, entry.getEffortLeftSum());
+        assertEquals(95, entry.getOriginalEstimateSum());
+        assertEquals(5, entry.getDeltaOriginalEstimate());
+        assertEquals(95L, simpleJdbcTemplate.queryForLong(
+                "SELECT originalestimatesum FROM history_iterations WHERE id = 4"));
+        // Other entries are not changed
+        assertEquals(40L, simpleJdbcTemplate.queryForLong(
+                "SELECT effortleftsum FROM history_iterations WHERE id = 3"));
+    }
+
+    @Test
+    public void testRetrieveIterationIdsWithHistory() {
+        executeClassSql();
+        assertEquals(Arrays.asList(1, 3), iterationHistoryEntryDAO.retrieveIterationIdsWithHistory());
+    }
 }
@@ -1,6 +1,12 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.DateTime;
 
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,6 +41,31 @@ public class LabelDAOTest extends AbstractHibernateTests {
         assertEquals(false, this.labelDAO.labelExists("Katti", story));
     }
     
+    @Test
+    public void testGetExistingStoryLabelNames() {
+        executeClassSql();
+        Map<Integer, Set<String>> existing = this.labelDAO.getExistingStoryLabelNames(
+                Arrays.asList(1, 2), Arrays.asList("Kissa", "Katti", "matti"));
+        assertEquals(1, existing.size());
+        assertEquals(new HashSet<String>(Arrays.asList("kissa", "matti")), existing.get(1));
+    }
+
+    @Test
+    public void testInsertLabels() {
+        executeClassSql();
+        Story story = new Story();
+        story.setId(1);
+        Label label = new Label();
+        label.setName("Katti");
+        label.setDisplayName("Katti");
+        label.setStory(story);
+        label.setTimestamp(new DateTime());
+        this.labelDAO.insertLabels(Arrays.asList(label));
+
+        assertTrue(this.labelDAO.labelExists("katti", story));
+        assertEquals(5, this.labelDAO.count());
+    }
+    
     @Test
     public void testSearchLabel(){
         executeClassSql();
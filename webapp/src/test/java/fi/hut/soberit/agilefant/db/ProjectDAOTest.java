@@ -2,8 +2,10 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.joda.time.LocalDate;
 import org.junit.Test;
@@ -125,6 +127,16 @@ public class ProjectDAOTest extends AbstractHibernateTests {
         assertEquals(4, highest);
     }
     
+    @Test
+    public void testShiftRanksBetween() {
+        executeClassSql();
+        Project loaded = projectDAO.get(2);
+        projectDAO.shiftRanksBetween(2, 3, -1);
+        assertEquals(1, projectDAO.get(1).getRank().intValue());
+        assertEquals(1, loaded.getRank().intValue());
+        assertEquals(2, projectDAO.get(3).getRank().intValue());
+    }
+    
     @Test
     public void testRetrieveActiveWithUserAssigned() {
         executeSql("classpath:fi/hut/soberit/agilefant/db/ProjectDAOTest-assignments-data.sql");
@@ -141,4 +153,30 @@ public class ProjectDAOTest extends AbstractHibernateTests {
         assertEquals(3, actual.getNumberOfDoneStories());
         assertEquals(4, actual.getNumberOfStories());
     }
+
+    @Test
+    public void testCalculateStoryMetrics_multipleProjects() {
+        executeSql("classpath:fi/hut/soberit/agilefant/db/ProjectDAOTest-metrics-data.sql");
+        Map<Integer, ProjectMetrics> actual = projectDAO.calculateProjectStoryMetrics(
+                Arrays.asList(11, 12, 13));
+        assertEquals(2, actual.size());
+        assertEquals(2, actual.get(11).getNumberOfStories());
+        assertEquals(1, actual.get(11).getNumberOfDoneStories());
+        assertEquals(5, actual.get(11).getCompletedStoryPoints());
+        assertEquals(180L, actual.get(11).getEffortSpent().longValue());
+        assertEquals(150L, actual.get(11).getOriginalEstimate().longValue());
+        assertEquals(8, actual.get(12).getStoryPoints());
+        assertEquals(20L, actual.get(12).getEffortSpent().longValue());
+        assertEquals(30L, actual.get(12).getOriginalEstimate().longValue());
+    }
+
+    @Test
+    public void testCalculateProjectSpentEffortSums() {
+        executeSql("classpath:fi/hut/soberit/agilefant/db/ProjectDAOTest-metrics-data.sql");
+        Map<Integer, Long> actual = projectDAO.calculateProjectSpentEffortSums(
+                Arrays.asList(11, 12));
+        assertEquals(2, actual.size());
+        assertEquals(360L, (long) actual.get(11));
+        assertEquals(27L, (long) actual.get(12));
+    }
 }
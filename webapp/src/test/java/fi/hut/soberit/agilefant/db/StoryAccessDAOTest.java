@@ -0,0 +1,125 @@
+package fi.hut.soberit.agilefant.db;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.util.Triple;
+
+@ContextConfiguration
+@Transactional
+public class StoryAccessDAOTest extends AbstractHibernateTests {
+
+    @Autowired
+    private StoryAccessDAO testable;
+
+    private static final LocalDate DAY = new LocalDate(2009, 6, 1);
+
+    private static Triple<Integer, Integer, DateTime> access(int userId,
+            int storyId, DateTime time) {
+        return Triple.create(userId, storyId, time);
+    }
+
+    @Test
+    public void testStoreAccesses() {
+        executeClassSql();
+        int accesses = testable.count();
+        List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>();
+        batch.add(access(1, 2, new DateTime(2009, 6, 10, 9, 0, 0, 0)));
+        batch.add(access(1, 2, new DateTime(2009, 6, 10, 10, 0, 0, 0)));
+        batch.add(access(2, 2, new DateTime(2009, 6, 10, 10, 0, 0, 0)));
+        testable.storeAccesses(batch);
+        batch.clear();
+        batch.add(access(1, 2, new DateTime(2009, 6, 10, 11, 0, 0, 0)));
+        batch.add(access(1, 1, new DateTime(2009, 6, 11, 11, 0, 0, 0)));
+        testable.storeAccesses(batch);
+
+        assertEquals(accesses + 5, testable.count());
+        LocalDate day = new LocalDate(2009, 6, 10);
+        Map<Integer, Long> counts = testable.calculateAccessCounts(1, day, day);
+        assertEquals(1, counts.size());
+        assertEquals(3L, (long) counts.get(2));
+        assertEquals(1L, (long) testable.calculateAccessCounts(2, day, day).get(2));
+        assertEquals(1L, (long) testable.calculateAccessCounts(1, day.plusDays(1), day.plusDays(1)).get(1));
+    }
+
+    @Test
+    public void testStoreAccesses_singleSumRowPerDay() {
+        executeClassSql();
+        List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>();
+        batch.add(access(1, 2, new DateTime(2009, 6, 10, 9, 0, 0, 0)));
+        testable.storeAccesses(batch);
+        testable.storeAccesses(batch);
+
+        assertEquals(1, simpleJdbcTemplate.queryForInt(
+                "SELECT COUNT(*) FROM story_access_sums WHERE user_id = 1 AND story_id = 2"));
+        assertEquals(2L, simpleJdbcTemplate.queryForLong(
+                "SELECT accessCount FROM story_access_sums WHERE user_id = 1 AND story_id = 2"));
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void testStoreAccesses_duplicateSumRowRejected() {
+        executeClassSql();
+        List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>();
+        batch.add(access(1, 2, new DateTime(2009, 6, 10, 9, 0, 0, 0)));
+        testable.storeAccesses(batch);
+        // A concurrent writer that missed the existing row
+        simpleJdbcTemplate.update("INSERT INTO story_access_sums"
+                + " (user_id, story_id, date, accessCount) VALUES (1, 2, '2009-06-10', 1)");
+    }
+
+    @Test
+    public void testStoreAccesses_missingStory() {
+        executeClassSql();
+        int accesses = testable.count();
+        List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>();
+        batch.add(access(1, 999, new DateTime(2009, 6, 10, 9, 0, 0, 0)));
+        batch.add(access(999, 1, new DateTime(2009, 6, 10, 9, 0, 0, 0)));
+        testable.storeAccesses(batch);
+
+        assertEquals(accesses, testable.count());
+        LocalDate day = new LocalDate(2009, 6, 10);
+        assertTrue(testable.calculateAccessCounts(1, day, day).isEmpty());
+        assertTrue(testable.calculateAccessCounts(999, day, day).isEmpty());
+    }
+
+    @Test
+    public void testRebuildSums_calculateAccessCounts() {
+        executeClassSql();
+        testable.rebuildSums();
+
+        Map<Integer, Long> counts = testable.calculateAccessCounts(1, DAY, DAY.plusDays(1));
+        assertEquals(2, counts.size());
+        assertEquals(2L, (long) counts.get(1));
+        assertEquals(1L, (long) counts.get(2));
+
+        counts = testable.calculateAccessCounts(1, DAY, DAY.plusDays(4));
+        assertEquals(3L, (long) counts.get(1));
+        assertEquals(1L, (long) testable.calculateAccessCounts(2, DAY, DAY.plusDays(4)).get(1));
+        assertTrue(testable.calculateAccessCounts(2, DAY.plusDays(3), DAY.plusDays(4)).isEmpty());
+    }
+
+    @Test
+    public void testRebuildSums_replacesSums() {
+        executeClassSql();
+        List<Triple<Integer, Integer, DateTime>> batch = new ArrayList<Triple<Integer, Integer, DateTime>>();
+        batch.add(access(2, 2, new DateTime(2009, 6, 1, 9, 0, 0, 0)));
+        testable.storeAccesses(batch);
+        testable.rebuildSums();
+
+        Map<Integer, Long> counts = testable.calculateAccessCounts(2, DAY, DAY);
+        assertEquals(1, counts.size());
+        assertEquals(1L, (long) counts.get(2));
+    }
+}
@@ -0,0 +1,146 @@
+package fi.hut.soberit.agilefant.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.model.Story;
+import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+
+@ContextConfiguration
+@Transactional
+public class StoryAncestorDAOTest extends AbstractHibernateTests {
+
+    @Autowired
+    private StoryAncestorDAO testable;
+
+    @Autowired
+    private StoryDAO storyDAO;
+
+    private Set<Integer> ids(Integer... ids) {
+        return new HashSet<Integer>(Arrays.asList(ids));
+    }
+
+    private Set<Integer> descendantIds(int storyId) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Story story : testable.retrieveDescendants(storyDAO.get(storyId))) {
+            ids.add(story.getId());
+        }
+        return ids;
+    }
+
+    private int depth(int ancestorId, int descendantId) {
+        return simpleJdbcTemplate.queryForInt(
+                "SELECT depth FROM story_ancestors WHERE ancestor_id = ? AND descendant_id = ?",
+                ancestorId, descendantId);
+    }
+
+    @Test
+    public void testRebuild() {
+        executeClassSql();
+        testable.rebuild();
+
+        // Own rows and 1 + 2 + 2 + 1 + 1 ancestor rows
+        assertEquals(14, testable.count());
+        assertEquals(0, depth(3, 3));
+        assertEquals(1, depth(2, 3));
+        assertEquals(2, depth(1, 3));
+        assertEquals(1, depth(6, 7));
+    }
+
+    @Test
+    public void testRetrieveDescendants() {
+        executeClassSql();
+        testable.rebuild();
+
+        assertEquals(ids(2, 3, 4, 5), descendantIds(1));
+        assertEquals(ids(3, 4), descendantIds(2));
+        assertEquals(ids(), descendantIds(3));
+    }
+
+    @Test
+    public void testRetrieveDescendants_fetchesParents() {
+        executeClassSql();
+        testable.rebuild();
+
+        List<Story> descendants = testable.retrieveDescendants(storyDAO.get(2));
+        for (Story story : descendants) {
+            assertEquals(2, story.getParent().getId());
+            assertEquals(2, story.getBacklog().getId());
+        }
+    }
+
+    @Test
+    public void testUpdateParent_moveBranch() {
+        executeClassSql();
+        testable.rebuild();
+
+        testable.updateParent(2, 7);
+
+        assertEquals(ids(2, 3, 4, 7), descendantIds(6));
+        assertEquals(ids(5), descendantIds(1));
+        assertEquals(3, depth(6, 3));
+        assertEquals(2, depth(7, 4));
+        assertEquals(1, depth(2, 4));
+        assertEquals(0, simpleJdbcTemplate.queryForInt(
+                "SELECT COUNT(*) FROM story_ancestors WHERE ancestor_id = 1 AND descendant_id IN (2, 3, 4)"));
+    }
+
+    @Test
+    public void testUpdateParent_moveToRoot() {
+        executeClassSql();
+        testable.rebuild();
+
+        testable.updateParent(2, null);
+
+        assertEquals(ids(5), descendantIds(1));
+        assertEquals(ids(3, 4), descendantIds(2));
+        assertEquals(1, simpleJdbcTemplate.queryForInt(
+                "SELECT COUNT(*) FROM story_ancestors WHERE descendant_id = 2"));
+    }
+
+    @Test
+    public void testUpdateParent_newStory() {
+        executeClassSql();
+        testable.rebuild();
+        simpleJdbcTemplate.update("INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (8, 2, 'New', 0, 3)");
+
+        testable.updateParent(8, 3);
+
+        assertEquals(0, depth(8, 8));
+        assertEquals(1, depth(3, 8));
+        assertEquals(3, depth(1, 8));
+        assertEquals(ids(2, 3, 4, 5, 8), descendantIds(1));
+    }
+
+    @Test
+    public void testUpdateParent_underOwnBranch() {
+        executeClassSql();
+        testable.rebuild();
+
+        testable.updateParent(2, 3);
+
+        assertEquals(ids(5), descendantIds(1));
+        assertEquals(ids(3, 4), descendantIds(2));
+    }
+
+    @Test
+    public void testRemove() {
+        executeClassSql();
+        testable.rebuild();
+
+        testable.remove(5);
+
+        assertEquals(ids(2, 3, 4), descendantIds(1));
+        assertEquals(0, simpleJdbcTemplate.queryForInt(
+                "SELECT COUNT(*) FROM story_ancestors WHERE ancestor_id = 5 OR descendant_id = 5"));
+    }
+}
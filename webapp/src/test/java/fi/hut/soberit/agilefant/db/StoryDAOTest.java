@@ -1,10 +1,14 @@
 package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -21,7 +25,10 @@ import org.springframework.transaction.annotation.Transactional;
 import fi.hut.soberit.agilefant.model.Story;
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.util.AssignedWorkIndex;
+import fi.hut.soberit.agilefant.util.Pair;
 import fi.hut.soberit.agilefant.util.StoryMetrics;
+import fi.hut.soberit.agilefant.util.Triple;
 
 @ContextConfiguration
 @Transactional
@@ -31,6 +38,53 @@ public class StoryDAOTest extends AbstractHibernateTests {
     private StoryDAO storyDAO;
     
     
+    @Test
+    public void testRetrieveSearchIndexData() {
+        executeClassSql();
+        List<Triple<Integer, String, String>> data = storyDAO.retrieveSearchIndexData(1, 2);
+        assertEquals(2, data.size());
+        assertEquals(Integer.valueOf(2), data.get(0).getFirst());
+        assertEquals("Story 2", data.get(0).getSecond());
+        assertEquals(Integer.valueOf(3), data.get(1).getFirst());
+        assertEquals("Story 3", data.get(1).getSecond());
+    }
+
+    @Test
+    public void testGetBatch() {
+        executeClassSql();
+        List<Story> batch = storyDAO.getBatch(2, 3);
+        assertEquals(3, batch.size());
+        assertEquals(3, batch.get(0).getId());
+        assertEquals(4, batch.get(1).getId());
+        assertEquals(5, batch.get(2).getId());
+        assertTrue(storyDAO.getBatch(100, 10).isEmpty());
+    }
+
+    @Test
+    public void testRetrieveParentIds() {
+        executeClassSql();
+        Story story = storyDAO.get(4);
+        story.setParent(storyDAO.get(2));
+        storyDAO.store(story);
+
+        Map<Integer, Integer> parentIds = storyDAO.retrieveParentIds();
+        assertEquals(11, parentIds.size());
+        assertEquals(Integer.valueOf(1), parentIds.keySet().iterator().next());
+        assertEquals(Integer.valueOf(2), parentIds.get(4));
+        assertNull(parentIds.get(2));
+        assertTrue(parentIds.containsKey(2));
+    }
+
+    @Test
+    public void testGetDoneAndTotalStoryPointSumsByIteration() {
+        executeClassSql();
+        Map<Integer, Pair<Integer, Integer>> sums = storyDAO
+                .getDoneAndTotalStoryPointSumsByIteration(Arrays.asList(3, 4, 6));
+        assertEquals(Pair.create(9, storyDAO.getStoryPointSumByIteration(3)), sums.get(3));
+        assertEquals(Pair.create(0, storyDAO.getStoryPointSumByIteration(6)), sums.get(6));
+        assertFalse(sums.containsKey(4));
+    }
+
     @Test
     public void testGetStoryPointSumByIteration_secondBacklog() {
         executeClassSql();
@@ -134,6 +188,69 @@ public class StoryDAOTest extends AbstractHibernateTests {
        assertEquals(1, stories.get(0).getId());
    }
 
+   @Test
+   public void testRetrieveAssignedStoryEntries() {
+       executeSql("classpath:fi/hut/soberit/agilefant/db/StoryDAOTest-assignedwork-data.sql");
+       DateTime start = new DateTime(2009,6,10,0,0,0,0);
+       List<AssignedWorkIndex.StoryEntry> entries = storyDAO.retrieveAssignedStoryEntries(1,
+               new Interval(start, start.plusDays(1)));
+
+       Map<Integer, AssignedWorkIndex.StoryEntry> entriesById = new HashMap<Integer, AssignedWorkIndex.StoryEntry>();
+       for (AssignedWorkIndex.StoryEntry entry : entries) {
+           entriesById.put(entry.getStoryId(), entry);
+       }
+       assertEquals(4, entries.size());
+       assertEquals(new HashSet<Integer>(Arrays.asList(10, 11, 12, 16)), entriesById.keySet());
+
+       AssignedWorkIndex.StoryEntry entry = entriesById.get(10);
+       assertEquals("Project B", entry.getBacklogName());
+       assertEquals("Iteration", entry.getIterationName());
+       assertEquals(Integer.valueOf(1), entry.getRank());
+
+       assertEquals(Integer.valueOf(0), entriesById.get(11).getRank());
+
+       entry = entriesById.get(12);
+       assertNull(entry.getIterationName());
+       assertEquals(Integer.valueOf(2), entry.getRank());
+
+       entry = entriesById.get(16);
+       assertEquals("Product", entry.getBacklogName());
+       assertNull(entry.getRank());
+   }
+
+   @Test
+   public void testRetrieveAssignedStoryEntries_otherUser() {
+       executeSql("classpath:fi/hut/soberit/agilefant/db/StoryDAOTest-assignedwork-data.sql");
+       DateTime start = new DateTime(2009,6,10,0,0,0,0);
+       List<AssignedWorkIndex.StoryEntry> entries = storyDAO.retrieveAssignedStoryEntries(2,
+               new Interval(start, start.plusDays(1)));
+       Set<Integer> actualIds = new HashSet<Integer>();
+       for (AssignedWorkIndex.StoryEntry entry : entries) {
+           actualIds.add(entry.getStoryId());
+       }
+       assertEquals(new HashSet<Integer>(Arrays.asList(11, 17)), actualIds);
+   }
+
+   @Test
+   public void testRetrieveAssignedStoryEntries_notInTimeframe() {
+       executeSql("classpath:fi/hut/soberit/agilefant/db/StoryDAOTest-assignedwork-data.sql");
+       DateTime start = new DateTime(2009,1,10,0,0,0,0);
+       List<AssignedWorkIndex.StoryEntry> entries = storyDAO.retrieveAssignedStoryEntries(1,
+               new Interval(start, start.plusDays(1)));
+       assertEquals(1, entries.size());
+       assertEquals(16, entries.get(0).getStoryId());
+   }
+
+   @Test
+   public void testRetrieveResponsibleIds() {
+       executeSql("classpath:fi/hut/soberit/agilefant/db/StoryDAOTest-assignedwork-data.sql");
+       assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+               storyDAO.retrieveResponsibleIds(Arrays.asList(10, 11)));
+       assertEquals(new HashSet<Integer>(Arrays.asList(2)),
+               storyDAO.retrieveResponsibleIds(Arrays.asList(17)));
+       assertTrue(storyDAO.retrieveResponsibleIds(new HashSet<Integer>()).isEmpty());
+   }
+
    @Test
    public void testSearchByName() {
        String search  = "9";
@@ -1,5 +1,6 @@
 package fi.hut.soberit.agilefant.db;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -158,6 +159,25 @@ public class StoryHierarchyDAOTest extends AbstractHibernateTests {
         assertEquals(0, actual.size());
     }
     
+    @Test
+    public void testRetrieveProductStories() {
+        executeClassSql();
+        Set<Integer> actualStoryIds = new HashSet<Integer>();
+        List<Story> actual = this.testable.retrieveProductStories(product.getId());
+        for(Story story : actual) {
+            actualStoryIds.add(story.getId());
+        }
+        assertEquals(actual.size(), actualStoryIds.size());
+        assertEquals(new HashSet<Integer>(Arrays.asList(11, 12, 13, 14, 21, 22,
+                23, 24, 41, 31, 32, 33, 34)), actualStoryIds);
+    }
+
+    @Test
+    public void testRetrieveProductStories_emptyProduct() {
+        executeClassSql();
+        assertEquals(0, this.testable.retrieveProductStories(emptyProduct.getId()).size());
+    }
+    
     @Test
     public void testMaximumTreeRank() {
         executeClassSql();
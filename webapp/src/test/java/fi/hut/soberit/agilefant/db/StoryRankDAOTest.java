@@ -64,6 +64,45 @@ public class StoryRankDAOTest extends AbstractHibernateTests {
         Collection<StoryRank> actual = storyRankDAO.getIterationRanksForStories(new ArrayList<Story>());
         assertTrue(actual.isEmpty());
     }
+
+    @Test
+    public void testRetrievePreviousRank() {
+        executeClassSql();
+        StoryRank rank = storyRankDAO.get(3);
+        assertEquals(2, storyRankDAO.retrievePreviousRank(rank, null).getId());
+        assertEquals(1, storyRankDAO.retrievePreviousRank(rank, storyRankDAO.get(2)).getId());
+        assertNull(storyRankDAO.retrievePreviousRank(storyRankDAO.get(1), null));
+    }
+
+    @Test
+    public void testRetrieveNextRank() {
+        executeClassSql();
+        StoryRank rank = storyRankDAO.get(2);
+        assertEquals(3, storyRankDAO.retrieveNextRank(rank, null).getId());
+        assertEquals(4, storyRankDAO.retrieveNextRank(rank, storyRankDAO.get(3)).getId());
+        assertNull(storyRankDAO.retrieveNextRank(storyRankDAO.get(4), null));
+    }
+
+    @Test
+    public void testRetrieveNextRank_sameRankOrderedById() {
+        executeClassSql();
+        StoryRank rank = storyRankDAO.get(2);
+        storyRankDAO.get(3).setRank(rank.getRank());
+        assertEquals(3, storyRankDAO.retrieveNextRank(rank, null).getId());
+        assertEquals(2, storyRankDAO.retrievePreviousRank(storyRankDAO.get(3), null).getId());
+    }
+
+    @Test
+    public void testRetrieveFirstAndLastRank() {
+        executeClassSql();
+        Backlog backlog = new Project();
+        backlog.setId(1);
+        assertEquals(1, storyRankDAO.retrieveFirstRank(backlog, null).getId());
+        assertEquals(2, storyRankDAO.retrieveFirstRank(backlog, storyRankDAO.get(1)).getId());
+        assertEquals(4, storyRankDAO.retrieveLastRank(backlog, null).getId());
+        assertEquals(3, storyRankDAO.retrieveLastRank(backlog, storyRankDAO.get(4)).getId());
+    }
+
     private boolean checkRankExists(Collection<StoryRank> actual, int storyId, int backlogId, int rank) {
         for (StoryRank sr : actual) {
             if (sr.getStory().getId() == storyId && sr.getBacklog().getId() == backlogId && sr.getRank() == rank) {
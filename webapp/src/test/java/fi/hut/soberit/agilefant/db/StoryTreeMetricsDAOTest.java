@@ -0,0 +1,105 @@
+package fi.hut.soberit.agilefant.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.transfer.StoryTreeBranchMetrics;
+
+@ContextConfiguration
+@Transactional
+public class StoryTreeMetricsDAOTest extends AbstractHibernateTests {
+
+    private static final Integer[] NONE = {};
+
+    @Autowired
+    private StoryTreeMetricsDAO testable;
+
+    @Test
+    public void testRebuild() {
+        executeClassSql();
+        testable.rebuild();
+
+        assertEquals(8, testable.count());
+        Map<Integer, StoryTreeBranchMetrics> metrics = testable.getBranchMetrics(Arrays.asList(1, 2, 3));
+        StoryTreeBranchMetrics root = metrics.get(1);
+        assertEquals(18, root.estimatedDonePoints);
+        assertEquals(32, root.estimatedPoints);
+        assertEquals(16, root.doneLeafPoints);
+        assertEquals(30, root.leafPoints);
+        assertEquals(2, root.spentEffort);
+        assertEquals(3, root.effortLeft);
+
+        StoryTreeBranchMetrics leaf = metrics.get(3);
+        assertEquals(4, leaf.leafPoints);
+        assertEquals(0, leaf.doneLeafPoints);
+        assertEquals(1, leaf.spentEffort);
+        assertEquals(2, leaf.effortLeft);
+    }
+
+    @Test
+    public void testGetBranchMetrics_notStored() {
+        executeClassSql();
+        assertTrue(testable.getBranchMetrics(Arrays.asList(1)).isEmpty());
+    }
+
+    @Test
+    public void testUpdateBranches_calculatesMissingChildren() {
+        executeClassSql();
+        testable.updateBranches(Arrays.asList(1), Arrays.asList(NONE));
+
+        assertEquals(8, testable.count());
+        StoryTreeBranchMetrics root = testable.getBranchMetrics(Arrays.asList(1)).get(1);
+        assertEquals(32, root.estimatedPoints);
+        assertEquals(30, root.leafPoints);
+        assertEquals(3, root.effortLeft);
+    }
+
+    @Test
+    public void testUpdateBranches_updatesAncestors() {
+        executeClassSql();
+        testable.rebuild();
+        simpleJdbcTemplate.update("UPDATE stories SET storyPoints = 6, state = 5 WHERE id = 3");
+        testable.updateBranches(Arrays.asList(3), Arrays.asList(NONE));
+
+        Map<Integer, StoryTreeBranchMetrics> metrics = testable.getBranchMetrics(Arrays.asList(1, 2));
+        assertEquals(10, metrics.get(2).doneLeafPoints);
+        assertEquals(10, metrics.get(2).estimatedPoints);
+        assertEquals(32, metrics.get(1).leafPoints);
+        assertEquals(22, metrics.get(1).doneLeafPoints);
+        assertEquals(34, metrics.get(1).estimatedPoints);
+    }
+
+    @Test
+    public void testUpdateBranches_byTask() {
+        executeClassSql();
+        testable.rebuild();
+        simpleJdbcTemplate.update("UPDATE tasks SET effortleft = 600 WHERE id = 2");
+        testable.updateBranches(Collections.<Integer>emptyList(), Arrays.asList(2));
+
+        Map<Integer, StoryTreeBranchMetrics> metrics = testable.getBranchMetrics(Arrays.asList(1, 8));
+        assertEquals(10, metrics.get(8).effortLeft);
+        assertEquals(12, metrics.get(1).effortLeft);
+    }
+
+    @Test
+    public void testUpdateBranches_deletedStory() {
+        executeClassSql();
+        testable.rebuild();
+        simpleJdbcTemplate.update("DELETE FROM stories WHERE id = 7");
+        testable.updateBranches(Arrays.asList(7, 5), Arrays.asList(NONE));
+
+        assertEquals(7, testable.count());
+        Map<Integer, StoryTreeBranchMetrics> metrics = testable.getBranchMetrics(Arrays.asList(1, 5));
+        assertEquals(8, metrics.get(5).leafPoints);
+        assertEquals(26, metrics.get(1).leafPoints);
+    }
+}
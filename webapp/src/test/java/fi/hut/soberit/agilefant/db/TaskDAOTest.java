@@ -2,13 +2,14 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.hibernate.stat.Statistics;
 import org.joda.time.DateTime;
 import org.joda.time.Interval;
 import org.junit.Before;
@@ -135,6 +136,43 @@ public class TaskDAOTest extends AbstractHibernateTests {
         assertTrue(actual.isEmpty());
     }    
     
+    @Test
+    public void testRetrieveAssignedTaskIdsWithoutStory() {
+        executeClassSql();
+        DateTime start = new DateTime(2009,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(1));
+        assertEquals(Arrays.asList(2), this.taskDAO.retrieveAssignedTaskIdsWithoutStory(1, interval));
+        assertEquals(Arrays.asList(2), this.taskDAO.retrieveAssignedTaskIdsWithoutStory(2, interval));
+    }
+
+    @Test
+    public void testRetrieveAssignedTaskIdsWithoutStory_notInTimeframe() {
+        executeClassSql();
+        DateTime start = new DateTime(2008,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(1));
+        assertTrue(this.taskDAO.retrieveAssignedTaskIdsWithoutStory(1, interval).isEmpty());
+    }
+
+    @Test
+    public void testRetrieveResponsibleIds() {
+        executeClassSql();
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+                this.taskDAO.retrieveResponsibleIds(Arrays.asList(2, 3)));
+        assertEquals(new HashSet<Integer>(Arrays.asList(1)),
+                this.taskDAO.retrieveResponsibleIds(Arrays.asList(3)));
+        assertTrue(this.taskDAO.retrieveResponsibleIds(Arrays.asList(7)).isEmpty());
+    }
+
+    @Test
+    public void testRetrieveResponsibleIdsByIterations() {
+        executeClassSql();
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)),
+                this.taskDAO.retrieveResponsibleIdsByIterations(Arrays.asList(1)));
+        assertEquals(new HashSet<Integer>(Arrays.asList(3)),
+                this.taskDAO.retrieveResponsibleIdsByIterations(Arrays.asList(5)));
+        assertTrue(this.taskDAO.retrieveResponsibleIdsByIterations(Arrays.asList(4)).isEmpty());
+    }
+    
     @Test
     public void testGetUnassignedIterationTasksWithEffortLeft() {
         executeClassSql();
@@ -149,61 +187,108 @@ public class TaskDAOTest extends AbstractHibernateTests {
         assertEquals(1, actual.get(0).iterationId);
     }
     
-    Iteration iter;
-    Story story;
-    
-    @Before
-    public void setUp() {
-        iter = new Iteration();
-        story = new Story();
-    }
-    
     @Test
-    public void testGetTasksWithRankBetween_iterationTop() {
-        iter.setId(1);
+    public void testGetTasksWithEffortLeftByResponsibles() {
         executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(0, 2, iter, null);
-        assertEquals(3, actual.size());
+        DateTime start = new DateTime(2009,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(5));
+        User user = new User();
+        user.setId(1);
+        Map<Integer, List<Task>> actual = this.taskDAO
+                .getTasksWithEffortLeftByResponsibles(Arrays.asList(1, 3), interval);
+        Set<Task> expected = new HashSet<Task>();
+        expected.addAll(this.taskDAO.getIterationTasksWithEffortLeft(user, interval));
+        expected.addAll(this.taskDAO.getStoryTasksWithEffortLeft(user, interval));
+        assertEquals(5, actual.get(1).size());
+        assertEquals(expected, new HashSet<Task>(actual.get(1)));
     }
     
     @Test
-    public void testGetTasksWithRankBetween_iterationBottom() {
-        iter.setId(1);
-        executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(3, 6, iter, null);
-        assertEquals(1, actual.size());
+    public void testGetTasksWithEffortLeftByResponsibles_noUsers() {
+        DateTime start = new DateTime(2009,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(5));
+        assertTrue(this.taskDAO.getTasksWithEffortLeftByResponsibles(
+                new HashSet<Integer>(), interval).isEmpty());
     }
     
     @Test
-    public void testGetTasksWithRankBetween_iterationEmptyCollection() {
-        iter.setId(1);
+    public void testGetStoryAssignedTasksWithEffortLeftByResponsibles() {
         executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(2, 0, iter, null);
-        assertEquals(0, actual.size());
+        DateTime start = new DateTime(2009,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(5));
+        User user = new User();
+        user.setId(1);
+        Map<Integer, List<Task>> actual = this.taskDAO
+                .getStoryAssignedTasksWithEffortLeftByResponsibles(Arrays.asList(1), interval);
+        List<Task> expected = this.taskDAO.getStoryAssignedTasksWithEffortLeft(user, interval);
+        assertEquals(new HashSet<Task>(expected), new HashSet<Task>(
+                actual.containsKey(1) ? actual.get(1) : Arrays.<Task>asList()));
     }
     
     @Test
-    public void testGetTasksWithRankBetween_storyTop() {
-        story.setId(1);
+    public void testGetUnassignedTasksWithEffortLeftByAssignees() {
         executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(0, 0, null, story);
-        assertEquals(1, actual.size());
+        DateTime start = new DateTime(2009,6,10,1,0,0,0);
+        Interval interval = new Interval(start, start.plusDays(5));
+        Map<Integer, List<UnassignedLoadTO>> actual = this.taskDAO
+                .getUnassignedTasksWithEffortLeftByAssignees(Arrays.asList(1, 3), interval);
+        User user = new User();
+        user.setId(1);
+        List<UnassignedLoadTO> expected = new ArrayList<UnassignedLoadTO>();
+        expected.addAll(this.taskDAO.getUnassignedIterationTasksWithEffortLeft(user, interval));
+        expected.addAll(this.taskDAO.getUnassignedStoryTasksWithEffortLeft(user, interval));
+        assertEquals(3, actual.get(1).size());
+        assertEquals(toStrings(expected), toStrings(actual.get(1)));
+    }
+    
+    private Set<String> toStrings(List<UnassignedLoadTO> rows) {
+        Set<String> result = new HashSet<String>();
+        for (UnassignedLoadTO row : rows) {
+            result.add(row.iterationId + ":" + row.effortLeft.longValue() + ":" + row.availability);
+        }
+        return result;
+    }
+    
+    Iteration iter;
+    Story story;
+    
+    @Before
+    public void setUp() {
+        iter = new Iteration();
+        story = new Story();
     }
     
     @Test
-    public void testGetTasksWithRankBetween_storyBottom() {
-        story.setId(3);
+    public void testShiftRanksBetween_story() {
+        story.setId(1);
         executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(1, 5, null, story);
-        assertEquals(1, actual.size());
+        Task loaded = taskDAO.get(4);
+        taskDAO.shiftRanksBetween(1, 2, -1, null, story);
+        assertEquals(0, loaded.getRank().intValue());
+        assertEquals(1, taskDAO.get(5).getRank().intValue());
+        assertEquals(3, taskDAO.get(6).getRank().intValue());
+        assertEquals(3, taskDAO.get(8).getRank().intValue());
     }
-    
+
     @Test
-    public void testGetTasksWithRankBetween_storyEmptyCollection() {
+    public void testShiftRanksBetween_otherContextsNotRefreshed() {
         story.setId(1);
         executeClassSql();
-        Collection<Task> actual = taskDAO.getTasksWithRankBetween(2, 1, null, story);
-        assertEquals(0, actual.size());
+        Task loaded = taskDAO.get(4);
+        Task otherStory = taskDAO.get(12);
+        Task otherIteration = taskDAO.get(2);
+        Statistics statistics = sessionFactory.getStatistics();
+        statistics.clear();
+        statistics.setStatisticsEnabled(true);
+        try {
+            taskDAO.shiftRanksBetween(1, 2, -1, null, story);
+            assertEquals(1, statistics.getEntityLoadCount());
+        } finally {
+            statistics.setStatisticsEnabled(false);
+        }
+        assertEquals(0, loaded.getRank().intValue());
+        assertEquals(1, otherStory.getRank().intValue());
+        assertEquals(1, otherIteration.getRank().intValue());
     }
     
     
@@ -0,0 +1,52 @@
+package fi.hut.soberit.agilefant.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
+
+@ContextConfiguration
+@Transactional
+public class TeamDAOTest extends AbstractHibernateTests {
+
+    @Autowired
+    private TeamDAO teamDAO;
+
+    @Test
+    public void testGetByTeamName() {
+        executeClassSql();
+        assertEquals(2, teamDAO.getByTeamName("team2").getId());
+        assertNull(teamDAO.getByTeamName("Team2"));
+    }
+
+    @Test
+    public void testRetrieveAutocompleteEntries() {
+        executeClassSql();
+        List<AutocompleteCatalog.TeamEntry> entries = teamDAO.retrieveAutocompleteEntries();
+        assertEquals(3, entries.size());
+
+        assertEquals(1, entries.get(0).getId());
+        assertEquals("team1", entries.get(0).getName());
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2)), entries.get(0).getUserIds());
+
+        assertEquals(2, entries.get(1).getId());
+        assertEquals(new HashSet<Integer>(Arrays.asList(1)), entries.get(1).getUserIds());
+
+        assertEquals("empty", entries.get(2).getName());
+        assertTrue(entries.get(2).getUserIds().isEmpty());
+    }
+
+    @Test
+    public void testRetrieveAutocompleteEntries_noTeams() {
+        assertTrue(teamDAO.retrieveAutocompleteEntries().isEmpty());
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import fi.hut.soberit.agilefant.model.User;
 import fi.hut.soberit.agilefant.test.AbstractHibernateTests;
+import fi.hut.soberit.agilefant.util.AutocompleteCatalog;
 
 @ContextConfiguration
 @Transactional
@@ -112,5 +113,18 @@ public class UserDAOTest extends AbstractHibernateTests {
         Collection<User> users = userDAO.getMultiple(Arrays.asList(1));
         assertEquals(1, users.size());
     }
+
+    @Test
+    public void testRetrieveAutocompleteEntries() {
+        executeClassSql();
+        List<AutocompleteCatalog.UserEntry> entries = userDAO.retrieveAutocompleteEntries();
+        assertEquals(4, entries.size());
+        assertEquals(1, entries.get(0).getId());
+        assertEquals("user1", entries.get(0).getLoginName());
+        assertFalse(entries.get(2).isEnabled());
+        assertEquals(4, entries.get(3).getId());
+        assertEquals("Has full name", entries.get(3).getFullName());
+        assertTrue(entries.get(3).isEnabled());
+    }
     
 }
@@ -2,8 +2,6 @@ package fi.hut.soberit.agilefant.db;
 
 import static org.junit.Assert.*;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -70,25 +68,15 @@ public class WhatsNextEntryDAOTest extends AbstractHibernateTests {
     }
     
     @Test
-    public void testGetTasksWithRankBetween() {
-        // Ranks: 2,3,5
-        Collection<WhatsNextEntry> entries= testable.getTasksWithRankBetween(2, 5, user1);
-        assertEquals(3, entries.size());
-        
-        ArrayList<Integer> ids = new ArrayList<Integer>(Arrays.asList(new Integer[]{ 4, 7, 8 }));
-        for (WhatsNextEntry entry: entries) {
-            ids.remove((Integer)entry.getId());
-        }
-        
-        // all ids found.
-        
-        assertEquals(0, ids.size());
-    }
-    
-    @Test
-    public void testGetTasksWithRankBetween_notFound() {
-        Collection<WhatsNextEntry> entries= testable.getTasksWithRankBetween(2, 5, user3);
-        assertEquals(0, entries.size());
+    public void testShiftRanksBetween() {
+        WhatsNextEntry loaded = testable.get(4);
+        WhatsNextEntry otherUsers = testable.get(9);
+        testable.shiftRanksBetween(2, 5, 1, user1);
+        assertEquals(3, loaded.getRank().intValue());
+        assertEquals(4, testable.get(7).getRank().intValue());
+        assertEquals(6, testable.get(8).getRank().intValue());
+        assertEquals(0, testable.get(1).getRank().intValue());
+        assertEquals(3, otherUsers.getRank().intValue());
     }
     
     @Test
@@ -0,0 +1,181 @@
+package fi.hut.soberit.agilefant.exportimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.typesafe.config.ConfigFactory;
+
+import fi.hut.soberit.agilefant.business.ExportImportBusiness;
+import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpHandler;
+import fi.hut.soberit.agilefant.business.ExportImportBusiness.OrganizationDumpReader;
+import fi.hut.soberit.agilefant.model.Product;
+import fi.hut.soberit.agilefant.model.Project;
+import fi.hut.soberit.agilefant.model.Story;
+
+public class ExportImportTest {
+
+    private ExportImport exportImport;
+
+    @Before
+    public void setUp() {
+        exportImport = new ExportImport();
+        exportImport.setConfig(ConfigFactory.parseString("agilefant.version = \"3.5.4\""));
+    }
+
+    private Project createProject() {
+        Product product = new Product();
+        product.setId(1);
+        product.setName("Product");
+        Project project = new Project();
+        project.setId(2);
+        project.setName("Project");
+        project.setParent(product);
+        return project;
+    }
+
+    private Story createStory(int id, Project project) {
+        Story story = new Story();
+        story.setId(id);
+        story.setName("Story " + id);
+        story.setBacklog(project);
+        return story;
+    }
+
+    /**
+     * Passes the given objects as the given properties, the way the business
+     * passes them after clearing the session between batches.
+     */
+    private ExportImportBusiness exportingBusiness(final Object... propertiesAndObjects) {
+        return new ExportImportBusiness() {
+            public void exportOrganization(OrganizationDumpHandler handler) {
+                for (int i = 0; i < propertiesAndObjects.length; i += 2) {
+                    handler.startProperty((String) propertiesAndObjects[i]);
+                    for (Object object : (List<?>) propertiesAndObjects[i + 1]) {
+                        handler.handleObject(object);
+                    }
+                    handler.endProperty();
+                }
+            }
+
+            public void importOrganization(OrganizationDumpReader reader) {
+            }
+        };
+    }
+
+    /**
+     * Collects the read objects by property. The given replacement is applied
+     * to the read objects after each property.
+     */
+    private ExportImportBusiness importingBusiness(
+            final Map<String, List<Object>> imported,
+            final Function<Object, Object> replacement) {
+        return new ExportImportBusiness() {
+            public void exportOrganization(OrganizationDumpHandler handler) {
+            }
+
+            public void importOrganization(final OrganizationDumpReader reader) {
+                reader.read(new OrganizationDumpHandler() {
+                    private List<Object> objects;
+
+                    public void startProperty(String property) {
+                        objects = new ArrayList<Object>();
+                        imported.put(property, objects);
+                    }
+
+                    public void handleObject(Object object) {
+                        objects.add(object);
+                    }
+
+                    public void endProperty() {
+                        reader.replaceReadObjects(replacement);
+                    }
+                });
+            }
+        };
+    }
+
+    private Map<String, List<Object>> importJson(ByteArrayOutputStream out,
+            Function<Object, Object> replacement) throws Exception {
+        Map<String, List<Object>> imported = new HashMap<String, List<Object>>();
+        exportImport.fromJson(new ByteArrayInputStream(out.toByteArray()),
+                importingBusiness(imported, replacement));
+        return imported;
+    }
+
+    @Test
+    public void testToJson_entitiesFromDifferentBatches() throws Exception {
+        Project project = createProject();
+        // The stories refer to copies of the project, as if loaded in later batches
+        Story first = createStory(3, createProject());
+        Story second = createStory(4, createProject());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportImport.toJson(out, exportingBusiness(
+                "products", Arrays.asList(project.getParent()),
+                "projects", Arrays.asList(project),
+                "stories", Arrays.asList(first, second)));
+
+        Map<String, List<Object>> imported = importJson(out, Functions.<Object>identity());
+
+        assertEquals(1, imported.get("products").size());
+        assertEquals(1, imported.get("projects").size());
+        assertEquals(2, imported.get("stories").size());
+        Project importedProject = (Project) imported.get("projects").get(0);
+        assertSame(imported.get("products").get(0), importedProject.getParent());
+        Story importedFirst = (Story) imported.get("stories").get(0);
+        Story importedSecond = (Story) imported.get("stories").get(1);
+        assertEquals("Story 3", importedFirst.getName());
+        assertEquals("Story 4", importedSecond.getName());
+        assertSame(importedProject, importedFirst.getBacklog());
+        assertSame(importedProject, importedSecond.getBacklog());
+    }
+
+    @Test
+    public void testFromJson_replacedObjectsAreReferenced() throws Exception {
+        Project project = createProject();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportImport.toJson(out, exportingBusiness(
+                "products", Arrays.asList(project.getParent()),
+                "projects", Arrays.asList(project),
+                "stories", Arrays.asList(createStory(3, project))));
+
+        final Project replacementProject = new Project();
+        Map<String, List<Object>> imported = importJson(out, new Function<Object, Object>() {
+            public Object apply(Object input) {
+                return (input instanceof Project) ? replacementProject : input;
+            }
+        });
+
+        Story importedStory = (Story) imported.get("stories").get(0);
+        assertSame(replacementProject, importedStory.getBacklog());
+    }
+
+    @Test
+    public void testToJson_doesNotCloseStream() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        exportImport.toJson(out, exportingBusiness());
+
+        assertEquals(false, closed[0]);
+        assertTrue(importJson(out, Functions.<Object>identity()).isEmpty());
+    }
+}
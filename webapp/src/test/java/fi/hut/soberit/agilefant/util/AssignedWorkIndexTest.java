@@ -0,0 +1,57 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class AssignedWorkIndexTest {
+
+    private static AssignedWorkIndex.StoryEntry entry(int id, String backlogName,
+            String iterationName, Integer iterationRank, Integer projectRank) {
+        return new AssignedWorkIndex.StoryEntry(id, backlogName, iterationName,
+                iterationRank, projectRank);
+    }
+
+    @Test
+    public void testStoryOrder() {
+        AssignedWorkIndex index = new AssignedWorkIndex(new LocalDate(), Arrays.asList(
+                entry(1, "b project", "Iteration", 0, null),
+                entry(2, "A project", "iteration 2", 0, null),
+                entry(3, "A project", null, null, 5),
+                entry(4, null, "Standalone", 3, null),
+                entry(5, "A project", "Iteration 1", null, null),
+                entry(6, "A project", "Iteration 1", 2, 0),
+                entry(7, "A project", "Iteration 1", null, 1)),
+                Collections.<Integer>emptyList());
+        assertEquals(Arrays.asList(4, 3, 7, 6, 5, 2, 1), index.getStoryIds());
+    }
+
+    @Test
+    public void testStoryOrder_sameRank() {
+        AssignedWorkIndex index = new AssignedWorkIndex(new LocalDate(), Arrays.asList(
+                entry(9, "Project", null, null, null),
+                entry(8, "Project", null, null, null)),
+                Collections.<Integer>emptyList());
+        assertEquals(Arrays.asList(8, 9), index.getStoryIds());
+    }
+
+    @Test
+    public void testRank() {
+        assertEquals(Integer.valueOf(2), entry(1, null, null, 2, 5).getRank());
+        assertEquals(Integer.valueOf(5), entry(1, null, null, null, 5).getRank());
+        assertNull(entry(1, null, null, null, null).getRank());
+    }
+
+    @Test
+    public void testTaskIds() {
+        AssignedWorkIndex index = new AssignedWorkIndex(new LocalDate(),
+                Collections.<AssignedWorkIndex.StoryEntry>emptyList(),
+                Arrays.asList(3, 1, 2));
+        assertEquals(Arrays.asList(3, 1, 2), index.getTaskIds());
+        assertTrue(index.getStoryIds().isEmpty());
+    }
+}
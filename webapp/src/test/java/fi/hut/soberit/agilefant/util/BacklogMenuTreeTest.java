@@ -0,0 +1,130 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.transfer.BacklogType;
+
+public class BacklogMenuTreeTest {
+
+    private BacklogMenuTree tree;
+
+    @Before
+    public void setUp() {
+        tree = new BacklogMenuTree();
+        tree.load(Arrays.asList(
+                product(1, "zzz"),
+                product(2, "Aaa"),
+                project(3, 1, new DateTime(2009, 6, 1, 0, 0, 0, 0)),
+                project(4, 1, new DateTime(2009, 1, 1, 0, 0, 0, 0)),
+                iteration(5, 4, new DateTime(2009, 2, 1, 0, 0, 0, 0)),
+                iteration(6, null, null)));
+    }
+
+    @Test
+    public void testGetEntries_menuOrder() {
+        assertEquals(Arrays.asList(2, 6, 1, 4, 5, 3), getIds(tree.getEntries()));
+    }
+
+    @Test
+    public void testPut_added() {
+        tree.put(project(7, 2, null));
+        tree.put(project(8, 2, new DateTime(2010, 1, 1, 0, 0, 0, 0)));
+        assertEquals(Arrays.asList(2, 8, 7, 6, 1, 4, 5, 3), getIds(tree.getEntries()));
+    }
+
+    @Test
+    public void testPut_renamed() {
+        tree.put(product(1, "Abc"));
+        assertEquals(Arrays.asList(2, 1, 4, 5, 3, 6), getIds(tree.getEntries()));
+        assertEquals("Abc", tree.getEntry(1).getName());
+    }
+
+    @Test
+    public void testPut_movedWithChildren() {
+        tree.put(project(4, 2, new DateTime(2009, 1, 1, 0, 0, 0, 0)));
+        assertEquals(Arrays.asList(2, 4, 5, 6, 1, 3), getIds(tree.getEntries()));
+    }
+
+    @Test
+    public void testRemove_subtree() {
+        tree.remove(4);
+        assertEquals(Arrays.asList(2, 6, 1, 3), getIds(tree.getEntries()));
+        assertNull(tree.getEntry(5));
+    }
+
+    @Test
+    public void testGetChangesSince() {
+        long version = tree.getVersion();
+        tree.put(product(2, "Bbb"));
+        tree.remove(4);
+        BacklogMenuTree.Changes changes = tree.getChangesSince(version);
+        assertEquals(tree.getVersion(), changes.getVersion());
+        assertEquals(Arrays.asList(2), getIds(changes.getChanged()));
+        assertEquals(2, changes.getRootId(2));
+        assertEquals(Arrays.asList(5, 4), changes.getRemovedIds());
+    }
+
+    @Test
+    public void testGetChangesSince_movedDescendants() {
+        long version = tree.getVersion();
+        tree.put(project(4, 2, new DateTime(2009, 1, 1, 0, 0, 0, 0)));
+        BacklogMenuTree.Changes changes = tree.getChangesSince(version);
+        assertEquals(Arrays.asList(4, 5), getIds(changes.getChanged()));
+        assertEquals(2, changes.getRootId(5));
+    }
+
+    @Test
+    public void testGetChangesSince_unchanged() {
+        long version = tree.getVersion();
+        tree.put(product(1, "zzz"));
+        assertEquals(version, tree.getVersion());
+        assertTrue(tree.getChangesSince(version).getChanged().isEmpty());
+    }
+
+    @Test
+    public void testGetChangesSince_unknownVersion() {
+        long version = tree.getVersion();
+        assertNull(tree.getChangesSince(version - 1));
+        assertNull(tree.getChangesSince(version + 1));
+    }
+
+    @Test
+    public void testGetChangesSince_logTruncated() {
+        long version = tree.getVersion();
+        for (int i = 0; i <= BacklogMenuTree.MAX_LOGGED_CHANGES; i++) {
+            tree.put(product(1, "Product " + i));
+        }
+        assertNull(tree.getChangesSince(version));
+        assertNotNull(tree.getChangesSince(version + 1));
+    }
+
+    private static List<Integer> getIds(List<BacklogMenuTree.Entry> entries) {
+        List<Integer> ids = new ArrayList<Integer>();
+        for (BacklogMenuTree.Entry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids;
+    }
+
+    private static BacklogMenuTree.Entry product(int id, String name) {
+        return new BacklogMenuTree.Entry(id, null, BacklogType.PRODUCT, name, null, null);
+    }
+
+    private static BacklogMenuTree.Entry project(int id, Integer parentId, DateTime startDate) {
+        return new BacklogMenuTree.Entry(id, parentId, BacklogType.PROJECT, "Project " + id,
+                startDate, null);
+    }
+
+    private static BacklogMenuTree.Entry iteration(int id, Integer parentId, DateTime startDate) {
+        return new BacklogMenuTree.Entry(id, parentId, BacklogType.ITERATION, "Iteration " + id,
+                startDate, null);
+    }
+}
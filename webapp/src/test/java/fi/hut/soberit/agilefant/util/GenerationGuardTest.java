@@ -0,0 +1,54 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class GenerationGuardTest {
+
+    private GenerationGuard guard = new GenerationGuard();
+
+    private int clears = 0;
+
+    private Runnable clear = new Runnable() {
+        public void run() {
+            clears++;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testIsCurrent() {
+        long generation = guard.current();
+        assertTrue(guard.isCurrent(generation));
+        guard.invalidate(clear);
+        assertFalse(guard.isCurrent(generation));
+        assertTrue(guard.isCurrent(guard.current()));
+        assertEquals(1, clears);
+    }
+
+    @Test
+    public void testInvalidate_againAfterTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        guard.invalidate(clear);
+        assertEquals(1, clears);
+        long generation = guard.current();
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        assertEquals(1, synchronizations.size());
+        synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(2, clears);
+        assertFalse(guard.isCurrent(generation));
+    }
+}
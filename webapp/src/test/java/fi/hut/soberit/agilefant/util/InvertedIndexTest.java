@@ -0,0 +1,108 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.model.Backlog;
+import fi.hut.soberit.agilefant.model.Iteration;
+import fi.hut.soberit.agilefant.model.Project;
+
+public class InvertedIndexTest {
+
+    private InvertedIndex index;
+
+    @Before
+    public void setUp() {
+        index = new InvertedIndex();
+        index.put(1, Iteration.class, "Sprint 12", "Login page <b>refactoring</b>");
+        index.put(2, Project.class, "Login service", null);
+        index.put(3, Iteration.class, "Sprint 13", "Reporting");
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("foo", "bar", "42", "\u00e4\u00f6"),
+                InvertedIndex.tokenize(" Foo-<i>BAR</i>, 42 \u00c4\u00d6 "));
+        assertTrue(InvertedIndex.tokenize(null).isEmpty());
+        assertTrue(InvertedIndex.tokenize(" - ").isEmpty());
+    }
+
+    @Test
+    public void testSearch_prefix() {
+        assertEquals(Arrays.asList(1, 3), index.search("spr", Backlog.class, 10));
+    }
+
+    @Test
+    public void testSearch_allTermsMustMatch() {
+        assertEquals(Arrays.asList(3), index.search("sprint 13", Backlog.class, 10));
+        assertTrue(index.search("sprint service", Backlog.class, 10).isEmpty());
+    }
+
+    @Test
+    public void testSearch_descriptionMatched() {
+        assertEquals(Arrays.asList(3), index.search("reporting", Backlog.class, 10));
+        assertEquals(Arrays.asList(1), index.search("sprint refact", Backlog.class, 10));
+    }
+
+    @Test
+    public void testSearch_shortTermsMatchWholeTerms() {
+        index.put(4, Project.class, "Release 1", null);
+        assertEquals(Arrays.asList(4), index.search("1", Backlog.class, 10));
+        assertTrue(index.search("lo", Backlog.class, 10).isEmpty());
+        assertEquals(Arrays.asList(2, 1), index.search("log", Backlog.class, 10));
+    }
+
+    @Test
+    public void testSearch_nameMatchesRankedFirst() {
+        assertEquals(Arrays.asList(2, 1), index.search("login", Backlog.class, 10));
+    }
+
+    @Test
+    public void testSearch_exactTermRankedBeforePrefix() {
+        index.put(4, Project.class, "Refactor", null);
+        index.put(5, Project.class, "Refactoring", null);
+        assertEquals(Arrays.asList(4, 5, 1), index.search("refactor", Backlog.class, 10));
+    }
+
+    @Test
+    public void testSearch_htmlTagsNotIndexed() {
+        assertTrue(index.search("b", Backlog.class, 10).isEmpty());
+    }
+
+    @Test
+    public void testSearch_type() {
+        assertEquals(Arrays.asList(2), index.search("login", Project.class, 10));
+    }
+
+    @Test
+    public void testSearch_maxResults() {
+        assertEquals(Arrays.asList(1), index.search("sprint", Backlog.class, 1));
+    }
+
+    @Test
+    public void testPut_replaces() {
+        index.put(1, Iteration.class, "Sprint 14", null);
+        assertTrue(index.search("login", Iteration.class, 10).isEmpty());
+        assertEquals(Arrays.asList(1), index.search("14", Backlog.class, 10));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        assertFalse(index.putIfAbsent(1, Iteration.class, "Other", null));
+        assertTrue(index.putIfAbsent(4, Iteration.class, "Other", null));
+        assertEquals(Arrays.asList(1), index.search("login page", Backlog.class, 10));
+        assertEquals(Arrays.asList(4), index.search("other", Backlog.class, 10));
+    }
+
+    @Test
+    public void testRemove() {
+        index.remove(2);
+        assertEquals(Arrays.asList(1), index.search("login", Backlog.class, 10));
+        assertEquals(2, index.size());
+    }
+}
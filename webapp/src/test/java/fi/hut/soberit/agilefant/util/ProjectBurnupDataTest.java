@@ -0,0 +1,88 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+public class ProjectBurnupDataTest {
+
+    private static final DateTime START = new DateTime(2009, 1, 1, 0, 0, 0, 0);
+
+    private static List<ProjectBurnupData.Entry> entries(ProjectBurnupData data) {
+        List<ProjectBurnupData.Entry> entries = new ArrayList<ProjectBurnupData.Entry>();
+        for (ProjectBurnupData.Entry entry : data) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    @Test
+    public void testAppend() {
+        ProjectBurnupData data = new ProjectBurnupData();
+        for (int i = 0; i < 40; i++) {
+            assertTrue(data.append(i + 1, new ProjectBurnupData.Entry(START.plusDays(i), i, i, i)));
+        }
+        List<ProjectBurnupData.Entry> entries = entries(data);
+        assertEquals(40, entries.size());
+        assertEquals(START.plusDays(39).getMillis(), entries.get(39).timestamp.getMillis());
+        assertEquals(39, entries.get(39).estimateSum);
+    }
+
+    @Test
+    public void testAppend_replacesLastEntry() {
+        ProjectBurnupData data = new ProjectBurnupData();
+        data.append(1, new ProjectBurnupData.Entry(START, 10, 0, 10));
+        data.append(2, new ProjectBurnupData.Entry(START.plusDays(1), 20, 0, 20));
+        long version = data.getVersion();
+
+        assertTrue(data.append(2, new ProjectBurnupData.Entry(START.plusDays(2), 30, 5, 30)));
+        List<ProjectBurnupData.Entry> entries = entries(data);
+        assertEquals(2, entries.size());
+        assertEquals(START.plusDays(2).getMillis(), entries.get(1).timestamp.getMillis());
+        assertEquals(30, entries.get(1).estimateSum);
+        assertEquals(5, entries.get(1).doneSum);
+        assertTrue(data.getVersion() != version);
+    }
+
+    @Test
+    public void testAppend_mergesSameTimestamp() {
+        ProjectBurnupData data = new ProjectBurnupData();
+        data.append(1, new ProjectBurnupData.Entry(START, 10, 6, 15));
+        data.append(2, new ProjectBurnupData.Entry(START, 20, 5, 20));
+        List<ProjectBurnupData.Entry> entries = entries(data);
+        assertEquals(1, entries.size());
+        assertEquals(20, entries.get(0).estimateSum);
+        assertEquals(6, entries.get(0).doneSum);
+        assertEquals(20, entries.get(0).branchMax);
+
+        // The merged point cannot be replaced by one of its entries
+        assertFalse(data.append(2, new ProjectBurnupData.Entry(START.plusDays(1), 30, 5, 30)));
+    }
+
+    @Test
+    public void testAppend_olderEntry() {
+        ProjectBurnupData data = new ProjectBurnupData();
+        data.append(1, new ProjectBurnupData.Entry(START.plusDays(1), 10, 0, 10));
+        long version = data.getVersion();
+        assertFalse(data.append(2, new ProjectBurnupData.Entry(START, 20, 0, 20)));
+        assertEquals(1, data.size());
+        assertEquals(version, data.getVersion());
+    }
+
+    @Test
+    public void testIterator_snapshot() {
+        ProjectBurnupData data = new ProjectBurnupData();
+        data.append(1, new ProjectBurnupData.Entry(START, 10, 0, 10));
+        int count = 0;
+        for (ProjectBurnupData.Entry entry : data) {
+            data.append(2, new ProjectBurnupData.Entry(entry.timestamp.plusDays(1), 10, 0, 10));
+            count++;
+        }
+        assertEquals(1, count);
+        assertEquals(2, data.size());
+    }
+}
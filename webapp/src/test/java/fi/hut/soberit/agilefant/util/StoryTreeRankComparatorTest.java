@@ -0,0 +1,41 @@
+package fi.hut.soberit.agilefant.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import fi.hut.soberit.agilefant.model.Story;
+
+public class StoryTreeRankComparatorTest {
+
+    private StoryTreeRankComparator comparator = new StoryTreeRankComparator();
+
+    private Story createStory(int treeRank) {
+        Story story = new Story();
+        story.setTreeRank(treeRank);
+        return story;
+    }
+
+    @Test
+    public void compare() {
+        Story first = createStory(1);
+        Story second = createStory(20);
+        assertTrue(comparator.compare(first, second) < 0);
+        assertTrue(comparator.compare(second, first) > 0);
+        assertEquals(0, comparator.compare(first, createStory(1)));
+    }
+
+    @Test
+    public void compare_sort() {
+        Story first = createStory(-5);
+        Story second = createStory(0);
+        Story third = createStory(Integer.MAX_VALUE);
+        List<Story> stories = Arrays.asList(third, first, second);
+        Collections.sort(stories, comparator);
+        assertEquals(Arrays.asList(first, second, third), stories);
+    }
+}
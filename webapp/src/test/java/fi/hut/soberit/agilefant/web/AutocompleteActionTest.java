@@ -8,24 +8,28 @@ import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import com.opensymphony.xwork2.Action;
 
-import fi.hut.soberit.agilefant.business.TransferObjectBusiness;
+import fi.hut.soberit.agilefant.business.AutocompleteBusiness;
+import fi.hut.soberit.agilefant.model.User;
+import fi.hut.soberit.agilefant.security.SecurityUtil;
 import fi.hut.soberit.agilefant.transfer.AutocompleteDataNode;
 
 public class AutocompleteActionTest {
 
     private AutocompleteAction autocompleteAction;
-    private TransferObjectBusiness toBusiness;
+    private AutocompleteBusiness autocompleteBusiness;
     
     AutocompleteDataNode node;
     
     @Before
     public void setUp() {
         autocompleteAction = new AutocompleteAction();
-        toBusiness = createMock(TransferObjectBusiness.class);
-        autocompleteAction.setTransferObjectBusiness(toBusiness);
+        autocompleteBusiness = createMock(AutocompleteBusiness.class);
+        autocompleteAction.setAutocompleteBusiness(autocompleteBusiness);
     }
     
     @Before
@@ -34,18 +38,18 @@ public class AutocompleteActionTest {
     }
 
     private void replayAll() {
-        replay(toBusiness);
+        replay(autocompleteBusiness);
     }
     
     private void verifyAll() {
-        verify(toBusiness);
+        verify(autocompleteBusiness);
     }
 
     @Test
     public void testUserTeamData() {
         
-        expect(toBusiness.constructUserAutocompleteData()).andReturn(Arrays.asList(node));
-        expect(toBusiness.constructTeamAutocompleteData(true)).andReturn(Arrays.asList(node));
+        expect(autocompleteBusiness.constructUserAutocompleteData(null)).andReturn(Arrays.asList(node));
+        expect(autocompleteBusiness.constructTeamAutocompleteData(true, null)).andReturn(Arrays.asList(node));
         
         replayAll();
         autocompleteAction.userTeamData();
@@ -57,7 +61,7 @@ public class AutocompleteActionTest {
     public void testBacklogData() {
         autocompleteAction.setBacklogId(123);
         List<AutocompleteDataNode> list = Arrays.asList(node, node);
-        expect(toBusiness.constructBacklogAutocompleteData(123)).andReturn(list);
+        expect(autocompleteBusiness.constructBacklogAutocompleteData(123, null)).andReturn(list);
         
         replayAll();
         assertEquals(Action.SUCCESS, autocompleteAction.backlogData());
@@ -69,7 +73,7 @@ public class AutocompleteActionTest {
     @Test
     public void testProductData() {
         List<AutocompleteDataNode> list = Arrays.asList(node, node);
-        expect(toBusiness.constructProductAutocompleteData()).andReturn(list);
+        expect(autocompleteBusiness.constructProductAutocompleteData(null)).andReturn(list);
         
         replayAll();
         assertEquals(Action.SUCCESS, autocompleteAction.productData());
@@ -80,8 +84,9 @@ public class AutocompleteActionTest {
     
     @Test
     public void testProjectData() {
+        autocompleteAction.setTerm("pro");
         List<AutocompleteDataNode> list = Arrays.asList(node, node);
-        expect(toBusiness.constructProjectAutocompleteData()).andReturn(list);
+        expect(autocompleteBusiness.constructProjectAutocompleteData("pro")).andReturn(list);
         
         replayAll();
         assertEquals(Action.SUCCESS, autocompleteAction.projectData());
@@ -92,7 +97,7 @@ public class AutocompleteActionTest {
     
     @Test
     public void testTeamData() {
-        expect(toBusiness.constructTeamAutocompleteData(false)).andReturn(Arrays.asList(node));
+        expect(autocompleteBusiness.constructTeamAutocompleteData(false, null)).andReturn(Arrays.asList(node));
         
         replayAll();
         autocompleteAction.teamData();
@@ -103,7 +108,7 @@ public class AutocompleteActionTest {
     @Test
     public void testCurrentIterationData() {
         List<AutocompleteDataNode> list = Arrays.asList(node, node);
-        expect(toBusiness.constructCurrentIterationAutocompleteData()).andReturn(list);
+        expect(autocompleteBusiness.constructCurrentIterationAutocompleteData(null)).andReturn(list);
         
         replayAll();
         assertEquals(Action.SUCCESS, autocompleteAction.currentIterationData());
@@ -111,4 +116,49 @@ public class AutocompleteActionTest {
         
         assertEquals(list, autocompleteAction.getAutocompleteData());
     }
+
+    @Test
+    public void testBacklogData_notModified() {
+        User user = new User();
+        SecurityUtil.setLoggedUser(user);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"1-2\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        autocompleteAction.setServletRequest(request);
+        autocompleteAction.setServletResponse(response);
+
+        autocompleteAction.setBacklogId(123);
+        expect(autocompleteBusiness.getAutocompleteDataETag(user)).andReturn("1-2");
+
+        replayAll();
+        assertEquals(Action.NONE, autocompleteAction.backlogData());
+        verifyAll();
+
+        assertEquals(304, response.getStatus());
+        assertNull(autocompleteAction.getAutocompleteData());
+    }
+
+    @Test
+    public void testBacklogData_modified() {
+        User user = new User();
+        SecurityUtil.setLoggedUser(user);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"1-2\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        autocompleteAction.setServletRequest(request);
+        autocompleteAction.setServletResponse(response);
+
+        autocompleteAction.setBacklogId(123);
+        List<AutocompleteDataNode> list = Arrays.asList(node);
+        expect(autocompleteBusiness.getAutocompleteDataETag(user)).andReturn("1-3");
+        expect(autocompleteBusiness.constructBacklogAutocompleteData(123, null)).andReturn(list);
+
+        replayAll();
+        assertEquals(Action.SUCCESS, autocompleteAction.backlogData());
+        verifyAll();
+
+        assertEquals("\"1-3\"", response.getHeader("ETag"));
+        assertEquals("no-cache", response.getHeader("Cache-Control"));
+        assertEquals(list, autocompleteAction.getAutocompleteData());
+    }
 }
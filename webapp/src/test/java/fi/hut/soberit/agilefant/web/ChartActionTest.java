@@ -5,6 +5,8 @@ import static org.junit.Assert.*;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import com.opensymphony.xwork2.Action;
 
@@ -86,4 +88,51 @@ public class ChartActionTest {
       
         verify(iterationBusiness, iterationBurndownBusiness);    
     }
+
+    @Test
+    public void testGetSmallIterationBurndown_notModified() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"100-1\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chartAction.setServletRequest(request);
+        chartAction.setServletResponse(response);
+
+        chartAction.setBacklogId(iteration.getId());
+        expect(iterationBusiness.retrieve(iteration.getId())).andReturn(
+                iteration);
+        expect(iterationBurndownBusiness.getIterationBurndownETag(iteration, 0))
+                .andReturn("100-1");
+        replay(iterationBusiness, iterationBurndownBusiness);
+
+        assertEquals(Action.NONE, chartAction.getSmallIterationBurndown());
+        assertEquals(304, response.getStatus());
+        assertNull(chartAction.getResult());
+
+        verify(iterationBusiness, iterationBurndownBusiness);
+    }
+
+    @Test
+    public void testGetSmallIterationBurndown_modified() {
+        byte[] expected = new byte[100];
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("If-None-Match", "\"100-1\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        chartAction.setServletRequest(request);
+        chartAction.setServletResponse(response);
+
+        chartAction.setBacklogId(iteration.getId());
+        expect(iterationBusiness.retrieve(iteration.getId())).andReturn(
+                iteration);
+        expect(iterationBurndownBusiness.getIterationBurndownETag(iteration, 0))
+                .andReturn("100-2");
+        expect(iterationBurndownBusiness.getSmallIterationBurndown(iteration, 0))
+                .andReturn(expected);
+        replay(iterationBusiness, iterationBurndownBusiness);
+
+        assertEquals(Action.SUCCESS, chartAction.getSmallIterationBurndown());
+        assertEquals("\"100-2\"", response.getHeader("ETag"));
+        assertEquals(expected, chartAction.getResult());
+
+        verify(iterationBusiness, iterationBurndownBusiness);
+    }
 }
@@ -0,0 +1,84 @@
+package fi.hut.soberit.agilefant.web;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.opensymphony.xwork2.Action;
+
+import fi.hut.soberit.agilefant.business.ExportIterationBusiness;
+
+public class ExportIterationActionTest {
+
+    ExportIterationAction exportIterationAction = new ExportIterationAction();
+    ExportIterationBusiness exportIterationBusiness;
+    MockHttpServletResponse response;
+
+    @Before
+    public void setUp() {
+        exportIterationBusiness = createMock(ExportIterationBusiness.class);
+        exportIterationAction.setExportIterationBusiness(exportIterationBusiness);
+        response = new MockHttpServletResponse();
+        exportIterationAction.setServletResponse(response);
+        exportIterationAction.setIterationId(5);
+    }
+
+    @Test
+    public void testExportXlsx() throws IOException {
+        exportIterationBusiness.writeIterationXlsx(eq(5), isA(OutputStream.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                ((OutputStream) getCurrentArguments()[1]).write(new byte[] { 1, 2, 3 });
+                return null;
+            }
+        });
+        replay(exportIterationBusiness);
+
+        assertEquals(Action.NONE, exportIterationAction.exportXlsx());
+        assertEquals("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+                response.getContentType());
+        assertTrue(((String) response.getHeader("Content-Disposition"))
+                .startsWith("filename=\"Agilefant_Iteration_5_"));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, response.getContentAsByteArray());
+        assertTrue(response.isCommitted());
+
+        verify(exportIterationBusiness);
+    }
+
+    @Test
+    public void testExportXlsx_failureBeforeCommit() throws IOException {
+        exportIterationBusiness.writeIterationXlsx(eq(5), isA(OutputStream.class));
+        expectLastCall().andThrow(new IOException());
+        replay(exportIterationBusiness);
+
+        assertEquals(Action.ERROR, exportIterationAction.exportXlsx());
+        assertNull(response.getHeader("Content-Disposition"));
+        assertFalse(response.isCommitted());
+
+        verify(exportIterationBusiness);
+    }
+
+    @Test
+    public void testExportXlsx_failureAfterCommit() throws IOException {
+        exportIterationBusiness.writeIterationXlsx(eq(5), isA(OutputStream.class));
+        expectLastCall().andAnswer(new IAnswer<Object>() {
+            public Object answer() throws Throwable {
+                response.flushBuffer();
+                throw new IOException();
+            }
+        });
+        replay(exportIterationBusiness);
+
+        assertEquals(Action.NONE, exportIterationAction.exportXlsx());
+        assertTrue(response.isCommitted());
+
+        verify(exportIterationBusiness);
+    }
+}
@@ -15,6 +15,7 @@ import com.opensymphony.xwork2.Action;
 
 import fi.hut.soberit.agilefant.business.MenuBusiness;
 import fi.hut.soberit.agilefant.security.SecurityUtil;
+import fi.hut.soberit.agilefant.transfer.MenuDataChanges;
 import fi.hut.soberit.agilefant.transfer.MenuDataNode;
 
 public class MenuActionTest {
@@ -48,6 +49,17 @@ public class MenuActionTest {
         verifyAll();
     }
     
+    @Test
+    public void testConstructBacklogMenuChanges() {
+        MenuDataChanges changes = new MenuDataChanges();
+        expect(menuBusiness.constructBacklogMenuChanges(123L)).andReturn(changes);
+        replayAll();
+        menuAction.setSinceVersion(123L);
+        assertEquals(Action.SUCCESS, menuAction.constructBacklogMenuChanges());
+        verifyAll();
+        assertEquals(changes, menuAction.getMenuDataChanges());
+    }
+    
     @Test
     public void testConstructAssignmentData() {
         expect(menuBusiness.constructMyAssignmentsData(SecurityUtil.getLoggedUser())).andReturn(Arrays.asList(new MenuDataNode()));
@@ -207,10 +207,29 @@ public class StoryHierarchyActionTest extends MockedTestCase {
         List<Story> stories = new ArrayList<Story>(Arrays.asList(story));
         
         storyHierarchyAction.setProductId(123);
-        expect(storyHierarchyBusiness.retrieveProductRootStories(EasyMock.eq(123), EasyMock.isA(StoryFilters.class)))
+        expect(storyHierarchyBusiness.retrieveProductStoryTree(EasyMock.eq(123), EasyMock.<Integer>isNull(), EasyMock.eq(0), EasyMock.isA(StoryFilters.class)))
         .andReturn(stories);
-        expect(storyBusiness.retrieve(story.getId()))
-        .andReturn(story);
+        storyHierarchyBusiness.loadStoryTreeMetrics(stories);
+        
+        replayAll();
+        assertEquals(Action.SUCCESS, storyHierarchyAction.retrieveProductRootStories());
+        verifyAll();
+        
+        assertEquals(stories, storyHierarchyAction.getStories());
+    }
+
+    @Test
+    @DirtiesContext
+    public void testRetrieveProductRootStories_subtree() {
+        Story story = new Story();
+        List<Story> stories = new ArrayList<Story>(Arrays.asList(story));
+        
+        storyHierarchyAction.setProductId(123);
+        storyHierarchyAction.setStoryId(55);
+        storyHierarchyAction.setLevels(2);
+        expect(storyHierarchyBusiness.retrieveProductStoryTree(EasyMock.eq(123), EasyMock.eq(55), EasyMock.eq(2), EasyMock.isA(StoryFilters.class)))
+        .andReturn(stories);
+        storyHierarchyBusiness.loadStoryTreeMetrics(stories);
         
         replayAll();
         assertEquals(Action.SUCCESS, storyHierarchyAction.retrieveProductRootStories());
@@ -225,7 +244,7 @@ public class StoryHierarchyActionTest extends MockedTestCase {
         Story story = new Story();
         StoryTreeBranchMetrics metrics = new StoryTreeBranchMetrics();
         expect(storyBusiness.retrieve(55)).andReturn(story);
-        expect(storyHierarchyBusiness.calculateStoryTreeMetrics(story)).andReturn(metrics);
+        expect(storyHierarchyBusiness.retrieveStoryTreeMetrics(story)).andReturn(metrics);
         
         replayAll();
         this.storyHierarchyAction.setStoryId(55);
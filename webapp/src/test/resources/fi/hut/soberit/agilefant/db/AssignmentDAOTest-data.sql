@@ -7,3 +7,7 @@ INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (2, true, 1);
 INSERT INTO assignment (user_id, backlog_id, availability) VALUES (1,1,100);
 INSERT INTO assignment (user_id, backlog_id, availability) VALUES (2,1,100);
 INSERT INTO assignment (user_id, backlog_id, availability) VALUES (2,2,100);
+
+INSERT INTO stories (id,backlog_id, iteration_id, name, state) VALUES (1,2,1,'Story',1);
+INSERT INTO tasks (id,state, effortLeft, story_id, rank) VALUES (1,1,100,1,0);
+INSERT INTO tasks (id,state, effortLeft, rank) VALUES (2,1,100,1);
@@ -0,0 +1,23 @@
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (1, null, 'Product', 'Product 1');
+INSERT INTO backlogs (id, parent_id, backlogtype, name, rank) VALUES (2, 1, 'Project', 'Project 1', 1);
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (3, 2, 'Iteration', 'Iteration 1');
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (4, 2, 'Iteration', 'Iteration 2');
+
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (1, true, 1);
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (2, true, 1);
+
+INSERT INTO stories (id, backlog_id, iteration_id, name, state) VALUES (1, 2, 3, 'Story 1', 0);
+INSERT INTO stories (id, backlog_id, name, state) VALUES (2, 2, 'Story 2', 0);
+
+INSERT INTO tasks (id, story_id, state) VALUES (1, 1, 0);
+INSERT INTO tasks (id, iteration_id, state) VALUES (2, 3, 0);
+INSERT INTO tasks (id, story_id, state) VALUES (3, 2, 0);
+
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id, `date`) VALUES (1, 'BacklogHourEntry', 30, 1, 3, '2009-06-01 10:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id, `date`) VALUES (2, 'BacklogHourEntry', 15, 1, 3, '2009-06-01 23:30:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id, `date`) VALUES (3, 'StoryHourEntry', 60, 2, 1, '2009-06-02 00:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id, `date`) VALUES (4, 'TaskHourEntry', 45, 1, 1, '2009-06-02 12:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id, `date`) VALUES (5, 'TaskHourEntry', 20, 1, 2, '2009-06-03 08:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id, `date`) VALUES (6, 'TaskHourEntry', 100, 1, 3, '2009-06-03 09:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id, `date`) VALUES (7, 'BacklogHourEntry', 200, 1, 4, '2009-06-04 09:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id) VALUES (8, 'TaskHourEntry', 10, 1, 2);
@@ -0,0 +1,32 @@
+INSERT INTO users (id,enabled, recentItemsNumberOfWeeks) VALUES (1, true, 1);
+INSERT INTO backlogs (id,backlogtype, name) VALUES (10,'Product','Product');
+INSERT INTO backlogs (id,backlogtype, name, rank, parent_id) VALUES (11,'Project','Project 1',1,10);
+INSERT INTO backlogs (id,backlogtype, name, rank, parent_id) VALUES (12,'Project','Project 2',2,10);
+INSERT INTO backlogs (id,backlogtype, name, parent_id) VALUES (13,'Iteration','Iteration 1',11);
+INSERT INTO backlogs (id,backlogtype, name, parent_id) VALUES (14,'Iteration','Iteration 2',12);
+
+INSERT INTO stories (id, backlog_id, iteration_id, storyPoints, state, name) VALUES (1,11,null,3,0, '');
+INSERT INTO stories (id, backlog_id, iteration_id, storyPoints, state, name) VALUES (2,11,13,5,5, '');
+INSERT INTO stories (id, backlog_id, iteration_id, storyPoints, state, name) VALUES (3,12,14,8,0, '');
+INSERT INTO stories (id, backlog_id, iteration_id, storyPoints, state, name) VALUES (4,11,null,1,0, '');
+INSERT INTO storyrank (backlog_id, story_id, rank) VALUES (11,1,0);
+INSERT INTO storyrank (backlog_id, story_id, rank) VALUES (11,2,1);
+INSERT INTO storyrank (backlog_id, story_id, rank) VALUES (12,3,0);
+
+INSERT INTO tasks (id, story_id, iteration_id, originalestimate, state) VALUES (1,1,null,100,0);
+INSERT INTO tasks (id, story_id, iteration_id, originalestimate, state) VALUES (2,2,null,50,0);
+INSERT INTO tasks (id, story_id, iteration_id, originalestimate, state) VALUES (3,2,null,70,6);
+INSERT INTO tasks (id, story_id, iteration_id, originalestimate, state) VALUES (4,null,13,40,0);
+INSERT INTO tasks (id, story_id, iteration_id, originalestimate, state) VALUES (5,3,null,30,0);
+
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id) VALUES (1, 'BacklogHourEntry', 10, 1, 11);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id) VALUES (2, 'BacklogHourEntry', 20, 1, 13);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id) VALUES (3, 'StoryHourEntry', 30, 1, 1);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id) VALUES (4, 'StoryHourEntry', 40, 1, 2);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id) VALUES (5, 'TaskHourEntry', 50, 1, 1);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id) VALUES (6, 'TaskHourEntry', 60, 1, 2);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id) VALUES (7, 'TaskHourEntry', 70, 1, 4);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id) VALUES (8, 'StoryHourEntry', 80, 1, 4);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id) VALUES (9, 'StoryHourEntry', 5, 1, 3);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id) VALUES (10, 'TaskHourEntry', 15, 1, 5);
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, backlog_id) VALUES (11, 'BacklogHourEntry', 7, 1, 14);
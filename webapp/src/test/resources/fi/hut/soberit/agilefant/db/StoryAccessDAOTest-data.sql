@@ -0,0 +1,13 @@
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (1, null, 'Product', 'Product 1');
+
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (1, true, 1);
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (2, true, 1);
+
+INSERT INTO stories (id, backlog_id, name, state) VALUES (1, 1, 'Story 1', 0);
+INSERT INTO stories (id, backlog_id, name, state) VALUES (2, 1, 'Story 2', 0);
+
+INSERT INTO story_access (id, story_id, user_id, `date`) VALUES (1, 1, 1, '2009-06-01 10:00:00');
+INSERT INTO story_access (id, story_id, user_id, `date`) VALUES (2, 1, 1, '2009-06-01 23:30:00');
+INSERT INTO story_access (id, story_id, user_id, `date`) VALUES (3, 2, 1, '2009-06-02 00:00:00');
+INSERT INTO story_access (id, story_id, user_id, `date`) VALUES (4, 1, 2, '2009-06-02 12:00:00');
+INSERT INTO story_access (id, story_id, user_id, `date`) VALUES (5, 1, 1, '2009-06-05 08:00:00');
@@ -0,0 +1,17 @@
+/*
+ *   1          6
+ *   |- 2       |- 7
+ *   |  |- 3
+ *   |  |- 4
+ *   |- 5
+ */
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (1, null, 'Product', 'Product 1');
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (2, 1, 'Project', 'Project 1');
+
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (1, 1, 'Root', 0, null);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (2, 1, 'Child 1', 0, 1);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (3, 2, 'Child 1.1', 0, 2);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (4, 2, 'Child 1.2', 0, 2);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (5, 1, 'Child 2', 0, 1);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (6, 1, 'Other root', 0, null);
+INSERT INTO stories (id, backlog_id, name, state, parent_id) VALUES (7, 2, 'Other child', 0, 6);
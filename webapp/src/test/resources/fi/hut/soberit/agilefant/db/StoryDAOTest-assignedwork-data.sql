@@ -0,0 +1,44 @@
+INSERT INTO backlogs (id, backlogtype, name) VALUES (1, 'Product', 'Product');
+INSERT INTO backlogs (id, backlogtype, name, startDate, endDate, parent_id) VALUES (2, 'Project', 'Project B', '2009-05-01 00:00:00', '2009-08-01 00:00:00', 1);
+INSERT INTO backlogs (id, backlogtype, name, startDate, endDate, parent_id) VALUES (3, 'Iteration', 'Iteration', '2009-05-20 10:15:00', '2009-07-01 10:15:00', 2);
+INSERT INTO backlogs (id, backlogtype, name, startDate, endDate, parent_id) VALUES (4, 'Iteration', 'Next iteration', '2009-08-01 00:00:00', '2009-09-01 00:00:00', 2);
+
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (1, true, 1);
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (2, true, 1);
+
+-- Responsible for the story
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (10, 1, 2, 3, 'Story 10');
+-- Done story with a task assigned to the user
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (11, 5, 2, 3, 'Story 11');
+-- Project story
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (12, 1, 2, NULL, 'Story 12');
+-- Iteration has not started
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (13, 1, 2, 4, 'Story 13');
+-- Done story
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (14, 5, 2, 3, 'Story 14');
+-- Only a done task assigned to the user
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (15, 0, 1, NULL, 'Story 15');
+-- Product story
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (16, 0, 1, NULL, 'Story 16');
+-- Assigned to another user
+INSERT INTO stories (id, state, backlog_id, iteration_id, name) VALUES (17, 1, 2, 3, 'Story 17');
+
+INSERT INTO story_user (story_id, user_id) VALUES (10, 1);
+INSERT INTO story_user (story_id, user_id) VALUES (12, 1);
+INSERT INTO story_user (story_id, user_id) VALUES (13, 1);
+INSERT INTO story_user (story_id, user_id) VALUES (14, 1);
+INSERT INTO story_user (story_id, user_id) VALUES (16, 1);
+INSERT INTO story_user (story_id, user_id) VALUES (17, 2);
+
+INSERT INTO tasks (id, state, story_id, name) VALUES (20, 1, 11, 'Task 20');
+INSERT INTO tasks (id, state, story_id, name) VALUES (21, 5, 15, 'Task 21');
+INSERT INTO tasks (id, state, story_id, name) VALUES (22, 1, 11, 'Task 22');
+
+INSERT INTO task_user (tasks_id, responsibles_id) VALUES (20, 1);
+INSERT INTO task_user (tasks_id, responsibles_id) VALUES (21, 1);
+INSERT INTO task_user (tasks_id, responsibles_id) VALUES (22, 2);
+
+INSERT INTO storyrank (id, backlog_id, story_id, rank) VALUES (1, 3, 10, 1);
+INSERT INTO storyrank (id, backlog_id, story_id, rank) VALUES (2, 2, 10, 4);
+INSERT INTO storyrank (id, backlog_id, story_id, rank) VALUES (3, 3, 11, 0);
+INSERT INTO storyrank (id, backlog_id, story_id, rank) VALUES (4, 2, 12, 2);
@@ -0,0 +1,19 @@
+INSERT INTO backlogs (id, parent_id, backlogtype, name) VALUES (1, null, 'Product', 'Product 1');
+
+INSERT INTO users (id, enabled, recentItemsNumberOfWeeks) VALUES (1, true, 1);
+
+-- State 5 is DONE
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (1, 1, 'Root', 0, 20, null);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (2, 1, 'Child 1', 0, 7, 1);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (3, 1, 'Child 1.1', 0, 4, 2);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (4, 1, 'Child 1.2', 5, 4, 2);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (5, 1, 'Child 2', 5, 14, 1);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (6, 1, 'Child 2.1', 5, 8, 5);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (7, 1, 'Child 2.2', 5, 4, 5);
+INSERT INTO stories (id, backlog_id, name, state, storyPoints, parent_id) VALUES (8, 1, 'Child 3', 0, 10, 1);
+
+INSERT INTO tasks (id, story_id, state, effortleft) VALUES (1, 3, 0, 90);
+INSERT INTO tasks (id, story_id, state, effortleft) VALUES (2, 8, 0, 60);
+
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, story_id, `date`) VALUES (1, 'StoryHourEntry', 60, 1, 1, '2009-06-01 10:00:00');
+INSERT INTO hourentries (id, dtype, minutesspent, user_id, task_id, `date`) VALUES (2, 'TaskHourEntry', 45, 1, 1, '2009-06-02 12:00:00');
@@ -0,0 +1,8 @@
+INSERT INTO teams (id, name) VALUES (1, 'team1');
+INSERT INTO teams (id, name) VALUES (2, 'team2');
+INSERT INTO teams (id, name) VALUES (3, 'empty');
+INSERT INTO users (id, enabled, loginname, recentItemsNumberOfWeeks) VALUES (1, true, 'user1', 1);
+INSERT INTO users (id, enabled, loginname, recentItemsNumberOfWeeks) VALUES (2, true, 'user2', 1);
+INSERT INTO team_user (User_id, Team_id) VALUES (1,1);
+INSERT INTO team_user (User_id, Team_id) VALUES (2,1);
+INSERT INTO team_user (User_id, Team_id) VALUES (1,2);